@@ -462,6 +462,32 @@ public class IoUtil {
         }
     }
 
+    /**
+     * Skip over (and discard) the given number of bytes from the supplied stream, stopping early only when the end of the stream
+     * is reached. Unlike {@link InputStream#skip(long)}, this method does not stop when the stream skips no bytes (as some streams
+     * do when nothing is buffered), but instead reads a byte to find out whether there is more content. The stream is not closed.
+     * 
+     * @param stream the stream; may not be null
+     * @param count the number of bytes to skip
+     * @return the number of bytes that were skipped, which is less than {@code count} only if the end of the stream was reached
+     * @throws IOException if there is an error reading the stream
+     * @throws IllegalArgumentException if the stream is null
+     */
+    public static long skip( InputStream stream,
+                             long count ) throws IOException {
+        CheckArg.isNotNull(stream, "stream");
+        long remaining = count;
+        while (remaining > 0L) {
+            long skipped = stream.skip(remaining);
+            if (skipped <= 0L) {
+                if (stream.read() == -1) break;
+                skipped = 1L;
+            }
+            remaining -= skipped;
+        }
+        return count - Math.max(remaining, 0L);
+    }
+
     /**
      * Get the {@link InputStream input stream} to the resource given by the supplied path. If a class loader is supplied, the
      * method attempts to resolve the resource using the {@link ClassLoader#getResourceAsStream(String)} method; if the result is
@@ -0,0 +1,111 @@
+/*
+ * ModeShape (http://www.modeshape.org)
+ * See the COPYRIGHT.txt file distributed with this work for information
+ * regarding copyright ownership.  Some portions may be licensed
+ * to Red Hat, Inc. under one or more contributor license agreements.
+ * See the AUTHORS.txt file in the distribution for a full listing of 
+ * individual contributors. 
+ *
+ * ModeShape is free software. Unless otherwise indicated, all code in ModeShape
+ * is licensed to you under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * ModeShape is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+package org.modeshape.common.util;
+
+import org.modeshape.common.annotation.Immutable;
+
+/**
+ * Utilities for interpreting the value of an HTTP "Range" request header. Only a single range of bytes is supported, which is
+ * what clients resuming a download or seeking within media request; any other range is ignored, and the entire content is then
+ * to be returned.
+ */
+@Immutable
+public final class RangeHeader {
+
+    /**
+     * The name of the "Range" request header.
+     */
+    public static final String NAME = "Range";
+
+    /**
+     * The name of the "Content-Range" response header.
+     */
+    public static final String CONTENT_RANGE = "Content-Range";
+
+    /**
+     * The only supported range unit.
+     */
+    public static final String BYTES_UNIT = "bytes";
+
+    private RangeHeader() {
+    }
+
+    /**
+     * Determine the range of bytes requested by the supplied value of a "Range" header.
+     * 
+     * @param value the value of the "Range" header; may be null
+     * @param contentLength the length of the content, or a negative number if it is not known
+     * @return null if the entire content is to be returned, an empty array if the range cannot be satisfied, or the positions of
+     *         the first and last bytes of the range
+     */
+    public static long[] parse( String value,
+                                long contentLength ) {
+        if (value == null || contentLength < 0L) return null;
+        String range = value.trim();
+        if (!range.startsWith(BYTES_UNIT + "=") || range.indexOf(',') != -1) return null;
+        String spec = range.substring(BYTES_UNIT.length() + 1).trim();
+        int dash = spec.indexOf('-');
+        if (dash == -1) return null;
+        String firstPosition = spec.substring(0, dash).trim();
+        String lastPosition = spec.substring(dash + 1).trim();
+        long first;
+        long last;
+        try {
+            if (firstPosition.length() == 0) {
+                // A suffix range, for the last bytes of the content ...
+                long suffixLength = Long.parseLong(lastPosition);
+                if (suffixLength <= 0L) return new long[0];
+                first = Math.max(contentLength - suffixLength, 0L);
+                last = contentLength - 1L;
+            } else {
+                first = Long.parseLong(firstPosition);
+                if (first < 0L) return null;
+                if (lastPosition.length() == 0) {
+                    // An open-ended range, for the rest of the content ...
+                    last = contentLength - 1L;
+                } else {
+                    last = Long.parseLong(lastPosition);
+                    if (last < first) return null;
+                }
+            }
+        } catch (NumberFormatException e) {
+            return null;
+        }
+        if (first >= contentLength) return new long[0];
+        return new long[] {first, Math.min(last, contentLength - 1L)};
+    }
+
+    /**
+     * Create the value of the "Content-Range" header that describes the supplied range.
+     * 
+     * @param range the range returned by {@link #parse(String, long)}; may not be null
+     * @param contentLength the length of the content
+     * @return the value of the "Content-Range" header; never null
+     */
+    public static String contentRange( long[] range,
+                                       long contentLength ) {
+        if (range.length == 0) return BYTES_UNIT + " */" + contentLength;
+        return BYTES_UNIT + " " + range[0] + "-" + range[1] + "/" + contentLength;
+    }
+}
@@ -0,0 +1,64 @@
+/*
+ * ModeShape (http://www.modeshape.org)
+ * See the COPYRIGHT.txt file distributed with this work for information
+ * regarding copyright ownership.  Some portions may be licensed
+ * to Red Hat, Inc. under one or more contributor license agreements.
+ * See the AUTHORS.txt file in the distribution for a full listing of 
+ * individual contributors. 
+ *
+ * ModeShape is free software. Unless otherwise indicated, all code in ModeShape
+ * is licensed to you under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * ModeShape is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+package org.modeshape.common.util;
+
+import static org.hamcrest.core.Is.is;
+import static org.hamcrest.core.IsNull.nullValue;
+import static org.junit.Assert.assertThat;
+import org.junit.Test;
+
+public class RangeHeaderTest {
+
+    @Test
+    public void shouldParseSingleRanges() {
+        assertThat(RangeHeader.parse("bytes=2-5", 10L), is(new long[] {2L, 5L}));
+        assertThat(RangeHeader.parse(" bytes= 2 - 5 ", 10L), is(new long[] {2L, 5L}));
+        assertThat(RangeHeader.parse("bytes=7-", 10L), is(new long[] {7L, 9L}));
+        assertThat(RangeHeader.parse("bytes=-4", 10L), is(new long[] {6L, 9L}));
+        assertThat(RangeHeader.parse("bytes=-40", 10L), is(new long[] {0L, 9L}));
+        assertThat(RangeHeader.parse("bytes=5-100", 10L), is(new long[] {5L, 9L}));
+    }
+
+    @Test
+    public void shouldReturnEmptyRangeForUnsatisfiableRanges() {
+        assertThat(RangeHeader.parse("bytes=10-", 10L).length, is(0));
+        assertThat(RangeHeader.parse("bytes=-0", 10L).length, is(0));
+    }
+
+    @Test
+    public void shouldIgnoreMissingInvalidOrMultipleRanges() {
+        assertThat(RangeHeader.parse(null, 10L), is(nullValue()));
+        assertThat(RangeHeader.parse("bytes=2-5", -1L), is(nullValue()));
+        assertThat(RangeHeader.parse("items=2-5", 10L), is(nullValue()));
+        assertThat(RangeHeader.parse("bytes=5-2", 10L), is(nullValue()));
+        assertThat(RangeHeader.parse("bytes=a-b", 10L), is(nullValue()));
+        assertThat(RangeHeader.parse("bytes=0-1,4-5", 10L), is(nullValue()));
+    }
+
+    @Test
+    public void shouldCreateContentRange() {
+        assertThat(RangeHeader.contentRange(new long[] {2L, 5L}, 10L), is("bytes 2-5/10"));
+        assertThat(RangeHeader.contentRange(new long[0], 10L), is("bytes */10"));
+    }
+}
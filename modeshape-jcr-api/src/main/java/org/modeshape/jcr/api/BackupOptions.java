@@ -0,0 +1,94 @@
+/*
+ * ModeShape (http://www.modeshape.org)
+ * See the COPYRIGHT.txt file distributed with this work for information
+ * regarding copyright ownership.  Some portions may be licensed
+ * to Red Hat, Inc. under one or more contributor license agreements.
+ * See the AUTHORS.txt file in the distribution for a full listing of 
+ * individual contributors.
+ *
+ * ModeShape is free software. Unless otherwise indicated, all code in ModeShape
+ * is licensed to you under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ * 
+ * ModeShape is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+package org.modeshape.jcr.api;
+
+import java.io.File;
+
+/**
+ * The options that control how a {@link RepositoryManager#backupRepository(File, BackupOptions) backup} is performed. Subclasses
+ * can override any of the methods to change the default behavior.
+ * 
+ * @since 3.4
+ */
+public abstract class BackupOptions {
+
+    /**
+     * The default backup options, which write up to 100K documents into each compressed backup file using a single thread.
+     */
+    public static final BackupOptions DEFAULT = new BackupOptions() {
+    };
+
+    /**
+     * Get the maximum number of documents that are written to a single backup file.
+     * 
+     * @return the number of documents per file; always positive
+     */
+    public long documentsPerFile() {
+        return 100000L;
+    }
+
+    /**
+     * Determine whether the backup files should be compressed.
+     * 
+     * @return true if the backup files should be compressed, or false otherwise
+     */
+    public boolean compress() {
+        return true;
+    }
+
+    /**
+     * Get the number of threads that are used to write documents and binary values to the backup. When this is larger than 1,
+     * the documents are split into this number of partitions, each of which is written to its own sequence of backup files; the
+     * resulting backup can then also be restored in parallel.
+     * 
+     * @return the number of threads; always positive
+     */
+    public int parallelism() {
+        return 1;
+    }
+
+    /**
+     * Determine whether the backup should be incremental. An incremental backup of a directory that already contains a backup
+     * only writes the documents and binary values that have changed since the most recent backup generation in that directory,
+     * placing them into a new generation within that directory; restoring that directory will then apply the full backup and
+     * each of the subsequent generations, in order.
+     * <p>
+     * The changes are recorded by the repository only after the first incremental backup is requested, and only for the most
+     * recent incremental backup chain. Therefore, when the directory does not yet contain a backup, when the repository has been
+     * restarted since the directory's last generation was written, or when another incremental backup has since been written
+     * to a different directory, a full backup is written instead (and any prior generations in the directory are removed).
+     * </p>
+     * 
+     * @return true if the backup should be incremental, or false if a full backup should always be written
+     */
+    public boolean incremental() {
+        return false;
+    }
+
+    @Override
+    public String toString() {
+        return "documentsPerFile=" + documentsPerFile() + ", compress=" + compress() + ", parallelism=" + parallelism()
+               + ", incremental=" + incremental();
+    }
+}
@@ -24,6 +24,7 @@
 package org.modeshape.jcr.api;
 
 import java.io.IOException;
+import java.io.InputStream;
 import java.security.MessageDigest;
 import javax.jcr.RepositoryException;
 
@@ -79,4 +80,18 @@ public interface Binary extends javax.jcr.Binary {
      */
     public String getMimeType( String name ) throws IOException, RepositoryException;
 
+    /**
+     * Get a stream over a range of the content of this binary value. Implementations start reading directly at the given offset
+     * where the underlying storage allows it, so this is generally much more efficient than skipping over the beginning of the
+     * {@link #getStream() stream} (e.g., when serving only the tail of a large value).
+     * 
+     * @param offset the zero-based offset of the first byte that is to be read; may not be negative
+     * @param length the maximum number of bytes that are to be read; may not be negative
+     * @return the stream over at most {@code length} bytes of the content starting at {@code offset}, which is empty if the offset
+     *         is not less than the {@link #getSize() size} of this value; never null
+     * @throws RepositoryException if an error occurs.
+     * @throws IllegalArgumentException if the offset or length is negative
+     */
+    public InputStream getStream( long offset,
+                                  long length ) throws RepositoryException;
 }
@@ -86,6 +86,22 @@ public interface RepositoryManager {
      */
     Problems backupRepository( File backupDirectory ) throws RepositoryException;
 
+    /**
+     * Begin a backup operation of the entire repository, writing the files associated with the backup to the specified directory
+     * on the local file system and using the supplied options to control how the backup is written.
+     * 
+     * @param backupDirectory the directory on the local file system into which all backup files will be written; this directory
+     *        need not exist, but the process must have write privilege for this directory
+     * @param options the options for the backup; may not be null
+     * @return the problems that occurred during the backup operation
+     * @throws AccessDeniedException if the current session does not have sufficient privileges to perform the backup
+     * @throws RepositoryException if the backup cannot be run
+     * @see #backupRepository(File)
+     * @since 3.4
+     */
+    Problems backupRepository( File backupDirectory,
+                               BackupOptions options ) throws RepositoryException;
+
     /**
      * Begin a restore operation of the entire repository, reading the backup files in the specified directory on the local file
      * system. Upon completion of the restore operation, the repository will be restarted automatically.
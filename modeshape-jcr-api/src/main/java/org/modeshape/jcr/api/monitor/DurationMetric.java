@@ -29,7 +29,36 @@ public enum DurationMetric {
      * instances are strings containing the sequencer name and the input and output paths.
      */
     SEQUENCER_EXECUTION_TIME("sequencer-execution-time", "Sequencing duration",
-                             "The metric measuring how long sequencers take to run and save the changes.");
+                             "The metric measuring how long sequencers take to run and save the changes."),
+    /**
+     * The metric that captures the duration of {@link Session#save() session saves}. Note that the {@link DurationActivity}
+     * instances of this metric have no payload.
+     */
+    SESSION_SAVE_TIME("session-save-time", "Session save duration", "The metric measuring how long sessions take to save changes."),
+    /**
+     * The metric that captures how long it takes to load a node's document from the persistent store when the node is not found
+     * in the workspace cache. Note that the {@link DurationActivity} instances of this metric have no payload.
+     */
+    NODE_LOAD_TIME("node-load-time", "Node load duration",
+                   "The metric measuring how long it takes to load nodes that are not found in the workspace cache."),
+    /**
+     * The metric that captures how long it takes to search the indexes while executing queries. Note that the
+     * {@link DurationActivity} instances of this metric have no payload.
+     */
+    INDEX_SEARCH_TIME("index-search-time", "Index search duration",
+                      "The metric measuring how long it takes to search the indexes while executing queries."),
+    /**
+     * The metric that captures how long it takes to open the content of binary values in the binary store. Note that the
+     * {@link DurationActivity} instances of this metric have no payload.
+     */
+    BINARY_READ_TIME("binary-read-time", "Binary read duration",
+                     "The metric measuring how long it takes to open the content of binary values in the binary store."),
+    /**
+     * The metric that captures how long it takes to store binary values in the binary store. Note that the
+     * {@link DurationActivity} instances of this metric have no payload.
+     */
+    BINARY_WRITE_TIME("binary-write-time", "Binary write duration",
+                      "The metric measuring how long it takes to store binary values in the binary store.");
 
     private static final Map<String, DurationMetric> BY_LITERAL;
     private static final Map<String, DurationMetric> BY_NAME;
@@ -98,6 +98,18 @@ public interface History {
             return Statistics.NO_STATISTICS;
         }
 
+        /**
+         * {@inheritDoc}
+         * <p>
+         * <strong>Always returns {@link Percentiles#NO_PERCENTILES}.</strong>
+         * 
+         * @see org.modeshape.jcr.api.monitor.History#getPercentiles()
+         */
+        @Override
+        public Percentiles getPercentiles() {
+            return Percentiles.NO_PERCENTILES;
+        }
+
     };
 
     /**
@@ -136,4 +148,14 @@ public interface History {
      *         repository
      */
     Statistics[] getStats();
+
+    /**
+     * Get the distribution of all of the durations recorded during this history window. Only the histories of
+     * {@link DurationMetric duration metrics} have percentiles; the histories of {@link ValueMetric value metrics} always return
+     * {@link Percentiles#NO_PERCENTILES}.
+     * 
+     * @return the percentiles; never null
+     * @since 3.4
+     */
+    Percentiles getPercentiles();
 }
@@ -0,0 +1,141 @@
+/*
+ * ModeShape (http://www.modeshape.org)
+ * See the COPYRIGHT.txt file distributed with this work for information
+ * regarding copyright ownership.  Some portions may be licensed
+ * to Red Hat, Inc. under one or more contributor license agreements.
+ * See the AUTHORS.txt file in the distribution for a full listing of 
+ * individual contributors.
+ *
+ * ModeShape is free software. Unless otherwise indicated, all code in ModeShape
+ * is licensed to you under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ * 
+ * ModeShape is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+package org.modeshape.jcr.api.monitor;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * The immutable distribution of the durations recorded for a {@link DurationMetric} during a {@link History history} window.
+ * Unlike the {@link Statistics statistics}, which only describe the minimum, maximum, mean and variance of the durations, the
+ * percentiles describe the latencies of the slowest operations (e.g., the 99th percentile is the duration that only 1 in 100
+ * operations exceeded).
+ * <p>
+ * The durations are recorded into buckets whose widths grow with the duration, so any value returned by these methods is
+ * accurate to within about 3% of the actual duration.
+ * </p>
+ * 
+ * @since 3.4
+ */
+public interface Percentiles {
+
+    /**
+     * The percentiles for a history that contains no durations.
+     */
+    public Percentiles NO_PERCENTILES = new Percentiles() {
+
+        /**
+         * {@inheritDoc}
+         * <p>
+         * <strong>Always returns <code>0</code> (zero).</strong>
+         * 
+         * @see org.modeshape.jcr.api.monitor.Percentiles#getCount()
+         */
+        @Override
+        public long getCount() {
+            return 0L;
+        }
+
+        /**
+         * {@inheritDoc}
+         * <p>
+         * <strong>Always returns <code>0</code> (zero).</strong>
+         * 
+         * @see org.modeshape.jcr.api.monitor.Percentiles#getValueAtPercentile(double, java.util.concurrent.TimeUnit)
+         */
+        @Override
+        public long getValueAtPercentile( double percentile,
+                                          TimeUnit unit ) {
+            return 0L;
+        }
+
+        @Override
+        public long getMedian( TimeUnit unit ) {
+            return 0L;
+        }
+
+        @Override
+        public long get95thPercentile( TimeUnit unit ) {
+            return 0L;
+        }
+
+        @Override
+        public long get99thPercentile( TimeUnit unit ) {
+            return 0L;
+        }
+
+        @Override
+        public long get999thPercentile( TimeUnit unit ) {
+            return 0L;
+        }
+    };
+
+    /**
+     * Get the number of durations that make up this distribution.
+     * 
+     * @return the number of durations; never negative
+     */
+    long getCount();
+
+    /**
+     * Get the duration at or below which the given percentage of the recorded durations fall.
+     * 
+     * @param percentile the percentile, between 0.0 and 100.0 (inclusive)
+     * @param unit the desired time unit; if null, then {@link TimeUnit#MILLISECONDS} is used
+     * @return the duration at the given percentile, or 0 if there are no durations
+     */
+    long getValueAtPercentile( double percentile,
+                               TimeUnit unit );
+
+    /**
+     * Get the median (50th percentile) duration.
+     * 
+     * @param unit the desired time unit; if null, then {@link TimeUnit#MILLISECONDS} is used
+     * @return the median duration, or 0 if there are no durations
+     */
+    long getMedian( TimeUnit unit );
+
+    /**
+     * Get the 95th percentile duration.
+     * 
+     * @param unit the desired time unit; if null, then {@link TimeUnit#MILLISECONDS} is used
+     * @return the 95th percentile duration, or 0 if there are no durations
+     */
+    long get95thPercentile( TimeUnit unit );
+
+    /**
+     * Get the 99th percentile duration.
+     * 
+     * @param unit the desired time unit; if null, then {@link TimeUnit#MILLISECONDS} is used
+     * @return the 99th percentile duration, or 0 if there are no durations
+     */
+    long get99thPercentile( TimeUnit unit );
+
+    /**
+     * Get the 99.9th percentile duration.
+     * 
+     * @param unit the desired time unit; if null, then {@link TimeUnit#MILLISECONDS} is used
+     * @return the 99.9th percentile duration, or 0 if there are no durations
+     */
+    long get999thPercentile( TimeUnit unit );
+}
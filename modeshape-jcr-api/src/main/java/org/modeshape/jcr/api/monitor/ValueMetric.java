@@ -84,7 +84,66 @@ public enum ValueMetric {
     /**
      * The metric that records the number of nodes that were sequenced.
      */
-    SEQUENCED_COUNT("sequenced-count", false, "Sequenced nodes", "The number of nodes that were sequenced during the window.");
+    SEQUENCED_COUNT("sequenced-count", false, "Sequenced nodes", "The number of nodes that were sequenced during the window."),
+    /**
+     * The metric that records the number of nodes whose children have changed and that have yet to be optimized.
+     */
+    CHILD_OPTIMIZATION_QUEUE_SIZE("child-optimization-queue-size", true, "Child optimization queue size",
+                                  "The number of nodes at the end of the window whose children have changed and have yet to be optimized."),
+    /**
+     * The metric that records the number of nodes whose children were optimized.
+     */
+    CHILD_OPTIMIZATION_COUNT("child-optimization-count", false, "Optimized nodes",
+                             "The number of nodes whose blocks of children were optimized during the window."),
+    /**
+     * The metric that records the number of unused binary values that were removed by the garbage collection of binary values.
+     */
+    BINARY_REMOVED_COUNT("binary-removed-count", false, "Removed binary values",
+                         "The number of unused binary values that were removed during the window."),
+    /**
+     * The metric that records the number of bytes reclaimed by the garbage collection of binary values.
+     */
+    BINARY_REMOVED_SIZE("binary-removed-size", false, "Reclaimed binary bytes",
+                        "The number of bytes reclaimed by removing unused binary values during the window."),
+    /**
+     * The metric that records the number of binary value reads that were served from the local cache of a binary store.
+     */
+    BINARY_CACHE_HIT_COUNT("binary-cache-hit-count", false, "Binary cache hits",
+                           "The number of binary value reads that were served from the local binary cache during the window."),
+    /**
+     * The metric that records the number of binary value reads that could not be served from the local cache of a binary store.
+     */
+    BINARY_CACHE_MISS_COUNT("binary-cache-miss-count", false, "Binary cache misses",
+                            "The number of binary value reads that were not served from the local binary cache during the window."),
+    /**
+     * The metric that records the estimated number of bytes sent to other processes in the cluster as the operations that changed
+     * persisted nodes.
+     */
+    REPLICATED_DELTA_SIZE("replicated-delta-size", false, "Replicated delta bytes",
+                          "The estimated number of bytes sent to other processes as the operations that changed nodes during the window."),
+    /**
+     * The metric that records the estimated number of bytes sent to other processes in the cluster as whole persisted nodes.
+     */
+    REPLICATED_DOCUMENT_SIZE("replicated-document-size", false, "Replicated node bytes",
+                             "The estimated number of bytes sent to other processes as whole changed nodes during the window."),
+    /**
+     * The metric that records the number of requested nodes that were found in a workspace cache because they were prefetched
+     * with the other children of their parent.
+     */
+    CHILD_PREFETCH_HIT_COUNT("child-prefetch-hit-count", false, "Prefetched node hits",
+                             "The number of requested nodes that were found in the cache because they were prefetched during the window."),
+    /**
+     * The metric that records the number of requested nodes that had to be loaded one at a time into a workspace cache, while
+     * child prefetching is enabled.
+     */
+    CHILD_PREFETCH_MISS_COUNT("child-prefetch-miss-count", false, "Prefetched node misses",
+                              "The number of requested nodes that had to be loaded one at a time from the store during the window."),
+    /**
+     * The metric that records the number of change sets that are waiting in the queues of the repository's internal change
+     * listeners (e.g., for indexing and sequencing), counted once for each listener that has yet to receive them.
+     */
+    CHANGE_SET_QUEUE_SIZE("change-set-queue-size", true, "Change set queue size",
+                          "The number of change sets at the end of the window that have yet to be delivered to the internal listeners.");
 
     private static final Map<String, ValueMetric> BY_LITERAL;
     private static final Map<String, ValueMetric> BY_NAME;
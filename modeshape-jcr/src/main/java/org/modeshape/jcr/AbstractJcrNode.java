@@ -90,6 +90,7 @@ import org.modeshape.jcr.cache.NodeKey;
 import org.modeshape.jcr.cache.NodeNotFoundInParentException;
 import org.modeshape.jcr.cache.PropertyTypeUtil;
 import org.modeshape.jcr.cache.SessionCache;
+import org.modeshape.jcr.cache.document.WorkspaceCache;
 import org.modeshape.jcr.value.Name;
 import org.modeshape.jcr.value.NamespaceRegistry;
 import org.modeshape.jcr.value.Path;
@@ -3492,5 +3493,17 @@ abstract class AbstractJcrNode extends AbstractJcrItem implements Node {
                 return null;
             }
         }
+
+        @Override
+        public void load( Collection<ChildReference> refs ) {
+            NodeCache workspaceCache = session.cache().getWorkspace();
+            if (workspaceCache instanceof WorkspaceCache) {
+                List<NodeKey> keys = new ArrayList<NodeKey>(refs.size());
+                for (ChildReference ref : refs) {
+                    keys.add(ref.getKey());
+                }
+                ((WorkspaceCache)workspaceCache).getNodes(keys);
+            }
+        }
     }
 }
@@ -0,0 +1,267 @@
+/*
+ * ModeShape (http://www.modeshape.org)
+ * See the COPYRIGHT.txt file distributed with this work for information
+ * regarding copyright ownership.  Some portions may be licensed
+ * to Red Hat, Inc. under one or more contributor license agreements.
+ * See the AUTHORS.txt file in the distribution for a full listing of 
+ * individual contributors.
+ *
+ * ModeShape is free software. Unless otherwise indicated, all code in ModeShape
+ * is licensed to you under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ * 
+ * ModeShape is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+package org.modeshape.jcr;
+
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import org.modeshape.common.annotation.Immutable;
+import org.modeshape.common.annotation.ThreadSafe;
+import org.modeshape.jcr.cache.NodeKey;
+import org.modeshape.jcr.cache.change.BinaryValueUnused;
+import org.modeshape.jcr.cache.change.BinaryValueUsed;
+import org.modeshape.jcr.cache.change.Change;
+import org.modeshape.jcr.cache.change.ChangeSet;
+import org.modeshape.jcr.cache.change.ChangeSetBatchListener;
+import org.modeshape.jcr.cache.change.ChangeSetListener;
+import org.modeshape.jcr.value.BinaryKey;
+
+/**
+ * A {@link ChangeSetListener} that records the keys of the nodes and binary values that have been changed since the last
+ * incremental backup. Each time the recorded changes are {@link #drain() drained}, the tracker's watermark is advanced; the
+ * watermark and the tracker's {@link #getId() identifier} are persisted with each backup generation, so that a subsequent
+ * incremental backup can verify that the tracker has seen every change made since that generation was written.
+ * <p>
+ * Only the set of distinct keys is recorded, so the memory used by this tracker is proportional to the number of nodes and
+ * binary values changed between two backups, not to the number of changes.
+ * </p>
+ * 
+ * @see BackupService
+ */
+@ThreadSafe
+public class BackupChangeTracker implements ChangeSetBatchListener {
+
+    private final String id = UUID.randomUUID().toString();
+    private final ReadWriteLock lock = new ReentrantReadWriteLock();
+    private Map<NodeKey, Object> changedNodes = new ConcurrentHashMap<NodeKey, Object>();
+    private Map<BinaryKey, Object> usedBinaryKeys = new ConcurrentHashMap<BinaryKey, Object>();
+    private Map<BinaryKey, Object> unusedBinaryKeys = new ConcurrentHashMap<BinaryKey, Object>();
+    private long watermark = 0L;
+
+    protected BackupChangeTracker() {
+    }
+
+    /**
+     * Get the identifier of this tracker, which is unique for each tracker instance. A backup generation written with a watermark
+     * from one tracker can only be continued by an incremental backup using that same tracker.
+     * 
+     * @return the identifier; never null
+     */
+    public String getId() {
+        return id;
+    }
+
+    /**
+     * Get the current watermark, which is the number of times the changes have been {@link #drain() drained}.
+     * 
+     * @return the watermark; never negative
+     */
+    public long getWatermark() {
+        lock.readLock().lock();
+        try {
+            return watermark;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    @Override
+    public void notify( List<ChangeSet> changeSets ) {
+        lock.readLock().lock();
+        try {
+            for (ChangeSet changeSet : changeSets) {
+                record(changeSet);
+            }
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    @Override
+    public void notify( ChangeSet changeSet ) {
+        if (changeSet == null) return;
+        // Take the read lock, since multiple threads can concurrently record changes into the (concurrent) maps;
+        // only draining requires exclusive access ...
+        lock.readLock().lock();
+        try {
+            record(changeSet);
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    private void record( ChangeSet changeSet ) {
+        for (NodeKey key : changeSet.changedNodes()) {
+            changedNodes.put(key, key);
+        }
+        for (Change change : changeSet) {
+            if (change instanceof BinaryValueUnused) {
+                BinaryKey key = ((BinaryValueUnused)change).getKey();
+                if (usedBinaryKeys.remove(key) == null) unusedBinaryKeys.put(key, key);
+            } else if (change instanceof BinaryValueUsed) {
+                BinaryKey key = ((BinaryValueUsed)change).getKey();
+                if (unusedBinaryKeys.remove(key) == null) usedBinaryKeys.put(key, key);
+            }
+        }
+    }
+
+    /**
+     * Determine whether a change to the node with the supplied key has been recorded since the last {@link #drain()}.
+     * 
+     * @param key the node key; may not be null
+     * @return true if a change to the node has been recorded, or false otherwise
+     */
+    boolean hasRecorded( NodeKey key ) {
+        lock.readLock().lock();
+        try {
+            return changedNodes.containsKey(key);
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Atomically obtain the changes recorded since the last time this method was called, and advance the watermark.
+     * 
+     * @return the changes; never null
+     */
+    public Changes drain() {
+        lock.writeLock().lock();
+        try {
+            Changes changes = new Changes(changedNodes.keySet(), usedBinaryKeys.keySet(), unusedBinaryKeys.keySet(), watermark,
+                                          watermark + 1);
+            changedNodes = new ConcurrentHashMap<NodeKey, Object>();
+            usedBinaryKeys = new ConcurrentHashMap<BinaryKey, Object>();
+            unusedBinaryKeys = new ConcurrentHashMap<BinaryKey, Object>();
+            ++watermark;
+            return changes;
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Return the supplied changes (which were obtained from the most recent call to {@link #drain()}) back to this tracker and
+     * reset the watermark to its prior value. This should be called when the backup generation using the changes could not be
+     * written, so that the changes will be included in the next backup.
+     * 
+     * @param changes the changes that were drained; may not be null
+     */
+    public void rollback( Changes changes ) {
+        lock.writeLock().lock();
+        try {
+            if (watermark != changes.getWatermark()) return; // the changes have been drained again since
+            for (NodeKey key : changes.getChangedNodes()) {
+                changedNodes.put(key, key);
+            }
+            for (BinaryKey key : changes.getUsedBinaryKeys()) {
+                if (!unusedBinaryKeys.containsKey(key)) usedBinaryKeys.put(key, key);
+            }
+            for (BinaryKey key : changes.getUnusedBinaryKeys()) {
+                if (!usedBinaryKeys.containsKey(key)) unusedBinaryKeys.put(key, key);
+            }
+            watermark = changes.getPreviousWatermark();
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    @Override
+    public String toString() {
+        return "BackupChangeTracker " + id + " at watermark " + getWatermark();
+    }
+
+    /**
+     * The changes that were recorded between two watermarks.
+     */
+    @Immutable
+    public static final class Changes {
+        private final Set<NodeKey> changedNodes;
+        private final Set<BinaryKey> usedBinaryKeys;
+        private final Set<BinaryKey> unusedBinaryKeys;
+        private final long previousWatermark;
+        private final long watermark;
+
+        protected Changes( Set<NodeKey> changedNodes,
+                           Set<BinaryKey> usedBinaryKeys,
+                           Set<BinaryKey> unusedBinaryKeys,
+                           long previousWatermark,
+                           long watermark ) {
+            this.changedNodes = changedNodes;
+            this.usedBinaryKeys = usedBinaryKeys;
+            this.unusedBinaryKeys = unusedBinaryKeys;
+            this.previousWatermark = previousWatermark;
+            this.watermark = watermark;
+        }
+
+        /**
+         * Get the keys of the nodes that were added, changed or removed.
+         * 
+         * @return the node keys; never null
+         */
+        public Set<NodeKey> getChangedNodes() {
+            return changedNodes;
+        }
+
+        /**
+         * Get the keys of the binary values that were marked as used.
+         * 
+         * @return the binary keys; never null
+         */
+        public Set<BinaryKey> getUsedBinaryKeys() {
+            return usedBinaryKeys;
+        }
+
+        /**
+         * Get the keys of the binary values that were marked as unused.
+         * 
+         * @return the binary keys; never null
+         */
+        public Set<BinaryKey> getUnusedBinaryKeys() {
+            return unusedBinaryKeys;
+        }
+
+        /**
+         * Get the watermark of the tracker before these changes were drained.
+         * 
+         * @return the previous watermark
+         */
+        public long getPreviousWatermark() {
+            return previousWatermark;
+        }
+
+        /**
+         * Get the watermark of the tracker after these changes were drained.
+         * 
+         * @return the watermark
+         */
+        public long getWatermark() {
+            return watermark;
+        }
+    }
+}
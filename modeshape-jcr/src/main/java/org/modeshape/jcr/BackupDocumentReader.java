@@ -30,8 +30,8 @@ import java.io.IOException;
 import java.io.InputStream;
 import java.util.zip.GZIPInputStream;
 import org.infinispan.schematic.document.Document;
-import org.infinispan.schematic.document.DocumentSequence;
 import org.infinispan.schematic.document.Json;
+import org.infinispan.schematic.document.JsonStreamReader;
 import org.modeshape.common.annotation.NotThreadSafe;
 import org.modeshape.common.collection.Problems;
 import org.modeshape.common.util.CheckArg;
@@ -50,7 +50,7 @@ public final class BackupDocumentReader {
     private final String filenamePrefix;
     private final Problems problems;
     protected InputStream stream;
-    protected DocumentSequence documents;
+    protected JsonStreamReader documents;
     protected long fileCount = 0L;
     private File currentFile;
 
@@ -79,7 +79,7 @@ public final class BackupDocumentReader {
                         // No more files to read ...
                         return null;
                     }
-                    documents = Json.readMultiple(stream);
+                    documents = Json.newStreamReader(stream);
                 }
                 try {
                     Document doc = documents.nextDocument();
@@ -31,6 +31,7 @@ import java.io.OutputStream;
 import java.util.zip.GZIPOutputStream;
 import org.infinispan.schematic.document.Document;
 import org.infinispan.schematic.document.Json;
+import org.infinispan.schematic.document.JsonStreamWriter;
 import org.modeshape.common.annotation.NotThreadSafe;
 import org.modeshape.common.collection.Problems;
 import org.modeshape.common.util.CheckArg;
@@ -49,10 +50,11 @@ public final class BackupDocumentWriter {
     private final String filenamePrefix;
     private final boolean compress;
     protected final long maxDocumentsPerFile;
-    protected OutputStream stream;
+    protected JsonStreamWriter stream;
     protected long count = 0L;
     protected long totalCount = 0L;
     protected long fileCount = 0L;
+    protected long byteCount = 0L;
     private final Problems problems;
     private File currentFile;
 
@@ -95,11 +97,10 @@ public final class BackupDocumentWriter {
                 currentFile = new File(parentDirectory, filename);
                 OutputStream fileStream = new FileOutputStream(currentFile);
                 if (compress) fileStream = new GZIPOutputStream(fileStream);
-                stream = new BufferedOutputStream(fileStream);
+                stream = Json.newStreamWriter(new BufferedOutputStream(fileStream));
             }
-            Json.write(document, stream);
-            // Need to append a non-consumable character so that we can read multiple JSON documents per file
-            stream.write((byte)'\n');
+            // Each document is followed by a non-consumable character so that we can read multiple JSON documents per file
+            stream.document(document);
         } catch (IOException e) {
             problems.addError(JcrI18n.problemsWritingDocumentToBackup, currentFile.getAbsolutePath(), e.getMessage());
         }
@@ -118,6 +119,7 @@ public final class BackupDocumentWriter {
                 problems.addError(JcrI18n.problemsClosingBackupFiles, parentDirectory.getAbsolutePath(), e.getMessage());
             } finally {
                 stream = null;
+                byteCount += currentFile.length();
             }
         }
     }
@@ -139,4 +141,13 @@ public final class BackupDocumentWriter {
     public long getFileCount() {
         return fileCount;
     }
+
+    /**
+     * Return the number of bytes in the files that have been completely written and closed so far.
+     * 
+     * @return the number of bytes; never negative
+     */
+    public long getByteCount() {
+        return byteCount;
+    }
 }
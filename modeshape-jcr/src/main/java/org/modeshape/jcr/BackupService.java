@@ -34,16 +34,20 @@ import org.infinispan.schematic.document.EditableDocument;
 import org.infinispan.schematic.document.Json;
 import org.modeshape.common.annotation.NotThreadSafe;
 import org.modeshape.common.collection.Problems;
-import org.modeshape.common.collection.SimpleProblems;
+import org.modeshape.common.collection.ThreadSafeProblems;
 import org.modeshape.common.i18n.I18n;
 import org.modeshape.common.logging.Logger;
 import org.modeshape.common.util.CheckArg;
+import org.modeshape.common.util.FileUtil;
 import org.modeshape.common.util.IoUtil;
 import org.modeshape.common.util.NamedThreadFactory;
+import org.modeshape.common.util.StringUtil;
 import org.modeshape.jcr.InfinispanUtil.Sequence;
 import org.modeshape.jcr.JcrRepository.RunningState;
+import org.modeshape.jcr.api.BackupOptions;
 import org.modeshape.jcr.cache.NodeKey;
 import org.modeshape.jcr.cache.RepositoryCache;
+import org.modeshape.jcr.cache.document.DocumentConstants;
 import org.modeshape.jcr.cache.document.LocalDocumentStore;
 import org.modeshape.jcr.value.BinaryKey;
 import org.modeshape.jcr.value.BinaryValue;
@@ -56,16 +60,27 @@ import java.io.FileOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ArrayBlockingQueue;
 import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.Callable;
 import java.util.concurrent.CancellationException;
 import java.util.concurrent.CountDownLatch;
 import java.util.concurrent.ExecutionException;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.Semaphore;
 import java.util.concurrent.ThreadFactory;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
 
 /**
  * A service used to generate backups from content and restore repository content from backups.
@@ -78,6 +93,11 @@ public class BackupService {
     protected static final String BINARY_AREA_DIR_NAME = "binaries";
     protected static final String DOCUMENTS_FILENAME_PREFIX = "documents";
     protected static final String SUMMARY_FILE_NAME = "summary_of_changes.json";
+    protected static final String MANIFEST_FILE_NAME = "manifest.json";
+    protected static final String PARTITION_PREFIX_SEPARATOR = "_p";
+    protected static final int NUM_CHARS_IN_PARTITION_SUFFIX = 3;
+    protected static final String INCREMENT_DIR_PREFIX = "increment_";
+    protected static final int NUM_CHARS_IN_GENERATION_SUFFIX = 6;
     protected static final String BINARY_EXTENSION = ".bin";
     protected static final int NUM_CHARS_IN_FILENAME_SUFFIX = 6;
 
@@ -88,14 +108,33 @@ public class BackupService {
     public static final long DEFAULT_NUMBER_OF_DOCUMENTS_IN_BACKUP_FILES = 100000L;
     public static final boolean DEFAULT_COMPRESS = true;
 
+    /**
+     * The maximum number of document keys that are queued for each partition when performing a parallel backup.
+     */
+    protected static final int PARTITION_QUEUE_CAPACITY = 1000;
+
     protected static class FieldName {
         public static final String UNUSED_BINARY_KEYS = "unusedBinaryKeys";
+        public static final String PARTITIONS = "partitions";
+        public static final String PARALLELISM = "parallelism";
+        public static final String DOCUMENT_COUNT = "documentCount";
+        public static final String DOCUMENT_BYTES = "documentBytes";
+        public static final String BINARY_COUNT = "binaryCount";
+        public static final String BINARY_BYTES = "binaryBytes";
+        public static final String DURATION_IN_MILLIS = "durationInMillis";
+        public static final String DOCUMENTS_PER_SECOND = "documentsPerSecond";
+        public static final String BYTES_PER_SECOND = "bytesPerSecond";
+        public static final String GENERATION = "generation";
+        public static final String TRACKER_ID = "trackerId";
+        public static final String WATERMARK = "watermark";
+        public static final String REMOVED_DOCUMENTS = "removedDocuments";
     }
 
     private final RunningState runningState;
     private final LocalDocumentStore documentStore;
     private final BinaryStore binaryStore;
     private final RepositoryCache repositoryCache;
+    private BackupChangeTracker changeTracker;
 
     protected BackupService( RunningState runningState ) {
         this.runningState = runningState;
@@ -108,7 +147,26 @@ public class BackupService {
     /**
      * Shut down this service and immediately terminate all currently-running backup operations.
      */
-    protected void shutdown() {
+    protected synchronized void shutdown() {
+        if (changeTracker != null) {
+            repositoryCache.unregister(changeTracker);
+            changeTracker = null;
+        }
+    }
+
+    /**
+     * Get the tracker that records the changes made since the last incremental backup, creating and registering it if needed.
+     * The tracker is only created when the first incremental backup is requested, so that repositories that never use
+     * incremental backups never incur the overhead of recording the changes.
+     * 
+     * @return the change tracker; never null
+     */
+    protected synchronized BackupChangeTracker changeTracker() {
+        if (changeTracker == null) {
+            changeTracker = new BackupChangeTracker();
+            repositoryCache.register(changeTracker);
+        }
+        return changeTracker;
     }
 
     /**
@@ -120,7 +178,7 @@ public class BackupService {
      * @throws RepositoryException if the backup operation cannot be run
      */
     public org.modeshape.jcr.api.Problems backupRepository( File backupDirectory ) throws RepositoryException {
-        return backupRepository(backupDirectory, DEFAULT_NUMBER_OF_DOCUMENTS_IN_BACKUP_FILES, DEFAULT_COMPRESS);
+        return backupRepository(backupDirectory, BackupOptions.DEFAULT);
     }
 
     /**
@@ -136,8 +194,29 @@ public class BackupService {
     public org.modeshape.jcr.api.Problems backupRepository( File backupDirectory,
                                                             long documentsPerFile,
                                                             boolean compress ) throws RepositoryException {
+        return backupRepository(backupDirectory, backupOptions(documentsPerFile, compress));
+    }
+
+    /**
+     * Start asynchronously backing up the repository.
+     * 
+     * @param backupDirectory the directory on the file system into which the backup should be placed; this directory should
+     *        typically not exist
+     * @param options the options that control how the backup is written; may not be null
+     * @return the problems that occurred during the backup process
+     * @throws RepositoryException if the backup operation cannot be run
+     */
+    public org.modeshape.jcr.api.Problems backupRepository( File backupDirectory,
+                                                            BackupOptions options ) throws RepositoryException {
+        CheckArg.isNotNull(options, "options");
+        if (options.incremental()) {
+            // Incremental backups drain the change tracker, so they must be performed one at a time ...
+            synchronized (this) {
+                return new JcrProblems(createIncrementalBackupActivity(backupDirectory, options).execute());
+            }
+        }
         // Create the activity ...
-        final BackupActivity backupActivity = createBackupActivity(backupDirectory, documentsPerFile, compress);
+        final BackupActivity backupActivity = createBackupActivity(backupDirectory, options);
 
         // Run the backup and return the problems ...
         return new JcrProblems(backupActivity.execute());
@@ -189,7 +268,136 @@ public class BackupService {
     public BackupActivity createBackupActivity( File backupDirectory,
                                                 long documentsPerFile,
                                                 boolean compress ) {
-        return new BackupActivity(backupDirectory, documentStore, binaryStore, repositoryCache, documentsPerFile, compress);
+        return createBackupActivity(backupDirectory, backupOptions(documentsPerFile, compress));
+    }
+
+    /**
+     * Create a new {@link BackupActivity activity} instance that can back up the content of the repository as it exists at the
+     * time the activity is executed.
+     * 
+     * @param backupDirectory the directory on the file system into which the backup should be placed; this directory should
+     *        typically not exist
+     * @param options the options that control how the backup is written; may not be null
+     * @return the backup activity; never null
+     */
+    public BackupActivity createBackupActivity( File backupDirectory,
+                                                BackupOptions options ) {
+        CheckArg.isNotNull(options, "options");
+        BackupChangeTracker tracker = options.incremental() ? changeTracker() : null;
+        return new BackupActivity(backupDirectory, documentStore, binaryStore, repositoryCache, options.documentsPerFile(),
+                                  options.compress(), options.parallelism(), tracker);
+    }
+
+    /**
+     * Create a new {@link BackupActivity activity} instance that writes into the supplied directory only the changes made since
+     * the most recent backup generation in that directory. If that is not possible, because the directory does not contain a
+     * backup or because the changes since its most recent generation were not recorded, the activity will write a full backup.
+     * 
+     * @param backupDirectory the directory on the file system into which the backup should be placed
+     * @param options the options that control how the backup is written; may not be null
+     * @return the backup activity; never null
+     */
+    protected BackupActivity createIncrementalBackupActivity( File backupDirectory,
+                                                              BackupOptions options ) {
+        BackupChangeTracker tracker = changeTracker();
+        Document latest = null;
+        try {
+            List<File> increments = incrementDirectories(backupDirectory);
+            File latestDirectory = increments.isEmpty() ? backupDirectory : increments.get(increments.size() - 1);
+            latest = readManifest(latestDirectory);
+        } catch (IOException e) {
+            LOGGER.debug(e, "Unable to read the manifest of the backup at {0}", backupDirectory.getAbsolutePath());
+        }
+        if (latest != null && tracker.getId().equals(latest.getString(FieldName.TRACKER_ID))
+            && latest.getLong(FieldName.WATERMARK, -1L) == tracker.getWatermark()) {
+            // The tracker has recorded all of the changes since the latest generation, so write the next generation ...
+            int generation = latest.getInteger(FieldName.GENERATION, 0) + 1;
+            return new IncrementalBackupActivity(incrementDirectory(backupDirectory, generation), documentStore, binaryStore,
+                                                 repositoryCache, options.documentsPerFile(), options.compress(), tracker,
+                                                 generation);
+        }
+        if (latest != null) {
+            LOGGER.warn(JcrI18n.incrementalBackupRequiresFullBackup, repositoryCache.getName(), backupDirectory.getAbsolutePath());
+        }
+        return createBackupActivity(backupDirectory, options);
+    }
+
+    protected static BackupOptions backupOptions( final long documentsPerFile,
+                                                  final boolean compress ) {
+        return new BackupOptions() {
+            @Override
+            public long documentsPerFile() {
+                return documentsPerFile;
+            }
+
+            @Override
+            public boolean compress() {
+                return compress;
+            }
+        };
+    }
+
+    /**
+     * Get the filename prefix used for the document files of the given partition of a parallel backup.
+     * 
+     * @param partition the zero-based partition number
+     * @return the filename prefix; never null
+     */
+    protected static String partitionPrefix( int partition ) {
+        String suffix = StringUtil.justifyRight(Integer.toString(partition + 1), NUM_CHARS_IN_PARTITION_SUFFIX, '0');
+        return DOCUMENTS_FILENAME_PREFIX + PARTITION_PREFIX_SEPARATOR + suffix;
+    }
+
+    /**
+     * Get the directory into which the given generation of an incremental backup is written.
+     * 
+     * @param backupDirectory the directory containing the full backup; may not be null
+     * @param generation the generation number of the incremental backup; must be positive
+     * @return the directory for the increment; never null
+     */
+    protected static File incrementDirectory( File backupDirectory,
+                                              int generation ) {
+        String suffix = StringUtil.justifyRight(Integer.toString(generation), NUM_CHARS_IN_GENERATION_SUFFIX, '0');
+        return new File(backupDirectory, INCREMENT_DIR_PREFIX + suffix);
+    }
+
+    /**
+     * Find the directories of all of the complete incremental backups within the supplied backup directory, in the order in
+     * which they were written. An increment is only complete once its manifest has been written.
+     * 
+     * @param backupDirectory the directory containing the full backup; may not be null
+     * @return the increment directories; never null but possibly empty
+     */
+    protected static List<File> incrementDirectories( File backupDirectory ) {
+        File[] files = backupDirectory.listFiles();
+        if (files == null) return Collections.emptyList();
+        Arrays.sort(files); // the generation suffixes are zero-padded, so this sorts them by generation
+        List<File> increments = new ArrayList<File>();
+        for (File file : files) {
+            if (file.isDirectory() && file.getName().startsWith(INCREMENT_DIR_PREFIX)
+                && new File(file, MANIFEST_FILE_NAME).exists()) {
+                increments.add(file);
+            }
+        }
+        return increments;
+    }
+
+    /**
+     * Read the manifest file within the supplied directory.
+     * 
+     * @param directory the directory containing the backup or increment; may not be null
+     * @return the manifest document, or null if there is no manifest in the directory
+     * @throws IOException if the manifest could not be read
+     */
+    protected static Document readManifest( File directory ) throws IOException {
+        File file = new File(directory, MANIFEST_FILE_NAME);
+        if (!file.exists()) return null;
+        InputStream stream = new FileInputStream(file);
+        try {
+            return Json.read(stream);
+        } finally {
+            stream.close();
+        }
     }
 
     /**
@@ -214,7 +422,7 @@ public class BackupService {
         protected final File binaryDirectory;
         protected final org.modeshape.jcr.cache.document.LocalDocumentStore documentStore;
         protected final BinaryStore binaryStore;
-        protected final SimpleProblems problems;
+        protected final Problems problems;
         private final String backupLocation;
 
         protected Activity( File backupDirectory,
@@ -228,7 +436,7 @@ public class BackupService {
             this.documentStore = documentStore;
             this.binaryStore = binaryStore;
             this.repositoryCache = repositoryCache;
-            this.problems = new SimpleProblems();
+            this.problems = new ThreadSafeProblems();
         }
 
         /**
@@ -258,8 +466,14 @@ public class BackupService {
         protected final BlockingQueue<NodeKey> changedDocumentQueue;
         private final long documentsPerFile;
         private final boolean compress;
-        private BackupDocumentWriter contentWriter;
-        private BackupDocumentWriter changesWriter;
+        private final int parallelism;
+        private final AtomicLong binaryCount = new AtomicLong();
+        private final AtomicLong binaryBytes = new AtomicLong();
+        private final List<BackupDocumentWriter> partitionWriters = new ArrayList<BackupDocumentWriter>();
+        protected final BackupChangeTracker changeTracker;
+        protected BackupDocumentWriter contentWriter;
+        protected BackupDocumentWriter changesWriter;
+        private BackupChangeTracker.Changes trackedChanges;
 
         protected BackupActivity( File backupDirectory,
                                   org.modeshape.jcr.cache.document.LocalDocumentStore documentStore,
@@ -267,16 +481,38 @@ public class BackupService {
                                   RepositoryCache repositoryCache,
                                   long documentsPerFile,
                                   boolean compress ) {
+            this(backupDirectory, documentStore, binaryStore, repositoryCache, documentsPerFile, compress, 1, null);
+        }
+
+        protected BackupActivity( File backupDirectory,
+                                  org.modeshape.jcr.cache.document.LocalDocumentStore documentStore,
+                                  BinaryStore binaryStore,
+                                  RepositoryCache repositoryCache,
+                                  long documentsPerFile,
+                                  boolean compress,
+                                  int parallelism,
+                                  BackupChangeTracker changeTracker ) {
             super(backupDirectory, documentStore, binaryStore, repositoryCache);
             CheckArg.isPositive(documentsPerFile, "documentsPerFile");
+            CheckArg.isPositive(parallelism, "parallelism");
             this.documentsPerFile = documentsPerFile;
             this.compress = compress;
+            this.parallelism = parallelism;
+            this.changeTracker = changeTracker;
             this.changedDocumentQueue = new LinkedBlockingQueue<NodeKey>();
             ThreadFactory threadFactory = new NamedThreadFactory("modeshape-backup");
             this.changedDocumentWorker = Executors.newSingleThreadExecutor(threadFactory);
             this.observer = new BackupObserver(changedDocumentQueue);
         }
 
+        protected final long documentsPerFile() {
+            return documentsPerFile;
+        }
+
+        protected final boolean compress() {
+            return compress;
+        }
+
         /**
          * Initialize the backup area on disk, ensuring that the backup location does exist.
          * 
@@ -325,11 +561,255 @@ public class BackupService {
                 } finally {
                     outputStream.close();
                 }
+                binaryCount.incrementAndGet();
+                binaryBytes.addAndGet(file.length());
             } catch (Throwable t) {
                 problems.addError(JcrI18n.problemsWritingDocumentToBackup, file.getAbsolutePath(), t.getMessage());
             }
         }
 
+        /**
+         * Write the documents with the supplied keys to the content area, splitting the keys into {@link #parallelism}
+         * partitions that are each written by a separate thread into its own sequence of files. A document is always placed into
+         * the same partition, based upon the hash of its key.
+         * 
+         * @param keys the sequence of document keys; may not be null
+         * @return the number of documents that were written
+         * @throws Exception if there is a problem obtaining the keys or if the operation was interrupted
+         */
+        protected long writeToContentAreaInParallel( Sequence<String> keys ) throws Exception {
+            ExecutorService workers = Executors.newFixedThreadPool(parallelism, new NamedThreadFactory("modeshape-backup-writer"));
+            List<BlockingQueue<String>> queues = new ArrayList<BlockingQueue<String>>(parallelism);
+            List<Future<Long>> results = new ArrayList<Future<Long>>(parallelism);
+            try {
+                for (int i = 0; i != parallelism; ++i) {
+                    final BlockingQueue<String> queue = new ArrayBlockingQueue<String>(PARTITION_QUEUE_CAPACITY);
+                    final BackupDocumentWriter writer = new BackupDocumentWriter(backupDirectory, partitionPrefix(i),
+                                                                                 documentsPerFile, compress, problems);
+                    queues.add(queue);
+                    partitionWriters.add(writer);
+                    results.add(workers.submit(new Callable<Long>() {
+                        @Override
+                        public Long call() throws Exception {
+                            long counter = 0L;
+                            while (true) {
+                                String key = queue.take();
+                                // Document keys are never empty, so an empty key marks the end of the partition ...
+                                if (key.length() == 0) break;
+                                SchematicEntry entry = documentStore.get(key);
+                                if (entry != null) {
+                                    writer.write(entry.asDocument());
+                                    ++counter;
+                                }
+                            }
+                            return counter;
+                        }
+                    }));
+                }
+                boolean failed = false;
+                try {
+                    // Distribute the keys to the partitions ...
+                    while (!failed) {
+                        String key = keys.next();
+                        if (key == null) break;
+                        int partition = (key.hashCode() & Integer.MAX_VALUE) % parallelism;
+                        failed = !enqueue(queues.get(partition), key, results.get(partition));
+                    }
+                } finally {
+                    // Tell the workers that there are no more keys ...
+                    for (int i = 0; i != parallelism && !failed; ++i) {
+                        enqueue(queues.get(i), "", results.get(i));
+                    }
+                    if (failed) {
+                        // A worker has failed, so the backup is incomplete and the other workers can be stopped ...
+                        cancel(results);
+                    }
+                }
+                long counter = 0L;
+                for (Future<Long> result : results) {
+                    try {
+                        counter += result.get();
+                    } catch (ExecutionException e) {
+                        Throwable cause = e.getCause();
+                        I18n msg = JcrI18n.problemObtainingDocumentsToBackup;
+                        problems.addError(cause, msg, repositoryName(), backupLocation(), cause.getMessage());
+                        cancel(results);
+                    } catch (CancellationException e) {
+                        // Another worker failed, and its problem has been (or will be) recorded ...
+                    }
+                }
+                return counter;
+            } finally {
+                workers.shutdownNow();
+                workers.awaitTermination(10, TimeUnit.SECONDS);
+            }
+        }
+
+        /**
+         * Add the key to the queue of a partition, waiting for space to become available but only while the partition's worker
+         * is still running.
+         * 
+         * @param queue the partition's queue; may not be null
+         * @param key the key to be added; may not be null
+         * @param worker the future for the partition's worker; may not be null
+         * @return true if the key was added, or false if the worker has completed (usually because it failed)
+         * @throws InterruptedException if the thread was interrupted while waiting
+         */
+        private boolean enqueue( BlockingQueue<String> queue,
+                                 String key,
+                                 Future<Long> worker ) throws InterruptedException {
+            while (!queue.offer(key, 100L, TimeUnit.MILLISECONDS)) {
+                if (worker.isDone()) return false;
+            }
+            return true;
+        }
+
+        private void cancel( List<Future<Long>> workers ) {
+            for (Future<Long> worker : workers) {
+                worker.cancel(true);
+            }
+        }
+
+        /**
+         * Write the supplied binary values to the content area, using {@link #parallelism} threads to copy the values.
+         * 
+         * @param binaryKeys the keys of the binary values to be written; may not be null
+         * @throws InterruptedException if the operation was interrupted
+         */
+        protected void writeToContentAreaInParallel( Iterable<BinaryKey> binaryKeys ) throws InterruptedException {
+            ExecutorService workers = Executors.newFixedThreadPool(parallelism, new NamedThreadFactory("modeshape-backup-writer"));
+            // Limit the number of binary values that are waiting to be written ...
+            final Semaphore permits = new Semaphore(parallelism * 2);
+            try {
+                for (final BinaryKey binaryKey : binaryKeys) {
+                    permits.acquire();
+                    workers.submit(new Runnable() {
+                        @Override
+                        public void run() {
+                            try {
+                                writeToContentArea(binaryKey, binaryStore.getInputStream(binaryKey));
+                            } catch (BinaryStoreException e) {
+                                problems.addError(JcrI18n.problemsWritingBinaryToBackup, binaryKey, backupLocation(),
+                                                  e.getMessage());
+                            } finally {
+                                permits.release();
+                            }
+                        }
+                    });
+                }
+            } finally {
+                workers.shutdown();
+                workers.awaitTermination(Long.MAX_VALUE, TimeUnit.MILLISECONDS);
+            }
+        }
+
+        /**
+         * Write the manifest file that describes the backup, including the throughput of the backup operation.
+         * 
+         * @param durationInMillis the number of milliseconds it took to perform the backup
+         */
+        protected void writeManifest( long durationInMillis ) {
+            File file = new File(backupDirectory, MANIFEST_FILE_NAME);
+            try {
+                long documentCount = getDocumentCount();
+                long totalBytes = getDocumentBytes() + getBinaryBytes();
+                double seconds = Math.max(durationInMillis, 1L) / 1000.0d;
+                EditableDocument doc = Schematic.newDocument();
+                doc.setNumber(FieldName.PARALLELISM, parallelism);
+                EditableArray partitions = doc.setArray(FieldName.PARTITIONS);
+                for (int i = 0; i != partitionWriters.size(); ++i) {
+                    partitions.add(partitionPrefix(i));
+                }
+                doc.setNumber(FieldName.DOCUMENT_COUNT, documentCount);
+                doc.setNumber(FieldName.DOCUMENT_BYTES, getDocumentBytes());
+                doc.setNumber(FieldName.BINARY_COUNT, getBinaryCount());
+                doc.setNumber(FieldName.BINARY_BYTES, getBinaryBytes());
+                doc.setNumber(FieldName.DURATION_IN_MILLIS, durationInMillis);
+                doc.setNumber(FieldName.DOCUMENTS_PER_SECOND, (long)(documentCount / seconds));
+                doc.setNumber(FieldName.BYTES_PER_SECOND, (long)(totalBytes / seconds));
+                addToManifest(doc);
+                OutputStream outputStream = new FileOutputStream(file);
+                try {
+                    Json.write(doc, outputStream);
+                    outputStream.flush();
+                } finally {
+                    outputStream.close();
+                }
+            } catch (Throwable t) {
+                problems.addError(JcrI18n.problemsWritingDocumentToBackup, file.getAbsolutePath(), t.getMessage());
+            }
+        }
+
+        /**
+         * Add to the manifest the information needed to continue this backup with an incremental backup. This method does nothing
+         * if this backup is not tracking changes.
+         * 
+         * @param manifest the manifest document; never null
+         */
+        protected void addToManifest( EditableDocument manifest ) {
+            if (trackedChanges == null) return;
+            manifest.setNumber(FieldName.GENERATION, 0);
+            manifest.setString(FieldName.TRACKER_ID, changeTracker.getId());
+            manifest.setNumber(FieldName.WATERMARK, trackedChanges.getWatermark());
+        }
+
+        /**
+         * Remove from the backup directory any incremental backups that were based upon a previous full backup.
+         */
+        protected void removeIncrements() {
+            for (File increment : incrementDirectories(backupDirectory)) {
+                FileUtil.delete(increment);
+            }
+        }
+
+        /**
+         * Get the number of documents that have been written to the backup so far.
+         * 
+         * @return the number of documents; never negative
+         */
+        public long getDocumentCount() {
+            long count = 0L;
+            if (contentWriter != null) count += contentWriter.getDocumentCount();
+            if (changesWriter != null) count += changesWriter.getDocumentCount();
+            for (BackupDocumentWriter writer : partitionWriters) {
+                count += writer.getDocumentCount();
+            }
+            return count;
+        }
+
+        /**
+         * Get the number of bytes in the document files that have been completely written to the backup so far.
+         * 
+         * @return the number of bytes; never negative
+         */
+        public long getDocumentBytes() {
+            long count = 0L;
+            if (contentWriter != null) count += contentWriter.getByteCount();
+            if (changesWriter != null) count += changesWriter.getByteCount();
+            for (BackupDocumentWriter writer : partitionWriters) {
+                count += writer.getByteCount();
+            }
+            return count;
+        }
+
+        /**
+         * Get the number of binary values that have been written to the backup so far.
+         * 
+         * @return the number of binary values; never negative
+         */
+        public long getBinaryCount() {
+            return binaryCount.get();
+        }
+
+        /**
+         * Get the number of bytes of binary values that have been written to the backup so far.
+         * 
+         * @return the number of bytes; never negative
+         */
+        public long getBinaryBytes() {
+            return binaryBytes.get();
+        }
+
         protected void writeToChangedArea( SchematicEntry document ) {
             LOGGER.debug("Writing document to change area of backup for {0} repository at {1}",
                          repositoryName(),
@@ -371,7 +851,16 @@ public class BackupService {
                                                           problems);
             this.changesWriter = new BackupDocumentWriter(changeDirectory, DOCUMENTS_FILENAME_PREFIX, documentsPerFile, compress,
                                                           problems);
-            long numBinaryValues = 0L;
+            this.partitionWriters.clear();
+            long startTime = System.currentTimeMillis();
+
+            // Any increments already in the directory were based upon a different full backup ...
+            removeIncrements();
+            if (changeTracker != null) {
+                // Start recording the changes for the next incremental backup. Changes made during this backup will be
+                // included in both this backup and the next increment, but that's fine ...
+                this.trackedChanges = changeTracker.drain();
+            }
 
             try {
                 final AtomicBoolean continueWritingChangedDocuments = new AtomicBoolean(true);
@@ -419,15 +908,20 @@ public class BackupService {
                 try {
                     // PHASE 1:
                     // Perform the backup of the repository cache content ...
-                    int counter = 0;
+                    long counter = 0L;
                     Sequence<String> sequence = InfinispanUtil.getAllKeys(documentStore.localCache());
-                    while (true) {
-                        String key = sequence.next();
-                        if (key == null) break;
-                        SchematicEntry entry = documentStore.get(key);
-                        if (entry != null) {
-                            writeToContentArea(entry);
-                            ++counter;
+                    if (parallelism > 1) {
+                        // Write the documents in partitions, each with its own thread and its own files ...
+                        counter = writeToContentAreaInParallel(sequence);
+                    } else {
+                        while (true) {
+                            String key = sequence.next();
+                            if (key == null) break;
+                            SchematicEntry entry = documentStore.get(key);
+                            if (entry != null) {
+                                writeToContentArea(entry);
+                                ++counter;
+                            }
                         }
                     }
                     LOGGER.debug("Wrote {0} documents to {1}", counter, backupDirectory.getAbsolutePath());
@@ -455,15 +949,20 @@ public class BackupService {
                 // PHASE 3:
                 // Perform the backup of the binary store ...
                 try {
-                    int counter = 0;
-                    for (BinaryKey binaryKey : binaryStore.getAllBinaryKeys()) {
-                        try {
-                            writeToContentArea(binaryKey, binaryStore.getInputStream(binaryKey));
-                            ++counter;
-                        } catch (BinaryStoreException e) {
-                            problems.addError(JcrI18n.problemsWritingBinaryToBackup, binaryKey, backupLocation(), e.getMessage());
+                    long counter = getBinaryCount();
+                    if (parallelism > 1) {
+                        writeToContentAreaInParallel(binaryStore.getAllBinaryKeys());
+                    } else {
+                        for (BinaryKey binaryKey : binaryStore.getAllBinaryKeys()) {
+                            try {
+                                writeToContentArea(binaryKey, binaryStore.getInputStream(binaryKey));
+                            } catch (BinaryStoreException e) {
+                                problems.addError(JcrI18n.problemsWritingBinaryToBackup, binaryKey, backupLocation(),
+                                                  e.getMessage());
+                            }
                         }
                     }
+                    counter = getBinaryCount() - counter;
                     LOGGER.debug("Wrote {0} binary values to {1}", counter, binaryDirectory.getAbsolutePath());
                 } catch (BinaryStoreException e) {
                     I18n msg = JcrI18n.problemsGettingBinaryKeysFromBinaryStore;
@@ -472,15 +971,19 @@ public class BackupService {
 
                 // PHASE 4:
                 // Write all of the binary files that were added during the changes made while we worked ...
-                int counter = 0;
-                for (BinaryKey binaryKey : observer.getUsedBinaryKeys()) {
-                    try {
-                        writeToContentArea(binaryKey, binaryStore.getInputStream(binaryKey));
-                        ++counter;
-                    } catch (BinaryStoreException e) {
-                        problems.addError(JcrI18n.problemsWritingBinaryToBackup, binaryKey, backupLocation(), e.getMessage());
+                long counter = getBinaryCount();
+                if (parallelism > 1) {
+                    writeToContentAreaInParallel(observer.getUsedBinaryKeys());
+                } else {
+                    for (BinaryKey binaryKey : observer.getUsedBinaryKeys()) {
+                        try {
+                            writeToContentArea(binaryKey, binaryStore.getInputStream(binaryKey));
+                        } catch (BinaryStoreException e) {
+                            problems.addError(JcrI18n.problemsWritingBinaryToBackup, binaryKey, backupLocation(), e.getMessage());
+                        }
                     }
                 }
+                counter = getBinaryCount() - counter;
                 LOGGER.debug("Wrote {0} recent binary values to {1}", counter, binaryDirectory.getAbsolutePath());
 
                 // PHASE 5:
@@ -493,8 +996,8 @@ public class BackupService {
                 LOGGER.debug("Completed backup of '{0}' repository into {1} (contains {2} nodes and {3} binary values)",
                              repositoryName(),
                              backupLocation(),
-                             contentWriter.getDocumentCount() + changesWriter.getDocumentCount(),
-                             numBinaryValues);
+                             getDocumentCount(),
+                             getBinaryCount());
 
             } catch (InterruptedException e) {
                 Thread.interrupted();
@@ -505,18 +1008,166 @@ public class BackupService {
             } finally {
                 // PHASE 5:
                 // Close all open writers ...
-                try {
-                    contentWriter.close();
-                } finally {
-                    contentWriter = null;
+                contentWriter.close();
+                changesWriter.close();
+                for (BackupDocumentWriter writer : partitionWriters) {
+                    writer.close();
+                }
+
+                // PHASE 6:
+                // Write the manifest that describes the backup and its throughput ...
+                if (trackedChanges != null && problems.hasErrors()) {
+                    // This backup cannot be continued with an incremental backup ...
+                    changeTracker.rollback(trackedChanges);
+                    trackedChanges = null;
+                }
+                long durationInMillis = System.currentTimeMillis() - startTime;
+                writeManifest(durationInMillis);
+                LOGGER.debug("Wrote {0} documents ({1} bytes) and {2} binary values ({3} bytes) to {4} in {5} ms",
+                             getDocumentCount(),
+                             getDocumentBytes(),
+                             getBinaryCount(),
+                             getBinaryBytes(),
+                             backupLocation(),
+                             durationInMillis);
+            }
+
+            return problems;
+        }
+    }
+
+    /**
+     * The {@link BackupActivity} subclass that writes a new generation of an incremental backup, containing only the documents
+     * and binary values that were changed since the previous generation. Documents that were removed are recorded in the
+     * generation's manifest.
+     */
+    @NotThreadSafe
+    public static class IncrementalBackupActivity extends BackupActivity {
+
+        private final int generation;
+        private final List<String> removedDocumentKeys = new ArrayList<String>();
+        private BackupChangeTracker.Changes changes;
+
+        protected IncrementalBackupActivity( File incrementDirectory,
+                                             org.modeshape.jcr.cache.document.LocalDocumentStore documentStore,
+                                             BinaryStore binaryStore,
+                                             RepositoryCache repositoryCache,
+                                             long documentsPerFile,
+                                             boolean compress,
+                                             BackupChangeTracker changeTracker,
+                                             int generation ) {
+            super(incrementDirectory, documentStore, binaryStore, repositoryCache, documentsPerFile, compress, 1, changeTracker);
+            CheckArg.isNotNull(changeTracker, "changeTracker");
+            CheckArg.isPositive(generation, "generation");
+            this.generation = generation;
+        }
+
+        /**
+         * Get the generation number of this incremental backup.
+         * 
+         * @return the generation number; always positive
+         */
+        public int getGeneration() {
+            return generation;
+        }
+
+        @Override
+        protected void addToManifest( EditableDocument manifest ) {
+            manifest.setNumber(FieldName.GENERATION, generation);
+            manifest.setString(FieldName.TRACKER_ID, changeTracker.getId());
+            manifest.setNumber(FieldName.WATERMARK, changes.getWatermark());
+            EditableArray removed = manifest.setArray(FieldName.REMOVED_DOCUMENTS);
+            for (String key : removedDocumentKeys) {
+                removed.add(key);
+            }
+        }
+
+        /**
+         * Write the supplied document and all of the blocks of child references that are chained from it, since changes to a
+         * node's children may be stored only in those blocks.
+         * 
+         * @param entry the document for a node; may not be null
+         * @param writtenKeys the keys of the documents that have already been written; may not be null
+         */
+        protected void writeWithChildBlocks( SchematicEntry entry,
+                                             Set<String> writtenKeys ) {
+            writeToContentArea(entry);
+            String blockKey = nextBlockKey(entry);
+            while (blockKey != null && writtenKeys.add(blockKey)) {
+                SchematicEntry block = documentStore.get(blockKey);
+                if (block == null) break;
+                writeToContentArea(block);
+                blockKey = nextBlockKey(block);
+            }
+        }
+
+        private String nextBlockKey( SchematicEntry entry ) {
+            Document content = entry.getContentAsDocument();
+            Document childrenInfo = content != null ? content.getDocument(DocumentConstants.CHILDREN_INFO) : null;
+            return childrenInfo != null ? childrenInfo.getString(DocumentConstants.NEXT_BLOCK) : null;
+        }
+
+        @Override
+        public Problems execute() {
+            // This activity writes the changes itself, so the inherited worker for changed documents is never used ...
+            changedDocumentWorker.shutdown();
+
+            // Remove anything left behind by a previous attempt at writing this generation ...
+            if (backupDirectory.exists()) FileUtil.delete(backupDirectory);
+            if (!initializeAreaOnDisk()) return problems;
+
+            LOGGER.debug("Starting incremental backup {0} of '{1}' repository into {2}", generation, repositoryName(),
+                         backupLocation());
+            this.contentWriter = new BackupDocumentWriter(backupDirectory, DOCUMENTS_FILENAME_PREFIX, documentsPerFile(),
+                                                          compress(), problems);
+            long startTime = System.currentTimeMillis();
+            this.changes = changeTracker.drain();
+            boolean completed = false;
+            try {
+                // Write out the current state of each of the changed documents, or record that it was removed ...
+                Set<String> writtenKeys = new HashSet<String>();
+                for (NodeKey nodeKey : changes.getChangedNodes()) {
+                    String key = nodeKey.toString();
+                    if (!writtenKeys.add(key)) continue;
+                    SchematicEntry entry = documentStore.get(key);
+                    if (entry != null) {
+                        writeWithChildBlocks(entry, writtenKeys);
+                    } else {
+                        removedDocumentKeys.add(key);
+                    }
+                }
+                // Always write out the repository metadata document ...
+                NodeKey metadataKey = repositoryCache.getRepositoryMetadataDocumentKey();
+                if (!writtenKeys.contains(metadataKey.toString())) {
+                    writeToContentArea(documentStore.get(metadataKey.toString()));
+                }
+                LOGGER.debug("Wrote {0} changed documents and recorded {1} removed documents to {2}", getDocumentCount(),
+                             removedDocumentKeys.size(), backupLocation());
+
+                // Write out the binary values that were used by the changes ...
+                for (BinaryKey binaryKey : changes.getUsedBinaryKeys()) {
                     try {
-                        changesWriter.close();
-                    } finally {
-                        changesWriter = null;
+                        writeToContentArea(binaryKey, binaryStore.getInputStream(binaryKey));
+                    } catch (BinaryStoreException e) {
+                        problems.addError(JcrI18n.problemsWritingBinaryToBackup, binaryKey, backupLocation(), e.getMessage());
                     }
                 }
+                LOGGER.debug("Wrote {0} changed binary values to {1}", getBinaryCount(), binaryDirectory.getAbsolutePath());
+                writeToChangedArea(changes.getUnusedBinaryKeys());
+                completed = true;
+            } catch (RuntimeException e) {
+                I18n msg = JcrI18n.problemObtainingDocumentsToBackup;
+                this.problems.addError(e, msg, repositoryName(), backupLocation(), e.getMessage());
+            } finally {
+                contentWriter.close();
+                if (completed && !problems.hasErrors()) {
+                    // Writing the manifest marks this generation as complete ...
+                    writeManifest(System.currentTimeMillis() - startTime);
+                } else {
+                    // Put the changes back so that they are included in the next attempt ...
+                    changeTracker.rollback(changes);
+                }
             }
-
             return problems;
         }
     }
@@ -536,15 +1187,103 @@ public class BackupService {
 
         @Override
         public Problems execute() {
+            List<File> increments = incrementDirectories(backupDirectory);
+
             removeExistingBinaryFiles();
             restoreBinaryFiles();
+            for (File increment : increments) {
+                restoreBinaryFiles(new File(increment, BINARY_AREA_DIR_NAME));
+            }
 
             removeExistingDocuments();
             restoreDocuments(backupDirectory); // first pass of documents
+            restoreDocumentPartitions(readPartitions()); // documents written by a parallel backup
             restoreDocuments(changeDirectory); // documents changed while backup was being made
+            for (File increment : increments) {
+                restoreIncrement(increment); // documents changed since the previous generation
+            }
             return problems;
         }
 
+        /**
+         * Apply the documents in the supplied generation of an incremental backup, and then remove the documents that were
+         * recorded as having been removed.
+         * 
+         * @param incrementDirectory the directory of the increment; may not be null
+         */
+        protected void restoreIncrement( File incrementDirectory ) {
+            restoreDocuments(incrementDirectory);
+            try {
+                Document manifest = readManifest(incrementDirectory);
+                List<?> removed = manifest != null ? manifest.getArray(FieldName.REMOVED_DOCUMENTS) : null;
+                if (removed == null) return;
+                for (Object key : removed) {
+                    if (key != null) documentStore.remove(key.toString());
+                }
+                LOGGER.debug("Removed {0} documents recorded in {1}", removed.size(), incrementDirectory.getAbsolutePath());
+            } catch (IOException e) {
+                File file = new File(incrementDirectory, MANIFEST_FILE_NAME);
+                problems.addError(e, JcrI18n.problemsReadingBackupManifest, file.getAbsolutePath(), e.getMessage());
+            }
+        }
+
+        /**
+         * Read the names of the document partitions from the backup's manifest file.
+         * 
+         * @return the filename prefixes of the partitions; never null but empty if the backup was not written in parallel or if
+         *         the backup has no manifest
+         */
+        protected List<String> readPartitions() {
+            try {
+                Document manifest = readManifest(backupDirectory);
+                List<?> partitions = manifest != null ? manifest.getArray(FieldName.PARTITIONS) : null;
+                if (partitions == null) return Collections.emptyList();
+                List<String> prefixes = new ArrayList<String>(partitions.size());
+                for (Object partition : partitions) {
+                    if (partition != null) prefixes.add(partition.toString());
+                }
+                return prefixes;
+            } catch (IOException e) {
+                File file = new File(backupDirectory, MANIFEST_FILE_NAME);
+                problems.addError(e, JcrI18n.problemsReadingBackupManifest, file.getAbsolutePath(), e.getMessage());
+                return Collections.emptyList();
+            }
+        }
+
+        /**
+         * Restore the documents in each of the supplied partitions, using a separate thread for each partition.
+         * 
+         * @param partitions the filename prefixes of the partitions; may not be null
+         */
+        protected void restoreDocumentPartitions( List<String> partitions ) {
+            if (partitions.isEmpty()) return;
+            ThreadFactory threadFactory = new NamedThreadFactory("modeshape-restore");
+            ExecutorService workers = Executors.newFixedThreadPool(partitions.size(), threadFactory);
+            try {
+                List<Future<?>> results = new ArrayList<Future<?>>(partitions.size());
+                for (final String partition : partitions) {
+                    results.add(workers.submit(new Runnable() {
+                        @Override
+                        public void run() {
+                            restoreDocuments(backupDirectory, partition);
+                        }
+                    }));
+                }
+                for (Future<?> result : results) {
+                    result.get();
+                }
+            } catch (InterruptedException e) {
+                Thread.interrupted();
+                I18n msg = JcrI18n.interruptedWhilePerformingBackup;
+                this.problems.addError(msg, repositoryName(), backupLocation(), e.getMessage());
+            } catch (ExecutionException e) {
+                I18n msg = JcrI18n.problemsRestoringDocumentsFromBackup;
+                this.problems.addError(e.getCause(), msg, repositoryName(), backupLocation(), e.getCause().getMessage());
+            } finally {
+                workers.shutdownNow();
+            }
+        }
+
         public void removeExistingBinaryFiles() {
             // simply mark all of the existing binary values as unused; if an unused binary value is restored,
             // it will simply be kept without having store it ...
@@ -591,6 +1330,11 @@ public class BackupService {
         }
 
         public void restoreBinaryFiles() {
+            restoreBinaryFiles(binaryDirectory);
+        }
+
+        protected void restoreBinaryFiles( File binaryDirectory ) {
+            if (!binaryDirectory.isDirectory()) return;
             for (File segment1Dir : binaryDirectory.listFiles()) {
                 for (File segment2Dir : segment1Dir.listFiles()) {
                     for (File segment3Dir : segment2Dir.listFiles()) {
@@ -640,7 +1384,12 @@ public class BackupService {
         }
 
         protected void restoreDocuments( File directory ) {
-            BackupDocumentReader reader = new BackupDocumentReader(directory, DOCUMENTS_FILENAME_PREFIX, problems);
+            restoreDocuments(directory, DOCUMENTS_FILENAME_PREFIX);
+        }
+
+        protected void restoreDocuments( File directory,
+                                         String filenamePrefix ) {
+            BackupDocumentReader reader = new BackupDocumentReader(directory, filenamePrefix, problems);
             LOGGER.debug("Restoring documents from {0}", directory.getAbsolutePath());
             int count = 0;
             while (true) {
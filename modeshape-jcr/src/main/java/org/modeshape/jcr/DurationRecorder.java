@@ -0,0 +1,57 @@
+/*
+ * ModeShape (http://www.modeshape.org)
+ * See the COPYRIGHT.txt file distributed with this work for information
+ * regarding copyright ownership.  Some portions may be licensed
+ * to Red Hat, Inc. under one or more contributor license agreements.
+ * See the AUTHORS.txt file in the distribution for a full listing of 
+ * individual contributors.
+ *
+ * ModeShape is free software. Unless otherwise indicated, all code in ModeShape
+ * is licensed to you under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ * 
+ * ModeShape is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+package org.modeshape.jcr;
+
+import java.util.concurrent.TimeUnit;
+import org.modeshape.jcr.api.monitor.DurationMetric;
+
+/**
+ * A component that records the durations of operations for a {@link DurationMetric}. Implementations are called from within
+ * the code that performs the operations, and therefore must be fast and must not block.
+ */
+public interface DurationRecorder {
+
+    /**
+     * A recorder that ignores all durations, for use by components that are not running within a repository.
+     */
+    public static final DurationRecorder NO_OP = new DurationRecorder() {
+        @Override
+        public void recordDuration( DurationMetric metric,
+                                    long duration,
+                                    TimeUnit timeUnit ) {
+            // do nothing
+        }
+    };
+
+    /**
+     * Record a new duration for the given metric.
+     * 
+     * @param metric the metric; may not be null
+     * @param duration the duration
+     * @param timeUnit the time unit of the duration; may not be null
+     */
+    void recordDuration( DurationMetric metric,
+                         long duration,
+                         TimeUnit timeUnit );
+}
@@ -23,6 +23,7 @@
  */
 package org.modeshape.jcr;
 
+import java.util.Collection;
 import java.util.Iterator;
 import java.util.LinkedList;
 import java.util.List;
@@ -32,6 +33,7 @@ import org.modeshape.common.annotation.NotThreadSafe;
 import org.modeshape.common.util.CheckArg;
 import org.modeshape.jcr.cache.ChildReference;
 import org.modeshape.jcr.cache.ChildReferences;
+import org.modeshape.jcr.cache.document.WorkspaceCache;
 
 /**
  * A concrete {@link NodeIterator} implementation for children. Where possible, the creator should pass in the size. However, if
@@ -42,10 +44,18 @@ final class JcrChildNodeIterator implements NodeIterator {
 
     protected static interface NodeResolver {
         public Node nodeFrom( ChildReference ref );
+
+        /**
+         * Load at once the nodes for the supplied references, which will subsequently be passed to {@link #nodeFrom}.
+         * 
+         * @param refs the references to the nodes that will be needed next; never null
+         */
+        public void load( Collection<ChildReference> refs );
     }
 
     private final NodeResolver resolver;
     private final Iterator<ChildReference> iterator;
+    private final LinkedList<ChildReference> batch = new LinkedList<ChildReference>();
     private Iterator<Node> nodeIterator;
     private int ndx;
     private long size;
@@ -81,8 +91,8 @@ final class JcrChildNodeIterator implements NodeIterator {
         // Otherwise, we have to iterate through the remaining iterator and keep the results ...
         List<Node> remainingNodes = new LinkedList<Node>();
         size = ndx;
-        while (iterator.hasNext()) {
-            Node node = resolver.nodeFrom(iterator.next());
+        while (hasNextReference()) {
+            Node node = resolver.nodeFrom(nextReference());
             if (node != null) {
                 remainingNodes.add(node);
                 ++size;
@@ -94,7 +104,7 @@ final class JcrChildNodeIterator implements NodeIterator {
 
     @Override
     public boolean hasNext() {
-        return nodeIterator != null ? nodeIterator.hasNext() : iterator.hasNext();
+        return nodeIterator != null ? nodeIterator.hasNext() : hasNextReference();
     }
 
     @Override
@@ -109,13 +119,28 @@ final class JcrChildNodeIterator implements NodeIterator {
         }
         Node child = null;
         do {
-            ChildReference childRef = iterator.next();
+            ChildReference childRef = nextReference();
             child = resolver.nodeFrom(childRef);
         } while (child == null);
         ndx++;
         return child;
     }
 
+    private boolean hasNextReference() {
+        return !batch.isEmpty() || iterator.hasNext();
+    }
+
+    private ChildReference nextReference() {
+        if (batch.isEmpty()) {
+            // Read ahead the next batch of references, so that their nodes can be loaded at once rather than one at a time ...
+            while (iterator.hasNext() && batch.size() < WorkspaceCache.BULK_LOAD_SIZE) {
+                batch.add(iterator.next());
+            }
+            if (batch.size() > 1) resolver.load(batch);
+        }
+        return batch.removeFirst();
+    }
+
     @Override
     public void remove() {
         throw new UnsupportedOperationException();
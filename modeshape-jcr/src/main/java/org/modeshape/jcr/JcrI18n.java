@@ -95,6 +95,9 @@ public final class JcrI18n {
     public static I18n problemObtainingDocumentsToBackup;
     public static I18n backupOperationWasCancelled;
     public static I18n problemsClosingBackupFiles;
+    public static I18n problemsReadingBackupManifest;
+    public static I18n problemsRestoringDocumentsFromBackup;
+    public static I18n incrementalBackupRequiresFullBackup;
     public static I18n invalidJcrUrl;
     public static I18n unableToInitializeAuthenticationProvider;
     public static I18n errorInAuthenticationProvider;
@@ -357,6 +360,7 @@ public final class JcrI18n {
     // JcrObservationManager messages
     public static I18n cannotCreateUuid;
     public static I18n cannotPerformNodeTypeCheck;
+    public static I18n errorNotifyingEventListener;
     public static I18n sessionIsNotActive;
 
     // Versioning messages
@@ -437,6 +441,8 @@ public final class JcrI18n {
     public static I18n unableToDeleteTemporaryFile;
     public static I18n unableToFindBinaryValue;
     public static I18n unableToFindBinaryValueInCache;
+    public static I18n unableToCacheBinaryValue;
+    public static I18n unknownBinaryCompressionCodec;
     public static I18n tempDirectorySystemPropertyMustBeSet;
     public static I18n errorReadingBinaryValue;
     public static I18n errorStoringBinaryValue;
@@ -19,10 +19,7 @@ import java.util.List;
 import java.util.Map;
 import java.util.NoSuchElementException;
 import java.util.Set;
-import java.util.concurrent.atomic.AtomicInteger;
-import java.util.concurrent.locks.Lock;
 import java.util.concurrent.locks.ReadWriteLock;
-import java.util.concurrent.locks.ReentrantLock;
 import java.util.concurrent.locks.ReentrantReadWriteLock;
 import javax.jcr.AccessDeniedException;
 import javax.jcr.RangeIterator;
@@ -39,15 +36,12 @@ import org.modeshape.common.annotation.ThreadSafe;
 import org.modeshape.common.logging.Logger;
 import org.modeshape.common.util.CheckArg;
 import org.modeshape.common.util.StringUtil;
-import org.modeshape.jcr.api.monitor.ValueMetric;
 import org.modeshape.jcr.api.observation.PropertyEvent;
 import org.modeshape.jcr.api.value.DateTime;
 import org.modeshape.jcr.cache.NodeKey;
 import org.modeshape.jcr.cache.change.AbstractNodeChange;
 import org.modeshape.jcr.cache.change.AbstractSequencingChange;
-import org.modeshape.jcr.cache.change.Change;
 import org.modeshape.jcr.cache.change.ChangeSet;
-import org.modeshape.jcr.cache.change.ChangeSetListener;
 import org.modeshape.jcr.cache.change.NodeAdded;
 import org.modeshape.jcr.cache.change.NodeMoved;
 import org.modeshape.jcr.cache.change.NodeRemoved;
@@ -55,13 +49,13 @@ import org.modeshape.jcr.cache.change.NodeRenamed;
 import org.modeshape.jcr.cache.change.NodeReordered;
 import org.modeshape.jcr.cache.change.NodeSequenced;
 import org.modeshape.jcr.cache.change.NodeSequencingFailure;
-import org.modeshape.jcr.cache.change.Observable;
 import org.modeshape.jcr.cache.change.PropertyAdded;
 import org.modeshape.jcr.cache.change.PropertyChanged;
 import org.modeshape.jcr.cache.change.PropertyRemoved;
 import org.modeshape.jcr.value.Name;
 import org.modeshape.jcr.value.Path;
 import org.modeshape.jcr.value.PathFactory;
+import org.modeshape.jcr.value.ValueFormatException;
 
 /**
  * The implementation of JCR {@link ObservationManager}.
@@ -69,7 +63,7 @@ import org.modeshape.jcr.value.PathFactory;
  * @author Horia Chiorean
  */
 @ThreadSafe
-class JcrObservationManager implements ObservationManager, ChangeSetListener {
+class JcrObservationManager implements ObservationManager {
 
     /**
      * The key for storing the {@link JcrObservationManager#setUserData(String) observation user data} in the
@@ -90,9 +84,9 @@ class JcrObservationManager implements ObservationManager, ChangeSetListener {
     static final String ORDER_SRC_KEY = "srcChildRelPath";
 
     /**
-     * The repository observable the JCR listeners will be registered with.
+     * The dispatcher the JCR listeners will be registered with.
      */
-    private final Observable repositoryObservable;
+    private final ObservationDispatcher dispatcher;
 
     /**
      * The map of the JCR repository listeners and their associated wrapped class.
@@ -108,23 +102,6 @@ class JcrObservationManager implements ObservationManager, ChangeSetListener {
      * The name of the session's workspace; cached for performance reasons.
      */
     private final String workspaceName;
-    private final String systemWorkspaceName;
-
-    /**
-     * An object recording various metrics
-     */
-    private final RepositoryStatistics repositoryStatistics;
-
-    /**
-     * A map of [changeSetHashCode, integer] which keep track of the events which have been received by the observation manager
-     * and dispatched to the individual listeners. This is used for statistic purposes only.
-     */
-    private final Map<Integer, AtomicInteger> changesReceivedAndDispatched;
-
-    /**
-     * A lock which guards the JcrObservationManager#changesReceivedAndDispatched map
-     */
-    private final Lock changesLock;
 
     /**
      * A lock used to provide thread-safe guarantees when working it the repository observable
@@ -133,32 +110,21 @@ class JcrObservationManager implements ObservationManager, ChangeSetListener {
 
     /**
      * @param session the owning session (never <code>null</code>)
-     * @param repositoryObservable the repository observable used to register JCR listeners (never <code>null</code>)
-     * @param statistics a {@link RepositoryStatistics} instance with which the {@link ValueMetric#EVENT_QUEUE_SIZE} metric is
-     *        updated
+     * @param dispatcher the repository's observation dispatcher used to register JCR listeners (never <code>null</code>)
      * @throws IllegalArgumentException if either parameter is <code>null</code>
      */
     JcrObservationManager( JcrSession session,
-                           Observable repositoryObservable,
-                           RepositoryStatistics statistics ) {
+                           ObservationDispatcher dispatcher ) {
         CheckArg.isNotNull(session, "session");
-        CheckArg.isNotNull(repositoryObservable, "repositoryObservable");
-        CheckArg.isNotNull(statistics, "statistics");
+        CheckArg.isNotNull(dispatcher, "dispatcher");
 
         this.session = session;
         this.workspaceName = this.session.getWorkspace().getName();
-        this.systemWorkspaceName = this.session.repository().systemWorkspaceName();
 
-        this.repositoryObservable = repositoryObservable;
-        // this is registered as an observer just so it can count the number of events dispatched
-        this.repositoryObservable.register(this);
+        this.dispatcher = dispatcher;
 
         this.listenersLock = new ReentrantReadWriteLock(true);
         this.listeners = new HashMap<EventListener, JcrListenerAdapter>();
-
-        this.repositoryStatistics = statistics;
-        this.changesLock = new ReentrantLock();
-        this.changesReceivedAndDispatched = new HashMap<Integer, AtomicInteger>();
     }
 
     @Override
@@ -178,9 +144,11 @@ class JcrObservationManager implements ObservationManager, ChangeSetListener {
         try {
             listenersLock.writeLock().lock();
 
-            this.repositoryObservable.unregister(adapter);
-            this.repositoryObservable.register(adapter);
-            this.listeners.put(listener, adapter);
+            JcrListenerAdapter existing = this.listeners.put(listener, adapter);
+            if (existing != null) {
+                this.dispatcher.unregister(existing);
+            }
+            this.dispatcher.register(adapter, workspaceName, adapter.path, adapter.isDeep, adapter.filteredEventTypes());
         } finally {
             listenersLock.writeLock().unlock();
         }
@@ -201,47 +169,6 @@ class JcrObservationManager implements ObservationManager, ChangeSetListener {
         return this.session.getWorkspace().getNodeTypeManager();
     }
 
-    @Override
-    public void notify( ChangeSet changeSet ) {
-        incrementEventQueueStatistic(changeSet);
-    }
-
-    private void incrementEventQueueStatistic( ChangeSet changeSet ) {
-        // whenever a change set is received from the bus, increment the que size
-        repositoryStatistics.increment(ValueMetric.EVENT_QUEUE_SIZE);
-
-        try {
-            changesLock.lock();
-            if (!this.changesReceivedAndDispatched.containsKey(changeSet.hashCode())) {
-                // none of the adapters have processed this change set yet, register it
-                changesReceivedAndDispatched.put(changeSet.hashCode(), new AtomicInteger(listeners.size()));
-            }
-        } finally {
-            changesLock.unlock();
-        }
-    }
-
-    private void decrementEventQueueStatistic( ChangeSet changeSet ) {
-
-        try {
-            changesLock.lock();
-            if (changesReceivedAndDispatched.containsKey(changeSet.hashCode())) {
-                // the change set has already been registered (and the que size incremented)
-                int timesProcessed = changesReceivedAndDispatched.get(changeSet.hashCode()).decrementAndGet();
-                if (timesProcessed == 0) {
-                    repositoryStatistics.decrement(ValueMetric.EVENT_QUEUE_SIZE);
-                    changesReceivedAndDispatched.remove(changeSet.hashCode());
-                }
-            } else {
-                // the change got to this adapter (from the bus) before it got to the observation manager, so it'll be registered
-                // this listener already received the event, so total count of expected listeners is decremented by 1
-                changesReceivedAndDispatched.put(changeSet.hashCode(), new AtomicInteger(listeners.size() - 1));
-            }
-        } finally {
-            changesLock.unlock();
-        }
-    }
-
     @Override
     public EventListenerIterator getRegisteredEventListeners() throws RepositoryException {
         checkSession(); // make sure session is still active
@@ -277,10 +204,6 @@ class JcrObservationManager implements ObservationManager, ChangeSetListener {
         return workspaceName;
     }
 
-    final String getSystemWorkspaceName() {
-        return systemWorkspaceName;
-    }
-
     final String nodeIdentifier( NodeKey key ) {
         return session.nodeIdentifier(key);
     }
@@ -293,7 +216,7 @@ class JcrObservationManager implements ObservationManager, ChangeSetListener {
             listenersLock.writeLock().lock();
             for (JcrListenerAdapter listener : this.listeners.values()) {
                 assert (listener != null);
-                this.repositoryObservable.unregister(listener);
+                this.dispatcher.unregister(listener);
             }
             this.listeners.clear();
         } finally {
@@ -309,7 +232,7 @@ class JcrObservationManager implements ObservationManager, ChangeSetListener {
             listenersLock.writeLock().lock();
             JcrListenerAdapter jcrListener = this.listeners.remove(listener);
             if (jcrListener != null) {
-                this.repositoryObservable.unregister(jcrListener);
+                this.dispatcher.unregister(jcrListener);
             }
         } finally {
             listenersLock.writeLock().unlock();
@@ -727,17 +650,18 @@ class JcrObservationManager implements ObservationManager, ChangeSetListener {
 
     /**
      * The <code>JcrListener</code> class wraps JCR {@link EventListener} and is responsible for converting
-     * {@link org.modeshape.jcr.cache.change.Change events} into JCR {@link Event events}.
+     * {@link org.modeshape.jcr.cache.change.Change events} into JCR {@link Event events}. The workspace, path and event type
+     * filters are applied by the {@link ObservationDispatcher}, so that the adapter is only given the changes that match them.
      */
     @NotThreadSafe
-    class JcrListenerAdapter implements ChangeSetListener {
+    class JcrListenerAdapter implements ObservationDispatcher.Listener {
 
         private final Logger logger = Logger.getLogger(getClass());
 
         /**
          * The node path whose events should be handled (or <code>null</code>) if all node paths should be handled.
          */
-        private final String absPath;
+        protected final Path path;
 
         /**
          * The JCR event listener.
@@ -752,7 +676,7 @@ class JcrObservationManager implements ObservationManager, ChangeSetListener {
         /**
          * A flag indicating if events of child nodes of the <code>absPath</code> should be processed.
          */
-        private final boolean isDeep;
+        protected final boolean isDeep;
 
         /**
          * The node type names or <code>null</code>. If a node with one of these types is the source node of an event than this
@@ -781,6 +705,7 @@ class JcrObservationManager implements ObservationManager, ChangeSetListener {
          * @param uuids UUIDs or <code>null</code>
          * @param nodeTypeNames node type names or <code>null</code>
          * @param noLocal indicates if events from this listener's session should be ignored
+         * @throws RepositoryException if the absolute path is not a valid path
          */
         JcrListenerAdapter( EventListener delegate,
                             int eventTypes,
@@ -788,12 +713,16 @@ class JcrObservationManager implements ObservationManager, ChangeSetListener {
                             boolean isDeep,
                             String[] uuids,
                             String[] nodeTypeNames,
-                            boolean noLocal ) {
+                            boolean noLocal ) throws RepositoryException {
             assert (delegate != null);
 
             this.delegate = delegate;
             this.eventTypes = eventTypes;
-            this.absPath = absPath;
+            try {
+                this.path = StringUtil.isBlank(absPath) ? null : pathFactory().create(absPath);
+            } catch (ValueFormatException e) {
+                throw new RepositoryException(e.getMessage(), e);
+            }
             this.isDeep = isDeep;
             this.uuids = uuids;
             if (this.uuids != null) {
@@ -803,12 +732,28 @@ class JcrObservationManager implements ObservationManager, ChangeSetListener {
             this.noLocal = noLocal;
         }
 
-        @SuppressWarnings( "synthetic-access" )
-        @Override
-        public void notify( ChangeSet changeSet ) {
-            decrementEventQueueStatistic(changeSet);
+        /**
+         * Get the event types of the changes this listener should be given by the dispatcher. This is 0 if the filters are such
+         * that the listener should never receive any events.
+         * 
+         * @return the bitmask of event types
+         */
+        int filteredEventTypes() {
+            // JSR 283#12.5.3.4.2 and JSR 283#12.5.3.4.3
+            if ((uuids != null && uuids.length == 0) || (nodeTypeNames != null && nodeTypeNames.length == 0)) {
+                return 0;
+            }
+            // A relative path never matches the (absolute) path of a change ...
+            if (path != null && !path.isAbsolute()) {
+                return 0;
+            }
+            return eventTypes;
+        }
 
-            if (shouldReject(changeSet)) {
+        @Override
+        public void notify( ChangeSet changeSet,
+                            List<AbstractNodeChange> changes ) {
+            if (!acceptBasedOnOriginatingSession(changeSet)) {
                 return;
             }
 
@@ -817,7 +762,7 @@ class JcrObservationManager implements ObservationManager, ChangeSetListener {
             String userData = changeSet.getUserData().get(OBSERVATION_USER_DATA_KEY);
             JcrEventBundle bundle = new JcrEventBundle(changeSet.getTimestamp(), changeSet.getUserId(), userData);
 
-            for (Change change : changeSet) {
+            for (AbstractNodeChange change : changes) {
                 processChange(events, bundle, change);
             }
 
@@ -827,17 +772,9 @@ class JcrObservationManager implements ObservationManager, ChangeSetListener {
             }
         }
 
-        private boolean shouldReject( ChangeSet changeSet ) {
-            return !acceptBasedOnOriginatingSession(changeSet) || !acceptBasedOnOriginatingWorkspace(changeSet);
-        }
-
         private void processChange( Collection<Event> events,
                                     JcrEventBundle bundle,
-                                    Change change ) {
-            if (!(change instanceof AbstractNodeChange)) {
-                return;
-            }
-            AbstractNodeChange nodeChange = (AbstractNodeChange)change;
+                                    AbstractNodeChange nodeChange ) {
             if (logger.isDebugEnabled()) {
                 logger.debug("Received change: " + nodeChange);
             }
@@ -983,8 +920,8 @@ class JcrObservationManager implements ObservationManager, ChangeSetListener {
         }
 
         private boolean shouldReject( AbstractNodeChange nodeChange ) {
-            return !acceptBasedOnNodeTypeName(nodeChange) || !acceptBasedOnPath(nodeChange) || !acceptBasedOnUuid(nodeChange)
-                   || !acceptBasedOnPermission(nodeChange) || !acceptIfLockChange(nodeChange);
+            return !acceptBasedOnNodeTypeName(nodeChange) || !acceptBasedOnUuid(nodeChange) || !acceptBasedOnPermission(nodeChange)
+                   || !acceptIfLockChange(nodeChange);
         }
 
         /**
@@ -1028,12 +965,6 @@ class JcrObservationManager implements ObservationManager, ChangeSetListener {
             }
         }
 
-        private boolean acceptBasedOnOriginatingWorkspace( ChangeSet changeSet ) {
-            boolean sameWorkspace = getWorkspaceName().equalsIgnoreCase(changeSet.getWorkspaceName());
-            boolean isSystemWorkspace = getSystemWorkspaceName().equalsIgnoreCase(changeSet.getWorkspaceName());
-            return sameWorkspace || isSystemWorkspace;
-        }
-
         /**
          * @param changeSet the changes being processed
          * @return <code>true</code> if event occurred in a different session or if events from same session should be processed
@@ -1051,11 +982,6 @@ class JcrObservationManager implements ObservationManager, ChangeSetListener {
          */
         @SuppressWarnings( "synthetic-access" )
         private boolean acceptBasedOnNodeTypeName( AbstractNodeChange change ) {
-            // JSR 283#12.5.3.4.3
-            if (nodeTypeNames != null && nodeTypeNames.length == 0) {
-                return false;
-            }
-
             if (shouldCheckNodeType()) {
                 String primaryTypeName = null;
                 Set<String> mixinTypeNames = null;
@@ -1080,31 +1006,11 @@ class JcrObservationManager implements ObservationManager, ChangeSetListener {
             return true;
         }
 
-        /**
-         * @param change the change being processed
-         * @return <code>true</code> if there is no absolute path or if change path matches or optionally is a deep match
-         */
-        @SuppressWarnings( "synthetic-access" )
-        private boolean acceptBasedOnPath( AbstractNodeChange change ) {
-            if (!StringUtil.isBlank(absPath)) {
-                Path matchPath = session.pathFactory().create(this.absPath);
-                Path parentPath = parentNodePathOfChange(change);
-
-                return this.isDeep ? matchPath.isAtOrAbove(parentPath) : matchPath.equals(parentPath);
-            }
-            return true;
-        }
-
         /**
          * @param change the change being processed
          * @return <code>true</code> if there are no UUIDs to match or change UUID matches
          */
         private boolean acceptBasedOnUuid( AbstractNodeChange change ) {
-            // JSR_283#12.5.3.4.2
-            if (this.uuids != null && this.uuids.length == 0) {
-                return false;
-            }
-
             if ((this.uuids != null) && (this.uuids.length > 0)) {
                 String matchUuidString = nodeIdentifier(change.getKey());
                 return Arrays.binarySearch(this.uuids, matchUuidString) >= 0;
@@ -1114,11 +1020,7 @@ class JcrObservationManager implements ObservationManager, ChangeSetListener {
         }
 
         private Path parentNodePathOfChange( AbstractNodeChange change ) {
-            Path changePath = change.getPath();
-            if (change instanceof PropertyAdded || change instanceof PropertyRemoved || change instanceof PropertyChanged) {
-                return changePath;
-            }
-            return changePath.isRoot() ? changePath : changePath.getParent();
+            return ObservationDispatcher.nodePathOfChange(change);
         }
 
         @Override
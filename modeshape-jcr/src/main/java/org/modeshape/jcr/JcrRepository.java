@@ -86,6 +86,7 @@ import org.modeshape.common.annotation.Immutable;
 import org.modeshape.common.collection.Problems;
 import org.modeshape.common.collection.SimpleProblems;
 import org.modeshape.common.logging.Logger;
+import org.modeshape.common.statistic.Stopwatch;
 import org.modeshape.common.util.CheckArg;
 import org.modeshape.common.util.NamedThreadFactory;
 import org.modeshape.jcr.ModeShapeEngine.State;
@@ -118,8 +119,10 @@ import org.modeshape.jcr.cache.SessionEnvironment;
 import org.modeshape.jcr.cache.SessionEnvironment.Monitor;
 import org.modeshape.jcr.cache.SessionEnvironment.MonitorFactory;
 import org.modeshape.jcr.cache.WorkspaceNotFoundException;
+import org.modeshape.jcr.cache.document.ChangedChildrenOptimizer;
 import org.modeshape.jcr.cache.document.DocumentStore;
 import org.modeshape.jcr.cache.document.LocalDocumentStore;
+import org.modeshape.jcr.cache.document.LocalDocumentStore.DocumentOperationResults;
 import org.modeshape.jcr.cache.document.TransactionalWorkspaceCaches;
 import org.modeshape.jcr.federation.FederatedDocumentStore;
 import org.modeshape.jcr.mimetype.MimeTypeDetector;
@@ -146,6 +149,7 @@ import org.modeshape.jcr.value.Property;
 import org.modeshape.jcr.value.ValueFactories;
 import org.modeshape.jcr.value.binary.BinaryStore;
 import org.modeshape.jcr.value.binary.BinaryUsageChangeSetListener;
+import org.modeshape.jcr.value.binary.CachingBinaryStore;
 import org.modeshape.jcr.value.binary.infinispan.InfinispanBinaryStore;
 
 /**
@@ -870,6 +874,9 @@ public class JcrRepository implements org.modeshape.jcr.api.Repository {
         caches.add(localDocumentStore.localCache());
         // Add the binary store's cache, if there is one ...
         BinaryStore store = running.binaryStore();
+        if (store instanceof CachingBinaryStore) {
+            store = ((CachingBinaryStore)store).getDelegate();
+        }
         if (store instanceof InfinispanBinaryStore) {
             InfinispanBinaryStore ispnStore = (InfinispanBinaryStore)store;
             caches.addAll(ispnStore.getCaches());
@@ -910,6 +917,7 @@ public class JcrRepository implements org.modeshape.jcr.api.Repository {
         private final TextExtractors extractors;
         private final ChangeBus changeBus;
         private final ExecutorService changeDispatchingQueue;
+        private final ObservationDispatcher observationDispatcher;
         private final boolean useXaSessions;
         private final MimeTypeDetectors mimeTypeDetector;
         private final BackupService backupService;
@@ -922,6 +930,7 @@ public class JcrRepository implements org.modeshape.jcr.api.Repository {
 
         private Transaction existingUserTransaction;
         private RepositoryCache cache;
+        private ChangedChildrenOptimizer childrenOptimizer;
 
         protected RunningState() throws Exception {
             this(null, null);
@@ -1008,6 +1017,7 @@ public class JcrRepository implements org.modeshape.jcr.api.Repository {
                     this.persistentRegistry = other.persistentRegistry;
                     this.changeDispatchingQueue = other.changeDispatchingQueue;
                     this.changeBus = other.changeBus;
+                    this.observationDispatcher = other.observationDispatcher;
                 } else {
                     // find the Schematic database and Infinispan Cache ...
                     CacheContainer container = config.getContentCacheContainer();
@@ -1018,6 +1028,8 @@ public class JcrRepository implements org.modeshape.jcr.api.Repository {
                     this.connectors = new Connectors(this, connectorComponents, preconfiguredProjectionsByWorkspace);
                     logger.debug("Loading cache '{0}' from cache container {1}", cacheName, container);
                     SchematicDb database = Schematic.get(container, cacheName);
+                    database.setDeltaReplicationEnabled(config.isDeltaReplicationEnabled());
+                    database.setDeltaListener(new ReplicatedChangeRecorder(this.statistics));
                     this.documentStore = connectors.hasConnectors() ? new FederatedDocumentStore(connectors, database) : new LocalDocumentStore(
                                                                                                                                                 database);
                     // this.documentStore = new LocalDocumentStore(database);
@@ -1040,8 +1052,8 @@ public class JcrRepository implements org.modeshape.jcr.api.Repository {
                     this.persistentRegistry.setContext(this.context);
                     this.internalWorkerContext = this.context.with(new InternalSecurityContext(INTERNAL_WORKER_USERNAME));
 
-                    // Create the event bus
-                    this.changeDispatchingQueue = this.context().getCachedTreadPool("modeshape-event-dispatcher");
+                    // Create the event bus, which multiplexes all of the listeners over a small, fixed pool of threads ...
+                    this.changeDispatchingQueue = this.context().getThreadPool("modeshape-event-dispatcher");
                     this.changeBus = createBus(config.getClustering(),
                                                this.changeDispatchingQueue,
                                                systemWorkspaceName(),
@@ -1056,7 +1068,7 @@ public class JcrRepository implements org.modeshape.jcr.api.Repository {
                     final SessionEnvironment sessionEnv = new RepositorySessionEnvironment(this.transactions, indexingClustered);
                     CacheContainer workspaceCacheContainer = this.config.getWorkspaceContentCacheContainer();
                     this.cache = new RepositoryCache(context, documentStore, config, systemContentInitializer, sessionEnv,
-                                                     changeBus, workspaceCacheContainer);
+                                                     changeBus, workspaceCacheContainer, statistics);
 
                     // Set up the node type manager ...
                     this.nodeTypes = new RepositoryNodeTypeManager(this, true, true);
@@ -1069,6 +1081,12 @@ public class JcrRepository implements org.modeshape.jcr.api.Repository {
                     // Set up the unused binary value listener ...
                     this.cache.register(new BinaryUsageChangeSetListener(binaryStore));
 
+                    // Set up the dispatcher through which all JCR event listeners receive their events ...
+                    this.observationDispatcher = new ObservationDispatcher(this.changeDispatchingQueue, systemWorkspaceName(),
+                                                                           RepositoryChangeBus.DEFAULT_QUEUE_CAPACITY,
+                                                                           statistics);
+                    this.cache.register(this.observationDispatcher);
+
                     // Refresh several of the components information from the repository cache ...
                     this.persistentRegistry.refreshFromSystem();
                     this.lockManager.refreshFromSystem();
@@ -1110,6 +1128,8 @@ public class JcrRepository implements org.modeshape.jcr.api.Repository {
                 }
                 this.binaryStore.setMimeTypeDetector(this.mimeTypeDetector);
                 this.binaryStore.setTextExtractors(this.extractors);
+                this.binaryStore.setDurationRecorder(this.statistics);
+                this.binaryStore.setValueRecorder(this.statistics);
 
                 if (other != null && !change.sequencingChanged) {
                     this.sequencingQueue = other.sequencingQueue;
@@ -1328,18 +1348,37 @@ public class JcrRepository implements org.modeshape.jcr.api.Repository {
                 if (optConfig.isEnabled()) {
                     logger.warn(JcrI18n.enablingDocumentOptimization, name());
                     threadPoolName = optConfig.getThreadPoolName();
-                    long optInitialTimeInMillis = determineInitialDelay(optConfig.getInitialTimeExpression());
-                    long optIntervalInHours = optConfig.getIntervalInHours();
                     int targetCount = optConfig.getChildCountTarget();
                     int tolerance = optConfig.getChildCountTolerance();
-                    assert optInitialTimeInMillis >= 0;
-                    long optIntervalInMillis = TimeUnit.MILLISECONDS.convert(optIntervalInHours, TimeUnit.HOURS);
                     ScheduledExecutorService optService = this.context.getScheduledThreadPool(threadPoolName);
-                    OptimizationTask optTask = new OptimizationTask(JcrRepository.this, targetCount, tolerance);
-                    backgroundProcesses.add(optService.scheduleAtFixedRate(optTask,
-                                                                           optInitialTimeInMillis,
-                                                                           optIntervalInMillis,
-                                                                           TimeUnit.MILLISECONDS));
+
+                    // Optimize the nodes whose children are changed in this process ...
+                    this.childrenOptimizer = new ChangedChildrenOptimizer(context.getProcessId(),
+                                                                          documentStore().localStore(), targetCount,
+                                                                          tolerance);
+                    this.cache.register(this.childrenOptimizer);
+                    long changedIntervalInSeconds = optConfig.getChangedNodesIntervalInSeconds();
+                    ChangedChildrenOptimizationTask changedTask = new ChangedChildrenOptimizationTask(
+                                                                                                      JcrRepository.this,
+                                                                                                      childrenOptimizer,
+                                                                                                      optConfig.getNodesPerSecond());
+                    backgroundProcesses.add(optService.scheduleWithFixedDelay(changedTask,
+                                                                              changedIntervalInSeconds,
+                                                                              changedIntervalInSeconds,
+                                                                              TimeUnit.SECONDS));
+
+                    if (optConfig.isFullScanEnabled()) {
+                        // And periodically optimize all of the nodes ...
+                        long optInitialTimeInMillis = determineInitialDelay(optConfig.getInitialTimeExpression());
+                        long optIntervalInHours = optConfig.getIntervalInHours();
+                        assert optInitialTimeInMillis >= 0;
+                        long optIntervalInMillis = TimeUnit.MILLISECONDS.convert(optIntervalInHours, TimeUnit.HOURS);
+                        OptimizationTask optTask = new OptimizationTask(JcrRepository.this, targetCount, tolerance);
+                        backgroundProcesses.add(optService.scheduleAtFixedRate(optTask,
+                                                                               optInitialTimeInMillis,
+                                                                               optIntervalInMillis,
+                                                                               TimeUnit.MILLISECONDS));
+                    }
                 }
 
             } finally {
@@ -1461,6 +1500,10 @@ public class JcrRepository implements org.modeshape.jcr.api.Repository {
             return config.getQuery().fullTextSearchEnabled();
         }
 
+        final ObservationDispatcher observationDispatcher() {
+            return observationDispatcher;
+        }
+
         protected final BackupService backupService() {
             return backupService;
         }
@@ -1556,6 +1599,9 @@ public class JcrRepository implements org.modeshape.jcr.api.Repository {
             for (ScheduledFuture<?> future : backgroundProcesses) {
                 future.cancel(true);
             }
+            if (this.childrenOptimizer != null) {
+                this.cache.unregister(this.childrenOptimizer);
+            }
 
             // Unregister from JNDI ...
             unbindFromJndi();
@@ -1582,6 +1628,10 @@ public class JcrRepository implements org.modeshape.jcr.api.Repository {
             this.cache.startShutdown();
 
             // shutdown the event bus
+            if (this.observationDispatcher != null) {
+                this.observationDispatcher.shutdown();
+            }
+
             if (this.changeBus != null) {
                 this.changeBus.shutdown();
             }
@@ -1777,7 +1827,9 @@ public class JcrRepository implements org.modeshape.jcr.api.Repository {
                                        boolean separateThreadForSystemWorkspace,
                                        String processId ) {
             RepositoryChangeBus standaloneBus = new RepositoryChangeBus(executor, systemWorkspaceName,
-                                                                        separateThreadForSystemWorkspace);
+                                                                        separateThreadForSystemWorkspace,
+                                                                        RepositoryChangeBus.DEFAULT_QUEUE_CAPACITY,
+                                                                        RepositoryChangeBus.DEFAULT_MAX_BATCH_SIZE, statistics);
             return clusteringConfiguration.isEnabled() ? new ClusteredRepositoryChangeBus(clusteringConfiguration, standaloneBus,
                                                                                           processId) : standaloneBus;
         }
@@ -1823,6 +1875,24 @@ public class JcrRepository implements org.modeshape.jcr.api.Repository {
         }
     }
 
+    /**
+     * Records the estimated size of each change to a node that is sent to the other processes in the cluster.
+     */
+    protected static class ReplicatedChangeRecorder implements SchematicDb.DeltaListener {
+        private final ValueRecorder recorder;
+
+        protected ReplicatedChangeRecorder( ValueRecorder recorder ) {
+            this.recorder = recorder;
+        }
+
+        @Override
+        public void changeSent( boolean wholeDocument,
+                                long estimatedSize ) {
+            recorder.increment(wholeDocument ? ValueMetric.REPLICATED_DOCUMENT_SIZE : ValueMetric.REPLICATED_DELTA_SIZE,
+                               estimatedSize);
+        }
+    }
+
     protected static class RepositoryMonitorFactory implements MonitorFactory {
         private final RunningState runningState;
 
@@ -2063,6 +2133,45 @@ public class JcrRepository implements org.modeshape.jcr.api.Repository {
         }
     }
 
+    protected static class ChangedChildrenOptimizationTask extends BackgroundRepositoryTask {
+        private final ChangedChildrenOptimizer optimizer;
+        private final int maxNodesPerSecond;
+
+        protected ChangedChildrenOptimizationTask( JcrRepository repository,
+                                                   ChangedChildrenOptimizer optimizer,
+                                                   int maxNodesPerSecond ) {
+            super(repository);
+            this.optimizer = optimizer;
+            this.maxNodesPerSecond = maxNodesPerSecond;
+        }
+
+        @Override
+        protected void doRun( JcrRepository repository ) {
+            RepositoryStatistics statistics = repository.runningState().statistics();
+            if (optimizer.getBacklogSize() == 0) {
+                statistics.set(ValueMetric.CHILD_OPTIMIZATION_QUEUE_SIZE, 0L);
+                return;
+            }
+            Stopwatch sw = new Stopwatch();
+            sw.start();
+            try {
+                DocumentOperationResults results = optimizer.optimize(maxNodesPerSecond);
+                statistics.increment(ValueMetric.CHILD_OPTIMIZATION_COUNT, results.getModifiedCount());
+                sw.stop();
+                repository.logger.debug("Optimized the children of changed nodes in the '{0}' repository ({1} duration): {2}",
+                                        repository.getName(), sw.getTotalDuration().toSimpleString(), results);
+            } catch (InterruptedException e) {
+                // The repository is shutting down ...
+                Thread.currentThread().interrupt();
+            } catch (RuntimeException e) {
+                repository.logger.error(JcrI18n.errorDuringChildrenOptimization, repository.getName(),
+                                        sw.getTotalDuration().toSimpleString(), e);
+            } finally {
+                statistics.set(ValueMetric.CHILD_OPTIMIZATION_QUEUE_SIZE, optimizer.getBacklogSize());
+            }
+        }
+    }
+
     protected static class OptimizationTask extends BackgroundRepositoryTask {
         private final int targetCount;
         private final int tolerance;
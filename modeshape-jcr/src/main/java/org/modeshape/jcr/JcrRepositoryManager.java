@@ -27,6 +27,7 @@ import java.io.File;
 import java.util.concurrent.locks.Lock;
 import java.util.concurrent.locks.ReentrantLock;
 import javax.jcr.RepositoryException;
+import org.modeshape.jcr.api.BackupOptions;
 import org.modeshape.jcr.api.Problems;
 import org.modeshape.jcr.api.RepositoryManager;
 import org.modeshape.jcr.value.Path;
@@ -77,6 +78,13 @@ public class JcrRepositoryManager implements RepositoryManager {
         return repository().runningState().backupService().backupRepository(backupDirectory);
     }
 
+    @Override
+    public Problems backupRepository( File backupDirectory,
+                                      BackupOptions options ) throws RepositoryException {
+        session().checkPermission(Path.ROOT_PATH, ModeShapePermissions.BACKUP);
+        return repository().runningState().backupService().backupRepository(backupDirectory, options);
+    }
+
     @Override
     public Problems restoreRepository( File backupDirectory ) throws RepositoryException {
         session().checkPermission(Path.ROOT_PATH, ModeShapePermissions.RESTORE);
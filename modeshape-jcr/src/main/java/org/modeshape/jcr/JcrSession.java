@@ -1079,6 +1079,7 @@ public class JcrSession implements org.modeshape.jcr.api.Session {
         checkLive();
 
         // Perform the save, using 'JcrPreSave' operations ...
+        long start = System.nanoTime();
         SessionCache systemCache = createSystemCache(false);
         SystemContent systemContent = new SystemContent(systemCache);
         Map<NodeKey, NodeKey> baseVersionKeys = this.baseVersionKeys.get();
@@ -1106,7 +1107,9 @@ public class JcrSession implements org.modeshape.jcr.api.Session {
 
         try {
             // Record the save operation ...
-            repository().statistics().increment(ValueMetric.SESSION_SAVES);
+            RepositoryStatistics statistics = repository().statistics();
+            statistics.increment(ValueMetric.SESSION_SAVES);
+            statistics.recordDuration(DurationMetric.SESSION_SAVE_TIME, System.nanoTime() - start, TimeUnit.NANOSECONDS);
         } catch (IllegalStateException e) {
             // The repository has been shutdown ...
         }
@@ -1151,6 +1154,7 @@ public class JcrSession implements org.modeshape.jcr.api.Session {
         }
 
         // Perform the save, using 'JcrPreSave' operations ...
+        long start = System.nanoTime();
         SessionCache systemCache = createSystemCache(false);
         SystemContent systemContent = new SystemContent(systemCache);
         Map<NodeKey, NodeKey> baseVersionKeys = this.baseVersionKeys.get();
@@ -1177,7 +1181,9 @@ public class JcrSession implements org.modeshape.jcr.api.Session {
 
         try {
             // Record the save operation ...
-            repository().statistics().increment(ValueMetric.SESSION_SAVES);
+            RepositoryStatistics statistics = repository().statistics();
+            statistics.increment(ValueMetric.SESSION_SAVES);
+            statistics.recordDuration(DurationMetric.SESSION_SAVE_TIME, System.nanoTime() - start, TimeUnit.NANOSECONDS);
         } catch (IllegalStateException e) {
             // The repository has been shutdown ...
         }
@@ -632,8 +632,7 @@ class JcrWorkspace implements org.modeshape.jcr.api.Workspace {
             try {
                 lock.lock();
                 if (observationManager == null) {
-                    observationManager = new JcrObservationManager(session, repository().repositoryCache(),
-                                                                   repository().getRepositoryStatistics());
+                    observationManager = new JcrObservationManager(session, repository().runningState().observationDispatcher());
                 }
             } finally {
                 lock.unlock();
@@ -0,0 +1,301 @@
+/*
+ * ModeShape (http://www.modeshape.org)
+ * See the COPYRIGHT.txt file distributed with this work for information
+ * regarding copyright ownership.  Some portions may be licensed
+ * to Red Hat, Inc. under one or more contributor license agreements.
+ * See the AUTHORS.txt file in the distribution for a full listing of
+ * individual contributors.
+ *
+ * ModeShape is free software. Unless otherwise indicated, all code in ModeShape
+ * is licensed to you under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * ModeShape is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+package org.modeshape.jcr;
+
+import static org.modeshape.jcr.api.observation.Event.Sequencing.NODE_SEQUENCED;
+import static org.modeshape.jcr.api.observation.Event.Sequencing.NODE_SEQUENCING_FAILURE;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Executor;
+import java.util.concurrent.atomic.AtomicInteger;
+import javax.jcr.observation.Event;
+import org.modeshape.common.annotation.ThreadSafe;
+import org.modeshape.common.logging.Logger;
+import org.modeshape.jcr.api.monitor.ValueMetric;
+import org.modeshape.jcr.bus.ListenerQueue;
+import org.modeshape.jcr.cache.change.AbstractNodeChange;
+import org.modeshape.jcr.cache.change.Change;
+import org.modeshape.jcr.cache.change.ChangeSet;
+import org.modeshape.jcr.cache.change.ChangeSetListener;
+import org.modeshape.jcr.cache.change.NodeAdded;
+import org.modeshape.jcr.cache.change.NodeMoved;
+import org.modeshape.jcr.cache.change.NodeRemoved;
+import org.modeshape.jcr.cache.change.NodeRenamed;
+import org.modeshape.jcr.cache.change.NodeReordered;
+import org.modeshape.jcr.cache.change.NodeSequenced;
+import org.modeshape.jcr.cache.change.NodeSequencingFailure;
+import org.modeshape.jcr.cache.change.PropertyAdded;
+import org.modeshape.jcr.cache.change.PropertyChanged;
+import org.modeshape.jcr.cache.change.PropertyRemoved;
+import org.modeshape.jcr.cache.change.SynchronousChangeSetListener;
+import org.modeshape.jcr.value.Path;
+
+/**
+ * The single {@link ChangeSetListener} through which all of the JCR event listeners of a repository receive the changes made in
+ * the repository.
+ * <p>
+ * Rather than every JCR event listener receiving and examining every change set, the workspace, path and event type filters of
+ * all of the listeners are kept in an {@link ObservationFilterIndex index}, and each change in a change set is examined once to
+ * find the listeners that are interested in it. Each listener is then given only those changes, so the cost of dispatching a
+ * change set depends on the number of listeners that are interested in it rather than on the total number of listeners. The
+ * remaining filters (e.g., those based upon the node's identifier, node types or permissions) depend on the listener's session
+ * and are still applied by each listener.
+ * </p>
+ * <p>
+ * The changes are routed in the thread that publishes them, so that a listener receives exactly those change sets published after
+ * it was registered. Each listener is then notified of its changes in the order the change sets were published, but
+ * independently of (and concurrently with) the other listeners, using the supplied executor. Each listener's changes wait in a
+ * bounded {@link ListenerQueue}, so a thread publishing changes waits while one of the interested listeners has too many changes
+ * that have yet to be delivered.
+ * </p>
+ */
+@ThreadSafe
+final class ObservationDispatcher implements SynchronousChangeSetListener {
+
+    /**
+     * A listener for the changes that have been {@link ObservationDispatcher dispatched} to it.
+     */
+    interface Listener {
+        /**
+         * Handle the changes from the supplied change set that match this listener's workspace, path and event type filters.
+         *
+         * @param changeSet the change set; never null
+         * @param changes the changes from the change set that match the filters, in the same order; never null or empty
+         */
+        void notify( ChangeSet changeSet,
+                     List<AbstractNodeChange> changes );
+    }
+
+    private static final Logger LOGGER = Logger.getLogger(ObservationDispatcher.class);
+
+    private static final int MOVE_EVENT_TYPES = Event.NODE_MOVED | Event.NODE_ADDED | Event.NODE_REMOVED;
+
+    private final Executor executor;
+    private final String systemWorkspaceName;
+    private final int queueCapacity;
+    private final RepositoryStatistics statistics;
+    private final ObservationFilterIndex<DispatchQueue> index = new ObservationFilterIndex<DispatchQueue>();
+    private final Map<Listener, DispatchQueue> queues = Collections.synchronizedMap(new IdentityHashMap<Listener, DispatchQueue>());
+
+    /**
+     * @param executor the executor used to notify the listeners; may not be null
+     * @param systemWorkspaceName the name of the system workspace, whose changes are dispatched to the listeners of all
+     *        workspaces; may not be null
+     * @param queueCapacity the maximum number of change sets waiting to be delivered to each listener before publishers must
+     *        wait, or 0 if the queues are not to be bounded
+     * @param statistics the statistics in which the {@link ValueMetric#EVENT_QUEUE_SIZE} metric is updated; may not be null
+     */
+    ObservationDispatcher( Executor executor,
+                           String systemWorkspaceName,
+                           int queueCapacity,
+                           RepositoryStatistics statistics ) {
+        assert executor != null;
+        assert systemWorkspaceName != null;
+        assert queueCapacity >= 0;
+        assert statistics != null;
+        this.executor = executor;
+        this.systemWorkspaceName = systemWorkspaceName;
+        this.queueCapacity = queueCapacity;
+        this.statistics = statistics;
+    }
+
+    /**
+     * Register a listener, replacing any existing registration of the same listener instance.
+     *
+     * @param listener the listener; may not be null
+     * @param workspaceName the name of the workspace whose changes the listener is interested in; may not be null
+     * @param path the path of the node whose changes the listener is interested in, or null for all nodes
+     * @param isDeep true if the listener is also interested in the changes below the path
+     * @param eventTypes the bitmask of the JCR event types the listener is interested in
+     */
+    void register( Listener listener,
+                   String workspaceName,
+                   Path path,
+                   boolean isDeep,
+                   int eventTypes ) {
+        DispatchQueue queue = new DispatchQueue(listener);
+        DispatchQueue existing = queues.put(listener, queue);
+        if (existing != null) existing.close();
+        index.add(queue, workspaceName, path, isDeep, eventTypes);
+    }
+
+    /**
+     * Unregister a listener. Any changes that were dispatched to the listener but not yet delivered are discarded.
+     *
+     * @param listener the listener; may not be null
+     * @return true if the listener was registered, or false otherwise
+     */
+    boolean unregister( Listener listener ) {
+        DispatchQueue queue = queues.remove(listener);
+        if (queue == null) return false;
+        queue.close();
+        return true;
+    }
+
+    @Override
+    public void notify( ChangeSet changeSet ) {
+        String workspaceName = changeSet.getWorkspaceName();
+        if (workspaceName == null || index.isEmpty()) return;
+        // Changes in the system workspace are of interest to the listeners of all workspaces ...
+        if (systemWorkspaceName.equalsIgnoreCase(workspaceName)) workspaceName = null;
+
+        Map<DispatchQueue, List<AbstractNodeChange>> changesByListener = null;
+        List<DispatchQueue> matches = new ArrayList<DispatchQueue>();
+        for (Change change : changeSet) {
+            if (!(change instanceof AbstractNodeChange)) continue;
+            AbstractNodeChange nodeChange = (AbstractNodeChange)change;
+            index.findMatches(workspaceName, nodePathOfChange(nodeChange), eventTypesOf(nodeChange), matches);
+            if (matches.isEmpty()) continue;
+            if (changesByListener == null) changesByListener = new LinkedHashMap<DispatchQueue, List<AbstractNodeChange>>();
+            for (DispatchQueue queue : matches) {
+                List<AbstractNodeChange> changes = changesByListener.get(queue);
+                if (changes == null) {
+                    changes = new ArrayList<AbstractNodeChange>();
+                    changesByListener.put(queue, changes);
+                }
+                changes.add(nodeChange);
+            }
+            matches.clear();
+        }
+        if (changesByListener == null) return;
+
+        // The change set remains in the event queue until all of the listeners have been notified ...
+        statistics.increment(ValueMetric.EVENT_QUEUE_SIZE);
+        AtomicInteger remaining = new AtomicInteger(changesByListener.size());
+        for (Map.Entry<DispatchQueue, List<AbstractNodeChange>> entry : changesByListener.entrySet()) {
+            entry.getKey().add(new Dispatched(changeSet, entry.getValue(), remaining));
+        }
+    }
+
+    /**
+     * Unregister all of the listeners.
+     */
+    void shutdown() {
+        List<Listener> listeners = null;
+        synchronized (queues) {
+            listeners = new ArrayList<Listener>(queues.keySet());
+        }
+        for (Listener listener : listeners) {
+            unregister(listener);
+        }
+    }
+
+    /**
+     * Get the path of the node to which the supplied change applies, as used by the JCR event filters. This is the path of the
+     * node owning the property for property changes, or the path of the parent node for all other changes.
+     *
+     * @param change the change; may not be null
+     * @return the path; never null
+     */
+    static Path nodePathOfChange( AbstractNodeChange change ) {
+        Path changePath = change.getPath();
+        if (change instanceof PropertyAdded || change instanceof PropertyRemoved || change instanceof PropertyChanged) {
+            return changePath;
+        }
+        return changePath.isRoot() ? changePath : changePath.getParent();
+    }
+
+    /**
+     * Get the bitmask of the JCR event types that may be produced for the supplied change.
+     *
+     * @param change the change; may not be null
+     * @return the event types, or 0 if the change never produces events
+     */
+    static int eventTypesOf( AbstractNodeChange change ) {
+        if (change instanceof NodeMoved || change instanceof NodeRenamed || change instanceof NodeReordered) {
+            // JCR 1.0 expects NODE_ADDED and NODE_REMOVED events in addition to the NODE_MOVED event ...
+            return MOVE_EVENT_TYPES;
+        }
+        if (change instanceof NodeAdded) return Event.NODE_ADDED;
+        if (change instanceof NodeRemoved) return Event.NODE_REMOVED;
+        if (change instanceof PropertyChanged) return Event.PROPERTY_CHANGED;
+        if (change instanceof PropertyAdded) return Event.PROPERTY_ADDED;
+        if (change instanceof PropertyRemoved) return Event.PROPERTY_REMOVED;
+        if (change instanceof NodeSequenced) return NODE_SEQUENCED;
+        if (change instanceof NodeSequencingFailure) return NODE_SEQUENCING_FAILURE;
+        return 0;
+    }
+
+    /**
+     * The changes from one change set that were dispatched to one listener.
+     */
+    private final class Dispatched {
+        protected final ChangeSet changeSet;
+        protected final List<AbstractNodeChange> changes;
+        private final AtomicInteger remaining;
+
+        protected Dispatched( ChangeSet changeSet,
+                              List<AbstractNodeChange> changes,
+                              AtomicInteger remaining ) {
+            this.changeSet = changeSet;
+            this.changes = changes;
+            this.remaining = remaining;
+        }
+
+        protected void completed() {
+            if (remaining.decrementAndGet() == 0) {
+                statistics.decrement(ValueMetric.EVENT_QUEUE_SIZE);
+            }
+        }
+    }
+
+    /**
+     * The queue of changes dispatched to a single listener. Once the listener is unregistered, the changes in the queue are
+     * discarded rather than delivered.
+     */
+    private final class DispatchQueue extends ListenerQueue<Dispatched> {
+        private final Listener listener;
+
+        protected DispatchQueue( Listener listener ) {
+            super(listener, executor, queueCapacity, 1);
+            this.listener = listener;
+        }
+
+        @Override
+        public void close() {
+            super.close();
+            index.remove(this);
+            for (Dispatched changes : removeAll()) {
+                changes.completed();
+            }
+        }
+
+        @Override
+        protected void deliver( List<Dispatched> dispatched ) {
+            for (Dispatched changes : dispatched) {
+                try {
+                    if (!isClosed()) listener.notify(changes.changeSet, changes.changes);
+                } catch (RuntimeException e) {
+                    LOGGER.error(e, JcrI18n.errorNotifyingEventListener, listener, e.getMessage());
+                } finally {
+                    changes.completed();
+                }
+            }
+        }
+    }
+}
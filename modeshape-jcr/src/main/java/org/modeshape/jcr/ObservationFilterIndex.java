@@ -0,0 +1,248 @@
+/*
+ * ModeShape (http://www.modeshape.org)
+ * See the COPYRIGHT.txt file distributed with this work for information
+ * regarding copyright ownership.  Some portions may be licensed
+ * to Red Hat, Inc. under one or more contributor license agreements.
+ * See the AUTHORS.txt file in the distribution for a full listing of
+ * individual contributors.
+ *
+ * ModeShape is free software. Unless otherwise indicated, all code in ModeShape
+ * is licensed to you under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * ModeShape is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+package org.modeshape.jcr;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import org.modeshape.common.annotation.ThreadSafe;
+import org.modeshape.jcr.value.Path;
+
+/**
+ * An index of the workspace, path and event type filters of a number of observation targets, used to find the targets that are
+ * interested in a change without having to evaluate the filters of every target.
+ * <p>
+ * The targets registered for each workspace are kept in a tree keyed by the {@link Path.Segment segments} of their paths, where
+ * each node of the tree holds the targets that are interested in changes at exactly that path and those that are also interested
+ * in changes below that path. Finding the targets for a change therefore only visits the nodes along the change's path, so that
+ * the cost is proportional to the depth of the change and the number of matching targets rather than to the total number of
+ * targets.
+ * </p>
+ *
+ * @param <T> the type of target
+ */
+@ThreadSafe
+final class ObservationFilterIndex<T> {
+
+    private final ReadWriteLock lock = new ReentrantReadWriteLock();
+    private final Map<String, PathNode<T>> rootsByWorkspace = new HashMap<String, PathNode<T>>();
+    private final Map<T, Registration<T>> registrations = new HashMap<T, Registration<T>>();
+
+    /**
+     * Register a target, replacing any existing registration for the same target.
+     *
+     * @param target the target; may not be null
+     * @param workspaceName the name of the workspace whose changes the target is interested in; may not be null
+     * @param path the path of the node whose changes the target is interested in, or null if the target is interested in the
+     *        changes of all nodes
+     * @param isDeep true if the target is also interested in the changes below the path, or false if only in the changes at the
+     *        path
+     * @param eventTypes the bitmask of the event types the target is interested in
+     */
+    void add( T target,
+              String workspaceName,
+              Path path,
+              boolean isDeep,
+              int eventTypes ) {
+        assert target != null;
+        assert workspaceName != null;
+        Registration<T> registration = new Registration<T>(target, keyFor(workspaceName), path, path == null || isDeep,
+                                                           eventTypes);
+        lock.writeLock().lock();
+        try {
+            doRemove(target);
+            registrations.put(target, registration);
+            PathNode<T> node = rootsByWorkspace.get(registration.workspaceKey);
+            if (node == null) {
+                node = new PathNode<T>();
+                rootsByWorkspace.put(registration.workspaceKey, node);
+            }
+            if (path != null) {
+                for (Path.Segment segment : path) {
+                    node = node.getOrCreateChild(segment);
+                }
+            }
+            if (registration.isDeep) node.deep.add(registration);
+            else node.exact.add(registration);
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Remove the registration of the supplied target.
+     *
+     * @param target the target; may not be null
+     * @return true if the target was registered, or false otherwise
+     */
+    boolean remove( T target ) {
+        lock.writeLock().lock();
+        try {
+            return doRemove(target);
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    private boolean doRemove( T target ) {
+        Registration<T> registration = registrations.remove(target);
+        if (registration == null) return false;
+        List<PathNode<T>> nodes = new ArrayList<PathNode<T>>();
+        PathNode<T> node = rootsByWorkspace.get(registration.workspaceKey);
+        nodes.add(node);
+        if (registration.path != null) {
+            for (Path.Segment segment : registration.path) {
+                node = node.getChild(segment);
+                nodes.add(node);
+            }
+        }
+        if (registration.isDeep) node.deep.remove(registration);
+        else node.exact.remove(registration);
+
+        // Prune the nodes that are no longer needed, from the bottom up ...
+        for (int i = nodes.size() - 1; i != 0 && nodes.get(i).isEmpty(); --i) {
+            nodes.get(i - 1).children.remove(registration.path.getSegment(i - 1));
+        }
+        if (nodes.get(0).isEmpty()) rootsByWorkspace.remove(registration.workspaceKey);
+        return true;
+    }
+
+    /**
+     * Determine whether there are no registered targets.
+     *
+     * @return true if there are no targets, or false otherwise
+     */
+    boolean isEmpty() {
+        lock.readLock().lock();
+        try {
+            return registrations.isEmpty();
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Find the targets that are interested in a change of at least one of the supplied event types, made to the node at the
+     * supplied path.
+     *
+     * @param workspaceName the name of the workspace in which the change was made, or null if the targets of all workspaces
+     *        should be considered
+     * @param path the path of the node that was changed; may not be null
+     * @param eventTypes the bitmask of the event types of the change
+     * @param matches the collection into which the matching targets should be placed; may not be null
+     */
+    void findMatches( String workspaceName,
+                      Path path,
+                      int eventTypes,
+                      Collection<? super T> matches ) {
+        if (eventTypes == 0) return;
+        lock.readLock().lock();
+        try {
+            if (workspaceName != null) {
+                findMatches(rootsByWorkspace.get(keyFor(workspaceName)), path, eventTypes, matches);
+            } else {
+                for (PathNode<T> root : rootsByWorkspace.values()) {
+                    findMatches(root, path, eventTypes, matches);
+                }
+            }
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    private void findMatches( PathNode<T> root,
+                              Path path,
+                              int eventTypes,
+                              Collection<? super T> matches ) {
+        PathNode<T> node = root;
+        if (node == null) return;
+        addMatches(node.deep, eventTypes, matches);
+        for (Path.Segment segment : path) {
+            node = node.getChild(segment);
+            if (node == null) return;
+            addMatches(node.deep, eventTypes, matches);
+        }
+        addMatches(node.exact, eventTypes, matches);
+    }
+
+    private void addMatches( List<Registration<T>> registrations,
+                             int eventTypes,
+                             Collection<? super T> matches ) {
+        for (Registration<T> registration : registrations) {
+            if ((registration.eventTypes & eventTypes) != 0) matches.add(registration.target);
+        }
+    }
+
+    private static String keyFor( String workspaceName ) {
+        // Workspace names are compared case-insensitively by the observation manager ...
+        return workspaceName.toLowerCase();
+    }
+
+    private static final class Registration<T> {
+        protected final T target;
+        protected final String workspaceKey;
+        protected final Path path;
+        protected final boolean isDeep;
+        protected final int eventTypes;
+
+        protected Registration( T target,
+                                String workspaceKey,
+                                Path path,
+                                boolean isDeep,
+                                int eventTypes ) {
+            this.target = target;
+            this.workspaceKey = workspaceKey;
+            this.path = path;
+            this.isDeep = isDeep;
+            this.eventTypes = eventTypes;
+        }
+    }
+
+    private static final class PathNode<T> {
+        protected final Map<Path.Segment, PathNode<T>> children = new HashMap<Path.Segment, PathNode<T>>();
+        protected final List<Registration<T>> exact = new ArrayList<Registration<T>>(1);
+        protected final List<Registration<T>> deep = new ArrayList<Registration<T>>(1);
+
+        protected PathNode<T> getChild( Path.Segment segment ) {
+            return children.isEmpty() ? null : children.get(segment);
+        }
+
+        protected PathNode<T> getOrCreateChild( Path.Segment segment ) {
+            PathNode<T> child = children.get(segment);
+            if (child == null) {
+                child = new PathNode<T>();
+                children.put(segment, child);
+            }
+            return child;
+        }
+
+        protected boolean isEmpty() {
+            return children.isEmpty() && exact.isEmpty() && deep.isEmpty();
+        }
+    }
+}
@@ -80,8 +80,10 @@ import org.modeshape.jcr.clustering.DefaultChannelProvider;
 import org.modeshape.jcr.security.AnonymousProvider;
 import org.modeshape.jcr.security.JaasProvider;
 import org.modeshape.jcr.value.binary.AbstractBinaryStore;
+import org.modeshape.jcr.value.binary.BinaryCompression;
 import org.modeshape.jcr.value.binary.BinaryStore;
 import org.modeshape.jcr.value.binary.BinaryStoreException;
+import org.modeshape.jcr.value.binary.CachingBinaryStore;
 import org.modeshape.jcr.value.binary.CompositeBinaryStore;
 import org.modeshape.jcr.value.binary.DatabaseBinaryStore;
 import org.modeshape.jcr.value.binary.FileSystemBinaryStore;
@@ -264,6 +266,13 @@ public class RepositoryConfiguration {
          */
         public static final String CACHE_CONFIGURATION = "cacheConfiguration";
 
+        /**
+         * The name for the field containing whether changes to persisted nodes are sent to the other processes in a clustered
+         * Infinispan cache as the individual operations that changed each node, rather than as the whole node. A change is always
+         * sent as the whole node when that is smaller. This has no effect when the cache is not clustered. The default is 'true'.
+         */
+        public static final String DELTA_REPLICATION = "deltaReplication";
+
         /**
          * The name for the field containing the name of the Infinispan transaction manager lookup class. This is only used if no
          * {@link #CACHE_CONFIGURATION cacheConfiguration} value is specified and ModeShape needs to instantiate the Infinispan
@@ -299,6 +308,46 @@ public class RepositoryConfiguration {
          */
         public static final String BINARY_STORE_NAME = "storeName";
 
+        /**
+         * The size of the chunks into which a database binary store splits the binary values that are streamed into the database.
+         * Values are stored in a single row (after being copied to a temporary file to compute their SHA-1 hash) unless this value
+         * is positive.
+         */
+        public static final String CHUNK_SIZE_IN_BYTES = "chunkSizeInBytes";
+
+        /**
+         * The directory on the local file system in which copies of the most recently read binary values are cached, in front of
+         * the configured binary store. Values are not cached unless this is specified.
+         */
+        public static final String LOCAL_CACHE_DIRECTORY = "localCacheDirectory";
+
+        /**
+         * The maximum total size of the binary values cached in the {@link #LOCAL_CACHE_DIRECTORY local cache directory}.
+         */
+        public static final String LOCAL_CACHE_SIZE_IN_BYTES = "localCacheSizeInBytes";
+
+        /**
+         * The name for the optional field under a file system or database binary store whose value is a document specifying how
+         * the content of the stored values is compressed.
+         */
+        public static final String COMPRESSION = "compression";
+
+        /**
+         * The name for the field under "compression" specifying the algorithm used to compress the content.
+         */
+        public static final String COMPRESSION_CODEC = "codec";
+
+        /**
+         * The name for the field under "compression" specifying the size of the smallest values whose content is compressed.
+         */
+        public static final String COMPRESSION_MINIMUM_SIZE_IN_BYTES = "minimumSizeInBytes";
+
+        /**
+         * The name for the field under "compression" specifying the array of MIME types of the values whose content is not
+         * compressed.
+         */
+        public static final String COMPRESSION_EXCLUDED_MIME_TYPES = "excludedMimeTypes";
+
         /**
          * The name for the field whose value is a document containing workspace information.
          */
@@ -331,6 +380,22 @@ public class RepositoryConfiguration {
          */
         public static final String DEFAULT_INITIAL_CONTENT = "*";
 
+        /**
+         * The name for the field under "workspaces" containing the document that configures the prefetching of the children of
+         * nodes whose children are being accessed one at a time.
+         */
+        public static final String CHILD_PREFETCHING = "childPrefetching";
+        public static final String CHILD_PREFETCHING_ENABLED = "enabled";
+        public static final String CHILD_PREFETCHING_ACCESS_THRESHOLD = "accessThreshold";
+        public static final String CHILD_PREFETCHING_MAX_NODES = "maxNodes";
+        public static final String CHILD_PREFETCHING_MAX_CONCURRENT = "maxConcurrentPrefetches";
+
+        /**
+         * The name for the field under "workspaces" specifying the maximum number of node paths that are cached for each
+         * workspace.
+         */
+        public static final String PATH_CACHE_SIZE = "pathCacheSize";
+
         /**
          * The name for the field under "workspaces" specifying the name of the workspace that should be used by default when
          * creating sessions where the workspace is not specified.
@@ -435,9 +500,12 @@ public class RepositoryConfiguration {
         public static final String INITIAL_TIME = "initialTime";
         public static final String INTERVAL_IN_HOURS = "intervalInHours";
 
-        public static final String DOCUMENT_OPTIMIZATION = "optimization";
+        public static final String DOCUMENT_OPTIMIZATION = "documentOptimization";
         public static final String OPTIMIZATION_CHILD_COUNT_TARGET = "childCountTarget";
         public static final String OPTIMIZATION_CHILD_COUNT_TOLERANCE = "childCountTolerance";
+        public static final String OPTIMIZATION_NODES_PER_SECOND = "nodesPerSecond";
+        public static final String OPTIMIZATION_CHANGED_NODES_INTERVAL_IN_SECONDS = "changedNodesIntervalInSeconds";
+        public static final String OPTIMIZATION_FULL_SCAN = "fullScan";
 
         /**
          * The name for the field (under "sequencing" and "query") specifying the thread pool that should be used for sequencing.
@@ -511,11 +579,37 @@ public class RepositoryConfiguration {
     }
 
     public static class Default {
+        /**
+         * The default value of the {@link FieldName#DELTA_REPLICATION} field is '{@value} '.
+         */
+        public static final boolean DELTA_REPLICATION = true;
+
         /**
          * The default value of the {@link FieldName#MINIMUM_BINARY_SIZE_IN_BYTES} field is '{@value} ' (4 kilobytes).
          */
         public static final long MINIMUM_BINARY_SIZE_IN_BYTES = 4 * 1024L;
 
+        /**
+         * The default value of the {@link FieldName#CHUNK_SIZE_IN_BYTES} field is '{@value} ', meaning that database binary stores
+         * do not store values in chunks.
+         */
+        public static final int CHUNK_SIZE_IN_BYTES = 0;
+
+        /**
+         * The default value of the {@link FieldName#LOCAL_CACHE_SIZE_IN_BYTES} field is '{@value} ' (1 gigabyte).
+         */
+        public static final long LOCAL_CACHE_SIZE_IN_BYTES = 1024 * 1024 * 1024L;
+
+        /**
+         * The default value of the {@link FieldName#COMPRESSION_CODEC} field is '{@value} '.
+         */
+        public static final String COMPRESSION_CODEC = "deflate";
+
+        /**
+         * The default value of the {@link FieldName#COMPRESSION_MINIMUM_SIZE_IN_BYTES} field is '{@value} ' (8 kilobytes).
+         */
+        public static final long COMPRESSION_MINIMUM_SIZE_IN_BYTES = BinaryCompression.DEFAULT_MINIMUM_SIZE_IN_BYTES;
+
         /**
          * The default value of the {@link FieldName#ALLOW_CREATION} field is '{@value} '.
          */
@@ -594,6 +688,17 @@ public class RepositoryConfiguration {
 
         public static final String OPTIMIZATION_INITIAL_TIME = "02:00";
         public static final int OPTIMIZATION_INTERVAL_IN_HOURS = 24;
+        public static final int OPTIMIZATION_NODES_PER_SECOND = 100;
+        public static final int OPTIMIZATION_CHANGED_NODES_INTERVAL_IN_SECONDS = 60;
+        public static final boolean OPTIMIZATION_FULL_SCAN = false;
+
+        public static final boolean CHILD_PREFETCHING_ENABLED = false;
+        public static final String CHILD_PREFETCHING_POOL = "modeshape-prefetcher";
+        public static final int CHILD_PREFETCHING_ACCESS_THRESHOLD = 3;
+        public static final int CHILD_PREFETCHING_MAX_NODES = 1000;
+        public static final int CHILD_PREFETCHING_MAX_CONCURRENT = 2;
+
+        public static final int PATH_CACHE_SIZE = 10000;
     }
 
     public static final class FieldValue {
@@ -983,6 +1088,20 @@ public class RepositoryConfiguration {
         return null;
     }
 
+    /**
+     * Return whether changes to persisted nodes are sent to the other processes in a clustered cache as the operations that
+     * changed each node, rather than as the whole node.
+     * 
+     * @return true if the operations are sent (the default), or false if the whole nodes are always sent
+     */
+    public boolean isDeltaReplicationEnabled() {
+        Document storage = doc.getDocument(FieldName.STORAGE);
+        if (storage != null) {
+            return storage.getBoolean(FieldName.DELTA_REPLICATION, Default.DELTA_REPLICATION);
+        }
+        return Default.DELTA_REPLICATION;
+    }
+
     public String getWorkspaceCacheConfiguration() {
         Document storage = doc.getDocument(FieldName.WORKSPACES);
         if (storage != null) {
@@ -1156,6 +1275,8 @@ public class RepositoryConfiguration {
             excludeList.add(FieldName.TYPE);
             excludeList.add(FieldName.CLASSNAME);
             excludeList.add(FieldName.CLASSLOADER);
+            excludeList.add(FieldName.LOCAL_CACHE_DIRECTORY);
+            excludeList.add(FieldName.LOCAL_CACHE_SIZE_IN_BYTES);
         }
 
         public long getMinimumBinarySizeInBytes() {
@@ -1175,20 +1296,27 @@ public class RepositoryConfiguration {
                 String directory = binaryStorage.getString(FieldName.DIRECTORY);
                 assert directory != null;
                 File dir = new File(directory);
-                store = FileSystemBinaryStore.create(dir);
+                FileSystemBinaryStore fileStore = FileSystemBinaryStore.create(dir);
+                fileStore.setCompression(getCompression());
+                store = fileStore;
             } else if (type.equalsIgnoreCase("database")) {
                 String driverClass = binaryStorage.getString(FieldName.JDBC_DRIVER_CLASS);
                 String connectionURL = binaryStorage.getString(FieldName.CONNECTION_URL);
                 String username = binaryStorage.getString(FieldName.USER_NAME);
                 String password = binaryStorage.getString(FieldName.USER_PASSWORD);
                 String dataSourceJndi = binaryStorage.getString(FieldName.DATA_SOURCE_JNDI_NAME);
+                DatabaseBinaryStore databaseStore = null;
                 if (StringUtil.isBlank(dataSourceJndi)) {
                     // Use the connection properties ...
-                    store = new DatabaseBinaryStore(driverClass, connectionURL, username, password);
+                    databaseStore = new DatabaseBinaryStore(driverClass, connectionURL, username, password);
                 } else {
                     // Use the DataSource in JNDI ...
-                    store = new DatabaseBinaryStore(dataSourceJndi);
+                    databaseStore = new DatabaseBinaryStore(dataSourceJndi);
                 }
+                databaseStore.setChunkSizeInBytes(binaryStorage.getInteger(FieldName.CHUNK_SIZE_IN_BYTES,
+                                                                           Default.CHUNK_SIZE_IN_BYTES));
+                databaseStore.setCompression(getCompression());
+                store = databaseStore;
             } else if (type.equalsIgnoreCase("cache")) {
                 String metadataCacheName = binaryStorage.getString(FieldName.METADATA_CACHE_NAME, getName());
                 String blobCacheName = binaryStorage.getString(FieldName.DATA_CACHE_NAME, getName());
@@ -1235,10 +1363,41 @@ public class RepositoryConfiguration {
                 setTypeFields(store, binaryStorage);
             }
             if (store == null) store = TransientBinaryStore.get();
+            String localCacheDirectory = binaryStorage.getString(FieldName.LOCAL_CACHE_DIRECTORY);
+            if (!StringUtil.isBlank(localCacheDirectory)) {
+                long localCacheSize = binaryStorage.getLong(FieldName.LOCAL_CACHE_SIZE_IN_BYTES,
+                                                            Default.LOCAL_CACHE_SIZE_IN_BYTES);
+                store = new CachingBinaryStore(store, new File(localCacheDirectory), localCacheSize);
+            }
             store.setMinimumBinarySizeInBytes(getMinimumBinarySizeInBytes());
             return store;
         }
 
+        /**
+         * Returns how a file system or database binary store compresses the content of the values it stores.
+         * 
+         * @return the compression settings, or null if the content is not to be compressed
+         * @throws BinaryStoreException if the configured codec is not known
+         */
+        public BinaryCompression getCompression() throws BinaryStoreException {
+            Document compression = binaryStorage.getDocument(FieldName.COMPRESSION);
+            if (compression == null) return null;
+            String codecName = compression.getString(FieldName.COMPRESSION_CODEC, Default.COMPRESSION_CODEC);
+            BinaryCompression.Codec codec = BinaryCompression.Codec.forName(codecName);
+            if (codec == null) {
+                throw new BinaryStoreException(JcrI18n.unknownBinaryCompressionCodec.text(codecName));
+            }
+            long minimumSize = compression.getLong(FieldName.COMPRESSION_MINIMUM_SIZE_IN_BYTES,
+                                                   Default.COMPRESSION_MINIMUM_SIZE_IN_BYTES);
+            List<?> excluded = compression.getArray(FieldName.COMPRESSION_EXCLUDED_MIME_TYPES);
+            if (excluded == null) return new BinaryCompression(codec, minimumSize, BinaryCompression.DEFAULT_EXCLUDED_MIME_TYPES);
+            List<String> excludedMimeTypes = new ArrayList<String>(excluded.size());
+            for (Object mimeType : excluded) {
+                if (mimeType instanceof String) excludedMimeTypes.add((String)mimeType);
+            }
+            return new BinaryCompression(codec, minimumSize, excludedMimeTypes);
+        }
+
         /**
          * Returns the type of the configured binary store.
          * 
@@ -1435,6 +1594,19 @@ public class RepositoryConfiguration {
         return Default.ALLOW_CREATION;
     }
 
+    /**
+     * Get the maximum number of node paths that are cached for each workspace.
+     * 
+     * @return the maximum number of cached paths per workspace; always positive
+     */
+    public int getWorkspacePathCacheSize() {
+        Document workspaces = doc.getDocument(FieldName.WORKSPACES);
+        if (workspaces != null) {
+            return workspaces.getInteger(FieldName.PATH_CACHE_SIZE, Default.PATH_CACHE_SIZE);
+        }
+        return Default.PATH_CACHE_SIZE;
+    }
+
     public TransactionMode getTransactionMode() {
         String mode = doc.getString(FieldName.TRANSACTION_MODE);
         return mode != null ? TransactionMode.valueOf(mode.trim().toUpperCase()) : Default.TRANSACTION_MODE;
@@ -2139,16 +2311,48 @@ public class RepositoryConfiguration {
         }
 
         /**
-         * Get the time that the first optimization process should be run.
+         * Determine whether the documents of all nodes should periodically be optimized, in addition to the nodes whose children
+         * have changed. The full scan is run at the {@link #getInitialTimeExpression() initial time} and then at every
+         * {@link #getIntervalInHours() interval}.
+         * 
+         * @return true if all documents should periodically be optimized, or false otherwise
+         */
+        public boolean isFullScanEnabled() {
+            return optimization.getBoolean(FieldName.OPTIMIZATION_FULL_SCAN, Default.OPTIMIZATION_FULL_SCAN);
+        }
+
+        /**
+         * Get the time that the first full optimization process should be run.
          * 
          * @return the initial time; never null
+         * @see #isFullScanEnabled()
          */
         public String getInitialTimeExpression() {
             return optimization.getString(FieldName.INITIAL_TIME, Default.OPTIMIZATION_INITIAL_TIME);
         }
 
         /**
-         * Get the optimization interval in hours.
+         * Get the number of seconds between the optimizations of the nodes whose children have changed.
+         * 
+         * @return the interval in seconds
+         */
+        public int getChangedNodesIntervalInSeconds() {
+            return optimization.getInteger(FieldName.OPTIMIZATION_CHANGED_NODES_INTERVAL_IN_SECONDS,
+                                           Default.OPTIMIZATION_CHANGED_NODES_INTERVAL_IN_SECONDS);
+        }
+
+        /**
+         * Get the maximum number of nodes whose children are optimized per second, which limits the load that the optimization
+         * of changed nodes places on the persistent store.
+         * 
+         * @return the maximum number of nodes per second, or 0 if the rate is not limited
+         */
+        public int getNodesPerSecond() {
+            return optimization.getInteger(FieldName.OPTIMIZATION_NODES_PER_SECOND, Default.OPTIMIZATION_NODES_PER_SECOND);
+        }
+
+        /**
+         * Get the full optimization interval in hours.
          * 
          * @return the interval; never null
          */
@@ -2178,6 +2382,79 @@ public class RepositoryConfiguration {
         }
     }
 
+    /**
+     * Get the configuration for the prefetching of children in the workspaces of this repository.
+     * 
+     * @return the child prefetching configuration; never null
+     */
+    public ChildPrefetching getChildPrefetching() {
+        Document workspaces = doc.getDocument(FieldName.WORKSPACES);
+        if (workspaces == null) {
+            workspaces = Schematic.newDocument();
+        }
+        return new ChildPrefetching(workspaces.getDocument(FieldName.CHILD_PREFETCHING));
+    }
+
+    /**
+     * The configuration of the prefetching of children. When enabled, a node whose children are being loaded from the persistent
+     * store one at a time has its remaining children loaded into the workspace cache in the background with a few bulk reads.
+     */
+    @Immutable
+    public class ChildPrefetching {
+        private final Document prefetching;
+
+        protected ChildPrefetching( Document prefetching ) {
+            this.prefetching = prefetching != null ? prefetching : EMPTY;
+        }
+
+        /**
+         * Determine if child prefetching is enabled. Prefetching is disabled by default.
+         * 
+         * @return true if enabled, or false otherwise
+         */
+        public boolean isEnabled() {
+            return prefetching.getBoolean(FieldName.CHILD_PREFETCHING_ENABLED, Default.CHILD_PREFETCHING_ENABLED);
+        }
+
+        /**
+         * Get the name of the thread pool that should be used to prefetch children.
+         * 
+         * @return the thread pool name; never null
+         */
+        public String getThreadPoolName() {
+            return prefetching.getString(FieldName.THREAD_POOL, Default.CHILD_PREFETCHING_POOL);
+        }
+
+        /**
+         * Get the number of children of a single node that must be loaded one at a time from the persistent store before the
+         * remaining children of that node are prefetched.
+         * 
+         * @return the access threshold
+         */
+        public int getAccessThreshold() {
+            return prefetching.getInteger(FieldName.CHILD_PREFETCHING_ACCESS_THRESHOLD, Default.CHILD_PREFETCHING_ACCESS_THRESHOLD);
+        }
+
+        /**
+         * Get the maximum number of children that are loaded by a single prefetch.
+         * 
+         * @return the maximum number of nodes per prefetch
+         */
+        public int getMaxNodes() {
+            return prefetching.getInteger(FieldName.CHILD_PREFETCHING_MAX_NODES, Default.CHILD_PREFETCHING_MAX_NODES);
+        }
+
+        /**
+         * Get the maximum number of prefetches that may run at the same time in each workspace. Any prefetch that would exceed
+         * this limit is skipped.
+         * 
+         * @return the maximum number of concurrent prefetches per workspace
+         */
+        public int getMaxConcurrentPrefetches() {
+            return prefetching.getInteger(FieldName.CHILD_PREFETCHING_MAX_CONCURRENT, Default.CHILD_PREFETCHING_MAX_CONCURRENT);
+        }
+    }
+
     /**
      * The security-related configuration information.
      */
@@ -51,6 +51,7 @@ import org.modeshape.jcr.cache.NodeCache;
 import org.modeshape.jcr.cache.NodeKey;
 import org.modeshape.jcr.cache.PathCache;
 import org.modeshape.jcr.cache.RepositoryCache;
+import org.modeshape.jcr.cache.document.WorkspaceCache;
 import org.modeshape.jcr.query.CancellableQuery;
 import org.modeshape.jcr.query.QueryIndexing;
 import org.modeshape.jcr.query.lucene.LuceneQueryEngine;
@@ -185,7 +186,8 @@ class RepositoryQueryManager {
                     SearchFactoryImplementor searchFactory = new SearchFactoryBuilder().configuration(config)
                                                                                        .buildSearchFactory();
                     queryEngine = new LuceneQueryEngine(runningState.context(), runningState.name(), planner, optimizer,
-                                                        searchFactory, config.getVersion(), enableFullTextSearch);
+                                                        searchFactory, config.getVersion(), enableFullTextSearch,
+                                                        runningState.statistics());
 
                     if (this.jmsListener != null) {
                         //if we're dealing with a JMS master configuration, we need to start the JMS listener
@@ -369,10 +371,14 @@ class RepositoryQueryManager {
             }
         }
 
-        // Now, process the queue until empty ...
+        // Now, process the queue until empty, loading the nodes in batches rather than one at a time ...
+        final WorkspaceCache workspaceCache = cache instanceof WorkspaceCache ? (WorkspaceCache)cache : null;
+        int loadedCount = 0;
         while (true) {
+            if (loadedCount <= 0 && workspaceCache != null) loadedCount = workspaceCache.preloadNodes(queue);
             NodeKey key = queue.poll();
             if (key == null) break;
+            --loadedCount;
 
             // Look up the node and find the path ...
             node = cache.getNode(key);
@@ -37,6 +37,7 @@ import java.util.concurrent.ScheduledExecutorService;
 import java.util.concurrent.ScheduledFuture;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
 import java.util.concurrent.atomic.AtomicReference;
 import java.util.concurrent.locks.ReadWriteLock;
 import java.util.concurrent.locks.ReentrantReadWriteLock;
@@ -48,6 +49,7 @@ import org.modeshape.common.util.StringUtil;
 import org.modeshape.jcr.api.monitor.DurationActivity;
 import org.modeshape.jcr.api.monitor.DurationMetric;
 import org.modeshape.jcr.api.monitor.History;
+import org.modeshape.jcr.api.monitor.Percentiles;
 import org.modeshape.jcr.api.monitor.RepositoryMonitor;
 import org.modeshape.jcr.api.monitor.Statistics;
 import org.modeshape.jcr.api.monitor.ValueMetric;
@@ -78,6 +80,14 @@ import org.modeshape.jcr.value.DateTimeFactory;
  * window;</li>
  * <li><b>{@link DurationMetric#SEQUENCER_EXECUTION_TIME sequencer execution time}</b> - the duration of sequencing operations
  * completed during the window;</li>
+ * <li><b>{@link DurationMetric#SESSION_SAVE_TIME session save time}</b> - the duration of the session saves completed during the
+ * window;</li>
+ * <li><b>{@link DurationMetric#NODE_LOAD_TIME node load time}</b> - the time required to load nodes missing from the workspace
+ * caches during the window;</li>
+ * <li><b>{@link DurationMetric#INDEX_SEARCH_TIME index search time}</b> - the time spent searching the indexes during the
+ * window;</li>
+ * <li><b>{@link DurationMetric#BINARY_READ_TIME binary read time}</b> and <b>{@link DurationMetric#BINARY_WRITE_TIME binary
+ * write time}</b> - the time required to open and store binary values during the window;</li>
  * </ol>
  * This class provides a way to obtain the {@link History history} for a particular metric during a specified window, where the
  * window is comprised of the {@link Statistics statistics} (the average value, minimum value, maximum value, variance, standard
@@ -89,6 +99,8 @@ import org.modeshape.jcr.value.DateTimeFactory;
  * <li>each day during the last week (7 days); or</li>
  * <li>each week during the last year (52 weeks)</li>
  * </ol>
+ * The history of each duration metric also includes the {@link Percentiles percentiles} of the durations recorded during the
+ * window, since the tail latencies are often more telling than the averages.
  * <p>
  * To use, simply instantiate and {@link #start(ScheduledExecutorService) start} it by supplying a
  * {@link ScheduledExecutorService} instance, which is used to create a periodic task that runs every 5 seconds to roll up
@@ -97,7 +109,7 @@ import org.modeshape.jcr.value.DateTimeFactory;
  * </p>
  */
 @ThreadSafe
-public class RepositoryStatistics implements RepositoryMonitor {
+public class RepositoryStatistics implements RepositoryMonitor, DurationRecorder, ValueRecorder {
 
     /**
      * The maximum number of longest-running queries to retain.
@@ -167,6 +179,11 @@ public class RepositoryStatistics implements RepositoryMonitor {
                                                                                    MAXIMUM_LONG_RUNNING_SEQUENCING_COUNT));
         durations.put(DurationMetric.SESSION_LIFETIME, new DurationHistory(TimeUnit.MILLISECONDS,
                                                                            MAXIMUM_LONG_RUNNING_SESSION_COUNT));
+        durations.put(DurationMetric.SESSION_SAVE_TIME, new DurationHistory(TimeUnit.MILLISECONDS, 1));
+        durations.put(DurationMetric.NODE_LOAD_TIME, new DurationHistory(TimeUnit.MILLISECONDS, 1));
+        durations.put(DurationMetric.INDEX_SEARCH_TIME, new DurationHistory(TimeUnit.MILLISECONDS, 1));
+        durations.put(DurationMetric.BINARY_READ_TIME, new DurationHistory(TimeUnit.MILLISECONDS, 1));
+        durations.put(DurationMetric.BINARY_WRITE_TIME, new DurationHistory(TimeUnit.MILLISECONDS, 1));
 
         for (ValueMetric metric : EnumSet.allOf(ValueMetric.class)) {
             boolean resetUponRollup = !metric.isContinuous();
@@ -305,8 +322,9 @@ public class RepositoryStatistics implements RepositoryMonitor {
      * @see #decrement(ValueMetric)
      * @see #recordDuration(DurationMetric, long, TimeUnit, Map)
      */
-    void increment( ValueMetric metric,
-                    long incrementalValue ) {
+    @Override
+    public void increment( ValueMetric metric,
+                           long incrementalValue ) {
         assert metric != null;
         ValueHistory history = values.get(metric);
         if (history != null) history.recordIncrement(incrementalValue);
@@ -339,7 +357,7 @@ public class RepositoryStatistics implements RepositoryMonitor {
               long value ) {
         assert metric != null;
         ValueHistory history = values.get(metric);
-        if (history != null) history.recordNewValue(1L);
+        if (history != null) history.recordNewValue(value);
     }
 
     /**
@@ -376,6 +394,25 @@ public class RepositoryStatistics implements RepositoryMonitor {
         if (history != null) history.recordDuration(duration, timeUnit, payload);
     }
 
+    /**
+     * Record a new duration for the given metric, called by the code that knows about the duration. Unlike
+     * {@link #recordDuration(DurationMetric, long, TimeUnit, Map)}, this method does not track the activity among the
+     * {@link #getLongestRunning(DurationMetric) longest running}, and does not allocate any objects, so it is suitable for
+     * frequently-called code.
+     * 
+     * @param metric the metric; may not be null
+     * @param duration the duration
+     * @param timeUnit the time unit of the duration
+     */
+    @Override
+    public void recordDuration( DurationMetric metric,
+                                long duration,
+                                TimeUnit timeUnit ) {
+        assert metric != null;
+        DurationHistory history = durations.get(metric);
+        if (history != null) history.recordDuration(duration, timeUnit);
+    }
+
     /**
      * Abstract base class for the {@link ValueHistory} and {@link DurationHistory} classes. This class tracks the statistics for
      * various periods of time, and to roll up the statistics. The design takes advantage of the fact that we know up front how
@@ -589,8 +626,14 @@ public class RepositoryStatistics implements RepositoryMonitor {
         }
     }
 
+    /**
+     * The {@link MetricHistory} specialization used for recording the statistics for durations. Every duration is recorded in a
+     * {@link DurationHistogram histogram} from which the statistics and percentiles are computed, while only those durations
+     * recorded with a payload are considered for the {@link #getLongestRunning() longest running} activities.
+     */
     @ThreadSafe
     protected static final class DurationHistory extends MetricHistory {
+        private final DurationHistogram histogram = new DurationHistogram();
         private final Queue<DurationActivity> duration1 = new ConcurrentLinkedQueue<DurationActivity>();
         private final Queue<DurationActivity> duration2 = new ConcurrentLinkedQueue<DurationActivity>();
         private final AtomicReference<Queue<DurationActivity>> durations = new AtomicReference<Queue<DurationActivity>>();
@@ -617,10 +660,22 @@ public class RepositoryStatistics implements RepositoryMonitor {
         void recordDuration( long value,
                              TimeUnit timeUnit,
                              Map<String, String> payload ) {
+            histogram.record(TimeUnit.MICROSECONDS.convert(value, timeUnit));
             value = this.timeUnit.convert(value, timeUnit);
             this.durations.get().add(new DurationActivityImpl(value, this.timeUnit, payload));
         }
 
+        /**
+         * Record a new duration without a payload. This method does not allocate any objects.
+         * 
+         * @param value the duration
+         * @param timeUnit the time unit; may not be null
+         */
+        void recordDuration( long value,
+                             TimeUnit timeUnit ) {
+            histogram.record(TimeUnit.MICROSECONDS.convert(value, timeUnit));
+        }
+
         @Override
         Window rollup() {
             // Swap the queue (which should work, since we should be the only concurrent thread doing this) ...
@@ -635,19 +690,17 @@ public class RepositoryStatistics implements RepositoryMonitor {
             List<DurationActivity> records = new ArrayList<DurationActivity>(durations);
             durations.clear();
 
-            // Now add to the largest durations and compute the statistics ...
-            int numRecords = records.size();
-            long[] values = new long[numRecords];
-            int i = 0;
+            // Now add to the largest durations ...
             for (DurationActivity record : records) {
-                values[i++] = record != null ? record.getDuration(TimeUnit.MILLISECONDS) : 0L;
+                if (record == null) continue;
                 this.largestDurations.add(record);
                 while (this.largestDurations.size() > this.retentionSize) {
                     this.largestDurations.poll(); // remove the smallest duration from the front of the queue
                 }
             }
 
-            Statistics stats = statisticsFor(values);
+            // And compute the statistics from the histogram ...
+            Statistics stats = histogram.drain();
             return recordStatisticsForLastSecond(stats);
         }
 
@@ -657,6 +710,268 @@ public class RepositoryStatistics implements RepositoryMonitor {
         }
     }
 
+    /**
+     * A histogram of durations, recorded in microseconds, that is modeled after the HDR histogram. The range of durations is
+     * divided into buckets, where each power of two is divided into {@value #SUB_BUCKET_COUNT} equally-sized buckets; thus the
+     * width of each bucket grows with the durations it contains, and the highest value in each bucket is never more than about 3%
+     * larger than the lowest value. Durations up to 2^{@value #MAX_EXPONENT} microseconds (over 100 days) are recorded with 1248
+     * buckets, and larger durations are recorded as the maximum.
+     * <p>
+     * Recording a duration does not allocate any objects or take any locks. Instead, each thread records into one of several
+     * stripes of atomic counters (chosen by the thread's ID), so that concurrent threads rarely contend for the same counters. The
+     * stripes are only combined when the histogram is {@link #drain() drained} by the rollup.
+     * </p>
+     */
+    @ThreadSafe
+    protected static final class DurationHistogram {
+        protected static final int SUB_BUCKET_BITS = 5;
+        protected static final int SUB_BUCKET_COUNT = 1 << SUB_BUCKET_BITS;
+        protected static final int MAX_EXPONENT = 43;
+        protected static final int BUCKET_COUNT = (MAX_EXPONENT - SUB_BUCKET_BITS + 1) * SUB_BUCKET_COUNT;
+        protected static final long MAX_VALUE = (1L << MAX_EXPONENT) - 1L;
+
+        private static final int MAX_STRIPES = 8;
+        // The offsets of the counters within each stripe ...
+        private static final int COUNT = 0;
+        private static final int TOTAL = 1;
+        private static final int MINIMUM = 2;
+        private static final int MAXIMUM = 3;
+        private static final int SUM_OF_SQUARES = 4;
+        private static final int FIRST_BUCKET = 5;
+
+        private final AtomicLongArray[] stripes;
+        private final int stripeMask;
+
+        protected DurationHistogram() {
+            int stripeCount = 1;
+            int processors = Runtime.getRuntime().availableProcessors();
+            while (stripeCount < processors && stripeCount < MAX_STRIPES) {
+                stripeCount <<= 1;
+            }
+            this.stripes = new AtomicLongArray[stripeCount];
+            for (int i = 0; i != stripeCount; ++i) {
+                stripes[i] = new AtomicLongArray(FIRST_BUCKET + BUCKET_COUNT);
+                stripes[i].set(MINIMUM, Long.MAX_VALUE);
+            }
+            this.stripeMask = stripeCount - 1;
+        }
+
+        /**
+         * Compute the index of the bucket that contains the supplied value.
+         * 
+         * @param value the non-negative value no larger than {@link #MAX_VALUE}
+         * @return the bucket index
+         */
+        static int bucketIndex( long value ) {
+            if (value < SUB_BUCKET_COUNT) return (int)value;
+            int shift = (63 - Long.numberOfLeadingZeros(value)) - SUB_BUCKET_BITS;
+            return ((shift + 1) << SUB_BUCKET_BITS) + (int)(value >>> shift) - SUB_BUCKET_COUNT;
+        }
+
+        /**
+         * Compute the highest value that is recorded in the bucket with the supplied index.
+         * 
+         * @param index the bucket index
+         * @return the highest value in the bucket
+         */
+        static long highestValueInBucket( int index ) {
+            if (index < SUB_BUCKET_COUNT) return index;
+            int shift = (index >>> SUB_BUCKET_BITS) - 1;
+            long subBucket = (index & (SUB_BUCKET_COUNT - 1)) + SUB_BUCKET_COUNT;
+            return ((subBucket + 1L) << shift) - 1L;
+        }
+
+        /**
+         * Record a duration. This method should be as fast as possible, since it is called within production code.
+         * 
+         * @param micros the duration in microseconds
+         */
+        void record( long micros ) {
+            if (micros < 0L) micros = 0L;
+            else if (micros > MAX_VALUE) micros = MAX_VALUE;
+            AtomicLongArray stripe = stripes[(int)Thread.currentThread().getId() & stripeMask];
+            stripe.incrementAndGet(FIRST_BUCKET + bucketIndex(micros));
+            stripe.addAndGet(TOTAL, micros);
+            double square = (double)micros * micros;
+            long bits = stripe.get(SUM_OF_SQUARES);
+            while (!stripe.compareAndSet(SUM_OF_SQUARES, bits, Double.doubleToRawLongBits(Double.longBitsToDouble(bits) + square))) {
+                bits = stripe.get(SUM_OF_SQUARES);
+            }
+            long min = stripe.get(MINIMUM);
+            while (micros < min && !stripe.compareAndSet(MINIMUM, min, micros)) {
+                min = stripe.get(MINIMUM);
+            }
+            long max = stripe.get(MAXIMUM);
+            while (micros > max && !stripe.compareAndSet(MAXIMUM, max, micros)) {
+                max = stripe.get(MAXIMUM);
+            }
+            // Increment the count last, since the rollup uses the count to determine whether to drain the stripe ...
+            stripe.incrementAndGet(COUNT);
+        }
+
+        /**
+         * Compute the statistics (in milliseconds) and percentiles for the durations recorded since the last call, and reset the
+         * histogram. This method should be called only by {@link DurationHistory#rollup()}. Durations being recorded while this
+         * method is running may be counted in this call or the next, but are never lost.
+         * 
+         * @return the statistics; never null
+         */
+        Statistics drain() {
+            long count = 0L;
+            long total = 0L;
+            long min = Long.MAX_VALUE;
+            long max = 0L;
+            double sumOfSquares = 0.0d;
+            long[] buckets = null;
+            for (AtomicLongArray stripe : stripes) {
+                long stripeCount = stripe.getAndSet(COUNT, 0L);
+                if (stripeCount == 0L) continue;
+                count += stripeCount;
+                total += stripe.getAndSet(TOTAL, 0L);
+                min = Math.min(min, stripe.getAndSet(MINIMUM, Long.MAX_VALUE));
+                max = Math.max(max, stripe.getAndSet(MAXIMUM, 0L));
+                sumOfSquares += Double.longBitsToDouble(stripe.getAndSet(SUM_OF_SQUARES, 0L));
+                if (buckets == null) buckets = new long[BUCKET_COUNT];
+                for (int i = 0; i != BUCKET_COUNT; ++i) {
+                    long bucketCount = stripe.get(FIRST_BUCKET + i);
+                    if (bucketCount != 0L) {
+                        stripe.addAndGet(FIRST_BUCKET + i, -bucketCount);
+                        buckets[i] += bucketCount;
+                    }
+                }
+            }
+            if (count == 0L) return EMPTY_STATISTICS;
+            double meanInMicros = (double)total / count;
+            double varianceInMicros = Math.max(0.0d, sumOfSquares / count - meanInMicros * meanInMicros);
+            PercentilesImpl percentiles = PercentilesImpl.create(buckets, max);
+            return new StatisticsImpl((int)Math.min(count, Integer.MAX_VALUE), TimeUnit.MICROSECONDS.toMillis(Math.min(min, max)),
+                                      TimeUnit.MICROSECONDS.toMillis(max), meanInMicros / 1000.0d,
+                                      varianceInMicros / 1000000.0d, percentiles);
+        }
+    }
+
+    /**
+     * The percentiles computed from the buckets of one or more {@link DurationHistogram histograms}. Only the non-empty buckets
+     * are retained, since durations usually fall within a small range of the buckets.
+     */
+    @Immutable
+    static final class PercentilesImpl implements Percentiles {
+        private final int[] indexes;
+        private final long[] counts;
+        private final long total;
+        private final long maximum; // in microseconds
+
+        private PercentilesImpl( int[] indexes,
+                                 long[] counts,
+                                 long total,
+                                 long maximum ) {
+            this.indexes = indexes;
+            this.counts = counts;
+            this.total = total;
+            this.maximum = maximum;
+        }
+
+        /**
+         * Create the percentiles from the full array of bucket counts.
+         * 
+         * @param buckets the counts of each bucket; may be null if there are no counts
+         * @param maximum the maximum duration, in microseconds
+         * @return the percentiles; or null if there are no counts
+         */
+        static PercentilesImpl create( long[] buckets,
+                                       long maximum ) {
+            if (buckets == null) return null;
+            int size = 0;
+            for (long count : buckets) {
+                if (count != 0L) ++size;
+            }
+            if (size == 0) return null;
+            int[] indexes = new int[size];
+            long[] counts = new long[size];
+            long total = 0L;
+            int j = 0;
+            for (int i = 0; i != buckets.length; ++i) {
+                if (buckets[i] == 0L) continue;
+                indexes[j] = i;
+                counts[j++] = buckets[i];
+                total += buckets[i];
+            }
+            return new PercentilesImpl(indexes, counts, total, maximum);
+        }
+
+        /**
+         * Combine the supplied percentiles.
+         * 
+         * @param percentiles the percentiles to be combined; may not be null or empty
+         * @return the combined percentiles; never null
+         */
+        static PercentilesImpl combine( List<PercentilesImpl> percentiles ) {
+            if (percentiles.size() == 1) return percentiles.get(0);
+            long[] buckets = new long[DurationHistogram.BUCKET_COUNT];
+            long maximum = 0L;
+            for (PercentilesImpl p : percentiles) {
+                for (int i = 0; i != p.indexes.length; ++i) {
+                    buckets[p.indexes[i]] += p.counts[i];
+                }
+                maximum = Math.max(maximum, p.maximum);
+            }
+            return create(buckets, maximum);
+        }
+
+        @Override
+        public long getCount() {
+            return total;
+        }
+
+        @Override
+        public long getValueAtPercentile( double percentile,
+                                          TimeUnit unit ) {
+            if (unit == null) unit = TimeUnit.MILLISECONDS;
+            double fraction = Math.min(Math.max(percentile, 0.0d), 100.0d) / 100.0d;
+            long rank = Math.max(1L, (long)Math.ceil(fraction * total));
+            long cumulative = 0L;
+            for (int i = 0; i != indexes.length; ++i) {
+                cumulative += counts[i];
+                if (cumulative >= rank) {
+                    long value = Math.min(DurationHistogram.highestValueInBucket(indexes[i]), maximum);
+                    return unit.convert(value, TimeUnit.MICROSECONDS);
+                }
+            }
+            return unit.convert(maximum, TimeUnit.MICROSECONDS);
+        }
+
+        @Override
+        public long getMedian( TimeUnit unit ) {
+            return getValueAtPercentile(50.0d, unit);
+        }
+
+        @Override
+        public long get95thPercentile( TimeUnit unit ) {
+            return getValueAtPercentile(95.0d, unit);
+        }
+
+        @Override
+        public long get99thPercentile( TimeUnit unit ) {
+            return getValueAtPercentile(99.0d, unit);
+        }
+
+        @Override
+        public long get999thPercentile( TimeUnit unit ) {
+            return getValueAtPercentile(99.9d, unit);
+        }
+
+        @Override
+        public String toString() {
+            TimeUnit unit = TimeUnit.MICROSECONDS;
+            return StringUtil.createString("{0} samples: p50={1}us; p95={2}us; p99={3}us; p999={4}us",
+                                           total,
+                                           getMedian(unit),
+                                           get95thPercentile(unit),
+                                           get99thPercentile(unit),
+                                           get999thPercentile(unit));
+        }
+    }
+
     /**
      * Utility method to construct the statistics for a series of values.
      * 
@@ -692,7 +1007,7 @@ public class RepositoryStatistics implements RepositoryMonitor {
             distance = mean - value;
             varianceSquared = varianceSquared + (distance * distance);
         }
-        return new StatisticsImpl(length, min, max, mean, Math.sqrt(varianceSquared));
+        return new StatisticsImpl(length, min, max, mean, varianceSquared / length);
     }
 
     /**
@@ -711,24 +1026,32 @@ public class RepositoryStatistics implements RepositoryMonitor {
         long min = Long.MAX_VALUE;
         double mean = 0.0d;
         double variance = 0.0d;
+        List<PercentilesImpl> percentiles = null;
         // Compute the min, max, and mean ...
         for (Statistics stat : statistics) {
             if (stat == null) continue;
+            if (stat instanceof StatisticsImpl && ((StatisticsImpl)stat).percentiles != null) {
+                if (percentiles == null) percentiles = new ArrayList<PercentilesImpl>(length);
+                percentiles.add(((StatisticsImpl)stat).percentiles);
+            }
+            if (stat.getCount() == 0) continue;
             count += stat.getCount();
             max = Math.max(max, stat.getMaximum());
             min = Math.min(min, stat.getMinimum());
             mean = mean + (stat.getMean() * stat.getCount());
         }
+        if (count == 0) return EMPTY_STATISTICS;
         mean = mean / count;
 
         // Compute the new variance using the new mean ...
         double meanDelta = 0.0d;
         for (Statistics stat : statistics) {
-            if (stat == null) continue;
+            if (stat == null || stat.getCount() == 0) continue;
             meanDelta = stat.getMean() - mean;
             variance = variance + (stat.getCount() * (stat.getVariance() + (meanDelta * meanDelta)));
         }
-        return new StatisticsImpl(count, min, max, mean, variance);
+        PercentilesImpl combined = percentiles != null ? PercentilesImpl.combine(percentiles) : null;
+        return new StatisticsImpl(count, min, max, mean, variance / count, combined);
     }
 
     private static final Statistics EMPTY_STATISTICS = new StatisticsImpl(0, 0L, 0L, 0.0d, 0.0d);
@@ -751,17 +1074,28 @@ public class RepositoryStatistics implements RepositoryMonitor {
         private final long minimum;
         private final double mean;
         private final double variance; // just the square of the standard deviation
+        protected final PercentilesImpl percentiles; // null for values
 
         protected StatisticsImpl( int count,
                               long min,
                               long max,
                               double mean,
                               double variance ) {
+            this(count, min, max, mean, variance, null);
+        }
+
+        protected StatisticsImpl( int count,
+                                  long min,
+                                  long max,
+                                  double mean,
+                                  double variance,
+                                  PercentilesImpl percentiles ) {
             this.count = count;
             this.maximum = max;
             this.minimum = min;
             this.mean = mean;
             this.variance = variance;
+            this.percentiles = percentiles;
         }
 
         @Override
@@ -866,6 +1200,17 @@ public class RepositoryStatistics implements RepositoryMonitor {
             return stats;
         }
 
+        @Override
+        public Percentiles getPercentiles() {
+            List<PercentilesImpl> percentiles = new ArrayList<PercentilesImpl>(stats.length);
+            for (Statistics stat : stats) {
+                if (stat instanceof StatisticsImpl && ((StatisticsImpl)stat).percentiles != null) {
+                    percentiles.add(((StatisticsImpl)stat).percentiles);
+                }
+            }
+            return percentiles.isEmpty() ? Percentiles.NO_PERCENTILES : PercentilesImpl.combine(percentiles);
+        }
+
         @Override
         public String toString() {
             StringBuilder sb = new StringBuilder();
@@ -32,6 +32,7 @@ import java.util.HashMap;
 import java.util.Iterator;
 import java.util.LinkedHashSet;
 import java.util.LinkedList;
+import java.util.List;
 import java.util.Map;
 import java.util.Set;
 import java.util.UUID;
@@ -53,6 +54,7 @@ import org.modeshape.jcr.api.value.DateTime;
 import org.modeshape.jcr.cache.NodeKey;
 import org.modeshape.jcr.cache.change.Change;
 import org.modeshape.jcr.cache.change.ChangeSet;
+import org.modeshape.jcr.cache.change.ChangeSetBatchListener;
 import org.modeshape.jcr.cache.change.ChangeSetListener;
 import org.modeshape.jcr.cache.change.PropertyAdded;
 import org.modeshape.jcr.cache.change.PropertyChanged;
@@ -67,7 +69,9 @@ import org.modeshape.jcr.value.ValueFactory;
 
 /**
  * Component that manages the library of sequencers configured for a repository. Simply instantiate, and register as a
- * {@link ChangeSetListener listener} of cache changes.
+ * {@link ChangeSetListener listener} of cache changes. The sequencers only need the resulting state of each property, so the
+ * changes are received in {@link ChangeSetBatchListener batches}, and a property that is changed several times in quick
+ * succession is sequenced once.
  * <p>
  * This class keeps a cache of the {@link SequencerPathExpression} instances (and the corresponding {@link Sequencer}
  * implementation) for each workspace. This is so that it's much easier and more efficient to process the events, which happens
@@ -75,7 +79,7 @@ import org.modeshape.jcr.value.ValueFactory;
  * </p>
  */
 @Immutable
-public class Sequencers implements ChangeSetListener {
+public class Sequencers implements ChangeSetBatchListener {
 
     /** We don't use the standard logging convention here; we want clients to easily configure logging for sequencing */
     private static final Logger LOGGER = Logger.getLogger("org.modeshape.jcr.sequencing.sequencers");
@@ -484,6 +488,13 @@ public class Sequencers implements ChangeSetListener {
         }
     }
 
+    @Override
+    public void notify( List<ChangeSet> changeSets ) {
+        for (ChangeSet changeSet : changeSets) {
+            notify(changeSet);
+        }
+    }
+
     public static interface WorkQueue {
         void submit( SequencingWorkItem work );
     }
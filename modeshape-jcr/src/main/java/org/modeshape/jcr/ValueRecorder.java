@@ -0,0 +1,53 @@
+/*
+ * ModeShape (http://www.modeshape.org)
+ * See the COPYRIGHT.txt file distributed with this work for information
+ * regarding copyright ownership.  Some portions may be licensed
+ * to Red Hat, Inc. under one or more contributor license agreements.
+ * See the AUTHORS.txt file in the distribution for a full listing of 
+ * individual contributors.
+ *
+ * ModeShape is free software. Unless otherwise indicated, all code in ModeShape
+ * is licensed to you under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ * 
+ * ModeShape is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+package org.modeshape.jcr;
+
+import org.modeshape.jcr.api.monitor.ValueMetric;
+
+/**
+ * A component that records changes in the values of a {@link ValueMetric}. Implementations are called from within the code that
+ * knows when and how the metric changes, and therefore must be fast and must not block.
+ */
+public interface ValueRecorder {
+
+    /**
+     * A recorder that ignores all values, for use by components that are not running within a repository.
+     */
+    public static final ValueRecorder NO_OP = new ValueRecorder() {
+        @Override
+        public void increment( ValueMetric metric,
+                               long incrementalValue ) {
+            // do nothing
+        }
+    };
+
+    /**
+     * Record an incremental change to a value of the given metric.
+     * 
+     * @param metric the metric; may not be null
+     * @param incrementalValue the positive or negative increment
+     */
+    void increment( ValueMetric metric,
+                    long incrementalValue );
+}
@@ -0,0 +1,279 @@
+/*
+ * ModeShape (http://www.modeshape.org)
+ * See the COPYRIGHT.txt file distributed with this work for information
+ * regarding copyright ownership.  Some portions may be licensed
+ * to Red Hat, Inc. under one or more contributor license agreements.
+ * See the AUTHORS.txt file in the distribution for a full listing of 
+ * individual contributors.
+ *
+ * ModeShape is free software. Unless otherwise indicated, all code in ModeShape
+ * is licensed to you under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ * 
+ * ModeShape is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+package org.modeshape.jcr.bus;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import org.modeshape.common.annotation.Immutable;
+import org.modeshape.common.util.ObjectUtil;
+import org.modeshape.jcr.api.value.DateTime;
+import org.modeshape.jcr.cache.NodeKey;
+import org.modeshape.jcr.cache.change.AbstractPropertyChange;
+import org.modeshape.jcr.cache.change.Change;
+import org.modeshape.jcr.cache.change.ChangeSet;
+import org.modeshape.jcr.cache.change.ChangeSetBatchListener;
+import org.modeshape.jcr.cache.change.NodeChanged;
+import org.modeshape.jcr.cache.change.NodeRemoved;
+import org.modeshape.jcr.cache.change.PropertyAdded;
+import org.modeshape.jcr.cache.change.PropertyChanged;
+import org.modeshape.jcr.cache.change.PropertyRemoved;
+import org.modeshape.jcr.value.Name;
+import org.modeshape.jcr.value.Property;
+
+/**
+ * Merges a batch of change sets and coalesces the changes to each node, as described by {@link ChangeSetBatchListener}.
+ * 
+ * @see ChangeSetBatchListener
+ */
+final class ChangeSetCoalescer {
+
+    private ChangeSetCoalescer() {
+    }
+
+    /**
+     * Merge the consecutive change sets in the supplied batch that were made in the same context, and coalesce the changes within
+     * each merged change set.
+     * 
+     * @param changeSets the change sets, in the order in which they were made; may not be null
+     * @return the merged change sets; never null
+     */
+    static List<ChangeSet> coalesce( List<ChangeSet> changeSets ) {
+        if (changeSets.size() < 2) return changeSets;
+        List<ChangeSet> results = new ArrayList<ChangeSet>();
+        List<ChangeSet> run = new ArrayList<ChangeSet>();
+        for (ChangeSet changeSet : changeSets) {
+            if (!run.isEmpty() && !canMerge(run.get(0), changeSet)) {
+                results.add(merge(run));
+                run.clear();
+            }
+            run.add(changeSet);
+        }
+        results.add(merge(run));
+        return results;
+    }
+
+    private static boolean canMerge( ChangeSet first,
+                                     ChangeSet second ) {
+        return ObjectUtil.isEqualWithNulls(first.getProcessKey(), second.getProcessKey())
+               && ObjectUtil.isEqualWithNulls(first.getRepositoryKey(), second.getRepositoryKey())
+               && ObjectUtil.isEqualWithNulls(first.getWorkspaceName(), second.getWorkspaceName())
+               && ObjectUtil.isEqualWithNulls(first.getUserId(), second.getUserId())
+               && ObjectUtil.isEqualWithNulls(first.getUserData(), second.getUserData());
+    }
+
+    private static ChangeSet merge( List<ChangeSet> run ) {
+        if (run.size() == 1) return run.get(0);
+        List<Change> changes = new ArrayList<Change>();
+        Set<NodeKey> changedNodes = new HashSet<NodeKey>();
+        // The positions (in 'changes') of the coalescable events for each node and for each property ...
+        Map<NodeKey, Integer> nodeChangedIndexes = new HashMap<NodeKey, Integer>();
+        Map<NodeKey, Map<Name, Integer>> propertyIndexes = new HashMap<NodeKey, Map<Name, Integer>>();
+        for (ChangeSet changeSet : run) {
+            changedNodes.addAll(changeSet.changedNodes());
+            for (Change change : changeSet) {
+                if (change instanceof NodeChanged) {
+                    NodeKey key = ((NodeChanged)change).getKey();
+                    Integer previous = nodeChangedIndexes.put(key, changes.size());
+                    if (previous != null) changes.set(previous, null);
+                    changes.add(change);
+                } else if (change instanceof AbstractPropertyChange) {
+                    AbstractPropertyChange propertyChange = (AbstractPropertyChange)change;
+                    NodeKey key = propertyChange.getKey();
+                    Name name = propertyChange.getProperty().getName();
+                    Map<Name, Integer> indexes = propertyIndexes.get(key);
+                    if (indexes == null) {
+                        indexes = new HashMap<Name, Integer>();
+                        propertyIndexes.put(key, indexes);
+                    }
+                    Integer previous = indexes.get(name);
+                    if (previous == null) {
+                        indexes.put(name, changes.size());
+                        changes.add(change);
+                        continue;
+                    }
+                    AbstractPropertyChange previousChange = (AbstractPropertyChange)changes.get(previous);
+                    Change merged = merge(previousChange, propertyChange);
+                    if (merged == propertyChange) {
+                        // Can't be combined, so keep both ...
+                        indexes.put(name, changes.size());
+                        changes.add(change);
+                        continue;
+                    }
+                    changes.set(previous, null);
+                    if (merged != null) {
+                        indexes.put(name, changes.size());
+                        changes.add(merged);
+                    } else {
+                        indexes.remove(name);
+                    }
+                } else if (change instanceof NodeRemoved) {
+                    // The earlier changes to the node's properties no longer matter ...
+                    NodeKey key = ((NodeRemoved)change).getKey();
+                    Integer previous = nodeChangedIndexes.remove(key);
+                    if (previous != null) changes.set(previous, null);
+                    Map<Name, Integer> indexes = propertyIndexes.remove(key);
+                    if (indexes != null) {
+                        for (Integer index : indexes.values()) {
+                            changes.set(index, null);
+                        }
+                    }
+                    changes.add(change);
+                } else {
+                    changes.add(change);
+                }
+            }
+        }
+        // Remove the events that were coalesced ...
+        List<Change> remaining = new ArrayList<Change>(changes.size());
+        for (Change change : changes) {
+            if (change != null) remaining.add(change);
+        }
+        return new CoalescedChangeSet(run.get(run.size() - 1), remaining, changedNodes);
+    }
+
+    /**
+     * Combine two successive changes to the same property.
+     * 
+     * @param first the first change; may not be null
+     * @param second the second change; may not be null
+     * @return the combined change, null if the changes cancel each other out, or the second change if they cannot be combined
+     */
+    private static Change merge( AbstractPropertyChange first,
+                                 AbstractPropertyChange second ) {
+        NodeKey key = second.getKey();
+        if (first instanceof PropertyAdded) {
+            if (second instanceof PropertyChanged) return new PropertyAdded(key, second.getPathToNode(), second.getProperty());
+            if (second instanceof PropertyRemoved) return null;
+        } else if (first instanceof PropertyChanged) {
+            Property oldProperty = ((PropertyChanged)first).getOldProperty();
+            if (second instanceof PropertyChanged) {
+                return new PropertyChanged(key, second.getPathToNode(), second.getProperty(), oldProperty);
+            }
+            if (second instanceof PropertyRemoved) return new PropertyRemoved(key, second.getPathToNode(), oldProperty);
+        } else if (first instanceof PropertyRemoved) {
+            if (second instanceof PropertyAdded) {
+                return new PropertyChanged(key, second.getPathToNode(), second.getProperty(), first.getProperty());
+            }
+        }
+        return second;
+    }
+
+    /**
+     * A {@link ChangeSet} that is the result of merging several change sets.
+     */
+    @Immutable
+    static final class CoalescedChangeSet implements ChangeSet {
+
+        private static final long serialVersionUID = 1L;
+
+        private final String processKey;
+        private final String repositoryKey;
+        private final String workspaceName;
+        private final String userId;
+        private final Map<String, String> userData;
+        private final DateTime timestamp;
+        private final List<Change> changes;
+        private final Set<NodeKey> changedNodes;
+
+        CoalescedChangeSet( ChangeSet last,
+                            List<Change> changes,
+                            Set<NodeKey> changedNodes ) {
+            this.processKey = last.getProcessKey();
+            this.repositoryKey = last.getRepositoryKey();
+            this.workspaceName = last.getWorkspaceName();
+            this.userId = last.getUserId();
+            this.userData = last.getUserData();
+            this.timestamp = last.getTimestamp();
+            this.changes = Collections.unmodifiableList(changes);
+            this.changedNodes = Collections.unmodifiableSet(changedNodes);
+        }
+
+        @Override
+        public int size() {
+            return changes.size();
+        }
+
+        @Override
+        public boolean isEmpty() {
+            return changes.isEmpty() && changedNodes.isEmpty();
+        }
+
+        @Override
+        public String getUserId() {
+            return userId;
+        }
+
+        @Override
+        public Map<String, String> getUserData() {
+            return userData;
+        }
+
+        @Override
+        public DateTime getTimestamp() {
+            return timestamp;
+        }
+
+        @Override
+        public String getProcessKey() {
+            return processKey;
+        }
+
+        @Override
+        public String getRepositoryKey() {
+            return repositoryKey;
+        }
+
+        @Override
+        public String getWorkspaceName() {
+            return workspaceName;
+        }
+
+        @Override
+        public Set<NodeKey> changedNodes() {
+            return changedNodes;
+        }
+
+        @Override
+        public Iterator<Change> iterator() {
+            return changes.iterator();
+        }
+
+        @Override
+        public String toString() {
+            StringBuilder sb = new StringBuilder();
+            sb.append("Coalesced saves by '").append(userId).append("' ending at ").append(timestamp);
+            sb.append(" in workspace '").append(workspaceName).append("'\n");
+            for (Change change : changes) {
+                sb.append("  ").append(change).append("\n");
+            }
+            return sb.toString();
+        }
+    }
+}
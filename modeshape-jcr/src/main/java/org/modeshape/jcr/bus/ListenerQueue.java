@@ -0,0 +1,285 @@
+/*
+ * ModeShape (http://www.modeshape.org)
+ * See the COPYRIGHT.txt file distributed with this work for information
+ * regarding copyright ownership.  Some portions may be licensed
+ * to Red Hat, Inc. under one or more contributor license agreements.
+ * See the AUTHORS.txt file in the distribution for a full listing of 
+ * individual contributors.
+ *
+ * ModeShape is free software. Unless otherwise indicated, all code in ModeShape
+ * is licensed to you under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ * 
+ * ModeShape is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+
+package org.modeshape.jcr.bus;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.Executor;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReentrantLock;
+import org.modeshape.common.annotation.ThreadSafe;
+import org.modeshape.common.logging.Logger;
+
+/**
+ * A bounded queue of the items (e.g., change sets) waiting to be delivered to a single listener, shared by the {@link ChangeBus}
+ * and by the dispatcher of the JCR event listeners.
+ * <p>
+ * The queue also acts as the task that delivers its items to the listener. No thread is dedicated to a queue; instead, whenever
+ * the queue has items waiting and is not already being processed, it is submitted to the executor. At most one such task is
+ * running for each queue (preserving the order in which the listener sees the items), and each task delivers at most
+ * {@link #MAX_ITEMS_PER_TASK} items before it resubmits itself, so that a busy listener cannot monopolize the executor's threads.
+ * </p>
+ * <p>
+ * When the queue holds its maximum number of items, the thread adding an item waits until the listener has caught up or the
+ * queue is {@link #close() closed}, so the capacity is a real limit and no item is ever dropped. Interrupting the waiting thread
+ * does not end the wait (the thread's interrupted status is restored when the wait ends), and a warning is logged every
+ * {@link #WAIT_WARNING_INTERVAL_IN_SECONDS} seconds while the thread is still waiting. The only thread that never waits is one
+ * that is itself delivering items from any queue, since waiting could then deadlock; such a thread may add items beyond the
+ * capacity.
+ * </p>
+ * <p>
+ * Subclasses can track the number of items waiting in the queue by overriding {@link #sizeChanged(int)}.
+ * </p>
+ * 
+ * @param <T> the type of the items
+ */
+@ThreadSafe
+public abstract class ListenerQueue<T> implements Runnable {
+
+    private static final Logger LOGGER = Logger.getLogger(ListenerQueue.class);
+
+    /**
+     * The maximum number of items that a single task delivers to a listener before yielding the thread to other listeners.
+     */
+    protected static final int MAX_ITEMS_PER_TASK = 100;
+
+    /**
+     * The number of seconds between the warnings logged while a thread adding an item waits for a full queue to have space.
+     */
+    protected static final long WAIT_WARNING_INTERVAL_IN_SECONDS = 60L;
+
+    /**
+     * Whether the current thread is delivering items to a listener.
+     */
+    private static final ThreadLocal<Boolean> DELIVERING = new ThreadLocal<Boolean>();
+
+    private final Object listener;
+    private final Executor executor;
+    private final int capacity;
+    private final int maxBatchSize;
+    private final BlockingQueue<T> items = new LinkedBlockingQueue<T>();
+    private final AtomicBoolean scheduled = new AtomicBoolean(false);
+    private final Lock lock = new ReentrantLock();
+    private final Condition notFull = lock.newCondition();
+    private volatile boolean closed;
+
+    /**
+     * Create a queue for the supplied listener.
+     * 
+     * @param listener the listener, used only in log messages; may not be null
+     * @param executor the executor used to deliver the items; may not be null
+     * @param capacity the maximum number of items waiting in the queue before threads adding items must wait, or 0 if the queue
+     *        is not to be bounded
+     * @param maxBatchSize the maximum number of items {@link #deliver(List) delivered} at once; must be positive
+     */
+    protected ListenerQueue( Object listener,
+                             Executor executor,
+                             int capacity,
+                             int maxBatchSize ) {
+        assert listener != null;
+        assert executor != null;
+        assert capacity >= 0;
+        assert maxBatchSize > 0;
+        this.listener = listener;
+        this.executor = executor;
+        this.capacity = capacity;
+        this.maxBatchSize = maxBatchSize;
+    }
+
+    /**
+     * Add an item to the end of this queue, waiting if the queue is full, and make sure the queue will be delivered.
+     * 
+     * @param item the item; may not be null
+     */
+    public void add( T item ) {
+        if (capacity > 0 && items.size() >= capacity && DELIVERING.get() == null) {
+            awaitNotFull();
+        }
+        items.add(item);
+        sizeChanged(1);
+        schedule();
+    }
+
+    /**
+     * Close this queue, so that threads adding items no longer wait for space. Items that are already in the queue, or that are
+     * added later, are still delivered.
+     */
+    public void close() {
+        closed = true;
+        signalNotFull();
+    }
+
+    /**
+     * Determine whether this queue has been {@link #close() closed}.
+     * 
+     * @return true if the queue is closed, or false otherwise
+     */
+    protected final boolean isClosed() {
+        return closed;
+    }
+
+    /**
+     * Remove all of the items from this queue without delivering them.
+     * 
+     * @return the removed items, in the order they were added; never null
+     */
+    protected final List<T> removeAll() {
+        List<T> removed = new ArrayList<T>();
+        items.drainTo(removed);
+        if (!removed.isEmpty()) sizeChanged(-removed.size());
+        signalNotFull();
+        return removed;
+    }
+
+    /**
+     * Get the number of items waiting to be delivered.
+     * 
+     * @return the number of items; never negative
+     */
+    public int size() {
+        return items.size();
+    }
+
+    /**
+     * Deliver the supplied items to the listener. This is never called concurrently for the same queue.
+     * 
+     * @param items the items, in the order they were added; never null or empty, and never more than the maximum batch size
+     */
+    protected abstract void deliver( List<T> items );
+
+    /**
+     * Called whenever items are added to or removed from this queue. By default this method does nothing.
+     * 
+     * @param delta the change in the number of items waiting in the queue; positive when items are added and negative when they
+     *        are removed
+     */
+    protected void sizeChanged( int delta ) {
+        // do nothing by default
+    }
+
+    /**
+     * Wait until this queue has space or is closed, logging a warning every {@link #WAIT_WARNING_INTERVAL_IN_SECONDS} seconds.
+     */
+    private void awaitNotFull() {
+        long intervalNanos = TimeUnit.SECONDS.toNanos(WAIT_WARNING_INTERVAL_IN_SECONDS);
+        long remainingNanos = intervalNanos;
+        long waitedSeconds = 0L;
+        boolean interrupted = false;
+        lock.lock();
+        try {
+            while (items.size() >= capacity && !closed) {
+                if (remainingNanos <= 0L) {
+                    waitedSeconds += WAIT_WARNING_INTERVAL_IN_SECONDS;
+                    LOGGER.warn(BusI18n.stillWaitingForListener, waitedSeconds, listener, items.size());
+                    remainingNanos = intervalNanos;
+                }
+                try {
+                    remainingNanos = notFull.awaitNanos(remainingNanos);
+                } catch (InterruptedException e) {
+                    // Keep waiting, since the item must neither be dropped nor exceed the capacity ...
+                    interrupted = true;
+                }
+            }
+        } finally {
+            lock.unlock();
+            if (interrupted) Thread.currentThread().interrupt();
+        }
+    }
+
+    private void signalNotFull() {
+        if (capacity == 0) return;
+        lock.lock();
+        try {
+            notFull.signalAll();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Submit this queue to the executor if it has items and is not already submitted.
+     */
+    private void schedule() {
+        while (!items.isEmpty() && scheduled.compareAndSet(false, true)) {
+            try {
+                executor.execute(this);
+                return;
+            } catch (RejectedExecutionException e) {
+                // The executor has been shut down, so deliver the remaining items in this thread ...
+                drain(Integer.MAX_VALUE);
+                scheduled.set(false);
+            }
+        }
+    }
+
+    @Override
+    public void run() {
+        try {
+            drain(MAX_ITEMS_PER_TASK);
+        } finally {
+            scheduled.set(false);
+        }
+        // Resubmit (at the end of the executor's queue) if more items have arrived ...
+        schedule();
+    }
+
+    private void drain( int maxItems ) {
+        boolean delivering = DELIVERING.get() != null;
+        if (!delivering) DELIVERING.set(Boolean.TRUE);
+        try {
+            int delivered = 0;
+            while (delivered < maxItems) {
+                List<T> batch = null;
+                if (maxBatchSize == 1) {
+                    T item = items.poll();
+                    if (item == null) break;
+                    batch = Collections.singletonList(item);
+                } else {
+                    batch = new ArrayList<T>();
+                    items.drainTo(batch, Math.min(maxBatchSize, maxItems - delivered));
+                    if (batch.isEmpty()) break;
+                }
+                sizeChanged(-batch.size());
+                signalNotFull();
+                delivered += batch.size();
+                deliver(batch);
+            }
+        } finally {
+            if (!delivering) DELIVERING.remove();
+        }
+    }
+
+    @Override
+    public String toString() {
+        return "Queue of " + size() + " items for " + listener;
+    }
+}
@@ -24,26 +24,39 @@
 
 package org.modeshape.jcr.bus;
 
+import java.util.ArrayList;
 import java.util.Collections;
-import java.util.HashSet;
 import java.util.LinkedHashSet;
+import java.util.List;
 import java.util.Set;
-import java.util.concurrent.BlockingQueue;
-import java.util.concurrent.Callable;
 import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.ExecutorService;
-import java.util.concurrent.Future;
-import java.util.concurrent.LinkedBlockingQueue;
-import java.util.concurrent.TimeUnit;
 import java.util.concurrent.locks.ReadWriteLock;
 import java.util.concurrent.locks.ReentrantReadWriteLock;
 import org.modeshape.common.annotation.GuardedBy;
 import org.modeshape.common.annotation.ThreadSafe;
+import org.modeshape.common.logging.Logger;
+import org.modeshape.jcr.ValueRecorder;
+import org.modeshape.jcr.api.monitor.ValueMetric;
 import org.modeshape.jcr.cache.change.ChangeSet;
+import org.modeshape.jcr.cache.change.ChangeSetBatchListener;
 import org.modeshape.jcr.cache.change.ChangeSetListener;
+import org.modeshape.jcr.cache.change.SynchronousChangeSetListener;
 
 /**
  * A standard {@link ChangeBus} implementation.
+ * <p>
+ * Each listener has its own {@link ListenerQueue queue} of change sets for each workspace, so that a slow listener does not hold
+ * up the others. No thread is dedicated to a queue, so a small, fixed-size executor can serve any number of listeners.
+ * </p>
+ * <p>
+ * The queues are bounded: when a queue holds the {@link #DEFAULT_QUEUE_CAPACITY maximum number} of change sets, the thread
+ * publishing a change set waits until the listener has caught up, as described by {@link ListenerQueue}. The total number of
+ * change sets waiting in the queues is recorded as the {@link ValueMetric#CHANGE_SET_QUEUE_SIZE} metric. Listeners that
+ * implement {@link ChangeSetBatchListener} are given all of the change sets that have accumulated in their queue (up to the
+ * {@link #DEFAULT_MAX_BATCH_SIZE maximum batch size}) at once. Listeners that implement {@link SynchronousChangeSetListener}
+ * have no queue, and are instead notified in the publishing thread.
+ * </p>
  * 
  * @author Horia Chiorean
  */
@@ -52,9 +65,21 @@ public final class RepositoryChangeBus implements ChangeBus {
 
     private static final String NULL_WORKSPACE_NAME = "null_workspace_name";
 
+    private static final Logger LOGGER = Logger.getLogger(RepositoryChangeBus.class);
+
+    /**
+     * The default maximum number of change sets that can be waiting in each listener's queue before the threads publishing
+     * changes are blocked.
+     */
+    public static final int DEFAULT_QUEUE_CAPACITY = 10000;
+
+    /**
+     * The default maximum number of change sets that are delivered at once to a {@link ChangeSetBatchListener}.
+     */
+    public static final int DEFAULT_MAX_BATCH_SIZE = 100;
+
     private final ExecutorService executor;
-    private final ConcurrentHashMap<String, ConcurrentHashMap<ChangeSetListener, BlockingQueue<ChangeSet>>> workspaceListenerQueues;
-    private final Set<Future<?>> workers;
+    private final ConcurrentHashMap<String, ConcurrentHashMap<ChangeSetListener, ChangeSetQueue>> workspaceListenerQueues;
 
     private final Set<ChangeSetListener> listeners;
     private final ReadWriteLock listenersLock = new ReentrantReadWriteLock(true);
@@ -62,13 +87,44 @@ public final class RepositoryChangeBus implements ChangeBus {
     protected volatile boolean shutdown;
 
     private final String systemWorkspaceName;
+    private final int queueCapacity;
+    private final int maxBatchSize;
+    private final ValueRecorder valueRecorder;
 
     public RepositoryChangeBus( ExecutorService executor,
                                 String systemWorkspaceName,
                                 boolean separateThreadForSystemWorkspace ) {
+        this(executor, systemWorkspaceName, separateThreadForSystemWorkspace, DEFAULT_QUEUE_CAPACITY, DEFAULT_MAX_BATCH_SIZE,
+             ValueRecorder.NO_OP);
+    }
+
+    /**
+     * Create a new change bus.
+     * 
+     * @param executor the executor used to deliver the change sets to the listeners, which need not have more than a few
+     *        threads; may not be null
+     * @param systemWorkspaceName the name of the system workspace, whose changes are delivered synchronously; may be null
+     * @param separateThreadForSystemWorkspace not used
+     * @param queueCapacity the maximum number of change sets waiting in each listener's queue before publishers must wait, or 0
+     *        if the queues are not to be bounded
+     * @param maxBatchSize the maximum number of change sets delivered at once to a {@link ChangeSetBatchListener}; must be
+     *        positive
+     * @param valueRecorder the recorder of the {@link ValueMetric#CHANGE_SET_QUEUE_SIZE} metric; may not be null
+     */
+    public RepositoryChangeBus( ExecutorService executor,
+                                String systemWorkspaceName,
+                                boolean separateThreadForSystemWorkspace,
+                                int queueCapacity,
+                                int maxBatchSize,
+                                ValueRecorder valueRecorder ) {
+        assert queueCapacity >= 0;
+        assert maxBatchSize > 0;
+        assert valueRecorder != null;
         this.systemWorkspaceName = systemWorkspaceName;
-        this.workers = new HashSet<Future<?>>();
-        this.workspaceListenerQueues = new ConcurrentHashMap<String, ConcurrentHashMap<ChangeSetListener, BlockingQueue<ChangeSet>>>();
+        this.queueCapacity = queueCapacity;
+        this.maxBatchSize = maxBatchSize;
+        this.valueRecorder = valueRecorder;
+        this.workspaceListenerQueues = new ConcurrentHashMap<String, ConcurrentHashMap<ChangeSetListener, ChangeSetQueue>>();
         this.executor = executor;
         this.listeners = Collections.synchronizedSet(new LinkedHashSet<ChangeSetListener>());
         this.shutdown = false;
@@ -88,19 +144,21 @@ public final class RepositoryChangeBus implements ChangeBus {
         try {
             listenersLock.writeLock().lock();
             listeners.clear();
-            workspaceListenerQueues.clear();
             stopWork();
+            workspaceListenerQueues.clear();
         } finally {
             listenersLock.writeLock().unlock();
         }
     }
 
     private void stopWork() {
-        executor.shutdown();
-        for (Future<?> worker : workers) {
-            if (!worker.isDone()) worker.cancel(true);
+        for (ConcurrentHashMap<ChangeSetListener, ChangeSetQueue> queues : workspaceListenerQueues.values()) {
+            for (ChangeSetQueue queue : queues.values()) {
+                queue.close(); // release any publishers waiting for space
+            }
         }
-        workers.clear();
+        // Any tasks already submitted will still deliver the change sets in their queues ...
+        executor.shutdown();
     }
 
     @GuardedBy( "listenersLock" )
@@ -125,6 +183,11 @@ public final class RepositoryChangeBus implements ChangeBus {
         }
         try {
             listenersLock.writeLock().lock();
+            // Forget the listener's queues; any change sets already in them will still be delivered ...
+            for (ConcurrentHashMap<ChangeSetListener, ChangeSetQueue> queues : workspaceListenerQueues.values()) {
+                ChangeSetQueue queue = queues.remove(listener);
+                if (queue != null) queue.close();
+            }
             return listeners.remove(listener);
         } finally {
             listenersLock.writeLock().unlock();
@@ -147,50 +210,72 @@ public final class RepositoryChangeBus implements ChangeBus {
             return;
         }
 
-        ConcurrentHashMap<ChangeSetListener, BlockingQueue<ChangeSet>> listenersForWorkspace = workspaceListenerQueues.get(workspaceName);
+        ConcurrentHashMap<ChangeSetListener, ChangeSetQueue> listenersForWorkspace = workspaceListenerQueues.get(workspaceName);
         if (listenersForWorkspace == null) {
-            listenersForWorkspace = new ConcurrentHashMap<ChangeSetListener, BlockingQueue<ChangeSet>>();
-            ConcurrentHashMap<ChangeSetListener, BlockingQueue<ChangeSet>> existingMap = workspaceListenerQueues.putIfAbsent(workspaceName,
-                                                                                                                             listenersForWorkspace);
+            listenersForWorkspace = new ConcurrentHashMap<ChangeSetListener, ChangeSetQueue>();
+            ConcurrentHashMap<ChangeSetListener, ChangeSetQueue> existingMap = workspaceListenerQueues.putIfAbsent(workspaceName,
+                                                                                                                  listenersForWorkspace);
             if (existingMap != null) {
                 listenersForWorkspace = existingMap;
             }
         }
 
+        List<ChangeSetQueue> listenerQueues = null;
+        List<ChangeSetListener> synchronousListeners = null;
         try {
             listenersLock.readLock().lock();
+            listenerQueues = new ArrayList<ChangeSetQueue>(listeners.size());
             for (ChangeSetListener listener : listeners) {
-                BlockingQueue<ChangeSet> listenerQueue = listenersForWorkspace.get(listener);
+                if (listener instanceof SynchronousChangeSetListener) {
+                    if (synchronousListeners == null) synchronousListeners = new ArrayList<ChangeSetListener>(1);
+                    synchronousListeners.add(listener);
+                    continue;
+                }
+                ChangeSetQueue listenerQueue = listenersForWorkspace.get(listener);
                 if (listenerQueue == null) {
-                    listenerQueue = new LinkedBlockingQueue<ChangeSet>();
-                    listenerQueue.add(changeSet);
-                    BlockingQueue<ChangeSet> existingQueue = listenersForWorkspace.putIfAbsent(listener, listenerQueue);
+                    listenerQueue = new ChangeSetQueue(listener);
+                    ChangeSetQueue existingQueue = listenersForWorkspace.putIfAbsent(listener, listenerQueue);
                     if (existingQueue != null) {
                         listenerQueue = existingQueue;
                     }
-                    ChangeSetDispatcher dispatcher = new ChangeSetDispatcher(listener, listenerQueue);
-                    workers.add(executor.submit(dispatcher));
-                } else {
-                    listenerQueue.add(changeSet);
                 }
+                listenerQueues.add(listenerQueue);
             }
         } finally {
             listenersLock.readLock().unlock();
         }
+
+        if (synchronousListeners != null) {
+            for (ChangeSetListener listener : synchronousListeners) {
+                try {
+                    listener.notify(changeSet);
+                } catch (RuntimeException e) {
+                    LOGGER.error(e, BusI18n.errorNotifyingListener, listener, e.getMessage());
+                }
+            }
+        }
+
+        // Enqueue the change set outside of the lock, since this may block until the listeners catch up ...
+        for (ChangeSetQueue listenerQueue : listenerQueues) {
+            listenerQueue.add(changeSet);
+        }
     }
 
     private boolean notifiedSystemWorkspaceListenersInline( ChangeSet changeSet,
                                                             String workspaceName ) {
         if (workspaceName.equalsIgnoreCase(systemWorkspaceName)) {
+            // Notify the listeners outside of the lock, since a listener may wait for its own listeners to catch up ...
+            List<ChangeSetListener> listeners = null;
             listenersLock.readLock().lock();
             try {
-                for (ChangeSetListener listener : listeners) {
-                    listener.notify(changeSet);
-                }
-                return true;
+                listeners = new ArrayList<ChangeSetListener>(this.listeners);
             } finally {
                 listenersLock.readLock().unlock();
             }
+            for (ChangeSetListener listener : listeners) {
+                listener.notify(changeSet);
+            }
+            return true;
         }
         return false;
     }
@@ -205,42 +290,35 @@ public final class RepositoryChangeBus implements ChangeBus {
         }
     }
 
-    private class ChangeSetDispatcher implements Callable<Void> {
-
-        private static final int DEFAULT_POLL_TIMEOUT = 3;
-
-        private ChangeSetListener listener;
-        private BlockingQueue<ChangeSet> changeSetQueue;
+    /**
+     * The queue of change sets for a single listener in a single workspace.
+     */
+    private final class ChangeSetQueue extends ListenerQueue<ChangeSet> {
+        private final ChangeSetListener listener;
 
-        ChangeSetDispatcher( ChangeSetListener listener,
-                             BlockingQueue<ChangeSet> changeSetQueue ) {
+        ChangeSetQueue( ChangeSetListener listener ) {
+            super(listener, executor, queueCapacity, listener instanceof ChangeSetBatchListener ? maxBatchSize : 1);
             this.listener = listener;
-            this.changeSetQueue = changeSetQueue;
         }
 
         @Override
-        public Void call() {
-            while (!shutdown) {
-                try {
-                    ChangeSet changeSet = changeSetQueue.poll(DEFAULT_POLL_TIMEOUT, TimeUnit.SECONDS);
-                    if (changeSet != null) {
+        protected void sizeChanged( int delta ) {
+            valueRecorder.increment(ValueMetric.CHANGE_SET_QUEUE_SIZE, delta);
+        }
+
+        @Override
+        protected void deliver( List<ChangeSet> changeSets ) {
+            try {
+                if (listener instanceof ChangeSetBatchListener) {
+                    ((ChangeSetBatchListener)listener).notify(ChangeSetCoalescer.coalesce(changeSets));
+                } else {
+                    for (ChangeSet changeSet : changeSets) {
                         listener.notify(changeSet);
                     }
-                } catch (InterruptedException e) {
-                    Thread.interrupted();
-                    break;
                 }
+            } catch (RuntimeException e) {
+                LOGGER.error(e, BusI18n.errorNotifyingListener, listener, e.getMessage());
             }
-            shutdown();
-            return null;
-        }
-
-        private void shutdown() {
-            while (!changeSetQueue.isEmpty()) {
-                listener.notify(changeSetQueue.poll());
-            }
-            this.listener = null;
-            this.changeSetQueue = null;
         }
     }
 }
@@ -24,12 +24,14 @@
 package org.modeshape.jcr.cache;
 
 import java.util.HashSet;
+import java.util.List;
 import java.util.Map;
 import java.util.Set;
 import java.util.UUID;
 import java.util.concurrent.Callable;
 import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.CopyOnWriteArraySet;
+import java.util.concurrent.Executor;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicLong;
 import javax.transaction.NotSupportedException;
@@ -55,12 +57,14 @@ import org.modeshape.jcr.JcrLexicon;
 import org.modeshape.jcr.ModeShape;
 import org.modeshape.jcr.ModeShapeLexicon;
 import org.modeshape.jcr.RepositoryConfiguration;
+import org.modeshape.jcr.RepositoryStatistics;
 import org.modeshape.jcr.api.value.DateTime;
 import org.modeshape.jcr.bus.ChangeBus;
 import org.modeshape.jcr.cache.change.AbstractNodeChange;
 import org.modeshape.jcr.cache.change.AbstractPropertyChange;
 import org.modeshape.jcr.cache.change.Change;
 import org.modeshape.jcr.cache.change.ChangeSet;
+import org.modeshape.jcr.cache.change.ChangeSetBatchListener;
 import org.modeshape.jcr.cache.change.ChangeSetListener;
 import org.modeshape.jcr.cache.change.NodeAdded;
 import org.modeshape.jcr.cache.change.NodeChanged;
@@ -72,6 +76,7 @@ import org.modeshape.jcr.cache.change.Observable;
 import org.modeshape.jcr.cache.change.RecordingChanges;
 import org.modeshape.jcr.cache.change.WorkspaceAdded;
 import org.modeshape.jcr.cache.change.WorkspaceRemoved;
+import org.modeshape.jcr.cache.document.ChildPrefetcher;
 import org.modeshape.jcr.cache.document.DocumentOptimizer;
 import org.modeshape.jcr.cache.document.DocumentStore;
 import org.modeshape.jcr.cache.document.DocumentTranslator;
@@ -127,6 +132,7 @@ public class RepositoryCache implements Observable {
     private final SessionEnvironment sessionContext;
     private final String processKey;
     private final CacheContainer workspaceCacheManager;
+    private final RepositoryStatistics statistics;
     private volatile boolean initializingRepository = false;
 
     public RepositoryCache( ExecutionContext context,
@@ -135,8 +141,11 @@ public class RepositoryCache implements Observable {
                             ContentInitializer initializer,
                             SessionEnvironment sessionContext,
                             ChangeBus changeBus,
-                            CacheContainer workspaceCacheContainer ) {
+                            CacheContainer workspaceCacheContainer,
+                            RepositoryStatistics statistics ) {
+        assert statistics != null;
         this.context = context;
+        this.statistics = statistics;
         this.configuration = configuration;
         this.documentStore = documentStore;
         this.minimumStringLengthForBinaryStorage.set(configuration.getBinaryStorage().getMinimumStringSize());
@@ -493,7 +502,16 @@ public class RepositoryCache implements Observable {
         return systemSession.mutable(systemRef.getKey());
     }
 
-    protected class LocalChangeListener implements ChangeSetListener {
+    protected class LocalChangeListener implements ChangeSetBatchListener {
+        @Override
+        public void notify( List<ChangeSet> changeSets ) {
+            // The workspace caches and the indexes only need the resulting state of each node, so the coalesced
+            // change sets can be processed one at a time ...
+            for (ChangeSet changeSet : changeSets) {
+                notify(changeSet);
+            }
+        }
+
         @Override
         public void notify( ChangeSet changeSet ) {
 
@@ -708,7 +726,16 @@ public class RepositoryCache implements Observable {
                         trans.setProperty(rootDoc, context.getPropertyFactory().create(JcrLexicon.UUID, rootKey.toString()), null);
 
                         WorkspaceCache workspaceCache = new WorkspaceCache(context, getKey(), name, documentStore, translator,
-                                                                           rootKey, nodeCache, changeBus);
+                                                                           rootKey, nodeCache, changeBus, statistics);
+                        workspaceCache.setPathCacheSize(configuration.getWorkspacePathCacheSize());
+                        RepositoryConfiguration.ChildPrefetching prefetching = configuration.getChildPrefetching();
+                        if (prefetching.isEnabled()) {
+                            Executor prefetchExecutor = context.getThreadPool(prefetching.getThreadPoolName());
+                            workspaceCache.setChildPrefetcher(new ChildPrefetcher(workspaceCache, prefetchExecutor, statistics,
+                                                                                  prefetching.getAccessThreshold(),
+                                                                                  prefetching.getMaxNodes(),
+                                                                                  prefetching.getMaxConcurrentPrefetches()));
+                        }
 
                         if (documentStore.localStore().putIfAbsent(rootKey.toString(), rootDoc) == null) {
                             // we are the first node to perform the initialization, so we need to link the system node
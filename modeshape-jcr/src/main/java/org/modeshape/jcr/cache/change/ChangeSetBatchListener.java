@@ -0,0 +1,51 @@
+/*
+ * ModeShape (http://www.modeshape.org)
+ * See the COPYRIGHT.txt file distributed with this work for information
+ * regarding copyright ownership.  Some portions may be licensed
+ * to Red Hat, Inc. under one or more contributor license agreements.
+ * See the AUTHORS.txt file in the distribution for a full listing of 
+ * individual contributors.
+ *
+ * ModeShape is free software. Unless otherwise indicated, all code in ModeShape
+ * is licensed to you under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ * 
+ * ModeShape is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+package org.modeshape.jcr.cache.change;
+
+import java.util.List;
+
+/**
+ * A {@link ChangeSetListener} that prefers to receive the change sets in batches. When a listener implementing this interface is
+ * registered with a change bus, the bus will deliver all of the change sets that have accumulated for the listener (up to a
+ * maximum) in a single call to {@link #notify(List)}, rather than calling {@link #notify(ChangeSet)} once for each change set.
+ * <p>
+ * Before a batch is delivered, consecutive change sets made in the same process, repository and workspace by the same user and
+ * with the same user data are merged into a single change set, and the changes to each node within that merged change set are
+ * coalesced: only the last {@link NodeChanged} event for a node is kept, successive changes to the same property are combined
+ * into one event (or dropped if the property was added and then removed), and property and node-changed events are dropped for
+ * a node that is removed later in the same merged change set. All other events are delivered unchanged and in order. Therefore,
+ * this interface should only be implemented by listeners that are interested in the resulting state of the nodes rather than in
+ * each individual intermediate change.
+ * </p>
+ */
+public interface ChangeSetBatchListener extends ChangeSetListener {
+
+    /**
+     * Notify this listener of a batch of (coalesced) change sets, in the order in which they were made.
+     * 
+     * @param changeSets the change sets; never null or empty
+     */
+    void notify( List<ChangeSet> changeSets );
+
+}
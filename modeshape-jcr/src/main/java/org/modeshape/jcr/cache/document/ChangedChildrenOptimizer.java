@@ -0,0 +1,226 @@
+/*
+ * ModeShape (http://www.modeshape.org)
+ * See the COPYRIGHT.txt file distributed with this work for information
+ * regarding copyright ownership.  Some portions may be licensed
+ * to Red Hat, Inc. under one or more contributor license agreements.
+ * See the AUTHORS.txt file in the distribution for a full listing of
+ * individual contributors.
+ *
+ * ModeShape is free software. Unless otherwise indicated, all code in ModeShape
+ * is licensed to you under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * ModeShape is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+package org.modeshape.jcr.cache.document;
+
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import org.infinispan.schematic.document.EditableDocument;
+import org.modeshape.common.annotation.ThreadSafe;
+import org.modeshape.jcr.cache.NodeKey;
+import org.modeshape.jcr.cache.change.Change;
+import org.modeshape.jcr.cache.change.ChangeSet;
+import org.modeshape.jcr.cache.change.ChangeSetBatchListener;
+import org.modeshape.jcr.cache.change.NodeAdded;
+import org.modeshape.jcr.cache.change.NodeMoved;
+import org.modeshape.jcr.cache.change.NodeRemoved;
+import org.modeshape.jcr.cache.document.LocalDocumentStore.DocumentOperation;
+import org.modeshape.jcr.cache.document.LocalDocumentStore.DocumentOperationResults;
+
+/**
+ * A component that optimizes the blocks of children of only those nodes whose children have changed, rather than scanning all of
+ * the documents in the store.
+ * <p>
+ * When registered with the change bus, this listener records the keys of the nodes that have had children added, removed or
+ * moved by sessions in this process. These nodes are later {@link #optimize(int) optimized} in the order in which they first
+ * changed, at a limited rate so that the optimization does not compete with the sessions for the store. Changes made in other
+ * processes are ignored, since those processes record and optimize their own changes.
+ * </p>
+ */
+@ThreadSafe
+public class ChangedChildrenOptimizer implements ChangeSetBatchListener {
+
+    private final String processKey;
+    private final LocalDocumentStore documentStore;
+    private final int targetCountPerBlock;
+    private final int tolerance;
+    private final Set<String> backlog = new LinkedHashSet<String>();
+    private final AtomicLong optimizedCount = new AtomicLong();
+    private final AtomicLong unmodifiedCount = new AtomicLong();
+    private final AtomicLong failureCount = new AtomicLong();
+
+    /**
+     * Create a new optimizer.
+     *
+     * @param processKey the key of this process, used to ignore the changes made in other processes; may not be null
+     * @param documentStore the store containing the node documents; may not be null
+     * @param targetCountPerBlock the target number of children per block
+     * @param tolerance the allowed tolerance between the target and actual number of children per block
+     */
+    public ChangedChildrenOptimizer( String processKey,
+                                     LocalDocumentStore documentStore,
+                                     int targetCountPerBlock,
+                                     int tolerance ) {
+        assert processKey != null;
+        assert documentStore != null;
+        this.processKey = processKey;
+        this.documentStore = documentStore;
+        this.targetCountPerBlock = targetCountPerBlock;
+        this.tolerance = tolerance;
+    }
+
+    @Override
+    public void notify( ChangeSet changeSet ) {
+        if (!processKey.equals(changeSet.getProcessKey())) return;
+        Set<String> changedParents = null;
+        for (Change change : changeSet) {
+            if (change instanceof NodeAdded) {
+                changedParents = add(changedParents, ((NodeAdded)change).getParentKey());
+            } else if (change instanceof NodeRemoved) {
+                changedParents = add(changedParents, ((NodeRemoved)change).getParentKey());
+            } else if (change instanceof NodeMoved) {
+                NodeMoved moved = (NodeMoved)change;
+                if (!moved.getNewParent().equals(moved.getOldParent())) {
+                    changedParents = add(changedParents, moved.getNewParent());
+                    changedParents = add(changedParents, moved.getOldParent());
+                }
+            }
+        }
+        if (changedParents != null) {
+            synchronized (backlog) {
+                backlog.addAll(changedParents);
+            }
+        }
+    }
+
+    @Override
+    public void notify( List<ChangeSet> changeSets ) {
+        for (ChangeSet changeSet : changeSets) {
+            notify(changeSet);
+        }
+    }
+
+    private static Set<String> add( Set<String> keys,
+                                    NodeKey key ) {
+        if (key == null) return keys;
+        if (keys == null) keys = new LinkedHashSet<String>();
+        keys.add(key.toString());
+        return keys;
+    }
+
+    /**
+     * Optimize the children of the nodes that are in the backlog when this method is called, in the order in which they were
+     * recorded. Nodes that are changed while this method is running are left in the backlog for the next call. Any node whose
+     * document could not be locked in a timely fashion is put back into the backlog, while any node whose optimization failed is
+     * dropped.
+     *
+     * @param maxNodesPerSecond the maximum number of nodes that are optimized per second, or 0 if the rate is not to be limited
+     * @return the results of the optimization; never null
+     * @throws InterruptedException if the thread is interrupted while waiting to optimize the next node
+     */
+    public DocumentOperationResults optimize( int maxNodesPerSecond ) throws InterruptedException {
+        long nanosPerNode = maxNodesPerSecond > 0 ? TimeUnit.SECONDS.toNanos(1) / maxNodesPerSecond : 0L;
+        final DocumentOptimizer optimizer = new DocumentOptimizer(documentStore);
+        DocumentOperation operation = new DocumentOperation() {
+            private static final long serialVersionUID = 1L;
+
+            @Override
+            public boolean execute( String key,
+                                    EditableDocument document ) {
+                return optimizer.optimizeChildrenBlocks(new NodeKey(key), document, targetCountPerBlock, tolerance);
+            }
+        };
+        DocumentOperationResults results = new DocumentOperationResults();
+        long nextStart = System.nanoTime();
+        for (int remaining = getBacklogSize(); remaining > 0; --remaining) {
+            // Wait until the next node may be optimized ...
+            long delay = nextStart - System.nanoTime();
+            if (delay > 0L) TimeUnit.NANOSECONDS.sleep(delay);
+            nextStart = Math.max(nextStart, System.nanoTime() - nanosPerNode) + nanosPerNode;
+
+            String key = poll();
+            if (key == null) break;
+            DocumentOperationResults result = documentStore.performOnDocuments(Collections.singleton(key), operation);
+            if (result.getSkipCount() != 0L) {
+                // Try this node again next time ...
+                synchronized (backlog) {
+                    backlog.add(key);
+                }
+            }
+            optimizedCount.addAndGet(result.getModifiedCount());
+            unmodifiedCount.addAndGet(result.getUnmodifiedCount());
+            failureCount.addAndGet(result.getFailureCount());
+            results.combine(result);
+        }
+        return results;
+    }
+
+    private String poll() {
+        synchronized (backlog) {
+            Iterator<String> iter = backlog.iterator();
+            if (!iter.hasNext()) return null;
+            String key = iter.next();
+            iter.remove();
+            return key;
+        }
+    }
+
+    /**
+     * Get the number of nodes whose children have changed and that are waiting to be optimized.
+     *
+     * @return the number of nodes in the backlog
+     */
+    public int getBacklogSize() {
+        synchronized (backlog) {
+            return backlog.size();
+        }
+    }
+
+    /**
+     * Get the total number of nodes whose blocks of children were changed by this optimizer.
+     *
+     * @return the number of optimized nodes
+     */
+    public long getOptimizedCount() {
+        return optimizedCount.get();
+    }
+
+    /**
+     * Get the total number of nodes that were examined by this optimizer but whose blocks of children did not need to change.
+     *
+     * @return the number of unmodified nodes
+     */
+    public long getUnmodifiedCount() {
+        return unmodifiedCount.get();
+    }
+
+    /**
+     * Get the total number of nodes that this optimizer failed to optimize.
+     *
+     * @return the number of failures
+     */
+    public long getFailureCount() {
+        return failureCount.get();
+    }
+
+    @Override
+    public String toString() {
+        return "ChangedChildrenOptimizer (backlog=" + getBacklogSize() + ", optimized=" + getOptimizedCount() + ", unmodified="
+               + getUnmodifiedCount() + ", failed=" + getFailureCount() + ")";
+    }
+}
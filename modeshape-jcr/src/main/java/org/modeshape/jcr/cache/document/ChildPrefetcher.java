@@ -0,0 +1,268 @@
+/*
+ * ModeShape (http://www.modeshape.org)
+ * See the COPYRIGHT.txt file distributed with this work for information
+ * regarding copyright ownership.  Some portions may be licensed
+ * to Red Hat, Inc. under one or more contributor license agreements.
+ * See the AUTHORS.txt file in the distribution for a full listing of
+ * individual contributors.
+ *
+ * ModeShape is free software. Unless otherwise indicated, all code in ModeShape
+ * is licensed to you under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * ModeShape is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+package org.modeshape.jcr.cache.document;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import org.modeshape.common.annotation.ThreadSafe;
+import org.modeshape.common.logging.Logger;
+import org.modeshape.jcr.ValueRecorder;
+import org.modeshape.jcr.api.monitor.ValueMetric;
+import org.modeshape.jcr.cache.CachedNode;
+import org.modeshape.jcr.cache.ChildReference;
+import org.modeshape.jcr.cache.NodeKey;
+
+/**
+ * A component that prefetches into a {@link WorkspaceCache} the children of nodes whose children are being loaded from the
+ * persistent store one at a time, as happens when an application navigates to a node and then iterates over or individually
+ * accesses most of its children.
+ * <p>
+ * The workspace cache {@link #loaded(NodeKey, NodeKey) notifies} this prefetcher every time it has to load a single node from the
+ * store. Once the number of children of the same parent loaded this way reaches the access threshold, the parent's children that
+ * are not yet cached are loaded in the background with a few {@link WorkspaceCache#getNodes(java.util.Collection) bulk reads}.
+ * The number of prefetches that run at the same time in the workspace is limited, and any prefetch that would exceed this limit
+ * is skipped.
+ * </p>
+ * <p>
+ * The prefetcher counts as <i>hits</i> the requests for nodes that were found in the cache because they were prefetched, and as
+ * <i>misses</i> the requests for nodes that had to be loaded one at a time from the store, and records them in the
+ * {@link ValueMetric#CHILD_PREFETCH_HIT_COUNT} and {@link ValueMetric#CHILD_PREFETCH_MISS_COUNT} metrics.
+ * </p>
+ */
+@ThreadSafe
+public class ChildPrefetcher {
+
+    private static final Logger LOGGER = Logger.getLogger(ChildPrefetcher.class);
+
+    /**
+     * The maximum number of parents whose accessed children are counted, and the maximum number of prefetched nodes that are
+     * remembered to count the hits. When either is exceeded, the information is discarded and gathered anew.
+     */
+    protected static final int MAX_TRACKED_KEYS = 10000;
+
+    private final WorkspaceCache cache;
+    private final Executor executor;
+    private final ValueRecorder valueRecorder;
+    private final int accessThreshold;
+    private final int maxNodes;
+    private final int maxConcurrentPrefetches;
+    private final ConcurrentMap<NodeKey, AtomicInteger> loadedChildCountsByParent = new ConcurrentHashMap<NodeKey, AtomicInteger>();
+    private final Set<NodeKey> prefetchingParents = Collections.newSetFromMap(new ConcurrentHashMap<NodeKey, Boolean>());
+    private final Map<NodeKey, Boolean> prefetchedKeys = new ConcurrentHashMap<NodeKey, Boolean>();
+    private final AtomicLong prefetchCount = new AtomicLong();
+    private final AtomicLong prefetchedNodeCount = new AtomicLong();
+    private final AtomicLong skippedCount = new AtomicLong();
+    private final AtomicLong hitCount = new AtomicLong();
+    private final AtomicLong missCount = new AtomicLong();
+
+    /**
+     * Create a new prefetcher.
+     * 
+     * @param cache the workspace cache into which the children are prefetched; may not be null
+     * @param executor the executor used to run the prefetches; may not be null
+     * @param valueRecorder the recorder for the hit and miss metrics; may not be null
+     * @param accessThreshold the number of children of a node that must be loaded one at a time before the node's remaining
+     *        children are prefetched; must be positive
+     * @param maxNodes the maximum number of children that are loaded by a single prefetch; must be positive
+     * @param maxConcurrentPrefetches the maximum number of prefetches that may run at the same time; must be positive
+     */
+    public ChildPrefetcher( WorkspaceCache cache,
+                            Executor executor,
+                            ValueRecorder valueRecorder,
+                            int accessThreshold,
+                            int maxNodes,
+                            int maxConcurrentPrefetches ) {
+        assert cache != null;
+        assert executor != null;
+        assert valueRecorder != null;
+        assert accessThreshold > 0;
+        assert maxNodes > 0;
+        assert maxConcurrentPrefetches > 0;
+        this.cache = cache;
+        this.executor = executor;
+        this.valueRecorder = valueRecorder;
+        this.accessThreshold = accessThreshold;
+        this.maxNodes = maxNodes;
+        this.maxConcurrentPrefetches = maxConcurrentPrefetches;
+    }
+
+    /**
+     * Signal that the node with the supplied key was requested and found in the cache.
+     * 
+     * @param key the key of the node; may not be null
+     */
+    void found( NodeKey key ) {
+        if (prefetchedKeys.remove(key) != null) {
+            hitCount.incrementAndGet();
+            valueRecorder.increment(ValueMetric.CHILD_PREFETCH_HIT_COUNT, 1L);
+        }
+    }
+
+    /**
+     * Signal that the node with the supplied key was requested and had to be loaded by itself from the store.
+     * 
+     * @param key the key of the node; may not be null
+     * @param parentKey the key of the node's parent; may be null if the node has no parent
+     */
+    void loaded( NodeKey key,
+                 NodeKey parentKey ) {
+        missCount.incrementAndGet();
+        valueRecorder.increment(ValueMetric.CHILD_PREFETCH_MISS_COUNT, 1L);
+        prefetchedKeys.remove(key);
+        if (parentKey == null) return;
+        AtomicInteger count = loadedChildCountsByParent.get(parentKey);
+        if (count == null) {
+            if (loadedChildCountsByParent.size() >= MAX_TRACKED_KEYS) loadedChildCountsByParent.clear();
+            count = new AtomicInteger();
+            AtomicInteger existing = loadedChildCountsByParent.putIfAbsent(parentKey, count);
+            if (existing != null) count = existing;
+        }
+        if (count.incrementAndGet() == accessThreshold) {
+            loadedChildCountsByParent.remove(parentKey, count);
+            prefetch(parentKey);
+        }
+    }
+
+    private void prefetch( final NodeKey parentKey ) {
+        if (prefetchingParents.size() >= maxConcurrentPrefetches || !prefetchingParents.add(parentKey)) {
+            skippedCount.incrementAndGet();
+            return;
+        }
+        try {
+            executor.execute(new Runnable() {
+                @Override
+                public void run() {
+                    try {
+                        prefetchChildrenOf(parentKey);
+                    } catch (RuntimeException e) {
+                        // The workspace may have been closed or the parent removed, but prefetching is only an optimization ...
+                        LOGGER.debug(e, "Unable to prefetch the children of '{0}' in the '{1}' workspace", parentKey, cache);
+                    } finally {
+                        prefetchingParents.remove(parentKey);
+                    }
+                }
+            });
+        } catch (RejectedExecutionException e) {
+            prefetchingParents.remove(parentKey);
+            skippedCount.incrementAndGet();
+        }
+    }
+
+    /**
+     * Load into the cache those children of the supplied node that are not already cached, up to the maximum number of nodes.
+     * This method is normally run in the background.
+     * 
+     * @param parentKey the key of the node whose children are to be loaded; may not be null
+     * @return the number of children that were loaded
+     */
+    protected int prefetchChildrenOf( NodeKey parentKey ) {
+        CachedNode parent = cache.getNode(parentKey);
+        if (parent == null) return 0;
+        prefetchCount.incrementAndGet();
+        int count = 0;
+        List<NodeKey> batch = new ArrayList<NodeKey>(WorkspaceCache.BULK_LOAD_SIZE);
+        for (ChildReference ref : parent.getChildReferences(cache)) {
+            NodeKey key = ref.getKey();
+            if (cache.isCached(key)) continue;
+            batch.add(key);
+            if (count + batch.size() >= maxNodes) break;
+            if (batch.size() == WorkspaceCache.BULK_LOAD_SIZE) {
+                count += load(batch);
+                batch.clear();
+            }
+        }
+        if (!batch.isEmpty()) count += load(batch);
+        return count;
+    }
+
+    private int load( List<NodeKey> keys ) {
+        Map<NodeKey, CachedNode> nodes = cache.getNodes(keys);
+        if (prefetchedKeys.size() >= MAX_TRACKED_KEYS) prefetchedKeys.clear();
+        for (NodeKey key : nodes.keySet()) {
+            prefetchedKeys.put(key, Boolean.TRUE);
+        }
+        prefetchedNodeCount.addAndGet(nodes.size());
+        return nodes.size();
+    }
+
+    /**
+     * Get the number of prefetches that were run.
+     * 
+     * @return the number of prefetches
+     */
+    public long getPrefetchCount() {
+        return prefetchCount.get();
+    }
+
+    /**
+     * Get the total number of nodes that were loaded by the prefetches.
+     * 
+     * @return the number of prefetched nodes
+     */
+    public long getPrefetchedNodeCount() {
+        return prefetchedNodeCount.get();
+    }
+
+    /**
+     * Get the number of prefetches that were skipped because too many prefetches were already running.
+     * 
+     * @return the number of skipped prefetches
+     */
+    public long getSkippedCount() {
+        return skippedCount.get();
+    }
+
+    /**
+     * Get the number of requested nodes that were found in the cache because they were prefetched.
+     * 
+     * @return the number of hits
+     */
+    public long getHitCount() {
+        return hitCount.get();
+    }
+
+    /**
+     * Get the number of requested nodes that had to be loaded by themselves from the store.
+     * 
+     * @return the number of misses
+     */
+    public long getMissCount() {
+        return missCount.get();
+    }
+
+    @Override
+    public String toString() {
+        return "ChildPrefetcher (prefetches=" + getPrefetchCount() + ", prefetched=" + getPrefetchedNodeCount() + ", skipped="
+               + getSkippedCount() + ", hits=" + getHitCount() + ", misses=" + getMissCount() + ")";
+    }
+}
@@ -25,6 +25,7 @@
 package org.modeshape.jcr.cache.document;
 
 import java.util.Collection;
+import java.util.Map;
 import javax.transaction.TransactionManager;
 import javax.transaction.xa.XAResource;
 import org.infinispan.schematic.SchematicEntry;
@@ -49,6 +50,18 @@ public interface DocumentStore {
      */
     public SchematicEntry get( String key );
 
+    /**
+     * Get the entries with the supplied keys. Implementations should retrieve the entries with as few round trips to the
+     * underlying storage as possible, which is far cheaper than calling {@link #get(String)} for each key when many documents
+     * (such as all of the children of a node) are needed at once.
+     *
+     * @param keys the keys or identifiers for the documents; may not be null
+     * @return the entries keyed by their key, in the iteration order of the supplied keys; never null but without entries for
+     *         keys that have no document
+     * @throws DocumentStoreException if there is a problem retrieving the documents
+     */
+    public Map<String, SchematicEntry> load( Collection<String> keys );
+
     /**
      * Store the supplied document at the given key.
      *
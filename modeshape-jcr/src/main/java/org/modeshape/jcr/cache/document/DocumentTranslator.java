@@ -892,11 +892,19 @@ public class DocumentTranslator implements DocumentConstants {
             return new ArrayList<ChildReference>();
         }
         List<ChildReference> childRefsList = new ArrayList<ChildReference>(children.size());
+        String previousNameStr = null;
+        Name previousName = null;
         for (Object value : children) {
-            ChildReference ref = childReferenceFrom(value);
-            if (ref != null) {
-                childRefsList.add(ref);
-            }
+            if (!(value instanceof Document)) continue;
+            Document doc = (Document)value;
+            NodeKey key = new NodeKey(doc.getString(KEY));
+            String nameStr = doc.getString(NAME);
+            // Same-name-siblings are usually adjacent, so let them share a single Name instance ...
+            Name name = nameStr.equals(previousNameStr) ? previousName : names.create(nameStr, decoder);
+            // We always use 1 for the SNS index, since the SNS index is dependent upon SNS nodes before it
+            childRefsList.add(new ChildReference(key, name, 1));
+            previousNameStr = nameStr;
+            previousName = name;
         }
         return childRefsList;
     }
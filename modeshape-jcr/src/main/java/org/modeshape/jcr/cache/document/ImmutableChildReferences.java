@@ -23,19 +23,19 @@
  */
 package org.modeshape.jcr.cache.document;
 
+import java.lang.ref.SoftReference;
+import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collection;
-import java.util.HashMap;
+import java.util.Collections;
 import java.util.HashSet;
 import java.util.Iterator;
 import java.util.List;
-import java.util.Map;
 import java.util.NoSuchElementException;
 import java.util.Set;
 import org.infinispan.schematic.document.Document;
 import org.modeshape.common.annotation.Immutable;
 import org.modeshape.common.collection.EmptyIterator;
-import org.modeshape.common.collection.LinkedListMultimap;
-import org.modeshape.common.collection.ListMultimap;
 import org.modeshape.jcr.cache.ChildReference;
 import org.modeshape.jcr.cache.ChildReferences;
 import org.modeshape.jcr.cache.DocumentNotFoundException;
@@ -58,7 +58,7 @@ public class ImmutableChildReferences {
         if (size == 0) {
             return EMPTY_CHILD_REFERENCES;
         }
-        return new Medium(references);
+        return new Compact(references);
     }
 
     public static ChildReferences create( ChildReferences first,
@@ -182,29 +182,114 @@ public class ImmutableChildReferences {
         }
     }
 
+    /**
+     * An immutable list of child references that is compact enough to hold the children of very large, flat nodes. The
+     * references are kept in an array in their original order, and are found by key and by name using open-addressing hash tables
+     * that hold only the (1-based) positions of the references. The references with the same name are chained together (again by
+     * position), and the number of references with each name is recorded with the first of them.
+     */
     @Immutable
-    protected static final class Medium extends AbstractChildReferences {
+    protected static final class Compact extends AbstractChildReferences {
+
+        private final ChildReference[] references;
+        private final int size;
+        /** The 1-based position of the reference for each key, or 0 for an empty slot */
+        private final int[] keyTable;
+        /** The 1-based position of the first reference with each name, or 0 for an empty slot */
+        private final int[] nameTable;
+        /** The 1-based position of the next reference with the same name, or 0 if there is none */
+        private final int[] nextWithSameName;
+        /** The number of references with the same name, recorded at the position of the first such reference */
+        private final int[] sameNameCounts;
+
+        protected Compact( Collection<ChildReference> children ) {
+            this.references = children.toArray(new ChildReference[children.size()]);
+            int length = references.length;
+            this.keyTable = new int[tableLengthFor(length)];
+            this.nameTable = new int[keyTable.length];
+            this.nextWithSameName = new int[length];
+            this.sameNameCounts = new int[length];
+            int[] lastWithSameName = new int[length];
+            int distinctKeys = 0;
+            for (int i = 0; i != length; ++i) {
+                ChildReference ref = references[i];
+                int slot = keySlot(ref.getKey());
+                if (keyTable[slot] == 0) ++distinctKeys;
+                keyTable[slot] = i + 1;
+
+                slot = nameSlot(ref.getName());
+                int first = nameTable[slot] - 1;
+                if (first < 0) {
+                    nameTable[slot] = i + 1;
+                    sameNameCounts[i] = 1;
+                    lastWithSameName[i] = i + 1;
+                } else {
+                    nextWithSameName[lastWithSameName[first] - 1] = i + 1;
+                    lastWithSameName[first] = i + 1;
+                    ++sameNameCounts[first];
+                }
+            }
+            this.size = distinctKeys;
+        }
 
-        private final ListMultimap<Name, ChildReference> childReferences;
-        private final Map<NodeKey, ChildReference> childReferencesByKey;
+        private static int tableLengthFor( int numberOfReferences ) {
+            // Use a power of two that keeps the tables at most half full ...
+            int length = 2;
+            while (length < numberOfReferences * 2) {
+                length <<= 1;
+            }
+            return length;
+        }
 
-        protected Medium( Iterable<ChildReference> children ) {
-            this.childReferences = LinkedListMultimap.create();
-            this.childReferencesByKey = new HashMap<NodeKey, ChildReference>();
-            for (ChildReference ref : children) {
-                this.childReferences.put(ref.getName(), ref);
-                this.childReferencesByKey.put(ref.getKey(), ref);
+        private static int spread( int hashCode ) {
+            int h = hashCode * 0x9E3779B9;
+            return h ^ (h >>> 16);
+        }
+
+        private int keySlot( NodeKey key ) {
+            int mask = keyTable.length - 1;
+            int slot = spread(key.hashCode()) & mask;
+            while (keyTable[slot] != 0 && !references[keyTable[slot] - 1].getKey().equals(key)) {
+                slot = (slot + 1) & mask;
             }
+            return slot;
+        }
+
+        private int nameSlot( Name name ) {
+            int mask = nameTable.length - 1;
+            int slot = spread(name.hashCode()) & mask;
+            while (nameTable[slot] != 0 && !references[nameTable[slot] - 1].getName().equals(name)) {
+                slot = (slot + 1) & mask;
+            }
+            return slot;
+        }
+
+        private ChildReference childWithKey( NodeKey key ) {
+            int position = keyTable[keySlot(key)];
+            return position != 0 ? references[position - 1] : null;
+        }
+
+        private List<ChildReference> childrenWithName( Name name ) {
+            int position = nameTable[nameSlot(name)];
+            if (position == 0) return Collections.emptyList();
+            if (nextWithSameName[position - 1] == 0) return Collections.singletonList(references[position - 1]);
+            List<ChildReference> result = new ArrayList<ChildReference>(sameNameCounts[position - 1]);
+            while (position != 0) {
+                result.add(references[position - 1]);
+                position = nextWithSameName[position - 1];
+            }
+            return result;
         }
 
         @Override
         public long size() {
-            return childReferencesByKey.size();
+            return size;
         }
 
         @Override
         public int getChildCount( Name name ) {
-            return childReferences.get(name).size();
+            int position = nameTable[nameSlot(name)];
+            return position != 0 ? sameNameCounts[position - 1] : 0;
         }
 
         @Override
@@ -224,7 +309,7 @@ public class ImmutableChildReferences {
                 }
             }
 
-            List<ChildReference> childrenWithSameName = this.childReferences.get(name);
+            List<ChildReference> childrenWithSameName = childrenWithName(name);
             if (childrenWithSameName.isEmpty() && !includeRenames) {
                 // This segment contains no nodes with the supplied name ...
                 if (insertions == null) {
@@ -270,7 +355,7 @@ public class ImmutableChildReferences {
         @Override
         public ChildReference getChild( NodeKey key,
                                         Context context ) {
-            ChildReference ref = childReferencesByKey.get(key);
+            ChildReference ref = childWithKey(key);
             if (ref == null) {
                 // Not in our list, so check the context for changes ...
                 if (context != null) {
@@ -321,7 +406,7 @@ public class ImmutableChildReferences {
                         }
                     } else {
                         // It's in our list but there are no changes ...
-                        List<ChildReference> childrenWithSameName = this.childReferences.get(ref.getName());
+                        List<ChildReference> childrenWithSameName = childrenWithName(ref.getName());
                         assert childrenWithSameName != null;
                         assert childrenWithSameName.size() != 0;
                         // Consume the child references until we find the reference ...
@@ -342,27 +427,45 @@ public class ImmutableChildReferences {
 
         @Override
         public boolean hasChild( NodeKey key ) {
-            return childReferencesByKey.containsKey(key);
+            return childWithKey(key) != null;
         }
 
         @Override
         public Iterator<ChildReference> iterator( Name name ) {
-            return childReferences.get(name).iterator();
+            return childrenWithName(name).iterator();
         }
 
         @Override
         public Iterator<ChildReference> iterator() {
-            return childReferences.values().iterator();
+            return Collections.unmodifiableList(Arrays.asList(references)).iterator();
         }
 
         @Override
         public Iterator<NodeKey> getAllKeys() {
-            return childReferencesByKey.keySet().iterator();
+            return new Iterator<NodeKey>() {
+                private int position = 0;
+
+                @Override
+                public boolean hasNext() {
+                    return position < references.length;
+                }
+
+                @Override
+                public NodeKey next() {
+                    if (position >= references.length) throw new NoSuchElementException();
+                    return references[position++].getKey();
+                }
+
+                @Override
+                public void remove() {
+                    throw new UnsupportedOperationException();
+                }
+            };
         }
 
         @Override
         public StringBuilder toString( StringBuilder sb ) {
-            Iterator<ChildReference> iter = childReferences.values().iterator();
+            Iterator<ChildReference> iter = iterator();
             if (iter.hasNext()) {
                 sb.append(iter.next());
                 while (iter.hasNext()) {
@@ -404,7 +507,7 @@ public class ImmutableChildReferences {
             int result = 0;
             Segment segment = this.firstSegment;
             while (segment != null) {
-                result += segment.getReferences().getChildCount(name);
+                result += segment.getReferences(cache).getChildCount(name);
                 segment = segment.next(cache);
             }
             return result;
@@ -417,7 +520,7 @@ public class ImmutableChildReferences {
             ChildReference result = null;
             Segment segment = this.firstSegment;
             while (segment != null) {
-                result = segment.getReferences().getChild(name, snsIndex, context);
+                result = segment.getReferences(cache).getChild(name, snsIndex, context);
                 if (result != null) {
                     return result;
                 }
@@ -430,7 +533,7 @@ public class ImmutableChildReferences {
         public boolean hasChild( NodeKey key ) {
             Segment segment = this.firstSegment;
             while (segment != null) {
-                if (segment.getReferences().hasChild(key)) {
+                if (segment.getReferences(cache).hasChild(key)) {
                     return true;
                 }
                 segment = segment.next(cache);
@@ -449,7 +552,7 @@ public class ImmutableChildReferences {
             ChildReference result = null;
             Segment segment = this.firstSegment;
             while (segment != null) {
-                result = segment.getReferences().getChild(key, context);
+                result = segment.getReferences(cache).getChild(key, context);
                 if (result != null) {
                     return result;
                 }
@@ -463,7 +566,7 @@ public class ImmutableChildReferences {
             final Segment firstSegment = this.firstSegment;
             return new Iterator<ChildReference>() {
                 private Segment segment = firstSegment;
-                private Iterator<ChildReference> iter = segment != null ? segment.getReferences().iterator(name) : ImmutableChildReferences.EMPTY_ITERATOR;
+                private Iterator<ChildReference> iter = segment != null ? segment.getReferences(cache).iterator(name) : ImmutableChildReferences.EMPTY_ITERATOR;
                 private ChildReference next;
 
                 @Override
@@ -476,7 +579,7 @@ public class ImmutableChildReferences {
                         while (segment != null) {
                             segment = segment.next(cache);
                             if (segment != null) {
-                                iter = segment.getReferences().iterator(name);
+                                iter = segment.getReferences(cache).iterator(name);
                                 if (iter.hasNext()) {
                                     next = iter.next();
                                     return true;
@@ -514,7 +617,7 @@ public class ImmutableChildReferences {
             final Segment firstSegment = this.firstSegment;
             return new Iterator<ChildReference>() {
                 private Segment segment = firstSegment;
-                private Iterator<ChildReference> iter = segment != null ? segment.getReferences().iterator() : ImmutableChildReferences.EMPTY_ITERATOR;
+                private Iterator<ChildReference> iter = segment != null ? segment.getReferences(cache).iterator() : ImmutableChildReferences.EMPTY_ITERATOR;
                 private ChildReference next;
 
                 @Override
@@ -527,7 +630,7 @@ public class ImmutableChildReferences {
                         while (segment != null) {
                             segment = segment.next(cache);
                             if (segment != null) {
-                                iter = segment.getReferences().iterator();
+                                iter = segment.getReferences(cache).iterator();
                                 if (iter.hasNext()) {
                                     next = iter.next();
                                     return true;
@@ -565,7 +668,7 @@ public class ImmutableChildReferences {
             final Segment firstSegment = this.firstSegment;
             return new Iterator<NodeKey>() {
                 private Segment segment = firstSegment;
-                private Iterator<NodeKey> iter = segment != null ? segment.keys() : ImmutableChildReferences.EMPTY_KEY_ITERATOR;
+                private Iterator<NodeKey> iter = segment != null ? segment.keys(cache) : ImmutableChildReferences.EMPTY_KEY_ITERATOR;
                 private NodeKey next;
 
                 @Override
@@ -574,7 +677,7 @@ public class ImmutableChildReferences {
                         while (segment != null) {
                             segment = segment.next(cache);
                             if (segment != null) {
-                                iter = segment.keys();
+                                iter = segment.keys(cache);
                                 if (iter.hasNext()) {
                                     next = iter.next();
                                     return true;
@@ -700,38 +803,69 @@ public class ImmutableChildReferences {
         }
     }
 
+    /**
+     * A segment of a {@link Segmented segmented} list of child references. The references of the first segment are held by the
+     * parent's document and are always kept, but those of the other segments are read from their child block only when needed
+     * and are only softly held, so that the references of very large nodes can be reclaimed (and later read again) when memory is
+     * needed.
+     */
     protected static class Segment {
 
-        private final ChildReferences references;
+        private final String blockKey;
+        private final ChildReferences firstReferences;
+        private SoftReference<ChildReferences> blockReferences;
         private final String nextKey;
         private Segment next;
 
         protected Segment( ChildReferences references,
                            String nextKey ) {
+            this.blockKey = null;
+            this.firstReferences = references;
             this.nextKey = nextKey;
-            this.references = references;
         }
 
-        public ChildReferences getReferences() {
-            return this.references;
+        protected Segment( String blockKey,
+                           ChildReferences references,
+                           String nextKey ) {
+            this.blockKey = blockKey;
+            this.firstReferences = null;
+            this.blockReferences = new SoftReference<ChildReferences>(references);
+            this.nextKey = nextKey;
+        }
+
+        public ChildReferences getReferences( WorkspaceCache cache ) {
+            if (blockKey == null) return firstReferences;
+            ChildReferences references = blockReferences.get();
+            if (references == null) {
+                // The references were reclaimed, so read them again ...
+                references = cache.translator().getChildReferencesFromBlock(blockFor(cache, blockKey));
+                blockReferences = new SoftReference<ChildReferences>(references);
+            }
+            return references;
         }
 
         public Segment next( WorkspaceCache cache ) {
             if (next == null && nextKey != null) {
-                Document blockDoc = cache.blockFor(nextKey);
-                if (blockDoc == null) {
-                    throw new DocumentNotFoundException(nextKey);
-                }
+                Document blockDoc = blockFor(cache, nextKey);
                 // we only need the direct children of the block to avoid nesting
                 ChildReferences refs = cache.translator().getChildReferencesFromBlock(blockDoc);
                 ChildReferencesInfo nextNextKey = cache.translator().getChildReferencesInfo(blockDoc);
-                next = new Segment(refs, nextNextKey != null ? nextNextKey.nextKey : null);
+                next = new Segment(nextKey, refs, nextNextKey != null ? nextNextKey.nextKey : null);
             }
             return next;
         }
 
-        public Iterator<NodeKey> keys() {
-            return references.getAllKeys();
+        private static Document blockFor( WorkspaceCache cache,
+                                          String key ) {
+            Document blockDoc = cache.blockFor(key);
+            if (blockDoc == null) {
+                throw new DocumentNotFoundException(key);
+            }
+            return blockDoc;
+        }
+
+        public Iterator<NodeKey> keys( WorkspaceCache cache ) {
+            return getReferences(cache).getAllKeys();
         }
 
         @Override
@@ -740,6 +874,11 @@ public class ImmutableChildReferences {
         }
 
         public StringBuilder toString( StringBuilder sb ) {
+            ChildReferences references = blockKey == null ? firstReferences : blockReferences.get();
+            if (references == null) {
+                // don't read the block again just to print it ...
+                return sb.append("<segment=").append(blockKey).append('>');
+            }
             Iterator<ChildReference> iter = references.iterator();
             if (iter.hasNext()) {
                 sb.append(iter.next());
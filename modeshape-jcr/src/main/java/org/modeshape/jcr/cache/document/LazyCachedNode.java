@@ -255,10 +255,20 @@ public class LazyCachedNode implements CachedNode, Serializable {
     @Override
     public Path getPath( NodeCache cache ) {
         WorkspaceCache wsCache = workspaceCache(cache);
+        // The paths of external nodes can change without any events, so only the paths of internal nodes are cached ...
+        WorkspacePathCache pathCache = key.getSourceKey().equals(wsCache.sourceKey()) ? wsCache.pathCache() : null;
+        long epoch = 0L;
+        if (pathCache != null) {
+            Path path = pathCache.get(key);
+            if (path != null) return path;
+            epoch = pathCache.currentEpoch();
+        }
         CachedNode parent = parent(wsCache);
         if (parent != null) {
             Path parentPath = parent.getPath(wsCache);
-            return wsCache.pathFactory().create(parentPath, getSegment(wsCache));
+            Path path = wsCache.pathFactory().create(parentPath, getSegment(wsCache));
+            if (pathCache != null) pathCache.put(key, path, epoch);
+            return path;
         }
         // check that the node hasn't been removed in the meantime
         if (wsCache.getNode(key) == null) {
@@ -26,8 +26,11 @@ package org.modeshape.jcr.cache.document;
 
 import java.io.Serializable;
 import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.Map;
 import java.util.Set;
 import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
 import javax.transaction.HeuristicMixedException;
 import javax.transaction.HeuristicRollbackException;
 import javax.transaction.NotSupportedException;
@@ -36,6 +39,7 @@ import javax.transaction.SystemException;
 import javax.transaction.TransactionManager;
 import javax.transaction.xa.XAResource;
 import org.infinispan.Cache;
+import org.infinispan.configuration.cache.Configuration;
 import org.infinispan.distexec.DistributedCallable;
 import org.infinispan.schematic.SchematicDb;
 import org.infinispan.schematic.SchematicEntry;
@@ -45,6 +49,7 @@ import org.modeshape.common.SystemFailureException;
 import org.modeshape.jcr.InfinispanUtil;
 import org.modeshape.jcr.InfinispanUtil.Combiner;
 import org.modeshape.jcr.InfinispanUtil.Location;
+import org.modeshape.jcr.cache.DocumentStoreException;
 import org.modeshape.jcr.value.Name;
 import org.modeshape.jcr.value.binary.ExternalBinaryValue;
 
@@ -78,6 +83,56 @@ public class LocalDocumentStore implements DocumentStore {
         return database.get(key);
     }
 
+    @Override
+    public Map<String, SchematicEntry> load( Collection<String> keys ) {
+        Map<String, SchematicEntry> entries = new LinkedHashMap<String, SchematicEntry>();
+        if (keys.size() > 1 && readsMayBlock() && !isTransactionActive()) {
+            // Issue all of the reads before waiting for any of them, so that the remote calls or cache store reads overlap.
+            // Asynchronous reads are not bound to the caller's transaction, which is why they're not used within one ...
+            Map<String, Future<SchematicEntry>> futures = new LinkedHashMap<String, Future<SchematicEntry>>();
+            for (String key : keys) {
+                futures.put(key, database.getAsync(key));
+            }
+            for (Map.Entry<String, Future<SchematicEntry>> future : futures.entrySet()) {
+                String key = future.getKey();
+                try {
+                    SchematicEntry entry = future.getValue().get();
+                    if (entry != null) entries.put(key, entry);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    throw new DocumentStoreException(key, e);
+                } catch (ExecutionException e) {
+                    throw new DocumentStoreException(key, e.getCause());
+                }
+            }
+            return entries;
+        }
+        for (String key : keys) {
+            SchematicEntry entry = database.get(key);
+            if (entry != null) entries.put(key, entry);
+        }
+        return entries;
+    }
+
+    /**
+     * Determine whether reading an entry that is not in memory may require a remote call or a read from a cache store.
+     *
+     * @return true if reads may block on I/O, or false if all entries are held in memory within this process
+     */
+    private boolean readsMayBlock() {
+        Configuration config = localCache().getCacheConfiguration();
+        return config.clustering().cacheMode().isClustered() || !config.loaders().cacheLoaders().isEmpty();
+    }
+
+    private boolean isTransactionActive() {
+        TransactionManager txnMgr = transactionManager();
+        try {
+            return txnMgr != null && txnMgr.getTransaction() != null;
+        } catch (SystemException err) {
+            throw new SystemFailureException(err);
+        }
+    }
+
     @Override
     public SchematicEntry storeDocument( String key,
                                          Document document ) {
@@ -246,6 +301,66 @@ public class LocalDocumentStore implements DocumentStore {
         return InfinispanUtil.execute(database.getCache(), Location.LOCALLY, distOp, distOp);
     }
 
+    /**
+     * Perform the supplied operation on each of the existing documents with the supplied keys, in this process. Each document is
+     * operated upon within its own transaction, and keys for which there is no document are ignored. If a document cannot be
+     * locked in a timely fashion, it is skipped; if the operation fails on a document, the transaction is rolled back and the
+     * remaining documents are still processed.
+     *
+     * @param keys the keys of the documents; may not be null
+     * @param operation the operation to be performed
+     * @return the summary of the number of documents that were affected
+     */
+    public DocumentOperationResults performOnDocuments( Iterable<String> keys,
+                                                       DocumentOperation operation ) {
+        TransactionManager txnMgr = transactionManager();
+        operation.setEnvironment(localCache());
+        DocumentOperationResults results = new DocumentOperationResults();
+        for (String key : keys) {
+            try {
+                txnMgr.begin();
+            } catch (NotSupportedException err) {
+                // No nested transactions are supported ...
+                throw new SystemFailureException(err);
+            } catch (SystemException err) {
+                throw new SystemFailureException(err);
+            }
+            boolean committed = false;
+            try {
+                SchematicEntry entry = database.get(key);
+                if (entry == null) {
+                    // The document no longer exists, so there's nothing to do ...
+                    continue;
+                }
+                boolean modified = operation.execute(key, entry.editDocumentContent());
+                txnMgr.commit();
+                committed = true;
+                if (modified) {
+                    results.recordModified();
+                } else {
+                    results.recordUnmodified();
+                }
+            } catch (org.infinispan.util.concurrent.TimeoutException e) {
+                // Couldn't wait long enough for the lock, so skip this for now ...
+                results.recordSkipped();
+            } catch (Throwable t) {
+                // any other exception/error we should rollback and just continue (skipping this key for now) ...
+                results.recordFailure();
+            } finally {
+                if (!committed) rollback(txnMgr);
+            }
+        }
+        return results;
+    }
+
+    private static void rollback( TransactionManager txnMgr ) {
+        try {
+            if (txnMgr.getTransaction() != null) txnMgr.rollback();
+        } catch (SystemException err) {
+            throw new SystemFailureException(err);
+        }
+    }
+
     /**
      * An operation upon a persisted document.
      */
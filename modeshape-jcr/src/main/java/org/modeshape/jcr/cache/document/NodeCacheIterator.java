@@ -39,13 +39,17 @@ public final class NodeCacheIterator implements Iterator<NodeKey> {
 
     private final Queue<NodeKey> keys = new LinkedList<NodeKey>();
     private final NodeCache cache;
+    private final WorkspaceCache workspaceCache;
     private NodeKey nextNode;
+    private int loadedCount;
 
     public NodeCacheIterator( NodeCache cache,
                               NodeKey startingNode ) {
         CheckArg.isNotNull(cache, "cache");
         CheckArg.isNotNull(startingNode, "startingNode");
         this.cache = cache;
+        NodeCache unwrapped = cache.unwrap();
+        this.workspaceCache = unwrapped instanceof DocumentCache ? ((DocumentCache)unwrapped).workspaceCache() : null;
         this.keys.add(startingNode);
     }
 
@@ -74,6 +78,7 @@ public final class NodeCacheIterator implements Iterator<NodeKey> {
 
     protected void nextNode() {
         while (true) {
+            if (loadedCount <= 0 && workspaceCache != null) loadedCount = workspaceCache.preloadNodes(keys);
             // Pop the next key off the queue ...
             NodeKey nextKey = keys.poll();
             if (nextKey == null) {
@@ -81,6 +86,7 @@ public final class NodeCacheIterator implements Iterator<NodeKey> {
                 this.nextNode = null;
                 return;
             }
+            --loadedCount;
 
             // Find the next node ...
             CachedNode node = cache.getNode(nextKey);
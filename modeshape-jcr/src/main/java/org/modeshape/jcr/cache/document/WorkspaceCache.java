@@ -23,16 +23,27 @@
  */
 package org.modeshape.jcr.cache.document;
 
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
 import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.CountDownLatch;
 import java.util.concurrent.TimeUnit;
 import org.infinispan.api.BasicCache;
 import org.infinispan.schematic.SchematicDb;
 import org.infinispan.schematic.SchematicEntry;
 import org.infinispan.schematic.document.Document;
+import org.modeshape.common.annotation.ThreadSafe;
 import org.modeshape.common.logging.Logger;
+import org.modeshape.jcr.DurationRecorder;
 import org.modeshape.jcr.ExecutionContext;
 import org.modeshape.jcr.JcrI18n;
+import org.modeshape.jcr.api.monitor.DurationMetric;
 import org.modeshape.jcr.cache.CachedNode;
 import org.modeshape.jcr.cache.ChildReference;
 import org.modeshape.jcr.cache.NodeCache;
@@ -52,6 +63,12 @@ public class WorkspaceCache implements DocumentCache, ChangeSetListener {
 
     protected static final Logger LOGGER = Logger.getLogger(WorkspaceCache.class);
 
+    /**
+     * The number of nodes that components iterating over many nodes (such as all of the children of a node) should request at
+     * once via {@link #getNodes(Collection)}.
+     */
+    public static final int BULK_LOAD_SIZE = 100;
+
     private final DocumentTranslator translator;
     private final ExecutionContext context;
     private final DocumentStore documentStore;
@@ -65,6 +82,10 @@ public class WorkspaceCache implements DocumentCache, ChangeSetListener {
     private final PathFactory pathFactory;
     private final NameFactory nameFactory;
     private final ChangeSetListener changeSetListener;
+    private final DurationRecorder durationRecorder;
+    private final WorkspacePathCache pathCache;
+    private final ConcurrentMap<NodeKey, NodeLoad> loadsByKey = new ConcurrentHashMap<NodeKey, NodeLoad>();
+    private volatile ChildPrefetcher childPrefetcher;
     private volatile boolean closed = false;
 
     public WorkspaceCache( ExecutionContext context,
@@ -75,6 +96,20 @@ public class WorkspaceCache implements DocumentCache, ChangeSetListener {
                            NodeKey rootKey,
                            ConcurrentMap<NodeKey, CachedNode> cache,
                            ChangeSetListener changeSetListener ) {
+        this(context, repositoryKey, workspaceName, documentStore, translator, rootKey, cache, changeSetListener,
+             DurationRecorder.NO_OP);
+    }
+
+    public WorkspaceCache( ExecutionContext context,
+                           String repositoryKey,
+                           String workspaceName,
+                           DocumentStore documentStore,
+                           DocumentTranslator translator,
+                           NodeKey rootKey,
+                           ConcurrentMap<NodeKey, CachedNode> cache,
+                           ChangeSetListener changeSetListener,
+                           DurationRecorder durationRecorder ) {
+        assert durationRecorder != null;
         this.context = context;
         this.documentStore = documentStore;
         this.changeSetListener = changeSetListener;
@@ -88,6 +123,8 @@ public class WorkspaceCache implements DocumentCache, ChangeSetListener {
         this.pathFactory = context.getValueFactories().getPathFactory();
         this.nameFactory = context.getValueFactories().getNameFactory();
         this.nodesByKey = cache;
+        this.durationRecorder = durationRecorder;
+        this.pathCache = new WorkspacePathCache(WorkspacePathCache.DEFAULT_MAX_SIZE);
     }
 
     protected WorkspaceCache( WorkspaceCache original,
@@ -106,6 +143,9 @@ public class WorkspaceCache implements DocumentCache, ChangeSetListener {
         this.pathFactory = original.pathFactory;
         this.nameFactory = original.nameFactory;
         this.nodesByKey = cache;
+        this.durationRecorder = original.durationRecorder;
+        // Never share the paths, since this cache may see changes that are not visible to the original ...
+        this.pathCache = new WorkspacePathCache(original.pathCache.getMaxSize());
     }
 
     public void setMinimumStringLengthForBinaryStorage( long largeValueSize ) {
@@ -158,9 +198,49 @@ public class WorkspaceCache implements DocumentCache, ChangeSetListener {
         return documentStore;
     }
 
+    final WorkspacePathCache pathCache() {
+        return pathCache;
+    }
+
+    /**
+     * Set the maximum number of node paths that are cached for this workspace.
+     * 
+     * @param maxSize the maximum number of paths; must be positive
+     */
+    public void setPathCacheSize( int maxSize ) {
+        assert maxSize > 0;
+        this.pathCache.setMaxSize(maxSize);
+    }
+
+    /**
+     * Set the component that prefetches the children of nodes whose children are being loaded one at a time.
+     * 
+     * @param childPrefetcher the prefetcher, or null if children are not to be prefetched
+     */
+    public void setChildPrefetcher( ChildPrefetcher childPrefetcher ) {
+        this.childPrefetcher = childPrefetcher;
+    }
+
+    /**
+     * Get the component that prefetches the children of nodes whose children are being loaded one at a time.
+     * 
+     * @return the prefetcher, or null if children are not prefetched
+     */
+    public ChildPrefetcher childPrefetcher() {
+        return childPrefetcher;
+    }
+
+    final boolean isCached( NodeKey key ) {
+        return nodesByKey.containsKey(key);
+    }
+
     final Document documentFor( String key ) {
         // Look up the information in the database ...
-        SchematicEntry entry = documentStore.get(key);
+        return documentFrom(key, documentStore.get(key));
+    }
+
+    private Document documentFrom( String key,
+                                   SchematicEntry entry ) {
         if (entry == null) {
             // There is no such node ...
             return null;
@@ -206,33 +286,166 @@ public class WorkspaceCache implements DocumentCache, ChangeSetListener {
     public CachedNode getNode( NodeKey key ) {
         checkNotClosed();
         CachedNode node = nodesByKey.get(key);
-        if (node == null) {
-            // Load the node from the database ...
-            if (LOGGER.isTraceEnabled()) {
-                LOGGER.trace("Node '{0}' is not found in the '{1}' workspace cache; looking in store", key, workspaceName);
+        if (node != null) {
+            ChildPrefetcher prefetcher = childPrefetcher;
+            if (prefetcher != null) prefetcher.found(key);
+            return node;
+        }
+
+        // Make sure that only one thread loads the node, while any others wait for it ...
+        NodeLoad load = new NodeLoad();
+        NodeLoad existing = loadsByKey.putIfAbsent(key, load);
+        if (existing != null) {
+            if (existing.isLoadedBy(Thread.currentThread())) {
+                // This thread is already loading this node further up the stack, so don't wait on ourselves ...
+                return loadNode(key);
             }
-            Document doc = documentFor(key);
-            if (doc != null) {
-                if (LOGGER.isTraceEnabled()) {
-                    LOGGER.trace("Materialized document '{0}' in '{1}' workspace from store: {2}", key, workspaceName, doc);
+            return existing.await() ? existing.node() : loadNode(key);
+        }
+        try {
+            // Another thread may have finished loading the node just before we registered our load ...
+            node = nodesByKey.get(key);
+            if (node == null) node = loadNode(key);
+            load.loaded(node);
+            return node;
+        } finally {
+            loadsByKey.remove(key, load);
+            load.finish();
+        }
+    }
+
+    /**
+     * Load into this cache, with a single bulk read, the nodes for up to the first {@link #BULK_LOAD_SIZE} of the supplied keys.
+     * This is meant for components that process a queue of keys one at a time: they call this method with the queue, and then
+     * process the returned number of keys from the front of the queue before calling it again.
+     * 
+     * @param keys the keys, such as a queue of keys that are to be processed; may not be null
+     * @return the number of keys (from the start of the supplied keys) whose nodes were loaded
+     */
+    public int preloadNodes( Collection<NodeKey> keys ) {
+        List<NodeKey> batch = new ArrayList<NodeKey>(Math.min(keys.size(), BULK_LOAD_SIZE));
+        for (NodeKey key : keys) {
+            batch.add(key);
+            if (batch.size() == BULK_LOAD_SIZE) break;
+        }
+        // A single node is loaded as well by itself when it is needed ...
+        if (batch.size() > 1) getNodes(batch);
+        return batch.size();
+    }
+
+    /**
+     * Get the nodes with the supplied keys. Any nodes that are not already in this cache are read from the document store with a
+     * single bulk request rather than one request per node, so this method should be preferred over calling
+     * {@link #getNode(NodeKey)} for each key whenever several nodes (such as the children of a node) are needed.
+     * 
+     * @param keys the keys of the nodes; may not be null
+     * @return the nodes keyed by their key, in the iteration order of the supplied keys; never null but without entries for keys
+     *         that have no node
+     */
+    public Map<NodeKey, CachedNode> getNodes( Collection<NodeKey> keys ) {
+        checkNotClosed();
+        Map<NodeKey, CachedNode> found = new HashMap<NodeKey, CachedNode>();
+        Map<NodeKey, NodeLoad> ownLoads = new LinkedHashMap<NodeKey, NodeLoad>();
+        Map<NodeKey, NodeLoad> otherLoads = null;
+        List<NodeKey> keysToLoad = new ArrayList<NodeKey>();
+        Thread thread = Thread.currentThread();
+        try {
+            for (NodeKey key : keys) {
+                if (found.containsKey(key) || ownLoads.containsKey(key)) continue;
+                CachedNode node = nodesByKey.get(key);
+                if (node != null) {
+                    found.put(key, node);
+                    continue;
                 }
-                // Create a new node and put into this cache ...
-                CachedNode newNode = new LazyCachedNode(key, doc);
-                Integer cacheTtlSeconds = translator().getCacheTtlSeconds(doc);
-                if (nodesByKey instanceof BasicCache && cacheTtlSeconds != null) {
-                    node = ((BasicCache<NodeKey, CachedNode>)nodesByKey).putIfAbsent(key,
-                                                                                     newNode,
-                                                                                     cacheTtlSeconds.longValue(),
-                                                                                     TimeUnit.SECONDS);
+                NodeLoad load = new NodeLoad();
+                NodeLoad existing = loadsByKey.putIfAbsent(key, load);
+                if (existing == null) {
+                    ownLoads.put(key, load);
+                    keysToLoad.add(key);
+                } else if (existing.isLoadedBy(thread)) {
+                    keysToLoad.add(key);
                 } else {
-                    node = nodesByKey.putIfAbsent(key, newNode);
+                    if (otherLoads == null) otherLoads = new HashMap<NodeKey, NodeLoad>();
+                    otherLoads.put(key, existing);
                 }
-                if (node == null) node = newNode;
             }
+            if (!keysToLoad.isEmpty()) {
+                // Load all of the missing documents at once ...
+                List<String> documentKeys = new ArrayList<String>(keysToLoad.size());
+                for (NodeKey key : keysToLoad) {
+                    documentKeys.add(key.toString());
+                }
+                long start = System.nanoTime();
+                Map<String, SchematicEntry> entries = documentStore.load(documentKeys);
+                durationRecorder.recordDuration(DurationMetric.NODE_LOAD_TIME, System.nanoTime() - start, TimeUnit.NANOSECONDS);
+                for (int i = 0; i != keysToLoad.size(); ++i) {
+                    String documentKey = documentKeys.get(i);
+                    Document doc = documentFrom(documentKey, entries.get(documentKey));
+                    NodeKey key = keysToLoad.get(i);
+                    CachedNode node = doc != null ? cacheNode(key, doc) : null;
+                    if (node != null) found.put(key, node);
+                    NodeLoad load = ownLoads.get(key);
+                    if (load != null) load.loaded(node);
+                }
+            }
+        } finally {
+            for (Map.Entry<NodeKey, NodeLoad> entry : ownLoads.entrySet()) {
+                loadsByKey.remove(entry.getKey(), entry.getValue());
+                entry.getValue().finish();
+            }
+        }
+        if (otherLoads != null) {
+            // Wait for the nodes being loaded by other threads ...
+            for (Map.Entry<NodeKey, NodeLoad> entry : otherLoads.entrySet()) {
+                NodeLoad load = entry.getValue();
+                CachedNode node = load.await() ? load.node() : getNode(entry.getKey());
+                if (node != null) found.put(entry.getKey(), node);
+            }
+        }
+        // Return the nodes in the same order as the keys ...
+        Map<NodeKey, CachedNode> nodes = new LinkedHashMap<NodeKey, CachedNode>();
+        for (NodeKey key : keys) {
+            CachedNode node = found.get(key);
+            if (node != null) nodes.put(key, node);
+        }
+        return nodes;
+    }
+
+    private CachedNode loadNode( NodeKey key ) {
+        // Load the node from the database ...
+        if (LOGGER.isTraceEnabled()) {
+            LOGGER.trace("Node '{0}' is not found in the '{1}' workspace cache; looking in store", key, workspaceName);
         }
+        long start = System.nanoTime();
+        Document doc = documentFor(key);
+        durationRecorder.recordDuration(DurationMetric.NODE_LOAD_TIME, System.nanoTime() - start, TimeUnit.NANOSECONDS);
+        if (doc == null) return null;
+        CachedNode node = cacheNode(key, doc);
+        ChildPrefetcher prefetcher = childPrefetcher;
+        if (prefetcher != null) prefetcher.loaded(key, translator.getParentKey(doc, workspaceKey, key.getWorkspaceKey()));
         return node;
     }
 
+    private CachedNode cacheNode( NodeKey key,
+                                  Document doc ) {
+        if (LOGGER.isTraceEnabled()) {
+            LOGGER.trace("Materialized document '{0}' in '{1}' workspace from store: {2}", key, workspaceName, doc);
+        }
+        // Create a new node and put into this cache ...
+        CachedNode newNode = new LazyCachedNode(key, doc);
+        Integer cacheTtlSeconds = translator().getCacheTtlSeconds(doc);
+        CachedNode node = null;
+        if (nodesByKey instanceof BasicCache && cacheTtlSeconds != null) {
+            node = ((BasicCache<NodeKey, CachedNode>)nodesByKey).putIfAbsent(key,
+                                                                             newNode,
+                                                                             cacheTtlSeconds.longValue(),
+                                                                             TimeUnit.SECONDS);
+        } else {
+            node = nodesByKey.putIfAbsent(key, newNode);
+        }
+        return node != null ? node : newNode;
+    }
+
     @Override
     public CachedNode getNode( ChildReference reference ) {
         checkNotClosed();
@@ -260,6 +473,7 @@ public class WorkspaceCache implements DocumentCache, ChangeSetListener {
     @Override
     public void clear() {
         nodesByKey.clear();
+        pathCache.clear();
     }
 
     @Override
@@ -275,7 +489,11 @@ public class WorkspaceCache implements DocumentCache, ChangeSetListener {
             for (NodeKey key : changes.changedNodes()) {
                 if (closed) break;
                 nodesByKey.remove(key);
+                // Later callers should not wait for a load that may have read the old document ...
+                loadsByKey.remove(key);
             }
+            // Then invalidate the affected paths, so that no paths are computed from the old nodes and then cached ...
+            pathCache.invalidate(changes);
         }
     }
 
@@ -297,7 +515,11 @@ public class WorkspaceCache implements DocumentCache, ChangeSetListener {
         for (NodeKey key : changes.changedNodes()) {
             if (closed) break;
             nodesByKey.remove(key);
+            // Later callers should not wait for a load that may have read the old document ...
+            loadsByKey.remove(key);
         }
+        // Then invalidate the affected paths, so that no paths are computed from the old nodes and then cached ...
+        pathCache.invalidate(changes);
 
         // Notify the listener ...
         if (changeSetListener != null) changeSetListener.notify(changes);
@@ -343,4 +565,54 @@ public class WorkspaceCache implements DocumentCache, ChangeSetListener {
     public String toString() {
         return workspaceName;
     }
+
+    /**
+     * A load of a single node from the document store that is in progress, and upon which other threads needing the same node
+     * can wait rather than loading and materializing the same document themselves.
+     */
+    @ThreadSafe
+    private static final class NodeLoad {
+        private final Thread loader = Thread.currentThread();
+        private final CountDownLatch latch = new CountDownLatch(1);
+        private volatile boolean loaded;
+        private volatile CachedNode node;
+
+        protected boolean isLoadedBy( Thread thread ) {
+            return loader == thread;
+        }
+
+        protected void loaded( CachedNode node ) {
+            this.node = node;
+            this.loaded = true;
+        }
+
+        protected void finish() {
+            latch.countDown();
+        }
+
+        /**
+         * Wait for the loading thread to finish.
+         * 
+         * @return true if the node was loaded, or false if the loading thread failed to load the node
+         */
+        protected boolean await() {
+            boolean interrupted = false;
+            try {
+                while (true) {
+                    try {
+                        latch.await();
+                        return loaded;
+                    } catch (InterruptedException e) {
+                        interrupted = true;
+                    }
+                }
+            } finally {
+                if (interrupted) Thread.currentThread().interrupt();
+            }
+        }
+
+        protected CachedNode node() {
+            return node;
+        }
+    }
 }
@@ -0,0 +1,361 @@
+/*
+ * ModeShape (http://www.modeshape.org)
+ * See the COPYRIGHT.txt file distributed with this work for information
+ * regarding copyright ownership.  Some portions may be licensed
+ * to Red Hat, Inc. under one or more contributor license agreements.
+ * See the AUTHORS.txt file in the distribution for a full listing of 
+ * individual contributors.
+ *
+ * ModeShape is free software. Unless otherwise indicated, all code in ModeShape
+ * is licensed to you under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ * 
+ * ModeShape is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+package org.modeshape.jcr.cache.document;
+
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+import org.modeshape.common.annotation.Immutable;
+import org.modeshape.common.annotation.ThreadSafe;
+import org.modeshape.jcr.cache.NodeKey;
+import org.modeshape.jcr.cache.change.Change;
+import org.modeshape.jcr.cache.change.ChangeSet;
+import org.modeshape.jcr.cache.change.NodeMoved;
+import org.modeshape.jcr.cache.change.NodeRemoved;
+import org.modeshape.jcr.cache.change.NodeRenamed;
+import org.modeshape.jcr.cache.change.NodeReordered;
+import org.modeshape.jcr.value.Name;
+import org.modeshape.jcr.value.Path;
+
+/**
+ * A bounded cache of the persisted paths of the nodes in a {@link WorkspaceCache workspace}, shared by all of the sessions using
+ * that workspace. Computing a node's path requires walking up to the root and finding at each level the parent's child reference
+ * to the node, so caching the paths makes repeated path lookups of deep nodes inexpensive.
+ * <p>
+ * A node's path changes only when the node or one of its ancestors is moved, renamed or reordered, or when a same-name sibling
+ * with a lower SNS index is removed. Rather than finding all of the cached descendants affected by such a change, each change set
+ * is recorded as an <i>invalidation</i> of the affected subtrees, stamped with a new epoch. Each cached path is stamped with the
+ * epoch that was current before the path was computed, and a cached path is used only if none of the newer invalidations cover
+ * it. Only a limited number of invalidations are retained; when there are too many, the cached paths are checked against the
+ * retained invalidations, those that are covered are discarded, and the remaining paths are restamped with the epoch of the newest
+ * retained invalidation so that the retained invalidations are no longer needed.
+ * </p>
+ * <p>
+ * The cache holds at most the {@link #setMaxSize(int) maximum number} of paths, discarding the least-recently used paths first.
+ * </p>
+ */
+@ThreadSafe
+final class WorkspacePathCache {
+
+    /**
+     * The default maximum number of paths that are cached.
+     */
+    static final int DEFAULT_MAX_SIZE = 10000;
+
+    private static final int MAX_INVALIDATIONS = 64;
+    private static final Invalidation[] NO_INVALIDATIONS = new Invalidation[0];
+
+    private final Paths paths;
+    private final AtomicLong epoch = new AtomicLong();
+    private volatile Invalidation[] invalidations = NO_INVALIDATIONS;
+    private volatile long oldestValidEpoch = 0L;
+
+    WorkspacePathCache( int maxSize ) {
+        assert maxSize > 0;
+        this.paths = new Paths(maxSize);
+    }
+
+    /**
+     * Set the maximum number of paths that are cached. If more paths are cached, the least-recently used are discarded.
+     * 
+     * @param maxSize the maximum number of paths; must be positive
+     */
+    void setMaxSize( int maxSize ) {
+        assert maxSize > 0;
+        synchronized (paths) {
+            paths.maxSize = maxSize;
+            Iterator<CachedPath> iter = paths.values().iterator();
+            for (int toRemove = paths.size() - maxSize; toRemove > 0; --toRemove) {
+                iter.next();
+                iter.remove();
+            }
+        }
+    }
+
+    /**
+     * Get the maximum number of paths that are cached.
+     * 
+     * @return the maximum number of paths
+     */
+    int getMaxSize() {
+        synchronized (paths) {
+            return paths.maxSize;
+        }
+    }
+
+    /**
+     * Get the current epoch, which must be obtained <i>before</i> the path of a node is computed and then {@link #put put} into
+     * this cache.
+     * 
+     * @return the current epoch
+     */
+    long currentEpoch() {
+        return epoch.get();
+    }
+
+    /**
+     * Get the cached path for the node with the supplied key.
+     * 
+     * @param key the node key; may not be null
+     * @return the path, or null if the path is not cached or is no longer valid
+     */
+    Path get( NodeKey key ) {
+        CachedPath cached = null;
+        synchronized (paths) {
+            cached = paths.get(key);
+        }
+        if (cached == null) return null;
+        // Read the invalidations before the oldest valid epoch, since 'invalidate' compacts them in the reverse order ...
+        Invalidation[] invalidations = this.invalidations;
+        if (cached.epoch < oldestValidEpoch) {
+            remove(key, cached);
+            return null;
+        }
+        if (isCovered(invalidations, cached)) {
+            remove(key, cached);
+            return null;
+        }
+        return cached.path;
+    }
+
+    private void remove( NodeKey key,
+                         CachedPath cached ) {
+        synchronized (paths) {
+            if (paths.get(key) == cached) paths.remove(key);
+        }
+    }
+
+    /**
+     * Cache the path for the node with the supplied key.
+     * 
+     * @param key the node key; may not be null
+     * @param path the path; may not be null
+     * @param epoch the {@link #currentEpoch() epoch} obtained before the path was computed
+     */
+    void put( NodeKey key,
+              Path path,
+              long epoch ) {
+        CachedPath cached = new CachedPath(path, epoch);
+        synchronized (paths) {
+            paths.put(key, cached);
+        }
+    }
+
+    /**
+     * Invalidate the cached paths of all nodes whose paths might have been changed by the supplied changes.
+     * 
+     * @param changes the changes; may not be null
+     */
+    void invalidate( ChangeSet changes ) {
+        List<Invalidation> newInvalidations = null;
+        boolean invalidateAll = false;
+        for (Change change : changes) {
+            Path path = null;
+            if (change instanceof NodeMoved) {
+                path = ((NodeMoved)change).getOldPath();
+            } else if (change instanceof NodeRenamed) {
+                NodeRenamed renamed = (NodeRenamed)change;
+                Path newPath = renamed.getPath();
+                if (newPath != null && !newPath.isRoot()) {
+                    // Only the name of the renamed node's segment matters ...
+                    newInvalidations = add(newInvalidations, newPath.getParent(), renamed.getOldSegment().getName());
+                    continue;
+                }
+            } else if (change instanceof NodeReordered) {
+                NodeReordered reordered = (NodeReordered)change;
+                path = reordered.getOldPath() != null ? reordered.getOldPath() : reordered.getPath();
+            } else if (change instanceof NodeRemoved) {
+                path = ((NodeRemoved)change).getPath();
+            } else {
+                continue;
+            }
+            if (path == null || path.isRoot()) {
+                invalidateAll = true;
+                break;
+            }
+            // The paths of the same-name siblings (and their descendants) may also have changed ...
+            newInvalidations = add(newInvalidations, path.getParent(), path.getLastSegment().getName());
+        }
+        if (newInvalidations == null && !invalidateAll) return;
+        synchronized (this) {
+            long newEpoch = epoch.incrementAndGet();
+            Invalidation[] current = this.invalidations;
+            if (invalidateAll) {
+                // Discard all of the paths cached before this epoch ...
+                this.oldestValidEpoch = newEpoch;
+                this.invalidations = NO_INVALIDATIONS;
+                synchronized (paths) {
+                    paths.clear();
+                }
+                return;
+            }
+            if (current.length != 0 && current.length + newInvalidations.size() > MAX_INVALIDATIONS) {
+                // Apply the retained invalidations to the cached paths so that they no longer need to be retained ...
+                compact(current);
+                current = NO_INVALIDATIONS;
+            }
+            Invalidation[] updated = new Invalidation[current.length + newInvalidations.size()];
+            System.arraycopy(current, 0, updated, 0, current.length);
+            int i = current.length;
+            for (Invalidation invalidation : newInvalidations) {
+                updated[i++] = invalidation.withEpoch(newEpoch);
+            }
+            this.invalidations = updated;
+        }
+    }
+
+    /**
+     * Discard the cached paths that are covered by the supplied invalidations and restamp all other paths with the epoch of the
+     * newest invalidation, so that the invalidations can be discarded. This must be called while holding the lock on this object.
+     * 
+     * @param current the current invalidations; may not be empty
+     */
+    private void compact( Invalidation[] current ) {
+        long newestEpoch = current[current.length - 1].epoch;
+        synchronized (paths) {
+            Iterator<Map.Entry<NodeKey, CachedPath>> iter = paths.entrySet().iterator();
+            while (iter.hasNext()) {
+                Map.Entry<NodeKey, CachedPath> entry = iter.next();
+                CachedPath cached = entry.getValue();
+                if (cached.epoch >= newestEpoch) continue;
+                if (cached.epoch < oldestValidEpoch || isCovered(current, cached)) {
+                    iter.remove();
+                } else {
+                    entry.setValue(new CachedPath(cached.path, newestEpoch));
+                }
+            }
+        }
+        // Paths that are put with an older epoch may have been computed before one of the discarded invalidations ...
+        this.oldestValidEpoch = newestEpoch;
+    }
+
+    private static boolean isCovered( Invalidation[] invalidations,
+                                      CachedPath cached ) {
+        for (int i = invalidations.length - 1; i >= 0 && invalidations[i].epoch > cached.epoch; --i) {
+            if (invalidations[i].covers(cached.path)) return true;
+        }
+        return false;
+    }
+
+    private static List<Invalidation> add( List<Invalidation> invalidations,
+                                           Path parentPath,
+                                           Name childName ) {
+        if (invalidations == null) invalidations = new ArrayList<Invalidation>();
+        invalidations.add(new Invalidation(parentPath, childName, 0L));
+        return invalidations;
+    }
+
+    /**
+     * Remove all cached paths.
+     */
+    void clear() {
+        synchronized (this) {
+            this.oldestValidEpoch = epoch.incrementAndGet();
+            this.invalidations = NO_INVALIDATIONS;
+            synchronized (paths) {
+                paths.clear();
+            }
+        }
+    }
+
+    /**
+     * Get the number of cached paths.
+     * 
+     * @return the number of paths, some of which may no longer be valid
+     */
+    int size() {
+        synchronized (paths) {
+            return paths.size();
+        }
+    }
+
+    /**
+     * The cached paths, in order of access so that the least-recently used paths are discarded first. All access must be
+     * synchronized on this object, since even {@link #get(Object)} changes the order.
+     */
+    private static final class Paths extends LinkedHashMap<NodeKey, CachedPath> {
+        private static final long serialVersionUID = 1L;
+
+        protected int maxSize;
+
+        protected Paths( int maxSize ) {
+            super(16, 0.75f, true);
+            this.maxSize = maxSize;
+        }
+
+        @Override
+        protected boolean removeEldestEntry( Map.Entry<NodeKey, CachedPath> eldest ) {
+            return size() > maxSize;
+        }
+    }
+
+    @Immutable
+    private static final class CachedPath {
+        protected final Path path;
+        protected final long epoch;
+
+        protected CachedPath( Path path,
+                              long epoch ) {
+            this.path = path;
+            this.epoch = epoch;
+        }
+    }
+
+    /**
+     * An invalidation of the paths of all children of a parent that have a given name, and of all of their descendants.
+     */
+    @Immutable
+    private static final class Invalidation {
+        protected final Path parentPath;
+        protected final Name childName;
+        protected final long epoch;
+
+        protected Invalidation( Path parentPath,
+                                Name childName,
+                                long epoch ) {
+            this.parentPath = parentPath;
+            this.childName = childName;
+            this.epoch = epoch;
+        }
+
+        protected Invalidation withEpoch( long epoch ) {
+            return new Invalidation(parentPath, childName, epoch);
+        }
+
+        protected boolean covers( Path path ) {
+            int depth = parentPath.size();
+            if (path.size() <= depth) return false;
+            if (!path.getSegment(depth).getName().equals(childName)) return false;
+            return path.isDescendantOf(parentPath);
+        }
+
+        @Override
+        public String toString() {
+            return parentPath + "/" + childName + "[*] @" + epoch;
+        }
+    }
+}
@@ -26,6 +26,7 @@ package org.modeshape.jcr.federation;
 
 import java.util.ArrayList;
 import java.util.Collection;
+import java.util.Collections;
 import java.util.HashMap;
 import java.util.HashSet;
 import java.util.LinkedHashMap;
@@ -284,6 +285,24 @@ public class FederatedDocumentStore implements DocumentStore {
         return null;
     }
 
+    @Override
+    public Map<String, SchematicEntry> load( Collection<String> keys ) {
+        // Read all of the local documents at once, and then the external documents one at a time from their connectors ...
+        List<String> localKeys = new ArrayList<String>(keys.size());
+        for (String key : keys) {
+            if (isLocalSource(key)) localKeys.add(key);
+        }
+        Map<String, SchematicEntry> localEntries = Collections.emptyMap();
+        if (!localKeys.isEmpty()) localEntries = localStore().load(localKeys);
+        if (localKeys.size() == keys.size()) return localEntries;
+        Map<String, SchematicEntry> entries = new LinkedHashMap<String, SchematicEntry>();
+        for (String key : keys) {
+            SchematicEntry entry = isLocalSource(key) ? localEntries.get(key) : get(key);
+            if (entry != null) entries.put(key, entry);
+        }
+        return entries;
+    }
+
     private EditableDocument updateCachingTtl( Connector connector,
                                                EditableDocument editableDocument ) {
         DocumentReader reader = new FederatedDocumentReader(translator(), editableDocument);
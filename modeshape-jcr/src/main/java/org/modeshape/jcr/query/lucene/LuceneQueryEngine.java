@@ -28,6 +28,7 @@ import java.util.Collections;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.TimeUnit;
 import java.util.concurrent.locks.Lock;
 import java.util.concurrent.locks.ReentrantLock;
 import javax.jcr.RepositoryException;
@@ -41,7 +42,9 @@ import org.hibernate.search.SearchFactory;
 import org.hibernate.search.engine.spi.SearchFactoryImplementor;
 import org.hibernate.search.indexes.impl.IndexManagerHolder;
 import org.modeshape.common.logging.Logger;
+import org.modeshape.jcr.DurationRecorder;
 import org.modeshape.jcr.ExecutionContext;
+import org.modeshape.jcr.api.monitor.DurationMetric;
 import org.modeshape.jcr.api.query.QueryCancelledException;
 import org.modeshape.jcr.cache.NodeCache;
 import org.modeshape.jcr.cache.RepositoryCache;
@@ -52,6 +55,8 @@ import org.modeshape.jcr.query.QueryResults;
 import org.modeshape.jcr.query.QueryResults.Columns;
 import org.modeshape.jcr.query.lucene.basic.BasicLuceneSchema;
 import org.modeshape.jcr.query.lucene.basic.ExistsTupleCollector;
+import org.modeshape.jcr.query.lucene.basic.LimitTupleCollector;
+import org.modeshape.jcr.query.lucene.basic.TopKTupleCollector;
 import org.modeshape.jcr.query.model.Constraint;
 import org.modeshape.jcr.query.model.FullTextSearchScore;
 import org.modeshape.jcr.query.model.QueryCommand;
@@ -96,7 +101,18 @@ public class LuceneQueryEngine extends QueryEngine {
                               SearchFactoryImplementor searchFactory,
                               Version version,
                               boolean enableFullTextSearch ) {
-        super(planner, optimizer, new LuceneQueryProcessor(repositoryName, searchFactory));
+        this(context, repositoryName, planner, optimizer, searchFactory, version, enableFullTextSearch, DurationRecorder.NO_OP);
+    }
+
+    public LuceneQueryEngine( ExecutionContext context,
+                              String repositoryName,
+                              Planner planner,
+                              Optimizer optimizer,
+                              SearchFactoryImplementor searchFactory,
+                              Version version,
+                              boolean enableFullTextSearch,
+                              DurationRecorder durationRecorder ) {
+        super(planner, optimizer, new LuceneQueryProcessor(repositoryName, searchFactory, durationRecorder));
         this.repositoryContext = context;
         // this.repositoryName = repositoryName;
         this.schema = new BasicLuceneSchema(this.repositoryContext, searchFactory, version, enableFullTextSearch);
@@ -183,12 +199,21 @@ public class LuceneQueryEngine extends QueryEngine {
     protected static class LuceneQueryProcessor extends QueryProcessor<LuceneProcessingContext> {
         private final SearchFactory searchFactory;
         private final String repositoryName;
+        private final DurationRecorder durationRecorder;
         private LuceneSchema schema;
 
         protected LuceneQueryProcessor( String repositoryName,
                                         SearchFactory searchFactory ) {
+            this(repositoryName, searchFactory, DurationRecorder.NO_OP);
+        }
+
+        protected LuceneQueryProcessor( String repositoryName,
+                                        SearchFactory searchFactory,
+                                        DurationRecorder durationRecorder ) {
+            assert durationRecorder != null;
             this.searchFactory = searchFactory;
             this.repositoryName = repositoryName;
+            this.durationRecorder = durationRecorder;
         }
 
         protected void initialize( LuceneSchema schema ) {
@@ -221,7 +246,7 @@ public class LuceneQueryEngine extends QueryEngine {
                                                              Columns resultColumns,
                                                              LuceneProcessingContext processingContext ) {
             assert this.schema != null;
-            return new LuceneAccessQuery(schema, processingContext, context, resultColumns, accessNode);
+            return new LuceneAccessQuery(schema, processingContext, context, resultColumns, accessNode, durationRecorder);
         }
     }
 
@@ -232,15 +257,26 @@ public class LuceneQueryEngine extends QueryEngine {
     protected static class LuceneAccessQuery extends AbstractAccessComponent {
         private final LuceneProcessingContext processingContext;
         private final LuceneSchema schema;
+        private final DurationRecorder durationRecorder;
 
         public LuceneAccessQuery( LuceneSchema schema,
                                   LuceneProcessingContext processingContext,
                                   QueryContext context,
                                   Columns resultColumns,
                                   PlanNode accessNode ) {
+            this(schema, processingContext, context, resultColumns, accessNode, DurationRecorder.NO_OP);
+        }
+
+        public LuceneAccessQuery( LuceneSchema schema,
+                                  LuceneProcessingContext processingContext,
+                                  QueryContext context,
+                                  Columns resultColumns,
+                                  PlanNode accessNode,
+                                  DurationRecorder durationRecorder ) {
             super(context, resultColumns, accessNode);
             this.schema = schema;
             this.processingContext = processingContext;
+            this.durationRecorder = durationRecorder;
         }
 
         /**
@@ -315,6 +351,7 @@ public class LuceneQueryEngine extends QueryEngine {
                                      pushDownQuery);
                     }
                     TupleCollector collector = schema.createTupleCollector(queryContext, columns);
+                    long start = System.nanoTime();
                     if (getContext().getHints().isExistsQuery) {
                         // We only are looking for the existance of a tuple, so we want to stop as soon as we find one.
                         // So wrap the collector with an ExistsTupleCollector that will throw an exception as soon as one tuple
@@ -326,10 +363,30 @@ public class LuceneQueryEngine extends QueryEngine {
                             // This only happens when the query has a row limit of 1, and we've found a tuple.
                             // So we should eat this exception and just continue ...
                         }
+                    } else if (limit.hasRowLimited() && queries.getPostProcessingConstraints() == null && sortingComparator != null) {
+                        // All of the criteria were pushed down to Lucene, so every collected tuple will be in the results.
+                        // Therefore, we only need to keep the first tuples in the sort order that satisfy the limit ...
+                        int maxTuples = limit.getOffset() + limit.getRowLimit();
+                        if (maxTuples <= 0) maxTuples = Integer.MAX_VALUE; // overflow
+                        collector = new TopKTupleCollector(collector, maxTuples, sortingComparator);
+                        searcher.search(pushDownQuery, collector);
+                    } else if (limit.hasRowLimited() && queries.getPostProcessingConstraints() == null) {
+                        // All of the criteria were pushed down to Lucene, so every collected tuple will be in the results.
+                        // Therefore, we can stop as soon as we've found enough tuples to satisfy the limit ...
+                        int maxTuples = limit.getOffset() + limit.getRowLimit();
+                        if (maxTuples <= 0) maxTuples = Integer.MAX_VALUE; // overflow
+                        collector = new LimitTupleCollector(collector, maxTuples);
+                        try {
+                            searcher.search(pushDownQuery, collector);
+                        } catch (LimitTupleCollector.CompletedException e) {
+                            // We've found all the tuples we need, so we should eat this exception and just continue ...
+                        }
                     } else {
                         searcher.search(pushDownQuery, collector);
                     }
                     tuples = collector.getTuples();
+                    durationRecorder.recordDuration(DurationMetric.INDEX_SEARCH_TIME, System.nanoTime() - start,
+                                                    TimeUnit.NANOSECONDS);
                 } catch (QueryCancelledIOException e) {
                     assert queryContext.isCancelled();
                     return Collections.emptyList();
@@ -359,8 +416,12 @@ public class LuceneQueryEngine extends QueryEngine {
 
                 // Limit the tuples ...
                 if (!limit.isUnlimited()) {
+                    if (sortingComparator != null && tuples.size() > 1) {
+                        // The tuples must be sorted before they can be limited ...
+                        Collections.sort(tuples, sortingComparator);
+                    }
                     int firstIndex = limit.getOffset();
-                    int maxRows = Math.min(tuples.size(), limit.getRowLimit());
+                    int maxRows = (int)Math.min(tuples.size(), (long)firstIndex + limit.getRowLimit());
                     if (firstIndex > 0) {
                         // There is an offset and we're limiting the number of rows ...
                         if (firstIndex > tuples.size()) {
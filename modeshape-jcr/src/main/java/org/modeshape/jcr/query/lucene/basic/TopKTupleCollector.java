@@ -0,0 +1,154 @@
+/*
+ * ModeShape (http://www.modeshape.org)
+ * See the COPYRIGHT.txt file distributed with this work for information
+ * regarding copyright ownership.  Some portions may be licensed
+ * to Red Hat, Inc. under one or more contributor license agreements.
+ * See the AUTHORS.txt file in the distribution for a full listing of 
+ * individual contributors.
+ *
+ * ModeShape is free software. Unless otherwise indicated, all code in ModeShape
+ * is licensed to you under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ * 
+ * ModeShape is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+package org.modeshape.jcr.query.lucene.basic;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.PriorityQueue;
+import org.apache.lucene.index.IndexReader;
+import org.apache.lucene.search.Collector;
+import org.apache.lucene.search.Scorer;
+import org.modeshape.common.annotation.NotThreadSafe;
+import org.modeshape.jcr.query.lucene.LuceneQueryEngine.TupleCollector;
+
+/**
+ * A special TupleCollector implementation that keeps only the first <i>K</i> tuples (as defined by a sorting comparator) of all
+ * the tuples found by the wrapped collector. This is used for queries that have both an ORDER BY and a row limit, so that only
+ * the tuples that can appear in the results are held in memory (rather than all matching tuples), and so that the final sort
+ * only has to order <i>K</i> tuples.
+ * <p>
+ * Tuples that compare equally are kept in the order in which they were collected, so the results are exactly the same as those
+ * obtained by stably sorting all of the tuples and then taking the first <i>K</i>.
+ * </p>
+ */
+@NotThreadSafe
+public class TopKTupleCollector extends TupleCollector {
+
+    private final TupleCollector collector;
+    private final int maxTuples;
+    private final Comparator<Object[]> comparator;
+    private final PriorityQueue<Entry> topTuples;
+    private long counter = 0L;
+
+    /**
+     * Create a TopKTupleCollector wrapper over another {@link Collector}.
+     * 
+     * @param collector the wrapped {@link Collector}; the tuples it collects must be available via a mutable
+     *        {@link TupleCollector#getTuples()} list
+     * @param maxTuples the maximum number of tuples that should be kept; must be positive
+     * @param comparator the comparator that defines the order of the tuples; may not be null
+     */
+    public TopKTupleCollector( final TupleCollector collector,
+                               int maxTuples,
+                               final Comparator<Object[]> comparator ) {
+        assert collector != null;
+        assert maxTuples > 0;
+        assert comparator != null;
+        this.collector = collector;
+        this.maxTuples = maxTuples;
+        this.comparator = comparator;
+        // The head of the queue is the 'worst' tuple (the one that would be sorted last) ...
+        this.topTuples = new PriorityQueue<Entry>(Math.min(maxTuples, 1024) + 1, new Comparator<Entry>() {
+            @Override
+            public int compare( Entry entry1,
+                                Entry entry2 ) {
+                return 0 - entry1.compareTo(entry2, comparator);
+            }
+        });
+    }
+
+    @Override
+    public float doCollect( int doc ) throws IOException {
+        float score = this.collector.doCollect(doc);
+        List<Object[]> collected = this.collector.getTuples();
+        while (!collected.isEmpty()) {
+            // Move the collected tuple into the bounded queue ...
+            Object[] tuple = collected.remove(0);
+            Entry entry = new Entry(tuple, counter++);
+            if (topTuples.size() < maxTuples) {
+                topTuples.add(entry);
+            } else if (topTuples.peek().compareTo(entry, comparator) > 0) {
+                // The new tuple sorts before the 'worst' tuple we're keeping, so replace it ...
+                topTuples.poll();
+                topTuples.add(entry);
+            }
+        }
+        return score;
+    }
+
+    @Override
+    public List<Object[]> getTuples() {
+        List<Entry> entries = new ArrayList<Entry>(topTuples);
+        Collections.sort(entries, new Comparator<Entry>() {
+            @Override
+            public int compare( Entry entry1,
+                                Entry entry2 ) {
+                return entry1.compareTo(entry2, comparator);
+            }
+        });
+        List<Object[]> tuples = new LinkedList<Object[]>();
+        for (Entry entry : entries) {
+            tuples.add(entry.tuple);
+        }
+        return tuples;
+    }
+
+    @Override
+    public void setScorer( Scorer scorer ) throws IOException {
+        collector.setScorer(scorer);
+    }
+
+    @Override
+    public void setNextReader( IndexReader reader,
+                               int docBase ) throws IOException {
+        collector.setNextReader(reader, docBase);
+    }
+
+    @Override
+    public boolean acceptsDocsOutOfOrder() {
+        return collector.acceptsDocsOutOfOrder();
+    }
+
+    protected static final class Entry {
+        protected final Object[] tuple;
+        protected final long sequence;
+
+        protected Entry( Object[] tuple,
+                         long sequence ) {
+            this.tuple = tuple;
+            this.sequence = sequence;
+        }
+
+        protected int compareTo( Entry that,
+                                 Comparator<Object[]> comparator ) {
+            int result = comparator.compare(this.tuple, that.tuple);
+            if (result != 0) return result;
+            return this.sequence < that.sequence ? -1 : (this.sequence > that.sequence ? 1 : 0);
+        }
+    }
+}
@@ -0,0 +1,163 @@
+/*
+ * ModeShape (http://www.modeshape.org)
+ * See the COPYRIGHT.txt file distributed with this work for information
+ * regarding copyright ownership.  Some portions may be licensed
+ * to Red Hat, Inc. under one or more contributor license agreements.
+ * See the AUTHORS.txt file in the distribution for a full listing of
+ * individual contributors.
+ *
+ * ModeShape is free software. Unless otherwise indicated, all code in ModeShape
+ * is licensed to you under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * ModeShape is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+package org.modeshape.jcr.query.optimize;
+
+import java.util.ArrayList;
+import java.util.LinkedList;
+import java.util.List;
+import org.modeshape.common.annotation.Immutable;
+import org.modeshape.jcr.query.QueryContext;
+import org.modeshape.jcr.query.model.Ordering;
+import org.modeshape.jcr.query.plan.PlanNode;
+import org.modeshape.jcr.query.plan.PlanNode.Property;
+import org.modeshape.jcr.query.plan.PlanNode.Type;
+
+/**
+ * An {@link OptimizerRule optimizer rule} that copies a {@link Type#LIMIT LIMIT} node into the {@link Type#ACCESS ACCESS} node
+ * directly below it, so that the access query can stop collecting tuples as soon as it has found enough of them to satisfy the
+ * limit. For example, the following plan:
+ *
+ * <pre>
+ *          ...
+ *           |
+ *         LIMIT          offset=10, count=20
+ *           |
+ *        PROJECT
+ *           |
+ *         ACCESS
+ *           |
+ *        PROJECT
+ *           |
+ *         SOURCE
+ * </pre>
+ *
+ * will be changed to:
+ *
+ * <pre>
+ *          ...
+ *           |
+ *         LIMIT          offset=10, count=20
+ *           |
+ *        PROJECT
+ *           |
+ *         ACCESS
+ *           |
+ *         LIMIT          count=30
+ *           |
+ *        PROJECT
+ *           |
+ *         SOURCE
+ * </pre>
+ * <p>
+ * The original LIMIT node is left in place, since the pushed-down limit only bounds the number of tuples the access query
+ * produces (including those skipped by the offset). The limit is only pushed down when the only nodes between the LIMIT and the
+ * ACCESS node are {@link Type#PROJECT PROJECT} nodes or a single {@link Type#SORT SORT} node directly above the ACCESS node; any
+ * DUP_REMOVE, SELECT, JOIN or SET_OPERATION node in between requires all of the tuples to be available.
+ * </p>
+ * <p>
+ * When there is a SORT node, a copy of it is also placed below the pushed-down LIMIT node:
+ *
+ * <pre>
+ *         LIMIT          count=20
+ *           |
+ *          SORT          orderBy=...
+ *           |
+ *         ACCESS
+ *           |
+ *         LIMIT          count=20
+ *           |
+ *          SORT          orderBy=...
+ *           |
+ *        PROJECT
+ *           |
+ *         SOURCE
+ * </pre>
+ *
+ * so that the access query only needs to keep the first tuples in the sort order (a "top-K" collection) rather than all of the
+ * tuples. The original SORT node is left in place and will then only have to sort those few tuples.
+ * </p>
+ */
+@Immutable
+public class PushLimits implements OptimizerRule {
+
+    public static final PushLimits INSTANCE = new PushLimits();
+
+    @Override
+    public PlanNode execute( QueryContext context,
+                             PlanNode plan,
+                             LinkedList<OptimizerRule> ruleStack ) {
+        for (PlanNode limit : plan.findAllAtOrBelow(Type.LIMIT)) {
+            if (limit.getChildCount() != 1) continue;
+            Integer count = limit.getProperty(Property.LIMIT_COUNT, Integer.class);
+            if (count == null || count.intValue() == Integer.MAX_VALUE) continue;
+            Integer offset = limit.getProperty(Property.LIMIT_OFFSET, Integer.class);
+            long maxTuples = count.longValue() + (offset != null ? offset.longValue() : 0L);
+            if (maxTuples <= 0L || maxTuples >= Integer.MAX_VALUE) continue;
+
+            // Find the ACCESS node, passing only through PROJECT nodes or a SORT node directly above the ACCESS ...
+            PlanNode node = limit.getFirstChild();
+            while (node.getType() == Type.PROJECT && node.getChildCount() == 1) {
+                node = node.getFirstChild();
+            }
+            List<Ordering> orderings = null;
+            if (node.getType() == Type.SORT && node.getChildCount() == 1) {
+                orderings = orderingsFor(node);
+                if (orderings == null) continue; // not sorting by values
+                node = node.getFirstChild();
+            }
+            if (node.getType() != Type.ACCESS || node.getChildCount() != 1) continue;
+            PlanNode access = node;
+            if (access.findAtOrBelow(Type.LIMIT, Type.SORT) != null) continue; // already limited
+
+            // Insert the new LIMIT (and SORT) node immediately below the ACCESS node ...
+            PlanNode accessChild = access.getFirstChild();
+            if (orderings != null) {
+                PlanNode accessSort = new PlanNode(Type.SORT, access.getSelectors());
+                accessSort.setProperty(Property.SORT_ORDER_BY, orderings);
+                accessChild.insertAsParent(accessSort);
+                accessChild = accessSort;
+            }
+            PlanNode accessLimit = new PlanNode(Type.LIMIT, access.getSelectors());
+            accessLimit.setProperty(Property.LIMIT_COUNT, (int)maxTuples);
+            accessChild.insertAsParent(accessLimit);
+        }
+        return plan;
+    }
+
+    protected List<Ordering> orderingsFor( PlanNode sort ) {
+        List<Object> orderBys = sort.getPropertyAsList(Property.SORT_ORDER_BY, Object.class);
+        if (orderBys == null || orderBys.isEmpty()) return null;
+        List<Ordering> orderings = new ArrayList<Ordering>(orderBys.size());
+        for (Object orderBy : orderBys) {
+            if (!(orderBy instanceof Ordering)) return null;
+            orderings.add((Ordering)orderBy);
+        }
+        return orderings;
+    }
+
+    @Override
+    public String toString() {
+        return getClass().getSimpleName();
+    }
+}
@@ -65,6 +65,9 @@ public class RuleBasedOptimizer implements Optimizer {
      */
     protected void populateRuleStack( LinkedList<OptimizerRule> ruleStack,
                                       PlanHints hints ) {
+        if (hints.hasLimit) {
+            ruleStack.addFirst(PushLimits.INSTANCE);
+        }
         ruleStack.addFirst(RewritePathAndNameCriteria.INSTANCE);
         if (hints.hasSubqueries) {
             ruleStack.addFirst(RaiseVariableName.INSTANCE);
@@ -25,13 +25,17 @@ package org.modeshape.jcr.query.process;
 
 import java.util.ArrayList;
 import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
 import org.modeshape.jcr.query.QueryContext;
 import org.modeshape.jcr.query.QueryResults.Columns;
 import org.modeshape.jcr.query.QueryResults.Location;
 import org.modeshape.jcr.query.model.Column;
 import org.modeshape.jcr.query.model.Constraint;
 import org.modeshape.jcr.query.model.Limit;
+import org.modeshape.jcr.query.model.Ordering;
 import org.modeshape.jcr.query.model.SelectorName;
 import org.modeshape.jcr.query.plan.PlanNode;
 import org.modeshape.jcr.query.plan.PlanNode.Property;
@@ -49,6 +53,7 @@ public abstract class AbstractAccessComponent extends ProcessingComponent {
     protected final List<Column> projectedColumns;
     protected final List<Constraint> andedConstraints;
     protected final Limit limit;
+    protected final Comparator<Object[]> sortingComparator;
 
     protected AbstractAccessComponent( QueryContext context,
                                        Columns columns,
@@ -112,6 +117,20 @@ public abstract class AbstractAccessComponent extends ProcessingComponent {
         }
         this.limit = limit;
         assert this.limit != null;
+
+        // Find the orderings (if the sort was pushed down with the limit) ...
+        Comparator<Object[]> sortingComparator = null;
+        PlanNode sortNode = accessNode.findAtOrBelow(Type.SORT);
+        if (sortNode != null) {
+            List<Ordering> orderings = sortNode.getPropertyAsList(Property.SORT_ORDER_BY, Ordering.class);
+            if (orderings != null && !orderings.isEmpty()) {
+                Map<SelectorName, SelectorName> sourceNamesByAlias = new HashMap<SelectorName, SelectorName>();
+                SelectorName alias = source.getProperty(Property.SOURCE_ALIAS, SelectorName.class);
+                if (alias != null) sourceNamesByAlias.put(alias, this.sourceName);
+                sortingComparator = createSortComparator(context, columns, orderings, sourceNamesByAlias);
+            }
+        }
+        this.sortingComparator = sortingComparator;
     }
 
 }
@@ -30,6 +30,7 @@ import java.text.DecimalFormat;
 import javax.jcr.RepositoryException;
 import org.modeshape.common.SystemFailureException;
 import org.modeshape.common.annotation.Immutable;
+import org.modeshape.common.util.CheckArg;
 import org.modeshape.common.util.SecureHash;
 import org.modeshape.common.util.SecureHash.Algorithm;
 import org.modeshape.jcr.value.BinaryValue;
@@ -72,14 +73,8 @@ public abstract class AbstractBinary implements BinaryValue {
         InputStream stream = null;
         Exception error = null;
         try {
-            stream = getStream();
-            // Read/skip the next 'position' bytes ...
-            long skip = position;
-            while (skip > 0) {
-                long skipped = stream.skip(skip);
-                if (skipped <= 0) return -1;
-                skip -= skipped;
-            }
+            // Read only the requested range, which most stores can do without reading the preceding bytes ...
+            stream = getStream(position, b.length);
             return stream.read(b);
         } catch (RepositoryException e) {
             error = e;
@@ -102,6 +97,25 @@ public abstract class AbstractBinary implements BinaryValue {
         }
     }
 
+    @Override
+    public InputStream getStream( long offset,
+                                  long length ) throws RepositoryException {
+        CheckArg.isNonNegative(offset, "offset");
+        CheckArg.isNonNegative(length, "length");
+        if (offset >= getSize()) return BoundedInputStream.empty();
+        InputStream stream = getStream();
+        try {
+            return BoundedInputStream.skipTo(stream, offset, length);
+        } catch (IOException e) {
+            try {
+                stream.close();
+            } catch (IOException closeError) {
+                // ignore, since we're already failing ...
+            }
+            throw new RepositoryException(e);
+        }
+    }
+
     @Override
     public BinaryKey getKey() {
         return key;
@@ -23,8 +23,15 @@
  */
 package org.modeshape.jcr.value.binary;
 
+import java.io.BufferedOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.WritableByteChannel;
 import java.util.concurrent.CountDownLatch;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicLong;
@@ -32,13 +39,17 @@ import javax.jcr.RepositoryException;
 import org.modeshape.common.annotation.ThreadSafe;
 import org.modeshape.common.logging.Logger;
 import org.modeshape.common.util.CheckArg;
+import org.modeshape.common.util.IoUtil;
 import org.modeshape.common.util.StringUtil;
+import org.modeshape.jcr.DurationRecorder;
+import org.modeshape.jcr.ValueRecorder;
 import org.modeshape.jcr.TextExtractors;
 import org.modeshape.jcr.mimetype.MimeTypeDetector;
 import org.modeshape.jcr.mimetype.NullMimeTypeDetector;
 import org.modeshape.jcr.text.TextExtractorContext;
 import org.modeshape.jcr.value.BinaryKey;
 import org.modeshape.jcr.value.BinaryValue;
+import org.modeshape.jcr.value.binary.BinaryCompression.Codec;
 
 /**
  * An abstract class for a {@link BinaryStore}, with common functionality needed by implementation classes.
@@ -87,11 +98,65 @@ public abstract class AbstractBinaryStore implements BinaryStore {
         return LARGE_BUFFER_SIZE;
     }
 
+    /**
+     * Write all of the content of the supplied stream to the channel. Neither the stream nor the channel are closed.
+     * 
+     * @param stream the stream with the content; may not be null
+     * @param target the channel to which the content is to be written; may not be null
+     * @return the number of bytes written to the channel
+     * @throws IOException if there is a problem reading the content or writing to the channel
+     */
+    protected static long transfer( InputStream stream,
+                                 WritableByteChannel target ) throws IOException {
+        byte[] buffer = new byte[MEDIUM_BUFFER_SIZE];
+        ByteBuffer byteBuffer = ByteBuffer.wrap(buffer);
+        long count = 0L;
+        int read = 0;
+        while ((read = stream.read(buffer)) != -1) {
+            byteBuffer.clear();
+            byteBuffer.limit(read);
+            while (byteBuffer.hasRemaining()) {
+                target.write(byteBuffer);
+            }
+            count += read;
+        }
+        return count;
+    }
+
+    /**
+     * Write all of the content of the supplied file channel to the target channel, letting the operating system move the bytes
+     * directly where it can. {@link FileChannel#transferTo} may make no progress (e.g., when the file is shorter than expected or
+     * the platform cannot transfer to the target), in which case the rest of the content is copied through a buffer rather than
+     * retrying the transfer. Neither channel is closed.
+     * 
+     * @param source the channel of the file with the content; may not be null
+     * @param target the blocking channel to which the content is to be written; may not be null
+     * @return the number of bytes written to the channel
+     * @throws IOException if there is a problem reading the content or writing to the channel
+     */
+    protected static long transfer( FileChannel source,
+                                 WritableByteChannel target ) throws IOException {
+        long size = source.size();
+        long position = 0L;
+        while (position < size) {
+            long transferred = source.transferTo(position, size - position, target);
+            if (transferred <= 0L) {
+                source.position(position);
+                return position + transfer(Channels.newInputStream(source), target);
+            }
+            position += transferred;
+        }
+        return position;
+    }
+
     protected Logger logger = Logger.getLogger(getClass());
 
     private final AtomicLong minBinarySizeInBytes = new AtomicLong(DEFAULT_MINIMUM_BINARY_SIZE_IN_BYTES);
     private volatile TextExtractors extractors;
     private volatile MimeTypeDetector detector = NullMimeTypeDetector.INSTANCE;
+    private volatile DurationRecorder durationRecorder = DurationRecorder.NO_OP;
+    private volatile ValueRecorder valueRecorder = ValueRecorder.NO_OP;
+    private volatile BinaryCompression compression;
 
     @Override
     public long getMinimumBinarySizeInBytes() {
@@ -104,6 +169,25 @@ public abstract class AbstractBinaryStore implements BinaryStore {
         minBinarySizeInBytes.set(minSizeInBytes);
     }
 
+    /**
+     * Set how the content of the values stored from now on is to be compressed. Values that are already stored are not changed,
+     * and can always be read regardless of this setting. Stores that do not compress their content ignore this setting.
+     * 
+     * @param compression the compression settings, or null if the content is not to be compressed
+     */
+    public void setCompression( BinaryCompression compression ) {
+        this.compression = compression;
+    }
+
+    /**
+     * Get how the content of newly stored values is compressed.
+     * 
+     * @return the compression settings, or null if the content is not compressed
+     */
+    public BinaryCompression getCompression() {
+        return compression;
+    }
+
     @Override
     public void setTextExtractors( TextExtractors textExtractors ) {
         CheckArg.isNotNull(textExtractors, "textExtractors");
@@ -115,6 +199,26 @@ public abstract class AbstractBinaryStore implements BinaryStore {
         this.detector = mimeTypeDetector != null ? mimeTypeDetector : NullMimeTypeDetector.INSTANCE;
     }
 
+    @Override
+    public void setDurationRecorder( DurationRecorder durationRecorder ) {
+        this.durationRecorder = durationRecorder != null ? durationRecorder : DurationRecorder.NO_OP;
+    }
+
+    @Override
+    public DurationRecorder getDurationRecorder() {
+        return durationRecorder;
+    }
+
+    @Override
+    public void setValueRecorder( ValueRecorder valueRecorder ) {
+        this.valueRecorder = valueRecorder != null ? valueRecorder : ValueRecorder.NO_OP;
+    }
+
+    @Override
+    public ValueRecorder getValueRecorder() {
+        return valueRecorder;
+    }
+
     @Override
     public final String getText( BinaryValue binary ) throws BinaryStoreException {
         // try and locate an already extracted text from the store
@@ -176,6 +280,24 @@ public abstract class AbstractBinaryStore implements BinaryStore {
         return detectedMimeType;
     }
 
+    @Override
+    public InputStream getInputStream( BinaryKey key,
+                                       long offset,
+                                       long length ) throws BinaryStoreException {
+        // By default, skip over the content before the offset ...
+        InputStream stream = getInputStream(key);
+        try {
+            return BoundedInputStream.skipTo(stream, offset, length);
+        } catch (IOException e) {
+            try {
+                stream.close();
+            } catch (IOException closeError) {
+                // ignore, since we're already failing ...
+            }
+            throw new BinaryStoreException(e);
+        }
+    }
+
     @Override
     public boolean hasBinary( BinaryKey key ) {
         try {
@@ -250,6 +372,58 @@ public abstract class AbstractBinaryStore implements BinaryStore {
         return detector;
     }
 
+    /**
+     * Determine the codec with which the content of a value that is about to be stored is to be compressed, based upon the
+     * {@link #getCompression() compression settings} and the size and MIME type of the value.
+     * 
+     * @param value the value with the original content; may not be null
+     * @return the codec, or null if the content is to be stored as is
+     * @throws BinaryStoreException if there is a problem determining the MIME type of the content
+     */
+    protected final Codec codecFor( BinaryValue value ) throws BinaryStoreException {
+        BinaryCompression compression = this.compression;
+        if (compression == null || !compression.isLargeEnough(value.getSize())) return null;
+        if (!compression.getExcludedMimeTypes().isEmpty()) {
+            try {
+                if (compression.isExcluded(detector().mimeTypeOf(null, value))) return null;
+            } catch (RepositoryException e) {
+                throw new BinaryStoreException(e);
+            } catch (IOException e) {
+                throw new BinaryStoreException(e);
+            }
+        }
+        return compression.getCodec();
+    }
+
+    /**
+     * Compress the content of the supplied value into the supplied file, and determine whether the compressed content saves
+     * enough space to be stored instead of the original content. The file is deleted if it is not to be used.
+     * 
+     * @param value the value with the original content; may not be null
+     * @param codec the codec used to compress the content; may not be null
+     * @param file the file into which the compressed content is written; may not be null
+     * @return true if the compressed content in the file is to be stored, or false if the original content is to be stored
+     * @throws BinaryStoreException if there is a problem reading the content or writing the file
+     */
+    protected final boolean compress( BinaryValue value,
+                                      Codec codec,
+                                      File file ) throws BinaryStoreException {
+        boolean worthwhile = false;
+        try {
+            IoUtil.write(value.getStream(), codec.compress(new BufferedOutputStream(new FileOutputStream(file))),
+                         MEDIUM_BUFFER_SIZE);
+            BinaryCompression compression = this.compression;
+            worthwhile = compression == null || compression.isWorthwhile(value.getSize(), file.length());
+            return worthwhile;
+        } catch (RepositoryException e) {
+            throw new BinaryStoreException(e);
+        } catch (IOException e) {
+            throw new BinaryStoreException(e);
+        } finally {
+            if (!worthwhile) file.delete();
+        }
+    }
+
     @Override
     public BinaryValue storeValue( InputStream stream,
                                    String hint ) throws BinaryStoreException {
@@ -0,0 +1,363 @@
+/*
+ * ModeShape (http://www.modeshape.org)
+ * See the COPYRIGHT.txt file distributed with this work for information
+ * regarding copyright ownership.  Some portions may be licensed
+ * to Red Hat, Inc. under one or more contributor license agreements.
+ * See the AUTHORS.txt file in the distribution for a full listing of 
+ * individual contributors.
+ *
+ * ModeShape is free software. Unless otherwise indicated, all code in ModeShape
+ * is licensed to you under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ * 
+ * ModeShape is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+package org.modeshape.jcr.value.binary;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.PushbackInputStream;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import java.util.zip.DeflaterOutputStream;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+import java.util.zip.InflaterInputStream;
+import org.modeshape.common.annotation.Immutable;
+import org.modeshape.common.util.CheckArg;
+import org.modeshape.jcr.value.BinaryKey;
+
+/**
+ * The settings that determine whether and how a binary store compresses the content of binary values at rest. Compression is
+ * transparent to the users of the store: the {@link org.modeshape.jcr.value.BinaryKey key} of a value is always the SHA-1 hash of
+ * the original content, its {@link org.modeshape.jcr.value.BinaryValue#getSize() size} is always that of the original content,
+ * and its content is decompressed as it is read.
+ * <p>
+ * Small values and values whose MIME type shows they are already compressed (such as most image, audio and video formats) are
+ * not compressed, since doing so only costs time.
+ * </p>
+ * <p>
+ * Stores that can record the codec of each value with its content (such as in the name of a file or in a separate field) do so.
+ * Other stores precede the compressed content with a {@link #header(Codec, BinaryKey) header} that identifies the codec and
+ * contains the key of the value, so that content that was stored as is can never be mistaken for compressed content.
+ * </p>
+ */
+@Immutable
+public final class BinaryCompression {
+
+    /**
+     * The default minimum size of the values that are compressed, in bytes.
+     */
+    public static final long DEFAULT_MINIMUM_SIZE_IN_BYTES = 8 * 1024;
+
+    /**
+     * The MIME types of the values that are not compressed by default, since their content is already compressed. A trailing '*'
+     * matches any MIME type that starts with the preceding characters.
+     */
+    public static final List<String> DEFAULT_EXCLUDED_MIME_TYPES = Collections.unmodifiableList(Arrays.asList(
+        "image/*", "audio/*", "video/*", "application/zip", "application/gzip", "application/x-gzip", "application/x-bzip2",
+        "application/x-xz", "application/x-7z-compressed", "application/x-rar-compressed", "application/java-archive",
+        "application/vnd.openxmlformats-officedocument.*", "application/vnd.oasis.opendocument.*"));
+
+    /**
+     * The algorithms with which content can be compressed.
+     */
+    public static enum Codec {
+        DEFLATE(1, ".deflate") {
+            @Override
+            public OutputStream compress( OutputStream stream ) {
+                return new DeflaterOutputStream(stream);
+            }
+
+            @Override
+            public InputStream decompress( InputStream stream ) {
+                return new InflaterInputStream(stream);
+            }
+        },
+        GZIP(2, ".gz") {
+            @Override
+            public OutputStream compress( OutputStream stream ) throws IOException {
+                return new GZIPOutputStream(stream);
+            }
+
+            @Override
+            public InputStream decompress( InputStream stream ) throws IOException {
+                return new GZIPInputStream(stream);
+            }
+        };
+
+        private final byte id;
+        private final String extension;
+
+        private Codec( int id,
+                       String extension ) {
+            this.id = (byte)id;
+            this.extension = extension;
+        }
+
+        /**
+         * Get the extension that is appended to the names of the files holding content compressed with this codec.
+         * 
+         * @return the extension, including the leading '.'; never null
+         */
+        public String getExtension() {
+            return extension;
+        }
+
+        /**
+         * Wrap the supplied stream so that the content written to it is compressed. Closing the returned stream closes the
+         * supplied stream.
+         * 
+         * @param stream the stream to which the compressed content is written; may not be null
+         * @return the compressing stream; never null
+         * @throws IOException if there is a problem writing to the supplied stream
+         */
+        public abstract OutputStream compress( OutputStream stream ) throws IOException;
+
+        /**
+         * Wrap the supplied stream of compressed content so that the original content is read from it. Closing the returned
+         * stream closes the supplied stream.
+         * 
+         * @param stream the stream with the compressed content; may not be null
+         * @return the decompressing stream; never null
+         * @throws IOException if there is a problem reading from the supplied stream
+         */
+        public abstract InputStream decompress( InputStream stream ) throws IOException;
+
+        /**
+         * Find the codec with the supplied name, ignoring case.
+         * 
+         * @param name the name of the codec; may be null
+         * @return the codec, or null if there is no codec with that name
+         */
+        public static Codec forName( String name ) {
+            if (name == null) return null;
+            for (Codec codec : values()) {
+                if (codec.name().equalsIgnoreCase(name.trim())) return codec;
+            }
+            return null;
+        }
+
+        /**
+         * Find the codec with the supplied identifier, as written in a {@link BinaryCompression#header(Codec, BinaryKey) header}.
+         * 
+         * @param id the identifier of the codec
+         * @return the codec, or null if there is no codec with that identifier
+         */
+        static Codec forId( byte id ) {
+            for (Codec codec : values()) {
+                if (codec.id == id) return codec;
+            }
+            return null;
+        }
+
+        /**
+         * Find the codec whose {@link #getExtension() extension} ends the supplied file name.
+         * 
+         * @param fileName the name of the file; may not be null
+         * @return the codec, or null if the file name does not end with the extension of any codec
+         */
+        public static Codec forFileName( String fileName ) {
+            for (Codec codec : values()) {
+                if (fileName.endsWith(codec.extension)) return codec;
+            }
+            return null;
+        }
+    }
+
+    private static final byte[] HEADER_MAGIC = new byte[] {'M', 'S', 'B', 'C'};
+
+    /**
+     * The length of the {@link #header(Codec, BinaryKey) header} that precedes compressed content, in bytes.
+     */
+    public static final int HEADER_LENGTH = HEADER_MAGIC.length + 1 + BinaryKey.maxHexadecimalLength() / 2;
+
+    /**
+     * Create the header that precedes the compressed content of a value in stores that cannot otherwise record the codec. The
+     * header contains the key of the value, which is the SHA-1 hash of the original content, so no content that is stored as is
+     * can start with the header for its own key.
+     * 
+     * @param codec the codec with which the content is compressed; may not be null
+     * @param key the key of the value; may not be null
+     * @return the header, which is {@link #HEADER_LENGTH} bytes long; never null
+     */
+    public static byte[] header( Codec codec,
+                                 BinaryKey key ) {
+        byte[] header = new byte[HEADER_LENGTH];
+        System.arraycopy(HEADER_MAGIC, 0, header, 0, HEADER_MAGIC.length);
+        header[HEADER_MAGIC.length] = codec.id;
+        byte[] keyBytes = key.toBytes();
+        int keyLength = Math.min(keyBytes.length, HEADER_LENGTH - HEADER_MAGIC.length - 1);
+        System.arraycopy(keyBytes, 0, header, HEADER_MAGIC.length + 1, keyLength);
+        return header;
+    }
+
+    /**
+     * Determine the codec with which the content that starts with the supplied bytes was compressed.
+     * 
+     * @param start the first bytes of the stored content; may not be null
+     * @param length the number of bytes in <code>start</code> that were read
+     * @param key the key of the value; may not be null
+     * @return the codec, or null if the content starts with no {@link #header(Codec, BinaryKey) header} and was stored as is
+     */
+    public static Codec codecOf( byte[] start,
+                                 int length,
+                                 BinaryKey key ) {
+        if (length < HEADER_LENGTH) return null;
+        byte[] header = header(Codec.DEFLATE, key);
+        for (int i = 0; i != HEADER_LENGTH; ++i) {
+            if (i != HEADER_MAGIC.length && start[i] != header[i]) return null;
+        }
+        return Codec.forId(start[HEADER_MAGIC.length]);
+    }
+
+    /**
+     * Wrap the supplied stream of stored content so that the original content is read from it, whether it starts with a
+     * {@link #header(Codec, BinaryKey) header} and is compressed or was stored as is.
+     * 
+     * @param stream the stream with the stored content; may not be null
+     * @param key the key of the value; may not be null
+     * @return the stream with the original content; never null
+     * @throws IOException if there is a problem reading from the supplied stream
+     */
+    public static InputStream decompress( InputStream stream,
+                                          BinaryKey key ) throws IOException {
+        PushbackInputStream pushback = new PushbackInputStream(stream, HEADER_LENGTH);
+        byte[] start = new byte[HEADER_LENGTH];
+        int length = 0;
+        int read = 0;
+        while (length < HEADER_LENGTH && (read = pushback.read(start, length, HEADER_LENGTH - length)) != -1) {
+            length += read;
+        }
+        Codec codec = codecOf(start, length, key);
+        if (codec != null) return codec.decompress(pushback);
+        pushback.unread(start, 0, length);
+        return pushback;
+    }
+
+    private final Codec codec;
+    private final long minimumSizeInBytes;
+    private final List<String> excludedMimeTypes;
+
+    /**
+     * Create the compression settings with the {@link #DEFAULT_MINIMUM_SIZE_IN_BYTES default minimum size} and the
+     * {@link #DEFAULT_EXCLUDED_MIME_TYPES default excluded MIME types}.
+     * 
+     * @param codec the codec used to compress the content; may not be null
+     */
+    public BinaryCompression( Codec codec ) {
+        this(codec, DEFAULT_MINIMUM_SIZE_IN_BYTES, DEFAULT_EXCLUDED_MIME_TYPES);
+    }
+
+    /**
+     * Create the compression settings.
+     * 
+     * @param codec the codec used to compress the content; may not be null
+     * @param minimumSizeInBytes the size of the smallest values that are compressed; may not be negative
+     * @param excludedMimeTypes the MIME types of the values that are not compressed, where a trailing '*' matches any MIME type
+     *        that starts with the preceding characters; may be null if all values are to be compressed
+     */
+    public BinaryCompression( Codec codec,
+                              long minimumSizeInBytes,
+                              Collection<String> excludedMimeTypes ) {
+        CheckArg.isNotNull(codec, "codec");
+        CheckArg.isNonNegative(minimumSizeInBytes, "minimumSizeInBytes");
+        this.codec = codec;
+        this.minimumSizeInBytes = minimumSizeInBytes;
+        List<String> excluded = new ArrayList<String>();
+        if (excludedMimeTypes != null) {
+            for (String mimeType : excludedMimeTypes) {
+                if (mimeType != null && mimeType.trim().length() != 0) excluded.add(mimeType.trim().toLowerCase());
+            }
+        }
+        this.excludedMimeTypes = Collections.unmodifiableList(excluded);
+    }
+
+    /**
+     * Get the codec used to compress the content.
+     * 
+     * @return the codec; never null
+     */
+    public Codec getCodec() {
+        return codec;
+    }
+
+    /**
+     * Get the size of the smallest values that are compressed.
+     * 
+     * @return the minimum size in bytes; never negative
+     */
+    public long getMinimumSizeInBytes() {
+        return minimumSizeInBytes;
+    }
+
+    /**
+     * Get the MIME types of the values that are not compressed.
+     * 
+     * @return the immutable list of MIME types; never null
+     */
+    public List<String> getExcludedMimeTypes() {
+        return excludedMimeTypes;
+    }
+
+    /**
+     * Determine whether a value with the supplied size is large enough to be compressed.
+     * 
+     * @param sizeInBytes the size of the original content
+     * @return true if the value is a candidate for compression, or false if it should be stored as is
+     */
+    public boolean isLargeEnough( long sizeInBytes ) {
+        return sizeInBytes >= minimumSizeInBytes && sizeInBytes > 0L;
+    }
+
+    /**
+     * Determine whether values with the supplied MIME type are excluded from compression.
+     * 
+     * @param mimeType the MIME type, which may include parameters; may be null if the MIME type is not known
+     * @return true if the values should not be compressed, or false otherwise
+     */
+    public boolean isExcluded( String mimeType ) {
+        if (mimeType == null) return false;
+        int parameters = mimeType.indexOf(';');
+        String type = (parameters < 0 ? mimeType : mimeType.substring(0, parameters)).trim().toLowerCase();
+        for (String excluded : excludedMimeTypes) {
+            if (excluded.endsWith("*")) {
+                if (type.startsWith(excluded.substring(0, excluded.length() - 1))) return true;
+            } else if (type.equals(excluded)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Determine whether compressing the content saved enough space to be worth the cost of decompressing it on every read. The
+     * compressed content is kept only if it is at most 90% of the size of the original.
+     * 
+     * @param originalSizeInBytes the size of the original content
+     * @param compressedSizeInBytes the size of the compressed content
+     * @return true if the compressed content should be stored, or false if the original content should be stored
+     */
+    public boolean isWorthwhile( long originalSizeInBytes,
+                                 long compressedSizeInBytes ) {
+        return compressedSizeInBytes * 10L <= originalSizeInBytes * 9L;
+    }
+
+    @Override
+    public String toString() {
+        return codec + " compression of values of at least " + minimumSizeInBytes + " bytes, excluding " + excludedMimeTypes;
+    }
+}
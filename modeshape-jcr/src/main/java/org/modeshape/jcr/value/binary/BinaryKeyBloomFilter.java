@@ -0,0 +1,159 @@
+/*
+ * ModeShape (http://www.modeshape.org)
+ * See the COPYRIGHT.txt file distributed with this work for information
+ * regarding copyright ownership.  Some portions may be licensed
+ * to Red Hat, Inc. under one or more contributor license agreements.
+ * See the AUTHORS.txt file in the distribution for a full listing of 
+ * individual contributors.
+ *
+ * ModeShape is free software. Unless otherwise indicated, all code in ModeShape
+ * is licensed to you under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ * 
+ * ModeShape is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+package org.modeshape.jcr.value.binary;
+
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLongArray;
+import org.modeshape.common.annotation.ThreadSafe;
+import org.modeshape.jcr.value.BinaryKey;
+
+/**
+ * A Bloom filter of {@link BinaryKey}s, used to quickly determine that a binary store does <i>not</i> contain a binary value.
+ * The filter never returns false for a key that was {@link #add(BinaryKey) added}, but may return true for a key that was not
+ * added. This false positive rate is about 1% as long as no more keys than the {@link #getCapacity() capacity} are added.
+ * <p>
+ * Since the binary keys are already secure hashes of the content, the bits for a key are derived directly from the key's bytes
+ * rather than by hashing the key again.
+ * </p>
+ */
+@ThreadSafe
+final class BinaryKeyBloomFilter {
+
+    protected static final int MINIMUM_CAPACITY = 1 << 14;
+    private static final int BITS_PER_KEY = 10;
+    private static final int HASH_COUNT = 7;
+
+    private final AtomicLongArray words;
+    private final long bitCount;
+    private final int capacity;
+    private final AtomicInteger count = new AtomicInteger();
+
+    /**
+     * Create a new filter.
+     * 
+     * @param capacity the number of keys that can be added before the false positive rate starts to increase
+     */
+    BinaryKeyBloomFilter( int capacity ) {
+        this.capacity = Math.max(capacity, MINIMUM_CAPACITY);
+        int wordCount = (int)(((long)this.capacity * BITS_PER_KEY + 63L) / 64L);
+        this.words = new AtomicLongArray(wordCount);
+        this.bitCount = wordCount * 64L;
+    }
+
+    /**
+     * Add the supplied key to this filter.
+     * 
+     * @param key the key; may not be null
+     */
+    void add( BinaryKey key ) {
+        long[] hashes = hashes(key);
+        for (int i = 0; i != HASH_COUNT; ++i) {
+            long bit = bitIndex(hashes, i);
+            int index = (int)(bit >>> 6);
+            long mask = 1L << bit;
+            while (true) {
+                long word = words.get(index);
+                if ((word & mask) != 0L || words.compareAndSet(index, word, word | mask)) break;
+            }
+        }
+        count.incrementAndGet();
+    }
+
+    /**
+     * Determine whether the supplied key might have been added to this filter.
+     * 
+     * @param key the key; may not be null
+     * @return false if the key was definitely not added, or true if it may have been added
+     */
+    boolean mightContain( BinaryKey key ) {
+        long[] hashes = hashes(key);
+        for (int i = 0; i != HASH_COUNT; ++i) {
+            long bit = bitIndex(hashes, i);
+            if ((words.get((int)(bit >>> 6)) & (1L << bit)) == 0L) return false;
+        }
+        return true;
+    }
+
+    /**
+     * Get the number of keys that can be added before the false positive rate starts to increase.
+     * 
+     * @return the capacity
+     */
+    int getCapacity() {
+        return capacity;
+    }
+
+    /**
+     * Get the number of keys that were added.
+     * 
+     * @return the number of added keys
+     */
+    int getCount() {
+        return count.get();
+    }
+
+    /**
+     * Determine whether more keys than the capacity were added, so that this filter should be replaced by a larger one.
+     * 
+     * @return true if the filter is over capacity, or false otherwise
+     */
+    boolean isSaturated() {
+        return count.get() > capacity;
+    }
+
+    private long bitIndex( long[] hashes,
+                           int i ) {
+        long combined = hashes[0] + i * hashes[1];
+        return (combined & Long.MAX_VALUE) % bitCount;
+    }
+
+    private static long[] hashes( BinaryKey key ) {
+        String str = key.toString();
+        if (BinaryKey.isProperlyFormattedKey(str)) {
+            // The key is a secure hash, so use its first 128 bits ...
+            byte[] bytes = key.toBytes();
+            return new long[] {toLong(bytes, 0), toLong(bytes, 8) | 1L};
+        }
+        long hash = mix(str.hashCode());
+        return new long[] {hash, mix(hash) | 1L};
+    }
+
+    private static long toLong( byte[] bytes,
+                                int offset ) {
+        long result = 0L;
+        for (int i = offset; i != offset + 8; ++i) {
+            result = (result << 8) | (bytes[i] & 0xffL);
+        }
+        return result;
+    }
+
+    private static long mix( long value ) {
+        value ^= value >>> 33;
+        value *= 0xff51afd7ed558ccdL;
+        value ^= value >>> 33;
+        value *= 0xc4ceb9fe1a85ec53L;
+        value ^= value >>> 33;
+        return value;
+    }
+}
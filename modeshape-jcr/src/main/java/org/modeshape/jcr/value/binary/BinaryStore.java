@@ -28,6 +28,8 @@ import java.io.InputStream;
 import java.util.concurrent.TimeUnit;
 import javax.jcr.RepositoryException;
 import org.modeshape.common.annotation.ThreadSafe;
+import org.modeshape.jcr.DurationRecorder;
+import org.modeshape.jcr.ValueRecorder;
 import org.modeshape.jcr.TextExtractors;
 import org.modeshape.jcr.mimetype.MimeTypeDetector;
 import org.modeshape.jcr.value.BinaryKey;
@@ -78,6 +80,37 @@ public interface BinaryStore {
      */
     void setMimeTypeDetector( MimeTypeDetector mimeTypeDetector );
 
+    /**
+     * Set the recorder of the time required to {@link #storeValue(InputStream) store} binary values and to open the
+     * {@link BinaryValue#getStream() content} of stored binary values.
+     * 
+     * @param durationRecorder the recorder; may be null if the durations are not to be recorded
+     */
+    void setDurationRecorder( DurationRecorder durationRecorder );
+
+    /**
+     * Get the recorder of the time required to store binary values and to open the content of stored binary values.
+     * 
+     * @return the recorder; never null
+     */
+    DurationRecorder getDurationRecorder();
+
+    /**
+     * Set the recorder for the number of binary values removed and the number of bytes reclaimed by
+     * {@link #removeValuesUnusedLongerThan(long, TimeUnit) garbage collection}.
+     * 
+     * @param valueRecorder the recorder; may be null if the values are not to be recorded
+     */
+    void setValueRecorder( ValueRecorder valueRecorder );
+
+    /**
+     * Get the recorder for the number of binary values removed and the number of bytes reclaimed by
+     * {@link #removeValuesUnusedLongerThan(long, TimeUnit) garbage collection}.
+     * 
+     * @return the recorder; never null
+     */
+    ValueRecorder getValueRecorder();
+
     /**
      * Store the binary value and return the JCR representation. Note that if the binary content in the supplied stream is already
      * persisted in the store, the store may simply return the binary value referencing the existing content.
@@ -110,6 +143,22 @@ public interface BinaryStore {
      */
     InputStream getInputStream( BinaryKey key ) throws BinaryStoreException;
 
+    /**
+     * Get an {@link InputStream} to a range of the binary content with the supplied key. Stores should start reading the content
+     * at the given offset, rather than read and discard all of the content before it.
+     * 
+     * @param key the key to the binary content; never null
+     * @param offset the zero-based offset of the first byte that is to be read; never negative
+     * @param length the maximum number of bytes that are to be read; never negative
+     * @return the input stream through which at most {@code length} bytes of the content can be read, which is empty if the offset
+     *         is beyond the end of the content; never null
+     * @throws BinaryStoreException if there is a problem reading the content from the store or if a valid, non-null
+     *         {@link InputStream} cannot be returned for the given key.
+     */
+    InputStream getInputStream( BinaryKey key,
+                                long offset,
+                                long length ) throws BinaryStoreException;
+
     /**
      * Searches for a binary which has the given key in this store.
      *
@@ -31,10 +31,12 @@ import java.net.URI;
 import java.util.Calendar;
 import java.util.Date;
 import java.util.UUID;
+import java.util.concurrent.TimeUnit;
 import org.modeshape.common.annotation.Immutable;
 import org.modeshape.common.text.TextDecoder;
 import org.modeshape.common.util.CheckArg;
 import org.modeshape.jcr.GraphI18n;
+import org.modeshape.jcr.api.monitor.DurationMetric;
 import org.modeshape.jcr.api.value.DateTime;
 import org.modeshape.jcr.cache.NodeKey;
 import org.modeshape.jcr.value.BinaryFactory;
@@ -236,7 +238,11 @@ public class BinaryStoreValueFactory extends AbstractValueFactory<BinaryValue> i
         }
         try {
             // Store the value in the store ...
-            return store.storeValue(new ByteArrayInputStream(value));
+            long start = System.nanoTime();
+            BinaryValue result = store.storeValue(new ByteArrayInputStream(value));
+            store.getDurationRecorder().recordDuration(DurationMetric.BINARY_WRITE_TIME, System.nanoTime() - start,
+                                                       TimeUnit.NANOSECONDS);
+            return result;
         } catch (BinaryStoreException e) {
             throw new ValueFormatException(PropertyType.BINARY,
                                            GraphI18n.errorConvertingType.text(byte[].class.getSimpleName(),
@@ -250,7 +256,11 @@ public class BinaryStoreValueFactory extends AbstractValueFactory<BinaryValue> i
         if (stream == null) return null;
         try {
             // Store the value in the store ...
-            return store.storeValue(stream);
+            long start = System.nanoTime();
+            BinaryValue result = store.storeValue(stream);
+            store.getDurationRecorder().recordDuration(DurationMetric.BINARY_WRITE_TIME, System.nanoTime() - start,
+                                                       TimeUnit.NANOSECONDS);
+            return result;
         } catch (BinaryStoreException e) {
             throw new ValueFormatException(PropertyType.BINARY,
                                            GraphI18n.errorConvertingIo.text(InputStream.class.getSimpleName(),
@@ -263,7 +273,11 @@ public class BinaryStoreValueFactory extends AbstractValueFactory<BinaryValue> i
         if (stream == null) return null;
         try {
             // Store the value in the store ...
-            return store.storeValue(stream, hint);
+            long start = System.nanoTime();
+            BinaryValue result = store.storeValue(stream, hint);
+            store.getDurationRecorder().recordDuration(DurationMetric.BINARY_WRITE_TIME, System.nanoTime() - start,
+                                                       TimeUnit.NANOSECONDS);
+            return result;
         } catch (BinaryStoreException e) {
             throw new ValueFormatException(PropertyType.BINARY,
                     GraphI18n.errorConvertingIo.text(InputStream.class.getSimpleName(),
@@ -0,0 +1,116 @@
+/*
+ * ModeShape (http://www.modeshape.org)
+ * See the COPYRIGHT.txt file distributed with this work for information
+ * regarding copyright ownership.  Some portions may be licensed
+ * to Red Hat, Inc. under one or more contributor license agreements.
+ * See the AUTHORS.txt file in the distribution for a full listing of 
+ * individual contributors.
+ *
+ * ModeShape is free software. Unless otherwise indicated, all code in ModeShape
+ * is licensed to you under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ * 
+ * ModeShape is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+package org.modeshape.jcr.value.binary;
+
+import java.io.ByteArrayInputStream;
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import org.modeshape.common.util.IoUtil;
+
+/**
+ * An {@link InputStream} that reads no more than a given number of bytes from another stream, used to return a range of the
+ * content of a binary value. Closing this stream closes the underlying stream.
+ */
+public final class BoundedInputStream extends FilterInputStream {
+
+    private static final byte[] EMPTY_CONTENT = new byte[0];
+
+    /**
+     * Return a stream over a range of the content of the supplied stream, by skipping over (and discarding) all of the content
+     * before the offset. This is the fallback for stores that cannot start reading at an arbitrary offset.
+     * 
+     * @param stream the stream over the entire content; may not be null
+     * @param offset the offset of the first byte of the range; may not be negative
+     * @param length the maximum number of bytes in the range; may not be negative
+     * @return the stream over the range; never null
+     * @throws IOException if there is a problem skipping to the offset
+     */
+    public static InputStream skipTo( InputStream stream,
+                                      long offset,
+                                      long length ) throws IOException {
+        IoUtil.skip(stream, offset);
+        return new BoundedInputStream(stream, length);
+    }
+
+    /**
+     * Return an empty stream, used for ranges that start beyond the end of the content.
+     * 
+     * @return the empty stream; never null
+     */
+    public static InputStream empty() {
+        return new ByteArrayInputStream(EMPTY_CONTENT);
+    }
+
+    private long remaining;
+
+    /**
+     * Create a stream that reads at most the given number of bytes from the supplied stream.
+     * 
+     * @param stream the underlying stream; may not be null
+     * @param length the maximum number of bytes that are to be read; may not be negative
+     */
+    public BoundedInputStream( InputStream stream,
+                               long length ) {
+        super(stream);
+        assert length >= 0L;
+        this.remaining = length;
+    }
+
+    @Override
+    public int read() throws IOException {
+        if (remaining <= 0L) return -1;
+        int result = super.read();
+        if (result != -1) --remaining;
+        return result;
+    }
+
+    @Override
+    public int read( byte[] b,
+                     int off,
+                     int len ) throws IOException {
+        if (len == 0) return 0;
+        if (remaining <= 0L) return -1;
+        int result = super.read(b, off, (int)Math.min(len, remaining));
+        if (result > 0) remaining -= result;
+        return result;
+    }
+
+    @Override
+    public long skip( long n ) throws IOException {
+        long skipped = super.skip(Math.min(n, remaining));
+        if (skipped > 0L) remaining -= skipped;
+        return skipped;
+    }
+
+    @Override
+    public int available() throws IOException {
+        return (int)Math.min(super.available(), remaining);
+    }
+
+    @Override
+    public boolean markSupported() {
+        return false;
+    }
+}
@@ -0,0 +1,576 @@
+/*
+ * ModeShape (http://www.modeshape.org)
+ * See the COPYRIGHT.txt file distributed with this work for information
+ * regarding copyright ownership.  Some portions may be licensed
+ * to Red Hat, Inc. under one or more contributor license agreements.
+ * See the AUTHORS.txt file in the distribution for a full listing of 
+ * individual contributors.
+ *
+ * ModeShape is free software. Unless otherwise indicated, all code in ModeShape
+ * is licensed to you under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ * 
+ * ModeShape is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+package org.modeshape.jcr.value.binary;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileNotFoundException;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.SequenceInputStream;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import javax.jcr.RepositoryException;
+import org.modeshape.common.annotation.GuardedBy;
+import org.modeshape.common.annotation.ThreadSafe;
+import org.modeshape.common.logging.Logger;
+import org.modeshape.common.util.CheckArg;
+import org.modeshape.common.util.IoUtil;
+import org.modeshape.jcr.DurationRecorder;
+import org.modeshape.jcr.JcrI18n;
+import org.modeshape.jcr.TextExtractors;
+import org.modeshape.jcr.ValueRecorder;
+import org.modeshape.jcr.api.monitor.ValueMetric;
+import org.modeshape.jcr.mimetype.MimeTypeDetector;
+import org.modeshape.jcr.value.BinaryKey;
+import org.modeshape.jcr.value.BinaryValue;
+
+/**
+ * A {@link BinaryStore} that keeps copies of the most recently read binary values in a directory on the local file system, in
+ * front of another (usually remote) store such as a {@link DatabaseBinaryStore} or an Infinispan, MongoDB or Cassandra store.
+ * Since binary values are identified by the SHA-1 hash of their content and are never changed, the cached copies never have to be
+ * invalidated.
+ * <p>
+ * The total size of the cached files is bounded, and the least recently read values are evicted first. When several threads
+ * read the same value that is not yet cached, only one of them fetches the content from the other store while the others wait
+ * for the cached copy. Reads of a range of a value are only served from the cache when the whole value is already cached, and
+ * otherwise go to the other store without caching the value. Values larger than the cache are never cached, but each read
+ * still reads such a value from the other store only once. The number of reads served from the cache and from the other store
+ * are reported through the {@link ValueMetric#BINARY_CACHE_HIT_COUNT} and {@link ValueMetric#BINARY_CACHE_MISS_COUNT} metrics.
+ * </p>
+ * <p>
+ * All other operations, including storing values, are simply delegated to the other store.
+ * </p>
+ */
+@ThreadSafe
+public class CachingBinaryStore implements BinaryStore {
+
+    protected static final String STAGING_DIRECTORY_NAME = "staging";
+    private static final String STAGED_FILE_PREFIX = "ms-binary-cache";
+
+    protected final Logger logger = Logger.getLogger(getClass());
+
+    private final BinaryStore delegate;
+    private final File directory;
+    private final File staging;
+    private final long maximumSizeInBytes;
+    @GuardedBy( "cachedFiles" )
+    private final Map<BinaryKey, Long> cachedFiles = new LinkedHashMap<BinaryKey, Long>(16, 0.75f, true);
+    @GuardedBy( "cachedFiles" )
+    private long sizeInBytes = 0L;
+    private final ConcurrentMap<BinaryKey, FutureTask<File>> loading = new ConcurrentHashMap<BinaryKey, FutureTask<File>>();
+    private final AtomicLong hits = new AtomicLong();
+    private final AtomicLong misses = new AtomicLong();
+    private volatile ValueRecorder valueRecorder = ValueRecorder.NO_OP;
+
+    /**
+     * Create a store that caches the values read from the supplied store.
+     * 
+     * @param delegate the store that persists the binary values; may not be null
+     * @param directory the directory on the local file system in which the cached copies are kept; may not be null
+     * @param maximumSizeInBytes the maximum total size of the cached copies; must be positive
+     */
+    public CachingBinaryStore( BinaryStore delegate,
+                               File directory,
+                               long maximumSizeInBytes ) {
+        CheckArg.isNotNull(delegate, "delegate");
+        CheckArg.isNotNull(directory, "directory");
+        CheckArg.isPositive(maximumSizeInBytes, "maximumSizeInBytes");
+        this.delegate = delegate;
+        this.directory = directory;
+        this.staging = new File(directory, STAGING_DIRECTORY_NAME);
+        this.maximumSizeInBytes = maximumSizeInBytes;
+    }
+
+    /**
+     * Get the store whose values are cached.
+     * 
+     * @return the store; never null
+     */
+    public BinaryStore getDelegate() {
+        return delegate;
+    }
+
+    /**
+     * Get the directory in which the cached copies are kept.
+     * 
+     * @return the directory; never null
+     */
+    public File getDirectory() {
+        return directory;
+    }
+
+    /**
+     * Get the maximum total size of the cached copies.
+     * 
+     * @return the maximum size in bytes
+     */
+    public long getMaximumSizeInBytes() {
+        return maximumSizeInBytes;
+    }
+
+    /**
+     * Get the total size of the cached copies.
+     * 
+     * @return the size in bytes; never negative
+     */
+    public long getSizeInBytes() {
+        synchronized (cachedFiles) {
+            return sizeInBytes;
+        }
+    }
+
+    /**
+     * Get the number of reads that were served from the cache since this store was created.
+     * 
+     * @return the number of cache hits; never negative
+     */
+    public long getHitCount() {
+        return hits.get();
+    }
+
+    /**
+     * Get the number of reads that were served from the other store since this store was created.
+     * 
+     * @return the number of cache misses; never negative
+     */
+    public long getMissCount() {
+        return misses.get();
+    }
+
+    /**
+     * Start the other store, and load the index of the values cached in the directory by an earlier process so that they remain
+     * available. The values are assumed to have been read in the order in which they were cached.
+     */
+    @Override
+    public void start() {
+        delegate.start();
+        directory.mkdirs();
+        staging.mkdirs();
+        // Anything left in the staging area was being fetched when the process stopped ...
+        File[] stagedFiles = staging.listFiles();
+        if (stagedFiles != null) {
+            for (File stagedFile : stagedFiles) {
+                stagedFile.delete();
+            }
+        }
+        List<File> files = new ArrayList<File>();
+        findCachedFiles(directory, files);
+        Collections.sort(files, new Comparator<File>() {
+            @Override
+            public int compare( File file1,
+                                File file2 ) {
+                long modified1 = file1.lastModified();
+                long modified2 = file2.lastModified();
+                return modified1 < modified2 ? -1 : (modified1 == modified2 ? 0 : 1);
+            }
+        });
+        for (File file : files) {
+            added(new BinaryKey(file.getName()), file.length());
+        }
+    }
+
+    private void findCachedFiles( File parent,
+                                  List<File> files ) {
+        File[] children = parent.listFiles();
+        if (children == null) return;
+        for (File child : children) {
+            if (child.isDirectory()) {
+                if (!child.equals(staging)) findCachedFiles(child, files);
+            } else if (BinaryKey.isProperlyFormattedKey(child.getName())) {
+                files.add(child);
+            }
+        }
+    }
+
+    @Override
+    public void shutdown() {
+        delegate.shutdown();
+    }
+
+    @Override
+    public long getMinimumBinarySizeInBytes() {
+        return delegate.getMinimumBinarySizeInBytes();
+    }
+
+    @Override
+    public void setMinimumBinarySizeInBytes( long minSizeInBytes ) {
+        delegate.setMinimumBinarySizeInBytes(minSizeInBytes);
+    }
+
+    @Override
+    public void setTextExtractors( TextExtractors textExtractors ) {
+        delegate.setTextExtractors(textExtractors);
+    }
+
+    @Override
+    public void setMimeTypeDetector( MimeTypeDetector mimeTypeDetector ) {
+        delegate.setMimeTypeDetector(mimeTypeDetector);
+    }
+
+    @Override
+    public void setDurationRecorder( DurationRecorder durationRecorder ) {
+        delegate.setDurationRecorder(durationRecorder);
+    }
+
+    @Override
+    public DurationRecorder getDurationRecorder() {
+        return delegate.getDurationRecorder();
+    }
+
+    @Override
+    public void setValueRecorder( ValueRecorder valueRecorder ) {
+        this.valueRecorder = valueRecorder != null ? valueRecorder : ValueRecorder.NO_OP;
+        delegate.setValueRecorder(valueRecorder);
+    }
+
+    @Override
+    public ValueRecorder getValueRecorder() {
+        return valueRecorder;
+    }
+
+    @Override
+    public BinaryValue storeValue( InputStream stream ) throws BinaryStoreException {
+        return delegate.storeValue(stream);
+    }
+
+    @Override
+    public BinaryValue storeValue( InputStream stream,
+                                   String hint ) throws BinaryStoreException {
+        return delegate.storeValue(stream, hint);
+    }
+
+    @Override
+    public InputStream getInputStream( BinaryKey key ) throws BinaryStoreException {
+        return read(key);
+    }
+
+    @Override
+    public InputStream getInputStream( BinaryKey key,
+                                       long offset,
+                                       long length ) throws BinaryStoreException {
+        File cached = find(key);
+        if (cached != null) {
+            FileInputStream stream = null;
+            try {
+                stream = new FileInputStream(cached);
+                stream.getChannel().position(offset);
+                hit();
+                return new BoundedInputStream(stream, length);
+            } catch (IOException e) {
+                // The file was evicted in the meantime ...
+                IoUtil.closeQuietly(stream);
+            }
+        }
+        miss();
+        return delegate.getInputStream(key, offset, length);
+    }
+
+    @Override
+    public boolean hasBinary( BinaryKey key ) {
+        return delegate.hasBinary(key);
+    }
+
+    @Override
+    public void markAsUnused( Iterable<BinaryKey> keys ) throws BinaryStoreException {
+        delegate.markAsUnused(keys);
+        // The values are not likely to be read again, so don't let them take space in the cache ...
+        List<BinaryKey> evicted = new ArrayList<BinaryKey>();
+        synchronized (cachedFiles) {
+            for (BinaryKey key : keys) {
+                Long size = cachedFiles.remove(key);
+                if (size != null) {
+                    sizeInBytes -= size;
+                    evicted.add(key);
+                }
+            }
+        }
+        deleteCachedFiles(evicted);
+    }
+
+    @Override
+    public void removeValuesUnusedLongerThan( long minimumAge,
+                                              TimeUnit unit ) throws BinaryStoreException {
+        delegate.removeValuesUnusedLongerThan(minimumAge, unit);
+    }
+
+    @Override
+    public String getText( BinaryValue binary ) throws BinaryStoreException {
+        return delegate.getText(binary);
+    }
+
+    @Override
+    public String getMimeType( BinaryValue binary,
+                               String name ) throws IOException, RepositoryException {
+        return delegate.getMimeType(binary, name);
+    }
+
+    @Override
+    public Iterable<BinaryKey> getAllBinaryKeys() throws BinaryStoreException {
+        return delegate.getAllBinaryKeys();
+    }
+
+    /**
+     * Read the value with the supplied key from its cached copy, fetching the value from the other store if it is not yet cached.
+     * Each read is counted as a hit only when it is actually served from a copy that was already cached.
+     * 
+     * @param key the key of the value; may not be null
+     * @return the stream over the content of the value; never null
+     * @throws BinaryStoreException if there is a problem fetching the value
+     */
+    protected InputStream read( BinaryKey key ) throws BinaryStoreException {
+        File cached = find(key);
+        boolean fetched = false;
+        if (cached == null) {
+            // Only one thread fetches a value, while any others reading the same value wait for it ...
+            Fetch fetch = new Fetch(key);
+            FutureTask<File> task = new FutureTask<File>(fetch);
+            FutureTask<File> existing = loading.putIfAbsent(key, task);
+            if (existing == null) {
+                try {
+                    task.run();
+                } finally {
+                    loading.remove(key, task);
+                }
+                cached = result(task);
+                if (cached == null && fetch.uncached != null) {
+                    // The value is too large to cache, so continue reading it rather than fetching it again ...
+                    miss();
+                    return fetch.uncached;
+                }
+            } else {
+                cached = result(existing);
+            }
+            fetched = true;
+        }
+        if (cached != null) {
+            try {
+                InputStream stream = new FileInputStream(cached);
+                if (fetched) {
+                    miss();
+                } else {
+                    hit();
+                }
+                return stream;
+            } catch (FileNotFoundException e) {
+                // The file was evicted in the meantime ...
+            }
+        }
+        miss();
+        return delegate.getInputStream(key);
+    }
+
+    private File result( FutureTask<File> task ) throws BinaryStoreException {
+        try {
+            return task.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new BinaryStoreException(e);
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof BinaryStoreException) throw (BinaryStoreException)cause;
+            throw new BinaryStoreException(cause);
+        }
+    }
+
+    /**
+     * Find the cached copy of the value with the supplied key, and mark it as the most recently used value.
+     * 
+     * @param key the key of the value; may not be null
+     * @return the cached copy, or null if the value is not cached
+     */
+    protected File find( BinaryKey key ) {
+        synchronized (cachedFiles) {
+            if (cachedFiles.get(key) == null) return null;
+        }
+        // Check the file system without holding the lock ...
+        File file = cachedFile(key);
+        if (file.exists()) return file;
+        synchronized (cachedFiles) {
+            // Someone removed the file, so forget it unless it has been fetched again in the meantime ...
+            if (!file.exists()) {
+                Long size = cachedFiles.remove(key);
+                if (size != null) sizeInBytes -= size;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Fetch the content of the value with the supplied key from the other store into the cache. A value that turns out to be
+     * larger than the cache is not cached, and the content read so far is instead passed to the supplied fetch together with the
+     * rest of the content, so that the value is read from the other store only once.
+     * 
+     * @param fetch the fetch of the value; may not be null
+     * @return the cached copy, or null if the value is larger than the cache
+     * @throws BinaryStoreException if there is a problem reading the value from the other store
+     * @throws IOException if there is a problem writing the cached copy
+     */
+    protected File fetch( Fetch fetch ) throws BinaryStoreException, IOException {
+        BinaryKey key = fetch.key;
+        staging.mkdirs();
+        final File staged = File.createTempFile(STAGED_FILE_PREFIX, null, staging);
+        boolean keepStaged = false;
+        try {
+            InputStream stream = delegate.getInputStream(key);
+            boolean closeStream = true;
+            long size = 0L;
+            try {
+                boolean tooLarge = false;
+                OutputStream output = new FileOutputStream(staged);
+                try {
+                    byte[] buffer = new byte[AbstractBinaryStore.MEDIUM_BUFFER_SIZE];
+                    int read = 0;
+                    while ((read = stream.read(buffer)) != -1) {
+                        output.write(buffer, 0, read);
+                        size += read;
+                        if (size > maximumSizeInBytes) {
+                            tooLarge = true;
+                            break;
+                        }
+                    }
+                } finally {
+                    output.close();
+                }
+                if (tooLarge) {
+                    // The value would not fit in the cache, so read the staged content and then the rest ...
+                    InputStream stagedStream = new FileInputStream(staged) {
+                        @Override
+                        public void close() throws IOException {
+                            try {
+                                super.close();
+                            } finally {
+                                staged.delete();
+                            }
+                        }
+                    };
+                    fetch.uncached = new SequenceInputStream(stagedStream, stream);
+                    closeStream = false;
+                    keepStaged = true;
+                    return null;
+                }
+            } finally {
+                if (closeStream) stream.close();
+            }
+            File file = cachedFile(key);
+            file.getParentFile().mkdirs();
+            if (!staged.renameTo(file) && !file.exists()) {
+                return null;
+            }
+            added(key, size);
+            return file;
+        } finally {
+            if (!keepStaged && staged.exists()) staged.delete();
+        }
+    }
+
+    private void added( BinaryKey key,
+                        long size ) {
+        List<BinaryKey> evicted = new ArrayList<BinaryKey>();
+        synchronized (cachedFiles) {
+            Long existing = cachedFiles.put(key, size);
+            if (existing != null) sizeInBytes -= existing;
+            sizeInBytes += size;
+            // Evict the least recently used values (which come first) until the cache fits ...
+            Iterator<Map.Entry<BinaryKey, Long>> iter = cachedFiles.entrySet().iterator();
+            while (sizeInBytes > maximumSizeInBytes && iter.hasNext()) {
+                Map.Entry<BinaryKey, Long> entry = iter.next();
+                if (entry.getKey().equals(key)) continue;
+                iter.remove();
+                sizeInBytes -= entry.getValue();
+                evicted.add(entry.getKey());
+            }
+        }
+        deleteCachedFiles(evicted);
+    }
+
+    private void deleteCachedFiles( List<BinaryKey> keys ) {
+        for (BinaryKey key : keys) {
+            File file = cachedFile(key);
+            if (file.exists() && !file.delete()) {
+                // Probably still being read (on an OS that doesn't allow deleting open files), so it is fetched again if needed
+                logger.debug("Unable to remove the cached copy of binary value '{0}' from '{1}'", key, file);
+            }
+        }
+    }
+
+    protected final File cachedFile( BinaryKey key ) {
+        String sha1 = key.toString();
+        File first = new File(directory, sha1.substring(0, 2));
+        File second = new File(first, sha1.substring(2, 4));
+        return new File(second, sha1);
+    }
+
+    private void hit() {
+        hits.incrementAndGet();
+        valueRecorder.increment(ValueMetric.BINARY_CACHE_HIT_COUNT, 1L);
+    }
+
+    private void miss() {
+        misses.incrementAndGet();
+        valueRecorder.increment(ValueMetric.BINARY_CACHE_MISS_COUNT, 1L);
+    }
+
+    protected final class Fetch implements Callable<File> {
+        protected final BinaryKey key;
+        /**
+         * The content of a value that is too large to cache, which is only read by the thread that ran this fetch.
+         */
+        protected InputStream uncached;
+
+        protected Fetch( BinaryKey key ) {
+            this.key = key;
+        }
+
+        @Override
+        public File call() throws BinaryStoreException {
+            try {
+                return fetch(this);
+            } catch (IOException e) {
+                // The value can still be read from the other store ...
+                logger.warn(e, JcrI18n.unableToCacheBinaryValue, key, directory, e.getMessage());
+                return null;
+            }
+        }
+    }
+
+    @Override
+    public String toString() {
+        return "CachingBinaryStore[" + directory + " in front of " + delegate + "]";
+    }
+}
@@ -2,14 +2,27 @@ package org.modeshape.jcr.value.binary;
 
 import java.io.IOException;
 import java.io.InputStream;
+import java.util.ArrayList;
 import java.util.HashSet;
 import java.util.Iterator;
+import java.util.List;
 import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
 import javax.jcr.RepositoryException;
 import org.modeshape.common.collection.Collections;
 import org.modeshape.common.logging.Logger;
 import org.modeshape.common.util.CheckArg;
+import org.modeshape.common.util.NamedThreadFactory;
+import org.modeshape.jcr.DurationRecorder;
+import org.modeshape.jcr.ValueRecorder;
 import org.modeshape.jcr.JcrI18n;
 import org.modeshape.jcr.TextExtractors;
 import org.modeshape.jcr.mimetype.MimeTypeDetector;
@@ -23,17 +36,39 @@ import org.modeshape.jcr.value.BinaryValue;
  * BinaryStores. On retrieval, the CompositeBinaryStore will look in all the other BinaryStores for the value. When storing a
  * value, the CompositeBinaryStore may receive a StorageHint that MAY be used when determining which named BinaryStore to write
  * to. If a storage hint is not provided (or doesn't match a store), the value will be stored in the default store.
+ * <p>
+ * To avoid probing every named store when reading a value, the CompositeBinaryStore keeps a Bloom filter of the keys in each
+ * named store (built in the background from each store's keys after {@link #start() startup} and updated as values are stored
+ * through this store), and remembers the stores in which the most recently used values were found. A store is always probed
+ * until its filter has been built, and a filter that becomes too full is rebuilt in the background while it remains in use. The
+ * stores are then probed in order of the remembered location, the stores whose filter might contain the key, and only then the
+ * remaining stores, since values may be added to the named stores without going through this store (e.g., by other
+ * processes).
+ * </p>
  */
 public class CompositeBinaryStore implements BinaryStore {
 
     private static final String DEFAULT_STRATEGY_HINT = "default";
+
+    /**
+     * The maximum number of binary keys whose store is remembered.
+     */
+    protected static final int LOCATION_CACHE_SIZE = 10000;
+    private static final String FILTER_BUILDER_POOL_NAME = "modeshape-binary-filters";
     private volatile TextExtractors extractors;
     private volatile MimeTypeDetector detector = NullMimeTypeDetector.INSTANCE;
+    private volatile DurationRecorder durationRecorder = DurationRecorder.NO_OP;
+    private volatile ValueRecorder valueRecorder = ValueRecorder.NO_OP;
 
     protected Logger logger = Logger.getLogger(getClass());
 
     private Map<String, BinaryStore> namedStores;
     private BinaryStore defaultBinaryStore;
+    private String defaultBinaryStoreName;
+    private final ConcurrentMap<String, BinaryKeyBloomFilter> filtersByStoreName = new ConcurrentHashMap<String, BinaryKeyBloomFilter>();
+    private final ConcurrentMap<String, FilterRebuild> filterRebuildsByStoreName = new ConcurrentHashMap<String, FilterRebuild>();
+    private final StoreLocations storeNamesByKey = new StoreLocations(LOCATION_CACHE_SIZE);
+    private volatile ExecutorService filterBuilder;
 
     /**
      * Initialize a new CompositeBinaryStore using a Map of other BinaryKeys that are keyed by an implementer-provided key. The
@@ -58,6 +93,12 @@ public class CompositeBinaryStore implements BinaryStore {
             bs.start();
         }
 
+        // Build the filters of the keys in each store in the background, since that may take a while ...
+        filterBuilder = Executors.newSingleThreadExecutor(new NamedThreadFactory(FILTER_BUILDER_POOL_NAME));
+        it = getNamedStoreIterator();
+        while (it.hasNext()) {
+            rebuildFilter(it.next().getKey(), 0);
+        }
     }
 
     /**
@@ -71,6 +112,14 @@ public class CompositeBinaryStore implements BinaryStore {
             BinaryStore bs = it.next().getValue();
             bs.shutdown();
         }
+        ExecutorService builder = filterBuilder;
+        if (builder != null) {
+            builder.shutdownNow();
+            filterBuilder = null;
+        }
+        filtersByStoreName.clear();
+        filterRebuildsByStoreName.clear();
+        storeNamesByKey.clear();
     }
 
     @Override
@@ -124,6 +173,40 @@ public class CompositeBinaryStore implements BinaryStore {
         }
     }
 
+    @Override
+    public void setDurationRecorder( DurationRecorder durationRecorder ) {
+        this.durationRecorder = durationRecorder != null ? durationRecorder : DurationRecorder.NO_OP;
+
+        Iterator<Map.Entry<String, BinaryStore>> it = getNamedStoreIterator();
+
+        while (it.hasNext()) {
+            BinaryStore bs = it.next().getValue();
+            bs.setDurationRecorder(durationRecorder);
+        }
+    }
+
+    @Override
+    public DurationRecorder getDurationRecorder() {
+        return durationRecorder;
+    }
+
+    @Override
+    public void setValueRecorder( ValueRecorder valueRecorder ) {
+        this.valueRecorder = valueRecorder != null ? valueRecorder : ValueRecorder.NO_OP;
+
+        Iterator<Map.Entry<String, BinaryStore>> it = getNamedStoreIterator();
+
+        while (it.hasNext()) {
+            BinaryStore bs = it.next().getValue();
+            bs.setValueRecorder(valueRecorder);
+        }
+    }
+
+    @Override
+    public ValueRecorder getValueRecorder() {
+        return valueRecorder;
+    }
+
     @Override
     public BinaryValue storeValue( InputStream stream ) throws BinaryStoreException {
         return storeValue(stream, DEFAULT_STRATEGY_HINT);
@@ -132,9 +215,11 @@ public class CompositeBinaryStore implements BinaryStore {
     @Override
     public BinaryValue storeValue( InputStream stream,
                                    String hint ) throws BinaryStoreException {
-        BinaryStore binaryStore = selectBinaryStore(hint);
+        String storeName = selectBinaryStoreName(hint);
+        BinaryStore binaryStore = namedStores.get(storeName);
         BinaryValue bv = binaryStore.storeValue(stream);
         logger.debug("Stored binary " + bv.getKey() + " into binary store " + binaryStore);
+        found(bv.getKey(), storeName);
         return bv;
     }
 
@@ -190,20 +275,29 @@ public class CompositeBinaryStore implements BinaryStore {
 
     @Override
     public InputStream getInputStream( BinaryKey key ) throws BinaryStoreException {
-        Iterator<Map.Entry<String, BinaryStore>> it = getNamedStoreIterator();
-
-        while (it.hasNext()) {
-            final Map.Entry<String, BinaryStore> entry = it.next();
-
-            final String binaryStoreKey = entry.getKey();
-
-            BinaryStore binaryStore = entry.getValue();
-            logger.trace("Checking binary store " + binaryStoreKey + " for key " + key);
+        // Read directly from the stores that most likely contain the key ...
+        List<String> unlikelyStoreNames = new ArrayList<String>();
+        for (String storeName : likelyStoreNames(key, unlikelyStoreNames)) {
+            BinaryStore binaryStore = namedStores.get(storeName);
+            logger.trace("Checking binary store " + storeName + " for key " + key);
             try {
-                return binaryStore.getInputStream(key);
+                InputStream stream = binaryStore.getInputStream(key);
+                found(key, storeName);
+                return stream;
             } catch (BinaryStoreException e) {
                 // this exception is "normal", and is thrown
-                logger.trace(e, "The named store " + binaryStoreKey + " raised exception");
+                logger.trace(e, "The named store " + storeName + " raised exception");
+                storeNamesByKey.remove(key, storeName);
+            }
+        }
+        // Then check the other stores, in case the value was added to them without going through this store ...
+        for (String storeName : unlikelyStoreNames) {
+            BinaryStore binaryStore = namedStores.get(storeName);
+            logger.trace("Checking binary store " + storeName + " for key " + key);
+            if (binaryStore.hasBinary(key)) {
+                InputStream stream = binaryStore.getInputStream(key);
+                found(key, storeName);
+                return stream;
             }
         }
 
@@ -211,17 +305,19 @@ public class CompositeBinaryStore implements BinaryStore {
     }
 
     @Override
-    public boolean hasBinary( BinaryKey key ) {
-        Iterator<Map.Entry<String, BinaryStore>> it = getNamedStoreIterator();
-
-        while (it.hasNext()) {
-            BinaryStore bs = it.next().getValue();
-            if (bs.hasBinary(key)) {
-                return true;
-            }
+    public InputStream getInputStream( BinaryKey key,
+                                       long offset,
+                                       long length ) throws BinaryStoreException {
+        BinaryStore binaryStore = findBinaryStoreContainingKey(key);
+        if (binaryStore == null) {
+            throw new BinaryStoreException(JcrI18n.unableToFindBinaryValue.text(key, this.toString()));
         }
+        return binaryStore.getInputStream(key, offset, length);
+    }
 
-        return false;
+    @Override
+    public boolean hasBinary( BinaryKey key ) {
+        return findBinaryStoreContainingKey(key) != null;
     }
 
     @SuppressWarnings( "unused" )
@@ -275,23 +371,9 @@ public class CompositeBinaryStore implements BinaryStore {
             return extractors.extract((InMemoryBinaryValue)binary, new TextExtractorContext(detector));
         }
 
-        Iterator<Map.Entry<String, BinaryStore>> it = getNamedStoreIterator();
-
-        while (it.hasNext()) {
-            Map.Entry<String, BinaryStore> entry = it.next();
-
-            final String binaryStoreKey = entry.getKey();
-            BinaryStore bs = entry.getValue();
-            try {
-                if (bs.hasBinary(binary.getKey())) {
-                    return bs.getText(binary);
-                }
-            } catch (BinaryStoreException e) {
-                logger.debug(e, "The named store " + binaryStoreKey + " raised exception");
-                if (!it.hasNext()) {
-                    throw e;
-                }
-            }
+        BinaryStore bs = findBinaryStoreContainingKey(binary.getKey());
+        if (bs != null) {
+            return bs.getText(binary);
         }
 
         throw new BinaryStoreException(JcrI18n.unableToFindBinaryValue.text(binary.getKey(), this));
@@ -309,24 +391,9 @@ public class CompositeBinaryStore implements BinaryStore {
             return detectedMimeType;
         }
 
-        Iterator<Map.Entry<String, BinaryStore>> it = getNamedStoreIterator();
-
-        while (it.hasNext()) {
-            Map.Entry<String, BinaryStore> entry = it.next();
-
-            final String binaryStoreKey = entry.getKey();
-            BinaryStore bs = entry.getValue();
-
-            try {
-                if (bs.hasBinary(binary.getKey())) {
-                    return bs.getMimeType(binary, name);
-                }
-            } catch (BinaryStoreException e) {
-                logger.debug(e, "The named store " + binaryStoreKey + " raised exception");
-                if (!it.hasNext()) {
-                    throw e;
-                }
-            }
+        BinaryStore bs = findBinaryStoreContainingKey(binary.getKey());
+        if (bs != null) {
+            return bs.getMimeType(binary, name);
         }
 
         throw new BinaryStoreException(JcrI18n.unableToFindBinaryValue.text(binary.getKey(), this));
@@ -363,11 +430,19 @@ public class CompositeBinaryStore implements BinaryStore {
      * @return the BinaryStore that contains the given key
      */
     public BinaryStore findBinaryStoreContainingKey( BinaryKey key ) {
-        Iterator<Map.Entry<String, BinaryStore>> binaryStoreIterator = getNamedStoreIterator();
-
-        while (binaryStoreIterator.hasNext()) {
-            BinaryStore bs = binaryStoreIterator.next().getValue();
+        List<String> unlikelyStoreNames = new ArrayList<String>();
+        for (String storeName : likelyStoreNames(key, unlikelyStoreNames)) {
+            BinaryStore bs = namedStores.get(storeName);
+            if (bs.hasBinary(key)) {
+                found(key, storeName);
+                return bs;
+            }
+            storeNamesByKey.remove(key, storeName);
+        }
+        for (String storeName : unlikelyStoreNames) {
+            BinaryStore bs = namedStores.get(storeName);
             if (bs.hasBinary(key)) {
+                found(key, storeName);
                 return bs;
             }
         }
@@ -376,39 +451,135 @@ public class CompositeBinaryStore implements BinaryStore {
     }
 
     /**
-     * Select a named binary store for the given hint
+     * Get the names of the stores that most likely contain the given key, starting with the store in which the key was last
+     * found, followed by the stores whose filter might contain the key. The names of all other stores are added to the supplied
+     * list.
      * 
-     * @param hint a hint to a binary store; possibly null
-     * @return a named BinaryStore from the hint, or the default store
+     * @param key the key to the binary content; never null
+     * @param unlikelyStoreNames the list to which are added the names of the stores that are unlikely to contain the key; never
+     *        null
+     * @return the names of the likely stores, in the order they should be probed; never null
      */
-    private BinaryStore selectBinaryStore( String hint ) {
-
-        BinaryStore namedBinaryStore = null;
+    private List<String> likelyStoreNames( BinaryKey key,
+                                           List<String> unlikelyStoreNames ) {
+        List<String> likelyStoreNames = new ArrayList<String>(2);
+        String lastStoreName = storeNamesByKey.get(key);
+        if (lastStoreName != null && namedStores.containsKey(lastStoreName)) likelyStoreNames.add(lastStoreName);
+        for (String storeName : namedStores.keySet()) {
+            if (storeName.equals(lastStoreName)) continue;
+            BinaryKeyBloomFilter filter = filtersByStoreName.get(storeName);
+            if (filter == null || filter.mightContain(key)) {
+                likelyStoreNames.add(storeName);
+            } else {
+                unlikelyStoreNames.add(storeName);
+            }
+        }
+        return likelyStoreNames;
+    }
 
-        if (hint != null) {
-            logger.trace("Selecting named binary store for hint: " + hint);
-            namedBinaryStore = namedStores.get(hint);
+    /**
+     * Record that the value with the given key is in the named store.
+     * 
+     * @param key the key to the binary content; never null
+     * @param storeName the name of the store containing the value; never null
+     */
+    private void found( BinaryKey key,
+                        String storeName ) {
+        storeNamesByKey.put(key, storeName);
+        // Look for a rebuild before the filter, since a rebuild publishes its new filter before it is no longer found ...
+        FilterRebuild rebuild = filterRebuildsByStoreName.get(storeName);
+        BinaryKeyBloomFilter filter = filtersByStoreName.get(storeName);
+        if (filter != null && !filter.mightContain(key)) {
+            filter.add(key);
+            if (filter.isSaturated()) {
+                // Replace the filter with a larger one ...
+                rebuildFilter(storeName, filter.getCount() * 2);
+            }
         }
+        if (rebuild != null) {
+            rebuild.add(key);
+        }
+    }
 
-        if (namedBinaryStore == null) {
-            namedBinaryStore = getDefaultBinaryStore();
+    /**
+     * Build in the background a new filter of the keys in the given store, unless one is already being built. The existing
+     * filter (if any) remains in use until the new one replaces it. If the store cannot enumerate its keys, it will have no
+     * filter and will always be probed.
+     * 
+     * @param storeName the name of the store; never null
+     * @param minimumCapacity the minimum capacity of the filter
+     */
+    private void rebuildFilter( final String storeName,
+                                final int minimumCapacity ) {
+        ExecutorService builder = filterBuilder;
+        if (builder == null) return;
+        final FilterRebuild rebuild = new FilterRebuild();
+        if (filterRebuildsByStoreName.putIfAbsent(storeName, rebuild) != null) return;
+        try {
+            builder.execute(new Runnable() {
+                @Override
+                public void run() {
+                    try {
+                        rebuild.build(namedStores.get(storeName), minimumCapacity);
+                        filtersByStoreName.put(storeName, rebuild.filter);
+                    } catch (BinaryStoreException e) {
+                        logger.debug(e, "Unable to read the keys in the named store " + storeName
+                                        + "; it will always be checked for values");
+                        filtersByStoreName.remove(storeName);
+                    } catch (RuntimeException e) {
+                        logger.debug(e, "Unable to read the keys in the named store " + storeName
+                                        + "; it will always be checked for values");
+                        filtersByStoreName.remove(storeName);
+                    } finally {
+                        filterRebuildsByStoreName.remove(storeName, rebuild);
+                    }
+                }
+            });
+        } catch (RejectedExecutionException e) {
+            // This store is being shut down ...
+            filterRebuildsByStoreName.remove(storeName, rebuild);
         }
+    }
 
-        logger.trace("Selected binary store: " + namedBinaryStore.toString());
+    /**
+     * Select a named binary store for the given hint
+     * 
+     * @param hint a hint to a binary store; possibly null
+     * @return a named BinaryStore from the hint, or the default store
+     */
+    private BinaryStore selectBinaryStore( String hint ) {
+        return namedStores.get(selectBinaryStoreName(hint));
+    }
 
-        return namedBinaryStore;
+    /**
+     * Select the name of the binary store for the given hint
+     * 
+     * @param hint a hint to a binary store; possibly null
+     * @return the name of the named BinaryStore from the hint, or of the default store
+     */
+    private String selectBinaryStoreName( String hint ) {
+        if (hint != null && namedStores.containsKey(hint)) {
+            logger.trace("Selected named binary store for hint: " + hint);
+            return hint;
+        }
+        getDefaultBinaryStore();
+        logger.trace("Selected default binary store: " + defaultBinaryStoreName);
+        return defaultBinaryStoreName;
     }
 
     private BinaryStore getDefaultBinaryStore() {
         if (defaultBinaryStore == null) {
             if (namedStores.containsKey(DEFAULT_STRATEGY_HINT)) {
+                defaultBinaryStoreName = DEFAULT_STRATEGY_HINT;
                 defaultBinaryStore = namedStores.get(DEFAULT_STRATEGY_HINT);
             } else {
                 logger.trace("Did not find a named binary store with the key 'default', picking the first binary store in the list");
-                final Iterator<BinaryStore> iterator = namedStores.values().iterator();
+                final Iterator<Map.Entry<String, BinaryStore>> iterator = namedStores.entrySet().iterator();
 
                 if (iterator.hasNext()) {
-                    defaultBinaryStore = iterator.next();
+                    Map.Entry<String, BinaryStore> entry = iterator.next();
+                    defaultBinaryStoreName = entry.getKey();
+                    defaultBinaryStore = entry.getValue();
                 }
             }
         }
@@ -416,4 +587,121 @@ public class CompositeBinaryStore implements BinaryStore {
         return defaultBinaryStore;
     }
 
+    /**
+     * A filter that is being built from the keys in a store. Keys that are found while the store's keys are being read are
+     * recorded, so that they are in the new filter even if they were added to the store too late to be read.
+     */
+    private static final class FilterRebuild {
+        private final Queue<BinaryKey> addedKeys = new ConcurrentLinkedQueue<BinaryKey>();
+        protected volatile BinaryKeyBloomFilter filter;
+
+        protected void add( BinaryKey key ) {
+            BinaryKeyBloomFilter filter = this.filter;
+            if (filter == null) {
+                addedKeys.add(key);
+                // The filter may have been built since it was checked, after the recorded keys were added to it ...
+                filter = this.filter;
+            }
+            if (filter != null) filter.add(key);
+        }
+
+        protected void build( BinaryStore store,
+                              int minimumCapacity ) throws BinaryStoreException {
+            List<BinaryKey> keys = new ArrayList<BinaryKey>();
+            for (BinaryKey key : store.getAllBinaryKeys()) {
+                keys.add(key);
+            }
+            BinaryKeyBloomFilter filter = new BinaryKeyBloomFilter(Math.max(minimumCapacity, keys.size() * 2));
+            for (BinaryKey key : keys) {
+                filter.add(key);
+            }
+            this.filter = filter;
+            for (BinaryKey key : addedKeys) {
+                filter.add(key);
+            }
+            addedKeys.clear();
+        }
+    }
+
+    /**
+     * A bounded and concurrent map of the names of the stores in which values were recently found. Lookups never block. When
+     * the map is full, entries are evicted in "second chance" order: an entry that was looked up since it was last considered is
+     * kept and considered again later, which approximates least-recently-used order without reordering entries on each lookup.
+     */
+    private static final class StoreLocations {
+        private final int capacity;
+        private final ConcurrentMap<BinaryKey, StoreLocation> locations = new ConcurrentHashMap<BinaryKey, StoreLocation>();
+        private final Queue<BinaryKey> evictionOrder = new ConcurrentLinkedQueue<BinaryKey>();
+        private final AtomicInteger size = new AtomicInteger();
+        private final AtomicInteger queued = new AtomicInteger();
+
+        protected StoreLocations( int capacity ) {
+            this.capacity = capacity;
+        }
+
+        protected String get( BinaryKey key ) {
+            StoreLocation location = locations.get(key);
+            if (location == null) return null;
+            location.referenced = true;
+            return location.storeName;
+        }
+
+        protected void put( BinaryKey key,
+                            String storeName ) {
+            StoreLocation existing = locations.get(key);
+            if (existing != null && existing.storeName.equals(storeName)) {
+                existing.referenced = true;
+                return;
+            }
+            if (locations.put(key, new StoreLocation(storeName)) != null) return;
+            size.incrementAndGet();
+            evictionOrder.add(key);
+            queued.incrementAndGet();
+            evict();
+        }
+
+        protected void remove( BinaryKey key,
+                               String storeName ) {
+            StoreLocation location = locations.get(key);
+            if (location != null && location.storeName.equals(storeName) && locations.remove(key, location)) {
+                size.decrementAndGet();
+            }
+        }
+
+        protected void clear() {
+            locations.clear();
+            evictionOrder.clear();
+            size.set(0);
+            queued.set(0);
+        }
+
+        private void evict() {
+            // The queue may also hold keys that were removed, so limit its length too ...
+            int secondChances = 0;
+            while (size.get() > capacity || queued.get() > capacity * 2) {
+                BinaryKey key = evictionOrder.poll();
+                if (key == null) return;
+                queued.decrementAndGet();
+                StoreLocation location = locations.get(key);
+                if (location == null) continue;
+                if (location.referenced && ++secondChances <= capacity) {
+                    // Give it a second chance ...
+                    location.referenced = false;
+                    evictionOrder.add(key);
+                    queued.incrementAndGet();
+                } else if (locations.remove(key, location)) {
+                    size.decrementAndGet();
+                }
+            }
+        }
+    }
+
+    private static final class StoreLocation {
+        protected final String storeName;
+        protected volatile boolean referenced;
+
+        protected StoreLocation( String storeName ) {
+            this.storeName = storeName;
+        }
+    }
 }
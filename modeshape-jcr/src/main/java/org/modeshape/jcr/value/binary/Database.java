@@ -25,6 +25,7 @@ package org.modeshape.jcr.value.binary;
 
 import java.io.IOException;
 import java.io.InputStream;
+import java.sql.Blob;
 import java.sql.Connection;
 import java.sql.PreparedStatement;
 import java.sql.ResultSet;
@@ -127,6 +128,15 @@ public class Database {
     private PreparedStatement getExtractedTextSql;
     private PreparedStatement setExtractedTextSql;
     private PreparedStatement getBinaryKeysSql;
+    private PreparedStatement addUploadSql;
+    private PreparedStatement touchUploadSql;
+    private PreparedStatement renameContentSql;
+    private PreparedStatement renameChunksSql;
+    private PreparedStatement removeContentSql;
+    private PreparedStatement removeChunksSql;
+    private PreparedStatement addChunkSql;
+    private PreparedStatement getChunkSql;
+    private PreparedStatement removeExpiredChunksSql;
 
     /**
      * Creates new instance of the database.
@@ -241,6 +251,67 @@ public class Database {
         }
     }
 
+    /**
+     * Prepare this instance for storing binary values in chunks, after it was {@link #initialize() initialized}. The chunks are
+     * kept in a separate table whose name is the table name followed by "<code>_chunks</code>".
+     * 
+     * @param createTable true if the chunks table should be created if it does not exist, or false if chunks are to be supported
+     *        only when the table already exists
+     * @return true if this instance supports chunks, or false if the chunks table does not exist
+     * @throws BinaryStoreException if there is a problem
+     */
+    public boolean initializeChunks( boolean createTable ) throws BinaryStoreException {
+        try {
+            boolean tableExists = false;
+            try {
+                PreparedStatement exists = prepareStatement("chunks_table_exists_query");
+                LOGGER.trace("Running statement: {0}", exists);
+                exists.execute();
+                exists.close();
+                tableExists = true;
+            } catch (SQLException e) {
+                // the table doesn't exist ...
+            }
+
+            if (!tableExists) {
+                if (!createTable) return false;
+                LOGGER.debug("Unable to find existing table. Attempting to create '{0}_chunks' table in {1}", tableName, connection);
+                try {
+                    PreparedStatement create = prepareStatement("create_chunks_table");
+                    LOGGER.trace("Running statement: {0}", create);
+                    create.execute();
+                    create.close();
+                } catch (SQLException e) {
+                    String msg = JcrI18n.errorCreatingDatabaseTable.text(tableName + "_chunks", databaseType, connection,
+                                                                         e.getMessage());
+                    throw new BinaryStoreException(msg);
+                }
+            }
+
+            addUploadSql = prepareStatement("add_upload");
+            touchUploadSql = prepareStatement("touch_upload");
+            renameContentSql = prepareStatement("rename_content");
+            renameChunksSql = prepareStatement("rename_chunks");
+            removeContentSql = prepareStatement("remove_content");
+            removeChunksSql = prepareStatement("remove_chunks");
+            addChunkSql = prepareStatement("add_chunk");
+            getChunkSql = prepareStatement("get_chunk");
+            removeExpiredChunksSql = prepareStatement("remove_expired_chunks");
+            return true;
+        } catch (SQLException e) {
+            throw new BinaryStoreException(e);
+        }
+    }
+
+    /**
+     * Determine whether this instance supports storing binary values in chunks.
+     * 
+     * @return true if the chunks were {@link #initializeChunks(boolean) initialized}, or false otherwise
+     */
+    public boolean supportsChunks() {
+        return addChunkSql != null;
+    }
+
     protected PreparedStatement prepareStatement( String statementKey ) throws SQLException {
         String statementString = statements.getProperty(statementKey);
         statementString = StringUtil.createString(statementString, tableName);
@@ -306,6 +377,15 @@ public class Database {
                 if (getExtractedTextSql != null) getExtractedTextSql.close();
                 if (setExtractedTextSql != null) setExtractedTextSql.close();
                 if (getBinaryKeysSql != null) getBinaryKeysSql.close();
+                if (addUploadSql != null) addUploadSql.close();
+                if (touchUploadSql != null) touchUploadSql.close();
+                if (renameContentSql != null) renameContentSql.close();
+                if (renameChunksSql != null) renameChunksSql.close();
+                if (removeContentSql != null) removeContentSql.close();
+                if (removeChunksSql != null) removeChunksSql.close();
+                if (addChunkSql != null) addChunkSql.close();
+                if (getChunkSql != null) getChunkSql.close();
+                if (removeExpiredChunksSql != null) removeExpiredChunksSql.close();
             } catch (SQLException e) {
                 failed = true;
                 throw new RuntimeException(e);
@@ -326,6 +406,15 @@ public class Database {
                     getExtractedTextSql = null;
                     setExtractedTextSql = null;
                     getBinaryKeysSql = null;
+                    addUploadSql = null;
+                    touchUploadSql = null;
+                    renameContentSql = null;
+                    renameChunksSql = null;
+                    removeContentSql = null;
+                    removeChunksSql = null;
+                    addChunkSql = null;
+                    getChunkSql = null;
+                    removeExpiredChunksSql = null;
                 }
             }
         }
@@ -528,6 +617,170 @@ public class Database {
         return getBinaryKeysSql;
     }
 
+    /**
+     * Generates SQL statement which inserts the row for a binary value that is being stored in chunks, and which is not yet used.
+     * 
+     * @param uploadId the temporary identifier of the content
+     * @return SQL statement
+     * @throws BinaryStoreException
+     */
+    public PreparedStatement insertUploadSQL( String uploadId ) throws BinaryStoreException {
+        try {
+            addUploadSql.setString(1, uploadId);
+            addUploadSql.setTimestamp(2, new java.sql.Timestamp(now()));
+            return addUploadSql;
+        } catch (SQLException e) {
+            throw new BinaryStoreException(e);
+        }
+    }
+
+    /**
+     * Generates SQL statement which updates the usage time of the row for a binary value that is being stored in chunks, so that
+     * the row is not removed as {@link #removeExpiredContentSQL(long) expired content} while its chunks are still being inserted.
+     * 
+     * @param uploadId the temporary identifier of the binary value
+     * @return SQL statement.
+     * @throws BinaryStoreException
+     */
+    public PreparedStatement touchUploadSQL( String uploadId ) throws BinaryStoreException {
+        try {
+            touchUploadSql.setTimestamp(1, new java.sql.Timestamp(now()));
+            touchUploadSql.setString(2, uploadId);
+            return touchUploadSql;
+        } catch (SQLException e) {
+            throw new BinaryStoreException(e);
+        }
+    }
+
+    /**
+     * Generates SQL statement which inserts one chunk of a binary value.
+     * 
+     * @param id the identifier of the content
+     * @param chunkNumber the zero-based number of the chunk
+     * @param chunk the bytes of the chunk
+     * @return SQL statement
+     * @throws BinaryStoreException
+     */
+    public PreparedStatement insertChunkSQL( String id,
+                                             int chunkNumber,
+                                             byte[] chunk ) throws BinaryStoreException {
+        try {
+            addChunkSql.setString(1, id);
+            addChunkSql.setInt(2, chunkNumber);
+            addChunkSql.setBytes(3, chunk);
+            return addChunkSql;
+        } catch (SQLException e) {
+            throw new BinaryStoreException(e);
+        }
+    }
+
+    /**
+     * Generates SQL statement for retrieving one chunk of a binary value.
+     * 
+     * @param key content id
+     * @param chunkNumber the zero-based number of the chunk
+     * @return executable SQL statement
+     * @throws BinaryStoreException
+     */
+    public PreparedStatement retrieveChunkSQL( BinaryKey key,
+                                               int chunkNumber ) throws BinaryStoreException {
+        try {
+            getChunkSql.setString(1, key.toString());
+            getChunkSql.setInt(2, chunkNumber);
+            return getChunkSql;
+        } catch (SQLException e) {
+            throw new BinaryStoreException(e);
+        }
+    }
+
+    /**
+     * Generates SQL statement which gives a binary value that was stored in chunks its key, and marks it as used.
+     * 
+     * @param uploadId the temporary identifier of the content
+     * @param key the content id
+     * @return SQL statement
+     * @throws BinaryStoreException
+     */
+    public PreparedStatement renameContentSQL( String uploadId,
+                                               BinaryKey key ) throws BinaryStoreException {
+        try {
+            renameContentSql.setString(1, key.toString());
+            renameContentSql.setTimestamp(2, new java.sql.Timestamp(now()));
+            renameContentSql.setString(3, uploadId);
+            return renameContentSql;
+        } catch (SQLException e) {
+            throw new BinaryStoreException(e);
+        }
+    }
+
+    /**
+     * Generates SQL statement which gives the chunks of a binary value their key.
+     * 
+     * @param uploadId the temporary identifier of the content
+     * @param key the content id
+     * @return SQL statement
+     * @throws BinaryStoreException
+     */
+    public PreparedStatement renameChunksSQL( String uploadId,
+                                              BinaryKey key ) throws BinaryStoreException {
+        try {
+            renameChunksSql.setString(1, key.toString());
+            renameChunksSql.setString(2, uploadId);
+            return renameChunksSql;
+        } catch (SQLException e) {
+            throw new BinaryStoreException(e);
+        }
+    }
+
+    /**
+     * Generates SQL statement which removes the row of a binary value that was being stored in chunks.
+     * 
+     * @param uploadId the temporary identifier of the content
+     * @return SQL statement
+     * @throws BinaryStoreException
+     */
+    public PreparedStatement removeContentSQL( String uploadId ) throws BinaryStoreException {
+        try {
+            removeContentSql.setString(1, uploadId);
+            return removeContentSql;
+        } catch (SQLException e) {
+            throw new BinaryStoreException(e);
+        }
+    }
+
+    /**
+     * Generates SQL statement which removes the chunks of a binary value that was being stored in chunks.
+     * 
+     * @param uploadId the temporary identifier of the content
+     * @return SQL statement
+     * @throws BinaryStoreException
+     */
+    public PreparedStatement removeChunksSQL( String uploadId ) throws BinaryStoreException {
+        try {
+            removeChunksSql.setString(1, uploadId);
+            return removeChunksSql;
+        } catch (SQLException e) {
+            throw new BinaryStoreException(e);
+        }
+    }
+
+    /**
+     * Generates SQL statement which removes the chunks of expired content. This statement must be executed before the
+     * {@link #removeExpiredContentSQL(long) statement that removes the expired content}.
+     * 
+     * @param deadline expire time
+     * @return SQL statement.
+     * @throws BinaryStoreException
+     */
+    public PreparedStatement removeExpiredChunksSQL( long deadline ) throws BinaryStoreException {
+        try {
+            removeExpiredChunksSql.setTimestamp(1, new java.sql.Timestamp(deadline));
+            return removeExpiredChunksSql;
+        } catch (SQLException e) {
+            throw new BinaryStoreException(e);
+        }
+    }
+
     /**
      * Executes specifies statement.
      * 
@@ -563,12 +816,13 @@ public class Database {
      * Executes specifies update statement.
      * 
      * @param sql the statement to execute
+     * @return the number of rows that were updated
      * @throws BinaryStoreException
      */
-    public static void executeUpdate( PreparedStatement sql ) throws BinaryStoreException {
+    public static int executeUpdate( PreparedStatement sql ) throws BinaryStoreException {
         try {
             LOGGER.trace("Running statement: {0}", sql);
-            sql.executeUpdate();
+            return sql.executeUpdate();
         } catch (SQLException e) {
             throw new BinaryStoreException(e);
         }
@@ -604,6 +858,118 @@ public class Database {
         }
     }
 
+    /**
+     * Provides access to a range of query data
+     * 
+     * @param rs retrieved single value
+     * @param offset the offset of the first byte of the range
+     * @param length the maximum number of bytes in the range
+     * @return the range of the result as input stream, or null if there is no value
+     * @throws BinaryStoreException
+     */
+    public static InputStream asStream( ResultSet rs,
+                                        long offset,
+                                        long length ) throws BinaryStoreException {
+        boolean error = false;
+        try {
+            if (!rs.next()) {
+                return null;
+            }
+            Blob blob = null;
+            try {
+                blob = rs.getBlob(1);
+            } catch (SQLException e) {
+                // Not all drivers can expose the content column as a BLOB ...
+                LOGGER.trace("Unable to read the content as a BLOB: {0}", e.getMessage());
+            }
+            if (blob != null) {
+                return asStream(blob, offset, length);
+            }
+            InputStream stream = rs.getBinaryStream(1);
+            return stream != null ? BoundedInputStream.skipTo(stream, offset, length) : null;
+        } catch (SQLException e) {
+            error = true;
+            throw new BinaryStoreException(e);
+        } catch (IOException e) {
+            error = true;
+            throw new BinaryStoreException(e);
+        } catch (RuntimeException e) {
+            error = true;
+            throw e;
+        } finally {
+            // Always close the result set ...
+            try {
+                rs.close();
+            } catch (SQLException e) {
+                if (!error) throw new BinaryStoreException(e);
+            }
+        }
+    }
+
+    private static InputStream asStream( Blob blob,
+                                         long offset,
+                                         long length ) throws SQLException, IOException {
+        long size = blob.length();
+        if (offset >= size || length == 0L) {
+            return BoundedInputStream.empty();
+        }
+        length = Math.min(length, size - offset);
+        try {
+            // Positions within a BLOB start at 1 ...
+            return blob.getBinaryStream(offset + 1L, length);
+        } catch (SQLException e) {
+            // Not all drivers support reading part of a BLOB, so skip to the offset instead ...
+            LOGGER.trace("Unable to read part of a BLOB: {0}", e.getMessage());
+            return BoundedInputStream.skipTo(blob.getBinaryStream(), offset, length);
+        }
+    }
+
+    /**
+     * Executes the batch of the specified statement.
+     * 
+     * @param sql the statement whose batch is to be executed
+     * @throws BinaryStoreException
+     */
+    public static void executeBatch( PreparedStatement sql ) throws BinaryStoreException {
+        try {
+            LOGGER.trace("Running batch of statement: {0}", sql);
+            sql.executeBatch();
+        } catch (SQLException e) {
+            throw new BinaryStoreException(e);
+        }
+    }
+
+    /**
+     * Provides access to query data
+     * 
+     * @param rs retrieved single value
+     * @return result as byte array, or null if there is no result
+     * @throws BinaryStoreException
+     */
+    public static byte[] asBytes( ResultSet rs ) throws BinaryStoreException {
+        boolean error = false;
+        try {
+            if (!rs.next()) {
+                return null;
+            }
+            byte[] result = rs.getBytes(1);
+            return result != null ? result : new byte[0];
+        } catch (SQLException e) {
+            error = true;
+            throw new BinaryStoreException(e);
+        } catch (RuntimeException e) {
+            error = true;
+            throw e;
+        } finally {
+            // Always close the result set ...
+            try {
+                rs.close();
+            } catch (SQLException e) {
+                if (!error) throw new BinaryStoreException(e);
+            }
+        }
+    }
+
     /**
      * Provides access to query data
      * 
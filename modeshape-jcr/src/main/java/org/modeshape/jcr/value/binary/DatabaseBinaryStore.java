@@ -23,24 +23,38 @@
  */
 package org.modeshape.jcr.value.binary;
 
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
 import java.io.InputStream;
+import java.io.SequenceInputStream;
+import java.security.NoSuchAlgorithmException;
 import java.sql.Connection;
 import java.sql.DriverManager;
 import java.sql.PreparedStatement;
 import java.sql.ResultSet;
 import java.sql.SQLException;
+import java.util.ArrayList;
 import java.util.Date;
 import java.util.HashSet;
 import java.util.List;
 import java.util.Set;
+import java.util.UUID;
 import java.util.concurrent.TimeUnit;
 import javax.naming.InitialContext;
 import javax.naming.NamingException;
 import javax.sql.DataSource;
+import org.modeshape.common.SystemFailureException;
 import org.modeshape.common.annotation.ThreadSafe;
+import org.modeshape.common.util.IoUtil;
+import org.modeshape.common.util.SecureHash;
+import org.modeshape.common.util.SecureHash.Algorithm;
+import org.modeshape.common.util.SecureHash.HashingInputStream;
 import org.modeshape.jcr.JcrI18n;
 import org.modeshape.jcr.value.BinaryKey;
 import org.modeshape.jcr.value.BinaryValue;
+import org.modeshape.jcr.value.binary.BinaryCompression.Codec;
 
 /**
  * A {@link BinaryStore} implementation that uses a database for persisting binary values.
@@ -89,17 +103,45 @@ import org.modeshape.jcr.value.BinaryValue;
  * The JDBC driver used needs to be at least JDBC 1.4 (JDK 6) compliant,
  * because {@link PreparedStatement#setBinaryStream(int parameterIndex, java.io.InputStream x)} is being used.
  * </p>
+ * <p>
+ * By default, each value is first copied into a temporary file to compute its SHA-1 hash, and then inserted into a single row.
+ * When a positive {@link #setChunkSizeInBytes(int) chunk size} is set, values are instead hashed while they are streamed into
+ * a second table (named after the first with a "<code>_chunks</code>" suffix) in chunks of that size, which are inserted in
+ * batches of {@value #CHUNKS_PER_BATCH} chunks. Such values are stored under a temporary identifier that is replaced by their
+ * key once all chunks have been inserted, so that each value is written to the database only once and never to the local file
+ * system. These values are stored using a second connection, and the row of a value that is still being stored is kept from
+ * expiring. Values stored either way can always be read, even after changing the chunk size.
+ * </p>
+ * <p>
+ * Values stored in a single row are {@link #setCompression(BinaryCompression) compressed} when so configured, in which case the
+ * content in the row starts with a {@link BinaryCompression#header(BinaryCompression.Codec, BinaryKey) header} identifying the
+ * codec. Values stored in chunks are never compressed, since their size and MIME type are not known until all of their chunks
+ * have been inserted.
+ * </p>
  */
 @ThreadSafe
 public class DatabaseBinaryStore extends AbstractBinaryStore {
     private static final boolean ALIVE = true;
     private static final boolean UNUSED = false;
+    private static final String UPLOAD_ID_PREFIX = "upload-";
+    private static final String COMPRESSED_FILE_PREFIX = "modeshape-binary-";
+
+    /**
+     * The number of chunks that are inserted into the database at once.
+     */
+    public static final int CHUNKS_PER_BATCH = 8;
 
     private FileSystemBinaryStore cache;
 
     /** JDBC utility for working with the database. */
     private Database database;
 
+    /**
+     * JDBC utility with its own connection, used only to store values in chunks so that the transaction completing each upload
+     * never includes the statements of other threads.
+     */
+    private Database uploads;
+
     // JDBC params
     private final String driverClass;
     private final String connectionURL;
@@ -107,6 +149,8 @@ public class DatabaseBinaryStore extends AbstractBinaryStore {
     private final String password;
     private final String datasourceJNDILocation;
 
+    private volatile int chunkSizeInBytes;
+
     /**
      * Create new store.
      * 
@@ -141,8 +185,31 @@ public class DatabaseBinaryStore extends AbstractBinaryStore {
         this.cache = TransientBinaryStore.get();
     }
 
+    /**
+     * Get the size of the chunks into which values are split when they are streamed into the database.
+     * 
+     * @return the size of the chunks in bytes, or 0 if values are stored in a single row
+     */
+    public int getChunkSizeInBytes() {
+        return chunkSizeInBytes;
+    }
+
+    /**
+     * Set the size of the chunks into which values are split when they are streamed into the database. This must be set before
+     * the store is {@link #start() started}.
+     * 
+     * @param chunkSizeInBytes the size of the chunks in bytes, or 0 (or a negative value) if values are to be stored in a single
+     *        row after being copied into a temporary file
+     */
+    public void setChunkSizeInBytes( int chunkSizeInBytes ) {
+        this.chunkSizeInBytes = Math.max(chunkSizeInBytes, 0);
+    }
+
     @Override
     public BinaryValue storeValue( InputStream stream ) throws BinaryStoreException {
+        if (chunkSizeInBytes > 0 && uploads != null) {
+            return storeValueInChunks(stream);
+        }
         // store into temporary file system store and get SHA-1
         BinaryValue temp = cache.storeValue(stream);
         try {
@@ -162,13 +229,30 @@ public class DatabaseBinaryStore extends AbstractBinaryStore {
             }
 
             // store content
+            File compressed = null;
+            InputStream content = null;
             try {
-                PreparedStatement sql = database.insertContentSQL(key, temp.getStream());
+                Codec codec = codecFor(temp);
+                if (codec != null) {
+                    compressed = File.createTempFile(COMPRESSED_FILE_PREFIX, codec.getExtension());
+                    if (compress(temp, codec, compressed)) {
+                        // The table has no column for the codec, so precede the compressed content with a header ...
+                        content = new SequenceInputStream(new ByteArrayInputStream(BinaryCompression.header(codec, key)),
+                                                          new FileInputStream(compressed));
+                    }
+                }
+                if (content == null) content = temp.getStream();
+                PreparedStatement sql = database.insertContentSQL(key, content);
                 Database.execute(sql); // doesn't produce a result set
 
                 return new StoredBinaryValue(this, key, temp.getSize());
+            } catch (BinaryStoreException e) {
+                throw e;
             } catch (Exception e) {
                 throw new BinaryStoreException(e);
+            } finally {
+                IoUtil.closeQuietly(content);
+                if (compressed != null) compressed.delete();
             }
         } finally {
             // remove content from temp store
@@ -176,20 +260,218 @@ public class DatabaseBinaryStore extends AbstractBinaryStore {
         }
     }
 
+    /**
+     * Store the content of the supplied stream in chunks, computing the key of the value while the chunks are inserted.
+     * 
+     * @param stream the stream with the content; may not be null
+     * @return the stored binary value; never null
+     * @throws BinaryStoreException if there is a problem storing the value
+     */
+    private BinaryValue storeValueInChunks( InputStream stream ) throws BinaryStoreException {
+        String uploadId = UPLOAD_ID_PREFIX + UUID.randomUUID().toString();
+        boolean uploaded = false;
+        try {
+            // Insert an unused row first, so that the chunks are garbage collected should this process fail ...
+            synchronized (uploads) {
+                Database.execute(uploads.insertUploadSQL(uploadId));
+            }
+            HashingInputStream hashingStream = SecureHash.createHashingStream(Algorithm.SHA_1, stream);
+            List<byte[]> batch = new ArrayList<byte[]>(CHUNKS_PER_BATCH);
+            int chunkNumber = 0;
+            long size = 0L;
+            byte[] chunk = null;
+            while ((chunk = readChunk(hashingStream, chunkSizeInBytes)) != null) {
+                size += chunk.length;
+                batch.add(chunk);
+                if (batch.size() == CHUNKS_PER_BATCH) chunkNumber = insertChunks(uploadId, chunkNumber, batch);
+            }
+            insertChunks(uploadId, chunkNumber, batch);
+            hashingStream.close();
+
+            BinaryKey key = new BinaryKey(hashingStream.getHash());
+            BinaryValue value = useUpload(uploadId, key, size);
+            uploaded = true;
+            return value;
+        } catch (IOException e) {
+            throw new BinaryStoreException(e);
+        } catch (NoSuchAlgorithmException e) {
+            throw new SystemFailureException(e);
+        } finally {
+            IoUtil.closeQuietly(stream);
+            if (!uploaded) removeUpload(uploadId);
+        }
+    }
+
+    private static byte[] readChunk( InputStream stream,
+                                     int chunkSize ) throws IOException {
+        byte[] chunk = new byte[chunkSize];
+        int length = 0;
+        int read = 0;
+        while (length < chunkSize && (read = stream.read(chunk, length, chunkSize - length)) != -1) {
+            length += read;
+        }
+        if (length == 0) return null;
+        if (length == chunkSize) return chunk;
+        byte[] result = new byte[length];
+        System.arraycopy(chunk, 0, result, 0, length);
+        return result;
+    }
+
+    private int insertChunks( String uploadId,
+                              int firstChunkNumber,
+                              List<byte[]> chunks ) throws BinaryStoreException {
+        if (chunks.isEmpty()) return firstChunkNumber;
+        int chunkNumber = firstChunkNumber;
+        synchronized (uploads) {
+            PreparedStatement sql = null;
+            try {
+                for (byte[] chunk : chunks) {
+                    sql = uploads.insertChunkSQL(uploadId, chunkNumber++, chunk);
+                    sql.addBatch();
+                }
+            } catch (SQLException e) {
+                throw new BinaryStoreException(e);
+            }
+            Database.executeBatch(sql); // doesn't produce a result set
+            // Don't let the row expire while the upload is still making progress ...
+            Database.executeUpdate(uploads.touchUploadSQL(uploadId));
+        }
+        chunks.clear();
+        return chunkNumber;
+    }
+
+    /**
+     * Give the value that was stored in chunks under the supplied temporary identifier its key, or remove it if the store already
+     * contains a value with the same key.
+     * 
+     * @param uploadId the temporary identifier of the value
+     * @param key the key of the value
+     * @param size the size of the value in bytes
+     * @return the stored binary value; never null
+     * @throws BinaryStoreException if there is a problem, including when the upload was removed as expired content
+     */
+    private BinaryValue useUpload( String uploadId,
+                                   BinaryKey key,
+                                   long size ) throws BinaryStoreException {
+        synchronized (uploads) {
+            Connection connection = uploads.getConnection();
+            boolean autoCommit = true;
+            boolean committed = false;
+            try {
+                autoCommit = connection.getAutoCommit();
+                if (autoCommit) connection.setAutoCommit(false);
+                if (this.contentExists(uploads, key, ALIVE)) {
+                    // check for duplicate content
+                    removeUpload(uploadId);
+                } else if (this.contentExists(uploads, key, UNUSED)) {
+                    // check unused content
+                    Database.execute(uploads.restoreContentSQL(key)); // doesn't produce a result set
+                    removeUpload(uploadId);
+                } else {
+                    if (Database.executeUpdate(uploads.renameContentSQL(uploadId, key)) == 0) {
+                        // The row (and so the chunks) were removed as expired content, so the value is incomplete ...
+                        throw new BinaryStoreException(JcrI18n.unableToFindBinaryValue.text(uploadId, connection.getCatalog()));
+                    }
+                    Database.execute(uploads.renameChunksSQL(uploadId, key)); // doesn't produce a result set
+                }
+                connection.commit();
+                committed = true;
+                return new StoredBinaryValue(this, key, size);
+            } catch (SQLException e) {
+                throw new BinaryStoreException(e);
+            } finally {
+                try {
+                    if (!committed) connection.rollback();
+                    if (autoCommit) connection.setAutoCommit(true);
+                } catch (SQLException e) {
+                    logger.debug(e, "Unable to complete the transaction storing the binary value '{0}'", key);
+                }
+            }
+        }
+    }
+
+    private void removeUpload( String uploadId ) {
+        try {
+            synchronized (uploads) {
+                Database.execute(uploads.removeChunksSQL(uploadId)); // doesn't produce a result set
+                Database.execute(uploads.removeContentSQL(uploadId)); // doesn't produce a result set
+            }
+        } catch (BinaryStoreException e) {
+            // The row and chunks will be removed with the other unused content ...
+            logger.debug(e, "Unable to remove the temporary binary value '{0}'", uploadId);
+        }
+    }
+
     @Override
     public InputStream getInputStream( BinaryKey key ) throws BinaryStoreException {
         ResultSet rs = Database.executeQuery(database.retrieveContentSQL(key, true));
         InputStream inputStream = Database.asStream(rs); // closes result set
+        if (inputStream == null && database.supportsChunks() && contentExists(key, ALIVE)) {
+            // The value was stored in chunks ...
+            return new ChunkInputStream(key);
+        }
         if (inputStream == null) {
-            try {
-                throw new BinaryStoreException(JcrI18n.unableToFindBinaryValue.text(key, database.getConnection().getCatalog()));
-            } catch (SQLException e) {
-                logger.debug(e, "Unable to retrieve db information");
-            }
+            throw valueNotFound(key);
+        }
+        try {
+            // Content that was compressed when it was stored starts with a header ...
+            return BinaryCompression.decompress(inputStream, key);
+        } catch (IOException e) {
+            IoUtil.closeQuietly(inputStream);
+            throw new BinaryStoreException(e);
+        }
+    }
+
+    @Override
+    public InputStream getInputStream( BinaryKey key,
+                                       long offset,
+                                       long length ) throws BinaryStoreException {
+        if (isCompressed(key)) {
+            // Compressed content can only be read from the start, so skip over the content before the offset ...
+            return super.getInputStream(key, offset, length);
+        }
+        ResultSet rs = Database.executeQuery(database.retrieveContentSQL(key, true));
+        InputStream inputStream = Database.asStream(rs, offset, length); // closes result set
+        if (inputStream == null && database.supportsChunks() && contentExists(key, ALIVE)) {
+            // The value was stored in chunks, so start reading at the chunk containing the offset ...
+            return new BoundedInputStream(new ChunkInputStream(key, offset), length);
+        }
+        if (inputStream == null) {
+            throw valueNotFound(key);
         }
         return inputStream;
     }
 
+    /**
+     * Determine whether the content of the value with the supplied key was compressed when it was stored, by reading just the
+     * header that would precede compressed content.
+     * 
+     * @param key the key of the value; may not be null
+     * @return true if the content is compressed, or false if it was stored as is (or in chunks) or there is no such value
+     * @throws BinaryStoreException if there is a problem reading the content
+     */
+    private boolean isCompressed( BinaryKey key ) throws BinaryStoreException {
+        ResultSet rs = Database.executeQuery(database.retrieveContentSQL(key, true));
+        InputStream start = Database.asStream(rs, 0L, BinaryCompression.HEADER_LENGTH); // closes result set
+        if (start == null) return false;
+        try {
+            byte[] header = IoUtil.readBytes(start);
+            return BinaryCompression.codecOf(header, header.length, key) != null;
+        } catch (IOException e) {
+            throw new BinaryStoreException(e);
+        }
+    }
+
+    private BinaryStoreException valueNotFound( BinaryKey key ) {
+        String catalog = null;
+        try {
+            catalog = database.getConnection().getCatalog();
+        } catch (SQLException e) {
+            logger.debug(e, "Unable to retrieve db information");
+        }
+        return new BinaryStoreException(JcrI18n.unableToFindBinaryValue.text(key, catalog));
+    }
+
     @Override
     public void markAsUnused( Iterable<BinaryKey> keys ) throws BinaryStoreException {
         for (BinaryKey key : keys) {
@@ -203,6 +485,10 @@ public class DatabaseBinaryStore extends AbstractBinaryStore {
                                               TimeUnit unit ) throws BinaryStoreException {
         // compute usage deadline (in past)
         long deadline = now() - unit.toMillis(minimumAge);
+        if (database.supportsChunks()) {
+            // remove the chunks before the rows that reference them
+            Database.execute(database.removeExpiredChunksSQL(deadline)); // doesn't produce a result set
+        }
         PreparedStatement sql = database.removeExpiredContentSQL(deadline);
         Database.execute(sql); // doesn't produce a result set
     }
@@ -250,21 +536,31 @@ public class DatabaseBinaryStore extends AbstractBinaryStore {
     public void start() {
         super.start();
         try {
-            Connection connection = datasourceJNDILocation != null ? DatabaseBinaryStore.connect(datasourceJNDILocation) : DatabaseBinaryStore.connect(driverClass,
-                                                                                                                                                       connectionURL,
-                                                                                                                                                       username,
-                                                                                                                                                       password);
-
             // Create the database helper that behaves differently based upon the type of database
-            database = new Database(connection);
+            database = new Database(connect());
 
             // Initialize the helper and database, creating the database table if it is missing ...
             database.initialize();
+
+            // Values stored in chunks can be read even when no longer storing in chunks ...
+            if (database.initializeChunks(chunkSizeInBytes > 0) && chunkSizeInBytes > 0) {
+                // Values are stored in chunks on a separate connection, since each upload completes in its own transaction ...
+                uploads = new Database(connect());
+                uploads.initialize();
+                uploads.initializeChunks(false);
+            }
         } catch (Exception e) {
             throw new RuntimeException(e);
         }
     }
 
+    private Connection connect() throws BinaryStoreException {
+        if (datasourceJNDILocation != null) {
+            return DatabaseBinaryStore.connect(datasourceJNDILocation);
+        }
+        return DatabaseBinaryStore.connect(driverClass, connectionURL, username, password);
+    }
+
     protected Database doCreateDatabase( Connection connection ) throws BinaryStoreException {
         return new Database(connection);
     }
@@ -289,6 +585,12 @@ public class DatabaseBinaryStore extends AbstractBinaryStore {
     @Override
     public void shutdown() {
         super.shutdown();
+        if (uploads != null) {
+            synchronized (uploads) {
+                uploads.disconnect();
+            }
+            uploads = null;
+        }
         if (database != null) {
             database.disconnect();
         }
@@ -304,6 +606,12 @@ public class DatabaseBinaryStore extends AbstractBinaryStore {
      */
     private boolean contentExists( BinaryKey key,
                                    boolean alive ) throws BinaryStoreException {
+        return contentExists(database, key, alive);
+    }
+
+    private boolean contentExists( Database database,
+                                   BinaryKey key,
+                                   boolean alive ) throws BinaryStoreException {
         ResultSet rs = null;
         boolean error = false;
         try {
@@ -390,4 +698,97 @@ public class DatabaseBinaryStore extends AbstractBinaryStore {
         }
     }
 
+    /**
+     * An input stream that reads the chunks of a value one at a time.
+     */
+    protected class ChunkInputStream extends InputStream {
+        private final BinaryKey key;
+        private long offset;
+        private byte[] chunk = new byte[0];
+        private int position;
+        private int nextChunkNumber;
+        private boolean done;
+
+        protected ChunkInputStream( BinaryKey key ) {
+            this(key, 0L);
+        }
+
+        protected ChunkInputStream( BinaryKey key,
+                                    long offset ) {
+            this.key = key;
+            this.offset = offset;
+        }
+
+        @Override
+        public int read() throws IOException {
+            if (!nextChunk()) return -1;
+            return chunk[position++] & 0xff;
+        }
+
+        @Override
+        public int read( byte[] b,
+                         int off,
+                         int len ) throws IOException {
+            if (len == 0) return 0;
+            if (!nextChunk()) return -1;
+            int n = Math.min(len, chunk.length - position);
+            System.arraycopy(chunk, position, b, off, n);
+            position += n;
+            return n;
+        }
+
+        @Override
+        public int available() {
+            return chunk.length - position;
+        }
+
+        private boolean nextChunk() throws IOException {
+            if (offset > 0L) {
+                skipToOffset();
+            }
+            while (position == chunk.length) {
+                if (done) return false;
+                byte[] next = readChunk(nextChunkNumber);
+                if (next == null) {
+                    done = true;
+                    return false;
+                }
+                chunk = next;
+                position = 0;
+                ++nextChunkNumber;
+            }
+            return true;
+        }
+
+        private void skipToOffset() throws IOException {
+            // All chunks but the last are as large as the first, so use it to find the chunk containing the offset ...
+            byte[] first = readChunk(0);
+            if (first == null || first.length == 0) {
+                done = true;
+            } else {
+                int chunkNumber = (int)(offset / first.length);
+                int chunkOffset = (int)(offset % first.length);
+                byte[] next = chunkNumber == 0 ? first : readChunk(chunkNumber);
+                if (next == null || chunkOffset >= next.length) {
+                    done = true;
+                } else {
+                    chunk = next;
+                    position = chunkOffset;
+                    nextChunkNumber = chunkNumber + 1;
+                }
+            }
+            offset = 0L;
+        }
+
+        private byte[] readChunk( int chunkNumber ) throws IOException {
+            try {
+                synchronized (database) {
+                    ResultSet rs = Database.executeQuery(database.retrieveChunkSQL(key, chunkNumber));
+                    return Database.asBytes(rs); // closes result set
+                }
+            } catch (BinaryStoreException e) {
+                throw new IOException(e);
+            }
+        }
+    }
 }
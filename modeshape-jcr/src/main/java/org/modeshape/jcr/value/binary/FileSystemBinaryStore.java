@@ -23,39 +23,76 @@
  */
 package org.modeshape.jcr.value.binary;
 
-import java.io.BufferedInputStream;
 import java.io.BufferedOutputStream;
+import java.io.BufferedReader;
 import java.io.File;
+import java.io.FileInputStream;
 import java.io.FileOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
-import java.io.OutputStream;
+import java.io.InputStreamReader;
 import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
 import java.nio.channels.Channels;
 import java.nio.channels.FileChannel;
+import java.nio.channels.WritableByteChannel;
+import java.nio.charset.Charset;
 import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
 import java.util.HashSet;
+import java.util.List;
 import java.util.Set;
+import java.util.concurrent.Callable;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.locks.Lock;
+import javax.jcr.RepositoryException;
 import org.modeshape.common.SystemFailureException;
+import org.modeshape.common.annotation.GuardedBy;
 import org.modeshape.common.annotation.ThreadSafe;
 import org.modeshape.common.logging.Logger;
 import org.modeshape.common.util.IoUtil;
+import org.modeshape.common.util.NamedThreadFactory;
 import org.modeshape.common.util.SecureHash;
 import org.modeshape.common.util.SecureHash.Algorithm;
 import org.modeshape.common.util.SecureHash.HashingInputStream;
 import org.modeshape.jcr.JcrI18n;
+import org.modeshape.jcr.api.monitor.ValueMetric;
 import org.modeshape.jcr.text.TextExtractorContext;
 import org.modeshape.jcr.value.BinaryKey;
 import org.modeshape.jcr.value.BinaryValue;
+import org.modeshape.jcr.value.binary.BinaryCompression.Codec;
 import org.modeshape.jcr.value.binary.FileLocks.WrappedLock;
 
 /**
  * A {@link BinaryStore} that stores files in a directory on the file system. The store does use file locks to prevent other
  * processes from concurrently writing the files, and it also uses an internal set of locks to prevent mulitple threads from
  * simultaneously writing to the persisted files.
+ * <p>
+ * New content is first written into a staging area within the store's directory, so that the staged file can always be
+ * atomically renamed into place once its SHA-1 hash is known. Content that does have to be copied is moved with
+ * {@link FileChannel#transferTo} rather than through buffers on the heap.
+ * </p>
+ * <p>
+ * Every file moved into the trash is first recorded in an append-only journal, in the order the files were trashed. The journal
+ * is split into segments that are deleted once all their entries have been processed, so it is never rewritten. Garbage
+ * collection therefore reads only the front of the journal up to the age cutoff, rather than walking the whole trash, and removes
+ * the expired files in parallel batches.
+ * </p>
+ * <p>
+ * The store can also be configured to {@link #setCompression(BinaryCompression) compress} the content it persists. A compressed
+ * value is kept in a file whose name is the SHA-1 of the original content followed by the codec's extension, and is decompressed
+ * as it is read, so the keys and sizes of the values do not change. Values that are stored before compression is enabled, or that
+ * do not compress well, remain in uncompressed files.
+ * </p>
  */
 @ThreadSafe
 public class FileSystemBinaryStore extends AbstractBinaryStore {
@@ -88,15 +125,40 @@ public class FileSystemBinaryStore extends AbstractBinaryStore {
     private static final String TEMP_FILE_PREFIX = "ms-fs-binstore";
     private static final String TEMP_FILE_SUFFIX = "hashing";
     protected static final String TRASH_DIRECTORY_NAME = "trash";
+    protected static final String STAGING_DIRECTORY_NAME = "staging";
+    private static final long STAGED_FILE_MINIMUM_AGE_IN_MILLIS = TimeUnit.DAYS.toMillis(1);
+    protected static final String TRASH_JOURNAL_DIRECTORY_NAME = "trash-journal";
+    private static final String TRASH_JOURNAL_SEGMENT_SUFFIX = ".journal";
+    private static final long MAXIMUM_JOURNAL_SEGMENT_SIZE = 1L << 20;
+    private static final Charset TRASH_JOURNAL_CHARSET = Charset.forName("US-ASCII");
+    private static final int MAXIMUM_JOURNAL_ENTRIES_PER_ROUND = 100000;
+    private static final int GARBAGE_COLLECTION_BATCH_SIZE = 1000;
+    private static final String GARBAGE_COLLECTION_POOL_NAME = "modeshape-binary-gc";
 
     private final File directory;
     private final File trash;
+    private final File staging;
+    private final File trashJournal;
+    private final Object trashJournalLock = new Object();
+    @GuardedBy( "trashJournalLock" )
+    private long lastJournalSegment = 0L;
+    @GuardedBy( "trashJournalLock" )
+    private long lastJournalTimestamp = 0L;
+    private final Object garbageCollectionLock = new Object();
+    @GuardedBy( "garbageCollectionLock" )
+    private long journalHeadSegment = -1L;
+    @GuardedBy( "garbageCollectionLock" )
+    private long journalHeadOffset = 0L;
+    @GuardedBy( "garbageCollectionLock" )
+    private ExecutorService garbageCollectionExecutor;
     private final NamedLocks locks = new NamedLocks();
     private volatile boolean initialized = false;
 
     protected FileSystemBinaryStore( File directory ) {
         this.directory = directory;
         this.trash = new File(this.directory, TRASH_DIRECTORY_NAME);
+        this.staging = new File(this.directory, STAGING_DIRECTORY_NAME);
+        this.trashJournal = new File(this.directory, TRASH_JOURNAL_DIRECTORY_NAME);
     }
 
     public File getDirectory() {
@@ -106,11 +168,12 @@ public class FileSystemBinaryStore extends AbstractBinaryStore {
     @Override
     public BinaryValue storeValue( InputStream stream ) throws BinaryStoreException {
         File tmpFile = null;
+        File compressedFile = null;
         BinaryValue value = null;
         try {
             // Write the contents to a temporary file, and while we do grab the SHA-1 hash and the length ...
             HashingInputStream hashingStream = SecureHash.createHashingStream(Algorithm.SHA_1, stream);
-            tmpFile = File.createTempFile(TEMP_FILE_PREFIX, TEMP_FILE_SUFFIX);
+            tmpFile = createStagingFile(TEMP_FILE_SUFFIX);
             IoUtil.write(hashingStream,
                          new BufferedOutputStream(new FileOutputStream(tmpFile)),
                          AbstractBinaryStore.MEDIUM_BUFFER_SIZE);
@@ -125,7 +188,8 @@ public class FileSystemBinaryStore extends AbstractBinaryStore {
                 tmpFile.delete();
                 value = new InMemoryBinaryValue(this, key, content);
             } else {
-                value = saveTempFileToStore(tmpFile, key, numberOfBytes);
+                compressedFile = compress(tmpFile, key, numberOfBytes);
+                value = saveTempFileToStore(tmpFile, compressedFile, key, numberOfBytes);
             }
 
             if (extractors() != null && !(value instanceof InMemoryBinaryValue)) {
@@ -138,20 +202,50 @@ public class FileSystemBinaryStore extends AbstractBinaryStore {
         } catch (NoSuchAlgorithmException e) {
             throw new SystemFailureException(e);
         } finally {
-            if (tmpFile != null) {
-                try {
-                    tmpFile.delete();
-                } catch (Throwable t) {
-                    Logger.getLogger(getClass()).warn(t,
-                                                      JcrI18n.unableToDeleteTemporaryFile,
-                                                      tmpFile.getAbsolutePath(),
-                                                      t.getMessage());
-                }
+            deleteTemporaryFile(tmpFile);
+            deleteTemporaryFile(compressedFile);
+        }
+    }
+
+    private void deleteTemporaryFile( File tmpFile ) {
+        if (tmpFile != null) {
+            try {
+                tmpFile.delete();
+            } catch (Throwable t) {
+                Logger.getLogger(getClass()).warn(t,
+                                                  JcrI18n.unableToDeleteTemporaryFile,
+                                                  tmpFile.getAbsolutePath(),
+                                                  t.getMessage());
             }
         }
     }
 
+    /**
+     * Compress the staged content into another staged file, if compression is enabled and the content is worth compressing.
+     * 
+     * @param tmpFile the staged file with the original content; may not be null
+     * @param key the key for the content; may not be null
+     * @param numberOfBytes the size of the original content
+     * @return the staged file with the compressed content, whose name ends with the codec's extension, or null if the original
+     *         content is to be stored as is
+     * @throws IOException if the staged file for the compressed content could not be created
+     * @throws BinaryStoreException if there is a problem determining the MIME type of the content or compressing it
+     */
+    private File compress( File tmpFile,
+                           BinaryKey key,
+                           long numberOfBytes ) throws IOException, BinaryStoreException {
+        if (getCompression() == null) return null;
+        // There's no point in compressing content that is already stored ...
+        if (existingFile(directory, key) != null) return null;
+        BinaryValue staged = new StagedBinaryValue(key, tmpFile, numberOfBytes);
+        Codec codec = codecFor(staged);
+        if (codec == null) return null;
+        File compressedFile = createStagingFile(TEMP_FILE_SUFFIX + codec.getExtension());
+        return compress(staged, codec, compressedFile) ? compressedFile : null;
+    }
+
     private BinaryValue saveTempFileToStore( File tmpFile,
+                                             File compressedFile,
                                              BinaryKey key,
                                              long numberOfBytes ) throws BinaryStoreException {
         // Now that we know the SHA-1, find the File object that corresponds to the existing persisted file ...
@@ -160,19 +254,25 @@ public class FileSystemBinaryStore extends AbstractBinaryStore {
         // And before we do anything, obtain the lock for the SHA1 ...
         final Lock lock = locks.writeLock(key.toString());
         try {
-            // Now that we know the SHA-1, see if there is already an existing file in storage ...
-            if (persistedFile.exists()) {
+            // Now that we know the SHA-1, see if there is already an existing (perhaps compressed) file in storage ...
+            if (existingFile(directory, key) != null) {
                 // There is an existing file, so go ahead and return a binary value that uses the existing file ...
                 return new StoredBinaryValue(this, key, numberOfBytes);
             }
 
             // Otherwise, we need to persist the data, which we'll do by moving our temporary file ...
-            moveFileExclusively(tmpFile, persistedFile);
+            if (compressedFile != null) {
+                Codec codec = Codec.forFileName(compressedFile.getName());
+                moveFileExclusively(compressedFile, compressedFile(persistedFile, codec));
+            } else {
+                moveFileExclusively(tmpFile, persistedFile);
+            }
 
         } finally {
             lock.unlock();
         }
-        return new StoredBinaryValue(this, key, persistedFile.length());
+        // The size of the value is always the size of the original content ...
+        return new StoredBinaryValue(this, key, numberOfBytes);
     }
 
     protected final void moveFileExclusively( File original,
@@ -196,24 +296,16 @@ public class FileSystemBinaryStore extends AbstractBinaryStore {
             // The move/rename didn't work, so we have to copy from the original ...
 
             // Create the new file and obtain an exclusive lock on it ...
-            final int bufferSize = AbstractBinaryStore.bestBufferSize(original.length());
             fileLock = FileLocks.get().writeLock(destination);
             try {
-                // Create a buffered output stream to the destination file ...
-                // (Note that the Channels.newOutputStream does not create a buffered stream)
                 FileChannel destinationChannel = fileLock.lockedFileChannel();
-                OutputStream output = Channels.newOutputStream(destinationChannel);
-                output = new BufferedOutputStream(output, bufferSize);
-
-                // Create an input stream to the original file ...
-                // (Note that the Channels.newInputStream does not create a buffered stream)
                 RandomAccessFile originalRaf = new RandomAccessFile(original, "r");
-                FileChannel originalChannel = originalRaf.getChannel();
-                InputStream input = Channels.newInputStream(originalChannel);
-                input = new BufferedInputStream(input, bufferSize);
-
-                // Copy the content ...
-                IoUtil.write(input, output, bufferSize);
+                try {
+                    // Copy the content, letting the OS move the bytes directly between the files ...
+                    transfer(originalRaf.getChannel(), destinationChannel);
+                } finally {
+                    originalRaf.close();
+                }
             } finally {
                 try {
                     fileLock.unlock();
@@ -226,13 +318,33 @@ public class FileSystemBinaryStore extends AbstractBinaryStore {
         }
     }
 
-    protected final File findFile( File directory,
-                                   BinaryKey key,
-                                   boolean createParentDirsIfMissing ) throws BinaryStoreException {
+    /**
+     * Create a new file in the staging area of this store, into which new content can be written before it is moved to its
+     * final location.
+     * 
+     * @param suffix the suffix of the file name; may not be null
+     * @return the new, empty file; never null
+     * @throws IOException if the file could not be created
+     * @throws BinaryStoreException if the storage could not be initialized
+     */
+    protected File createStagingFile( String suffix ) throws IOException, BinaryStoreException {
+        // Initialize the storage first, since that may clean out the directory containing the staging area ...
+        initializeStorageIfNeeded();
+        staging.mkdirs();
+        return File.createTempFile(TEMP_FILE_PREFIX, suffix, staging);
+    }
+
+    private void initializeStorageIfNeeded() throws BinaryStoreException {
         if (!initialized) {
             initializeStorage(directory);
             initialized = true;
         }
+    }
+
+    protected final File findFile( File directory,
+                                   BinaryKey key,
+                                   boolean createParentDirsIfMissing ) throws BinaryStoreException {
+        initializeStorageIfNeeded();
         String sha1 = key.toString();
         File first = new File(directory, sha1.substring(0, 2));
         File second = new File(first, sha1.substring(2, 4));
@@ -244,27 +356,107 @@ public class FileSystemBinaryStore extends AbstractBinaryStore {
         return file;
     }
 
+    private static File compressedFile( File file,
+                                        Codec codec ) {
+        return new File(file.getParentFile(), file.getName() + codec.getExtension());
+    }
+
+    /**
+     * Find the existing file for the supplied key, which is either the uncompressed file or one compressed with any of the
+     * codecs (since the codec may have changed since the file was stored).
+     * 
+     * @param directory the directory in which the file is stored; may not be null
+     * @param key the key for the binary value; may not be null
+     * @return the existing file, or null if there is none
+     * @throws BinaryStoreException if the storage could not be initialized
+     */
+    protected final File existingFile( File directory,
+                                       BinaryKey key ) throws BinaryStoreException {
+        File file = findFile(directory, key, false);
+        if (file.exists()) return file;
+        for (Codec codec : Codec.values()) {
+            File compressed = compressedFile(file, codec);
+            if (compressed.exists()) return compressed;
+        }
+        return null;
+    }
+
+    /**
+     * Get the key for the content in the supplied file.
+     * 
+     * @param file the file; may not be null
+     * @return the key, or null if the file is not one in which this store keeps binary content
+     */
+    private static BinaryKey keyOf( File file ) {
+        String name = file.getName();
+        Codec codec = Codec.forFileName(name);
+        if (codec != null) name = name.substring(0, name.length() - codec.getExtension().length());
+        return BinaryKey.isProperlyFormattedKey(name) ? new BinaryKey(name) : null;
+    }
+
     @Override
     public InputStream getInputStream( BinaryKey key ) throws BinaryStoreException {
+        File persistedFile = persistedFile(key);
+
+        // We now know that the file (which does exist) is not being written by this process, but another
+        // process might be actively writing to it. So use an InputStream that lazily obtains a shared lock
+        // when the stream is used, and always releases the lock (even in the case of exceptions).
+        InputStream stream = new SharedLockingInputStream(key, persistedFile, locks);
+        Codec codec = Codec.forFileName(persistedFile.getName());
+        if (codec == null) return stream;
+        try {
+            return codec.decompress(stream);
+        } catch (IOException e) {
+            IoUtil.closeQuietly(stream);
+            throw new BinaryStoreException(e);
+        }
+    }
+
+    @Override
+    public InputStream getInputStream( BinaryKey key,
+                                       long offset,
+                                       long length ) throws BinaryStoreException {
+        File persistedFile = persistedFile(key);
+        if (Codec.forFileName(persistedFile.getName()) != null) {
+            // Compressed content can only be read from the start, so skip over the content before the offset ...
+            return super.getInputStream(key, offset, length);
+        }
+        long size = persistedFile.length();
+        if (size == 0L && !persistedFile.exists()) {
+            // The file was removed after it was found, so fail just as reading the whole content would ...
+            throw new BinaryStoreException(JcrI18n.unableToFindBinaryValue.text(key, directory.getPath()));
+        }
+        if (offset >= size) return BoundedInputStream.empty();
+
+        // Use the same kind of locking stream as for the whole content, but have it start reading at the offset ...
+        InputStream stream = new SharedLockingInputStream(key, persistedFile, locks, offset);
+        return new BoundedInputStream(stream, Math.min(length, size - offset));
+    }
+
+    /**
+     * Find the existing file with the content for the supplied key, restoring it from the trash if needed.
+     * 
+     * @param key the key to the binary content; never null
+     * @return the file; never null
+     * @throws BinaryStoreException if there is no such file
+     */
+    private File persistedFile( BinaryKey key ) throws BinaryStoreException {
         // Now that we know the SHA-1, find the File object that corresponds to the existing persisted file ...
-        File persistedFile = findFile(directory, key, false);
-        if (!persistedFile.exists() || !persistedFile.canRead()) {
+        File persistedFile = existingFile(directory, key);
+        if (persistedFile == null || !persistedFile.canRead()) {
             // Try to find it in the trash ...
-            File trashedFile = findFile(trash, key, true);
-            if (!trashedFile.exists() || !trashedFile.canRead()) {
+            File trashedFile = existingFile(trash, key);
+            if (trashedFile == null || !trashedFile.canRead()) {
                 throw new BinaryStoreException(JcrI18n.unableToFindBinaryValue.text(key, directory.getPath()));
             }
-            // Otherwise, we found it in the trash, so move it from the trash into the regular storage ...
+            // Otherwise, we found it in the trash, so move it (with the same name) from the trash into the regular storage ...
+            persistedFile = new File(findFile(directory, key, false).getParentFile(), trashedFile.getName());
             moveFileExclusively(trashedFile, persistedFile);
 
             // Clean up any empty directories in the trash ...
             pruneEmptyDirectories(trash, trashedFile);
         }
-
-        // We now know that the file (which does exist) is not being written by this process, but another
-        // process might be actively writing to it. So use an InputStream that lazily obtains a shared lock
-        // when the stream is used, and always releases the lock (even in the case of exceptions).
-        return new SharedLockingInputStream(key, persistedFile, locks);
+        return persistedFile;
     }
 
     @SuppressWarnings( "unused" )
@@ -277,24 +469,45 @@ public class FileSystemBinaryStore extends AbstractBinaryStore {
         if (keys == null) {
             return;
         }
+        List<BinaryKey> unusedKeys = new ArrayList<BinaryKey>();
         for (BinaryKey key : keys) {
+            addIfStored(key, unusedKeys);
+            // the corresponding extracted text file is also unused
+            addIfStored(createKeyFromSourceWithSuffix(key, EXTRACTED_TEXT_SUFFIX), unusedKeys);
+            // as is the corresponding stored mime-type file
+            addIfStored(createKeyFromSourceWithSuffix(key, MIME_TYPE_SUFFIX), unusedKeys);
+        }
+        // Record the files in the journal before moving them, so that a failure can never leave a file in the trash that is
+        // not journaled. Garbage collection ignores the entries for files that are not then found in the trash ...
+        appendToTrashJournal(unusedKeys);
+        for (BinaryKey key : unusedKeys) {
             markAsUnused(key);
-            // mark the corresponding extracted text file as unused
-            markAsUnused(createKeyFromSourceWithSuffix(key, EXTRACTED_TEXT_SUFFIX));
-            // mark the corresponding stored mime-type file as unused
-            markAsUnused(createKeyFromSourceWithSuffix(key, MIME_TYPE_SUFFIX));
         }
     }
 
-    protected void markAsUnused( BinaryKey key ) throws BinaryStoreException {
+    private void addIfStored( BinaryKey key,
+                              List<BinaryKey> keys ) throws BinaryStoreException {
+        if (existingFile(directory, key) != null) {
+            keys.add(key);
+        }
+    }
+
+    /**
+     * Move the file for the supplied key into the trash.
+     * 
+     * @param key the key for the binary value; may not be null
+     * @return true if the file was moved into the trash, or false if there is no such file
+     * @throws BinaryStoreException if there is a problem moving the file
+     */
+    protected boolean markAsUnused( BinaryKey key ) throws BinaryStoreException {
         // Look for an existing file ...
-        File persisted = findFile(directory, key, false);
-        if (persisted == null || !persisted.exists()) {
-            return;
+        File persisted = existingFile(directory, key);
+        if (persisted == null) {
+            return false;
         }
 
-        // Find where it should live in the trash ...
-        File trashed = findFile(trash, key, true);
+        // Find where it should live in the trash, keeping the same name ...
+        File trashed = new File(findFile(trash, key, true).getParentFile(), persisted.getName());
 
         // Move the file into the trash ...
         moveFileExclusively(persisted, trashed);
@@ -304,6 +517,7 @@ public class FileSystemBinaryStore extends AbstractBinaryStore {
 
         // Clean up any empty directories in the trash ...
         pruneEmptyDirectories(directory, persisted);
+        return true;
     }
 
     protected void touch( File file ) throws BinaryStoreException {
@@ -367,54 +581,407 @@ public class FileSystemBinaryStore extends AbstractBinaryStore {
                                               TimeUnit unit ) throws BinaryStoreException {
         long oldestTimestamp = System.currentTimeMillis() - TimeUnit.MILLISECONDS.convert(minimumAge, unit);
         try {
-            removeFilesOlderThan(oldestTimestamp, trash);
+            RemovedFiles removed = new RemovedFiles();
+            synchronized (garbageCollectionLock) {
+                if (!trashJournal.exists()) {
+                    // The trash has never been journaled (e.g., it was created by an earlier version), so scan it once ...
+                    removeTrashedFilesAndCreateJournal(oldestTimestamp, removed);
+                } else {
+                    List<TrashJournalEntry> expired = null;
+                    do {
+                        expired = takeExpiredJournalEntries(oldestTimestamp);
+                        removeTrashedFiles(expired, oldestTimestamp, removed);
+                    } while (expired.size() == MAXIMUM_JOURNAL_ENTRIES_PER_ROUND);
+                }
+            }
+            if (removed.count > 0) {
+                getValueRecorder().increment(ValueMetric.BINARY_REMOVED_COUNT, removed.count);
+                getValueRecorder().increment(ValueMetric.BINARY_REMOVED_SIZE, removed.bytes);
+            }
+            // Staged files are still being written unless they have not been modified for a long time ...
+            long oldestStagedTimestamp = System.currentTimeMillis() - STAGED_FILE_MINIMUM_AGE_IN_MILLIS;
+            removeStagedFilesOlderThan(Math.min(oldestTimestamp, oldestStagedTimestamp));
         } catch (IOException e) {
             throw new BinaryStoreException(e);
         }
     }
 
+    @Override
+    public void shutdown() {
+        synchronized (garbageCollectionLock) {
+            if (garbageCollectionExecutor != null) {
+                garbageCollectionExecutor.shutdownNow();
+                garbageCollectionExecutor = null;
+            }
+        }
+    }
+
+    /**
+     * Append to the trash journal an entry for each of the supplied keys, all with the current time. Nothing is recorded until
+     * the journal has been {@link #removeTrashedFilesAndCreateJournal(long, RemovedFiles) created}, since until then the files in
+     * the trash are found by scanning the trash.
+     * 
+     * @param keys the keys of the files that are being moved into the trash; may not be null
+     * @throws BinaryStoreException if there is a problem writing to the journal
+     */
+    private void appendToTrashJournal( List<BinaryKey> keys ) throws BinaryStoreException {
+        if (keys.isEmpty()) return;
+        synchronized (trashJournalLock) {
+            if (!trashJournal.exists()) return;
+            try {
+                appendToTrashJournal(keys, currentJournalTimestamp());
+            } catch (IOException e) {
+                throw new BinaryStoreException(e);
+            }
+        }
+    }
+
+    /**
+     * Get the timestamp for entries appended to the journal now. Garbage collection stops reading the journal at the first entry
+     * that has not expired, so the timestamps never decrease even if the system clock is set back.
+     * 
+     * @return the timestamp
+     */
+    @GuardedBy( "trashJournalLock" )
+    private long currentJournalTimestamp() {
+        return Math.max(System.currentTimeMillis(), lastJournalTimestamp);
+    }
+
+    @GuardedBy( "trashJournalLock" )
+    private void appendToTrashJournal( List<BinaryKey> keys,
+                                       long timestamp ) throws IOException {
+        List<TrashJournalEntry> entries = new ArrayList<TrashJournalEntry>(keys.size());
+        for (BinaryKey key : keys) {
+            entries.add(new TrashJournalEntry(timestamp, key));
+        }
+        appendToTrashJournal(entries);
+    }
+
+    @GuardedBy( "trashJournalLock" )
+    private void appendToTrashJournal( Collection<TrashJournalEntry> entries ) throws IOException {
+        if (entries.isEmpty()) return;
+        StringBuilder sb = new StringBuilder(entries.size() * TrashJournalEntry.TYPICAL_LENGTH);
+        for (TrashJournalEntry entry : entries) {
+            entry.appendTo(sb);
+            lastJournalTimestamp = Math.max(lastJournalTimestamp, entry.timestamp);
+        }
+        ByteBuffer buffer = ByteBuffer.wrap(sb.toString().getBytes(TRASH_JOURNAL_CHARSET));
+
+        // Append to the newest segment, unless it is full ...
+        long[] segments = journalSegments();
+        long segment = Math.max(lastJournalSegment, segments.length == 0 ? 0L : segments[segments.length - 1]);
+        if (segment == 0L || !journalSegment(segment).exists()
+            || journalSegment(segment).length() >= MAXIMUM_JOURNAL_SEGMENT_SIZE) {
+            ++segment;
+        }
+        lastJournalSegment = segment;
+        WrappedLock fileLock = FileLocks.get().writeLock(journalSegment(segment));
+        try {
+            FileChannel channel = fileLock.lockedFileChannel();
+            long position = channel.size();
+            while (buffer.hasRemaining()) {
+                position += channel.write(buffer, position);
+            }
+        } finally {
+            fileLock.unlock();
+        }
+    }
+
+    /**
+     * Get the numbers of the segments of the trash journal, in the order they were written.
+     * 
+     * @return the segment numbers; never null
+     */
+    private long[] journalSegments() {
+        File[] files = trashJournal.listFiles();
+        if (files == null) return new long[0];
+        long[] segments = new long[files.length];
+        int count = 0;
+        for (File file : files) {
+            String name = file.getName();
+            if (!name.endsWith(TRASH_JOURNAL_SEGMENT_SUFFIX)) continue;
+            try {
+                segments[count++] = Long.parseLong(name.substring(0, name.length() - TRASH_JOURNAL_SEGMENT_SUFFIX.length()));
+            } catch (NumberFormatException e) {
+                --count; // not a segment
+            }
+        }
+        segments = Arrays.copyOf(segments, count);
+        Arrays.sort(segments);
+        return segments;
+    }
+
+    private File journalSegment( long segment ) {
+        return new File(trashJournal, String.format("%019d", segment) + TRASH_JOURNAL_SEGMENT_SUFFIX);
+    }
+
+    /**
+     * Take from the front of the trash journal the entries that were recorded before the supplied time. Because entries are
+     * appended in the order the files were moved into the trash, this reads only the expired entries and never the remainder of
+     * the journal. The journal is never rewritten: the position of the first remaining entry is kept in memory, and a segment is
+     * deleted once all of its entries have been taken. (After a restart, the entries before that position in the oldest segment
+     * are simply taken again, and ignored since their files are no longer in the trash.)
+     * 
+     * @param oldestTimestamp the time before which the entries must have been recorded to be removed
+     * @return the expired entries; never null and containing at most {@link #MAXIMUM_JOURNAL_ENTRIES_PER_ROUND} entries
+     * @throws IOException if there is a problem reading the journal
+     */
+    @GuardedBy( "garbageCollectionLock" )
+    private List<TrashJournalEntry> takeExpiredJournalEntries( long oldestTimestamp ) throws IOException {
+        List<TrashJournalEntry> expired = new ArrayList<TrashJournalEntry>();
+        long[] segments = null;
+        synchronized (trashJournalLock) {
+            segments = journalSegments();
+        }
+        for (long segment : segments) {
+            File file = journalSegment(segment);
+            long start = segment == journalHeadSegment ? journalHeadOffset : 0L;
+            journalHeadSegment = segment;
+            journalHeadOffset = readExpiredJournalEntries(file, start, oldestTimestamp, expired);
+            synchronized (trashJournalLock) {
+                // Stop at an entry that has not yet expired, or when enough entries were read for this round ...
+                if (file.length() > journalHeadOffset) return expired;
+                // Otherwise every entry in the segment has been taken, so it is deleted and its number is never used again ...
+                lastJournalSegment = Math.max(lastJournalSegment, segment);
+                file.delete();
+                journalHeadSegment = -1L;
+                journalHeadOffset = 0L;
+            }
+        }
+        return expired;
+    }
+
+    /**
+     * Read from the supplied journal segment the entries that were recorded before the supplied time.
+     * 
+     * @param segment the journal segment; may not be null
+     * @param start the offset of the first entry to be read
+     * @param oldestTimestamp the time before which the entries must have been recorded to be removed
+     * @param expired the list to which the expired entries are added; may not be null
+     * @return the offset of the first entry that was not read
+     * @throws IOException if there is a problem reading the segment
+     */
+    private long readExpiredJournalEntries( File segment,
+                                            long start,
+                                            long oldestTimestamp,
+                                            List<TrashJournalEntry> expired ) throws IOException {
+        if (!segment.exists()) return start; // already deleted by another process
+        // Take a shared lock so that no other process is part-way through appending an entry ...
+        WrappedLock fileLock = FileLocks.get().readLock(segment);
+        try {
+            FileChannel channel = fileLock.lockedFileChannel();
+            channel.position(start);
+            // Don't close the reader, since that would close the locked channel ...
+            BufferedReader reader = new BufferedReader(new InputStreamReader(Channels.newInputStream(channel),
+                                                                             TRASH_JOURNAL_CHARSET));
+            long position = start;
+            String line = null;
+            while ((line = reader.readLine()) != null) {
+                TrashJournalEntry entry = TrashJournalEntry.parse(line);
+                if (entry != null && entry.timestamp >= oldestTimestamp) break;
+                if (expired.size() == MAXIMUM_JOURNAL_ENTRIES_PER_ROUND) break;
+                // The entry has expired, or is a partially-written line that can be discarded ...
+                position += line.length() + 1;
+                if (entry != null) expired.add(entry);
+            }
+            return position;
+        } finally {
+            fileLock.unlock();
+        }
+    }
+
+    /**
+     * Remove the trashed files for the supplied journal entries, splitting the work into batches that are removed in parallel.
+     * Files that could not be removed yet, because they are locked by another process or were moved into the trash after the
+     * entry was recorded, are recorded again at the end of the journal with the current time, so that a later garbage collection
+     * retries them without breaking the time order of the journal.
+     * 
+     * @param entries the expired journal entries; may not be null
+     * @param oldestTimestamp the time before which the files must have last been modified to be removed
+     * @param removed the tally of removed files and reclaimed bytes; may not be null
+     * @throws BinaryStoreException if there is a problem removing the files
+     * @throws IOException if there is a problem recording the remaining files in the journal
+     */
+    @GuardedBy( "garbageCollectionLock" )
+    private void removeTrashedFiles( List<TrashJournalEntry> entries,
+                                     long oldestTimestamp,
+                                     RemovedFiles removed ) throws BinaryStoreException, IOException {
+        if (entries.isEmpty()) return;
+        List<TrashRemoval> batches = new ArrayList<TrashRemoval>();
+        for (int start = 0; start < entries.size(); start += GARBAGE_COLLECTION_BATCH_SIZE) {
+            int end = Math.min(start + GARBAGE_COLLECTION_BATCH_SIZE, entries.size());
+            batches.add(new TrashRemoval(entries.subList(start, end), oldestTimestamp));
+        }
+        if (batches.size() == 1) {
+            batches.get(0).call();
+        } else {
+            try {
+                for (Future<TrashRemoval> future : garbageCollectionExecutor().invokeAll(batches)) {
+                    future.get();
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new BinaryStoreException(e);
+            } catch (ExecutionException e) {
+                Throwable cause = e.getCause();
+                if (cause instanceof BinaryStoreException) throw (BinaryStoreException)cause;
+                if (cause instanceof IOException) throw (IOException)cause;
+                throw new BinaryStoreException(cause);
+            }
+        }
+
+        List<BinaryKey> remaining = new ArrayList<BinaryKey>();
+        for (TrashRemoval batch : batches) {
+            removed.add(batch.removed);
+            remaining.addAll(batch.remaining);
+        }
+        if (!remaining.isEmpty()) {
+            synchronized (trashJournalLock) {
+                appendToTrashJournal(remaining, currentJournalTimestamp());
+            }
+        }
+    }
+
+    /**
+     * Get the executor used to remove batches of trashed files in parallel. Its threads are created only when needed and stop
+     * when they are idle, so a store that is rarely collected does not keep them alive.
+     * 
+     * @return the executor; never null
+     */
+    @GuardedBy( "garbageCollectionLock" )
+    private ExecutorService garbageCollectionExecutor() {
+        if (garbageCollectionExecutor == null) {
+            int threads = Runtime.getRuntime().availableProcessors();
+            ThreadPoolExecutor executor = new ThreadPoolExecutor(threads, threads, 60L, TimeUnit.SECONDS,
+                                                                 new LinkedBlockingQueue<Runnable>(),
+                                                                 new NamedThreadFactory(GARBAGE_COLLECTION_POOL_NAME));
+            executor.allowCoreThreadTimeOut(true);
+            garbageCollectionExecutor = executor;
+        }
+        return garbageCollectionExecutor;
+    }
+
+    /**
+     * Remove the trashed file for the supplied key if it has been in the trash since before the supplied time.
+     * 
+     * @param key the key of the binary value; may not be null
+     * @param oldestTimestamp the time before which the file must have last been modified to be removed
+     * @param removed the tally of removed files and reclaimed bytes; may not be null
+     * @return false if the file is still in the trash and was not removed, or true otherwise
+     * @throws BinaryStoreException if there is a problem finding the file
+     * @throws IOException if there is a problem locking the file
+     */
+    private boolean removeTrashedFile( BinaryKey key,
+                                       long oldestTimestamp,
+                                       RemovedFiles removed ) throws BinaryStoreException, IOException {
+        File file = findFile(trash, key, false);
+        boolean removedAll = removeTrashedFile(file, oldestTimestamp, removed);
+        for (Codec codec : Codec.values()) {
+            removedAll &= removeTrashedFile(compressedFile(file, codec), oldestTimestamp, removed);
+        }
+        return removedAll;
+    }
+
+    private boolean removeTrashedFile( File file,
+                                       long oldestTimestamp,
+                                       RemovedFiles removed ) throws IOException {
+        // The file may never have been moved into the trash, or may have been restored from the trash since ...
+        if (!removeFileOlderThan(file, oldestTimestamp, removed)) {
+            return !file.exists();
+        }
+        pruneEmptyDirectories(trash, file.getParentFile());
+        return true;
+    }
+
+    private boolean removeFileOlderThan( File file,
+                                         long oldestTimestamp,
+                                         RemovedFiles removed ) throws IOException {
+        if (!file.isFile() || file.lastModified() >= oldestTimestamp) return false;
+        long length = file.length();
+        boolean deleted = false;
+        if (LOCK_WHEN_REMOVING_UNUSED_FILES) {
+            // Get a write lock on the file we want to delete ...
+            WrappedLock fileLock = FileLocks.get().tryWriteLock(file);
+            if (fileLock != null) {
+                try {
+                    // And then delete the file ...
+                    deleted = file.delete();
+                } finally {
+                    fileLock.unlock();
+                }
+            }
+            // otherwise it was locked, so just skip the file and we'll get it next time round
+        } else {
+            deleted = file.delete();
+        }
+        if (deleted) {
+            removed.add(1L, length);
+        }
+        return deleted;
+    }
+
+    /**
+     * Remove the old files by scanning the whole trash, and then create the trash journal with entries for the files that remain.
+     * This is done only once for each store, since afterward every file moved into the trash is recorded in the journal.
+     * 
+     * @param oldestTimestamp the time before which the files must have last been modified to be removed
+     * @param removed the tally of removed files and reclaimed bytes; may not be null
+     * @throws IOException if there is a problem removing the files or creating the journal
+     */
+    private void removeTrashedFilesAndCreateJournal( long oldestTimestamp,
+                                                     RemovedFiles removed ) throws IOException {
+        synchronized (trashJournalLock) {
+            List<TrashJournalEntry> remaining = new ArrayList<TrashJournalEntry>();
+            removeFilesOlderThan(oldestTimestamp, trash, removed, remaining);
+            Collections.sort(remaining);
+            trashJournal.mkdirs();
+            appendToTrashJournal(remaining);
+        }
+    }
+
     private void removeFilesOlderThan( long oldestTimestamp,
-                                       File parentDirectory ) throws IOException {
+                                       File parentDirectory,
+                                       RemovedFiles removed,
+                                       List<TrashJournalEntry> remaining ) throws IOException {
         if (parentDirectory == null || !parentDirectory.exists() || parentDirectory.isFile()) {
             return;
         }
-        boolean removed = false;
+        boolean removedAny = false;
         for (File fileOrDir : parentDirectory.listFiles()) {
             if (fileOrDir == null || !fileOrDir.exists()) {
                 continue;
             }
             // The file or directory should exist at this point (at least for now) ...
             if (fileOrDir.isDirectory()) {
-                removeFilesOlderThan(oldestTimestamp, fileOrDir);
+                removeFilesOlderThan(oldestTimestamp, fileOrDir, removed, remaining);
             } else if (fileOrDir.isFile()) {
                 File file = fileOrDir;
-                if (file.lastModified() < oldestTimestamp) {
-                    if (LOCK_WHEN_REMOVING_UNUSED_FILES) {
-                        // Get a write lock on the file we want to delete ...
-                        WrappedLock fileLock = FileLocks.get().tryWriteLock(file);
-                        if (fileLock != null) {
-                            try {
-                                // And then delete the file ...
-                                file.delete();
-                                removed = true;
-                            } finally {
-                                fileLock.unlock();
-                            }
-                        }
-                        // otherwise it was locked, so just skip the file and we'll get it next time round
-                    } else {
-                        if (file.delete()) {
-                            removed = true;
-                        }
-                    }
+                if (removeFileOlderThan(file, oldestTimestamp, removed)) {
+                    removedAny = true;
+                } else {
+                    BinaryKey key = keyOf(file);
+                    if (key != null) remaining.add(new TrashJournalEntry(file.lastModified(), key));
                 }
             }
         }
-        if (removed) {
+        if (removedAny) {
             pruneEmptyDirectories(trash, parentDirectory);
         }
     }
 
+    /**
+     * Remove the files left in the staging area by processes that failed while storing content.
+     * 
+     * @param oldestTimestamp the time before which the files must have last been modified to be removed
+     */
+    private void removeStagedFilesOlderThan( long oldestTimestamp ) {
+        File[] stagedFiles = staging.listFiles();
+        if (stagedFiles == null) return;
+        for (File file : stagedFiles) {
+            if (file.isFile() && file.lastModified() < oldestTimestamp) file.delete();
+        }
+    }
+
     @Override
     public String getExtractedText( BinaryValue source ) throws BinaryStoreException {
         if (!binaryValueExists(source)) {
@@ -451,9 +1018,9 @@ public class FileSystemBinaryStore extends AbstractBinaryStore {
                                    BinaryKey key ) throws BinaryStoreException {
         File tmpFile = null;
         try {
-            tmpFile = File.createTempFile(TEMP_FILE_PREFIX, TEMP_FILE_SUFFIX + EXTRACTED_TEXT_SUFFIX);
+            tmpFile = createStagingFile(TEMP_FILE_SUFFIX + EXTRACTED_TEXT_SUFFIX);
             IoUtil.write(string, new BufferedOutputStream(new FileOutputStream(tmpFile)));
-            saveTempFileToStore(tmpFile, key, tmpFile.length());
+            saveTempFileToStore(tmpFile, null, key, tmpFile.length());
         } catch (IOException e) {
             throw new BinaryStoreException(e);
         } finally {
@@ -480,8 +1047,8 @@ public class FileSystemBinaryStore extends AbstractBinaryStore {
     }
 
     private boolean binaryValueExists( BinaryValue binaryValue ) throws BinaryStoreException {
-        File file = findFile(directory, binaryValue.getKey(), false);
-        return file.exists() && file.canRead();
+        File file = existingFile(directory, binaryValue.getKey());
+        return file != null && file.canRead();
     }
 
     private BinaryKey createKeyFromSourceWithSuffix( BinaryKey sourceKey,
@@ -506,11 +1073,9 @@ public class FileSystemBinaryStore extends AbstractBinaryStore {
                                 if (isReadableDir(third)) {
                                     for (File file : third.listFiles()) {
                                         if (!file.canRead() || !file.isFile()) continue;
-                                        String filename = file.getName();
-                                        // SHA-1s should be 40 characters ...
-                                        if (filename.length() != 40) continue;
-                                        BinaryKey key = new BinaryKey(file.getName());
-                                        keys.add(key);
+                                        // The file names are SHA-1s, perhaps followed by the extension of a codec ...
+                                        BinaryKey key = keyOf(file);
+                                        if (key != null) keys.add(key);
                                     }
                                 }
                             }
@@ -523,6 +1088,137 @@ public class FileSystemBinaryStore extends AbstractBinaryStore {
     }
 
     private boolean isReadableDir( File file ) {
-        return directory != null && directory.isDirectory() && directory.canRead();
+        return file != null && file.isDirectory() && file.canRead();
+    }
+
+    /**
+     * A view of the staged content of a value that is being stored, used only to determine whether the content is worth
+     * compressing.
+     */
+    private static final class StagedBinaryValue extends AbstractBinary {
+        private static final long serialVersionUID = 1L;
+
+        private final File file;
+        private final long size;
+
+        protected StagedBinaryValue( BinaryKey key,
+                                     File file,
+                                     long size ) {
+            super(key);
+            this.file = file;
+            this.size = size;
+        }
+
+        @Override
+        public long getSize() {
+            return size;
+        }
+
+        @Override
+        public InputStream getStream() throws RepositoryException {
+            try {
+                return new FileInputStream(file);
+            } catch (IOException e) {
+                throw new RepositoryException(e);
+            }
+        }
+
+        @Override
+        public String getMimeType() {
+            return null;
+        }
+
+        @Override
+        public String getMimeType( String name ) {
+            return null;
+        }
+    }
+
+    /**
+     * The number of files removed from the trash and the number of bytes they occupied.
+     */
+    private static final class RemovedFiles {
+        protected long count;
+        protected long bytes;
+
+        protected synchronized void add( long count,
+                                         long bytes ) {
+            this.count += count;
+            this.bytes += bytes;
+        }
+
+        protected void add( RemovedFiles other ) {
+            add(other.count, other.bytes);
+        }
+    }
+
+    /**
+     * An entry in the trash journal, recording when the file for a binary value was moved into the trash. Each entry is written
+     * as a single line containing the timestamp and the key separated by a space.
+     */
+    private static final class TrashJournalEntry implements Comparable<TrashJournalEntry> {
+        protected static final int TYPICAL_LENGTH = 55;
+
+        protected final long timestamp;
+        protected final BinaryKey key;
+
+        protected TrashJournalEntry( long timestamp,
+                                     BinaryKey key ) {
+            this.timestamp = timestamp;
+            this.key = key;
+        }
+
+        /**
+         * Parse the entry from a line in the journal.
+         * 
+         * @param line the line; may not be null
+         * @return the entry, or null if the line is not a complete entry
+         */
+        protected static TrashJournalEntry parse( String line ) {
+            int separator = line.indexOf(' ');
+            if (separator < 1) return null;
+            String key = line.substring(separator + 1);
+            if (!BinaryKey.isProperlyFormattedKey(key)) return null;
+            try {
+                return new TrashJournalEntry(Long.parseLong(line.substring(0, separator)), new BinaryKey(key));
+            } catch (NumberFormatException e) {
+                return null;
+            }
+        }
+
+        protected void appendTo( StringBuilder sb ) {
+            sb.append(timestamp).append(' ').append(key).append('\n');
+        }
+
+        @Override
+        public int compareTo( TrashJournalEntry that ) {
+            return this.timestamp < that.timestamp ? -1 : (this.timestamp == that.timestamp ? 0 : 1);
+        }
+    }
+
+    /**
+     * A batch of expired journal entries whose trashed files are to be removed.
+     */
+    private final class TrashRemoval implements Callable<TrashRemoval> {
+        protected final List<TrashJournalEntry> entries;
+        protected final long oldestTimestamp;
+        protected final RemovedFiles removed = new RemovedFiles();
+        protected final List<BinaryKey> remaining = new ArrayList<BinaryKey>();
+
+        protected TrashRemoval( List<TrashJournalEntry> entries,
+                                long oldestTimestamp ) {
+            this.entries = entries;
+            this.oldestTimestamp = oldestTimestamp;
+        }
+
+        @Override
+        public TrashRemoval call() throws BinaryStoreException, IOException {
+            for (TrashJournalEntry entry : entries) {
+                if (!removeTrashedFile(entry.key, oldestTimestamp, removed)) {
+                    remaining.add(entry.key);
+                }
+            }
+            return this;
+        }
     }
 }
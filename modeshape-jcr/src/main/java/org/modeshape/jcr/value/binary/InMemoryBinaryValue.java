@@ -77,6 +77,15 @@ public class InMemoryBinaryValue extends AbstractBinary {
         return new ByteArrayInputStream(this.bytes);
     }
 
+    @Override
+    public InputStream getStream( long offset,
+                                  long length ) {
+        CheckArg.isNonNegative(offset, "offset");
+        CheckArg.isNonNegative(length, "length");
+        if (offset >= bytes.length) return BoundedInputStream.empty();
+        return new ByteArrayInputStream(this.bytes, (int)offset, (int)Math.min(length, bytes.length - offset));
+    }
+
     @Override
     public String getMimeType() throws IOException, RepositoryException {
         if (mimeType == null) {
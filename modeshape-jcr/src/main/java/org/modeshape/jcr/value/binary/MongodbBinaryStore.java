@@ -35,6 +35,10 @@ import org.modeshape.common.util.StringUtil;
 import org.modeshape.jcr.JcrI18n;
 import org.modeshape.jcr.value.BinaryKey;
 import org.modeshape.jcr.value.BinaryValue;
+import org.modeshape.jcr.value.binary.BinaryCompression.Codec;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
 import java.io.InputStream;
 import java.io.OutputStream;
 import java.net.UnknownHostException;
@@ -46,7 +50,8 @@ import java.util.Set;
 import java.util.concurrent.TimeUnit;
 
 /**
- * A {@link BinaryStore} implementation that uses a MongoDB for persisting binary values.
+ * A {@link BinaryStore} implementation that uses a MongoDB for persisting binary values. When so configured, the content is
+ * {@link #setCompression(BinaryCompression) compressed}, and the codec is recorded in the header of the value's collection.
  * 
  * @author kulikov
  */
@@ -63,11 +68,14 @@ public class MongodbBinaryStore extends AbstractBinaryStore {
     private static final String FIELD_UNUSED = "unused";
     private static final String FIELD_CHUNK_SIZE = "chunk-size";
     private static final String FIELD_CHUNK_BUFFER = "chunk-buffer";
+    private static final String FIELD_CODEC = "codec";
 
     // chunk types
     private static final String CHUNK_TYPE_HEADER = "header";
     private static final String CHUNK_TYPE_DATA_CHUNK = "data";
 
+    private static final String COMPRESSED_FILE_PREFIX = "modeshape-binary-";
+
     // keys for chunks(header or data)
     protected static final BasicDBObject HEADER = new BasicDBObject().append(FIELD_CHUNK_TYPE, CHUNK_TYPE_HEADER);
     protected static final BasicDBObject DATA_CHUNK = new BasicDBObject().append(FIELD_CHUNK_TYPE, CHUNK_TYPE_DATA_CHUNK);
@@ -217,12 +225,22 @@ public class MongodbBinaryStore extends AbstractBinaryStore {
             }
 
             // store content
-            DBCollection content = db.getCollection(key.toString());
-            ChunkOutputStream dbStream = new ChunkOutputStream(content);
+            File compressed = null;
             try {
-                IoUtil.write(temp.getStream(), dbStream);
+                Codec codec = codecFor(temp);
+                if (codec != null) {
+                    compressed = File.createTempFile(COMPRESSED_FILE_PREFIX, codec.getExtension());
+                    if (!compress(temp, codec, compressed)) codec = null;
+                }
+                DBCollection content = db.getCollection(key.toString());
+                ChunkOutputStream dbStream = new ChunkOutputStream(content, codec);
+                IoUtil.write(codec != null ? new FileInputStream(compressed) : temp.getStream(), dbStream);
+            } catch (BinaryStoreException e) {
+                throw e;
             } catch (Exception e) {
                 throw new BinaryStoreException(e);
+            } finally {
+                if (compressed != null) compressed.delete();
             }
 
             return new StoredBinaryValue(this, key, temp.getSize());
@@ -237,7 +255,32 @@ public class MongodbBinaryStore extends AbstractBinaryStore {
         if (!db.collectionExists(key.toString())) {
             throw new BinaryStoreException(JcrI18n.unableToFindBinaryValue.text(key, db.getName()));
         }
-        return new ChunkInputStream(db.getCollection(key.toString()));
+        DBCollection content = db.getCollection(key.toString());
+        InputStream stream = new ChunkInputStream(content);
+        Codec codec = codecOf(content);
+        if (codec == null) return stream;
+        try {
+            return codec.decompress(stream);
+        } catch (IOException e) {
+            IoUtil.closeQuietly(stream);
+            throw new BinaryStoreException(e);
+        }
+    }
+
+    @Override
+    public InputStream getInputStream( BinaryKey key,
+                                       long offset,
+                                       long length ) throws BinaryStoreException {
+        if (!db.collectionExists(key.toString())) {
+            throw new BinaryStoreException(JcrI18n.unableToFindBinaryValue.text(key, db.getName()));
+        }
+        DBCollection content = db.getCollection(key.toString());
+        if (codecOf(content) != null) {
+            // Compressed content can only be read from the start, so skip over the content before the offset ...
+            return super.getInputStream(key, offset, length);
+        }
+        // Start reading at the chunk containing the offset ...
+        return new BoundedInputStream(new ChunkInputStream(content, offset), length);
     }
 
     @Override
@@ -381,6 +424,7 @@ public class MongodbBinaryStore extends AbstractBinaryStore {
         newHeader.put(FIELD_EXTRACTED_TEXT, header.get(FIELD_EXTRACTED_TEXT));
         newHeader.put(FIELD_UNUSED, header.get(FIELD_UNUSED));
         newHeader.put(FIELD_UNUSED_SINCE, header.get(FIELD_UNUSED_SINCE));
+        newHeader.put(FIELD_CODEC, header.get(FIELD_CODEC));
 
         // modify specified field and update record
         newHeader.put(fieldName, value);
@@ -399,6 +443,16 @@ public class MongodbBinaryStore extends AbstractBinaryStore {
         return content.findOne(HEADER).get(fieldName);
     }
 
+    /**
+     * Gets the codec with which the content was compressed.
+     * 
+     * @param content stored content
+     * @return the codec, or null if the content is not compressed
+     */
+    private Codec codecOf( DBCollection content ) {
+        return Codec.forName((String)getAttribute(content, FIELD_CODEC));
+    }
+
     /**
      * Checks status of unused content.
      * 
@@ -431,8 +485,10 @@ public class MongodbBinaryStore extends AbstractBinaryStore {
          * Creates new stream.
          * 
          * @param content stored content
+         * @param codec the codec with which the written content is compressed, or null if it is not compressed
          */
-        public ChunkOutputStream( DBCollection content ) {
+        public ChunkOutputStream( DBCollection content,
+                                  Codec codec ) {
             this.content = content;
 
             // start from header
@@ -440,6 +496,7 @@ public class MongodbBinaryStore extends AbstractBinaryStore {
             BasicDBObject header = new BasicDBObject();
             header.put(FIELD_CHUNK_TYPE, CHUNK_TYPE_HEADER);
             header.put(FIELD_UNUSED, false);
+            if (codec != null) header.put(FIELD_CODEC, codec.name());
 
             // insert into database
             this.content.insert(header);
@@ -493,8 +550,37 @@ public class MongodbBinaryStore extends AbstractBinaryStore {
         private int size = 0;
 
         public ChunkInputStream( DBCollection chunks ) {
+            this(chunks, 0L);
+        }
+
+        public ChunkInputStream( DBCollection chunks,
+                                 long start ) {
             // execute query for selecting data chunks only
             cursor = chunks.find(DATA_CHUNK);
+            if (start > 0L && cursor.hasNext()) {
+                // all chunks but the last are as large as the first, so use it to find the chunk containing the start
+                nextChunk();
+                if (start >= size && size > 0) {
+                    int chunkNumber = (int)(start / size);
+                    int chunkOffset = (int)(start % size);
+                    cursor.close();
+                    cursor = chunks.find(DATA_CHUNK).skip(chunkNumber);
+                    size = 0;
+                    if (cursor.hasNext()) {
+                        nextChunk();
+                    }
+                    offset = Math.min(chunkOffset, size);
+                } else {
+                    offset = (int)Math.min(start, size);
+                }
+            }
+        }
+
+        private void nextChunk() {
+            chunk = cursor.next();
+            size = (Integer)chunk.get(FIELD_CHUNK_SIZE);
+            buffer = (byte[])chunk.get(FIELD_CHUNK_BUFFER);
+            offset = 0;
         }
 
         @Override
@@ -507,10 +593,7 @@ public class MongodbBinaryStore extends AbstractBinaryStore {
 
             // try to pick up next chunk
             if (cursor.hasNext()) {
-                chunk = cursor.next();
-                size = (Integer)chunk.get(FIELD_CHUNK_SIZE);
-                buffer = (byte[])chunk.get(FIELD_CHUNK_BUFFER);
-                offset = 0;
+                nextChunk();
             }
 
             // start reading from new chunk
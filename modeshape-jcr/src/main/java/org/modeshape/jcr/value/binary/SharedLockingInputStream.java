@@ -44,6 +44,7 @@ public final class SharedLockingInputStream extends InputStream {
     protected final BinaryKey key;
     protected final File file;
     protected final NamedLocks lockManager;
+    protected final long position;
     protected InputStream stream;
     protected Lock processLock;
     protected FileLocks.WrappedLock fileLock;
@@ -60,11 +61,30 @@ public final class SharedLockingInputStream extends InputStream {
     public SharedLockingInputStream( BinaryKey key,
                                      File file,
                                      NamedLocks lockManager ) {
+        this(key, file, lockManager, 0L);
+    }
+
+    /**
+     * Create a self-closing, (shared) locking {@link InputStream} to read the content of the supplied {@link File file}, starting
+     * at the given position within the file.
+     * 
+     * @param key the binary key; may not be null
+     * @param file the file that is to be read; may not be null
+     * @param lockManager the manager of the locks, from which a read lock is to be obtained; may be null if no read lock is
+     *        needed
+     * @param position the position within the file of the first byte that is to be read; may not be negative
+     */
+    public SharedLockingInputStream( BinaryKey key,
+                                     File file,
+                                     NamedLocks lockManager,
+                                     long position ) {
         assert key != null;
         assert file != null;
+        assert position >= 0L;
         this.key = key;
         this.file = file;
         this.lockManager = lockManager;
+        this.position = position;
     }
 
     protected void open() throws IOException {
@@ -80,10 +100,14 @@ public final class SharedLockingInputStream extends InputStream {
                     // Also get a shared file lock to prevent other processes from modifying the file ...
                     SharedLockingInputStream.this.fileLock = FileLocks.get().readLock(file);
 
-                    // Now create a buffered stream ...
-                    SharedLockingInputStream.this.stream = new BufferedInputStream(
-                                                                                   new FileInputStream(file),
-                                                                                   AbstractBinaryStore.bestBufferSize(file.length()));
+                    // Now create a buffered stream, positioned directly at the first byte that is to be read ...
+                    FileInputStream fileStream = new FileInputStream(file);
+                    if (position > 0L) {
+                        fileStream.getChannel().position(position);
+                    }
+                    long remaining = Math.max(file.length() - position, 0L);
+                    SharedLockingInputStream.this.stream = new BufferedInputStream(fileStream,
+                                                                                   AbstractBinaryStore.bestBufferSize(remaining));
                     SharedLockingInputStream.this.eofReached = false;
                 }
                 return null;
@@ -25,8 +25,11 @@ package org.modeshape.jcr.value.binary;
 
 import java.io.IOException;
 import java.io.InputStream;
+import java.util.concurrent.TimeUnit;
 import javax.jcr.RepositoryException;
 import org.modeshape.common.annotation.Immutable;
+import org.modeshape.common.util.CheckArg;
+import org.modeshape.jcr.api.monitor.DurationMetric;
 import org.modeshape.jcr.value.BinaryValue;
 import org.modeshape.jcr.value.BinaryKey;
 
@@ -59,8 +62,26 @@ public class StoredBinaryValue extends AbstractBinary {
 
     @Override
     public InputStream getStream() throws BinaryStoreException {
-        // Delegate to the store ...
-        return store.getInputStream(getKey());
+        // Delegate to the store, recording how long it takes to open the stream ...
+        long start = System.nanoTime();
+        InputStream stream = store.getInputStream(getKey());
+        store.getDurationRecorder().recordDuration(DurationMetric.BINARY_READ_TIME, System.nanoTime() - start,
+                                                   TimeUnit.NANOSECONDS);
+        return stream;
+    }
+
+    @Override
+    public InputStream getStream( long offset,
+                                  long length ) throws RepositoryException {
+        CheckArg.isNonNegative(offset, "offset");
+        CheckArg.isNonNegative(length, "length");
+        if (offset >= size) return BoundedInputStream.empty();
+        // Delegate to the store, which may be able to start reading at the offset ...
+        long start = System.nanoTime();
+        InputStream stream = store.getInputStream(getKey(), offset, length);
+        store.getDurationRecorder().recordDuration(DurationMetric.BINARY_READ_TIME, System.nanoTime() - start,
+                                                   TimeUnit.NANOSECONDS);
+        return stream;
     }
 
     @Override
@@ -41,6 +41,7 @@ class ChunkInputStream extends InputStream {
     protected int indexInBuffer;
     protected byte[] buffer;
     private int chunkNumber;
+    private long offset;
 
 
     public ChunkInputStream(Cache<String, byte[]> blobCache, String key){
@@ -49,6 +50,18 @@ class ChunkInputStream extends InputStream {
         this.key = key;
     }
 
+    /**
+     * Create a stream that starts reading at the given offset, by going directly to the chunk containing that offset.
+     *
+     * @param blobCache the cache containing the chunks
+     * @param key the key of the content
+     * @param offset the offset of the first byte that is to be read
+     */
+    public ChunkInputStream(Cache<String, byte[]> blobCache, String key, long offset){
+        this(blobCache, key);
+        this.offset = offset;
+    }
+
     @Override
     public int read() throws IOException {
         if(indexInBuffer == -1){
@@ -112,6 +125,10 @@ class ChunkInputStream extends InputStream {
     }
 
     private void fillBuffer() {
+        if (buffer == null && offset > 0) {
+            skipToOffset();
+            return;
+        }
 
         buffer = nextChunk();
         if(buffer == null){
@@ -122,6 +139,28 @@ class ChunkInputStream extends InputStream {
         }
     }
 
+    private void skipToOffset() {
+        // All chunks but the last are as large as the first, so use it to find the chunk containing the offset ...
+        byte[] first = nextChunk();
+        int chunkOffset = 0;
+        if (first == null || first.length == 0) {
+            buffer = null;
+        } else if (offset < first.length) {
+            buffer = first;
+            chunkOffset = (int)offset;
+        } else {
+            chunkNumber = (int)(offset / first.length);
+            chunkOffset = (int)(offset % first.length);
+            buffer = nextChunk();
+        }
+        if (buffer == null || chunkOffset >= buffer.length) {
+            buffer = new byte[0];
+            indexInBuffer = -1;
+        } else {
+            indexInBuffer = chunkOffset;
+        }
+    }
+
     protected byte[] nextChunk() {
         String chunkKey = key+"-"+chunkNumber++;
         logger.debug("Read chunk {0}", chunkKey);
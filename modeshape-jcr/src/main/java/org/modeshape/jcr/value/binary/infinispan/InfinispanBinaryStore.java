@@ -65,6 +65,7 @@ import org.modeshape.jcr.value.BinaryKey;
 import org.modeshape.jcr.value.BinaryValue;
 import org.modeshape.jcr.value.binary.AbstractBinaryStore;
 import org.modeshape.jcr.value.binary.BinaryStoreException;
+import org.modeshape.jcr.value.binary.BoundedInputStream;
 import org.modeshape.jcr.value.binary.NamedLocks;
 import org.modeshape.jcr.value.binary.StoredBinaryValue;
 
@@ -277,6 +278,22 @@ public class InfinispanBinaryStore extends AbstractBinaryStore {
         return new ChunkInputStream(blobCache, dataKeyFrom(binaryKey));
     }
 
+    @Override
+    public InputStream getInputStream( BinaryKey binaryKey,
+                                       long offset,
+                                       long length ) throws BinaryStoreException {
+        Metadata metadata = metadataCache.get(metadataKeyFrom(binaryKey));
+        if (metadata == null) {
+            throw new BinaryStoreException(JcrI18n.unableToFindBinaryValue.text(binaryKey,
+                                                                                "Infinispan cache " + metadataCache.getName()));
+        }
+        if (offset >= metadata.getLength()) {
+            return BoundedInputStream.empty();
+        }
+        // Start reading at the chunk containing the offset ...
+        return new BoundedInputStream(new ChunkInputStream(blobCache, dataKeyFrom(binaryKey), offset), length);
+    }
+
     @Override
     public void markAsUnused( Iterable<BinaryKey> keys ) throws BinaryStoreException {
         for (BinaryKey binaryKey : keys) {
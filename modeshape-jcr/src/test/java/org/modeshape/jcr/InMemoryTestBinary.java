@@ -127,4 +127,11 @@ public final class InMemoryTestBinary implements Binary {
     public String getMimeType( String name ) {
         return null;
     }
+
+    @Override
+    public InputStream getStream( long offset,
+                                  long length ) {
+        int start = (int)Math.min(offset, bytes.length);
+        return new ByteArrayInputStream(bytes, start, (int)Math.min(length, bytes.length - start));
+    }
 }
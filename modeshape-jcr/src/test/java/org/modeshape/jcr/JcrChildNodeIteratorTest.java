@@ -28,6 +28,7 @@ import static org.hamcrest.core.IsSame.sameInstance;
 import static org.junit.Assert.assertThat;
 import static org.mockito.Mockito.mock;
 import java.util.ArrayList;
+import java.util.Collection;
 import java.util.HashMap;
 import java.util.Iterator;
 import java.util.List;
@@ -53,6 +54,7 @@ public class JcrChildNodeIteratorTest {
     private List<ChildReference> refs;
     private NodeIterator iter;
     private NodeKey keyTemplate;
+    private List<List<ChildReference>> loaded;
 
     @Before
     public void beforeEach() throws Exception {
@@ -61,6 +63,7 @@ public class JcrChildNodeIteratorTest {
         children = new ArrayList<AbstractJcrNode>();
         refs = new ArrayList<ChildReference>();
         childNodesByRef = new HashMap<ChildReference, AbstractJcrNode>();
+        loaded = new ArrayList<List<ChildReference>>();
         for (int i = 0; i != 10; ++i) {
             // Create a child reference ...
             String name = "node" + (i + 1);
@@ -78,6 +81,12 @@ public class JcrChildNodeIteratorTest {
             public Node nodeFrom( ChildReference ref ) {
                 return childNodesByRef.get(ref);
             }
+
+            @SuppressWarnings( "synthetic-access" )
+            @Override
+            public void load( Collection<ChildReference> refs ) {
+                loaded.add(new ArrayList<ChildReference>(refs));
+            }
         };
         iter = new JcrChildNodeIterator(resolver, refs.iterator());
     }
@@ -99,6 +108,18 @@ public class JcrChildNodeIteratorTest {
         assertThat(nodeIter.hasNext(), is(false));
     }
 
+    @Test
+    public void shouldLoadNodesOfReferencesInBatchesBeforeResolvingThem() {
+        assertThat(loaded.isEmpty(), is(true));
+        iter.nextNode();
+        assertThat(loaded.size(), is(1));
+        assertThat(loaded.get(0), is(refs));
+        while (iter.hasNext()) {
+            iter.nextNode();
+        }
+        assertThat(loaded.size(), is(1));
+    }
+
     @Test
     public void shouldStartWithPositionOfZero() {
         assertThat(iter.getPosition(), is(0L));
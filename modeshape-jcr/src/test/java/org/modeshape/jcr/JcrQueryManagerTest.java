@@ -862,6 +862,30 @@ public class JcrQueryManagerTest extends MultiUseAbstractTest {
         assertRow(result, 10).has("car:model", "DB9").and("car:msrp", "$171,600").and("car:mpgCity", 12);
     }
 
+    @Test
+    public void shouldBeAbleToCreateAndExecuteJcrSql2QueryToFindCarNodesOrderedByMsrpWithLimitAndOffset()
+        throws RepositoryException {
+        String sql = "SELECT * FROM [car:Car] ORDER BY [car:msrp] DESC";
+        QueryManager queryManager = session.getWorkspace().getQueryManager();
+        List<String> allPaths = new ArrayList<String>();
+        RowIterator allRows = queryManager.createQuery(sql, Query.JCR_SQL2).execute().getRows();
+        while (allRows.hasNext()) {
+            allPaths.add(allRows.nextRow().getPath());
+        }
+        assertThat(allPaths.size(), is(13));
+
+        // The limited results must be exactly the same as the corresponding part of the full results ...
+        Query query = queryManager.createQuery(sql + " LIMIT 4 OFFSET 2", Query.JCR_SQL2);
+        QueryResult result = query.execute();
+        assertResults(query, result, 4);
+        List<String> paths = new ArrayList<String>();
+        RowIterator rows = result.getRows();
+        while (rows.hasNext()) {
+            paths.add(rows.nextRow().getPath());
+        }
+        assertThat(paths, is(allPaths.subList(2, 6)));
+    }
+
     @FixFor( "MODE-1234" )
     @Test
     public void shouldAllowEqualityCriteriaOnPropertyDefinedWithBooleanPropertyDefinition() throws RepositoryException {
@@ -58,6 +58,7 @@ import javax.jcr.observation.Event;
 import javax.jcr.query.Query;
 import javax.jcr.query.QueryResult;
 import javax.transaction.TransactionManager;
+import org.infinispan.schematic.document.Document;
 import org.junit.After;
 import org.junit.Before;
 import org.junit.Ignore;
@@ -71,6 +72,7 @@ import org.modeshape.jcr.api.monitor.History;
 import org.modeshape.jcr.api.monitor.Statistics;
 import org.modeshape.jcr.api.monitor.ValueMetric;
 import org.modeshape.jcr.api.monitor.Window;
+import org.modeshape.jcr.cache.document.DocumentConstants;
 
 public class JcrRepositoryTest extends AbstractTransactionalTest {
 
@@ -1113,6 +1115,46 @@ public class JcrRepositoryTest extends AbstractTransactionalTest {
         }
     }
 
+    @Test
+    public void shouldOptimizeChildrenOfChangedNodesInBackground() throws Exception {
+        shutdownDefaultRepository();
+
+        RepositoryConfiguration config = RepositoryConfiguration.read("{ 'name' : 'optimized', 'storage' : { 'documentOptimization' : "
+                                                                      + "{ 'childCountTarget' : 5, 'childCountTolerance' : 2, "
+                                                                      + "'changedNodesIntervalInSeconds' : 1 } } }");
+        repository = new JcrRepository(config);
+        repository.start();
+        try {
+            Session session = repository.login();
+            Node parent = session.getRootNode().addNode("parent");
+            for (int i = 0; i != 20; ++i) {
+                parent.addNode("child" + i);
+            }
+            session.save();
+            String key = ((AbstractJcrNode)parent).key().toString();
+            session.logout();
+
+            // Wait for the children of the parent to be split into blocks ...
+            Document childrenInfo = null;
+            for (int i = 0; i != 50; ++i) {
+                childrenInfo = repository.documentStore().get(key).getContentAsDocument()
+                                         .getDocument(DocumentConstants.CHILDREN_INFO);
+                if (childrenInfo != null && childrenInfo.containsField(DocumentConstants.NEXT_BLOCK)) break;
+                Thread.sleep(100L);
+            }
+            assertThat(childrenInfo.getString(DocumentConstants.NEXT_BLOCK), is(notNullValue()));
+
+            // The children are all still there ...
+            session = repository.login();
+            assertThat(session.getNode("/parent").getNodes().getSize(), is(20L));
+            assertThat(session.getNode("/parent/child19"), is(notNullValue()));
+            session.logout();
+        } finally {
+            repository.shutdown().get(3L, TimeUnit.SECONDS);
+            JTATestUtil.clearJBossJTADefaultStoreLocation();
+        }
+    }
+
     @FixFor( "MODE-1902" )
     @Test( expected = RepositoryException.class )
     public void shouldFailToStartWhenNoIndexesExistAndRebuildOptionFailIfMissing() throws Exception {
@@ -0,0 +1,120 @@
+/*
+ * ModeShape (http://www.modeshape.org)
+ * See the COPYRIGHT.txt file distributed with this work for information
+ * regarding copyright ownership.  Some portions may be licensed
+ * to Red Hat, Inc. under one or more contributor license agreements.
+ * See the AUTHORS.txt file in the distribution for a full listing of
+ * individual contributors.
+ *
+ * ModeShape is free software. Unless otherwise indicated, all code in ModeShape
+ * is licensed to you under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * ModeShape is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+package org.modeshape.jcr;
+
+import static org.hamcrest.core.Is.is;
+import static org.junit.Assert.assertThat;
+import java.util.HashSet;
+import java.util.Set;
+import javax.jcr.observation.Event;
+import org.junit.Before;
+import org.junit.Test;
+import org.modeshape.jcr.value.Path;
+
+/**
+ * Unit test for {@link ObservationFilterIndex}
+ */
+public class ObservationFilterIndexTest {
+
+    private static final int ALL_TYPES = Event.NODE_ADDED | Event.NODE_REMOVED | Event.PROPERTY_ADDED;
+
+    private ExecutionContext context;
+    private ObservationFilterIndex<String> index;
+
+    @Before
+    public void beforeEach() {
+        context = new ExecutionContext();
+        index = new ObservationFilterIndex<String>();
+    }
+
+    protected Path path( String path ) {
+        return context.getValueFactories().getPathFactory().create(path);
+    }
+
+    protected Set<String> matches( String workspaceName,
+                                   String path,
+                                   int eventTypes ) {
+        Set<String> matches = new HashSet<String>();
+        index.findMatches(workspaceName, path(path), eventTypes, matches);
+        return matches;
+    }
+
+    protected Set<String> set( String... values ) {
+        Set<String> result = new HashSet<String>();
+        for (String value : values) {
+            result.add(value);
+        }
+        return result;
+    }
+
+    @Test
+    public void shouldMatchTargetsByPath() {
+        index.add("all", "default", null, false, ALL_TYPES);
+        index.add("deepA", "default", path("/a"), true, ALL_TYPES);
+        index.add("exactA", "default", path("/a"), false, ALL_TYPES);
+        index.add("exactAB", "default", path("/a/b"), false, ALL_TYPES);
+        index.add("deepC", "default", path("/c"), true, ALL_TYPES);
+
+        assertThat(matches("default", "/", Event.NODE_ADDED), is(set("all")));
+        assertThat(matches("default", "/a", Event.NODE_ADDED), is(set("all", "deepA", "exactA")));
+        assertThat(matches("default", "/a/b", Event.NODE_ADDED), is(set("all", "deepA", "exactAB")));
+        assertThat(matches("default", "/a/b/c", Event.NODE_ADDED), is(set("all", "deepA")));
+        assertThat(matches("default", "/a[2]/b", Event.NODE_ADDED), is(set("all")));
+        assertThat(matches("default", "/c/d", Event.NODE_ADDED), is(set("all", "deepC")));
+    }
+
+    @Test
+    public void shouldMatchTargetsByEventTypeAndWorkspace() {
+        index.add("added", "default", null, true, Event.NODE_ADDED);
+        index.add("removed", "default", null, true, Event.NODE_REMOVED);
+        index.add("otherAdded", "Other", path("/a"), true, Event.NODE_ADDED);
+
+        assertThat(matches("default", "/a", Event.NODE_ADDED), is(set("added")));
+        assertThat(matches("default", "/a", Event.NODE_ADDED | Event.NODE_REMOVED), is(set("added", "removed")));
+        assertThat(matches("default", "/a", Event.PROPERTY_ADDED), is(set()));
+        assertThat(matches("other", "/a", Event.NODE_ADDED), is(set("otherAdded")));
+        assertThat(matches(null, "/a", Event.NODE_ADDED), is(set("added", "otherAdded")));
+        assertThat(matches("missing", "/a", Event.NODE_ADDED), is(set()));
+    }
+
+    @Test
+    public void shouldReplaceAndRemoveTargets() {
+        index.add("target", "default", path("/a/b"), true, ALL_TYPES);
+        index.add("other", "default", path("/a"), false, ALL_TYPES);
+        assertThat(matches("default", "/a/b/c", Event.NODE_ADDED), is(set("target")));
+
+        index.add("target", "default", path("/x"), false, ALL_TYPES);
+        assertThat(matches("default", "/a/b/c", Event.NODE_ADDED), is(set()));
+        assertThat(matches("default", "/x", Event.NODE_ADDED), is(set("target")));
+        assertThat(matches("default", "/a", Event.NODE_ADDED), is(set("other")));
+
+        assertThat(index.remove("target"), is(true));
+        assertThat(index.remove("target"), is(false));
+        assertThat(matches("default", "/x", Event.NODE_ADDED), is(set()));
+        assertThat(index.isEmpty(), is(false));
+        assertThat(index.remove("other"), is(true));
+        assertThat(index.isEmpty(), is(true));
+        assertThat(matches("default", "/a", Event.NODE_ADDED), is(set()));
+    }
+}
@@ -38,6 +38,7 @@ import org.junit.Ignore;
 import org.junit.Test;
 import org.modeshape.common.statistic.Stopwatch;
 import org.modeshape.common.util.FileUtil;
+import org.modeshape.jcr.api.BackupOptions;
 import org.modeshape.jcr.api.Problems;
 
 public class RepositoryBackupTest extends MultiUseAbstractTest {
@@ -92,6 +93,21 @@ public class RepositoryBackupTest extends MultiUseAbstractTest {
         System.out.println("Time to perform backup: " + sw.getMaximumDuration());
     }
 
+    @Test
+    public void shouldPerformOneParallelBackup() throws Exception {
+        Stopwatch sw = new Stopwatch();
+        sw.start();
+        Problems problems = session().getWorkspace().getRepositoryManager().backupRepository(testDirectory, new BackupOptions() {
+            @Override
+            public int parallelism() {
+                return 4;
+            }
+        });
+        sw.stop();
+        assertThat(problems.hasProblems(), is(false));
+        System.out.println("Time to perform parallel backup: " + sw.getMaximumDuration());
+    }
+
     @Test
     public void shouldPerformMultipleBackups() throws Exception {
         for (int i = 0; i != 3; ++i) {
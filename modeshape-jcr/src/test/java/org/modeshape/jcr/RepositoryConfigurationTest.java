@@ -24,6 +24,7 @@
 package org.modeshape.jcr;
 
 import static org.hamcrest.core.Is.is;
+import static org.hamcrest.core.IsInstanceOf.instanceOf;
 import static org.hamcrest.core.IsNull.notNullValue;
 import static org.hamcrest.core.IsNull.nullValue;
 import static org.junit.Assert.assertEquals;
@@ -31,6 +32,7 @@ import static org.junit.Assert.assertNotNull;
 import static org.junit.Assert.assertNull;
 import static org.junit.Assert.assertThat;
 import static org.junit.Assert.fail;
+import java.util.Arrays;
 import org.infinispan.schematic.Schematic;
 import org.infinispan.schematic.document.Document;
 import org.junit.Before;
@@ -44,6 +46,10 @@ import org.modeshape.jcr.RepositoryConfiguration.FieldName;
 import org.modeshape.jcr.RepositoryConfiguration.JaasSecurity;
 import org.modeshape.jcr.RepositoryConfiguration.Security;
 import org.modeshape.jcr.RepositoryConfiguration.TransactionMode;
+import org.modeshape.jcr.value.binary.BinaryCompression;
+import org.modeshape.jcr.value.binary.BinaryStore;
+import org.modeshape.jcr.value.binary.CachingBinaryStore;
+import org.modeshape.jcr.value.binary.DatabaseBinaryStore;
 
 public class RepositoryConfigurationTest {
     private boolean print = false;
@@ -158,6 +164,38 @@ public class RepositoryConfigurationTest {
         assertValid("config/database-url-binary-storage.json");
     }
 
+    @Test
+    public void shouldSuccessfullyValidateBinaryStorageConfigurationWithLocalCache() throws Exception {
+        RepositoryConfiguration config = assertValid("config/database-url-binary-storage-with-local-cache.json");
+        BinaryStore store = config.getBinaryStorage().getBinaryStore();
+        assertThat(store, is(instanceOf(CachingBinaryStore.class)));
+        CachingBinaryStore cachingStore = (CachingBinaryStore)store;
+        assertThat(cachingStore.getDelegate(), is(instanceOf(DatabaseBinaryStore.class)));
+        assertThat(cachingStore.getMaximumSizeInBytes(), is(10485760L));
+    }
+
+    @Test
+    public void shouldSuccessfullyValidateFileBinaryStorageConfigurationWithCompression() throws Exception {
+        RepositoryConfiguration config = assertValid("config/file-binary-storage-with-compression.json");
+        BinaryCompression compression = config.getBinaryStorage().getCompression();
+        assertThat(compression.getCodec(), is(BinaryCompression.Codec.GZIP));
+        assertThat(compression.getMinimumSizeInBytes(), is(16384L));
+        assertThat(compression.getExcludedMimeTypes(), is(Arrays.asList("image/*", "application/zip")));
+        assertThat(compression.isExcluded("image/png"), is(true));
+        assertThat(compression.isExcluded("text/xml; charset=UTF-8"), is(false));
+    }
+
+    @Test
+    public void shouldSuccessfullyValidateDatabaseBinaryStorageConfigurationWithCompression() throws Exception {
+        RepositoryConfiguration config = assertValid("config/database-url-binary-storage-with-compression.json");
+        BinaryStore store = config.getBinaryStorage().getBinaryStore();
+        assertThat(store, is(instanceOf(DatabaseBinaryStore.class)));
+        BinaryCompression compression = ((DatabaseBinaryStore)store).getCompression();
+        assertThat(compression.getCodec(), is(BinaryCompression.Codec.DEFLATE));
+        assertThat(compression.getMinimumSizeInBytes(), is(BinaryCompression.DEFAULT_MINIMUM_SIZE_IN_BYTES));
+        assertThat(compression.getExcludedMimeTypes(), is(BinaryCompression.DEFAULT_EXCLUDED_MIME_TYPES));
+    }
+
     @Test
     public void shouldSuccessfullyValidateCompositeBinaryStorageConfiguration() {
         assertValid("config/composite-binary-storage.json");
@@ -283,6 +321,28 @@ public class RepositoryConfigurationTest {
         assertThat(config.getSequencing(), is(notNullValue()));
     }
 
+    @Test
+    public void shouldReadChildPrefetchingConfiguration() {
+        RepositoryConfiguration config = new RepositoryConfiguration("repoName");
+        assertThat(config.getChildPrefetching().isEnabled(), is(false));
+        config = assertValid("{ 'name' : 'sample', 'workspaces' : { 'childPrefetching' : { 'enabled' : true, 'accessThreshold' : 5, 'maxConcurrentPrefetches' : 4 } } }");
+        RepositoryConfiguration.ChildPrefetching prefetching = config.getChildPrefetching();
+        assertThat(prefetching.isEnabled(), is(true));
+        assertThat(prefetching.getAccessThreshold(), is(5));
+        assertThat(prefetching.getMaxConcurrentPrefetches(), is(4));
+        assertThat(prefetching.getMaxNodes(), is(RepositoryConfiguration.Default.CHILD_PREFETCHING_MAX_NODES));
+        assertThat(prefetching.getThreadPoolName(), is(RepositoryConfiguration.Default.CHILD_PREFETCHING_POOL));
+    }
+
+    @Test
+    public void shouldReadWorkspacePathCacheSize() {
+        RepositoryConfiguration config = new RepositoryConfiguration("repoName");
+        assertThat(config.getWorkspacePathCacheSize(), is(RepositoryConfiguration.Default.PATH_CACHE_SIZE));
+        config = assertValid("{ 'name' : 'sample', 'workspaces' : { 'pathCacheSize' : 500 } }");
+        assertThat(config.getWorkspacePathCacheSize(), is(500));
+        assertNotValid(1, "{ 'name' : 'sample', 'workspaces' : { 'pathCacheSize' : 0 } }");
+    }
+
     @Test
     public void shouldAllowValidButSimpleRepositoryConfiguration() {
         assertValid("{ \"name\" : \"sample\", \"jndiName\" : \"modeshape_repo1\"}");
@@ -352,6 +412,22 @@ public class RepositoryConfigurationTest {
         assertValid("config/repo-config-jdbc-binary-storage.json");
     }
 
+    @Test
+    public void shouldEnableDeltaReplicationByDefault() {
+        RepositoryConfiguration config = new RepositoryConfiguration("repoName");
+        assertThat(config.isDeltaReplicationEnabled(), is(true));
+    }
+
+    @Test
+    public void shouldDisableDeltaReplication() {
+        Document doc = Schematic.newDocument(FieldName.NAME,
+                                             "repoName",
+                                             FieldName.STORAGE,
+                                             Schematic.newDocument(FieldName.DELTA_REPLICATION, false));
+        RepositoryConfiguration config = new RepositoryConfiguration(doc, "repoName");
+        assertThat(config.isDeltaReplicationEnabled(), is(false));
+    }
+
     @FixFor( "MODE-1988" )
     @Test
     public void shouldNotEnableDocumentOptimizationByDefault() {
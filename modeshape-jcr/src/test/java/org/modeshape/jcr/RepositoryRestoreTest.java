@@ -42,6 +42,7 @@ import org.junit.Ignore;
 import org.junit.Test;
 import org.modeshape.common.statistic.Stopwatch;
 import org.modeshape.common.util.FileUtil;
+import org.modeshape.jcr.api.BackupOptions;
 import org.modeshape.jcr.api.Problems;
 
 /**
@@ -85,8 +86,32 @@ public class RepositoryRestoreTest extends SingleUseAbstractTest {
 
     @Test
     public void shouldBackupRepositoryWithMultipleWorkspaces() throws Exception {
+        backupAndRestoreRepositoryWithMultipleWorkspaces(BackupOptions.DEFAULT);
+    }
+
+    @Test
+    public void shouldBackupRepositoryWithMultipleWorkspacesInParallel() throws Exception {
+        backupAndRestoreRepositoryWithMultipleWorkspaces(new BackupOptions() {
+            @Override
+            public int parallelism() {
+                return 4;
+            }
+
+            @Override
+            public long documentsPerFile() {
+                return 10L;
+            }
+        });
+        // There should be a manifest and files for each of the partitions ...
+        assertThat(new File(backupDirectory, "manifest.json").exists(), is(true));
+        for (int i = 1; i <= 4; ++i) {
+            assertThat(new File(backupDirectory, "documents_p00" + i + "_000001.bin.gz").exists(), is(true));
+        }
+    }
+
+    private void backupAndRestoreRepositoryWithMultipleWorkspaces( BackupOptions options ) throws Exception {
         loadContent();
-        Problems problems = session().getWorkspace().getRepositoryManager().backupRepository(backupDirectory);
+        Problems problems = session().getWorkspace().getRepositoryManager().backupRepository(backupDirectory, options);
         assertNoProblems(problems);
 
         assertContentInWorkspace(repository(), "default");
@@ -129,6 +154,67 @@ public class RepositoryRestoreTest extends SingleUseAbstractTest {
         }
     }
 
+    @Test
+    public void shouldRestoreFullBackupAndIncrementalBackups() throws Exception {
+        BackupOptions incremental = new BackupOptions() {
+            @Override
+            public boolean incremental() {
+                return true;
+            }
+        };
+        loadContent();
+        // The first incremental backup is a full backup ...
+        assertNoProblems(session().getWorkspace().getRepositoryManager().backupRepository(backupDirectory, incremental));
+        assertThat(new File(backupDirectory, "increment_000001").exists(), is(false));
+
+        // Make some changes and write the first increment ...
+        AbstractJcrNode sailboat = (AbstractJcrNode)session().getRootNode().addNode("Boats", "nt:unstructured")
+                                                             .addNode("Sailboat", "nt:unstructured");
+        session().getNode("/Cars/Luxury/Cadillac DTS").remove();
+        session().save();
+        awaitRecordedByChangeTracker(sailboat); // the changes are delivered asynchronously
+        assertNoProblems(session().getWorkspace().getRepositoryManager().backupRepository(backupDirectory, incremental));
+        assertThat(new File(backupDirectory, "increment_000001/manifest.json").exists(), is(true));
+
+        // Make some more changes and write the second increment ...
+        AbstractJcrNode catamaran = (AbstractJcrNode)session().getNode("/Boats").addNode("Catamaran", "nt:unstructured");
+        session().getNode("/Cars/Hybrid/Toyota Prius").setProperty("car:maker", "Toyota Motor Corporation");
+        session().save();
+        awaitRecordedByChangeTracker(catamaran); // the changes are delivered asynchronously
+        assertNoProblems(session().getWorkspace().getRepositoryManager().backupRepository(backupDirectory, incremental));
+        assertThat(new File(backupDirectory, "increment_000002/manifest.json").exists(), is(true));
+
+        // Start up a new repository and restore the chain ...
+        ((LocalEnvironment)environment).setShared(true);
+        RepositoryConfiguration config = RepositoryConfiguration.read("config/restore-repo-config.json").with(environment);
+        JcrRepository newRepository = new JcrRepository(config);
+        try {
+            newRepository.start();
+            JcrSession newSession = newRepository.login();
+            try {
+                Problems restoreProblems = newSession.getWorkspace().getRepositoryManager().restoreRepository(backupDirectory);
+                assertNoProblems(restoreProblems);
+            } finally {
+                newSession.logout();
+            }
+
+            newSession = newRepository.login();
+            try {
+                newSession.getNode("/Cars/Luxury/Bentley Continental");
+                newSession.getNode("/Boats/Sailboat");
+                newSession.getNode("/Boats/Catamaran");
+                assertThat(newSession.nodeExists("/Cars/Luxury/Cadillac DTS"), is(false));
+                assertThat(newSession.getNode("/Cars/Hybrid/Toyota Prius").getProperty("car:maker").getString(),
+                           is("Toyota Motor Corporation"));
+            } finally {
+                newSession.logout();
+            }
+            assertContentInWorkspace(newRepository, "ws2");
+        } finally {
+            newRepository.shutdown().get(10, TimeUnit.SECONDS);
+        }
+    }
+
     private void assertWorkspaces( JcrRepository newRepository,
                                    String... workspaceNames ) throws RepositoryException {
         Set<String> expectedNames = new HashSet<String>();
@@ -195,6 +281,14 @@ public class RepositoryRestoreTest extends SingleUseAbstractTest {
         assertThat(problems.hasProblems(), is(false));
     }
 
+    protected void awaitRecordedByChangeTracker( AbstractJcrNode node ) throws InterruptedException {
+        BackupChangeTracker tracker = repository().runningState().backupService().changeTracker();
+        for (int i = 0; i != 200 && !tracker.hasRecorded(node.key()); ++i) {
+            Thread.sleep(50L);
+        }
+        assertThat(tracker.hasRecorded(node.key()), is(true));
+    }
+
     protected void loadContent() throws Exception {
         importIntoWorkspace("default", "io/cars-system-view.xml");
         importIntoWorkspace("ws2", "io/cars-system-view.xml");
@@ -0,0 +1,144 @@
+/*
+ * ModeShape (http://www.modeshape.org)
+ * See the COPYRIGHT.txt file distributed with this work for information
+ * regarding copyright ownership.  Some portions may be licensed
+ * to Red Hat, Inc. under one or more contributor license agreements.
+ * See the AUTHORS.txt file in the distribution for a full listing of 
+ * individual contributors.
+ *
+ * ModeShape is free software. Unless otherwise indicated, all code in ModeShape
+ * is licensed to you under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ * 
+ * ModeShape is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+package org.modeshape.jcr;
+
+import static org.hamcrest.core.Is.is;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertThat;
+import static org.junit.Assert.assertTrue;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import org.junit.Test;
+import org.modeshape.jcr.RepositoryStatistics.DurationHistogram;
+import org.modeshape.jcr.RepositoryStatistics.DurationHistory;
+import org.modeshape.jcr.RepositoryStatistics.HistoryImpl;
+import org.modeshape.jcr.api.monitor.History;
+import org.modeshape.jcr.api.monitor.Percentiles;
+import org.modeshape.jcr.api.monitor.Statistics;
+import org.modeshape.jcr.api.monitor.Window;
+
+public class RepositoryStatisticsTest {
+
+    @Test
+    public void shouldPlaceDurationsInBucketsThatAreOrderedAndPrecise() {
+        int previousIndex = -1;
+        for (long value = 0L; value < DurationHistogram.MAX_VALUE; value = value < 100L ? value + 1L : value + value / 7L) {
+            int index = DurationHistogram.bucketIndex(value);
+            assertTrue(index >= previousIndex);
+            assertTrue(index < DurationHistogram.BUCKET_COUNT);
+            long highest = DurationHistogram.highestValueInBucket(index);
+            assertTrue(highest >= value);
+            assertTrue(highest <= value + value / DurationHistogram.SUB_BUCKET_COUNT);
+            assertThat(DurationHistogram.bucketIndex(highest), is(index));
+            assertThat(DurationHistogram.bucketIndex(highest + 1L), is(index + 1));
+            previousIndex = index;
+        }
+        assertThat(DurationHistogram.bucketIndex(DurationHistogram.MAX_VALUE), is(DurationHistogram.BUCKET_COUNT - 1));
+    }
+
+    @Test
+    public void shouldComputeStatisticsAndPercentilesOfRecordedDurations() {
+        DurationHistory history = new DurationHistory(TimeUnit.MILLISECONDS, 1);
+        for (int i = 1; i <= 1000; ++i) {
+            history.recordDuration(i, TimeUnit.MILLISECONDS);
+        }
+        history.rollup();
+        Statistics[] stats = history.getHistory(Window.PREVIOUS_60_SECONDS);
+        Statistics last = stats[stats.length - 1];
+        assertThat(last.getCount(), is(1000));
+        assertThat(last.getMinimum(), is(1L));
+        assertThat(last.getMaximum(), is(1000L));
+        assertEquals(500.5d, last.getMean(), 0.001d);
+        assertEquals(288.67d, last.getStandardDeviation(), 0.01d);
+
+        Percentiles percentiles = new HistoryImpl(stats, null, Window.PREVIOUS_60_SECONDS).getPercentiles();
+        assertThat(percentiles.getCount(), is(1000L));
+        assertEquals(500L, percentiles.getMedian(TimeUnit.MILLISECONDS), 500L / 32L);
+        assertEquals(950L, percentiles.get95thPercentile(TimeUnit.MILLISECONDS), 950L / 32L);
+        assertEquals(990L, percentiles.get99thPercentile(TimeUnit.MILLISECONDS), 990L / 32L);
+        assertThat(percentiles.get999thPercentile(TimeUnit.MILLISECONDS), is(1000L));
+        assertThat(percentiles.getValueAtPercentile(100.0d, TimeUnit.MILLISECONDS), is(1000L));
+    }
+
+    @Test
+    public void shouldCombinePercentilesOfSeveralIntervals() {
+        DurationHistory history = new DurationHistory(TimeUnit.MILLISECONDS, 1);
+        for (int i = 0; i != 99; ++i) {
+            history.recordDuration(10, TimeUnit.MICROSECONDS);
+        }
+        history.rollup();
+        history.recordDuration(2, TimeUnit.SECONDS);
+        history.rollup();
+        history.rollup();
+
+        Statistics[] stats = history.getHistory(Window.PREVIOUS_60_SECONDS);
+        History result = new HistoryImpl(stats, null, Window.PREVIOUS_60_SECONDS);
+        Percentiles percentiles = result.getPercentiles();
+        assertThat(percentiles.getCount(), is(100L));
+        assertThat(percentiles.getMedian(TimeUnit.MICROSECONDS), is(10L));
+        assertThat(percentiles.get99thPercentile(TimeUnit.MICROSECONDS), is(10L));
+        assertThat(percentiles.get999thPercentile(TimeUnit.MILLISECONDS), is(2000L));
+
+        Statistics combined = RepositoryStatistics.statisticsFor(stats);
+        assertThat(combined.getCount(), is(100));
+        assertThat(combined.getMinimum(), is(0L));
+        assertThat(combined.getMaximum(), is(2000L));
+    }
+
+    @Test
+    public void shouldHaveNoPercentilesForValueMetricsOrEmptyHistories() {
+        DurationHistory history = new DurationHistory(TimeUnit.MILLISECONDS, 1);
+        history.rollup();
+        Statistics[] stats = history.getHistory(Window.PREVIOUS_60_SECONDS);
+        assertThat(new HistoryImpl(stats, null, Window.PREVIOUS_60_SECONDS).getPercentiles(), is(Percentiles.NO_PERCENTILES));
+        stats = new Statistics[] {RepositoryStatistics.statisticsFor(3L)};
+        assertThat(new HistoryImpl(stats, null, Window.PREVIOUS_60_SECONDS).getPercentiles(), is(Percentiles.NO_PERCENTILES));
+    }
+
+    @Test
+    public void shouldRecordDurationsFromConcurrentThreads() throws Exception {
+        final DurationHistory history = new DurationHistory(TimeUnit.MILLISECONDS, 1);
+        final int threadCount = 8;
+        final int recordsPerThread = 10000;
+        final CountDownLatch latch = new CountDownLatch(threadCount);
+        for (int t = 0; t != threadCount; ++t) {
+            new Thread() {
+                @Override
+                public void run() {
+                    for (int i = 0; i != recordsPerThread; ++i) {
+                        history.recordDuration(i % 100, TimeUnit.MICROSECONDS);
+                    }
+                    latch.countDown();
+                }
+            }.start();
+        }
+        assertTrue(latch.await(10, TimeUnit.SECONDS));
+        history.rollup();
+        Statistics[] stats = history.getHistory(Window.PREVIOUS_60_SECONDS);
+        assertThat(stats[stats.length - 1].getCount(), is(threadCount * recordsPerThread));
+        Percentiles percentiles = new HistoryImpl(stats, null, Window.PREVIOUS_60_SECONDS).getPercentiles();
+        assertThat(percentiles.getCount(), is((long)threadCount * recordsPerThread));
+        assertThat(percentiles.getValueAtPercentile(100.0d, TimeUnit.MICROSECONDS), is(99L));
+    }
+}
@@ -0,0 +1,169 @@
+/*
+ * ModeShape (http://www.modeshape.org)
+ * See the COPYRIGHT.txt file distributed with this work for information
+ * regarding copyright ownership.  Some portions may be licensed
+ * to Red Hat, Inc. under one or more contributor license agreements.
+ * See the AUTHORS.txt file in the distribution for a full listing of
+ * individual contributors.
+ *
+ * ModeShape is free software. Unless otherwise indicated, all code in ModeShape
+ * is licensed to you under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * ModeShape is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+package org.modeshape.jcr.bus;
+
+import static org.hamcrest.core.Is.is;
+import static org.hamcrest.core.IsInstanceOf.instanceOf;
+import static org.junit.Assert.assertThat;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import org.junit.Before;
+import org.junit.Test;
+import org.modeshape.jcr.ExecutionContext;
+import org.modeshape.jcr.cache.NodeKey;
+import org.modeshape.jcr.cache.change.Change;
+import org.modeshape.jcr.cache.change.ChangeSet;
+import org.modeshape.jcr.cache.change.NodeAdded;
+import org.modeshape.jcr.cache.change.NodeChanged;
+import org.modeshape.jcr.cache.change.NodeRemoved;
+import org.modeshape.jcr.cache.change.PropertyAdded;
+import org.modeshape.jcr.cache.change.PropertyChanged;
+import org.modeshape.jcr.cache.change.RecordingChanges;
+import org.modeshape.jcr.value.Name;
+import org.modeshape.jcr.value.Path;
+import org.modeshape.jcr.value.Property;
+import org.modeshape.jcr.value.basic.JodaDateTime;
+
+/**
+ * Unit test for {@link ChangeSetCoalescer}
+ */
+public class ChangeSetCoalescerTest {
+
+    private static final NodeKey PARENT = new NodeKey("source1works1-parent");
+    private static final NodeKey CHILD = new NodeKey("source1works1-child");
+
+    private ExecutionContext context;
+    private Path parentPath;
+    private Path childPath;
+    private Name title;
+
+    @Before
+    public void beforeEach() {
+        context = new ExecutionContext();
+        parentPath = context.getValueFactories().getPathFactory().create("/parent");
+        childPath = context.getValueFactories().getPathFactory().create("/parent/child");
+        title = context.getValueFactories().getNameFactory().create("title");
+    }
+
+    protected RecordingChanges changes( String userId ) {
+        RecordingChanges changes = new RecordingChanges("process", "repository", "ws1");
+        changes.freeze(userId, null, new JodaDateTime(System.currentTimeMillis()));
+        return changes;
+    }
+
+    protected Property title( String value ) {
+        return context.getPropertyFactory().create(title, value);
+    }
+
+    protected List<Change> changesIn( ChangeSet changeSet ) {
+        List<Change> changes = new ArrayList<Change>();
+        for (Change change : changeSet) {
+            changes.add(change);
+        }
+        return changes;
+    }
+
+    @Test
+    public void shouldNotMergeChangeSetsMadeByDifferentUsers() {
+        RecordingChanges first = changes("user1");
+        first.nodeChanged(PARENT, parentPath);
+        RecordingChanges second = changes("user2");
+        second.nodeChanged(PARENT, parentPath);
+        List<ChangeSet> batch = new ArrayList<ChangeSet>();
+        batch.add(first);
+        batch.add(second);
+        assertThat(ChangeSetCoalescer.coalesce(batch).size(), is(2));
+    }
+
+    @Test
+    public void shouldCoalesceRepeatedChangesToSameNodeAndProperty() {
+        RecordingChanges first = changes("user");
+        first.nodeChanged(PARENT, parentPath);
+        first.propertyAdded(PARENT, parentPath, title("a"));
+        first.setChangedNodes(Collections.singleton(PARENT));
+        RecordingChanges second = changes("user");
+        second.nodeChanged(PARENT, parentPath);
+        second.propertyChanged(PARENT, parentPath, title("b"), title("a"));
+        RecordingChanges third = changes("user");
+        third.nodeChanged(PARENT, parentPath);
+        third.propertyChanged(PARENT, parentPath, title("c"), title("b"));
+        third.setChangedNodes(Collections.singleton(PARENT));
+
+        List<ChangeSet> batch = new ArrayList<ChangeSet>();
+        batch.add(first);
+        batch.add(second);
+        batch.add(third);
+        List<ChangeSet> coalesced = ChangeSetCoalescer.coalesce(batch);
+        assertThat(coalesced.size(), is(1));
+        assertThat(coalesced.get(0).changedNodes(), is(Collections.singleton(PARENT)));
+        assertThat(coalesced.get(0).getUserId(), is("user"));
+
+        List<Change> changes = changesIn(coalesced.get(0));
+        assertThat(changes.size(), is(2));
+        // The coalesced events are placed where the last of the events they replace was ...
+        assertThat(changes.get(0), is(instanceOf(NodeChanged.class)));
+        assertThat(changes.get(1), is(instanceOf(PropertyAdded.class)));
+        assertThat(((PropertyAdded)changes.get(1)).getProperty().getFirstValue(), is((Object)"c"));
+    }
+
+    @Test
+    public void shouldCombinePropertyChangesUsingFirstOldValueAndLastNewValue() {
+        RecordingChanges first = changes("user");
+        first.propertyChanged(PARENT, parentPath, title("b"), title("a"));
+        RecordingChanges second = changes("user");
+        second.propertyChanged(PARENT, parentPath, title("c"), title("b"));
+
+        List<ChangeSet> batch = new ArrayList<ChangeSet>();
+        batch.add(first);
+        batch.add(second);
+        List<Change> changes = changesIn(ChangeSetCoalescer.coalesce(batch).get(0));
+        assertThat(changes.size(), is(1));
+        PropertyChanged changed = (PropertyChanged)changes.get(0);
+        assertThat(changed.getNewProperty().getFirstValue(), is((Object)"c"));
+        assertThat(changed.getOldProperty().getFirstValue(), is((Object)"a"));
+    }
+
+    @Test
+    public void shouldDropPropertyChangesForNodesThatAreLaterRemoved() {
+        RecordingChanges first = changes("user");
+        first.nodeCreated(CHILD, PARENT, childPath, null);
+        first.propertyAdded(CHILD, childPath, title("a"));
+        first.nodeChanged(PARENT, parentPath);
+        RecordingChanges second = changes("user");
+        second.propertyChanged(CHILD, childPath, title("b"), title("a"));
+        second.nodeChanged(CHILD, childPath);
+        second.nodeRemoved(CHILD, PARENT, childPath);
+        second.nodeChanged(PARENT, parentPath);
+
+        List<ChangeSet> batch = new ArrayList<ChangeSet>();
+        batch.add(first);
+        batch.add(second);
+        List<Change> changes = changesIn(ChangeSetCoalescer.coalesce(batch).get(0));
+        assertThat(changes.size(), is(3));
+        assertThat(changes.get(0), is(instanceOf(NodeAdded.class)));
+        assertThat(changes.get(1), is(instanceOf(NodeRemoved.class)));
+        assertThat(changes.get(2), is(instanceOf(NodeChanged.class)));
+    }
+}
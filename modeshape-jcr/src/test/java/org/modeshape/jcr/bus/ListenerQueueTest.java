@@ -0,0 +1,190 @@
+/*
+ * ModeShape (http://www.modeshape.org)
+ * See the COPYRIGHT.txt file distributed with this work for information
+ * regarding copyright ownership.  Some portions may be licensed
+ * to Red Hat, Inc. under one or more contributor license agreements.
+ * See the AUTHORS.txt file in the distribution for a full listing of
+ * individual contributors.
+ *
+ * ModeShape is free software. Unless otherwise indicated, all code in ModeShape
+ * is licensed to you under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * ModeShape is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+package org.modeshape.jcr.bus;
+
+import static org.hamcrest.core.Is.is;
+import static org.junit.Assert.assertThat;
+import static org.junit.Assert.assertTrue;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Unit test for {@link ListenerQueue}
+ */
+public class ListenerQueueTest {
+
+    private ExecutorService executor;
+
+    @Before
+    public void beforeEach() {
+        executor = Executors.newCachedThreadPool();
+    }
+
+    @After
+    public void afterEach() {
+        executor.shutdownNow();
+    }
+
+    @Test
+    public void shouldDeliverItemsInOrderAndInBatches() throws Exception {
+        CountDownLatch blocked = new CountDownLatch(1);
+        TestQueue queue = new TestQueue(0, 10, blocked);
+        for (int i = 0; i != 25; ++i) {
+            queue.add(i);
+        }
+        blocked.countDown();
+        queue.awaitDelivered(25);
+        List<Integer> expected = new ArrayList<Integer>();
+        for (int i = 0; i != 25; ++i) {
+            expected.add(i);
+        }
+        assertThat(queue.delivered(), is(expected));
+        assertTrue(queue.batches <= 4);
+        assertThat(queue.size(), is(0));
+        assertThat(queue.recordedSize.get(), is(0));
+        assertTrue(queue.recordedPeakSize >= 15);
+    }
+
+    @Test
+    public void shouldBlockAddingThreadWhileQueueIsFull() throws Exception {
+        CountDownLatch blocked = new CountDownLatch(1);
+        final TestQueue queue = new TestQueue(2, 1, blocked);
+        Thread publisher = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                for (int i = 0; i != 10; ++i) {
+                    queue.add(i);
+                }
+            }
+        });
+        publisher.start();
+        publisher.join(500);
+        assertThat(publisher.isAlive(), is(true));
+        assertTrue(queue.recordedPeakSize <= 2);
+
+        blocked.countDown();
+        publisher.join(5000);
+        assertThat(publisher.isAlive(), is(false));
+        queue.awaitDelivered(10);
+    }
+
+    @Test
+    public void shouldNotBlockThreadThatIsDeliveringItems() throws Exception {
+        CountDownLatch blocked = new CountDownLatch(1);
+        final TestQueue full = new TestQueue(1, 1, blocked);
+        full.add(0);
+        full.add(1);
+        // A listener that adds items to the full queue while its own items are being delivered ...
+        TestQueue forwarding = new TestQueue(0, 1, null) {
+            @Override
+            protected void deliver( List<Integer> items ) {
+                for (Integer item : items) {
+                    full.add(item);
+                }
+                super.deliver(items);
+            }
+        };
+        forwarding.add(2);
+        forwarding.awaitDelivered(1);
+        blocked.countDown();
+        full.awaitDelivered(3);
+    }
+
+    @Test
+    public void shouldReleaseBlockedThreadsWhenClosed() throws Exception {
+        CountDownLatch blocked = new CountDownLatch(1);
+        try {
+            final TestQueue queue = new TestQueue(1, 1, blocked);
+            Thread publisher = new Thread(new Runnable() {
+                @Override
+                public void run() {
+                    for (int i = 0; i != 5; ++i) {
+                        queue.add(i);
+                    }
+                }
+            });
+            publisher.start();
+            publisher.join(500);
+            assertThat(publisher.isAlive(), is(true));
+            queue.close();
+            publisher.join(5000);
+            assertThat(publisher.isAlive(), is(false));
+        } finally {
+            blocked.countDown();
+        }
+    }
+
+    protected class TestQueue extends ListenerQueue<Integer> {
+        private final CountDownLatch blocked;
+        private final List<Integer> delivered = Collections.synchronizedList(new ArrayList<Integer>());
+        protected volatile int batches;
+        protected final AtomicInteger recordedSize = new AtomicInteger();
+        protected volatile int recordedPeakSize;
+
+        protected TestQueue( int capacity,
+                             int maxBatchSize,
+                             CountDownLatch blocked ) {
+            super("test", executor, capacity, maxBatchSize);
+            this.blocked = blocked;
+        }
+
+        @Override
+        protected synchronized void sizeChanged( int delta ) {
+            recordedPeakSize = Math.max(recordedPeakSize, recordedSize.addAndGet(delta));
+        }
+
+        @Override
+        protected void deliver( List<Integer> items ) {
+            try {
+                if (blocked != null) blocked.await();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return;
+            }
+            ++batches;
+            delivered.addAll(items);
+        }
+
+        protected List<Integer> delivered() {
+            return delivered;
+        }
+
+        protected void awaitDelivered( int count ) throws InterruptedException {
+            long deadline = System.currentTimeMillis() + TimeUnit.SECONDS.toMillis(10);
+            while (delivered.size() < count && System.currentTimeMillis() < deadline) {
+                Thread.sleep(10);
+            }
+            assertThat(delivered.size(), is(count));
+        }
+    }
+}
@@ -24,7 +24,9 @@
 
 package org.modeshape.jcr.bus;
 
+import static org.hamcrest.core.Is.is;
 import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertThat;
 import static org.junit.Assert.assertTrue;
 import java.util.ArrayList;
 import java.util.Collections;
@@ -36,13 +38,18 @@ import java.util.Set;
 import java.util.concurrent.CountDownLatch;
 import java.util.concurrent.Executors;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
 import org.junit.After;
 import org.junit.Before;
 import org.junit.Test;
+import org.modeshape.jcr.ValueRecorder;
+import org.modeshape.jcr.api.monitor.ValueMetric;
 import org.modeshape.jcr.api.value.DateTime;
 import org.modeshape.jcr.cache.NodeKey;
 import org.modeshape.jcr.cache.change.Change;
 import org.modeshape.jcr.cache.change.ChangeSet;
+import org.modeshape.jcr.cache.change.ChangeSetBatchListener;
 import org.modeshape.jcr.cache.change.ChangeSetListener;
 import org.modeshape.jcr.value.basic.JodaDateTime;
 
@@ -179,6 +186,160 @@ public class RepositoryChangeBusTest {
         assertChangesDispatched(listener);
     }
 
+    @Test
+    public void shouldDeliverChangeSetsInBatchesToBatchListeners() throws Exception {
+        TestValueRecorder recorder = new TestValueRecorder();
+        RepositoryChangeBus bus = new RepositoryChangeBus(Executors.newCachedThreadPool(), null, false, 100, 10, recorder);
+        try {
+            final CountDownLatch blocked = new CountDownLatch(1);
+            TestBatchListener listener = new TestBatchListener(blocked, 25);
+            bus.register(listener);
+            for (int i = 0; i != 25; ++i) {
+                // Use a different user for each change set, so that they're not merged ...
+                bus.notify(new TestChangeSet(WORKSPACE1, "user" + i));
+            }
+            // The first batch is being delivered, while the others accumulate ...
+            assertTrue(recorder.value() >= 15);
+            blocked.countDown();
+            listener.await();
+            assertThat(listener.getChangeSetCount(), is(25));
+            // The remaining change sets should have been delivered in batches of at most 10 ...
+            assertTrue(listener.getBatchCount() <= 4);
+            assertThat(recorder.value(), is(0L));
+            assertTrue(recorder.peak() >= 15);
+        } finally {
+            bus.shutdown();
+        }
+    }
+
+    @Test
+    public void shouldBlockPublishersWhenListenerQueueIsFull() throws Exception {
+        TestValueRecorder recorder = new TestValueRecorder();
+        final RepositoryChangeBus bus = new RepositoryChangeBus(Executors.newCachedThreadPool(), null, false, 2, 10, recorder);
+        try {
+            final CountDownLatch blocked = new CountDownLatch(1);
+            TestBatchListener listener = new TestBatchListener(blocked, 10);
+            bus.register(listener);
+            Thread publisher = new Thread(new Runnable() {
+                @Override
+                public void run() {
+                    for (int i = 0; i != 10; ++i) {
+                        bus.notify(new TestChangeSet(WORKSPACE1, "user" + i));
+                    }
+                }
+            });
+            publisher.start();
+            publisher.join(500);
+            // The publisher should be waiting for the listener to catch up ...
+            assertThat(publisher.isAlive(), is(true));
+            assertTrue(recorder.peak() <= 2);
+
+            blocked.countDown();
+            publisher.join(5000);
+            assertThat(publisher.isAlive(), is(false));
+            listener.await();
+            assertThat(listener.getChangeSetCount(), is(10));
+        } finally {
+            bus.shutdown();
+        }
+    }
+
+    @Test
+    public void shouldKeepInterruptedPublishersWaitingUntilListenerQueueHasSpace() throws Exception {
+        TestValueRecorder recorder = new TestValueRecorder();
+        final RepositoryChangeBus bus = new RepositoryChangeBus(Executors.newCachedThreadPool(), null, false, 2, 10, recorder);
+        final CountDownLatch blocked = new CountDownLatch(1);
+        try {
+            TestBatchListener listener = new TestBatchListener(blocked, 10);
+            bus.register(listener);
+            final AtomicBoolean interrupted = new AtomicBoolean();
+            Thread publisher = new Thread(new Runnable() {
+                @Override
+                public void run() {
+                    for (int i = 0; i != 10; ++i) {
+                        bus.notify(new TestChangeSet(WORKSPACE1, "user" + i));
+                    }
+                    interrupted.set(Thread.currentThread().isInterrupted());
+                }
+            });
+            publisher.start();
+            publisher.join(500);
+            assertThat(publisher.isAlive(), is(true));
+
+            // Interrupting the publisher should neither drop the change set nor let the queue exceed its capacity ...
+            publisher.interrupt();
+            publisher.join(500);
+            assertThat(publisher.isAlive(), is(true));
+            assertTrue(recorder.peak() <= 2);
+
+            blocked.countDown();
+            publisher.join(5000);
+            assertThat(publisher.isAlive(), is(false));
+            assertThat(interrupted.get(), is(true));
+            listener.await();
+            assertThat(listener.getChangeSetCount(), is(10));
+        } finally {
+            blocked.countDown();
+            bus.shutdown();
+        }
+    }
+
+    @Test
+    public void shouldReleaseBlockedPublishersOnShutdown() throws Exception {
+        final RepositoryChangeBus bus = new RepositoryChangeBus(Executors.newCachedThreadPool(), null, false, 2, 10,
+                                                                ValueRecorder.NO_OP);
+        final CountDownLatch blocked = new CountDownLatch(1);
+        try {
+            TestBatchListener listener = new TestBatchListener(blocked, 10);
+            bus.register(listener);
+            Thread publisher = new Thread(new Runnable() {
+                @Override
+                public void run() {
+                    for (int i = 0; i != 10; ++i) {
+                        bus.notify(new TestChangeSet(WORKSPACE1, "user" + i));
+                    }
+                }
+            });
+            publisher.start();
+            publisher.join(500);
+            assertThat(publisher.isAlive(), is(true));
+
+            // Shutting down should release the publisher even though the listener is still blocked ...
+            bus.shutdown();
+            publisher.join(5000);
+            assertThat(publisher.isAlive(), is(false));
+        } finally {
+            blocked.countDown();
+            bus.shutdown();
+        }
+    }
+
+    @Test
+    public void shouldDeliverChangeSetsInOrderToManyListenersUsingFewThreads() throws Exception {
+        RepositoryChangeBus bus = new RepositoryChangeBus(Executors.newFixedThreadPool(2), null, false);
+        try {
+            List<TestListener> listeners = new ArrayList<TestListener>();
+            for (int i = 0; i != 200; ++i) {
+                TestListener listener = new TestListener(20);
+                listeners.add(listener);
+                bus.register(listener);
+            }
+            for (int i = 0; i != 20; ++i) {
+                bus.notify(new TestChangeSet(WORKSPACE1, "user" + i));
+            }
+            for (TestListener listener : listeners) {
+                listener.await();
+                List<TestChangeSet> received = listener.getObservedChangeSet();
+                assertThat(received.size(), is(20));
+                for (int i = 0; i != 20; ++i) {
+                    assertThat(received.get(i).getUserId(), is("user" + i));
+                }
+            }
+        } finally {
+            bus.shutdown();
+        }
+    }
+
     protected ChangeBus getChangeBus() throws Exception {
         return changeBus;
     }
@@ -208,10 +369,17 @@ public class RepositoryChangeBusTest {
         private static final long serialVersionUID = 1L;
 
         private final String workspaceName;
+        private final String userId;
         private final DateTime dateTime;
 
         protected TestChangeSet( String workspaceName ) {
+            this(workspaceName, null);
+        }
+
+        protected TestChangeSet( String workspaceName,
+                                 String userId ) {
             this.workspaceName = workspaceName;
+            this.userId = userId;
             this.dateTime = new JodaDateTime(System.currentTimeMillis());
         }
 
@@ -232,7 +400,7 @@ public class RepositoryChangeBusTest {
 
         @Override
         public String getUserId() {
-            return null;
+            return userId;
         }
 
         @Override
@@ -286,6 +454,80 @@ public class RepositoryChangeBusTest {
         }
     }
 
+    protected static class TestValueRecorder implements ValueRecorder {
+        private final AtomicLong value = new AtomicLong();
+        private final AtomicLong peak = new AtomicLong();
+
+        @Override
+        public void increment( ValueMetric metric,
+                               long incrementalValue ) {
+            assertThat(metric, is(ValueMetric.CHANGE_SET_QUEUE_SIZE));
+            long newValue = value.addAndGet(incrementalValue);
+            long oldPeak = peak.get();
+            while (newValue > oldPeak && !peak.compareAndSet(oldPeak, newValue)) {
+                oldPeak = peak.get();
+            }
+        }
+
+        protected long value() {
+            return value.get();
+        }
+
+        protected long peak() {
+            return peak.get();
+        }
+    }
+
+    protected static class TestBatchListener implements ChangeSetBatchListener {
+        private final CountDownLatch blocked;
+        private final CountDownLatch delivered;
+        private final List<ChangeSet> received = Collections.synchronizedList(new ArrayList<ChangeSet>());
+        private volatile int batchCount;
+
+        protected TestBatchListener( CountDownLatch blocked,
+                                     int expectedNumberOfChangeSets ) {
+            this.blocked = blocked;
+            this.delivered = new CountDownLatch(expectedNumberOfChangeSets);
+        }
+
+        @Override
+        public void notify( ChangeSet changeSet ) {
+            awaitUnblocked();
+            received.add(changeSet);
+            delivered.countDown();
+        }
+
+        @Override
+        public void notify( List<ChangeSet> changeSets ) {
+            awaitUnblocked();
+            ++batchCount;
+            received.addAll(changeSets);
+            for (int i = 0; i != changeSets.size(); ++i) {
+                delivered.countDown();
+            }
+        }
+
+        private void awaitUnblocked() {
+            try {
+                blocked.await(10, TimeUnit.SECONDS);
+            } catch (InterruptedException e) {
+                Thread.interrupted();
+            }
+        }
+
+        public void await() throws InterruptedException {
+            delivered.await(5, TimeUnit.SECONDS);
+        }
+
+        public int getBatchCount() {
+            return batchCount;
+        }
+
+        public int getChangeSetCount() {
+            return received.size();
+        }
+    }
+
     protected static class TestListener implements ChangeSetListener {
         private final List<TestChangeSet> receivedChangeSet;
         private CountDownLatch latch;
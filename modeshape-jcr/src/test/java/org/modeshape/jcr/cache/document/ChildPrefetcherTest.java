@@ -0,0 +1,155 @@
+/*
+ * ModeShape (http://www.modeshape.org)
+ * See the COPYRIGHT.txt file distributed with this work for information
+ * regarding copyright ownership.  Some portions may be licensed
+ * to Red Hat, Inc. under one or more contributor license agreements.
+ * See the AUTHORS.txt file in the distribution for a full listing of 
+ * individual contributors.
+ *
+ * ModeShape is free software. Unless otherwise indicated, all code in ModeShape
+ * is licensed to you under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ * 
+ * ModeShape is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+package org.modeshape.jcr.cache.document;
+
+import static org.hamcrest.core.Is.is;
+import static org.junit.Assert.assertThat;
+import java.util.EnumMap;
+import java.util.LinkedList;
+import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executor;
+import org.junit.Test;
+import org.modeshape.jcr.AbstractSchematicDbTest;
+import org.modeshape.jcr.ExecutionContext;
+import org.modeshape.jcr.ValueRecorder;
+import org.modeshape.jcr.api.monitor.ValueMetric;
+import org.modeshape.jcr.cache.CachedNode;
+import org.modeshape.jcr.cache.NodeCache;
+import org.modeshape.jcr.cache.NodeKey;
+
+public class ChildPrefetcherTest extends AbstractSchematicDbTest {
+
+    private static final NodeKey ROOT_KEY = new NodeKey("source1works1-cafebabe-cafe-babe-cafe-babecafebabe");
+    private static final NodeKey SYSTEM_KEY = new NodeKey("source1system-jcrsystem");
+    private static final NodeKey NAMESPACES_KEY = new NodeKey("source1system-jcrnamespaces");
+    private static final NodeKey CHILD_A_KEY = new NodeKey("source1works1-childA");
+    private static final NodeKey CHILD_B_KEY = new NodeKey("source1works1-childB");
+
+    private final Queue<Runnable> tasks = new LinkedList<Runnable>();
+    private final Executor queuingExecutor = new Executor() {
+        @SuppressWarnings( "synthetic-access" )
+        @Override
+        public void execute( Runnable command ) {
+            tasks.add(command);
+        }
+    };
+
+    private final Map<ValueMetric, Long> metrics = new EnumMap<ValueMetric, Long>(ValueMetric.class);
+    private final ValueRecorder recorder = new ValueRecorder() {
+        @SuppressWarnings( "synthetic-access" )
+        @Override
+        public void increment( ValueMetric metric,
+                               long incrementalValue ) {
+            metrics.put(metric, metric(metric) + incrementalValue);
+        }
+    };
+
+    protected long metric( ValueMetric metric ) {
+        Long value = metrics.get(metric);
+        return value != null ? value.longValue() : 0L;
+    }
+
+    protected WorkspaceCache createCache() {
+        ExecutionContext context = new ExecutionContext();
+        DocumentStore documentStore = new LocalDocumentStore(schematicDb);
+        DocumentTranslator translator = new DocumentTranslator(context, documentStore, 100L);
+        WorkspaceCache cache = new WorkspaceCache(context, "repo", "ws", documentStore, translator, ROOT_KEY,
+                                                  new ConcurrentHashMap<NodeKey, CachedNode>(), null);
+        loadJsonDocuments(resource("data/simple.json"));
+        return cache;
+    }
+
+    protected void runTasks() {
+        Runnable task = null;
+        while ((task = tasks.poll()) != null) {
+            task.run();
+        }
+    }
+
+    @Test
+    public void shouldPrefetchRemainingChildrenOnceThresholdIsReached() {
+        WorkspaceCache cache = createCache();
+        ChildPrefetcher prefetcher = new ChildPrefetcher(cache, queuingExecutor, recorder, 2, 100, 1);
+        cache.setChildPrefetcher(prefetcher);
+        cache.getNode(ROOT_KEY);
+        cache.getNode(CHILD_A_KEY);
+        assertThat(tasks.isEmpty(), is(true));
+        cache.getNode(CHILD_B_KEY);
+        assertThat(tasks.size(), is(1));
+        runTasks();
+        assertThat(prefetcher.getPrefetchCount(), is(1L));
+        assertThat(prefetcher.getPrefetchedNodeCount(), is(1L));
+        assertThat(prefetcher.getMissCount(), is(3L));
+        assertThat(prefetcher.getHitCount(), is(0L));
+
+        // The only remaining child was prefetched ...
+        assertThat(cache.isCached(SYSTEM_KEY), is(true));
+        cache.getNode(SYSTEM_KEY);
+        assertThat(prefetcher.getHitCount(), is(1L));
+        assertThat(prefetcher.getMissCount(), is(3L));
+
+        // Subsequent requests for the same node are not counted as hits ...
+        cache.getNode(SYSTEM_KEY);
+        assertThat(prefetcher.getHitCount(), is(1L));
+        assertThat(metric(ValueMetric.CHILD_PREFETCH_HIT_COUNT), is(1L));
+        assertThat(metric(ValueMetric.CHILD_PREFETCH_MISS_COUNT), is(3L));
+    }
+
+    @Test
+    public void shouldSkipPrefetchesBeyondConcurrencyLimit() {
+        WorkspaceCache cache = createCache();
+        ChildPrefetcher prefetcher = new ChildPrefetcher(cache, queuingExecutor, recorder, 1, 100, 1);
+        cache.setChildPrefetcher(prefetcher);
+        cache.getNode(CHILD_A_KEY);
+        assertThat(tasks.size(), is(1));
+        cache.getNode(NAMESPACES_KEY);
+        assertThat(tasks.size(), is(1));
+        assertThat(prefetcher.getSkippedCount(), is(1L));
+        runTasks();
+        assertThat(prefetcher.getPrefetchCount(), is(1L));
+    }
+
+    @Test
+    public void shouldNotPrefetchMoreThanMaximumNumberOfNodes() {
+        WorkspaceCache cache = createCache();
+        ChildPrefetcher prefetcher = new ChildPrefetcher(cache, queuingExecutor, recorder, 1, 1, 1);
+        cache.setChildPrefetcher(prefetcher);
+        cache.getNode(ROOT_KEY);
+        assertThat(prefetcher.prefetchChildrenOf(ROOT_KEY), is(1));
+        assertThat(prefetcher.getPrefetchedNodeCount(), is(1L));
+        assertThat(cache.isCached(SYSTEM_KEY), is(true));
+        assertThat(cache.isCached(CHILD_A_KEY), is(false));
+    }
+
+    @Test
+    public void shouldNotPrefetchWhenNotEnabled() {
+        NodeCache cache = createCache();
+        cache.getNode(CHILD_A_KEY);
+        cache.getNode(CHILD_B_KEY);
+        assertThat(tasks.isEmpty(), is(true));
+        assertThat(((WorkspaceCache)cache).childPrefetcher() == null, is(true));
+    }
+}
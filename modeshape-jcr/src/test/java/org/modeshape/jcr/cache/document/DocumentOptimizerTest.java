@@ -24,6 +24,7 @@
 package org.modeshape.jcr.cache.document;
 
 import static org.hamcrest.core.Is.is;
+import static org.hamcrest.core.IsNull.notNullValue;
 import static org.junit.Assert.assertThat;
 import static org.junit.Assert.fail;
 import java.util.Arrays;
@@ -41,6 +42,8 @@ import org.modeshape.jcr.cache.MutableCachedNode;
 import org.modeshape.jcr.cache.NodeKey;
 import org.modeshape.jcr.cache.SessionCache;
 import org.modeshape.jcr.cache.SessionEnvironment;
+import org.modeshape.jcr.cache.change.RecordingChanges;
+import org.modeshape.jcr.cache.document.LocalDocumentStore.DocumentOperationResults;
 import org.modeshape.jcr.value.Name;
 import org.modeshape.jcr.value.Path.Segment;
 
@@ -175,6 +178,47 @@ public class DocumentOptimizerTest extends AbstractSessionCacheTest {
         print(document(key), true);
     }
 
+    @Test
+    public void shouldOptimizeOnlyNodesWhoseChildrenChangedInThisProcess() throws Exception {
+        MutableCachedNode nodeB = check(session1).mutableNode("/childB");
+        NodeKey key = nodeB.getKey();
+        optimizer.optimizeChildrenBlocks(key, null, 5, 2); // will merge into a single block ...
+        session1.save();
+        nodeB = check(session1).mutableNode("/childB");
+        for (int i = 0; i != 10; ++i) {
+            nodeB.createChild(session(), key.withId("child" + (i + 1)), name("newChild"), property("p1a", 344));
+        }
+        session1.save();
+        assertThat(document(key).getDocument(DocumentTranslator.CHILDREN_INFO).containsField(DocumentTranslator.NEXT_BLOCK),
+                   is(false));
+
+        ChangedChildrenOptimizer changedOptimizer = new ChangedChildrenOptimizer(context.getProcessId(),
+                                                                                 new LocalDocumentStore(schematicDb), 5, 2);
+        // Changes made in other processes are ignored ...
+        RecordingChanges changes = new RecordingChanges("otherProcess", "repo", "ws");
+        changes.nodeCreated(key.withId("child1"), key, path("/childB/newChild"), null);
+        changes.freeze("user", null, context.getValueFactories().getDateFactory().create());
+        changedOptimizer.notify(changes);
+        assertThat(changedOptimizer.getBacklogSize(), is(0));
+
+        changes = new RecordingChanges(context.getProcessId(), "repo", "ws");
+        changes.nodeCreated(key.withId("child1"), key, path("/childB/newChild"), null);
+        changes.nodeCreated(key.withId("child2"), key, path("/childB/newChild[2]"), null);
+        changes.freeze("user", null, context.getValueFactories().getDateFactory().create());
+        changedOptimizer.notify(changes);
+        assertThat(changedOptimizer.getBacklogSize(), is(1));
+
+        // Optimize the changed node, which will split the children into blocks ...
+        DocumentOperationResults results = changedOptimizer.optimize(0);
+        assertThat(results.toString(), results.getModifiedCount(), is(1L));
+        assertThat(changedOptimizer.getBacklogSize(), is(0));
+        assertThat(changedOptimizer.getOptimizedCount(), is(1L));
+        assertThat(document(key).getDocument(DocumentTranslator.CHILDREN_INFO).getString(DocumentTranslator.NEXT_BLOCK),
+                   is(notNullValue()));
+        print(false);
+        print(document(key), true);
+    }
+
     protected Document document( NodeKey key ) {
         SchematicEntry entry = workspaceCache.documentStore().get(key.toString());
         return entry.getContentAsDocument();
@@ -0,0 +1,118 @@
+/*
+ * ModeShape (http://www.modeshape.org)
+ * See the COPYRIGHT.txt file distributed with this work for information
+ * regarding copyright ownership.  Some portions may be licensed
+ * to Red Hat, Inc. under one or more contributor license agreements.
+ * See the AUTHORS.txt file in the distribution for a full listing of
+ * individual contributors.
+ *
+ * ModeShape is free software. Unless otherwise indicated, all code in ModeShape
+ * is licensed to you under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * ModeShape is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+package org.modeshape.jcr.cache.document;
+
+import static org.hamcrest.core.Is.is;
+import static org.hamcrest.core.IsNull.nullValue;
+import static org.junit.Assert.assertThat;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import org.junit.Before;
+import org.junit.Test;
+import org.modeshape.jcr.ExecutionContext;
+import org.modeshape.jcr.cache.ChildReference;
+import org.modeshape.jcr.cache.ChildReferences;
+import org.modeshape.jcr.cache.NodeKey;
+import org.modeshape.jcr.value.Name;
+import org.modeshape.jcr.value.NameFactory;
+
+/**
+ * Unit test for the {@link ImmutableChildReferences} held in memory.
+ */
+public class ImmutableChildReferencesTest {
+
+    private NameFactory names;
+
+    @Before
+    public void beforeEach() {
+        names = new ExecutionContext().getValueFactories().getNameFactory();
+    }
+
+    protected NodeKey key( int i ) {
+        return new NodeKey("source1works1-child" + i);
+    }
+
+    protected Name name( String name ) {
+        return names.create(name);
+    }
+
+    @Test
+    public void shouldFindChildrenOfLargeFlatListByNameAndKey() {
+        int count = 10000;
+        List<ChildReference> refs = new ArrayList<ChildReference>(count);
+        for (int i = 0; i != count; ++i) {
+            refs.add(new ChildReference(key(i), name("child" + i), 1));
+        }
+        ChildReferences children = ImmutableChildReferences.create(refs);
+        assertThat(children.size(), is((long)count));
+        for (int i = 0; i < count; i += 7) {
+            ChildReference byName = children.getChild(name("child" + i), 1);
+            assertThat(byName.getKey(), is(key(i)));
+            assertThat(children.getChild(key(i)).getName(), is(name("child" + i)));
+            assertThat(children.hasChild(key(i)), is(true));
+            assertThat(children.getChildCount(name("child" + i)), is(1));
+        }
+        assertThat(children.getChild(name("child1"), 2), is(nullValue()));
+        assertThat(children.getChild(name("missing"), 1), is(nullValue()));
+        assertThat(children.getChild(key(count)), is(nullValue()));
+        assertThat(children.hasChild(key(count)), is(false));
+        assertThat(children.getChildCount(name("missing")), is(0));
+
+        // The order of the children is preserved ...
+        Iterator<ChildReference> iter = children.iterator();
+        Iterator<NodeKey> keys = children.getAllKeys();
+        for (int i = 0; i != count; ++i) {
+            assertThat(iter.next().getKey(), is(key(i)));
+            assertThat(keys.next(), is(key(i)));
+        }
+        assertThat(iter.hasNext(), is(false));
+        assertThat(keys.hasNext(), is(false));
+    }
+
+    @Test
+    public void shouldFindSameNameSiblings() {
+        List<ChildReference> refs = new ArrayList<ChildReference>();
+        for (int i = 0; i != 30; ++i) {
+            // Interleave the same-name-siblings with other children ...
+            refs.add(new ChildReference(key(i), name(i % 3 == 0 ? "sns" : "other" + i), 1));
+        }
+        ChildReferences children = ImmutableChildReferences.create(refs);
+        assertThat(children.size(), is(30L));
+        assertThat(children.getChildCount(name("sns")), is(10));
+        for (int sns = 1; sns <= 10; ++sns) {
+            ChildReference ref = children.getChild(name("sns"), sns);
+            assertThat(ref.getKey(), is(key((sns - 1) * 3)));
+            assertThat(ref.getSnsIndex(), is(sns));
+            assertThat(children.getChild(key((sns - 1) * 3)).getSnsIndex(), is(sns));
+        }
+        assertThat(children.getChild(name("sns"), 11), is(nullValue()));
+
+        Iterator<ChildReference> iter = children.iterator(name("sns"));
+        for (int sns = 1; sns <= 10; ++sns) {
+            assertThat(iter.next().getKey(), is(key((sns - 1) * 3)));
+        }
+        assertThat(iter.hasNext(), is(false));
+    }
+}
@@ -23,18 +23,37 @@
  */
 package org.modeshape.jcr.cache.document;
 
+import static org.hamcrest.core.Is.is;
+import static org.hamcrest.core.IsSame.sameInstance;
+import static org.junit.Assert.assertThat;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
 import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.infinispan.schematic.SchematicEntry;
+import org.junit.Test;
 import org.modeshape.jcr.cache.CachedNode;
 import org.modeshape.jcr.cache.NodeCache;
 import org.modeshape.jcr.cache.NodeKey;
 
 public class WorkspaceCacheTest extends AbstractNodeCacheTest {
 
+    private CountingDocumentStore documentStore;
+
     @Override
     protected NodeCache createCache() {
         ConcurrentMap<NodeKey, CachedNode> nodeCache = new ConcurrentHashMap<NodeKey, CachedNode>();
-        DocumentStore documentStore = new LocalDocumentStore(schematicDb);
+        documentStore = new CountingDocumentStore();
         DocumentTranslator translator = new DocumentTranslator(context, documentStore, 100L);
         WorkspaceCache workspaceCache = new WorkspaceCache(context, "repo", "ws", documentStore, translator, ROOT_KEY_WS1,
                                                            nodeCache, null);
@@ -42,4 +61,94 @@ public class WorkspaceCacheTest extends AbstractNodeCacheTest {
         return workspaceCache;
     }
 
+    @Test
+    public void shouldGetNodesInOrderOfKeysWithSingleBulkRead() {
+        WorkspaceCache workspaceCache = (WorkspaceCache)cache;
+        NodeKey childA = new NodeKey("source1works1-childA");
+        NodeKey childB = new NodeKey("source1works1-childB");
+        NodeKey childC = new NodeKey("source1works1-childC");
+        NodeKey missing = new NodeKey("source1works1-missing");
+        List<NodeKey> keys = Arrays.asList(childC, missing, childA, childB);
+        Map<NodeKey, CachedNode> nodes = workspaceCache.getNodes(keys);
+        assertThat(new ArrayList<NodeKey>(nodes.keySet()), is(Arrays.asList(childC, childA, childB)));
+        assertThat(documentStore.bulkReads.get(), is(1));
+        assertThat(documentStore.reads.get(), is(0));
+
+        // The nodes are now cached ...
+        for (NodeKey key : nodes.keySet()) {
+            assertThat(workspaceCache.getNode(key), is(sameInstance(nodes.get(key))));
+        }
+        assertThat(workspaceCache.getNodes(keys).size(), is(3));
+        assertThat(documentStore.bulkReads.get(), is(2)); // only for the missing node
+        assertThat(documentStore.reads.get(), is(0));
+    }
+
+    @Test
+    public void shouldLoadNodeOnlyOnceWhenRequestedConcurrently() throws Exception {
+        final WorkspaceCache workspaceCache = (WorkspaceCache)cache;
+        final NodeKey childA = new NodeKey("source1works1-childA");
+        int threadCount = 8;
+        documentStore.blockReads();
+        ExecutorService executor = Executors.newFixedThreadPool(threadCount);
+        try {
+            List<Future<CachedNode>> results = new ArrayList<Future<CachedNode>>();
+            for (int i = 0; i != threadCount; ++i) {
+                results.add(executor.submit(new Callable<CachedNode>() {
+                    @Override
+                    public CachedNode call() {
+                        return workspaceCache.getNode(childA);
+                    }
+                }));
+            }
+            // Wait for the first read to start, give the other threads time to pile up, and then let the read complete ...
+            assertThat(documentStore.readStarted.await(10, TimeUnit.SECONDS), is(true));
+            Thread.sleep(100L);
+            documentStore.unblockReads();
+            CachedNode node = results.get(0).get(10, TimeUnit.SECONDS);
+            for (Future<CachedNode> result : results) {
+                assertThat(result.get(10, TimeUnit.SECONDS), is(sameInstance(node)));
+            }
+            assertThat(documentStore.reads.get(), is(1));
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    protected class CountingDocumentStore extends LocalDocumentStore {
+        protected final AtomicInteger reads = new AtomicInteger();
+        protected final AtomicInteger bulkReads = new AtomicInteger();
+        protected final CountDownLatch readStarted = new CountDownLatch(1);
+        private volatile CountDownLatch blocked = new CountDownLatch(0);
+
+        @SuppressWarnings( "synthetic-access" )
+        protected CountingDocumentStore() {
+            super(schematicDb);
+        }
+
+        protected void blockReads() {
+            blocked = new CountDownLatch(1);
+        }
+
+        protected void unblockReads() {
+            blocked.countDown();
+        }
+
+        @Override
+        public SchematicEntry get( String key ) {
+            reads.incrementAndGet();
+            readStarted.countDown();
+            try {
+                blocked.await();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            return super.get(key);
+        }
+
+        @Override
+        public Map<String, SchematicEntry> load( Collection<String> keys ) {
+            bulkReads.incrementAndGet();
+            return super.load(keys);
+        }
+    }
 }
@@ -0,0 +1,210 @@
+/*
+ * ModeShape (http://www.modeshape.org)
+ * See the COPYRIGHT.txt file distributed with this work for information
+ * regarding copyright ownership.  Some portions may be licensed
+ * to Red Hat, Inc. under one or more contributor license agreements.
+ * See the AUTHORS.txt file in the distribution for a full listing of 
+ * individual contributors.
+ *
+ * ModeShape is free software. Unless otherwise indicated, all code in ModeShape
+ * is licensed to you under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ * 
+ * ModeShape is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+package org.modeshape.jcr.cache.document;
+
+import static org.hamcrest.core.Is.is;
+import static org.hamcrest.core.IsNull.nullValue;
+import static org.junit.Assert.assertThat;
+import org.junit.Before;
+import org.junit.Test;
+import org.modeshape.jcr.ExecutionContext;
+import org.modeshape.jcr.cache.NodeKey;
+import org.modeshape.jcr.cache.change.RecordingChanges;
+import org.modeshape.jcr.value.Path;
+import org.modeshape.jcr.value.PathFactory;
+
+public class WorkspacePathCacheTest {
+
+    private ExecutionContext context;
+    private PathFactory paths;
+    private WorkspacePathCache cache;
+
+    @Before
+    public void beforeEach() {
+        context = new ExecutionContext();
+        paths = context.getValueFactories().getPathFactory();
+        cache = new WorkspacePathCache(100);
+    }
+
+    protected NodeKey key( String id ) {
+        return new NodeKey("source1works1-" + id);
+    }
+
+    protected Path path( String path ) {
+        return paths.create(path);
+    }
+
+    protected void cache( String id,
+                          String path ) {
+        cache.put(key(id), path(path), cache.currentEpoch());
+    }
+
+    protected RecordingChanges changes() {
+        return new RecordingChanges(context.getProcessId(), "repo", "ws");
+    }
+
+    protected void apply( RecordingChanges changes ) {
+        changes.freeze("user", null, context.getValueFactories().getDateFactory().create());
+        cache.invalidate(changes);
+    }
+
+    @Test
+    public void shouldReturnCachedPaths() {
+        cache("a", "/a");
+        cache("b", "/a/b");
+        assertThat(cache.get(key("a")), is(path("/a")));
+        assertThat(cache.get(key("b")), is(path("/a/b")));
+        assertThat(cache.get(key("c")), is(nullValue()));
+    }
+
+    @Test
+    public void shouldInvalidateOnlyTheSubtreeOfMovedNode() {
+        cache("a", "/a");
+        cache("b", "/a/b");
+        cache("c", "/a/b/c");
+        cache("d", "/a/d");
+        cache("bb", "/a/bb");
+        RecordingChanges changes = changes();
+        changes.nodeMoved(key("b"), key("d"), key("a"), path("/a/d/b"), path("/a/b"));
+        apply(changes);
+        assertThat(cache.get(key("b")), is(nullValue()));
+        assertThat(cache.get(key("c")), is(nullValue()));
+        assertThat(cache.get(key("a")), is(path("/a")));
+        assertThat(cache.get(key("d")), is(path("/a/d")));
+        assertThat(cache.get(key("bb")), is(path("/a/bb")));
+    }
+
+    @Test
+    public void shouldInvalidateSameNameSiblingsOfRemovedNode() {
+        cache("b1", "/a/b");
+        cache("b2", "/a/b[2]");
+        cache("b2c", "/a/b[2]/c");
+        cache("x", "/a/x");
+        cache("ab", "/x/b[2]");
+        RecordingChanges changes = changes();
+        changes.nodeRemoved(key("b1"), key("a"), path("/a/b"));
+        apply(changes);
+        assertThat(cache.get(key("b1")), is(nullValue()));
+        assertThat(cache.get(key("b2")), is(nullValue()));
+        assertThat(cache.get(key("b2c")), is(nullValue()));
+        assertThat(cache.get(key("x")), is(path("/a/x")));
+        assertThat(cache.get(key("ab")), is(path("/x/b[2]")));
+    }
+
+    @Test
+    public void shouldInvalidateRenamedAndReorderedNodes() {
+        cache("b", "/a/b");
+        cache("c", "/a/c");
+        cache("c2", "/a/c[2]/d");
+        cache("e", "/a/e");
+        RecordingChanges changes = changes();
+        changes.nodeRenamed(key("b"), path("/a/f"), path("/a/b").getLastSegment());
+        changes.nodeReordered(key("c2"), key("a"), path("/a/c"), path("/a/c[2]"), path("/a/c"));
+        apply(changes);
+        assertThat(cache.get(key("b")), is(nullValue()));
+        assertThat(cache.get(key("c")), is(nullValue()));
+        assertThat(cache.get(key("c2")), is(nullValue()));
+        assertThat(cache.get(key("e")), is(path("/a/e")));
+    }
+
+    @Test
+    public void shouldNotUsePathsComputedBeforeInvalidation() {
+        long epoch = cache.currentEpoch();
+        RecordingChanges changes = changes();
+        changes.nodeMoved(key("b"), key("d"), key("a"), path("/a/d/b"), path("/a/b"));
+        apply(changes);
+        // A path computed before the change is now put into the cache ...
+        cache.put(key("b"), path("/a/b"), epoch);
+        assertThat(cache.get(key("b")), is(nullValue()));
+        // But a path computed after the change is used ...
+        cache("b", "/a/d/b");
+        assertThat(cache.get(key("b")), is(path("/a/d/b")));
+    }
+
+    @Test
+    public void shouldKeepUnaffectedPathsAfterManyInvalidations() {
+        cache("e", "/e");
+        cache("x1", "/a/x1/y");
+        for (int i = 0; i != 100; ++i) {
+            RecordingChanges changes = changes();
+            changes.nodeRemoved(key("x" + i), key("a"), path("/a/x" + i));
+            apply(changes);
+        }
+        assertThat(cache.get(key("e")), is(path("/e")));
+        assertThat(cache.get(key("x1")), is(nullValue()));
+    }
+
+    @Test
+    public void shouldNotUsePathsComputedBeforeDiscardedInvalidations() {
+        long epoch = cache.currentEpoch();
+        for (int i = 0; i != 100; ++i) {
+            RecordingChanges changes = changes();
+            changes.nodeRemoved(key("x" + i), key("a"), path("/a/x" + i));
+            apply(changes);
+        }
+        cache.put(key("x1"), path("/a/x1/y"), epoch);
+        assertThat(cache.get(key("x1")), is(nullValue()));
+        cache("x1", "/a/x1/y");
+        assertThat(cache.get(key("x1")), is(path("/a/x1/y")));
+    }
+
+    @Test
+    public void shouldDiscardAllPathsWhenRootChanges() {
+        cache("e", "/e");
+        RecordingChanges changes = changes();
+        changes.nodeReordered(key("root"), key("none"), path("/"), null, null);
+        apply(changes);
+        assertThat(cache.get(key("e")), is(nullValue()));
+    }
+
+    @Test
+    public void shouldBoundTheNumberOfCachedPaths() {
+        for (int i = 0; i != 1000; ++i) {
+            cache("n" + i, "/n" + i);
+        }
+        assertThat(cache.size(), is(100));
+    }
+
+    @Test
+    public void shouldDiscardLeastRecentlyUsedPaths() {
+        for (int i = 0; i != 100; ++i) {
+            cache("n" + i, "/n" + i);
+        }
+        assertThat(cache.get(key("n0")), is(path("/n0")));
+        cache("n100", "/n100");
+        assertThat(cache.get(key("n0")), is(path("/n0")));
+        assertThat(cache.get(key("n1")), is(nullValue()));
+    }
+
+    @Test
+    public void shouldShrinkWhenMaximumSizeIsReduced() {
+        for (int i = 0; i != 100; ++i) {
+            cache("n" + i, "/n" + i);
+        }
+        cache.setMaxSize(10);
+        assertThat(cache.size(), is(10));
+        assertThat(cache.get(key("n99")), is(path("/n99")));
+        assertThat(cache.get(key("n89")), is(nullValue()));
+    }
+}
@@ -24,6 +24,8 @@
 package org.modeshape.jcr.query.optimize;
 
 import static org.hamcrest.core.Is.is;
+import static org.hamcrest.core.IsNull.notNullValue;
+import static org.hamcrest.core.IsNull.nullValue;
 import static org.junit.Assert.assertThat;
 import static org.mockito.Mockito.mock;
 import java.util.ArrayList;
@@ -661,6 +663,75 @@ public class RuleBasedOptimizerTest extends AbstractQueryTest {
         assertPlanMatches(access);
     }
 
+    @Test
+    public void shouldOptimizePlanForSimpleQueryWithLimitByPushingLimitIntoAccessNode() {
+        node = optimize("SELECT * FROM t1 LIMIT 10");
+        // Create the expected plan ...
+        PlanNode expected = new PlanNode(Type.LIMIT);
+        expected.setProperty(Property.LIMIT_COUNT, 10);
+        PlanNode access = new PlanNode(Type.ACCESS, expected, selector("t1"));
+        PlanNode accessLimit = new PlanNode(Type.LIMIT, access, selector("t1"));
+        accessLimit.setProperty(Property.LIMIT_COUNT, 10);
+        PlanNode project = new PlanNode(Type.PROJECT, accessLimit, selector("t1"));
+        project.setProperty(Property.PROJECT_COLUMNS, columns(column("t1", "c11"), column("t1", "c12"), column("t1", "c13")));
+        PlanNode source = new PlanNode(Type.SOURCE, project, selector("t1"));
+        source.setProperty(Property.SOURCE_NAME, selector("t1"));
+        source.setProperty(Property.SOURCE_COLUMNS, context.getSchemata().getTable(selector("t1")).getColumns());
+        // Compare the expected and actual plan ...
+        assertPlanMatches(expected);
+    }
+
+    @Test
+    public void shouldOptimizePlanForSimpleQueryWithLimitAndOffsetByPushingLimitIncludingOffsetIntoAccessNode() {
+        node = optimize("SELECT * FROM t1 LIMIT 10 OFFSET 20");
+        // Create the expected plan ...
+        PlanNode expected = new PlanNode(Type.LIMIT);
+        expected.setProperty(Property.LIMIT_COUNT, 10);
+        expected.setProperty(Property.LIMIT_OFFSET, 20);
+        PlanNode access = new PlanNode(Type.ACCESS, expected, selector("t1"));
+        PlanNode accessLimit = new PlanNode(Type.LIMIT, access, selector("t1"));
+        accessLimit.setProperty(Property.LIMIT_COUNT, 30);
+        PlanNode project = new PlanNode(Type.PROJECT, accessLimit, selector("t1"));
+        project.setProperty(Property.PROJECT_COLUMNS, columns(column("t1", "c11"), column("t1", "c12"), column("t1", "c13")));
+        PlanNode source = new PlanNode(Type.SOURCE, project, selector("t1"));
+        source.setProperty(Property.SOURCE_NAME, selector("t1"));
+        source.setProperty(Property.SOURCE_COLUMNS, context.getSchemata().getTable(selector("t1")).getColumns());
+        // Compare the expected and actual plan ...
+        assertPlanMatches(expected);
+    }
+
+    @Test
+    public void shouldOptimizePlanForQueryWithOrderByAndLimitByPushingLimitAndSortIntoAccessNode() {
+        node = optimize("SELECT t1.c11 FROM t1 ORDER BY t1.c12 DESC LIMIT 10 OFFSET 5");
+        // Create the expected plan ...
+        PlanNode expected = new PlanNode(Type.LIMIT);
+        expected.setProperty(Property.LIMIT_COUNT, 10);
+        expected.setProperty(Property.LIMIT_OFFSET, 5);
+        PlanNode sort = new PlanNode(Type.SORT, expected, selector("t1"));
+        sort.setProperty(Property.SORT_ORDER_BY, orderings(descending("t1", "c12")));
+        PlanNode access = new PlanNode(Type.ACCESS, sort, selector("t1"));
+        PlanNode accessLimit = new PlanNode(Type.LIMIT, access, selector("t1"));
+        accessLimit.setProperty(Property.LIMIT_COUNT, 15);
+        PlanNode accessSort = new PlanNode(Type.SORT, accessLimit, selector("t1"));
+        accessSort.setProperty(Property.SORT_ORDER_BY, orderings(descending("t1", "c12")));
+        PlanNode project = new PlanNode(Type.PROJECT, accessSort, selector("t1"));
+        project.setProperty(Property.PROJECT_COLUMNS, columns(column("t1", "c11"), column("t1", "c12")));
+        PlanNode source = new PlanNode(Type.SOURCE, project, selector("t1"));
+        source.setProperty(Property.SOURCE_NAME, selector("t1"));
+        source.setProperty(Property.SOURCE_COLUMNS, context.getSchemata().getTable(selector("t1")).getColumns());
+        // Compare the expected and actual plan ...
+        assertPlanMatches(expected);
+    }
+
+    @Test
+    public void shouldOptimizePlanForQueryWithDistinctAndLimitWithoutPushingLimitIntoAccessNode() {
+        node = optimize("SELECT DISTINCT t1.c11 FROM t1 LIMIT 10");
+        // The LIMIT must not be pushed below the DUP_REMOVE ...
+        PlanNode access = node.findAtOrBelow(Type.ACCESS);
+        assertThat(access, is(notNullValue()));
+        assertThat(access.findAtOrBelow(Type.LIMIT), is(nullValue()));
+    }
+
     @Test
     public void shouldOptimizePlanForQueryUsingTableAndOrderByClause() {
         node = optimize("SELECT t1.c11 AS c1 FROM t1 WHERE t1.c11 = 'x' AND t1.c12 = 'y' ORDER BY t1.c11, t1.c12 DESC");
@@ -102,6 +102,11 @@ public abstract class AbstractBinaryStoreTest extends AbstractTransactionalTest
         getBinaryStore().getInputStream(invalidBinaryKey());
     }
 
+    @Test( expected = BinaryStoreException.class )
+    public void shouldFailWhenGettingRangeOfInvalidBinary() throws BinaryStoreException {
+        getBinaryStore().getInputStream(invalidBinaryKey(), 0L, 10L);
+    }
+
     @Test
     public void shouldStoreLargeBinary() throws BinaryStoreException, IOException {
         storeAndValidate(STORED_LARGE_KEY, STORED_LARGE_BINARY);
@@ -145,6 +150,28 @@ public abstract class AbstractBinaryStoreTest extends AbstractTransactionalTest
         return res;
     }
 
+    @Test
+    public void shouldReadRangesOfStoredBinary() throws Exception {
+        getBinaryStore().storeValue(new ByteArrayInputStream(STORED_LARGE_BINARY));
+        int size = STORED_LARGE_BINARY.length;
+        assertRange(STORED_LARGE_KEY, STORED_LARGE_BINARY, 0, size);
+        assertRange(STORED_LARGE_KEY, STORED_LARGE_BINARY, 1, 100);
+        assertRange(STORED_LARGE_KEY, STORED_LARGE_BINARY, size / 3, size / 2);
+        assertRange(STORED_LARGE_KEY, STORED_LARGE_BINARY, size - 10, 100);
+        assertRange(STORED_LARGE_KEY, STORED_LARGE_BINARY, size / 2, 0);
+        assertRange(STORED_LARGE_KEY, STORED_LARGE_BINARY, size, 100);
+    }
+
+    private void assertRange( BinaryKey key,
+                              byte[] data,
+                              int offset,
+                              int length ) throws BinaryStoreException, IOException {
+        int end = Math.min(offset + length, data.length);
+        byte[] expected = Arrays.copyOfRange(data, Math.min(offset, end), end);
+        byte[] actual = IoUtil.readBytes(getBinaryStore().getInputStream(key, offset, length));
+        assertTrue("Unexpected content at offset " + offset + " with length " + length, Arrays.equals(expected, actual));
+    }
+
     @Test
     public void shouldCleanupUnunsedValues() throws Exception {
         getBinaryStore().storeValue(new ByteArrayInputStream(IN_MEMORY_BINARY));
@@ -0,0 +1,99 @@
+/*
+ * ModeShape (http://www.modeshape.org)
+ * See the COPYRIGHT.txt file distributed with this work for information
+ * regarding copyright ownership.  Some portions may be licensed
+ * to Red Hat, Inc. under one or more contributor license agreements.
+ * See the AUTHORS.txt file in the distribution for a full listing of 
+ * individual contributors.
+ *
+ * ModeShape is free software. Unless otherwise indicated, all code in ModeShape
+ * is licensed to you under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ * 
+ * ModeShape is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+package org.modeshape.jcr.value.binary;
+
+import static org.hamcrest.core.Is.is;
+import static org.hamcrest.core.IsNull.nullValue;
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertThat;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.OutputStream;
+import java.util.Arrays;
+import org.junit.Test;
+import org.modeshape.common.util.IoUtil;
+import org.modeshape.jcr.value.BinaryKey;
+import org.modeshape.jcr.value.binary.BinaryCompression.Codec;
+
+public class BinaryCompressionTest {
+
+    private static final byte[] CONTENT = "The quick brown fox jumps over the lazy dog. ".getBytes();
+
+    @Test
+    public void shouldReadCompressedContentPrecededByHeader() throws Exception {
+        for (Codec codec : Codec.values()) {
+            BinaryKey key = BinaryKey.keyFor(CONTENT);
+            byte[] stored = store(codec, key, CONTENT);
+            assertThat(BinaryCompression.codecOf(stored, stored.length, key), is(codec));
+            assertArrayEquals(CONTENT, IoUtil.readBytes(BinaryCompression.decompress(new ByteArrayInputStream(stored), key)));
+        }
+    }
+
+    @Test
+    public void shouldReadContentStoredAsIs() throws Exception {
+        BinaryKey key = BinaryKey.keyFor(CONTENT);
+        assertThat(BinaryCompression.codecOf(CONTENT, CONTENT.length, key), is(nullValue()));
+        assertArrayEquals(CONTENT, IoUtil.readBytes(BinaryCompression.decompress(new ByteArrayInputStream(CONTENT), key)));
+
+        // Including content shorter than the header ...
+        byte[] shortContent = Arrays.copyOf(CONTENT, BinaryCompression.HEADER_LENGTH - 1);
+        assertArrayEquals(shortContent,
+                          IoUtil.readBytes(BinaryCompression.decompress(new ByteArrayInputStream(shortContent), key)));
+        assertArrayEquals(new byte[0], IoUtil.readBytes(BinaryCompression.decompress(new ByteArrayInputStream(new byte[0]), key)));
+    }
+
+    @Test
+    public void shouldNotMistakeContentStartingWithHeaderOfAnotherValueForCompressedContent() throws Exception {
+        // Content that was stored as is might start with the header of another value, but never with its own ...
+        BinaryKey otherKey = BinaryKey.keyFor(CONTENT);
+        byte[] content = store(Codec.GZIP, otherKey, CONTENT);
+        BinaryKey key = BinaryKey.keyFor(content);
+        assertThat(BinaryCompression.codecOf(content, content.length, key), is(nullValue()));
+        assertArrayEquals(content, IoUtil.readBytes(BinaryCompression.decompress(new ByteArrayInputStream(content), key)));
+    }
+
+    @Test
+    public void shouldExcludeMimeTypes() {
+        BinaryCompression compression = new BinaryCompression(Codec.DEFLATE, 100, Arrays.asList("image/*", "application/zip"));
+        assertThat(compression.isExcluded("image/png"), is(true));
+        assertThat(compression.isExcluded("application/zip"), is(true));
+        assertThat(compression.isExcluded("Application/ZIP; name=foo.zip"), is(true));
+        assertThat(compression.isExcluded("application/zipper"), is(false));
+        assertThat(compression.isExcluded("text/plain"), is(false));
+        assertThat(compression.isExcluded(null), is(false));
+        assertThat(compression.isLargeEnough(99), is(false));
+        assertThat(compression.isLargeEnough(100), is(true));
+    }
+
+    private static byte[] store( Codec codec,
+                                 BinaryKey key,
+                                 byte[] content ) throws Exception {
+        ByteArrayOutputStream stored = new ByteArrayOutputStream();
+        stored.write(BinaryCompression.header(codec, key));
+        OutputStream compressed = codec.compress(stored);
+        compressed.write(content);
+        compressed.close();
+        return stored.toByteArray();
+    }
+}
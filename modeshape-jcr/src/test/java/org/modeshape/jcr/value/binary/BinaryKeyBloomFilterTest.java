@@ -0,0 +1,95 @@
+/*
+ * ModeShape (http://www.modeshape.org)
+ * See the COPYRIGHT.txt file distributed with this work for information
+ * regarding copyright ownership.  Some portions may be licensed
+ * to Red Hat, Inc. under one or more contributor license agreements.
+ * See the AUTHORS.txt file in the distribution for a full listing of 
+ * individual contributors.
+ *
+ * ModeShape is free software. Unless otherwise indicated, all code in ModeShape
+ * is licensed to you under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ * 
+ * ModeShape is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+package org.modeshape.jcr.value.binary;
+
+import static org.hamcrest.core.Is.is;
+import static org.junit.Assert.assertThat;
+import static org.junit.Assert.assertTrue;
+import java.util.ArrayList;
+import java.util.List;
+import org.junit.Before;
+import org.junit.Test;
+import org.modeshape.jcr.value.BinaryKey;
+
+public class BinaryKeyBloomFilterTest {
+
+    private BinaryKeyBloomFilter filter;
+
+    @Before
+    public void beforeEach() {
+        filter = new BinaryKeyBloomFilter(BinaryKeyBloomFilter.MINIMUM_CAPACITY);
+    }
+
+    @Test
+    public void shouldContainAllAddedKeys() throws Exception {
+        List<BinaryKey> keys = keys(0, 1000);
+        for (BinaryKey key : keys) {
+            filter.add(key);
+        }
+        for (BinaryKey key : keys) {
+            assertThat(filter.mightContain(key), is(true));
+        }
+        assertThat(filter.getCount(), is(1000));
+        assertThat(filter.isSaturated(), is(false));
+    }
+
+    @Test
+    public void shouldContainKeysThatAreNotSecureHashes() {
+        BinaryKey key = new BinaryKey("this-is-not-a-secure-hash");
+        assertThat(filter.mightContain(key), is(false));
+        filter.add(key);
+        assertThat(filter.mightContain(key), is(true));
+    }
+
+    @Test
+    public void shouldRarelyContainKeysThatWereNotAdded() throws Exception {
+        int capacity = filter.getCapacity();
+        for (BinaryKey key : keys(0, capacity)) {
+            filter.add(key);
+        }
+        int falsePositives = 0;
+        for (BinaryKey key : keys(capacity, 10000)) {
+            if (filter.mightContain(key)) ++falsePositives;
+        }
+        // The expected rate is about 1% ...
+        assertTrue("Too many false positives: " + falsePositives, falsePositives < 300);
+    }
+
+    @Test
+    public void shouldBeSaturatedWhenMoreKeysThanTheCapacityAreAdded() throws Exception {
+        for (BinaryKey key : keys(0, filter.getCapacity() + 1)) {
+            filter.add(key);
+        }
+        assertThat(filter.isSaturated(), is(true));
+    }
+
+    private static List<BinaryKey> keys( int start,
+                                         int count ) throws Exception {
+        List<BinaryKey> keys = new ArrayList<BinaryKey>(count);
+        for (int i = start; i != start + count; ++i) {
+            keys.add(BinaryKey.keyFor(("content " + i).getBytes("UTF-8")));
+        }
+        return keys;
+    }
+}
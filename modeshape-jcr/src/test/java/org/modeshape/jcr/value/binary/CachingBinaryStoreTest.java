@@ -0,0 +1,230 @@
+package org.modeshape.jcr.value.binary;
+
+import static org.hamcrest.core.Is.is;
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertThat;
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.modeshape.common.util.FileUtil;
+import org.modeshape.common.util.IoUtil;
+import org.modeshape.jcr.value.BinaryKey;
+import org.modeshape.jcr.value.BinaryValue;
+
+/**
+ * Unit test for {@link CachingBinaryStore}, using a {@link FileSystemBinaryStore} in place of a remote store.
+ */
+public class CachingBinaryStoreTest extends AbstractBinaryStoreTest {
+
+    private static final int MIN_BINARY_SIZE = 20;
+    private static final int VALUE_SIZE = 10 * 1024;
+    private static final Random RANDOM = new Random();
+
+    private File remoteDirectory;
+    private File cacheDirectory;
+    private CountingBinaryStore remoteStore;
+    private CachingBinaryStore store;
+
+    @Before
+    public void beforeEach() {
+        remoteDirectory = new File("target/cached-fsbs/");
+        cacheDirectory = new File("target/binary-cache/");
+        FileUtil.delete(remoteDirectory);
+        FileUtil.delete(cacheDirectory);
+        remoteDirectory.mkdirs();
+        remoteStore = new CountingBinaryStore(remoteDirectory);
+        store = newStore(VALUE_SIZE * 5 / 2);
+    }
+
+    @After
+    public void afterEach() {
+        store.shutdown();
+        FileUtil.delete(remoteDirectory);
+        FileUtil.delete(cacheDirectory);
+    }
+
+    private CachingBinaryStore newStore( long maximumSizeInBytes ) {
+        CachingBinaryStore store = new CachingBinaryStore(remoteStore, cacheDirectory, maximumSizeInBytes);
+        store.setMinimumBinarySizeInBytes(MIN_BINARY_SIZE);
+        store.start();
+        return store;
+    }
+
+    @Override
+    protected BinaryStore getBinaryStore() {
+        return store;
+    }
+
+    @Override
+    @Test( expected = BinaryStoreException.class )
+    public void shouldStoreZeroLengthBinary() throws BinaryStoreException, IOException {
+        // the file system binary store behind the cache will not store a 0 byte size content
+        super.shouldStoreZeroLengthBinary();
+    }
+
+    @Test
+    public void shouldServeRepeatedReadsFromLocalCache() throws Exception {
+        byte[] content = randomContent();
+        BinaryKey key = store.storeValue(new ByteArrayInputStream(content)).getKey();
+
+        assertArrayEquals(content, IoUtil.readBytes(store.getInputStream(key)));
+        assertArrayEquals(content, IoUtil.readBytes(store.getInputStream(key)));
+        assertArrayEquals(content, IoUtil.readBytes(store.getInputStream(key)));
+
+        assertThat(remoteStore.reads.get(), is(1));
+        assertThat(store.getMissCount(), is(1L));
+        assertThat(store.getHitCount(), is(2L));
+        assertThat(store.getSizeInBytes(), is((long)content.length));
+    }
+
+    @Test
+    public void shouldEvictLeastRecentlyReadValues() throws Exception {
+        List<BinaryKey> keys = new ArrayList<BinaryKey>();
+        for (int i = 0; i != 3; ++i) {
+            keys.add(store.storeValue(new ByteArrayInputStream(randomContent())).getKey());
+        }
+        IoUtil.readBytes(store.getInputStream(keys.get(0)));
+        IoUtil.readBytes(store.getInputStream(keys.get(1)));
+        // Read the first value again, so that the second is the least recently read ...
+        IoUtil.readBytes(store.getInputStream(keys.get(0)));
+        IoUtil.readBytes(store.getInputStream(keys.get(2)));
+        assertThat(store.getSizeInBytes(), is(2L * VALUE_SIZE));
+        assertThat(remoteStore.reads.get(), is(3));
+
+        IoUtil.readBytes(store.getInputStream(keys.get(0)));
+        IoUtil.readBytes(store.getInputStream(keys.get(2)));
+        assertThat(remoteStore.reads.get(), is(3));
+        IoUtil.readBytes(store.getInputStream(keys.get(1)));
+        assertThat(remoteStore.reads.get(), is(4));
+        assertThat(store.getSizeInBytes(), is(2L * VALUE_SIZE));
+    }
+
+    @Test
+    public void shouldNotCacheValuesLargerThanCache() throws Exception {
+        store.shutdown();
+        store = newStore(VALUE_SIZE / 2);
+        byte[] content = randomContent();
+        BinaryKey key = store.storeValue(new ByteArrayInputStream(content)).getKey();
+
+        assertArrayEquals(content, IoUtil.readBytes(store.getInputStream(key)));
+        assertArrayEquals(content, IoUtil.readBytes(store.getInputStream(key)));
+        assertThat(store.getSizeInBytes(), is(0L));
+        assertThat(store.getHitCount(), is(0L));
+        assertThat(store.getMissCount(), is(2L));
+        // Each read fetched the value from the other store only once, even though it was too large to cache ...
+        assertThat(remoteStore.reads.get(), is(2));
+        assertThat(new File(store.getDirectory(), CachingBinaryStore.STAGING_DIRECTORY_NAME).list().length, is(0));
+    }
+
+    @Test
+    public void shouldCountReadOfRemovedCachedCopyAsMiss() throws Exception {
+        byte[] content = randomContent();
+        BinaryKey key = store.storeValue(new ByteArrayInputStream(content)).getKey();
+        IoUtil.readBytes(store.getInputStream(key));
+        assertThat(store.getMissCount(), is(1L));
+
+        // Remove the cached copy behind the store's back ...
+        assertThat(store.cachedFile(key).delete(), is(true));
+
+        assertArrayEquals(content, IoUtil.readBytes(store.getInputStream(key)));
+        assertThat(store.getHitCount(), is(0L));
+        assertThat(store.getMissCount(), is(2L));
+        assertThat(remoteStore.reads.get(), is(2));
+        assertThat(store.getSizeInBytes(), is((long)content.length));
+    }
+
+    @Test
+    public void shouldFetchValueOnlyOnceForConcurrentReads() throws Exception {
+        final byte[] content = randomContent();
+        final BinaryKey key = store.storeValue(new ByteArrayInputStream(content)).getKey();
+        remoteStore.delayInMillis = 200L;
+
+        ExecutorService executor = Executors.newFixedThreadPool(5);
+        try {
+            List<Future<byte[]>> results = new ArrayList<Future<byte[]>>();
+            for (int i = 0; i != 5; ++i) {
+                results.add(executor.submit(new Callable<byte[]>() {
+                    @Override
+                    public byte[] call() throws Exception {
+                        return IoUtil.readBytes(store.getInputStream(key));
+                    }
+                }));
+            }
+            for (Future<byte[]> result : results) {
+                assertArrayEquals(content, result.get());
+            }
+        } finally {
+            executor.shutdown();
+        }
+        assertThat(remoteStore.reads.get(), is(1));
+    }
+
+    @Test
+    public void shouldKeepCachedValuesAfterRestart() throws Exception {
+        byte[] content = randomContent();
+        BinaryKey key = store.storeValue(new ByteArrayInputStream(content)).getKey();
+        IoUtil.readBytes(store.getInputStream(key));
+        store.shutdown();
+
+        store = newStore(VALUE_SIZE * 5 / 2);
+        assertThat(store.getSizeInBytes(), is((long)content.length));
+        assertArrayEquals(content, IoUtil.readBytes(store.getInputStream(key)));
+        assertThat(remoteStore.reads.get(), is(1));
+    }
+
+    @Test
+    public void shouldReadRangesOfCachedValues() throws Exception {
+        byte[] content = randomContent();
+        BinaryValue value = store.storeValue(new ByteArrayInputStream(content));
+        IoUtil.readBytes(store.getInputStream(value.getKey()));
+
+        byte[] range = IoUtil.readBytes(store.getInputStream(value.getKey(), 100L, 50L));
+        byte[] expected = new byte[50];
+        System.arraycopy(content, 100, expected, 0, 50);
+        assertArrayEquals(expected, range);
+        assertThat(store.getHitCount(), is(1L));
+    }
+
+    private byte[] randomContent() {
+        byte[] content = new byte[VALUE_SIZE];
+        RANDOM.nextBytes(content);
+        return content;
+    }
+
+    /**
+     * A file system store that counts the number of times the content of a value is read.
+     */
+    protected static class CountingBinaryStore extends FileSystemBinaryStore {
+        protected final AtomicInteger reads = new AtomicInteger();
+        protected volatile long delayInMillis = 0L;
+
+        protected CountingBinaryStore( File directory ) {
+            super(directory);
+        }
+
+        @Override
+        public InputStream getInputStream( BinaryKey key ) throws BinaryStoreException {
+            reads.incrementAndGet();
+            if (delayInMillis > 0L) {
+                try {
+                    Thread.sleep(delayInMillis);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+            }
+            return super.getInputStream(key);
+        }
+    }
+}
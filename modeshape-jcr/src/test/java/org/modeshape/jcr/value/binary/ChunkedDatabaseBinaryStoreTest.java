@@ -0,0 +1,149 @@
+/*
+ * ModeShape (http://www.modeshape.org)
+ * See the COPYRIGHT.txt file distributed with this work for information
+ * regarding copyright ownership.  Some portions may be licensed
+ * to Red Hat, Inc. under one or more contributor license agreements.
+ * See the AUTHORS.txt file in the distribution for a full listing of 
+ * individual contributors.
+ *
+ * ModeShape is free software. Unless otherwise indicated, all code in ModeShape
+ * is licensed to you under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ * 
+ * ModeShape is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+package org.modeshape.jcr.value.binary;
+
+import static org.hamcrest.core.Is.is;
+import static org.hamcrest.core.IsInstanceOf.instanceOf;
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertThat;
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.concurrent.TimeUnit;
+import org.junit.AfterClass;
+import org.junit.BeforeClass;
+import org.junit.Test;
+import org.modeshape.common.util.IoUtil;
+import org.modeshape.jcr.store.DataSourceConfig;
+import org.modeshape.jcr.value.BinaryValue;
+
+/**
+ * Runs the binary store tests against a {@link DatabaseBinaryStore} that streams values into the database in chunks.
+ */
+public class ChunkedDatabaseBinaryStoreTest extends AbstractBinaryStoreTest {
+
+    private static final DataSourceConfig DB_CONFIG = new DataSourceConfig();
+    private static final int CHUNK_SIZE = 1000;
+    private static DatabaseBinaryStore store;
+
+    @BeforeClass
+    public static void beforeClass() {
+        String driver = DB_CONFIG.getDriverClassName();
+        String url = DB_CONFIG.getUrl();
+        String username = DB_CONFIG.getUsername();
+        String password = DB_CONFIG.getPassword();
+        store = new DatabaseBinaryStore(driver, url, username, password);
+        store.setChunkSizeInBytes(CHUNK_SIZE);
+        store.start();
+    }
+
+    @AfterClass
+    public static void afterClass() {
+        store.shutdown();
+    }
+
+    @Override
+    protected BinaryStore getBinaryStore() {
+        return store;
+    }
+
+    @Override
+    public void shouldStoreZeroLengthBinary() throws BinaryStoreException, IOException {
+        if (DB_CONFIG.getDriverClassName().toLowerCase().contains("oracle")) {
+            //Oracle does not store 0 sized byte arrays
+            return;
+        }
+        super.shouldStoreZeroLengthBinary();
+    }
+
+    @Test
+    public void shouldStoreValuesSpanningManyBatchesOfChunks() throws Exception {
+        byte[] content = new byte[CHUNK_SIZE * DatabaseBinaryStore.CHUNKS_PER_BATCH * 3 + CHUNK_SIZE / 2];
+        for (int i = 0; i != content.length; ++i) {
+            content[i] = (byte)(i * 31);
+        }
+        BinaryValue value = store.storeValue(new ByteArrayInputStream(content));
+        assertEquals(content.length, value.getSize());
+        InputStream stream = store.getInputStream(value.getKey());
+        assertThat(stream, is(instanceOf(DatabaseBinaryStore.ChunkInputStream.class)));
+        assertArrayEquals(content, IoUtil.readBytes(stream));
+
+        // Storing the same content again should reuse the stored value ...
+        BinaryValue again = store.storeValue(new ByteArrayInputStream(content));
+        assertEquals(value.getKey(), again.getKey());
+        assertArrayEquals(content, IoUtil.readBytes(store.getInputStream(value.getKey())));
+    }
+
+    @Test
+    public void shouldNotRemoveValuesThatAreStillBeingStored() throws Exception {
+        final int batchSize = CHUNK_SIZE * DatabaseBinaryStore.CHUNKS_PER_BATCH;
+        byte[] content = new byte[batchSize * 2];
+        for (int i = 0; i != content.length; ++i) {
+            content[i] = (byte)(i * 7);
+        }
+        // Read each batch slowly, and collect garbage once the upload is older than the minimum age but its last batch is not ...
+        InputStream slowStream = new ByteArrayInputStream(content) {
+            @Override
+            public synchronized int read( byte[] b,
+                                          int off,
+                                          int len ) {
+                try {
+                    if (pos == 0 || pos == batchSize) Thread.sleep(600L);
+                    if (pos == batchSize) store.removeValuesUnusedLongerThan(1, TimeUnit.SECONDS);
+                } catch (Exception e) {
+                    throw new RuntimeException(e);
+                }
+                return super.read(b, off, len);
+            }
+        };
+        BinaryValue value = store.storeValue(slowStream);
+        assertEquals(content.length, value.getSize());
+        assertArrayEquals(content, IoUtil.readBytes(store.getInputStream(value.getKey())));
+    }
+
+    @Test
+    public void shouldReadValuesStoredWithoutChunks() throws Exception {
+        DatabaseBinaryStore rowStore = new DatabaseBinaryStore(DB_CONFIG.getDriverClassName(), DB_CONFIG.getUrl(),
+                                                               DB_CONFIG.getUsername(), DB_CONFIG.getPassword());
+        rowStore.start();
+        try {
+            byte[] content = new byte[CHUNK_SIZE * 5];
+            for (int i = 0; i != content.length; ++i) {
+                content[i] = (byte)(i * 17);
+            }
+            BinaryValue value = rowStore.storeValue(new ByteArrayInputStream(content));
+            assertArrayEquals(content, IoUtil.readBytes(store.getInputStream(value.getKey())));
+
+            byte[] chunkedContent = new byte[CHUNK_SIZE * 3];
+            for (int i = 0; i != chunkedContent.length; ++i) {
+                chunkedContent[i] = (byte)(i * 13);
+            }
+            BinaryValue chunkedValue = store.storeValue(new ByteArrayInputStream(chunkedContent));
+            assertArrayEquals(chunkedContent, IoUtil.readBytes(rowStore.getInputStream(chunkedValue.getKey())));
+        } finally {
+            rowStore.shutdown();
+        }
+    }
+}
@@ -9,6 +9,7 @@ import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Random;
+import java.util.concurrent.TimeUnit;
 import org.junit.AfterClass;
 import org.junit.BeforeClass;
 import org.junit.Test;
@@ -201,6 +202,36 @@ public class CompositeBinaryStoreTest extends AbstractBinaryStoreTest {
         assertTrue(alternativeStore.hasBinary(v.getKey()));
     }
 
+    @Test
+    public void shouldFindValuesStoredInNamedStoresBeforeStartup() throws BinaryStoreException, IOException {
+        byte[] content = randomContent();
+        BinaryValue v = anotherAlternativeStore.storeValue(new ByteArrayInputStream(content));
+
+        Map<String, BinaryStore> stores = new LinkedHashMap<String, BinaryStore>();
+        stores.put("alt", alternativeStore);
+        stores.put("also-alt", anotherAlternativeStore);
+        CompositeBinaryStore composite = new CompositeBinaryStore(stores);
+        composite.setMinimumBinarySizeInBytes(MIN_BINARY_SIZE);
+        composite.start();
+
+        assertEquals(anotherAlternativeStore, composite.findBinaryStoreContainingKey(v.getKey()));
+        assertArrayEquals(content, IoUtil.readBytes(composite.getInputStream(v.getKey())));
+        assertFalse(composite.hasBinary(BinaryKey.keyFor(randomContent())));
+    }
+
+    @Test
+    public void shouldFindValuesMovedBetweenStores() throws BinaryStoreException, IOException {
+        byte[] content = randomContent();
+        BinaryValue v = store.storeValue(new ByteArrayInputStream(content), defaultHint);
+        assertEquals(defaultStore, store.findBinaryStoreContainingKey(v.getKey()));
+
+        store.moveValue(v.getKey(), alternativeHint);
+        defaultStore.removeValuesUnusedLongerThan(0, TimeUnit.SECONDS);
+
+        assertEquals(alternativeStore, store.findBinaryStoreContainingKey(v.getKey()));
+        assertArrayEquals(content, IoUtil.readBytes(store.getInputStream(v.getKey())));
+    }
+
     private byte[] randomContent() {
         byte[] content = new byte[MIN_BINARY_SIZE + 1];
         RANDOM.nextBytes(content);
@@ -0,0 +1,119 @@
+/*
+ * ModeShape (http://www.modeshape.org)
+ * See the COPYRIGHT.txt file distributed with this work for information
+ * regarding copyright ownership.  Some portions may be licensed
+ * to Red Hat, Inc. under one or more contributor license agreements.
+ * See the AUTHORS.txt file in the distribution for a full listing of 
+ * individual contributors.
+ *
+ * ModeShape is free software. Unless otherwise indicated, all code in ModeShape
+ * is licensed to you under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ * 
+ * ModeShape is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+package org.modeshape.jcr.value.binary;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.util.Arrays;
+import org.junit.AfterClass;
+import org.junit.BeforeClass;
+import org.junit.Test;
+import org.modeshape.common.util.IoUtil;
+import org.modeshape.jcr.store.DataSourceConfig;
+import org.modeshape.jcr.value.BinaryValue;
+
+/**
+ * Runs the binary store tests against a {@link DatabaseBinaryStore} that compresses the values it stores.
+ */
+public class CompressedDatabaseBinaryStoreTest extends AbstractBinaryStoreTest {
+
+    private static final DataSourceConfig DB_CONFIG = new DataSourceConfig();
+    private static DatabaseBinaryStore store;
+
+    @BeforeClass
+    public static void beforeClass() {
+        store = newStore();
+        store.setCompression(new BinaryCompression(BinaryCompression.Codec.DEFLATE, 0L, null));
+        store.start();
+    }
+
+    @AfterClass
+    public static void afterClass() {
+        store.shutdown();
+    }
+
+    private static DatabaseBinaryStore newStore() {
+        return new DatabaseBinaryStore(DB_CONFIG.getDriverClassName(), DB_CONFIG.getUrl(), DB_CONFIG.getUsername(),
+                                       DB_CONFIG.getPassword());
+    }
+
+    private static byte[] compressibleContent( String text ) {
+        StringBuilder content = new StringBuilder();
+        while (content.length() < AbstractBinaryStore.DEFAULT_MINIMUM_BINARY_SIZE_IN_BYTES * 8) {
+            content.append(text).append(content.length()).append(' ');
+        }
+        return content.toString().getBytes();
+    }
+
+    @Override
+    protected BinaryStore getBinaryStore() {
+        return store;
+    }
+
+    @Override
+    public void shouldStoreZeroLengthBinary() throws BinaryStoreException, IOException {
+        if (DB_CONFIG.getDriverClassName().toLowerCase().contains("oracle")) {
+            //Oracle does not store 0 sized byte arrays
+            return;
+        }
+        super.shouldStoreZeroLengthBinary();
+    }
+
+    @Test
+    public void shouldReadCompressedContentTransparently() throws Exception {
+        byte[] content = compressibleContent("The content of this value compresses well.");
+        BinaryValue value = store.storeValue(new ByteArrayInputStream(content));
+        assertEquals(content.length, value.getSize());
+        assertArrayEquals(content, IoUtil.readBytes(store.getInputStream(value.getKey())));
+
+        // Ranges are read by skipping over the decompressed content ...
+        int offset = content.length / 3;
+        byte[] range = IoUtil.readBytes(store.getInputStream(value.getKey(), offset, 1000));
+        assertArrayEquals(Arrays.copyOfRange(content, offset, offset + 1000), range);
+    }
+
+    @Test
+    public void shouldReadValuesStoredWithAndWithoutCompression() throws Exception {
+        DatabaseBinaryStore uncompressedStore = newStore();
+        uncompressedStore.start();
+        try {
+            // Values stored before compression was enabled ...
+            byte[] uncompressed = compressibleContent("This value was stored as is.");
+            BinaryValue uncompressedValue = uncompressedStore.storeValue(new ByteArrayInputStream(uncompressed));
+            assertArrayEquals(uncompressed, IoUtil.readBytes(store.getInputStream(uncompressedValue.getKey())));
+            int offset = uncompressed.length / 2;
+            assertArrayEquals(Arrays.copyOfRange(uncompressed, offset, offset + 100),
+                              IoUtil.readBytes(store.getInputStream(uncompressedValue.getKey(), offset, 100)));
+
+            // ... and values stored while compression was enabled, after it has been disabled ...
+            byte[] compressed = compressibleContent("This value was compressed.");
+            BinaryValue compressedValue = store.storeValue(new ByteArrayInputStream(compressed));
+            assertArrayEquals(compressed, IoUtil.readBytes(uncompressedStore.getInputStream(compressedValue.getKey())));
+        } finally {
+            uncompressedStore.shutdown();
+        }
+    }
+}
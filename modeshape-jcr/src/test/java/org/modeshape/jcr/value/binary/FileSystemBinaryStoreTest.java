@@ -29,6 +29,7 @@ import static org.hamcrest.core.IsNull.notNullValue;
 import org.junit.After;
 import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertThat;
+import static org.junit.Assert.assertTrue;
 import org.junit.Before;
 import org.junit.Test;
 import org.modeshape.common.FixFor;
@@ -37,8 +38,11 @@ import org.modeshape.common.util.FileUtil;
 import org.modeshape.common.util.IoUtil;
 import org.modeshape.common.util.SecureHash;
 import org.modeshape.common.util.SecureHash.Algorithm;
+import org.modeshape.jcr.ValueRecorder;
 import org.modeshape.jcr.api.Binary;
+import org.modeshape.jcr.api.monitor.ValueMetric;
 import org.modeshape.jcr.value.BinaryKey;
+import org.modeshape.jcr.value.BinaryValue;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import java.io.BufferedInputStream;
@@ -55,10 +59,13 @@ import java.nio.channels.Channels;
 import java.nio.channels.FileChannel;
 import java.nio.channels.FileLock;
 import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collections;
+import java.util.HashMap;
 import java.util.HashSet;
 import java.util.List;
+import java.util.Map;
 import java.util.Random;
 import java.util.Set;
 import java.util.UUID;
@@ -168,6 +175,174 @@ public class FileSystemBinaryStoreTest extends AbstractBinaryStoreTest {
         assertThat(trash.listFiles().length, is(0));
     }
 
+    @Test
+    public void shouldRemoveUnusedFilesRecordedInTrashJournal() throws Exception {
+        final Map<ValueMetric, Long> recorded = new HashMap<ValueMetric, Long>();
+        store.setValueRecorder(new ValueRecorder() {
+            @Override
+            public void increment( ValueMetric metric,
+                                   long incrementalValue ) {
+                Long existing = recorded.get(metric);
+                recorded.put(metric, existing != null ? existing + incrementalValue : incrementalValue);
+            }
+        });
+        List<String> storedSha1s = new ArrayList<String>();
+        for (int i = 0; i != CONTENT.length; ++i) {
+            Binary binary = storeAndCheck(i);
+            if (binary instanceof StoredBinaryValue) storedSha1s.add(binary.getHexHash());
+        }
+        File journal = new File(directory, FileSystemBinaryStore.TRASH_JOURNAL_DIRECTORY_NAME);
+
+        // Trash one file before the journal exists, as an older version of the store would have done ...
+        store.markAsUnused(Collections.singleton(new BinaryKey(storedSha1s.get(0))));
+        assertThat(journal.exists(), is(false));
+        long trashedSize = CONTENT[0].getBytes().length;
+
+        // The first collection scans the trash and records the file that is too young to remove ...
+        store.removeValuesUnusedLongerThan(1, TimeUnit.HOURS);
+        assertThat(journal.exists(), is(true));
+        assertThat(readJournal().split("\n").length, is(1));
+        assertThat(countTrashFiles(), is(1));
+
+        // Trash another file, which is now appended to the journal ...
+        String unused = storedSha1s.get(1);
+        store.markAsUnused(Collections.singleton(new BinaryKey(unused)));
+        trashedSize += CONTENT[1].getBytes().length;
+        assertThat(readJournal().split("\n").length, is(2));
+        assertThat(readJournal().endsWith(unused + "\n"), is(true));
+        assertThat(countTrashFiles(), is(2));
+
+        Thread.sleep(1100L); // Sleep more than a second, since modified times may only be accurate to nearest second ...
+        store.removeValuesUnusedLongerThan(1, TimeUnit.SECONDS);
+
+        // Make sure both files were removed from the trash and the journal ...
+        assertThat(countStoredFiles(), is(storedSha1s.size() - 2));
+        assertThat(countTrashFiles(), is(0));
+        assertThat(readJournal(), is(""));
+        assertThat(recorded.get(ValueMetric.BINARY_REMOVED_COUNT), is(2L));
+        assertThat(recorded.get(ValueMetric.BINARY_REMOVED_SIZE), is(trashedSize));
+    }
+
+    @Test
+    public void shouldIgnoreJournalEntriesForFilesThatAreNotInTrash() throws Exception {
+        // Create the journal ...
+        store.removeValuesUnusedLongerThan(1, TimeUnit.SECONDS);
+        Binary binary = storeAndCheck(CONTENT.length - 1);
+        store.markAsUnused(Collections.singleton(new BinaryKey(binary.getHexHash())));
+
+        // Simulate a file that was journaled but never moved into the trash, and another that was moved but not yet expired ...
+        File journal = new File(directory, FileSystemBinaryStore.TRASH_JOURNAL_DIRECTORY_NAME);
+        File segment = journal.listFiles()[0];
+        String neverTrashed = CONTENT_HASHES[0];
+        String journaled = readJournal();
+        int journaledCount = journaled.split("\n").length;
+        IoUtil.write("1 " + neverTrashed + "\n" + journaled.replaceAll("(?m)^\\d+", "2"), segment);
+        assertThat(countTrashFiles(), is(1));
+
+        // The trashed file is too young to remove, so it is recorded again at the end of the journal ...
+        store.removeValuesUnusedLongerThan(1, TimeUnit.HOURS);
+        assertThat(countTrashFiles(), is(1));
+        assertThat(readJournal().contains(neverTrashed), is(false));
+        assertThat(readJournal().split("\n").length, is(journaledCount));
+        assertThat(readJournal().contains(binary.getHexHash()), is(true));
+
+        Thread.sleep(1100L); // Sleep more than a second, since modified times may only be accurate to nearest second ...
+        store.removeValuesUnusedLongerThan(1, TimeUnit.SECONDS);
+        assertThat(countTrashFiles(), is(0));
+        assertThat(readJournal(), is(""));
+    }
+
+    @Test
+    public void shouldNotRemoveFilesRestoredFromTrashThatAreRecordedInTrashJournal() throws Exception {
+        // Create the journal ...
+        store.removeValuesUnusedLongerThan(1, TimeUnit.SECONDS);
+        Binary binary = storeAndCheck(CONTENT.length - 1);
+        store.markAsUnused(Collections.singleton(new BinaryKey(binary.getHexHash())));
+        assertThat(countTrashFiles(), is(1));
+
+        // Use the value again, which restores it from the trash ...
+        assertThat(IoUtil.read(binary.getStream()).length() != 0, is(true));
+        assertThat(countTrashFiles(), is(0));
+
+        Thread.sleep(1100L);
+        store.removeValuesUnusedLongerThan(1, TimeUnit.SECONDS);
+        assertThat(countStoredFiles(), is(1));
+        assertThat(IoUtil.read(binary.getStream()).length() != 0, is(true));
+    }
+
+    @Test
+    public void shouldStoreCompressedContentAndReadItTransparently() throws Exception {
+        store.setCompression(new BinaryCompression(BinaryCompression.Codec.DEFLATE));
+        StringBuilder sb = new StringBuilder();
+        while (sb.length() < 64 * 1024) {
+            sb.append("<node name=\"").append(sb.length()).append("\"><property>value</property></node>\n");
+        }
+        byte[] content = sb.toString().getBytes("UTF-8");
+        BinaryKey key = BinaryKey.keyFor(content);
+
+        BinaryValue value = store.storeValue(new ByteArrayInputStream(content));
+        assertThat(value.getKey(), is(key));
+        assertThat(value.getSize(), is((long)content.length));
+
+        // The content is kept compressed ...
+        File stored = storedFile();
+        assertThat(stored.getName(), is(key.toString() + BinaryCompression.Codec.DEFLATE.getExtension()));
+        assertThat(stored.length() < content.length / 2, is(true));
+        assertThat(store.getAllBinaryKeys().iterator().next(), is(key));
+
+        // But is always read as the original content ...
+        assertTrue(Arrays.equals(content, IoUtil.readBytes(store.getInputStream(key))));
+        byte[] range = IoUtil.readBytes(store.getInputStream(key, 1000, 2000));
+        assertTrue(Arrays.equals(Arrays.copyOfRange(content, 1000, 3000), range));
+
+        // Even after storing the same content again, or after restoring it from the trash ...
+        assertThat(store.storeValue(new ByteArrayInputStream(content)).getSize(), is((long)content.length));
+        assertThat(countStoredFiles(), is(1));
+        store.markAsUnused(Collections.singleton(key));
+        assertThat(countTrashFiles(), is(1));
+        assertTrue(Arrays.equals(content, IoUtil.readBytes(store.getInputStream(key))));
+        assertThat(storedFile().getName(), is(stored.getName()));
+
+        // And the trashed compressed file is removed by garbage collection ...
+        store.markAsUnused(Collections.singleton(key));
+        Thread.sleep(1100L);
+        store.removeValuesUnusedLongerThan(1, TimeUnit.SECONDS);
+        assertThat(countTrashFiles(), is(0));
+        assertThat(countStoredFiles(), is(0));
+    }
+
+    @Test
+    public void shouldNotCompressContentWithExcludedMimeTypeOrThatDoesNotCompressWell() throws Exception {
+        store.setCompression(new BinaryCompression(BinaryCompression.Codec.GZIP, 100, Arrays.asList("application/foo*")));
+        byte[] compressible = new byte[16 * 1024];
+        Arrays.fill(compressible, (byte)'a');
+
+        // Random content doesn't compress well ...
+        store.storeValue(new ByteArrayInputStream(STORED_LARGE_BINARY));
+        assertThat(storedFile().getName(), is(STORED_LARGE_KEY.toString()));
+        store.markAsUnused(Collections.singleton(STORED_LARGE_KEY));
+
+        // And content with an excluded MIME type is stored as is ...
+        store.setMimeTypeDetector(new DummyMimeTypeDetector());
+        BinaryValue value = store.storeValue(new ByteArrayInputStream(compressible));
+        assertThat(storedFile().getName(), is(value.getKey().toString()));
+        assertTrue(Arrays.equals(compressible, IoUtil.readBytes(value.getStream())));
+    }
+
+    @Test
+    public void shouldReadUncompressedContentStoredBeforeCompressionWasEnabled() throws Exception {
+        byte[] content = new byte[16 * 1024];
+        Arrays.fill(content, (byte)'a');
+        BinaryValue value = store.storeValue(new ByteArrayInputStream(content));
+        store.setCompression(new BinaryCompression(BinaryCompression.Codec.GZIP));
+
+        // Storing the same content again reuses the uncompressed file ...
+        store.storeValue(new ByteArrayInputStream(content));
+        assertThat(countStoredFiles(), is(1));
+        assertThat(storedFile().getName(), is(value.getKey().toString()));
+        assertTrue(Arrays.equals(content, IoUtil.readBytes(value.getStream())));
+    }
+
     @Test
     public void shouldMoveUnusedFilesFromTrashWhenUsed() throws Exception {
         Set<Binary> binaries = new HashSet<Binary>();
@@ -336,6 +511,48 @@ public class FileSystemBinaryStoreTest extends AbstractBinaryStoreTest {
         }
     }
 
+    @Test
+    public void shouldStageNewContentWithinStoreDirectoryAndRemoveItOnceStored() throws Exception {
+        final File staging = new File(directory, FileSystemBinaryStore.STAGING_DIRECTORY_NAME);
+        final List<String> stagedWhileReading = new ArrayList<String>();
+        InputStream stream = new ByteArrayInputStream(STORED_LARGE_BINARY) {
+            @Override
+            public synchronized int read( byte[] b,
+                                          int off,
+                                          int len ) {
+                if (stagedWhileReading.isEmpty()) {
+                    // The staged file is created before the content is read ...
+                    String[] names = staging.list();
+                    if (names != null) stagedWhileReading.addAll(Arrays.asList(names));
+                }
+                return super.read(b, off, len);
+            }
+        };
+        BinaryValue value = store.storeValue(stream);
+        assertThat(value.getKey(), is(STORED_LARGE_KEY));
+        assertThat(stagedWhileReading.size(), is(1));
+        assertThat(staging.list().length, is(0));
+        assertThat(countStoredFiles(), is(1));
+    }
+
+    @Test
+    public void shouldRemoveOnlyOldOrphanedStagedFiles() throws Exception {
+        storeAndCheck(1);
+        File staging = new File(directory, FileSystemBinaryStore.STAGING_DIRECTORY_NAME);
+        staging.mkdirs();
+        File orphan = new File(staging, "orphan.hashing");
+        IoUtil.write(CONTENT[0], orphan);
+        assertTrue(orphan.setLastModified(System.currentTimeMillis() - TimeUnit.DAYS.toMillis(2)));
+        File recent = new File(staging, "recent.hashing");
+        IoUtil.write(CONTENT[0], recent);
+
+        store.removeValuesUnusedLongerThan(1, TimeUnit.SECONDS);
+
+        // The recent file may still be written by another process, but the old one was orphaned ...
+        assertThat(orphan.exists(), is(false));
+        assertThat(recent.exists(), is(true));
+    }
+
     protected Binary storeAndCheck( int contentIndex ) throws Exception {
         return storeAndCheck(contentIndex, null);
     }
@@ -415,8 +632,38 @@ public class FileSystemBinaryStoreTest extends AbstractBinaryStoreTest {
         }
     }
 
+    protected File storedFile() {
+        List<File> files = new ArrayList<File>();
+        collectFiles(directory, files);
+        assertThat(files.size(), is(1));
+        return files.get(0);
+    }
+
+    private void collectFiles( File dir,
+                               List<File> files ) {
+        for (File child : dir.listFiles()) {
+            if (child.equals(trash) || child.getName().equals(FileSystemBinaryStore.TRASH_JOURNAL_DIRECTORY_NAME)) continue;
+            if (child.isDirectory()) {
+                collectFiles(child, files);
+            } else {
+                files.add(child);
+            }
+        }
+    }
+
     protected int countStoredFiles() throws IOException {
-        return countFiles(directory, trash);
+        return countFiles(directory, trash, new File(directory, FileSystemBinaryStore.TRASH_JOURNAL_DIRECTORY_NAME));
+    }
+
+    protected String readJournal() throws IOException {
+        File[] segments = new File(directory, FileSystemBinaryStore.TRASH_JOURNAL_DIRECTORY_NAME).listFiles();
+        if (segments == null) return "";
+        Arrays.sort(segments);
+        StringBuilder sb = new StringBuilder();
+        for (File segment : segments) {
+            sb.append(IoUtil.read(segment));
+        }
+        return sb.toString();
     }
 
     protected int countTrashFiles() throws IOException {
@@ -56,9 +56,11 @@ import org.modeshape.jcr.value.binary.AbstractBinaryStoreTest;
 
 import java.io.ByteArrayOutputStream;
 import java.io.IOException;
+import java.util.Arrays;
 import java.util.Random;
 
 import static junit.framework.Assert.assertEquals;
+import static junit.framework.Assert.assertTrue;
 
 public class ChunkStreamTest {
 
@@ -143,4 +145,22 @@ public class ChunkStreamTest {
         chunkInputStream.close();
         assertEquals(dataKey, BinaryKey.keyFor(byteArrayOutputStream.toByteArray()));
     }
+
+    @Test
+    public void testStreamingFromOffset() throws IOException {
+        byte[] data = new byte[ChunkOutputStream.CHUNKSIZE * 2 + 100];
+        new Random().nextBytes(data);
+        String dataKey = BinaryKey.keyFor(data).toString();
+
+        ChunkOutputStream chunkOutputStream = new ChunkOutputStream(blobCache, dataKey);
+        chunkOutputStream.write(data);
+        chunkOutputStream.close();
+        assertEquals(3, chunkOutputStream.getNumberChunks());
+
+        for (int offset : new int[] {10, ChunkOutputStream.CHUNKSIZE, ChunkOutputStream.CHUNKSIZE * 2 + 50, data.length}) {
+            byte[] expected = Arrays.copyOfRange(data, offset, data.length);
+            byte[] actual = IoUtil.readBytes(new ChunkInputStream(blobCache, dataKey, offset));
+            assertTrue("Unexpected content from offset " + offset, Arrays.equals(expected, actual));
+        }
+    }
 }
@@ -69,7 +69,9 @@ public interface SchematicDb extends Lifecycle {
 
     /**
      * Validate all JSON documents stored within this database, using this database's {@link #getSchemaLibrary() JSON Schema
-     * library}. This method works even when the database is distributed, and it blocks until the task is completed.
+     * library}. This is equivalent to calling {@link #validateAll(ValidationListener)} with a listener that collects all of the
+     * results into a map, so unlike that method the memory required depends upon the number of invalid documents. This method
+     * works even when the database is distributed, and it blocks until all documents have been validated.
      * 
      * @return the map of document keys to validation results for all of the JSON documents in the database that are affiliated
      *         with a schema and that had at least one validation error or warning
@@ -77,9 +79,22 @@ public interface SchematicDb extends Lifecycle {
     Map<String, Results> validateAll();
 
     /**
-     * Execute a Map-Reduce task to validate all JSON documents stored within this database, using this database's
-     * {@link #getSchemaLibrary() JSON Schema library}. This method works even when the database is distributed, and it blocks
-     * until the task is completed.
+     * Validate all JSON documents stored within this database, using this database's {@link #getSchemaLibrary() JSON Schema
+     * library}. Unlike {@link #validateAll()}, the documents are validated in parallel and the results for each document are
+     * passed to the supplied listener as soon as they are available, so the memory required does not depend upon the number of
+     * documents in the database. When the database is distributed, each process validates the documents it owns but returns the
+     * results for all of its invalid documents at once; in that case the memory required depends upon the number of invalid
+     * documents, though still not upon the total number of documents. This method blocks until all documents have been
+     * validated.
+     * 
+     * @param listener the listener that is to be given the results for each of the JSON documents that are affiliated with a
+     *        schema and that had at least one validation error or warning; may not be null
+     */
+    void validateAll( ValidationListener listener );
+
+    /**
+     * Validate the JSON documents stored within this database at the specified keys, using this database's
+     * {@link #getSchemaLibrary() JSON Schema library}. The documents are validated one at a time in the calling thread.
      * 
      * @param firstKey the first key of the document that is to be validated
      * @param additionalKeys the additional keys of the documents that are to be validated
@@ -241,6 +256,32 @@ public interface SchematicDb extends Lifecycle {
      */
     boolean isExplicitLockingEnabled();
 
+    /**
+     * Set whether changes made by {@link SchematicEntry#editDocumentContent() editing} documents should be sent to the other
+     * processes in the cluster as the individual operations that were made, rather than as the whole document. Either way, a
+     * change is sent as the whole document whenever that is estimated to be smaller than the operations. This setting has no
+     * effect when the cache is not clustered, and only affects documents edited after the setting is changed.
+     * 
+     * @param enabled true if the operations should be sent, or false if the whole document should always be sent
+     */
+    void setDeltaReplicationEnabled( boolean enabled );
+
+    /**
+     * Return whether changes to documents are sent to the other processes in the cluster as the individual operations that were
+     * made.
+     * 
+     * @return true if the cache is clustered and the operations are sent, or false if the whole documents are sent
+     * @see #setDeltaReplicationEnabled(boolean)
+     */
+    boolean isDeltaReplicationEnabled();
+
+    /**
+     * Set the listener that is notified of the estimated size of each change that is sent to the other processes in the cluster.
+     * 
+     * @param listener the listener; may be null if no listener is to be notified
+     */
+    void setDeltaListener( DeltaListener listener );
+
     /**
      * Asynchronous version of {@link #get(String)}. This method does not block on remote calls, even if the library cache mode is
      * synchronous.
@@ -337,4 +378,37 @@ public interface SchematicDb extends Lifecycle {
      */
     NotifyingFuture<SchematicEntry> removeAsync( String key );
 
+    /**
+     * A listener that is notified of the estimated size of each change to a document that is sent to the other processes in the
+     * cluster. The listener is only notified while {@link #isDeltaReplicationEnabled() delta replication is enabled}, since
+     * otherwise the whole document is always sent and estimating its size would be needlessly expensive. Implementations are
+     * called on the thread that commits the change, and therefore must be fast and must not block.
+     */
+    public static interface DeltaListener {
+        /**
+         * Record that a change to a document was sent.
+         * 
+         * @param wholeDocument true if the whole document was sent, or false if only the operations that changed it were sent
+         * @param estimatedSize the estimated number of bytes that were sent
+         */
+        void changeSent( boolean wholeDocument,
+                         long estimatedSize );
+    }
+
+    /**
+     * A listener that is given the validation results for each JSON document that has at least one validation error or warning.
+     * Implementations may be called from multiple threads, though never concurrently.
+     * 
+     * @see SchematicDb#validateAll(ValidationListener)
+     */
+    public static interface ValidationListener {
+        /**
+         * Record the problems found while validating a document.
+         * 
+         * @param key the key of the document; never null
+         * @param results the validation results, which always contain at least one error or warning; never null
+         */
+        void problemsFound( String key,
+                            Results results );
+    }
 }
@@ -208,6 +208,19 @@ public class Bson {
         return SHARED_READER.read(input);
     }
 
+    /**
+     * Read the binary BSON representation from supplied data input into a read-only view of the {@link Document}, which keeps
+     * the BSON bytes and decodes each field only when it is first accessed. The view is copied into a mutable form only when it
+     * is changed.
+     * 
+     * @param input the data input; may not be null
+     * @return the document; never null
+     * @throws IOException if there was a problem reading from the stream
+     */
+    public static Document readLazily( DataInput input ) throws IOException {
+        return SHARED_READER.readLazily(input);
+    }
+
     /**
      * Get the {@link Type} constant that describes the type of value for the given field name.
      * 
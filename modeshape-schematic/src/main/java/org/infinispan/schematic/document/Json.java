@@ -21,9 +21,11 @@
  */
 package org.infinispan.schematic.document;
 
+import java.io.BufferedWriter;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.OutputStream;
+import java.io.OutputStreamWriter;
 import java.io.Reader;
 import java.io.Writer;
 import java.net.URL;
@@ -35,6 +37,7 @@ import org.infinispan.schematic.internal.document.CompactJsonWriter;
 import org.infinispan.schematic.internal.document.JsonReader;
 import org.infinispan.schematic.internal.document.JsonWriter;
 import org.infinispan.schematic.internal.document.PrettyJsonWriter;
+import org.infinispan.schematic.internal.document.StreamingJsonWriter;
 
 /**
  * A utility class for working with JSON documents. This class is able to read and write JSON documents that are in a special
@@ -269,6 +272,79 @@ public class Json {
         return SHARED_READER.readMultiple(reader);
     }
 
+    /**
+     * Return a {@link JsonStreamReader} that can be used to pull the content of one or more documents from the stream, using the
+     * {@link Charset#defaultCharset() default character set}. Unlike the other methods that read JSON, this does not require
+     * constructing an in-memory {@link Document} for every document in the stream, and is therefore well-suited for processing
+     * very large streams.
+     * 
+     * @param stream the input stream; may not be null
+     * @return the reader for the stream's content; never null
+     */
+    public static JsonStreamReader newStreamReader( InputStream stream ) {
+        return SHARED_READER.readStream(stream, Charset.defaultCharset());
+    }
+
+    /**
+     * Return a {@link JsonStreamReader} that can be used to pull the content of one or more documents from the stream, using the
+     * supplied {@link Charset character set}.
+     * 
+     * @param stream the input stream; may not be null
+     * @param charset the character set that should be used; may not be null
+     * @return the reader for the stream's content; never null
+     */
+    public static JsonStreamReader newStreamReader( InputStream stream,
+                                                    Charset charset ) {
+        return SHARED_READER.readStream(stream, charset);
+    }
+
+    /**
+     * Return a {@link JsonStreamReader} that can be used to pull the content of one or more documents from the stream.
+     * 
+     * @param reader the IO reader; may not be null
+     * @return the reader for the stream's content; never null
+     */
+    public static JsonStreamReader newStreamReader( Reader reader ) {
+        return SHARED_READER.readStream(reader, JsonReader.DEFAULT_INTROSPECT);
+    }
+
+    /**
+     * Return a {@link JsonStreamWriter} that can be used to incrementally write the compact modified JSON representation of one or
+     * more documents to the supplied stream, using the {@link Charset#defaultCharset() default character set}. The writer should
+     * be {@link JsonStreamWriter#close() closed} when no longer needed.
+     * 
+     * @param stream the output stream; may not be null
+     * @return the writer; never null
+     */
+    public static JsonStreamWriter newStreamWriter( OutputStream stream ) {
+        return newStreamWriter(stream, Charset.defaultCharset());
+    }
+
+    /**
+     * Return a {@link JsonStreamWriter} that can be used to incrementally write the compact modified JSON representation of one or
+     * more documents to the supplied stream, using the supplied {@link Charset character set}. The writer should be
+     * {@link JsonStreamWriter#close() closed} when no longer needed.
+     * 
+     * @param stream the output stream; may not be null
+     * @param charset the character set that should be used; may not be null
+     * @return the writer; never null
+     */
+    public static JsonStreamWriter newStreamWriter( OutputStream stream,
+                                                    Charset charset ) {
+        return newStreamWriter(new BufferedWriter(new OutputStreamWriter(stream, charset)));
+    }
+
+    /**
+     * Return a {@link JsonStreamWriter} that can be used to incrementally write the compact modified JSON representation of one or
+     * more documents to the supplied writer.
+     * 
+     * @param writer the writer; may not be null
+     * @return the writer; never null
+     */
+    public static JsonStreamWriter newStreamWriter( Writer writer ) {
+        return new StreamingJsonWriter(writer, SHARED_COMPACT_WRITER);
+    }
+
     /**
      * Return the modified JSON representation for the supplied in-memory {@link Document}. The resulting JSON will have no
      * embedded line feeds or extra spaces.
@@ -0,0 +1,124 @@
+/*
+ * ModeShape (http://www.modeshape.org)
+ * See the COPYRIGHT.txt file distributed with this work for information
+ * regarding copyright ownership.  Some portions may be licensed
+ * to Red Hat, Inc. under one or more contributor license agreements.
+ * See the AUTHORS.txt file in the distribution for a full listing of 
+ * individual contributors.
+ *
+ * ModeShape is free software. Unless otherwise indicated, all code in ModeShape
+ * is licensed to you under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ * 
+ * ModeShape is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+package org.infinispan.schematic.document;
+
+import java.io.Closeable;
+
+/**
+ * A pull-style reader of JSON content that reports the structure of the content as a series of {@link Event events}, allowing
+ * very large streams to be processed field by field without first constructing an in-memory {@link Document} for each top-level
+ * document. Nested documents that use the {@link Json.ReservedField reserved field names} to represent BSON values (e.g., dates,
+ * UUIDs, binary values) are reported as a single {@link Event#VALUE} event with the corresponding value.
+ * <p>
+ * The content may contain multiple top-level documents (as written by {@link JsonStreamWriter}), so this reader is also a
+ * {@link DocumentSequence}; callers are free to mix reading complete documents with processing individual events, and can
+ * materialize just part of the content with {@link #readDocument()}.
+ * </p>
+ * 
+ * @see Json#newStreamReader(java.io.Reader)
+ */
+@NotThreadSafe
+public interface JsonStreamReader extends DocumentSequence, Closeable {
+
+    /**
+     * The kinds of events reported by a {@link JsonStreamReader}.
+     */
+    public static enum Event {
+        /** The beginning of a (top-level or nested) document. */
+        START_DOCUMENT,
+        /** The end of a (top-level or nested) document. */
+        END_DOCUMENT,
+        /** The beginning of an array. */
+        START_ARRAY,
+        /** The end of an array. */
+        END_ARRAY,
+        /** A field value within a document or a value within an array. */
+        VALUE;
+    }
+
+    /**
+     * Advance to the next event.
+     * 
+     * @return the next event, or null if there is no more content
+     * @throws ParsingException if there was a problem reading or parsing the content
+     */
+    Event next() throws ParsingException;
+
+    /**
+     * Get the event that was most recently returned from {@link #next()}.
+     * 
+     * @return the current event, or null if {@link #next()} has not been called or there is no more content
+     */
+    Event getEvent();
+
+    /**
+     * Get the name of the field to which the current event applies.
+     * 
+     * @return the field name, or null if the current event applies to a top-level document or a value within an array
+     */
+    String getFieldName();
+
+    /**
+     * Get the value for the current {@link Event#VALUE} event.
+     * 
+     * @return the value, or null if the current event is not a {@link Event#VALUE} event
+     */
+    Object getValue();
+
+    /**
+     * Get the number of documents and arrays that enclose the current position. The depth is 0 between top-level documents.
+     * 
+     * @return the depth; never negative
+     */
+    int getDepth();
+
+    /**
+     * Read the remainder of the document that was just started, and position this reader at the corresponding
+     * {@link Event#END_DOCUMENT} event. This is useful to materialize only a small part of a much larger stream.
+     * 
+     * @return the in-memory representation of the document; never null
+     * @throws ParsingException if there was a problem reading or parsing the content
+     * @throws IllegalStateException if the current event is not {@link Event#START_DOCUMENT}
+     */
+    Document readDocument() throws ParsingException;
+
+    /**
+     * Skip the remaining content of the document or array that was just started, and position this reader at the corresponding
+     * {@link Event#END_DOCUMENT} or {@link Event#END_ARRAY} event. This method does not retain any of the skipped content.
+     * 
+     * @throws ParsingException if there was a problem reading or parsing the content
+     * @throws IllegalStateException if the current event is not {@link Event#START_DOCUMENT} or {@link Event#START_ARRAY}
+     */
+    void skipChildren() throws ParsingException;
+
+    /**
+     * Read the next complete top-level document.
+     * 
+     * @return the next document, or null if there are no more
+     * @throws ParsingException if there was a problem reading or parsing the content
+     * @throws IllegalStateException if this reader is positioned within a top-level document
+     */
+    @Override
+    Document nextDocument() throws ParsingException;
+}
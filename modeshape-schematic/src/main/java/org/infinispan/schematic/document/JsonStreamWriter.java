@@ -0,0 +1,131 @@
+/*
+ * ModeShape (http://www.modeshape.org)
+ * See the COPYRIGHT.txt file distributed with this work for information
+ * regarding copyright ownership.  Some portions may be licensed
+ * to Red Hat, Inc. under one or more contributor license agreements.
+ * See the AUTHORS.txt file in the distribution for a full listing of 
+ * individual contributors.
+ *
+ * ModeShape is free software. Unless otherwise indicated, all code in ModeShape
+ * is licensed to you under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ * 
+ * ModeShape is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+package org.infinispan.schematic.document;
+
+import java.io.Closeable;
+import java.io.Flushable;
+import java.io.IOException;
+
+/**
+ * A writer that produces the modified JSON representation incrementally, so that very large documents (or very many documents)
+ * can be written without first constructing an in-memory {@link Document} for each of them. Field and array values can be any
+ * value supported by {@link Json#write(Object)}, including complete {@link Document}s.
+ * <p>
+ * Each top-level document is followed by a line feed, so the output can be read back with {@link Json#readMultiple(java.io.Reader)} or a
+ * {@link JsonStreamReader}.
+ * </p>
+ * 
+ * @see Json#newStreamWriter(java.io.Writer)
+ */
+@NotThreadSafe
+public interface JsonStreamWriter extends Closeable, Flushable {
+
+    /**
+     * Begin a new top-level document, or a new document value within the current array.
+     * 
+     * @return this writer, for method chaining; never null
+     * @throws IOException if there was a problem writing to the underlying stream
+     * @throws IllegalStateException if the writer is positioned within a document
+     */
+    JsonStreamWriter startDocument() throws IOException;
+
+    /**
+     * Begin a new nested document as the value of the named field in the current document.
+     * 
+     * @param fieldName the name of the field; may not be null
+     * @return this writer, for method chaining; never null
+     * @throws IOException if there was a problem writing to the underlying stream
+     * @throws IllegalStateException if the writer is not positioned within a document
+     */
+    JsonStreamWriter startDocument( String fieldName ) throws IOException;
+
+    /**
+     * End the current document.
+     * 
+     * @return this writer, for method chaining; never null
+     * @throws IOException if there was a problem writing to the underlying stream
+     * @throws IllegalStateException if the writer is not positioned within a document
+     */
+    JsonStreamWriter endDocument() throws IOException;
+
+    /**
+     * Begin a new array value within the current array.
+     * 
+     * @return this writer, for method chaining; never null
+     * @throws IOException if there was a problem writing to the underlying stream
+     * @throws IllegalStateException if the writer is not positioned within an array
+     */
+    JsonStreamWriter startArray() throws IOException;
+
+    /**
+     * Begin a new array as the value of the named field in the current document.
+     * 
+     * @param fieldName the name of the field; may not be null
+     * @return this writer, for method chaining; never null
+     * @throws IOException if there was a problem writing to the underlying stream
+     * @throws IllegalStateException if the writer is not positioned within a document
+     */
+    JsonStreamWriter startArray( String fieldName ) throws IOException;
+
+    /**
+     * End the current array.
+     * 
+     * @return this writer, for method chaining; never null
+     * @throws IOException if there was a problem writing to the underlying stream
+     * @throws IllegalStateException if the writer is not positioned within an array
+     */
+    JsonStreamWriter endArray() throws IOException;
+
+    /**
+     * Write a field with the supplied name and value in the current document.
+     * 
+     * @param fieldName the name of the field; may not be null
+     * @param value the field value; may be null
+     * @return this writer, for method chaining; never null
+     * @throws IOException if there was a problem writing to the underlying stream
+     * @throws IllegalStateException if the writer is not positioned within a document
+     */
+    JsonStreamWriter field( String fieldName,
+                            Object value ) throws IOException;
+
+    /**
+     * Write a value within the current array.
+     * 
+     * @param value the value; may be null
+     * @return this writer, for method chaining; never null
+     * @throws IOException if there was a problem writing to the underlying stream
+     * @throws IllegalStateException if the writer is not positioned within an array
+     */
+    JsonStreamWriter value( Object value ) throws IOException;
+
+    /**
+     * Write a complete top-level document.
+     * 
+     * @param document the document; may not be null
+     * @return this writer, for method chaining; never null
+     * @throws IOException if there was a problem writing to the underlying stream
+     * @throws IllegalStateException if the writer is positioned within a document or array
+     */
+    JsonStreamWriter document( Document document ) throws IOException;
+}
@@ -30,6 +30,7 @@ import org.infinispan.atomic.Delta;
 import org.infinispan.configuration.cache.CacheMode;
 import org.infinispan.configuration.cache.Configuration;
 import org.infinispan.context.Flag;
+import org.infinispan.schematic.SchematicDb.DeltaListener;
 import org.infinispan.schematic.SchematicEntry;
 import org.infinispan.transaction.LockingMode;
 import org.infinispan.transaction.TransactionTable;
@@ -50,6 +51,8 @@ final class CacheContext {
     private final TransactionTable transactionTable;
     private final boolean explicitLockingEnabled;
     private final boolean clustered;
+    private volatile boolean deltaContainingChangesEnabled = true;
+    private volatile DeltaListener deltaListener;
 
     CacheContext( AdvancedCache<String, SchematicEntry> cache ) {
         this.cache = cache;
@@ -139,13 +142,41 @@ final class CacheContext {
     }
 
     /**
-     * Return whether the {@link Delta} implementation will contain only the differences.
+     * Return whether the {@link Delta} implementation will contain only the differences. This is only the case when the cache is
+     * clustered, since otherwise the deltas are never sent anywhere.
      * 
      * @return true if the {@link Delta} implementation contains only differences, or false if it contains the whole document.
      */
     public boolean isDeltaContainingChangesEnabled() {
-        //TODO author=Horia Chiorean date=4/2/13 description=See https://issues.jboss.org/browse/MODE-1875 for more information
-        return false;
+        return deltaContainingChangesEnabled && clustered;
+    }
+
+    /**
+     * Set whether the {@link Delta} implementation should contain only the differences when the cache is clustered.
+     * 
+     * @param enabled true if the {@link Delta} implementation should contain only differences, or false if it should contain the
+     *        whole document
+     */
+    public void setDeltaContainingChangesEnabled( boolean enabled ) {
+        this.deltaContainingChangesEnabled = enabled;
+    }
+
+    /**
+     * Get the listener that should be notified of the size of each {@link Delta} that is sent to other processes.
+     * 
+     * @return the listener; may be null
+     */
+    public DeltaListener getDeltaListener() {
+        return clustered ? deltaListener : null;
+    }
+
+    /**
+     * Set the listener that should be notified of the size of each {@link Delta} that is sent to other processes.
+     * 
+     * @param listener the listener; may be null
+     */
+    public void setDeltaListener( DeltaListener listener ) {
+        this.deltaListener = listener;
     }
 
     /**
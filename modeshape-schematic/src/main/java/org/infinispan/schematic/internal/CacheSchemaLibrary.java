@@ -76,6 +76,10 @@ public class CacheSchemaLibrary implements SchemaLibrary, Lifecycle {
         return store;
     }
 
+    protected SchemaDocumentCache schemaDocuments() {
+        return schemaDocuments;
+    }
+
     @Override
     public String getName() {
         return name;
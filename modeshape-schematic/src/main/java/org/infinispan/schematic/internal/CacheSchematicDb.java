@@ -23,15 +23,17 @@ package org.infinispan.schematic.internal;
 
 import java.util.Collection;
 import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
 import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.TimeoutException;
 import java.util.concurrent.atomic.AtomicReference;
 import org.infinispan.Cache;
 import org.infinispan.context.FlagContainer;
-import org.infinispan.distexec.mapreduce.Collector;
-import org.infinispan.distexec.mapreduce.MapReduceTask;
+import org.infinispan.distexec.DefaultExecutorService;
+import org.infinispan.distexec.DistributedExecutorService;
 import org.infinispan.schematic.SchemaLibrary;
 import org.infinispan.schematic.SchemaLibrary.Results;
 import org.infinispan.schematic.Schematic;
@@ -134,21 +136,51 @@ public class CacheSchematicDb implements SchematicDb {
 
     @Override
     public Map<String, Results> validateAll() {
+        final Map<String, Results> resultsByKey = new HashMap<String, Results>();
+        validateAll(new ValidationListener() {
+            @Override
+            public void problemsFound( String key,
+                                       Results results ) {
+                resultsByKey.put(key, results);
+            }
+        });
+        return resultsByKey;
+    }
+
+    @Override
+    public void validateAll( ValidationListener listener ) {
         CacheSchemaLibrary schemaLibrary = schemaLibrary(true);
-        if (store.getAdvancedCache().getRpcManager() == null) {
-            // This is a non-clustered cache, which cannot run Map-Reduce. In this case, just go through them
-            // all and run validation manually using the mapper...
-            DocumentValidationMapper mapper = new DocumentValidationMapper(schemaLibrary, defaultSchemaUri);
-            ResultsCollector resultsCollector = new ResultsCollector();
-            for (Map.Entry<String, SchematicEntry> entry : store.entrySet()) {
-                String key = entry.getKey();
-                SchematicEntry value = entry.getValue();
-                mapper.map(key, value, resultsCollector);
+        if (!store.getCacheConfiguration().clustering().cacheMode().isDistributed()) {
+            // All of the entries are available in this process, so validate them here ...
+            DocumentValidationMapper mapper = new DocumentValidationMapper(schemaLibrary.schemaDocuments(), defaultSchemaUri);
+            int threads = Runtime.getRuntime().availableProcessors();
+            ParallelDocumentValidator validator = new ParallelDocumentValidator(mapper, listener, threads,
+                                                                                ParallelDocumentValidator.DEFAULT_BATCH_SIZE);
+            boolean submittedAll = false;
+            try {
+                for (Map.Entry<String, SchematicEntry> entry : store.entrySet()) {
+                    validator.validate(entry.getKey(), entry.getValue());
+                }
+                submittedAll = true;
+            } finally {
+                if (submittedAll) {
+                    validator.finish();
+                } else {
+                    try {
+                        // Wait for the submitted entries, but don't mask the failure that stopped the iteration ...
+                        validator.finish();
+                    } catch (RuntimeException e) {
+                        // ignore
+                    } catch (Error e) {
+                        // ignore
+                    }
+                }
             }
-            return resultsCollector.getResultsByKey();
+            return;
         }
 
-        // It is a clustered cache, so we can run Map-Reduce ...
+        // It is a distributed cache, so have each process validate the entries it owns. Each process returns the results
+        // for all of its invalid documents at once, so (unlike above) those results are held in memory until it completes ...
 
         // Create a copy of all of the JSON Schema documents ...
         InMemoryDocumentLibrary schemaDocs = new InMemoryDocumentLibrary(schemaLibrary.getName());
@@ -158,26 +190,40 @@ public class CacheSchematicDb implements SchematicDb {
             schemaDocs.put(key, value.getContentAsDocument());
         }
 
-        // Now create the Map-Reduce task, using the copy of the JSON Schema library ...
-        MapReduceTask<String, SchematicEntry, String, Results> task = new MapReduceTask<String, SchematicEntry, String, Results>(
-                                                                                                                                 this.store);
-        task.mappedWith(new DocumentValidationMapper(schemaDocs, defaultSchemaUri));
-        task.reducedWith(new DocumentValidationReducer());
-
-        // Now execute ...
-        return task.execute();
+        // Now run the task on each process, using the copy of the JSON Schema library ...
+        DocumentValidationMapper mapper = new DocumentValidationMapper(schemaDocs, defaultSchemaUri);
+        DistributedDocumentValidationTask task = new DistributedDocumentValidationTask(mapper,
+                                                                                       ParallelDocumentValidator.DEFAULT_BATCH_SIZE);
+        DistributedExecutorService executor = new DefaultExecutorService(store);
+        try {
+            List<Future<Map<String, Results>>> futures = executor.submitEverywhere(task);
+            // Pass along the results from each process ...
+            for (Future<Map<String, Results>> future : futures) {
+                for (Map.Entry<String, Results> entry : future.get().entrySet()) {
+                    listener.problemsFound(entry.getKey(), entry.getValue());
+                }
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Interrupted while validating the documents in '" + name + "'", e);
+        } catch (ExecutionException e) {
+            throw new IllegalStateException("Unable to validate the documents in '" + name + "'", e.getCause());
+        } finally {
+            executor.shutdown();
+        }
     }
 
     @Override
     public Map<String, Results> validate( String firstKey,
                                           String... additionalKeys ) {
         Map<String, Results> resultsByKey = new HashMap<String, Results>();
-        Results results = validate(firstKey);
+        DocumentValidationMapper mapper = new DocumentValidationMapper(schemaLibrary(true).schemaDocuments(), defaultSchemaUri);
+        Results results = validate(firstKey, mapper);
         if (results != null && results.hasProblems()) {
             resultsByKey.put(firstKey, results);
         }
         for (String key : additionalKeys) {
-            results = validate(key);
+            results = validate(key, mapper);
             if (results != null && results.hasProblems()) {
                 resultsByKey.put(key, results);
             }
@@ -187,28 +233,18 @@ public class CacheSchematicDb implements SchematicDb {
 
     @Override
     public Results validate( String key ) {
+        return validate(key, new DocumentValidationMapper(schemaLibrary(true).schemaDocuments(), defaultSchemaUri));
+    }
+
+    protected Results validate( String key,
+                                DocumentValidationMapper mapper ) {
         SchematicEntry entry = store.get(key);
         if (entry != null) {
-            DocumentValidationMapper mapper = new DocumentValidationMapper(schemaLibrary(true), defaultSchemaUri);
             return mapper.validate(key, entry); // might be null if no JSON document or doc has no affiliated schema
         }
         return null;
     }
 
-    protected static class ResultsCollector implements Collector<String, Results> {
-        private final Map<String, Results> resultsByKey = new HashMap<String, Results>();
-
-        @Override
-        public void emit( String key,
-                          Results value ) {
-            resultsByKey.put(key, value);
-        }
-
-        public Map<String, Results> getResultsByKey() {
-            return resultsByKey;
-        }
-    }
-
     protected SchematicEntry proxy( String key,
                                     SchematicEntry entry ) {
         if (entry == null) return null;
@@ -426,6 +462,21 @@ public class CacheSchematicDb implements SchematicDb {
         return context.isExplicitLockingEnabled();
     }
 
+    @Override
+    public void setDeltaReplicationEnabled( boolean enabled ) {
+        context.setDeltaContainingChangesEnabled(enabled);
+    }
+
+    @Override
+    public boolean isDeltaReplicationEnabled() {
+        return context.isDeltaContainingChangesEnabled();
+    }
+
+    @Override
+    public void setDeltaListener( DeltaListener listener ) {
+        context.setDeltaListener(listener);
+    }
+
     protected class SchematicEntryProxyFuture implements NotifyingFuture<SchematicEntry> {
         private final NotifyingFuture<SchematicEntry> original;
         private final String key;
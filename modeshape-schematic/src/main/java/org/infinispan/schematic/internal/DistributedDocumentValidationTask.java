@@ -0,0 +1,100 @@
+/*
+ * ModeShape (http://www.modeshape.org)
+ * See the COPYRIGHT.txt file distributed with this work for information
+ * regarding copyright ownership.  Some portions may be licensed
+ * to Red Hat, Inc. under one or more contributor license agreements.
+ * See the AUTHORS.txt file in the distribution for a full listing of 
+ * individual contributors.
+ *
+ * ModeShape is free software. Unless otherwise indicated, all code in ModeShape
+ * is licensed to you under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ * 
+ * ModeShape is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+package org.infinispan.schematic.internal;
+
+import java.io.Serializable;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Set;
+import org.infinispan.Cache;
+import org.infinispan.distexec.DistributedCallable;
+import org.infinispan.distribution.DistributionManager;
+import org.infinispan.remoting.transport.Address;
+import org.infinispan.schematic.SchemaLibrary.Results;
+import org.infinispan.schematic.SchematicDb.ValidationListener;
+import org.infinispan.schematic.SchematicEntry;
+
+/**
+ * A {@link DistributedCallable} that is run on each process in a distributed cache to validate (in parallel) the entries that
+ * are primarily owned by that process, returning only the results for the documents that had problems.
+ * <p>
+ * Note that the results for all of the invalid documents owned by a process are returned together, so the memory required
+ * depends upon the number of invalid documents (though not upon the total number of documents).
+ * </p>
+ */
+public class DistributedDocumentValidationTask
+    implements DistributedCallable<String, SchematicEntry, Map<String, Results>>, Serializable {
+
+    private static final long serialVersionUID = 1L;
+
+    private final DocumentValidationMapper mapper;
+    private final int batchSize;
+    private transient Cache<String, SchematicEntry> cache;
+
+    /**
+     * Create a new task.
+     * 
+     * @param mapper the serializable mapper used to validate each entry; may not be null
+     * @param batchSize the number of entries validated together by a thread; must be positive
+     */
+    public DistributedDocumentValidationTask( DocumentValidationMapper mapper,
+                                              int batchSize ) {
+        this.mapper = mapper;
+        this.batchSize = batchSize;
+    }
+
+    @Override
+    public void setEnvironment( Cache<String, SchematicEntry> cache,
+                                Set<String> inputKeys ) {
+        this.cache = cache;
+    }
+
+    @Override
+    public Map<String, Results> call() {
+        final Map<String, Results> resultsByKey = new HashMap<String, Results>();
+        ValidationListener collector = new ValidationListener() {
+            @Override
+            public void problemsFound( String key,
+                                       Results results ) {
+                resultsByKey.put(key, results);
+            }
+        };
+        DistributionManager distributionManager = cache.getAdvancedCache().getDistributionManager();
+        Address self = cache.getAdvancedCache().getRpcManager().getAddress();
+        int threads = Runtime.getRuntime().availableProcessors();
+        ParallelDocumentValidator validator = new ParallelDocumentValidator(mapper, collector, threads, batchSize);
+        try {
+            for (Map.Entry<String, SchematicEntry> entry : cache.entrySet()) {
+                String key = entry.getKey();
+                // Validate only those entries owned by this process, since the other owners will validate the rest ...
+                if (distributionManager == null || self.equals(distributionManager.getPrimaryLocation(key))) {
+                    validator.validate(key, entry.getValue());
+                }
+            }
+        } finally {
+            validator.finish();
+        }
+        return resultsByKey;
+    }
+}
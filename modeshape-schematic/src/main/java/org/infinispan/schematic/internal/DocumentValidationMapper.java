@@ -63,6 +63,21 @@ public class DocumentValidationMapper implements Mapper<String, SchematicEntry,
       this.defaultSchemaUri = defaultSchemaUri;
    }
 
+   /**
+    * Create a new instance of the document validation {@link Mapper} that uses an existing cache of JSON Schema documents, so
+    * that the validators for those schemas are not built again.
+    * 
+    * @param schemaDocuments
+    *           the cache of JSON Schema documents and their validators; may not be null
+    * @param defaultSchemaUri
+    *           the URI of the JSON Schema that should be used for JSON documents that have not been associated with a
+    *           schema; may be null if JSON documents without a schema reference should be skipped and not validated
+    */
+   public DocumentValidationMapper(SchemaDocumentCache schemaDocuments, String defaultSchemaUri) {
+      this.schemaLibrary = schemaDocuments;
+      this.defaultSchemaUri = defaultSchemaUri;
+   }
+
    @Override
    public void map(String key, SchematicEntry value, Collector<String, Results> collector) {
       Results results = validate(key, value);
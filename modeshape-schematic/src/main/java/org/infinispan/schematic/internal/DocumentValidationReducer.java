@@ -48,7 +48,7 @@ public class DocumentValidationReducer implements Reducer<String, Results> {
 
    @Override
    public Results reduce(String reducedKey, Iterator<Results> iter) {
-      if (iter.hasNext())
+      if (!iter.hasNext())
          return null;
       Results first = iter.next();
       if (!iter.hasNext()) {
@@ -0,0 +1,150 @@
+/*
+ * ModeShape (http://www.modeshape.org)
+ * See the COPYRIGHT.txt file distributed with this work for information
+ * regarding copyright ownership.  Some portions may be licensed
+ * to Red Hat, Inc. under one or more contributor license agreements.
+ * See the AUTHORS.txt file in the distribution for a full listing of 
+ * individual contributors.
+ *
+ * ModeShape is free software. Unless otherwise indicated, all code in ModeShape
+ * is licensed to you under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ * 
+ * ModeShape is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+package org.infinispan.schematic.internal;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+import org.infinispan.schematic.SchemaLibrary.Results;
+import org.infinispan.schematic.SchematicDb.ValidationListener;
+import org.infinispan.schematic.SchematicEntry;
+import org.infinispan.schematic.document.NotThreadSafe;
+
+/**
+ * Validates {@link SchematicEntry entries} by dividing them into batches that are validated in parallel, and passes the results
+ * for each invalid document to a {@link ValidationListener} as soon as they are available. At most a few batches per thread are
+ * pending at any time (the thread supplying the entries validates a batch itself when all threads are busy), so the memory
+ * required does not depend upon the number of entries.
+ * <p>
+ * Supply each entry with {@link #validate(String, SchematicEntry)}, and then call {@link #finish()} to wait for all of the
+ * entries to be validated.
+ * </p>
+ */
+@NotThreadSafe
+public class ParallelDocumentValidator {
+
+    public static final int DEFAULT_BATCH_SIZE = 256;
+
+    private final DocumentValidationMapper mapper;
+    private final ValidationListener listener;
+    private final int batchSize;
+    private final ThreadPoolExecutor executor;
+    private final AtomicReference<Throwable> failure = new AtomicReference<Throwable>();
+    private List<Object> batch;
+    private long count;
+
+    /**
+     * Create a new validator.
+     * 
+     * @param mapper the mapper used to validate each entry; may not be null
+     * @param listener the listener that is to be given the results for each invalid document; may not be null
+     * @param threads the number of threads that validate the documents; must be positive
+     * @param batchSize the number of entries validated together by a thread; must be positive
+     */
+    public ParallelDocumentValidator( DocumentValidationMapper mapper,
+                                      ValidationListener listener,
+                                      int threads,
+                                      int batchSize ) {
+        this.mapper = mapper;
+        this.listener = listener;
+        this.batchSize = batchSize;
+        this.executor = new ThreadPoolExecutor(threads, threads, 0L, TimeUnit.MILLISECONDS,
+                                               new ArrayBlockingQueue<Runnable>(threads * 2),
+                                               new ThreadPoolExecutor.CallerRunsPolicy());
+        this.batch = new ArrayList<Object>(batchSize * 2);
+    }
+
+    /**
+     * Validate the supplied entry, which may happen after this method returns.
+     * 
+     * @param key the key of the entry; may not be null
+     * @param entry the entry; may not be null
+     */
+    public void validate( String key,
+                          SchematicEntry entry ) {
+        batch.add(key);
+        batch.add(entry);
+        ++count;
+        if (batch.size() >= batchSize * 2) {
+            submit();
+        }
+    }
+
+    /**
+     * Wait until all of the supplied entries have been validated.
+     * 
+     * @return the number of entries that were validated
+     * @throws RuntimeException if the validation of any entry failed
+     * @throws Error if the validation of any entry failed with an error
+     */
+    public long finish() {
+        try {
+            if (!batch.isEmpty()) submit();
+        } finally {
+            executor.shutdown();
+            boolean interrupted = false;
+            while (!executor.isTerminated()) {
+                try {
+                    executor.awaitTermination(1L, TimeUnit.SECONDS);
+                } catch (InterruptedException e) {
+                    interrupted = true;
+                }
+            }
+            if (interrupted) Thread.currentThread().interrupt();
+        }
+        Throwable t = failure.get();
+        if (t instanceof Error) throw (Error)t;
+        if (t != null) throw (RuntimeException)t;
+        return count;
+    }
+
+    protected void submit() {
+        final List<Object> entries = batch;
+        batch = new ArrayList<Object>(batchSize * 2);
+        executor.execute(new Runnable() {
+            @Override
+            public void run() {
+                if (failure.get() != null) return;
+                try {
+                    for (int i = 0; i < entries.size(); i += 2) {
+                        String key = (String)entries.get(i);
+                        Results results = mapper.validate(key, (SchematicEntry)entries.get(i + 1));
+                        if (results != null && results.hasProblems()) {
+                            synchronized (listener) {
+                                listener.problemsFound(key, results);
+                            }
+                        }
+                    }
+                } catch (RuntimeException e) {
+                    failure.compareAndSet(null, e);
+                } catch (Error e) {
+                    failure.compareAndSet(null, e);
+                }
+            }
+        });
+    }
+}
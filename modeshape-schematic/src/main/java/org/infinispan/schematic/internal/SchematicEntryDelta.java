@@ -100,6 +100,21 @@ public class SchematicEntryDelta implements SchematicDelta {
         changeLog.add(o);
     }
 
+    /**
+     * Estimate the number of bytes needed to send this delta to another process.
+     * 
+     * @param limit the size above which the caller is no longer interested in the exact estimate
+     * @return the estimated size, which is greater than <code>limit</code> if the delta is larger than the limit
+     */
+    public long estimateSize( long limit ) {
+        long size = 4 + key.length();
+        for (Operation operation : changeLog) {
+            size += operation.estimateSize(limit - size);
+            if (size > limit) break;
+        }
+        return size;
+    }
+
     @Override
     public String toString() {
         return "SchematicEntryDelta{key=" + key + "," + "changeLog=" + changeLog + '}';
@@ -31,6 +31,7 @@ import org.infinispan.atomic.Delta;
 import org.infinispan.atomic.DeltaAware;
 import org.infinispan.context.FlagContainer;
 import org.infinispan.marshall.SerializeWith;
+import org.infinispan.schematic.SchematicDb.DeltaListener;
 import org.infinispan.schematic.SchematicEntry;
 import org.infinispan.schematic.document.Binary;
 import org.infinispan.schematic.document.Document;
@@ -39,8 +40,8 @@ import org.infinispan.schematic.document.EditableDocument;
 import org.infinispan.schematic.document.Path;
 import org.infinispan.schematic.internal.delta.Operation;
 import org.infinispan.schematic.internal.delta.PutOperation;
-import org.infinispan.schematic.internal.delta.RemoveOperation;
 import org.infinispan.schematic.internal.document.BasicDocument;
+import org.infinispan.schematic.internal.document.BsonSizes;
 import org.infinispan.schematic.internal.document.MutableDocument;
 import org.infinispan.schematic.internal.document.Paths;
 import org.infinispan.schematic.internal.marshall.Ids;
@@ -88,6 +89,7 @@ public class SchematicEntryLiteral implements SchematicEntry, DeltaAware {
     private volatile MutableDocument value;
     private final AtomicReference<SchematicDelta> delta = new AtomicReference<SchematicDelta>(null);
     private volatile SchematicEntryProxy proxy;
+    private volatile DeltaListener deltaListener;
     volatile boolean copied = false;
     volatile boolean removed = false;
 
@@ -173,7 +175,28 @@ public class SchematicEntryLiteral implements SchematicEntry, DeltaAware {
     @Override
     public Delta delta() {
         SchematicDelta delta = this.delta.getAndSet(null);
-        return delta != null ? delta : new SchematicEntryWholeDelta(value);
+        DeltaListener listener = this.deltaListener;
+        this.deltaListener = null;
+        if (delta instanceof SchematicEntryDelta) {
+            // Send the operations only if they are smaller than the whole document, which is often the case for large documents.
+            // But there's no need to compute the exact size of the document once it's known to be larger ...
+            long deltaSize = ((SchematicEntryDelta)delta).estimateSize(Long.MAX_VALUE);
+            long documentSize = BsonSizes.estimate(value, deltaSize);
+            if (documentSize > deltaSize) {
+                if (listener != null) listener.changeSent(false, deltaSize);
+                return delta;
+            }
+            if (TRACE) {
+                LOGGER.trace("Sending whole document for " + getKey() + " since it is smaller than the operations that changed it");
+            }
+            delta = new SchematicEntryWholeDelta(value);
+            if (listener != null) listener.changeSent(true, documentSize);
+            return delta;
+        }
+        // The whole document is sent because delta replication is disabled, in which case there is no listener to be told
+        // its size (since estimating it would mean walking the whole document on every commit) ...
+        if (delta == null) delta = new SchematicEntryWholeDelta(value);
+        return delta;
     }
 
     protected final SchematicDelta getDelta() {
@@ -184,6 +207,7 @@ public class SchematicEntryLiteral implements SchematicEntry, DeltaAware {
         assert delta.get() == null;
         if (context.isDeltaContainingChangesEnabled()) {
             delta.set(new SchematicEntryDelta(key()));
+            deltaListener = context.getDeltaListener();
         } else {
             delta.set(new SchematicEntryWholeDelta(value));
         }
@@ -196,6 +220,7 @@ public class SchematicEntryLiteral implements SchematicEntry, DeltaAware {
         }
         copied = false;
         delta.set(null);
+        deltaListener = null;
     }
 
     @Override
@@ -246,11 +271,9 @@ public class SchematicEntryLiteral implements SchematicEntry, DeltaAware {
         Object existing = this.value.put(FieldName.CONTENT, content);
         SchematicDelta delta = this.delta.get();
         if (delta != null && delta.isRecordingOperations()) {
-            if (existing != null) {
-                delta.addOperation(new PutOperation(FieldPath.ROOT, FieldName.CONTENT, existing, content));
-            } else {
-                delta.addOperation(new RemoveOperation(FieldPath.ROOT, FieldName.CONTENT, content));
-            }
+            // Record a copy, since later edits of the content are recorded as separate operations ...
+            Object copy = content instanceof Document ? ((Document)content).clone() : content;
+            delta.addOperation(new PutOperation(FieldPath.ROOT, FieldName.CONTENT, existing, copy));
         }
         return existing;
     }
@@ -279,7 +302,7 @@ public class SchematicEntryLiteral implements SchematicEntry, DeltaAware {
             value.put(FieldName.METADATA, newMetadata);
             SchematicDelta delta = this.delta.get();
             if (delta != null && delta.isRecordingOperations()) {
-                PutOperation op = new PutOperation(FieldPath.ROOT, FieldName.METADATA, existingMetadata, newMetadata);
+                PutOperation op = new PutOperation(FieldPath.ROOT, FieldName.METADATA, existingMetadata, newMetadata.clone());
                 delta.addOperation(op);
             }
         }
@@ -149,7 +149,13 @@ public class SchematicEntryProxy extends AutoBatchSupport implements SchematicEn
         boolean lockedAndCopied = lookedUpEntry != null && lookedUpEntry.isChanged() && toValue(lookedUpEntry.getValue()).copied;
 
         if (lockedAndCopied) {
-            return getDeltaValueForRead();
+            SchematicEntryLiteral value = getDeltaValueForRead();
+            if (value.getDelta() == null) {
+                // The changes made so far have already been taken as a delta, so record any further changes in a new one ...
+                value.createDelta(context);
+                context.getCacheForWriting().put(key, value);
+            }
+            return value;
         }
         // Otherwise, acquire the write lock ...
         boolean suppressLocks = flagContainer != null && flagContainer.hasFlag(Flag.SKIP_LOCKING);
@@ -305,7 +311,7 @@ public class SchematicEntryProxy extends AutoBatchSupport implements SchematicEn
             return (DocumentEditor)doc;
         }
         // Otherwise, create the editor ...
-        if (context.isDeltaContainingChangesEnabled() && context.isClustered()) {
+        if (observer instanceof SchematicDelta && ((SchematicDelta)observer).isRecordingOperations()) {
             // It's clustered and we're supposed to record changes for the deltas ...
             return new ObservableDocumentEditor((MutableDocument)doc, pathToDocument, observer, null);
         }
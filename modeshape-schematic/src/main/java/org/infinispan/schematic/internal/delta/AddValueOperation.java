@@ -103,6 +103,11 @@ public class AddValueOperation extends ArrayOperation {
         }
     }
 
+    @Override
+    public long estimateSize( long limit ) {
+        return estimateSizeWith(value, limit) + 4;
+    }
+
     @Override
     public String toString() {
         return "Add to '" + parentPath + "' the value '" + value + "'" + (index >= 0 ? " at index " + index : "");
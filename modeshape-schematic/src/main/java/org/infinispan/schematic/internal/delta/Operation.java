@@ -27,6 +27,7 @@ import java.util.Collection;
 import org.infinispan.schematic.document.Document;
 import org.infinispan.schematic.document.Immutable;
 import org.infinispan.schematic.document.Path;
+import org.infinispan.schematic.internal.document.BsonSizes;
 import org.infinispan.schematic.internal.document.MutableDocument;
 
 /**
@@ -38,6 +39,11 @@ import org.infinispan.schematic.internal.document.MutableDocument;
 @Immutable
 public abstract class Operation {
 
+    /**
+     * The estimated number of bytes needed to write the type and other fixed parts of an operation.
+     */
+    protected static final int OPERATION_OVERHEAD = 8;
+
     protected final Path parentPath;
     private final int hashCode;
 
@@ -60,6 +66,23 @@ public abstract class Operation {
         return parentPath;
     }
 
+    /**
+     * Estimate the number of bytes needed to send this operation to another process. Operations that carry values add the
+     * estimated size of those values.
+     * 
+     * @param limit the size above which the caller is no longer interested in the exact estimate
+     * @return the estimated size, which is greater than <code>limit</code> if the operation is larger than the limit
+     */
+    public long estimateSize( long limit ) {
+        return OPERATION_OVERHEAD + BsonSizes.estimate(parentPath);
+    }
+
+    protected final long estimateSizeWith( Object value,
+                                           long limit ) {
+        long size = OPERATION_OVERHEAD + BsonSizes.estimate(parentPath);
+        return size + BsonSizes.estimate(value, limit - size);
+    }
+
     protected MutableDocument mutableParent( MutableDocument delegate ) {
         MutableDocument parent = delegate;
         Path parentPath = getParentPath();
@@ -100,6 +100,11 @@ public class PutIfAbsentOperation extends Operation {
         return false;
     }
 
+    @Override
+    public long estimateSize( long limit ) {
+        return estimateSizeWith(newValue, limit) + 2 + fieldName.length();
+    }
+
     @Override
     public String toString() {
         return "Put-if-absent at '" + parentPath + "' the '" + fieldName + "' field value '" + newValue + "'";
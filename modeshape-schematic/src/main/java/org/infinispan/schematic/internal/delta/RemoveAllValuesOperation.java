@@ -108,6 +108,11 @@ public class RemoveAllValuesOperation extends ArrayOperation {
         }
     }
 
+    @Override
+    public long estimateSize( long limit ) {
+        return estimateSizeWith(values, limit);
+    }
+
     @Override
     public String toString() {
         return "Remove at '" + parentPath + "' the values: " + values;
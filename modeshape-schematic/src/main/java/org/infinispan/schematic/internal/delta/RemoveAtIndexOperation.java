@@ -80,6 +80,11 @@ public class RemoveAtIndexOperation extends ArrayOperation {
         actualValue = array.remove(index);
     }
 
+    @Override
+    public long estimateSize( long limit ) {
+        return super.estimateSize(limit) + 4;
+    }
+
     @Override
     public String toString() {
         return "Remove at '" + parentPath + "' the value at index " + index;
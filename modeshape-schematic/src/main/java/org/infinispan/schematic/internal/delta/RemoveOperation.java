@@ -84,6 +84,11 @@ public class RemoveOperation extends Operation {
         return removed;
     }
 
+    @Override
+    public long estimateSize( long limit ) {
+        return super.estimateSize(limit) + 2 + fieldName.length();
+    }
+
     @Override
     public String toString() {
         return "Remove from '" + parentPath + "' the '" + fieldName + "' field value '" + oldValue + "'";
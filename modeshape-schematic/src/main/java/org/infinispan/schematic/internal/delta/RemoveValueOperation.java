@@ -81,6 +81,11 @@ public class RemoveValueOperation extends ArrayOperation {
         array.remove(actualIndex);
     }
 
+    @Override
+    public long estimateSize( long limit ) {
+        return estimateSizeWith(value, limit);
+    }
+
     @Override
     public String toString() {
         return "Remove at '" + parentPath + "' the value '" + value + "'";
@@ -86,6 +86,11 @@ public class RetainAllValuesOperation extends ArrayOperation {
         removedEntries = array.retainAllValues(values);
     }
 
+    @Override
+    public long estimateSize( long limit ) {
+        return estimateSizeWith(values, limit);
+    }
+
     @Override
     public String toString() {
         return "Retain at '" + parentPath + "' the values: " + values;
@@ -86,6 +86,11 @@ public class SetValueOperation extends ArrayOperation {
         oldValue = array.setValue(index, value);
     }
 
+    @Override
+    public long estimateSize( long limit ) {
+        return estimateSizeWith(value, limit) + 4;
+    }
+
     @Override
     public String toString() {
         return "Set at '" + parentPath + "' the value '" + value + "' (at index " + index + ")";
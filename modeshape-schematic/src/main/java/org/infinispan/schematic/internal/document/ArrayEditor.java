@@ -574,7 +574,7 @@ public class ArrayEditor implements EditableArray {
                                 Collection<? extends Object> c ) {
         if (c == null || c.isEmpty()) return false;
         for (Object value : c) {
-            doAddValue(value);
+            doAddValue(index++, value);
         }
         return true;
     }
@@ -1138,27 +1138,27 @@ public class ArrayEditor implements EditableArray {
     public EditableDocument addDocument() {
         BasicDocument doc = new BasicDocument();
         addValue(doc);
-        return editable(doc, size());
+        return editable(doc, size() - 1);
     }
 
     @Override
     public EditableDocument addDocument( Document document ) {
         if (document instanceof DocumentEditor) document = ((DocumentEditor)document).unwrap();
         addValue(document);
-        return editable(document, size());
+        return editable(document, size() - 1);
     }
 
     @Override
     public EditableArray addArray() {
         List<?> array = new BasicArray();
         addValue(array);
-        return editable(array, size());
+        return editable(array, size() - 1);
     }
 
     @Override
     public EditableArray addArray( Array array ) {
         addValue(array);
-        return editable((List<?>)array, size());
+        return editable((List<?>)array, size() - 1);
     }
 
     @Override
@@ -1281,12 +1281,12 @@ public class ArrayEditor implements EditableArray {
     @Override
     public EditableDocument addDocumentIfAbsent( Document document ) {
         if (document instanceof DocumentEditor) document = ((DocumentEditor)document).unwrap();
-        return doAddValueIfAbsent(document) ? editable(document, size()) : null;
+        return doAddValueIfAbsent(document) ? editable(document, size() - 1) : null;
     }
 
     @Override
     public EditableArray addArrayIfAbsent( Array array ) {
-        return doAddValueIfAbsent(array) ? editable((List<?>)array, size()) : null;
+        return doAddValueIfAbsent(array) ? editable((List<?>)array, size() - 1) : null;
     }
 
     @Override
@@ -25,6 +25,7 @@ import java.io.DataInput;
 import java.io.DataInputStream;
 import java.io.IOException;
 import java.io.InputStream;
+import java.util.Arrays;
 import java.util.UUID;
 import org.infinispan.schematic.document.Array;
 import org.infinispan.schematic.document.Bson;
@@ -105,8 +106,44 @@ public class BsonReader {
         return (Array)reader.endDocument();
     }
 
+    /**
+     * Read the binary BSON representation from the supplied data input into a {@link LazyDocument}, which keeps the bytes and
+     * decodes each field only when it is first accessed.
+     * 
+     * @param input the input stream; may not be null
+     * @return the document; never null
+     * @throws IOException if there was a problem reading from the stream
+     */
+    public Document readLazily( DataInput input ) throws IOException {
+        return readLazily(input, false);
+    }
+
+    /**
+     * Read the binary BSON representation from the supplied data input into a {@link LazyDocument}, which keeps the bytes and
+     * decodes each field only when it is first accessed.
+     * 
+     * @param input the input stream; may not be null
+     * @param fieldNamesEncoded true if the content was written with the {@link FieldNameDictionary field name dictionary}, or
+     *        false if it is standard BSON
+     * @return the document; never null
+     * @throws IOException if there was a problem reading from the stream
+     */
+    public Document readLazily( DataInput input,
+                                boolean fieldNamesEncoded ) throws IOException {
+        // The length of the document (which includes the length itself) is a little-endian int32 ...
+        byte[] lengthBytes = new byte[4];
+        input.readFully(lengthBytes);
+        int length = (lengthBytes[3] & 0xFF) << 24 | (lengthBytes[2] & 0xFF) << 16 | (lengthBytes[1] & 0xFF) << 8
+                     | (lengthBytes[0] & 0xFF);
+        byte[] bytes = new byte[length];
+        System.arraycopy(lengthBytes, 0, bytes, 0, 4);
+        input.readFully(bytes, 4, length - 4);
+        return new LazyDocument(bytes, 0, fieldNamesEncoded);
+    }
+
     protected static class Reader {
         private final BsonDataInput data;
+        private byte[] nameBytes = new byte[32];
         private MutableDocument object;
         private DocumentValueFactory values;
 
@@ -143,7 +180,7 @@ public class BsonReader {
 
         protected void readElement( byte type,
                                     MutableDocument bson ) throws IOException {
-            String name = readCString();
+            String name = readName();
             Object value = null;
             switch (type) {
                 case Bson.Type.ARRAY:
@@ -227,6 +264,22 @@ public class BsonReader {
             bson.put(name, value);
         }
 
+        /**
+         * Read the name of an element, which may be a {@link FieldNameDictionary dictionary} identifier.
+         * 
+         * @return the name; never null
+         * @throws IOException if there was a problem reading from the stream
+         */
+        protected String readName() throws IOException {
+            int length = 0;
+            byte b;
+            while ((b = data.readByte()) != 0) {
+                if (length == nameBytes.length) nameBytes = Arrays.copyOf(nameBytes, length * 2);
+                nameBytes[length++] = b;
+            }
+            return FieldNameDictionary.nameOf(nameBytes, 0, length);
+        }
+
         protected String readCString() throws IOException {
             return data.readUTF(-1); // this reads the zero-byte terminator
         }
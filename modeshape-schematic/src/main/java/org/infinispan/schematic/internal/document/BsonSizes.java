@@ -0,0 +1,114 @@
+/*
+ * ModeShape (http://www.modeshape.org)
+ * See the COPYRIGHT.txt file distributed with this work for information
+ * regarding copyright ownership.  Some portions may be licensed
+ * to Red Hat, Inc. under one or more contributor license agreements.
+ * See the AUTHORS.txt file in the distribution for a full listing of 
+ * individual contributors.
+ *
+ * ModeShape is free software. Unless otherwise indicated, all code in ModeShape
+ * is licensed to you under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ * 
+ * ModeShape is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+package org.infinispan.schematic.internal.document;
+
+import java.util.Collection;
+import java.util.Date;
+import java.util.Map;
+import java.util.UUID;
+import org.infinispan.schematic.document.Binary;
+import org.infinispan.schematic.document.Document;
+import org.infinispan.schematic.document.Document.Field;
+import org.infinispan.schematic.document.Path;
+import org.infinispan.schematic.document.Symbol;
+
+/**
+ * Utility for cheaply estimating the number of bytes needed to write values in BSON form, without actually writing them. The
+ * estimates ignore the field name dictionary and count each character as one byte, so they are only useful for comparing the
+ * relative sizes of values.
+ */
+public final class BsonSizes {
+
+    /**
+     * The estimated size of a value whose size is not computed from its content.
+     */
+    private static final int OTHER_VALUE_SIZE = 16;
+
+    private BsonSizes() {
+    }
+
+    /**
+     * Estimate the number of bytes needed to write the supplied value, stopping as soon as the estimate exceeds the limit.
+     * 
+     * @param value the value; may be null
+     * @param limit the size above which the caller is no longer interested in the exact estimate
+     * @return the estimated size, which is greater than <code>limit</code> if the value is larger than the limit
+     */
+    public static long estimate( Object value,
+                                 long limit ) {
+        value = Utility.unwrap(value);
+        if (value == null) return 0;
+        if (value instanceof String) return 5 + ((String)value).length();
+        if (value instanceof Integer || value instanceof Boolean) return 4;
+        if (value instanceof Long || value instanceof Double || value instanceof Date) return 8;
+        if (value instanceof Binary) return 5 + ((Binary)value).length();
+        if (value instanceof Symbol) return 5 + ((Symbol)value).getSymbol().length();
+        if (value instanceof UUID) return 21;
+        if (value instanceof LazyDocument) {
+            // The size of an unchanged document that was read lazily is already known ...
+            int size = ((LazyDocument)value).unchangedSize();
+            if (size >= 0) return size;
+        }
+        if (value instanceof Document) {
+            long size = 5;
+            for (Field field : ((Document)value).fields()) {
+                size += 2 + field.getName().length() + estimate(field.getValue(), limit - size);
+                if (size > limit) break;
+            }
+            return size;
+        }
+        if (value instanceof Map) {
+            long size = 5;
+            for (Map.Entry<?, ?> entry : ((Map<?, ?>)value).entrySet()) {
+                size += 2 + entry.getKey().toString().length() + estimate(entry.getValue(), limit - size);
+                if (size > limit) break;
+            }
+            return size;
+        }
+        if (value instanceof Collection) {
+            long size = 5;
+            for (Object element : (Collection<?>)value) {
+                size += 4 + estimate(element, limit - size);
+                if (size > limit) break;
+            }
+            return size;
+        }
+        return OTHER_VALUE_SIZE;
+    }
+
+    /**
+     * Estimate the number of bytes needed to write the supplied path.
+     * 
+     * @param path the path; may be null
+     * @return the estimated size
+     */
+    public static long estimate( Path path ) {
+        if (path == null) return 0;
+        long size = 4;
+        for (String segment : path) {
+            size += 2 + segment.length();
+        }
+        return size;
+    }
+}
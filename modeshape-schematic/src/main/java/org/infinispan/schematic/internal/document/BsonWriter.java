@@ -56,6 +56,26 @@ import org.infinispan.schematic.internal.io.BsonDataOutput;
 @ThreadSafe
 public class BsonWriter {
 
+    private final boolean useFieldNameDictionary;
+
+    /**
+     * Create a writer of standard BSON.
+     */
+    public BsonWriter() {
+        this(false);
+    }
+
+    /**
+     * Create a writer that optionally writes the names in the {@link FieldNameDictionary field name dictionary} as small
+     * identifiers. Such content can be read by the {@link BsonReader}, but is not standard BSON.
+     * 
+     * @param useFieldNameDictionary true if names in the dictionary should be written as identifiers, or false if the content
+     *        should be standard BSON
+     */
+    public BsonWriter( boolean useFieldNameDictionary ) {
+        this.useFieldNameDictionary = useFieldNameDictionary;
+    }
+
     /**
      * Write the supplied in-memory {@link Document} in standard BSON binary format to the supplied stream.
      * 
@@ -157,6 +177,20 @@ public class BsonWriter {
         }
     }
 
+    protected void writeName( String name,
+                              BsonDataOutput output ) {
+        if (useFieldNameDictionary) {
+            int id = FieldNameDictionary.idOf(name);
+            if (id != 0) {
+                output.writeByte(FieldNameDictionary.MARKER);
+                output.writeByte(id);
+                output.writeByte(END_OF_STRING);
+                return;
+            }
+        }
+        writeCString(name, output);
+    }
+
     protected void writeCString( String value,
                                  BsonDataOutput output ) {
         output.writeUTFString(value);
@@ -178,14 +212,14 @@ public class BsonWriter {
     protected void writeNull( String name,
                               BsonDataOutput output ) {
         output.writeByte(Type.NULL);
-        writeCString(name, output);
+        writeName(name, output);
     }
 
     protected void write( String name,
                           String value,
                           BsonDataOutput output ) {
         output.writeByte(Type.STRING);
-        writeCString(name, output);
+        writeName(name, output);
         writeString(value, output);
     }
 
@@ -193,7 +227,7 @@ public class BsonWriter {
                           boolean value,
                           BsonDataOutput output ) {
         output.writeByte(Type.BOOLEAN);
-        writeCString(name, output);
+        writeName(name, output);
         output.writeByte(value ? (byte)0x01 : (byte)0x00);
     }
 
@@ -201,7 +235,7 @@ public class BsonWriter {
                           int value,
                           BsonDataOutput output ) {
         output.writeByte(Type.INT32);
-        writeCString(name, output);
+        writeName(name, output);
         output.writeInt(value);
     }
 
@@ -209,7 +243,7 @@ public class BsonWriter {
                           long value,
                           BsonDataOutput output ) {
         output.writeByte(Type.INT64);
-        writeCString(name, output);
+        writeName(name, output);
         output.writeLong(value);
     }
 
@@ -217,7 +251,7 @@ public class BsonWriter {
                           float value,
                           BsonDataOutput output ) {
         output.writeByte(Type.DOUBLE);
-        writeCString(name, output);
+        writeName(name, output);
         output.writeDouble(value);
     }
 
@@ -225,7 +259,7 @@ public class BsonWriter {
                           double value,
                           BsonDataOutput output ) {
         output.writeByte(Type.DOUBLE);
-        writeCString(name, output);
+        writeName(name, output);
         output.writeDouble(value);
     }
 
@@ -234,7 +268,7 @@ public class BsonWriter {
                                BsonDataOutput output ) {
         if (name != null) {
             output.writeByte(Type.ARRAY);
-            writeCString(name, output);
+            writeName(name, output);
         }
         // Write the size for the array; we'll come back to this after we write the array ...
         int arraySizePosition = output.size();
@@ -260,7 +294,7 @@ public class BsonWriter {
                           BsonDataOutput output ) {
         if (name != null) {
             output.writeByte(Type.ARRAY);
-            writeCString(name, output);
+            writeName(name, output);
         }
         // Write the size for the array; we'll come back to this after we write the array ...
         int arraySizePosition = output.size();
@@ -285,7 +319,11 @@ public class BsonWriter {
                           BsonDataOutput output ) {
         if (name != null) {
             output.writeByte(Type.DOCUMENT);
-            writeCString(name, output);
+            writeName(name, output);
+        }
+        if (document instanceof LazyDocument && ((LazyDocument)document).writeUnchangedTo(output, useFieldNameDictionary)) {
+            // The document was read from BSON and has not been changed, so its bytes were copied as is ...
+            return;
         }
         // Write the size for the document; we'll come back to this after we write the array ...
         int arraySizePosition = output.size();
@@ -305,7 +343,7 @@ public class BsonWriter {
                           Binary value,
                           BsonDataOutput output ) {
         output.writeByte(Type.BINARY);
-        writeCString(name, output);
+        writeName(name, output);
         byte[] bytes = value.getBytes();
         output.writeInt(bytes.length);
         output.writeByte(value.getType());
@@ -316,7 +354,7 @@ public class BsonWriter {
                           Symbol value,
                           BsonDataOutput output ) {
         output.writeByte(Type.SYMBOL);
-        writeCString(name, output);
+        writeName(name, output);
         writeString(value.getSymbol(), output);
     }
 
@@ -324,7 +362,7 @@ public class BsonWriter {
                           Pattern value,
                           BsonDataOutput output ) {
         output.writeByte(Type.REGEX);
-        writeCString(name, output);
+        writeName(name, output);
         writeCString(value.pattern(), output);
         writeCString(BsonUtils.regexFlagsFor(value), output);
     }
@@ -333,7 +371,7 @@ public class BsonWriter {
                           Date value,
                           BsonDataOutput output ) {
         output.writeByte(Type.DATETIME);
-        writeCString(name, output);
+        writeName(name, output);
         output.writeLong(value.getTime());
     }
 
@@ -341,7 +379,7 @@ public class BsonWriter {
                           UUID value,
                           BsonDataOutput output ) {
         output.writeByte(Type.BINARY);
-        writeCString(name, output);
+        writeName(name, output);
         output.writeInt(16);
         output.writeByte(BinaryType.UUID);
         output.writeLong(value.getMostSignificantBits());
@@ -352,7 +390,7 @@ public class BsonWriter {
                           CodeWithScope value,
                           BsonDataOutput output ) {
         output.writeByte(Type.JAVASCRIPT_WITH_SCOPE);
-        writeCString(name, output);
+        writeName(name, output);
         // Write the size for the CodeWithScope; we'll come back to this after we write the object ...
         int arraySizePosition = output.size();
         output.writeInt(0);
@@ -370,7 +408,7 @@ public class BsonWriter {
                           Code value,
                           BsonDataOutput output ) {
         output.writeByte(Type.JAVASCRIPT);
-        writeCString(name, output);
+        writeName(name, output);
         writeString(value.getCode(), output);
     }
 
@@ -378,7 +416,7 @@ public class BsonWriter {
                           Timestamp value,
                           BsonDataOutput output ) {
         output.writeByte(Type.TIMESTAMP);
-        writeCString(name, output);
+        writeName(name, output);
         output.writeInt(value.getInc());
         output.writeInt(value.getTime());
     }
@@ -387,7 +425,7 @@ public class BsonWriter {
                           ObjectId value,
                           BsonDataOutput output ) {
         output.writeByte(Type.OBJECTID);
-        writeCString(name, output);
+        writeName(name, output);
         output.write(value.getBytes());
     }
 
@@ -395,13 +433,13 @@ public class BsonWriter {
                           MaxKey value,
                           BsonDataOutput output ) {
         output.writeByte(Type.MAXKEY);
-        writeCString(name, output);
+        writeName(name, output);
     }
 
     protected void write( String name,
                           MinKey value,
                           BsonDataOutput output ) {
         output.writeByte(Type.MINKEY);
-        writeCString(name, output);
+        writeName(name, output);
     }
 }
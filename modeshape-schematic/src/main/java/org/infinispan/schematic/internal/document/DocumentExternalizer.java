@@ -25,7 +25,6 @@ import java.io.IOException;
 import java.io.ObjectInput;
 import java.io.ObjectOutput;
 import java.util.Set;
-import org.infinispan.schematic.document.Bson;
 import org.infinispan.schematic.document.Document;
 import org.infinispan.schematic.internal.SchematicExternalizer;
 import org.infinispan.schematic.internal.marshall.Ids;
@@ -35,24 +34,50 @@ public class DocumentExternalizer extends SchematicExternalizer<Document> {
     /** The serialVersionUID */
     private static final long serialVersionUID = 1L;
 
+    /**
+     * The type byte for documents written as standard BSON, as they were before the field name dictionary was introduced.
+     */
+    private static final byte STANDARD_BSON = 1;
+
+    /**
+     * The type byte for documents written with the {@link FieldNameDictionary field name dictionary}, which is followed by the
+     * version of the dictionary.
+     */
+    private static final byte ENCODED_FIELD_NAMES = 2;
+
+    private static final BsonWriter WRITER = new BsonWriter(true);
+    private static final BsonReader READER = new BsonReader();
+
     @Override
     public void writeObject( ObjectOutput output,
                              Document doc ) throws IOException {
-        // Write the type byte ...
-        output.writeByte(1);
+        // Write the type byte and the version of the dictionary ...
+        output.writeByte(ENCODED_FIELD_NAMES);
+        output.writeByte(FieldNameDictionary.VERSION);
 
-        // Write the BSON ...
-        Bson.write(doc, output);
+        // Write the BSON, with the most common field names as dictionary identifiers ...
+        WRITER.write(doc, output);
     }
 
     @Override
     public Document readObject( ObjectInput input ) throws IOException {
         // Read the type byte ...
         int type = input.readByte();
-        assert type == 1;
+        boolean fieldNamesEncoded = false;
+        if (type == ENCODED_FIELD_NAMES) {
+            int version = input.readByte();
+            if (version > FieldNameDictionary.VERSION) {
+                throw new IOException("Unable to read a document written with version " + version
+                                      + " of the field name dictionary; the latest known version is "
+                                      + FieldNameDictionary.VERSION);
+            }
+            fieldNamesEncoded = true;
+        } else if (type != STANDARD_BSON) {
+            throw new IOException("Unable to read a document with the unknown type " + type);
+        }
 
-        // Read the BSON ...
-        return Bson.read(input);
+        // Read the BSON, but decode each field only when it is used ...
+        return READER.readLazily(input, fieldNamesEncoded);
     }
 
     @Override
@@ -63,6 +88,6 @@ public class DocumentExternalizer extends SchematicExternalizer<Document> {
     @SuppressWarnings( "unchecked" )
     @Override
     public Set<Class<? extends Document>> getTypeClasses() {
-        return Util.<Class<? extends Document>>asSet(BasicDocument.class);
+        return Util.<Class<? extends Document>>asSet(BasicDocument.class, LazyDocument.class);
     }
 }
@@ -0,0 +1,156 @@
+/*
+ * JBoss, Home of Professional Open Source.
+ * Copyright 2009, Red Hat Middleware LLC, and individual contributors
+ * as indicated by the @author tags. See the copyright.txt file in the
+ * distribution for a full listing of individual contributors.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+package org.infinispan.schematic.internal.document;
+
+import java.nio.charset.Charset;
+import java.util.HashMap;
+import java.util.Map;
+import org.infinispan.schematic.document.Immutable;
+
+/**
+ * A dictionary of the field names that appear in nearly every stored document, which allows the {@link BsonWriter} to write each
+ * of these names as a small integer identifier rather than as a UTF-8 string, and allows the {@link BsonReader} and
+ * {@link LazyDocument} to read them as canonical (and interned) {@link String} instances rather than allocating a new string for
+ * each field of each document.
+ * <p>
+ * A name in the dictionary is written as a 3-byte C-style string: the {@link #MARKER marker} byte (which never appears in UTF-8),
+ * the one-byte identifier, and the zero-byte terminator. Because the marker never appears in a standard BSON name, readers can
+ * always recognize a dictionary name, but only content written with this dictionary should be read by other BSON libraries.
+ * </p>
+ * <p>
+ * The dictionary is part of the storage format, so its names are never removed or reordered. New names may only be appended, in
+ * which case the {@link #VERSION version} must be incremented so that older readers can detect content they cannot read.
+ * </p>
+ */
+@Immutable
+public final class FieldNameDictionary {
+
+    /**
+     * The version of the dictionary, which increases every time names are appended.
+     */
+    public static final int VERSION = 1;
+
+    /**
+     * The first byte of a field name that is written as a dictionary identifier.
+     */
+    public static final byte MARKER = (byte)0xFF;
+
+    private static final Charset UTF_8 = Charset.forName("UTF-8");
+
+    /**
+     * The names, where the identifier of each name is one more than its index. Names may only be appended.
+     */
+    private static final String[] NAMES = {
+        // Version 1: the fields of schematic entries ...
+        "metadata", "content", "id", "$schema", "contentType",
+        // ... the fields of node documents ...
+        "key", "parent", "properties", "children", "childrenInfo", "federatedSegments", "count", "blockSize", "nextBlock",
+        "lastBlock", "name", "referrers", "weak", "strong", "refCount", "$queryable", "embeddedDocuments", "cacheTtlSeconds",
+        "sha1", "len", "value", "$sha1", "$len", "$externalBinaryId", "$sourceName",
+        // ... the fields of documents representing property values ...
+        "$uuid", "$name", "$path", "$relative", "$date", "$dec", "$ref", "$wref", "$foreign", "$uri",
+        // ... the URIs of the built-in namespaces (which are the names of the documents containing each node's properties) ...
+        "http://www.jcp.org/jcr/1.0", "http://www.jcp.org/jcr/nt/1.0", "http://www.jcp.org/jcr/mix/1.0",
+        "http://www.jcp.org/jcr/sv/1.0", "http://www.modeshape.org/1.0",
+        // ... and the local names of the most commonly-used built-in properties
+        "primaryType", "mixinTypes", "uuid", "created", "createdBy", "lastModified", "lastModifiedBy", "data", "mimeType",
+        "encoding", "etag", "language", "title", "description", "baseVersion", "isCheckedOut", "predecessors", "successors",
+        "versionHistory", "versionableUuid", "copiedFrom", "frozenNode", "frozenPrimaryType", "frozenMixinTypes", "frozenUuid",
+        "versionLabels", "lockOwner", "lockIsDeep", "sharedUuid", "nodeTypeName", "supertypes", "isAbstract", "isMixin",
+        "isQueryable", "hasOrderableChildNodes", "primaryItemName", "autoCreated", "mandatory", "onParentVersion", "protected",
+        "requiredType", "valueConstraints", "defaultValues", "multiple", "availableQueryOperators", "isFullTextSearchable",
+        "isQueryOrderable", "requiredPrimaryTypes", "defaultPrimaryType", "sameNameSiblings", "uri", "generated", "localName",
+        "depth", "lockToken", "lockingSession", "isSessionScoped", "isHeldBySession", "expirationDate", "workspace",
+        "externalNodeKey", "projectedNodeKey", "alias"};
+
+    private static final Map<String, Integer> IDS;
+
+    static {
+        assert NAMES.length <= 0xFF;
+        Map<String, Integer> ids = new HashMap<String, Integer>();
+        for (int i = 0; i != NAMES.length; ++i) {
+            Integer existing = ids.put(NAMES[i], i + 1);
+            assert existing == null : "Duplicate name in dictionary: " + NAMES[i];
+        }
+        IDS = ids;
+    }
+
+    private FieldNameDictionary() {
+    }
+
+    /**
+     * Get the identifier for the supplied field name.
+     * 
+     * @param name the field name; may not be null
+     * @return the identifier (between 1 and 255), or 0 if the name is not in the dictionary
+     */
+    public static int idOf( String name ) {
+        Integer id = IDS.get(name);
+        return id != null ? id.intValue() : 0;
+    }
+
+    /**
+     * Get the canonical field name with the supplied identifier.
+     * 
+     * @param id the identifier, as written in the BSON content
+     * @return the name; never null
+     * @throws IllegalStateException if there is no name with the supplied identifier, which means the content was written with
+     *         a newer dictionary
+     */
+    public static String nameOf( byte id ) {
+        int index = (id & 0xFF) - 1;
+        if (index < 0 || index >= NAMES.length) {
+            throw new IllegalStateException("Unknown field name identifier " + (id & 0xFF) + " in dictionary version " + VERSION);
+        }
+        return NAMES[index];
+    }
+
+    /**
+     * Read the field name stored as a C-style string in the supplied bytes, returning the canonical instance for names in the
+     * dictionary and for small array indexes.
+     * 
+     * @param bytes the bytes; may not be null
+     * @param start the offset of the first byte of the name
+     * @param end the offset of the zero-byte terminator
+     * @return the field name; never null
+     */
+    public static String nameOf( byte[] bytes,
+                                 int start,
+                                 int end ) {
+        int length = end - start;
+        if (length == 2 && bytes[start] == MARKER) return nameOf(bytes[start + 1]);
+        if (length > 0 && length <= 3) {
+            // Array elements are named by their index, so reuse the shared index strings ...
+            int index = 0;
+            for (int i = start; i != end; ++i) {
+                int digit = bytes[i] - '0';
+                if (digit < 0 || digit > 9 || (digit == 0 && i == start && length > 1)) {
+                    index = -1;
+                    break;
+                }
+                index = index * 10 + digit;
+            }
+            if (index >= 0 && index < IndexSequence.MAXIMUM_KEY_COUNT) return IndexSequence.INDEX_VALUES[index];
+        }
+        return new String(bytes, start, length, UTF_8);
+    }
+}
@@ -32,6 +32,7 @@ import static org.infinispan.schematic.document.Json.ReservedField.REGEX_PATTERN
 import static org.infinispan.schematic.document.Json.ReservedField.SCOPE;
 import static org.infinispan.schematic.document.Json.ReservedField.TIMESTAMP;
 import static org.infinispan.schematic.document.Json.ReservedField.UUID;
+import java.io.BufferedReader;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.InputStreamReader;
@@ -50,6 +51,7 @@ import org.infinispan.schematic.document.Document;
 import org.infinispan.schematic.document.DocumentSequence;
 import org.infinispan.schematic.document.Immutable;
 import org.infinispan.schematic.document.Json;
+import org.infinispan.schematic.document.JsonStreamReader;
 import org.infinispan.schematic.document.NotThreadSafe;
 import org.infinispan.schematic.document.Null;
 import org.infinispan.schematic.document.ParsingException;
@@ -241,7 +243,7 @@ public class JsonReader {
      */
     public DocumentSequence readMultiple( InputStream stream,
                                           boolean introspectStringValues ) {
-        return readMultiple(new InputStreamReader(stream), introspectStringValues);
+        return readMultiple(new BufferedReader(new InputStreamReader(stream)), introspectStringValues);
     }
 
     /**
@@ -276,6 +278,33 @@ public class JsonReader {
         };
     }
 
+    /**
+     * Return a {@link JsonStreamReader} that can be used to pull the content of one or more documents from the stream, using the
+     * supplied {@link Charset character set}.
+     * 
+     * @param stream the input stream; may not be null
+     * @param charset the character set that should be used; may not be null
+     * @return the reader for the stream's content; never null
+     */
+    public JsonStreamReader readStream( InputStream stream,
+                                        Charset charset ) {
+        return readStream(new BufferedReader(new InputStreamReader(stream, charset)), DEFAULT_INTROSPECT);
+    }
+
+    /**
+     * Return a {@link JsonStreamReader} that can be used to pull the content of one or more documents from the stream.
+     * 
+     * @param reader the IO reader; may not be null
+     * @param introspectStringValues true if the string values should be examined for common patterns, or false otherwise
+     * @return the reader for the stream's content; never null
+     */
+    public JsonStreamReader readStream( Reader reader,
+                                        boolean introspectStringValues ) {
+        Tokenizer tokenizer = new Tokenizer(reader);
+        ValueMatcher matcher = introspectStringValues ? DATE_VALUE_MATCHER : SIMPLE_VALUE_MATCHER;
+        return new StreamingJsonReader(reader, tokenizer, new Parser(tokenizer, VALUE_FACTORY, matcher));
+    }
+
     /**
      * Parse the number represented by the supplied (unquoted) JSON field value.
      * 
@@ -0,0 +1,586 @@
+/*
+ * JBoss, Home of Professional Open Source.
+ * Copyright 2009, Red Hat Middleware LLC, and individual contributors
+ * as indicated by the @author tags. See the copyright.txt file in the
+ * distribution for a full listing of individual contributors.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+package org.infinispan.schematic.internal.document;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.ObjectStreamException;
+import java.nio.charset.Charset;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import org.infinispan.marshall.SerializeWith;
+import org.infinispan.schematic.document.Bson;
+import org.infinispan.schematic.document.Bson.BinaryType;
+import org.infinispan.schematic.document.CodeWithScope;
+import org.infinispan.schematic.document.Document;
+import org.infinispan.schematic.document.MaxKey;
+import org.infinispan.schematic.document.MinKey;
+import org.infinispan.schematic.internal.io.BsonDataOutput;
+
+/**
+ * A {@link Document} that is a view over the raw BSON representation of a document, and that decodes each field only when the
+ * field is first accessed. Nested documents are themselves views over the same bytes, so reading a document never copies its
+ * content. A document read only by name (e.g., with {@link #getString(String)} or {@link #getDocument(String)}) is never fully
+ * decoded, while the first operation that needs all of the fields (such as {@link #fields()}, {@link #keySet()} or any change)
+ * decodes the remaining fields into the same form as a {@link BasicDocument} and discards the bytes. At that point each nested
+ * document that is still a view gets a copy of just its own bytes, so that it doesn't keep the bytes of its parent reachable.
+ * <p>
+ * A document whose fields have not been changed is written by the {@link BsonWriter} by copying its bytes, and is
+ * {@link #clone() cloned} by creating another view over the same bytes. Arrays are decoded in full when they are first accessed.
+ * </p>
+ * <p>
+ * Reading from this document is thread-safe and does not lock, except the first time the bytes are scanned and when the document
+ * is fully decoded. Like {@link BasicDocument}, it must not be changed while other threads are reading it.
+ * </p>
+ */
+@SerializeWith( DocumentExternalizer.class )
+public class LazyDocument extends BasicDocument {
+
+    private static final long serialVersionUID = 1L;
+
+    private static final Charset UTF_8 = Charset.forName("UTF-8");
+    private static final BsonReader ARRAY_READER = new BsonReader();
+    private static final Object NOT_DECODED = new Object();
+
+    /**
+     * The bytes containing this document and the index of its fields, or null once all of the fields have been decoded. The
+     * source is immutable, so readers use whichever instance they see without locking; it is replaced only when the fields are
+     * first indexed, when the bytes are copied out of the parent's bytes, and when the document is fully decoded.
+     */
+    private transient volatile Source source;
+    private transient final boolean fieldNamesEncoded;
+
+    /**
+     * Create a view over the BSON document that starts at the supplied offset in the supplied bytes.
+     * 
+     * @param bytes the bytes containing the BSON document; may not be null and must not be changed
+     * @param offset the offset in the bytes of the document's length
+     */
+    public LazyDocument( byte[] bytes,
+                         int offset ) {
+        this(bytes, offset, false);
+    }
+
+    /**
+     * Create a view over the BSON document that starts at the supplied offset in the supplied bytes.
+     * 
+     * @param bytes the bytes containing the BSON document; may not be null and must not be changed
+     * @param offset the offset in the bytes of the document's length
+     * @param fieldNamesEncoded true if the bytes were written with the {@link FieldNameDictionary field name dictionary}, or
+     *        false if they are standard BSON
+     */
+    public LazyDocument( byte[] bytes,
+                         int offset,
+                         boolean fieldNamesEncoded ) {
+        super();
+        this.source = new Source(bytes, offset);
+        this.fieldNamesEncoded = fieldNamesEncoded;
+    }
+
+    /**
+     * Determine whether the fields of this document are still read directly from its BSON representation.
+     * 
+     * @return true if this document has not been fully decoded, or false otherwise
+     */
+    public boolean isLazy() {
+        return source != null;
+    }
+
+    @Override
+    public Object get( String name ) {
+        return get((Object)name);
+    }
+
+    @Override
+    public Object get( Object name ) {
+        Source source = indexedSource();
+        if (source != null) {
+            int index = source.indexOf(name);
+            return index < 0 ? null : valueAt(source, index);
+        }
+        return super.get(name);
+    }
+
+    @Override
+    public boolean containsKey( Object name ) {
+        Source source = indexedSource();
+        if (source != null) return source.indexOf(name) >= 0;
+        return super.containsKey(name);
+    }
+
+    @Override
+    public int size() {
+        Source source = indexedSource();
+        if (source != null) return source.names.length;
+        return super.size();
+    }
+
+    @Override
+    public boolean isEmpty() {
+        return size() == 0;
+    }
+
+    @Override
+    public boolean containsValue( Object value ) {
+        decodeAll();
+        return super.containsValue(value);
+    }
+
+    @Override
+    public Set<String> keySet() {
+        decodeAll();
+        return super.keySet();
+    }
+
+    @Override
+    public Collection<Object> values() {
+        decodeAll();
+        return super.values();
+    }
+
+    @Override
+    public Set<Map.Entry<String, Object>> entrySet() {
+        decodeAll();
+        return super.entrySet();
+    }
+
+    @Override
+    public Object put( String name,
+                       Object value ) {
+        decodeAll();
+        return super.put(name, value);
+    }
+
+    @Override
+    public void putAll( Map<? extends String, ? extends Object> map ) {
+        decodeAll();
+        super.putAll(map);
+    }
+
+    @Override
+    public Object remove( String name ) {
+        decodeAll();
+        return super.remove(name);
+    }
+
+    @Override
+    public Object remove( Object name ) {
+        decodeAll();
+        return super.remove(name);
+    }
+
+    @Override
+    public void clear() {
+        decodeAll();
+        super.clear();
+    }
+
+    @Override
+    public void removeAll() {
+        decodeAll();
+        super.removeAll();
+    }
+
+    @Override
+    public Document clone() {
+        // The bytes are never changed, so an unchanged document can share them with its clone ...
+        Source source = this.source;
+        if (source != null && isUnchanged(source)) return new LazyDocument(source.bytes, source.offset, fieldNamesEncoded);
+        return super.clone();
+    }
+
+    /**
+     * Determine whether neither this document nor any of its decoded values have been (or could have been) changed since the
+     * document was read, so that its bytes are still an accurate representation of its content. Decoded arrays are mutable, so
+     * they are always assumed to have been changed.
+     * 
+     * @return true if the bytes are an accurate representation of this document, or false otherwise
+     */
+    protected boolean isUnchanged() {
+        Source source = this.source;
+        return source != null && isUnchanged(source);
+    }
+
+    private static boolean isUnchanged( Source source ) {
+        if (source.values != null) {
+            for (int i = 0; i != source.values.length(); ++i) {
+                Object value = source.values.get(i);
+                if (value instanceof LazyDocument) {
+                    if (!((LazyDocument)value).isUnchanged()) return false;
+                } else if (value instanceof MutableDocument || value instanceof List) {
+                    return false;
+                }
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Get the number of bytes in this document, without decoding any of its fields, but only if the document is
+     * {@link #isUnchanged() unchanged}.
+     * 
+     * @return the number of bytes, or -1 if the document has been changed or decoded
+     */
+    protected int unchangedSize() {
+        Source source = this.source;
+        if (source == null || !isUnchanged(source)) return -1;
+        return readInt(source.bytes, source.offset);
+    }
+
+    /**
+     * Write the bytes of this document to the supplied output, but only if the document is {@link #isUnchanged() unchanged} and
+     * its bytes can be used in the output's format.
+     * 
+     * @param output the output; may not be null
+     * @param fieldNameDictionary true if the output may contain {@link FieldNameDictionary field name dictionary} identifiers,
+     *        or false if it must be standard BSON
+     * @return true if the bytes were written, or false if the document has to be written field by field
+     */
+    protected boolean writeUnchangedTo( BsonDataOutput output,
+                                        boolean fieldNameDictionary ) {
+        if (fieldNamesEncoded && !fieldNameDictionary) return false;
+        Source source = this.source;
+        if (source == null || !isUnchanged(source)) return false;
+        output.write(source.bytes, source.offset, readInt(source.bytes, source.offset));
+        return true;
+    }
+
+    /**
+     * Decode all of the remaining fields, after which this document no longer refers to its bytes. Any nested documents that are
+     * still views over these bytes are given a copy of their own bytes, so that these bytes can be released.
+     */
+    protected void decodeAll() {
+        if (source == null) return;
+        synchronized (this) {
+            Source source = indexedSource();
+            if (source == null) return;
+            for (int i = 0; i != source.names.length; ++i) {
+                Object value = valueAt(source, i);
+                detach(value);
+                super.put(source.names[i], value);
+            }
+            // Readers that see the null source also see all of the fields put into the map ...
+            this.source = null;
+        }
+    }
+
+    /**
+     * Copy the bytes of this document out of the (larger) bytes of its parent, so that this document no longer keeps the
+     * parent's bytes reachable.
+     */
+    private void detach() {
+        synchronized (this) {
+            Source source = this.source;
+            if (source == null || source.isStandalone()) return;
+            Source copy = source.copy();
+            this.source = copy;
+            // The values that were already decoded may also be views over the parent's bytes ...
+            if (copy.values != null) {
+                for (int i = 0; i != copy.values.length(); ++i) {
+                    detach(copy.values.get(i));
+                }
+            }
+        }
+    }
+
+    private static void detach( Object value ) {
+        if (value instanceof CodeWithScope) value = ((CodeWithScope)value).getScope();
+        if (value instanceof LazyDocument) ((LazyDocument)value).detach();
+    }
+
+    /**
+     * Get the current source, scanning the bytes to build the index of the fields if that hasn't yet been done.
+     * 
+     * @return the indexed source, or null if this document has been fully decoded
+     */
+    private Source indexedSource() {
+        Source source = this.source;
+        if (source != null && source.names == null) {
+            synchronized (this) {
+                source = this.source;
+                if (source != null && source.names == null) {
+                    source = source.index();
+                    this.source = source;
+                }
+            }
+        }
+        return source;
+    }
+
+    private Object valueAt( Source source,
+                            int index ) {
+        Object value = source.values.get(index);
+        if (value == NOT_DECODED) {
+            // Another thread may decode the same value at the same time, but all readers get the one that is recorded first ...
+            Object decoded = decode(source.bytes, source.types[index], source.valueOffsets[index]);
+            value = source.values.compareAndSet(index, NOT_DECODED, decoded) ? decoded : source.values.get(index);
+        }
+        return value;
+    }
+
+    /**
+     * The immutable BSON representation of a document and, once the bytes have been scanned, the index of its fields. Only the
+     * decoded values are changed, and each of those only once.
+     */
+    private static final class Source {
+        protected final byte[] bytes;
+        protected final int offset;
+        // The index of the fields, or null if the bytes have not yet been scanned ...
+        protected final String[] names;
+        protected final byte[] types;
+        protected final int[] valueOffsets;
+        protected final AtomicReferenceArray<Object> values;
+
+        protected Source( byte[] bytes,
+                          int offset ) {
+            this(bytes, offset, null, null, null, null);
+        }
+
+        protected Source( byte[] bytes,
+                          int offset,
+                          String[] names,
+                          byte[] types,
+                          int[] valueOffsets,
+                          AtomicReferenceArray<Object> values ) {
+            this.bytes = bytes;
+            this.offset = offset;
+            this.names = names;
+            this.types = types;
+            this.valueOffsets = valueOffsets;
+            this.values = values;
+        }
+
+        protected int indexOf( Object name ) {
+            for (int i = 0; i != names.length; ++i) {
+                if (names[i].equals(name)) return i;
+            }
+            return -1;
+        }
+
+        protected boolean isStandalone() {
+            return offset == 0 && bytes.length == readInt(bytes, 0);
+        }
+
+        /**
+         * Scan the bytes to find the name, type and offset of each field, without decoding any of the values.
+         * 
+         * @return the indexed source; never null
+         */
+        protected Source index() {
+            int end = offset + readInt(bytes, offset);
+            int position = offset + 4;
+            int count = 0;
+            String[] names = new String[8];
+            byte[] types = new byte[8];
+            int[] valueOffsets = new int[8];
+            while (position < end) {
+                byte type = bytes[position++];
+                if (type == Bson.END_OF_DOCUMENT) break;
+                int nameEnd = endOfCString(bytes, position);
+                if (count == names.length) {
+                    names = Arrays.copyOf(names, count * 2);
+                    types = Arrays.copyOf(types, count * 2);
+                    valueOffsets = Arrays.copyOf(valueOffsets, count * 2);
+                }
+                names[count] = FieldNameDictionary.nameOf(bytes, position, nameEnd);
+                types[count] = type;
+                position = nameEnd + 1;
+                valueOffsets[count] = position;
+                position = skip(bytes, type, position);
+                ++count;
+            }
+            AtomicReferenceArray<Object> values = new AtomicReferenceArray<Object>(count);
+            for (int i = 0; i != count; ++i) {
+                values.set(i, NOT_DECODED);
+            }
+            return new Source(bytes, offset, Arrays.copyOf(names, count), Arrays.copyOf(types, count),
+                              Arrays.copyOf(valueOffsets, count), values);
+        }
+
+        /**
+         * Copy just the bytes of this document into a new array, keeping the index and the values that have been decoded.
+         * 
+         * @return the copy; never null
+         */
+        protected Source copy() {
+            byte[] copy = Arrays.copyOfRange(bytes, offset, offset + readInt(bytes, offset));
+            if (names == null) return new Source(copy, 0);
+            int[] copiedOffsets = new int[valueOffsets.length];
+            for (int i = 0; i != valueOffsets.length; ++i) {
+                copiedOffsets[i] = valueOffsets[i] - offset;
+            }
+            return new Source(copy, 0, names, types, copiedOffsets, values);
+        }
+    }
+
+    private static int skip( byte[] bytes,
+                             byte type,
+                             int position ) {
+        switch (type) {
+            case Bson.Type.ARRAY:
+            case Bson.Type.DOCUMENT:
+            case Bson.Type.JAVASCRIPT_WITH_SCOPE:
+                return position + readInt(bytes, position);
+            case Bson.Type.BINARY:
+                return position + 5 + readInt(bytes, position);
+            case Bson.Type.BOOLEAN:
+                return position + 1;
+            case Bson.Type.INT32:
+                return position + 4;
+            case Bson.Type.DATETIME:
+            case Bson.Type.DOUBLE:
+            case Bson.Type.INT64:
+            case Bson.Type.TIMESTAMP:
+                return position + 8;
+            case Bson.Type.DBPOINTER:
+                return position + 4 + readInt(bytes, position) + 12;
+            case Bson.Type.JAVASCRIPT:
+            case Bson.Type.STRING:
+            case Bson.Type.SYMBOL:
+                return position + 4 + readInt(bytes, position);
+            case Bson.Type.OBJECTID:
+                return position + 12;
+            case Bson.Type.REGEX:
+                return endOfCString(bytes, endOfCString(bytes, position) + 1) + 1;
+            case Bson.Type.MAXKEY:
+            case Bson.Type.MINKEY:
+            case Bson.Type.NULL:
+            case Bson.Type.UNDEFINED:
+                return position;
+        }
+        throw new IllegalStateException("Unknown BSON type " + type + " at offset " + position);
+    }
+
+    /**
+     * Decode the value with the supplied type at the supplied offset, in the same way as the {@link BsonReader}.
+     * 
+     * @param bytes the bytes containing the value
+     * @param type the BSON type of the value
+     * @param position the offset of the value
+     * @return the value; may be null
+     */
+    private Object decode( byte[] bytes,
+                           byte type,
+                           int position ) {
+        DocumentValueFactory values = BsonReader.VALUE_FACTORY;
+        switch (type) {
+            case Bson.Type.ARRAY:
+                try {
+                    return ARRAY_READER.readArray(new ByteArrayInputStream(bytes, position, readInt(bytes, position)));
+                } catch (IOException e) {
+                    // Reading from a byte array never fails, unless the content is not valid BSON ...
+                    throw new IllegalStateException(e);
+                }
+            case Bson.Type.BINARY:
+                int length = readInt(bytes, position);
+                byte subtype = bytes[position + 4];
+                if (subtype == BinaryType.UUID) {
+                    return new UUID(readLong(bytes, position + 5), readLong(bytes, position + 13));
+                }
+                return values.createBinary(subtype, Arrays.copyOfRange(bytes, position + 5, position + 5 + length));
+            case Bson.Type.BOOLEAN:
+                return values.createBoolean(bytes[position] != 0);
+            case Bson.Type.DATETIME:
+                return values.createDate(readLong(bytes, position));
+            case Bson.Type.DOCUMENT:
+                return new LazyDocument(bytes, position, fieldNamesEncoded);
+            case Bson.Type.DOUBLE:
+                return values.createDouble(Double.longBitsToDouble(readLong(bytes, position)));
+            case Bson.Type.INT32:
+                return values.createInt(readInt(bytes, position));
+            case Bson.Type.INT64:
+                return values.createLong(readLong(bytes, position));
+            case Bson.Type.JAVASCRIPT:
+                return values.createCode(readString(bytes, position));
+            case Bson.Type.JAVASCRIPT_WITH_SCOPE:
+                int codePosition = position + 4;
+                String code = readString(bytes, codePosition);
+                return values.createCode(code, new LazyDocument(bytes, codePosition + 4 + readInt(bytes, codePosition),
+                                                                fieldNamesEncoded));
+            case Bson.Type.MAXKEY:
+                return MaxKey.getInstance();
+            case Bson.Type.MINKEY:
+                return MinKey.getInstance();
+            case Bson.Type.NULL:
+                return values.createNull();
+            case Bson.Type.OBJECTID:
+                return values.createObjectId(Arrays.copyOfRange(bytes, position, position + 12));
+            case Bson.Type.REGEX:
+                int optionsPosition = endOfCString(bytes, position) + 1;
+                return values.createRegex(readCString(bytes, position), readCString(bytes, optionsPosition));
+            case Bson.Type.STRING:
+            case Bson.Type.SYMBOL:
+                return values.createString(readString(bytes, position));
+            case Bson.Type.TIMESTAMP:
+                int inc = readInt(bytes, position);
+                int time = readInt(bytes, position + 4);
+                return values.createTimestamp(time, inc);
+        }
+        // Deprecated or undefined values are ignored ...
+        return null;
+    }
+
+    private static int endOfCString( byte[] bytes,
+                                     int position ) {
+        while (bytes[position] != 0) {
+            ++position;
+        }
+        return position;
+    }
+
+    private static String readCString( byte[] bytes,
+                                       int position ) {
+        return new String(bytes, position, endOfCString(bytes, position) - position, UTF_8);
+    }
+
+    private static String readString( byte[] bytes,
+                                      int position ) {
+        // The length includes the zero-byte terminator ...
+        return new String(bytes, position + 4, readInt(bytes, position) - 1, UTF_8);
+    }
+
+    private static int readInt( byte[] bytes,
+                                int position ) {
+        return (bytes[position + 3] & 0xFF) << 24 | (bytes[position + 2] & 0xFF) << 16 | (bytes[position + 1] & 0xFF) << 8
+               | (bytes[position] & 0xFF);
+    }
+
+    private static long readLong( byte[] bytes,
+                                  int position ) {
+        return (readInt(bytes, position + 4) & 0xFFFFFFFFL) << 32 | (readInt(bytes, position) & 0xFFFFFFFFL);
+    }
+
+    /**
+     * Serialize a fully-decoded copy of this document, since the bytes and index are not serialized.
+     * 
+     * @return the copy; never null
+     * @throws ObjectStreamException never
+     */
+    protected Object writeReplace() throws ObjectStreamException {
+        return new BasicDocument(this);
+    }
+}
@@ -52,38 +52,19 @@ public class ObservableArrayEditor extends ArrayEditor {
         this.observer = observer;
     }
 
-    @Override
-    protected boolean doAddAll( Collection<? extends Object> c ) {
-        return doAddAll(size(), c);
-    }
-
-    @Override
-    protected boolean doAddAll( int index,
-                                Collection<? extends Object> c ) {
-        c = Utility.unwrapValues(c);
-        if (super.doAddAll(index, c)) {
-            for (Object value : c) {
-                value = Utility.unwrap(value);
-                observer.addOperation(new AddValueOperation(this.path, value));
-            }
-            return true;
-        }
-        return false;
-    }
-
     @Override
     protected void doAddValue( int index,
                                Object value ) {
         value = Utility.unwrap(value);
         super.doAddValue(index, value);
-        observer.addOperation(new AddValueOperation(this.path, value, index));
+        observer.addOperation(new AddValueOperation(this.path, copy(value), index));
     }
 
     @Override
     protected int doAddValue( Object value ) {
         value = Utility.unwrap(value);
         int index = super.doAddValue(value);
-        observer.addOperation(new AddValueOperation(this.path, value));
+        observer.addOperation(new AddValueOperation(this.path, copy(value)));
         return index;
     }
 
@@ -91,7 +72,7 @@ public class ObservableArrayEditor extends ArrayEditor {
     protected boolean doAddValueIfAbsent( Object value ) {
         value = Utility.unwrap(value);
         if (super.doAddValueIfAbsent(value)) {
-            observer.addOperation(new AddValueIfAbsentOperation(this.path, value));
+            observer.addOperation(new AddValueIfAbsentOperation(this.path, copy(value)));
             return true;
         }
         return false;
@@ -125,6 +106,7 @@ public class ObservableArrayEditor extends ArrayEditor {
         value = Utility.unwrap(value);
         if (super.doRemoveValue(value)) {
             observer.addOperation(new RemoveValueOperation(this.path, value));
+            return true;
         }
         return false;
     }
@@ -142,10 +124,22 @@ public class ObservableArrayEditor extends ArrayEditor {
                                  Object value ) {
         value = Utility.unwrap(value);
         Object oldValue = super.doSetValue(index, value);
-        observer.addOperation(new SetValueOperation(path, value, index));
+        observer.addOperation(new SetValueOperation(path, copy(value), index));
         return oldValue;
     }
 
+    /**
+     * Copy a value that was added to the array, since later edits of that value are recorded as separate operations.
+     * 
+     * @param value the value
+     * @return the copy of the value, or the value itself if it is immutable
+     */
+    protected Object copy( Object value ) {
+        if (value instanceof MutableArray) return ((MutableArray)value).clone();
+        if (value instanceof MutableDocument) return ((MutableDocument)value).clone();
+        return value;
+    }
+
     @Override
     protected EditableDocument createEditableDocument( MutableDocument document,
                                                        int index,
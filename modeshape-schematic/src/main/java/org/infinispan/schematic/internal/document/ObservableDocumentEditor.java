@@ -51,14 +51,15 @@ public class ObservableDocumentEditor extends DocumentEditor {
     protected Object doSetValue( String name,
                                  Object newValue ) {
         Object oldValue = super.doSetValue(name, newValue);
-        observer.addOperation(new PutOperation(path, name, copy(oldValue), copy(newValue)));
+        // The old value is no longer part of the document, so it need not be copied ...
+        observer.addOperation(new PutOperation(path, name, oldValue, copy(newValue)));
         return oldValue;
     }
 
     @Override
     protected Object doSetValueIfAbsent( String name,
                                          Object value ) {
-        Object oldValue = super.doSetValue(name, value);
+        Object oldValue = super.doSetValueIfAbsent(name, value);
         observer.addOperation(new PutIfAbsentOperation(path, name, copy(value)));
         return oldValue;
     }
@@ -84,7 +85,7 @@ public class ObservableDocumentEditor extends DocumentEditor {
     @Override
     public Object remove( String name ) {
         Object oldValue = super.remove(name);
-        observer.addOperation(new RemoveOperation(path, name, copy(oldValue)));
+        observer.addOperation(new RemoveOperation(path, name, oldValue));
         return oldValue;
     }
 
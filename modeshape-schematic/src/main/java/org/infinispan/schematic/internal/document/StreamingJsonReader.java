@@ -0,0 +1,260 @@
+/*
+ * ModeShape (http://www.modeshape.org)
+ * See the COPYRIGHT.txt file distributed with this work for information
+ * regarding copyright ownership.  Some portions may be licensed
+ * to Red Hat, Inc. under one or more contributor license agreements.
+ * See the AUTHORS.txt file in the distribution for a full listing of 
+ * individual contributors.
+ *
+ * ModeShape is free software. Unless otherwise indicated, all code in ModeShape
+ * is licensed to you under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ * 
+ * ModeShape is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+package org.infinispan.schematic.internal.document;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.util.LinkedList;
+import org.infinispan.schematic.document.Document;
+import org.infinispan.schematic.document.JsonStreamReader;
+import org.infinispan.schematic.document.NotThreadSafe;
+import org.infinispan.schematic.document.ParsingException;
+import org.infinispan.schematic.internal.document.JsonReader.Parser;
+import org.infinispan.schematic.internal.document.JsonReader.Tokenizer;
+
+/**
+ * A {@link JsonStreamReader} implementation that uses a {@link Tokenizer} to pull the structure of the JSON content, and that
+ * relies upon a {@link Parser} for reading the individual values. Only the names of the enclosing fields are retained while
+ * reading, so the memory required is proportional to the depth of the content rather than its size.
+ */
+@NotThreadSafe
+public class StreamingJsonReader implements JsonStreamReader {
+
+    /**
+     * The state of a document or array that has been started but not yet ended.
+     */
+    protected static final class Container {
+        protected final boolean document;
+        protected final String fieldName;
+        protected boolean hasValues;
+
+        protected Container( boolean document,
+                             String fieldName ) {
+            this.document = document;
+            this.fieldName = fieldName;
+        }
+    }
+
+    private final Reader reader;
+    private final Tokenizer tokens;
+    private final Parser parser;
+    private final LinkedList<Container> containers = new LinkedList<Container>();
+    private Event event;
+    private String fieldName;
+    private Object value;
+    private String pendingFieldName;
+
+    public StreamingJsonReader( Reader reader,
+                                Tokenizer tokens,
+                                Parser parser ) {
+        this.reader = reader;
+        this.tokens = tokens;
+        this.parser = parser;
+    }
+
+    @Override
+    public Event next() throws ParsingException {
+        value = null;
+        Container container = containers.peek();
+        if (container == null) {
+            // We're between top-level documents ...
+            fieldName = null;
+            switch (tokens.peek()) {
+                case 0:
+                    return event = null;
+                case '{':
+                    tokens.next();
+                    containers.push(new Container(true, null));
+                    return event = Event.START_DOCUMENT;
+                default:
+                    throw tokens.error("JSON documents must begin with a '{' character");
+            }
+        }
+        if (container.document) {
+            String name = pendingFieldName;
+            if (name != null) {
+                pendingFieldName = null;
+            } else {
+                if (container.hasValues && tokens.nextDocumentDelim()) return end(Event.END_DOCUMENT);
+                switch (tokens.peek()) {
+                    case 0:
+                        throw tokens.error("JSON documents must end with a '}' character");
+                    case '}':
+                        tokens.next();
+                        return end(Event.END_DOCUMENT);
+                    default:
+                        name = tokens.nextString();
+                        tokens.nextFieldDelim();
+                }
+            }
+            container.hasValues = true;
+            return startValue(name);
+        }
+        do {
+            switch (tokens.peek()) {
+                case 0:
+                    throw tokens.error("JSON arrays must end with a ']' character");
+                case ']':
+                    tokens.next();
+                    return end(Event.END_ARRAY);
+                case ',':
+                    tokens.next();
+                    break;
+                default:
+                    container.hasValues = true;
+                    return startValue(null);
+            }
+        } while (true);
+    }
+
+    protected Event startValue( String name ) throws ParsingException {
+        fieldName = name;
+        switch (tokens.peek()) {
+            case '{':
+                tokens.next();
+                switch (tokens.peek()) {
+                    case 0:
+                        throw tokens.error("JSON documents must end with a '}' character");
+                    case '}':
+                        // An empty document; the next call will end it ...
+                        break;
+                    default:
+                        String firstFieldName = tokens.nextString();
+                        tokens.nextFieldDelim();
+                        if (parser.isReservedFieldName(firstFieldName)) {
+                            // This nested document is very likely a representation of a BSON value ...
+                            BasicDocument doc = new BasicDocument();
+                            readFields(doc, firstFieldName);
+                            value = parser.processDocumentWithReservedFieldNames(doc);
+                            return event = Event.VALUE;
+                        }
+                        pendingFieldName = firstFieldName;
+                }
+                containers.push(new Container(true, name));
+                return event = Event.START_DOCUMENT;
+            case '[':
+                tokens.next();
+                containers.push(new Container(false, name));
+                return event = Event.START_ARRAY;
+            default:
+                value = parser.parseValue();
+                return event = Event.VALUE;
+        }
+    }
+
+    protected Event end( Event endEvent ) {
+        fieldName = containers.pop().fieldName;
+        return event = endEvent;
+    }
+
+    /**
+     * Read into the supplied document the remaining fields of the document whose opening '{' character has already been consumed,
+     * up to and including the closing '}' character.
+     * 
+     * @param doc the document into which the fields are to be placed; may not be null
+     * @param firstFieldName the name of the first field if it has already been consumed, or null otherwise
+     * @throws ParsingException if there is a problem parsing the fields
+     */
+    protected void readFields( BasicDocument doc,
+                               String firstFieldName ) throws ParsingException {
+        String name = firstFieldName;
+        do {
+            if (name == null) {
+                switch (tokens.peek()) {
+                    case 0:
+                        throw tokens.error("JSON documents must end with a '}' character");
+                    case '}':
+                        tokens.next();
+                        return;
+                    default:
+                        name = tokens.nextString();
+                        tokens.nextFieldDelim();
+                }
+            }
+            doc.put(name, parser.parseValue());
+            name = null;
+        } while (!tokens.nextDocumentDelim());
+    }
+
+    @Override
+    public Event getEvent() {
+        return event;
+    }
+
+    @Override
+    public String getFieldName() {
+        return fieldName;
+    }
+
+    @Override
+    public Object getValue() {
+        return value;
+    }
+
+    @Override
+    public int getDepth() {
+        return containers.size();
+    }
+
+    @Override
+    public Document readDocument() throws ParsingException {
+        if (event != Event.START_DOCUMENT) {
+            throw new IllegalStateException("A document can only be read immediately after it has been started");
+        }
+        Container container = containers.peek();
+        BasicDocument doc = new BasicDocument();
+        if (!container.hasValues) {
+            String firstFieldName = pendingFieldName;
+            pendingFieldName = null;
+            readFields(doc, firstFieldName);
+        }
+        end(Event.END_DOCUMENT);
+        return doc;
+    }
+
+    @Override
+    public void skipChildren() throws ParsingException {
+        if (event != Event.START_DOCUMENT && event != Event.START_ARRAY) {
+            throw new IllegalStateException("Only a document or array that has just been started can be skipped");
+        }
+        int depth = containers.size();
+        while (next() != null) {
+            if (containers.size() < depth) return;
+        }
+    }
+
+    @Override
+    public Document nextDocument() throws ParsingException {
+        if (!containers.isEmpty()) {
+            throw new IllegalStateException("The next document cannot be read until the current document has been ended");
+        }
+        if (next() == null) return null;
+        return readDocument();
+    }
+
+    @Override
+    public void close() throws IOException {
+        reader.close();
+    }
+}
@@ -0,0 +1,178 @@
+/*
+ * ModeShape (http://www.modeshape.org)
+ * See the COPYRIGHT.txt file distributed with this work for information
+ * regarding copyright ownership.  Some portions may be licensed
+ * to Red Hat, Inc. under one or more contributor license agreements.
+ * See the AUTHORS.txt file in the distribution for a full listing of 
+ * individual contributors.
+ *
+ * ModeShape is free software. Unless otherwise indicated, all code in ModeShape
+ * is licensed to you under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ * 
+ * ModeShape is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+package org.infinispan.schematic.internal.document;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.util.LinkedList;
+import org.infinispan.schematic.document.Document;
+import org.infinispan.schematic.document.JsonStreamWriter;
+import org.infinispan.schematic.document.NotThreadSafe;
+
+/**
+ * A {@link JsonStreamWriter} implementation that produces the same compact representation as the {@link CompactJsonWriter},
+ * which it uses to write the individual values.
+ */
+@NotThreadSafe
+public class StreamingJsonWriter implements JsonStreamWriter {
+
+    /**
+     * The state of a document or array that has been started but not yet ended.
+     */
+    protected static final class Container {
+        protected final boolean document;
+        protected boolean hasValues;
+
+        protected Container( boolean document ) {
+            this.document = document;
+        }
+    }
+
+    private final Writer writer;
+    private final CompactJsonWriter values;
+    private final LinkedList<Container> containers = new LinkedList<Container>();
+
+    public StreamingJsonWriter( Writer writer,
+                                CompactJsonWriter values ) {
+        this.writer = writer;
+        this.values = values;
+    }
+
+    @Override
+    public JsonStreamWriter startDocument() throws IOException {
+        if (!containers.isEmpty()) beginValue();
+        writer.append('{').append(' ');
+        containers.push(new Container(true));
+        return this;
+    }
+
+    @Override
+    public JsonStreamWriter startDocument( String fieldName ) throws IOException {
+        beginField(fieldName);
+        writer.append('{').append(' ');
+        containers.push(new Container(true));
+        return this;
+    }
+
+    @Override
+    public JsonStreamWriter endDocument() throws IOException {
+        Container container = containers.peek();
+        if (container == null || !container.document) {
+            throw new IllegalStateException("There is no document to be ended");
+        }
+        containers.pop();
+        if (container.hasValues) writer.append(' ');
+        writer.append('}');
+        if (containers.isEmpty()) {
+            // Separate the top-level documents so that they can be read back as a sequence ...
+            writer.append('\n');
+        }
+        return this;
+    }
+
+    @Override
+    public JsonStreamWriter startArray() throws IOException {
+        beginValue();
+        writer.append('[');
+        containers.push(new Container(false));
+        return this;
+    }
+
+    @Override
+    public JsonStreamWriter startArray( String fieldName ) throws IOException {
+        beginField(fieldName);
+        writer.append('[');
+        containers.push(new Container(false));
+        return this;
+    }
+
+    @Override
+    public JsonStreamWriter endArray() throws IOException {
+        Container container = containers.peek();
+        if (container == null || container.document) {
+            throw new IllegalStateException("There is no array to be ended");
+        }
+        containers.pop();
+        writer.append(' ').append(']');
+        return this;
+    }
+
+    @Override
+    public JsonStreamWriter field( String fieldName,
+                                   Object value ) throws IOException {
+        beginField(fieldName);
+        values.write(value, writer);
+        return this;
+    }
+
+    @Override
+    public JsonStreamWriter value( Object value ) throws IOException {
+        beginValue();
+        values.write(value, writer);
+        return this;
+    }
+
+    @Override
+    public JsonStreamWriter document( Document document ) throws IOException {
+        if (!containers.isEmpty()) {
+            throw new IllegalStateException("A top-level document cannot be written within another document or array");
+        }
+        values.write(document, writer);
+        writer.append('\n');
+        return this;
+    }
+
+    protected void beginField( String fieldName ) throws IOException {
+        Container container = containers.peek();
+        if (container == null || !container.document) {
+            throw new IllegalStateException("Fields can only be written within a document");
+        }
+        if (container.hasValues) {
+            writer.append(' ').append(',').append(' ');
+        }
+        container.hasValues = true;
+        values.write(fieldName, writer);
+        writer.append(' ').append(':').append(' ');
+    }
+
+    protected void beginValue() throws IOException {
+        Container container = containers.peek();
+        if (container == null || container.document) {
+            throw new IllegalStateException("Values can only be written within an array");
+        }
+        writer.append(' ');
+        if (container.hasValues) writer.append(',').append(' ');
+        container.hasValues = true;
+    }
+
+    @Override
+    public void flush() throws IOException {
+        writer.flush();
+    }
+
+    @Override
+    public void close() throws IOException {
+        writer.close();
+    }
+}
@@ -21,9 +21,13 @@
  */
 package org.infinispan.schematic.internal.schema;
 
+import java.io.IOException;
+import java.io.ObjectInputStream;
 import java.io.Serializable;
 import java.net.URI;
 import java.net.URISyntaxException;
+import java.util.Collections;
+import java.util.LinkedHashMap;
 import java.util.Map;
 import java.util.concurrent.ConcurrentHashMap;
 import org.infinispan.schematic.DocumentLibrary;
@@ -47,6 +51,32 @@ public class SchemaDocumentCache implements Validator.SchemaDocumentResolver, Se
 
     private static final long serialVersionUID = 1L;
 
+    /**
+     * The maximum number of compiled schemas that are shared by all caches in this process.
+     */
+    protected static final int MAX_SHARED_SCHEMAS = 256;
+
+    /**
+     * The most recently compiled schemas, shared by all caches in this process so that caches created for each validation task
+     * (including those deserialized on other processes) do not compile the same schemas again. A shared schema is keyed by its
+     * URI, but is reused only when its document is equal to the one currently in the library; in other words, the schema
+     * document's content serves as the version of the compiled schema.
+     */
+    private static final Map<String, SchemaDocument> SHARED_SCHEMAS = Collections.synchronizedMap(new SharedSchemas());
+
+    protected static final class SharedSchemas extends LinkedHashMap<String, SchemaDocument> {
+        private static final long serialVersionUID = 1L;
+
+        protected SharedSchemas() {
+            super(16, 0.75f, true);
+        }
+
+        @Override
+        protected boolean removeEldestEntry( Map.Entry<String, SchemaDocument> eldest ) {
+            return size() > MAX_SHARED_SCHEMAS;
+        }
+    }
+
     private final String defaultMetaSchemaUri;
     private final DocumentLibrary jsonSchemaDocuments;
     private transient Map<String, SchemaDocument> schemaDocumentsByUri = new ConcurrentHashMap<String, SchemaDocument>();
@@ -85,6 +115,13 @@ public class SchemaDocumentCache implements Validator.SchemaDocumentResolver, Se
             return null;
         }
 
+        // See if this version of the schema has already been compiled by another cache ...
+        SchemaDocument shared = SHARED_SCHEMAS.get(uri);
+        if (shared != null && shared.getDocument().equals(doc)) {
+            schemaDocumentsByUri.put(uri, shared);
+            return shared;
+        }
+
         // Validate the JSON document, if required ...
         String id = doc.getString("id");
         String schemaRef = doc.getString("$schema");
@@ -112,6 +149,7 @@ public class SchemaDocumentCache implements Validator.SchemaDocumentResolver, Se
             // Create the schema representation and cache it ...
             result = new SchemaDocument(schemaRef, doc, validator);
             schemaDocumentsByUri.put(uri, result);
+            SHARED_SCHEMAS.put(uri, result);
         }
 
         return result;
@@ -135,6 +173,12 @@ public class SchemaDocumentCache implements Validator.SchemaDocumentResolver, Se
         schemaDocumentsByUri.clear();
     }
 
+    private void readObject( ObjectInputStream in ) throws IOException, ClassNotFoundException {
+        in.defaultReadObject();
+        // The loaded schemas are not serialized ...
+        schemaDocumentsByUri = new ConcurrentHashMap<String, SchemaDocument>();
+    }
+
     protected Validator.Factory createFactory( URI schemaRefUri,
                                                Problems problems ) {
         return new JsonSchemaValidatorFactory(schemaRefUri, problems);
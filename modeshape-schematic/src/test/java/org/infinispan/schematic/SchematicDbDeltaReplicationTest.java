@@ -0,0 +1,213 @@
+/*
+ * ModeShape (http://www.modeshape.org)
+ * See the COPYRIGHT.txt file distributed with this work for information
+ * regarding copyright ownership.  Some portions may be licensed
+ * to Red Hat, Inc. under one or more contributor license agreements.
+ * See the AUTHORS.txt file in the distribution for a full listing of 
+ * individual contributors.
+ *
+ * ModeShape is free software. Unless otherwise indicated, all code in ModeShape
+ * is licensed to you under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ * 
+ * ModeShape is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+package org.infinispan.schematic;
+
+import static org.hamcrest.core.Is.is;
+import static org.junit.Assert.assertThat;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import javax.transaction.TransactionManager;
+import org.infinispan.configuration.cache.CacheMode;
+import org.infinispan.configuration.cache.ConfigurationBuilder;
+import org.infinispan.configuration.global.GlobalConfigurationBuilder;
+import org.infinispan.manager.EmbeddedCacheManager;
+import org.infinispan.schematic.SchematicDb.DeltaListener;
+import org.infinispan.schematic.document.Document;
+import org.infinispan.schematic.document.EditableArray;
+import org.infinispan.schematic.document.EditableDocument;
+import org.infinispan.test.AbstractInfinispanTest;
+import org.infinispan.test.TestingUtil;
+import org.infinispan.test.fwk.TestCacheManagerFactory;
+import org.infinispan.transaction.LockingMode;
+import org.infinispan.transaction.TransactionMode;
+import org.infinispan.transaction.lookup.DummyTransactionManagerLookup;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+public class SchematicDbDeltaReplicationTest extends AbstractInfinispanTest {
+
+    private static final String KEY = "parent";
+
+    private EmbeddedCacheManager cm1;
+    private EmbeddedCacheManager cm2;
+    private SchematicDb db1;
+    private SchematicDb db2;
+    private TransactionManager tm;
+    private RecordingListener listener;
+
+    @Before
+    public void beforeTest() {
+        cm1 = createCacheManager();
+        cm2 = createCacheManager();
+        db1 = Schematic.get(cm1, "documents");
+        db2 = Schematic.get(cm2, "documents");
+        TestingUtil.blockUntilViewsReceived(10000, db1.getCache(), db2.getCache());
+        tm = TestingUtil.getTransactionManager(db1.getCache());
+        listener = new RecordingListener();
+        db1.setDeltaListener(listener);
+    }
+
+    @After
+    public void afterTest() {
+        TestingUtil.killCacheManagers(cm1, cm2);
+        db1 = null;
+        db2 = null;
+        tm = null;
+    }
+
+    protected EmbeddedCacheManager createCacheManager() {
+        GlobalConfigurationBuilder globalConfigurationBuilder = GlobalConfigurationBuilder.defaultClusteredBuilder();
+        globalConfigurationBuilder.serialization().addAdvancedExternalizer(Schematic.externalizers());
+
+        ConfigurationBuilder configurationBuilder = new ConfigurationBuilder();
+        configurationBuilder.clustering()
+                            .cacheMode(CacheMode.REPL_SYNC)
+                            .invocationBatching()
+                            .enable()
+                            .transaction()
+                            .transactionManagerLookup(new DummyTransactionManagerLookup())
+                            .transactionMode(TransactionMode.TRANSACTIONAL)
+                            .lockingMode(LockingMode.PESSIMISTIC);
+        return TestCacheManagerFactory.createClusteredCacheManager(globalConfigurationBuilder, configurationBuilder);
+    }
+
+    protected void storeParentWithChildren( int numChildren ) throws Exception {
+        EditableDocument parent = Schematic.newDocument("name", "parent");
+        EditableArray children = parent.setArray("children");
+        for (int i = 0; i != numChildren; ++i) {
+            children.addDocument().setString("key", "child-" + i).setString("name", "child" + i);
+        }
+        tm.begin();
+        db1.put(KEY, parent, null);
+        tm.commit();
+        listener.changes.clear();
+    }
+
+    protected void assertReplicated() {
+        Document expected = db1.get(KEY).getContentAsDocument();
+        Document actual = db2.get(KEY).getContentAsDocument();
+        assertThat(actual, is(expected));
+    }
+
+    @Test
+    public void shouldEnableDeltaReplicationForClusteredCaches() {
+        assertThat(db1.isDeltaReplicationEnabled(), is(true));
+        db1.setDeltaReplicationEnabled(false);
+        assertThat(db1.isDeltaReplicationEnabled(), is(false));
+    }
+
+    @Test
+    public void shouldReplicateOperationsWhenAppendingChildToLargeDocument() throws Exception {
+        storeParentWithChildren(2000);
+
+        tm.begin();
+        EditableDocument content = db1.get(KEY).editDocumentContent();
+        content.getArray("children").addDocument().setString("key", "child-new").setString("name", "childNew");
+        tm.commit();
+
+        assertReplicated();
+        assertThat(db2.get(KEY).getContentAsDocument().getArray("children").size(), is(2001));
+        assertThat(listener.changes.size(), is(1));
+        assertThat(listener.changes.get(0).wholeDocument, is(false));
+        assertThat(listener.changes.get(0).estimatedSize < 200L, is(true));
+    }
+
+    @Test
+    public void shouldReplicateOperationsWhenChangingNestedValuesOfLargeDocument() throws Exception {
+        storeParentWithChildren(1000);
+
+        tm.begin();
+        EditableDocument content = db1.get(KEY).editDocumentContent();
+        EditableArray children = content.getArray("children");
+        children.remove(10);
+        children.getDocument("20").setString("name", "renamed");
+        children.addDocument(0, Schematic.newDocument("key", "first"));
+        content.setArray("tags").addString("a").addString("b");
+        content.getArray("tags").addStringIfAbsent("a");
+        content.remove("name");
+        tm.commit();
+
+        assertReplicated();
+        assertThat(listener.changes.get(0).wholeDocument, is(false));
+    }
+
+    @Test
+    public void shouldReplicateWholeDocumentWhenSmallerThanOperations() throws Exception {
+        tm.begin();
+        db1.put(KEY, Schematic.newDocument("name", "small"), null);
+        tm.commit();
+        listener.changes.clear();
+
+        StringBuilder sb = new StringBuilder();
+        for (int i = 0; i != 1000; ++i) {
+            sb.append('x');
+        }
+        tm.begin();
+        EditableDocument content = db1.get(KEY).editDocumentContent();
+        content.setString("name", sb.toString());
+        content.setString("name", sb.toString() + "y");
+        content.setString("name", "small again");
+        tm.commit();
+
+        assertReplicated();
+        assertThat(listener.changes.size(), is(1));
+        assertThat(listener.changes.get(0).wholeDocument, is(true));
+    }
+
+    @Test
+    public void shouldReplicateWholeDocumentWhenDeltaReplicationIsDisabled() throws Exception {
+        db1.setDeltaReplicationEnabled(false);
+        storeParentWithChildren(100);
+
+        tm.begin();
+        db1.get(KEY).editDocumentContent().getArray("children").addDocument().setString("key", "child-new");
+        tm.commit();
+
+        assertReplicated();
+        // The size of the whole document is not estimated, so the listener is not notified ...
+        assertThat(listener.changes.isEmpty(), is(true));
+    }
+
+    protected static class Change {
+        protected final boolean wholeDocument;
+        protected final long estimatedSize;
+
+        protected Change( boolean wholeDocument,
+                          long estimatedSize ) {
+            this.wholeDocument = wholeDocument;
+            this.estimatedSize = estimatedSize;
+        }
+    }
+
+    protected static class RecordingListener implements DeltaListener {
+        protected final List<Change> changes = new CopyOnWriteArrayList<Change>();
+
+        @Override
+        public void changeSent( boolean wholeDocument,
+                                long estimatedSize ) {
+            changes.add(new Change(wholeDocument, estimatedSize));
+        }
+    }
+}
@@ -0,0 +1,143 @@
+/*
+ * ModeShape (http://www.modeshape.org)
+ * See the COPYRIGHT.txt file distributed with this work for information
+ * regarding copyright ownership.  Some portions may be licensed
+ * to Red Hat, Inc. under one or more contributor license agreements.
+ * See the AUTHORS.txt file in the distribution for a full listing of 
+ * individual contributors.
+ *
+ * ModeShape is free software. Unless otherwise indicated, all code in ModeShape
+ * is licensed to you under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ * 
+ * ModeShape is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+package org.infinispan.schematic;
+
+import java.io.InputStream;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+import javax.transaction.TransactionManager;
+import org.infinispan.configuration.cache.CacheMode;
+import org.infinispan.configuration.cache.ConfigurationBuilder;
+import org.infinispan.configuration.global.GlobalConfigurationBuilder;
+import org.infinispan.manager.EmbeddedCacheManager;
+import org.infinispan.schematic.SchemaLibrary.Results;
+import org.infinispan.schematic.SchematicDb.ValidationListener;
+import org.infinispan.schematic.SchematicEntry.FieldName;
+import org.infinispan.schematic.document.Document;
+import org.infinispan.schematic.document.Json;
+import org.infinispan.test.AbstractInfinispanTest;
+import org.infinispan.test.TestingUtil;
+import org.infinispan.test.fwk.TestCacheManagerFactory;
+import org.infinispan.transaction.LockingMode;
+import org.infinispan.transaction.TransactionMode;
+import org.infinispan.transaction.lookup.DummyTransactionManagerLookup;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+public class SchematicDbDistributedValidationTest extends AbstractInfinispanTest {
+
+    private static final String SCHEMA_URI = "json/schema/spec-example.json";
+
+    private EmbeddedCacheManager cm1;
+    private EmbeddedCacheManager cm2;
+    private SchematicDb db1;
+    private SchematicDb db2;
+    private TransactionManager tm;
+
+    @Before
+    public void beforeTest() {
+        cm1 = createCacheManager();
+        cm2 = createCacheManager();
+        db1 = Schematic.get(cm1, "documents");
+        db2 = Schematic.get(cm2, "documents");
+        TestingUtil.blockUntilViewsReceived(10000, db1.getCache(), db2.getCache());
+        tm = TestingUtil.getTransactionManager(db1.getCache());
+    }
+
+    @After
+    public void afterTest() {
+        TestingUtil.killCacheManagers(cm1, cm2);
+        db1 = null;
+        db2 = null;
+        tm = null;
+    }
+
+    protected EmbeddedCacheManager createCacheManager() {
+        GlobalConfigurationBuilder globalConfigurationBuilder = GlobalConfigurationBuilder.defaultClusteredBuilder();
+        globalConfigurationBuilder.serialization().addAdvancedExternalizer(Schematic.externalizers());
+
+        ConfigurationBuilder configurationBuilder = new ConfigurationBuilder();
+        configurationBuilder.clustering()
+                            .cacheMode(CacheMode.DIST_SYNC)
+                            .invocationBatching()
+                            .enable()
+                            .transaction()
+                            .transactionManagerLookup(new DummyTransactionManagerLookup())
+                            .transactionMode(TransactionMode.TRANSACTIONAL)
+                            .lockingMode(LockingMode.PESSIMISTIC);
+        return TestCacheManagerFactory.createClusteredCacheManager(globalConfigurationBuilder, configurationBuilder);
+    }
+
+    protected static InputStream resource( String resourcePath ) {
+        InputStream result = SchemaValidationTest.class.getClassLoader().getResourceAsStream(resourcePath);
+        assert result != null : "Could not find resource \"" + resourcePath + "\"";
+        return result;
+    }
+
+    protected void loadSchemas() throws Exception {
+        SchemaLibrary schemas = db1.getSchemaLibrary();
+        tm.begin();
+        schemas.put("http://json-schema.org/draft-03/schema#", Json.read(resource("json/schema/draft-03/schema.json")));
+        schemas.put(SCHEMA_URI, Json.read(resource("json/schema/spec-example.json")));
+        tm.commit();
+    }
+
+    protected Set<String> storeProducts( SchematicDb db,
+                                         int count ) throws Exception {
+        Set<String> invalidKeys = new HashSet<String>();
+        tm.begin();
+        for (int i = 0; i != count; ++i) {
+            String key = "product-" + i;
+            double price = i % 10 == 0 ? -1.0d : 2.99d;
+            if (price < 0) invalidKeys.add(key);
+            Document doc = Schematic.newDocument("name", "Product " + i, "id", i, "price", price);
+            db.put(key, doc, Schematic.newDocument(FieldName.SCHEMA_URI, SCHEMA_URI));
+        }
+        tm.commit();
+        return invalidKeys;
+    }
+
+    @Test
+    public void shouldValidateAllDocumentsInDistributedCacheAndReportEachInvalidDocumentOnce() throws Exception {
+        loadSchemas();
+        Set<String> invalidKeys = storeProducts(db1, 500);
+
+        final Set<String> reportedKeys = new HashSet<String>();
+        db2.validateAll(new ValidationListener() {
+            @Override
+            public void problemsFound( String key,
+                                       Results results ) {
+                assert results.hasProblems() : "Expected problems for " + key;
+                assert reportedKeys.add(key) : "The problems for " + key + " were reported more than once";
+            }
+        });
+        assert reportedKeys.equals(invalidKeys) : "Expected problems for " + invalidKeys + " but found " + reportedKeys;
+
+        Map<String, Results> resultsByKey = db1.validateAll();
+        assert resultsByKey.keySet().equals(invalidKeys) : "Expected problems for " + invalidKeys + " but found "
+                                                           + resultsByKey.keySet();
+    }
+}
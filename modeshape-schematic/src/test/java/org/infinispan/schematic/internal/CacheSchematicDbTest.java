@@ -2,12 +2,15 @@ package org.infinispan.schematic.internal;
 
 import java.io.IOException;
 import java.io.InputStream;
+import java.util.HashSet;
 import java.util.Map;
+import java.util.Set;
 import org.infinispan.Cache;
 import org.infinispan.configuration.cache.ConfigurationBuilder;
 import org.infinispan.manager.EmbeddedCacheManager;
 import org.infinispan.schematic.SchemaLibrary;
 import org.infinispan.schematic.SchemaLibrary.Results;
+import org.infinispan.schematic.SchematicDb.ValidationListener;
 import org.infinispan.schematic.SchemaValidationTest;
 import org.infinispan.schematic.SchematicEntry;
 import org.infinispan.schematic.SchematicEntry.FieldName;
@@ -117,4 +120,33 @@ public class CacheSchematicDbTest {
         assert !resultsByKey.containsKey(key) : "There are validation problems: " + resultsByKey.get(key);
     }
 
+    @Test
+    public void shouldValidateAllDocumentsAndReportOnlyThoseWithProblems() throws Exception {
+        loadSchemas();
+        String schemaUri = "json/schema/spec-example.json";
+        Set<String> invalidKeys = new HashSet<String>();
+        for (int i = 0; i != 1000; ++i) {
+            String key = "product-" + i;
+            double price = i % 10 == 0 ? -1.0d : 2.99d;
+            if (price < 0) invalidKeys.add(key);
+            Document doc = new BasicDocument("name", "Product " + i, "id", i, "price", price);
+            db.put(key, doc, new BasicDocument(FieldName.SCHEMA_URI, schemaUri));
+        }
+
+        final Set<String> reportedKeys = new HashSet<String>();
+        db.validateAll(new ValidationListener() {
+            @Override
+            public void problemsFound( String key,
+                                       Results results ) {
+                assert results.hasProblems() : "Expected problems for " + key;
+                assert reportedKeys.add(key) : "The problems for " + key + " were reported more than once";
+            }
+        });
+        assert reportedKeys.equals(invalidKeys) : "Expected problems for " + invalidKeys + " but found " + reportedKeys;
+
+        Map<String, Results> resultsByKey = db.validateAll();
+        assert resultsByKey.keySet().equals(invalidKeys) : "Expected problems for " + invalidKeys + " but found "
+                                                           + resultsByKey.keySet();
+    }
+
 }
@@ -26,7 +26,13 @@ package org.infinispan.schematic.internal.document;
 import static org.hamcrest.core.Is.is;
 import static org.hamcrest.core.IsNull.notNullValue;
 import static org.junit.Assert.assertThat;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
 import java.io.InputStream;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import org.infinispan.schematic.document.Bson;
 import org.infinispan.schematic.document.Document;
 import org.infinispan.schematic.document.Json;
 import org.junit.Test;
@@ -48,6 +54,52 @@ public class DocumentExternalizerTest extends AbstractExternalizerTest {
         assertRoundTripJsonDocument("json/empty.json");
     }
 
+    @Test
+    public void shouldRoundTripDocumentWithFieldNamesInDictionary() throws Exception {
+        Document doc = Json.read("{ \"key\" : \"a1b2\", \"parent\" : \"c3d4\", \"properties\" : { "
+                                 + "\"http://www.jcp.org/jcr/1.0\" : { \"primaryType\" : { \"$name\" : \"nt:unstructured\" }, "
+                                 + "\"mixinTypes\" : [ { \"$name\" : \"mix:created\" } ] }, "
+                                 + "\"http://example.com/ns\" : { \"other\" : 3 } } }");
+        assertThat(new BsonWriter(true).write(doc).length < Bson.write(doc).length, is(true));
+        byte[] bytes = marshall(doc);
+        Document newDoc = (Document)unmarshall(bytes);
+        assertThat(newDoc, is(doc));
+        // The names are the canonical instances ...
+        String propertiesName = newDoc.keySet().toArray(new String[3])[2];
+        assertThat(propertiesName == "properties", is(true));
+
+        // An unchanged document that is written again as standard BSON must not contain the dictionary identifiers ...
+        assertThat(Bson.read(new ByteArrayInputStream(Bson.write(newDoc))), is(doc));
+        Document unchanged = (Document)unmarshall(bytes);
+        assertThat(Bson.read(new ByteArrayInputStream(Bson.write(unchanged))), is(doc));
+        assertThat(unmarshall(marshall(unchanged)), is((Object)doc));
+    }
+
+    @Test
+    public void shouldReadDocumentWrittenAsStandardBson() throws Exception {
+        InputStream stream = getClass().getClassLoader().getResourceAsStream("json/spec-example-doc.json");
+        Document doc = Json.read(stream);
+        // Write the document as it was written before the field name dictionary was introduced ...
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        ObjectOutputStream output = new ObjectOutputStream(bytes);
+        output.writeByte(1);
+        output.write(Bson.write(doc));
+        output.close();
+        ObjectInputStream input = new ObjectInputStream(new ByteArrayInputStream(bytes.toByteArray()));
+        assertThat(new DocumentExternalizer().readObject(input), is(doc));
+    }
+
+    @Test( expected = IOException.class )
+    public void shouldNotReadDocumentWithUnknownType() throws Exception {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        ObjectOutputStream output = new ObjectOutputStream(bytes);
+        output.writeByte(3);
+        output.write(Bson.write(Json.read("{ \"key\" : \"a1b2\" }")));
+        output.close();
+        ObjectInputStream input = new ObjectInputStream(new ByteArrayInputStream(bytes.toByteArray()));
+        new DocumentExternalizer().readObject(input);
+    }
+
     protected void assertRoundTripJsonDocument( String resourcePath ) throws Exception {
         InputStream stream = getClass().getClassLoader().getResourceAsStream(resourcePath);
         assertThat(stream, is(notNullValue()));
@@ -0,0 +1,259 @@
+/*
+ * ModeShape (http://www.modeshape.org)
+ * See the COPYRIGHT.txt file distributed with this work for information
+ * regarding copyright ownership.  Some portions may be licensed
+ * to Red Hat, Inc. under one or more contributor license agreements.
+ * See the AUTHORS.txt file in the distribution for a full listing of 
+ * individual contributors.
+ *
+ * ModeShape is free software. Unless otherwise indicated, all code in ModeShape
+ * is licensed to you under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ * 
+ * ModeShape is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+package org.infinispan.schematic.internal.document;
+
+import static org.hamcrest.core.Is.is;
+import static org.hamcrest.core.IsInstanceOf.instanceOf;
+import static org.hamcrest.core.IsNull.nullValue;
+import static org.hamcrest.core.IsSame.sameInstance;
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertThat;
+import java.io.ByteArrayInputStream;
+import java.io.DataInputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Date;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.regex.Pattern;
+import org.infinispan.schematic.TestUtil;
+import org.infinispan.schematic.document.Binary;
+import org.infinispan.schematic.document.Code;
+import org.infinispan.schematic.document.CodeWithScope;
+import org.infinispan.schematic.document.Document;
+import org.infinispan.schematic.document.Json;
+import org.infinispan.schematic.document.Symbol;
+import org.infinispan.schematic.document.Timestamp;
+import org.junit.Before;
+import org.junit.Test;
+
+public class LazyDocumentTest {
+
+    protected BsonReader reader;
+    protected BsonWriter writer;
+
+    @Before
+    public void beforeTest() {
+        reader = new BsonReader();
+        writer = new BsonWriter();
+    }
+
+    @Test
+    public void shouldReadAllTypesOfValuesLikeBsonReader() throws Exception {
+        BasicArray array = new BasicArray();
+        array.addValue("value1");
+        array.addValue(30);
+        array.addValue(new BasicDocument("inArray", true));
+        BasicDocument input = new BasicDocument();
+        input.put("string", "Joe");
+        input.put("int", 35);
+        input.put("long", 35L);
+        input.put("double", 3.5d);
+        input.put("boolean", true);
+        input.put("date", new Date());
+        input.put("timestamp", new Timestamp(new Date()));
+        input.put("binary", new Binary(new byte[] {0x16, 0x00, 0x00, 0x00, 0x02, 0x68}));
+        input.put("uuid", UUID.randomUUID());
+        input.put("pattern", Pattern.compile("[CH]at\\s+"));
+        input.put("code", new Code("bar"));
+        input.put("codeWithScope", new CodeWithScope("bar", new BasicDocument("baz", "bam")));
+        input.put("symbol", new Symbol("sym"));
+        input.put("null", null);
+        input.put("array", array);
+        input.put("nested", new BasicDocument("street", "100 Main", "zip", 12345));
+        input.put("after", "last");
+
+        byte[] bytes = writer.write(input);
+        Document lazy = readLazily(bytes);
+        assertThat(lazy, is(instanceOf(LazyDocument.class)));
+        assertThat(lazy, is(reader.read(new ByteArrayInputStream(bytes))));
+        assertThat(lazy.getString("after"), is("last"));
+        assertThat(lazy.size(), is(input.size()));
+    }
+
+    @Test
+    public void shouldDecodeOnlyTheFieldsThatAreAccessed() throws Exception {
+        Document input = Json.read(TestUtil.resource("json/sample-large-modeshape-doc.json"));
+        LazyDocument lazy = (LazyDocument)readLazily(writer.write(input));
+        for (String name : input.keySet()) {
+            Object value = lazy.get(name);
+            if (value instanceof Document && !(value instanceof List)) {
+                assertThat(value, is(instanceOf(LazyDocument.class)));
+            }
+            assertThat(lazy.isLazy(), is(true));
+        }
+        assertThat(lazy.get("non-existant"), is(nullValue()));
+        assertThat(lazy, is(input));
+        assertThat(lazy.isLazy(), is(true));
+
+        // But iterating over the fields requires decoding all of them ...
+        assertThat(lazy.keySet(), is(input.keySet()));
+        assertThat(lazy.isLazy(), is(false));
+        assertThat(lazy, is(input));
+    }
+
+    @Test
+    public void shouldEstimateSizeOfUnchangedDocumentWithoutDecodingIt() throws Exception {
+        Document input = Json.read(TestUtil.resource("json/sample-large-modeshape-doc.json"));
+        byte[] bytes = writer.write(input);
+        LazyDocument lazy = (LazyDocument)readLazily(bytes);
+        assertThat(BsonSizes.estimate(lazy, Long.MAX_VALUE), is((long)bytes.length));
+        assertThat(lazy.isLazy(), is(true));
+    }
+
+    @Test
+    public void shouldWriteUnchangedDocumentByCopyingItsBytes() throws Exception {
+        BasicDocument address = new BasicDocument("street", "100 Main", "city", "Springfield", "zip", 12345);
+        Document input = new BasicDocument("name", "Joe", "age", 35, "address", address);
+        byte[] bytes = writer.write(input);
+        LazyDocument lazy = (LazyDocument)readLazily(bytes);
+        assertThat(lazy.getDocument("address").getString("city"), is("Springfield"));
+        assertArrayEquals(bytes, writer.write(lazy));
+        assertThat(lazy.isLazy(), is(true));
+    }
+
+    @Test
+    public void shouldDecodeDocumentWhenChanged() throws Exception {
+        BasicDocument address = new BasicDocument("street", "100 Main", "city", "Springfield", "zip", 12345);
+        Document input = new BasicDocument("name", "Joe", "age", 35, "address", address);
+        LazyDocument lazy = (LazyDocument)readLazily(writer.write(input));
+
+        // Change the nested document ...
+        MutableDocument nested = (MutableDocument)lazy.getDocument("address");
+        nested.put("city", "Shelbyville");
+        assertThat(lazy.isLazy(), is(true));
+        assertThat(((LazyDocument)nested).isLazy(), is(false));
+        assertThat(lazy.getDocument("address").getString("city"), is("Shelbyville"));
+
+        // The parent must now be written from its fields ...
+        Document written = reader.read(new ByteArrayInputStream(writer.write(lazy)));
+        assertThat(written.getDocument("address").getString("city"), is("Shelbyville"));
+        assertThat(written.getString("name"), is("Joe"));
+
+        // And changing the parent decodes it ...
+        lazy.put("age", 36);
+        assertThat(lazy.isLazy(), is(false));
+        assertThat(lazy.getInteger("age"), is(36));
+        assertThat(lazy.getDocument("address").getString("city"), is("Shelbyville"));
+    }
+
+    @Test
+    public void shouldCloneUnchangedDocumentBySharingItsBytes() throws Exception {
+        Document input = new BasicDocument("name", "Joe", "address", new BasicDocument("city", "Springfield"));
+        LazyDocument lazy = (LazyDocument)readLazily(writer.write(input));
+        MutableDocument clone = (MutableDocument)lazy.clone();
+        assertThat(clone, is(instanceOf(LazyDocument.class)));
+        assertThat(((LazyDocument)clone).isLazy(), is(true));
+
+        // Changing the clone doesn't change the original ...
+        ((MutableDocument)clone.getDocument("address")).put("city", "Shelbyville");
+        clone.put("name", "Jane");
+        assertThat(lazy.getString("name"), is("Joe"));
+        assertThat(lazy.getDocument("address").getString("city"), is("Springfield"));
+        assertThat(lazy.isLazy(), is(true));
+        assertThat(clone.getDocument("address").getString("city"), is("Shelbyville"));
+    }
+
+    @Test
+    public void shouldReleaseParentBytesFromNestedDocumentsOnceDecoded() throws Exception {
+        BasicDocument address = new BasicDocument("street", "100 Main", "city", "Springfield", "zip", 12345);
+        Document input = new BasicDocument("name", "Joe", "address", address, "code",
+                                           new CodeWithScope("bar", new BasicDocument("baz", "bam")));
+        byte[] bytes = writer.write(input);
+        byte[] addressBytes = writer.write(address);
+        LazyDocument lazy = new LazyDocument(bytes, 0);
+        Document nested = lazy.getDocument("address");
+        assertThat(nested.getString("street"), is("100 Main"));
+
+        // Iterating over the fields decodes the parent, but the nested documents are still views ...
+        int count = 0;
+        for (Document.Field field : lazy.fields()) {
+            assertThat(input.containsField(field.getName()), is(true));
+            ++count;
+        }
+        assertThat(count, is(input.size()));
+        assertThat(lazy.isLazy(), is(false));
+        assertThat(lazy.getDocument("address"), is(sameInstance(nested)));
+        assertThat(((LazyDocument)nested).isLazy(), is(true));
+
+        // ... over their own copy of the bytes, so the parent's bytes are no longer used ...
+        Arrays.fill(bytes, (byte)0);
+        assertThat(nested.getString("city"), is("Springfield"));
+        assertThat(nested.getInteger("zip"), is(12345));
+        assertArrayEquals(addressBytes, writer.write(nested));
+        CodeWithScope code = (CodeWithScope)lazy.get("code");
+        assertThat(code.getScope().getString("baz"), is("bam"));
+    }
+
+    @Test
+    public void shouldReadSameValuesConcurrently() throws Exception {
+        Document input = Json.read(TestUtil.resource("json/sample-large-modeshape-doc.json"));
+        final LazyDocument lazy = (LazyDocument)readLazily(writer.write(input));
+        final List<String> names = new ArrayList<String>(input.keySet());
+        final CountDownLatch start = new CountDownLatch(1);
+        int threads = 8;
+        ExecutorService executor = Executors.newFixedThreadPool(threads);
+        try {
+            List<Future<List<Object>>> results = new ArrayList<Future<List<Object>>>();
+            for (int i = 0; i != threads; ++i) {
+                results.add(executor.submit(new Callable<List<Object>>() {
+                    @Override
+                    public List<Object> call() throws Exception {
+                        start.await();
+                        List<Object> values = new ArrayList<Object>();
+                        for (String name : names) {
+                            assertThat(lazy.containsKey(name), is(true));
+                            values.add(lazy.get(name));
+                        }
+                        return values;
+                    }
+                }));
+            }
+            start.countDown();
+            List<Object> expected = results.get(0).get();
+            for (Future<List<Object>> result : results) {
+                List<Object> values = result.get();
+                for (int i = 0; i != names.size(); ++i) {
+                    // Every reader gets the same decoded instance ...
+                    assertThat(values.get(i), is(sameInstance(expected.get(i))));
+                    assertThat(values.get(i), is(input.get(names.get(i))));
+                }
+            }
+        } finally {
+            executor.shutdownNow();
+        }
+        assertThat(lazy.isLazy(), is(true));
+        assertThat(lazy.size(), is(input.size()));
+    }
+
+    protected Document readLazily( byte[] bytes ) throws IOException {
+        return reader.readLazily(new DataInputStream(new ByteArrayInputStream(bytes)));
+    }
+}
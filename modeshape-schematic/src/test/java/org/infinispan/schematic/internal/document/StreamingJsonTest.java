@@ -0,0 +1,142 @@
+package org.infinispan.schematic.internal.document;
+
+import static org.hamcrest.core.Is.is;
+import static org.hamcrest.core.IsNull.nullValue;
+import static org.junit.Assert.assertThat;
+import java.io.StringReader;
+import java.io.StringWriter;
+import java.util.Date;
+import java.util.UUID;
+import org.infinispan.schematic.document.Document;
+import org.infinispan.schematic.document.Json;
+import org.infinispan.schematic.document.JsonStreamReader;
+import org.infinispan.schematic.document.JsonStreamReader.Event;
+import org.infinispan.schematic.document.JsonStreamWriter;
+import org.junit.Test;
+
+public class StreamingJsonTest {
+
+    protected JsonStreamReader reader( String json ) {
+        return Json.newStreamReader(new StringReader(json));
+    }
+
+    protected void assertEvent( JsonStreamReader reader,
+                                Event event,
+                                String fieldName,
+                                int depth ) throws Exception {
+        assertThat(reader.next(), is(event));
+        assertThat(reader.getFieldName(), is(fieldName));
+        assertThat(reader.getDepth(), is(depth));
+    }
+
+    protected void assertValue( JsonStreamReader reader,
+                                String fieldName,
+                                Object value ) throws Exception {
+        assertThat(reader.next(), is(Event.VALUE));
+        assertThat(reader.getFieldName(), is(fieldName));
+        assertThat(reader.getValue(), is(value));
+    }
+
+    @Test
+    public void shouldReportEventsForNestedContent() throws Exception {
+        JsonStreamReader reader = reader("{ \"a\" : 1, \"b\" : { \"c\" : \"x\" }, \"d\" : [ true, {}, [] ], \"e\" : {} }");
+        assertEvent(reader, Event.START_DOCUMENT, null, 1);
+        assertValue(reader, "a", 1);
+        assertEvent(reader, Event.START_DOCUMENT, "b", 2);
+        assertValue(reader, "c", "x");
+        assertEvent(reader, Event.END_DOCUMENT, "b", 1);
+        assertEvent(reader, Event.START_ARRAY, "d", 2);
+        assertValue(reader, null, true);
+        assertEvent(reader, Event.START_DOCUMENT, null, 3);
+        assertEvent(reader, Event.END_DOCUMENT, null, 2);
+        assertEvent(reader, Event.START_ARRAY, null, 3);
+        assertEvent(reader, Event.END_ARRAY, null, 2);
+        assertEvent(reader, Event.END_ARRAY, "d", 1);
+        assertEvent(reader, Event.START_DOCUMENT, "e", 2);
+        assertEvent(reader, Event.END_DOCUMENT, "e", 1);
+        assertEvent(reader, Event.END_DOCUMENT, null, 0);
+        assertThat(reader.next(), is(nullValue()));
+    }
+
+    @Test
+    public void shouldReportNestedDocumentsWithReservedFieldNamesAsValues() throws Exception {
+        UUID uuid = UUID.randomUUID();
+        JsonStreamReader reader = reader("{ \"id\" : { \"$uuid\" : \"" + uuid + "\" }, \"when\" : { \"$date\" : 1000 } }");
+        assertEvent(reader, Event.START_DOCUMENT, null, 1);
+        assertValue(reader, "id", uuid);
+        assertValue(reader, "when", new Date(1000L));
+        assertEvent(reader, Event.END_DOCUMENT, null, 0);
+    }
+
+    @Test
+    public void shouldReadPartOfTheContentAsDocument() throws Exception {
+        JsonStreamReader reader = reader("{ \"skipped\" : [ 1, [ 2 ], { \"x\" : 3 } ], \"kept\" : { \"y\" : 4, \"z\" : [ 5 ] }, \"last\" : 6 }");
+        assertEvent(reader, Event.START_DOCUMENT, null, 1);
+        assertEvent(reader, Event.START_ARRAY, "skipped", 2);
+        reader.skipChildren();
+        assertThat(reader.getEvent(), is(Event.END_ARRAY));
+        assertThat(reader.getDepth(), is(1));
+        assertEvent(reader, Event.START_DOCUMENT, "kept", 2);
+        Document kept = reader.readDocument();
+        assertThat(kept.getInteger("y"), is(4));
+        assertThat(kept.getArray("z").size(), is(1));
+        assertThat(reader.getEvent(), is(Event.END_DOCUMENT));
+        assertThat(reader.getDepth(), is(1));
+        assertValue(reader, "last", 6);
+        assertEvent(reader, Event.END_DOCUMENT, null, 0);
+    }
+
+    @Test
+    public void shouldReadMultipleTopLevelDocuments() throws Exception {
+        JsonStreamReader reader = reader("{ \"a\" : 1 }\n{ }\n{ \"b\" : { \"c\" : 2 } }\n");
+        assertThat(reader.nextDocument().getInteger("a"), is(1));
+        assertThat(reader.nextDocument().size(), is(0));
+        assertThat(reader.nextDocument().getDocument("b").getInteger("c"), is(2));
+        assertThat(reader.nextDocument(), is(nullValue()));
+    }
+
+    @Test
+    public void shouldWriteSameRepresentationAsCompactWriter() throws Exception {
+        Document nested = new BasicDocument("c", "x", "d", new BasicArray(1, "two"));
+        Document expected = new BasicDocument("a", 1, "b", nested, "e", new BasicArray(), "f", new BasicDocument());
+
+        StringWriter output = new StringWriter();
+        JsonStreamWriter writer = Json.newStreamWriter(output);
+        writer.startDocument().field("a", 1);
+        writer.startDocument("b").field("c", "x").startArray("d").value(1).value("two").endArray().endDocument();
+        writer.startArray("e").endArray().startDocument("f").endDocument();
+        writer.endDocument();
+        writer.document(expected);
+        writer.flush();
+
+        String json = Json.write(expected);
+        assertThat(output.toString(), is(json + "\n" + json + "\n"));
+    }
+
+    @Test
+    public void shouldRoundTripDocumentsWrittenAsStream() throws Exception {
+        StringWriter output = new StringWriter();
+        JsonStreamWriter writer = Json.newStreamWriter(output);
+        for (int i = 0; i != 100; ++i) {
+            writer.startDocument().field("index", i).field("name", "doc \"" + i + "\"");
+            writer.startArray("values").value(new BasicDocument("v", i)).value(new Date(i * 1000L)).endArray();
+            writer.endDocument();
+        }
+        writer.close();
+
+        JsonStreamReader reader = reader(output.toString());
+        for (int i = 0; i != 100; ++i) {
+            Document doc = reader.nextDocument();
+            assertThat(doc.getInteger("index"), is(i));
+            assertThat(doc.getString("name"), is("doc \"" + i + "\""));
+            assertThat(doc.getArray("values").get(0), is((Object)new BasicDocument("v", i)));
+            assertThat(doc.getArray("values").get(1), is((Object)new Date(i * 1000L)));
+        }
+        assertThat(reader.nextDocument(), is(nullValue()));
+    }
+
+    @Test( expected = IllegalStateException.class )
+    public void shouldNotAllowFieldsWithinArrays() throws Exception {
+        Json.newStreamWriter(new StringWriter()).startDocument().startArray("a").field("b", 1);
+    }
+}
@@ -179,7 +179,8 @@ public final class ModeShapeRestService {
 
     /**
      * Retrieves the binary content of the binary property at the given path, allowing 2 extra (optional) parameters: the
-     * mime-type and the content-disposition of the binary value.
+     * mime-type and the content-disposition of the binary value. If the request has a "Range" header with a single range of bytes,
+     * only that part of the content is returned.
      * 
      * @param request a non-null {@link HttpServletRequest} request
      * @param repositoryName a non-null {@link String} representing the name of a repository.
@@ -188,8 +189,8 @@ public final class ModeShapeRestService {
      * @param mimeType an optional {@link String} representing the "already-known" mime-type of the binary. Can be {@code null}
      * @param contentDisposition an optional {@link String} representing the client-preferred content disposition of the respose.
      *        Can be {@code null}
-     * @return the binary stream of the requested binary property or NOT_FOUND if either the property isn't found or it isn't a
-     *         binary
+     * @return the binary stream of the requested binary property (or of the requested range of it) or NOT_FOUND if either the
+     *         property isn't found or it isn't a binary
      * @throws RepositoryException if any JCR related operation fails, including the case when the path to the property isn't
      *         valid.
      */
@@ -216,7 +217,7 @@ public final class ModeShapeRestService {
             contentDisposition = binaryHandler.getDefaultContentDisposition(binaryProperty);
         }
 
-        return Response.ok(binary.getStream(), mimeType).header("Content-Disposition", contentDisposition).build();
+        return binaryHandler.getBinaryResponse(request, binary, mimeType, contentDisposition);
     }
 
     /**
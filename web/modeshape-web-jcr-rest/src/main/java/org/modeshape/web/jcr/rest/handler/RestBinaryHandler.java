@@ -31,13 +31,19 @@ import javax.jcr.Property;
 import javax.jcr.RepositoryException;
 import javax.jcr.Session;
 import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+import javax.ws.rs.WebApplicationException;
 import javax.ws.rs.core.MediaType;
 import javax.ws.rs.core.Response;
+import javax.ws.rs.core.StreamingOutput;
 import org.modeshape.common.util.CheckArg;
+import org.modeshape.common.util.IoUtil;
+import org.modeshape.common.util.RangeHeader;
 import org.modeshape.common.util.StringUtil;
 import org.modeshape.web.jcr.rest.model.RestProperty;
 import java.io.IOException;
 import java.io.InputStream;
+import java.io.OutputStream;
 
 /**
  * Class which handles incoming requests related to {@link Binary binary values}
@@ -51,6 +57,8 @@ public final class RestBinaryHandler extends AbstractHandler {
      */
     public static final String DEFAULT_CONTENT_DISPOSITION_PREFIX = "attachment;filename=";
     private static final String DEFAULT_MIME_TYPE = MediaType.APPLICATION_OCTET_STREAM;
+    private static final int BUFFER_SIZE = 8 * 1024;
+    private static final String ACCEPT_RANGES_HEADER = "Accept-Ranges";
 
     /**
      * Returns a binary {@link Property} for the given repository, workspace and path.
@@ -105,6 +113,114 @@ public final class RestBinaryHandler extends AbstractHandler {
         }
     }
 
+    /**
+     * Returns a response with the content of the given binary value. If the request has a "Range" header with a single range of
+     * bytes, only that range of the content is returned with a "206 Partial Content" status, and the content before the range is
+     * never read; a range that starts beyond the end of the content results in a "416 Requested Range Not Satisfiable" status.
+     *
+     * @param request a non-null {@link HttpServletRequest} request
+     * @param binary a non-null {@link Binary} value
+     * @param mimeType a non-null {@link String} representing the mime-type of the content
+     * @param contentDisposition a non-null {@link String} representing the Content-Disposition of the response
+     * @return a non-null {@link Response} with the content, or the requested range of the content
+     * @throws RepositoryException if any JCR related operation involving the binary value fails
+     */
+    public Response getBinaryResponse( HttpServletRequest request,
+                                       Binary binary,
+                                       String mimeType,
+                                       String contentDisposition ) throws RepositoryException {
+        long size = binary.getSize();
+        long[] range = RangeHeader.parse(request.getHeader(RangeHeader.NAME), size);
+        Response.ResponseBuilder builder;
+        if (range == null) {
+            builder = Response.ok(getBinaryContent(binary), mimeType);
+        } else if (range.length == 0) {
+            return Response.status(HttpServletResponse.SC_REQUESTED_RANGE_NOT_SATISFIABLE)
+                           .header(RangeHeader.CONTENT_RANGE, RangeHeader.contentRange(range, size))
+                           .build();
+        } else {
+            long length = range[1] - range[0] + 1;
+            builder = Response.status(HttpServletResponse.SC_PARTIAL_CONTENT)
+                              .entity(getBinaryContent(binary, range[0], length))
+                              .type(mimeType)
+                              .header(RangeHeader.CONTENT_RANGE, RangeHeader.contentRange(range, size));
+        }
+        return builder.header(ACCEPT_RANGES_HEADER, RangeHeader.BYTES_UNIT)
+                      .header("Content-Disposition", contentDisposition)
+                      .build();
+    }
+
+    /**
+     * Returns the content of the given binary value as the entity of a response, copied from the binary's stream to the response's
+     * output through a buffer.
+     *
+     * @param binary a non-null {@link Binary} value
+     * @return a non-null {@link StreamingOutput} which writes the content of the binary value
+     */
+    public StreamingOutput getBinaryContent( final Binary binary ) {
+        CheckArg.isNotNull(binary, "binary");
+        return new StreamingOutput() {
+            @Override
+            public void write( OutputStream output ) throws IOException, WebApplicationException {
+                try {
+                    copy(binary.getStream(), output, Long.MAX_VALUE);
+                } catch (RepositoryException e) {
+                    throw new WebApplicationException(e);
+                }
+            }
+        };
+    }
+
+    /**
+     * Returns a range of the content of the given binary value as the entity of a response. ModeShape binary values start reading
+     * their content at the offset, while the beginning of the content of all other binary values is skipped.
+     *
+     * @param binary a non-null {@link Binary} value
+     * @param offset the position of the first byte of the range
+     * @param length the number of bytes in the range
+     * @return a non-null {@link StreamingOutput} which writes the range of the content of the binary value
+     */
+    public StreamingOutput getBinaryContent( final Binary binary,
+                                             final long offset,
+                                             final long length ) {
+        CheckArg.isNotNull(binary, "binary");
+        CheckArg.isNonNegative(offset, "offset");
+        CheckArg.isNonNegative(length, "length");
+        return new StreamingOutput() {
+            @Override
+            public void write( OutputStream output ) throws IOException, WebApplicationException {
+                try {
+                    if (binary instanceof org.modeshape.jcr.api.Binary) {
+                        copy(((org.modeshape.jcr.api.Binary)binary).getStream(offset, length), output, length);
+                    } else {
+                        InputStream stream = binary.getStream();
+                        IoUtil.skip(stream, offset);
+                        copy(stream, output, length);
+                    }
+                } catch (RepositoryException e) {
+                    throw new WebApplicationException(e);
+                }
+            }
+        };
+    }
+
+    private static void copy( InputStream stream,
+                              OutputStream output,
+                              long length ) throws IOException {
+        try {
+            byte[] buffer = new byte[BUFFER_SIZE];
+            long remaining = length;
+            while (remaining > 0) {
+                int read = stream.read(buffer, 0, (int)Math.min(buffer.length, remaining));
+                if (read == -1) break;
+                output.write(buffer, 0, read);
+                remaining -= read;
+            }
+        } finally {
+            stream.close();
+        }
+    }
+
     /**
      * Updates the {@link Property property} at the given path with the content from the given {@link InputStream}.
      *
@@ -0,0 +1,105 @@
+package org.modeshape.web.jcr.rest.handler;
+
+import static org.hamcrest.core.Is.is;
+import static org.hamcrest.core.IsNull.nullValue;
+import static org.junit.Assert.assertThat;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.InputStream;
+import javax.jcr.Binary;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+import javax.ws.rs.core.Response;
+import javax.ws.rs.core.StreamingOutput;
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.invocation.InvocationOnMock;
+import org.mockito.stubbing.Answer;
+
+public class RestBinaryHandlerTest {
+
+    private static final byte[] CONTENT = "0123456789".getBytes();
+    private static final String MIME_TYPE = "text/plain";
+    private static final String CONTENT_DISPOSITION = RestBinaryHandler.DEFAULT_CONTENT_DISPOSITION_PREFIX + "digits.txt";
+
+    private RestBinaryHandler handler;
+    private HttpServletRequest request;
+    private Binary binary;
+
+    @Before
+    public void beforeEach() throws Exception {
+        handler = new RestBinaryHandler();
+        request = mock(HttpServletRequest.class);
+        binary = mock(Binary.class);
+        when(binary.getSize()).thenReturn((long)CONTENT.length);
+        when(binary.getStream()).thenAnswer(new Answer<InputStream>() {
+            @Override
+            public InputStream answer( InvocationOnMock invocation ) {
+                return new ByteArrayInputStream(CONTENT);
+            }
+        });
+    }
+
+    private Response responseForRange( String range ) throws Exception {
+        when(request.getHeader("Range")).thenReturn(range);
+        return handler.getBinaryResponse(request, binary, MIME_TYPE, CONTENT_DISPOSITION);
+    }
+
+    private String entityOf( Response response ) throws Exception {
+        ByteArrayOutputStream output = new ByteArrayOutputStream();
+        ((StreamingOutput)response.getEntity()).write(output);
+        return new String(output.toByteArray());
+    }
+
+    private Object header( Response response,
+                           String name ) {
+        return response.getMetadata().getFirst(name);
+    }
+
+    @Test
+    public void shouldReturnEntireContentWithoutRangeHeader() throws Exception {
+        Response response = responseForRange(null);
+        assertThat(response.getStatus(), is(HttpServletResponse.SC_OK));
+        assertThat(header(response, "Content-Range"), is(nullValue()));
+        assertThat(header(response, "Accept-Ranges"), is((Object)"bytes"));
+        assertThat(entityOf(response), is("0123456789"));
+    }
+
+    @Test
+    public void shouldReturnPartialContentForSingleRange() throws Exception {
+        Response response = responseForRange("bytes=2-5");
+        assertThat(response.getStatus(), is(HttpServletResponse.SC_PARTIAL_CONTENT));
+        assertThat(header(response, "Content-Range"), is((Object)"bytes 2-5/10"));
+        assertThat(entityOf(response), is("2345"));
+    }
+
+    @Test
+    public void shouldReturnPartialContentForOpenEndedAndSuffixRanges() throws Exception {
+        Response response = responseForRange("bytes=7-");
+        assertThat(response.getStatus(), is(HttpServletResponse.SC_PARTIAL_CONTENT));
+        assertThat(header(response, "Content-Range"), is((Object)"bytes 7-9/10"));
+        assertThat(entityOf(response), is("789"));
+
+        response = responseForRange("bytes=-4");
+        assertThat(response.getStatus(), is(HttpServletResponse.SC_PARTIAL_CONTENT));
+        assertThat(header(response, "Content-Range"), is((Object)"bytes 6-9/10"));
+        assertThat(entityOf(response), is("6789"));
+    }
+
+    @Test
+    public void shouldReturnRangeNotSatisfiableForRangeBeyondContent() throws Exception {
+        Response response = responseForRange("bytes=10-");
+        assertThat(response.getStatus(), is(HttpServletResponse.SC_REQUESTED_RANGE_NOT_SATISFIABLE));
+        assertThat(header(response, "Content-Range"), is((Object)"bytes */10"));
+        assertThat(response.getEntity(), is(nullValue()));
+    }
+
+    @Test
+    public void shouldReturnEntireContentForMultipleRanges() throws Exception {
+        Response response = responseForRange("bytes=0-1,4-5");
+        assertThat(response.getStatus(), is(HttpServletResponse.SC_OK));
+        assertThat(entityOf(response), is("0123456789"));
+    }
+}
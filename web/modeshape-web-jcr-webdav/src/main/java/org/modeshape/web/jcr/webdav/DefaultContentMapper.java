@@ -8,15 +8,17 @@ import java.util.Collection;
 import java.util.Date;
 import java.util.HashSet;
 import java.util.Set;
+import javax.jcr.Binary;
 import javax.jcr.Node;
 import javax.jcr.RepositoryException;
 import javax.servlet.ServletContext;
 import org.modeshape.common.logging.Logger;
+import org.modeshape.common.util.IoUtil;
 
 /**
  * Implementation of the {@link ContentMapper} interface that maps webdav requests to JCR operations.
  */
-public class DefaultContentMapper implements ContentMapper {
+public class DefaultContentMapper implements RangedContentMapper {
 
     public static final String INIT_CONTENT_PRIMARY_TYPE_NAMES = "org.modeshape.web.jcr.webdav.CONTENT_PRIMARY_TYPE_NAMES";
     public static final String INIT_RESOURCE_PRIMARY_TYPES_NAMES = "org.modeshape.web.jcr.webdav.RESOURCE_PRIMARY_TYPE_NAMES";
@@ -101,6 +103,21 @@ public class DefaultContentMapper implements ContentMapper {
         return node.getProperty(CONTENT_NODE_NAME + "/" + DATA_PROP_NAME).getBinary().getStream();
     }
 
+    @Override
+    public InputStream getResourceContent( Node node,
+                                           long offset,
+                                           long length ) throws RepositoryException, IOException {
+        if (!node.hasNode(CONTENT_NODE_NAME)) return null;
+        Binary binary = node.getProperty(CONTENT_NODE_NAME + "/" + DATA_PROP_NAME).getBinary();
+        if (binary instanceof org.modeshape.jcr.api.Binary) {
+            // Start reading at the offset rather than reading and discarding the content before it ...
+            return ((org.modeshape.jcr.api.Binary)binary).getStream(offset, length);
+        }
+        InputStream stream = binary.getStream();
+        IoUtil.skip(stream, offset);
+        return stream;
+    }
+
     @Override
     public long getResourceLength( Node node ) throws RepositoryException {
         if (!node.hasNode(CONTENT_NODE_NAME)) {
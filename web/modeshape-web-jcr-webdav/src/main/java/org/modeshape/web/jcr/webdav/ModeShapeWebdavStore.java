@@ -55,6 +55,7 @@ import org.modeshape.common.util.CheckArg;
 import org.modeshape.common.util.IoUtil;
 import org.modeshape.common.util.StringUtil;
 import org.modeshape.web.jcr.RepositoryManager;
+import org.modeshape.webdav.IRangedWebdavStore;
 import org.modeshape.webdav.ITransaction;
 import org.modeshape.webdav.IWebdavStore;
 import org.modeshape.webdav.StoredObject;
@@ -67,7 +68,7 @@ import org.modeshape.webdav.exceptions.WebdavException;
  * This implementation takes several OSX-specific WebDAV workarounds from the WebDAVImpl class in Drools Guvnor.
  * </p>
  */
-public class ModeShapeWebdavStore implements IWebdavStore {
+public class ModeShapeWebdavStore implements IRangedWebdavStore {
 
     /**
      * OS X attempts to create ".DS_Store" files to store a folder's icon positions and background image. We choose not to store
@@ -285,6 +286,35 @@ public class ModeShapeWebdavStore implements IWebdavStore {
         }
     }
 
+    @Override
+    public InputStream getResourceContent( ITransaction transaction,
+                                           String resourceUri,
+                                           long offset,
+                                           long length ) {
+        try {
+            ResolvedRequest resolved = resolveRequest(resourceUri);
+            if (resolved.getPath() == null) {
+                // Not a node, so there's no content ...
+                return null;
+            }
+            Node node = nodeFor(transaction, resolved); // throws exception if not found
+            if (!isFile(node)) {
+                return null;
+            }
+            if (contentMapper instanceof RangedContentMapper) {
+                return ((RangedContentMapper)contentMapper).getResourceContent(node, offset, length);
+            }
+            InputStream stream = contentMapper.getResourceContent(node);
+            if (stream != null) IoUtil.skip(stream, offset);
+            return stream;
+
+        } catch (IOException ioe) {
+            throw new WebdavException(ioe);
+        } catch (RepositoryException re) {
+            throw translate(re);
+        }
+    }
+
     @Override
     public long getResourceLength( ITransaction transaction,
                                    String resourceUri ) {
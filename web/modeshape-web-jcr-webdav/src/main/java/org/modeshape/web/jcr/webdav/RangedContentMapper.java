@@ -0,0 +1,29 @@
+package org.modeshape.web.jcr.webdav;
+
+import java.io.IOException;
+import java.io.InputStream;
+import javax.jcr.Node;
+import javax.jcr.RepositoryException;
+
+/**
+ * A {@link ContentMapper} that can start reading the contents of a node at any position, used to answer requests for partial
+ * content without reading the contents before the requested range. The contents returned by other content mappers are skipped
+ * up to the start of the range.
+ * 
+ * @see DefaultContentMapper
+ */
+public interface RangedContentMapper extends ContentMapper {
+
+    /**
+     * @param node the node to check; may not be null
+     * @param offset the position of the first byte of the requested range within the contents
+     * @param length the number of bytes in the requested range
+     * @return the contents for the node starting at {@code offset}, from which no more than {@code length} bytes are read; null
+     *         if the node maps to a WebDAV folder
+     * @throws RepositoryException if the node cannot be accessed
+     * @throws IOException if the content of the node cannot be accessed
+     */
+    InputStream getResourceContent( Node node,
+                                    long offset,
+                                    long length ) throws RepositoryException, IOException;
+}
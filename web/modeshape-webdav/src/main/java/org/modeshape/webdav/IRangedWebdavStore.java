@@ -0,0 +1,54 @@
+/*
+ * ModeShape (http://www.modeshape.org)
+ * See the COPYRIGHT.txt file distributed with this work for information
+ * regarding copyright ownership.  Some portions may be licensed
+ * to Red Hat, Inc. under one or more contributor license agreements.
+ * See the AUTHORS.txt file in the distribution for a full listing of 
+ * individual contributors. 
+ *
+ * ModeShape is free software. Unless otherwise indicated, all code in ModeShape
+ * is licensed to you under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * ModeShape is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+package org.modeshape.webdav;
+
+import java.io.InputStream;
+import org.modeshape.webdav.exceptions.WebdavException;
+
+/**
+ * An {@link IWebdavStore} that can start reading the content of a resource at any position, used to answer requests for
+ * partial content without reading the content before the requested range. Requests for partial content made to stores that do
+ * not implement this interface are answered by skipping over the content before the range.
+ */
+public interface IRangedWebdavStore extends IWebdavStore {
+
+    /**
+     * Gets a range of the content of the resource specified by
+     * <code>resourceUri</code>, used to answer requests for partial content.
+     *
+     * @param transaction indicates that the method is within the scope of a WebDAV
+     * transaction
+     * @param resourceUri URI of the content resource
+     * @param offset position of the first byte of the range within the content
+     * @param length number of bytes in the range; no more than this many bytes
+     * are read from the returned stream
+     * @return input stream you can read the range of the content from, starting
+     *         at <code>offset</code>
+     * @throws WebdavException if something goes wrong on the store level
+     */
+    InputStream getResourceContent( ITransaction transaction,
+                                    String resourceUri,
+                                    long offset,
+                                    long length );
+}
@@ -45,7 +45,7 @@ import org.modeshape.webdav.exceptions.WebdavException;
  * @author re
  * @author hchiorea@redhat.com
  */
-public class LocalFileSystemStore implements IWebdavStore {
+public class LocalFileSystemStore implements IRangedWebdavStore {
 
     private static Logger LOG = Logger.getLogger(LocalFileSystemStore.class);
 
@@ -206,6 +206,26 @@ public class LocalFileSystemStore implements IWebdavStore {
         return in;
     }
 
+    @Override
+    public InputStream getResourceContent( ITransaction transaction,
+                                           String uri,
+                                           long offset,
+                                           long length ) throws WebdavException {
+        LOG.trace("LocalFileSystemStore.getResourceContent(" + uri + ", " + offset + ", " + length + ")");
+        File file = new File(root, uri);
+
+        InputStream in;
+        try {
+            FileInputStream fileStream = new FileInputStream(file);
+            fileStream.getChannel().position(offset);
+            in = new BufferedInputStream(fileStream);
+        } catch (IOException e) {
+            LOG.error(new TextI18n("LocalFileSystemStore.getResourceContent(" + uri + ") failed"));
+            throw new WebdavException(e);
+        }
+        return in;
+    }
+
     @Override
     public long getResourceLength( ITransaction transaction,
                                    String resourceUri ) throws WebdavException {
@@ -26,7 +26,10 @@ import javax.servlet.http.HttpServletRequest;
 import javax.servlet.http.HttpServletResponse;
 import org.modeshape.common.i18n.TextI18n;
 import org.modeshape.common.logging.Logger;
+import org.modeshape.common.util.IoUtil;
+import org.modeshape.common.util.RangeHeader;
 import org.modeshape.webdav.IMimeTyper;
+import org.modeshape.webdav.IRangedWebdavStore;
 import org.modeshape.webdav.ITransaction;
 import org.modeshape.webdav.IWebdavStore;
 import org.modeshape.webdav.StoredObject;
@@ -66,33 +69,70 @@ public class DoGet extends DoHead {
             }
             OutputStream out = resp.getOutputStream();
             InputStream in = store.getResourceContent(transaction, path);
-            try {
-                int read = -1;
-                byte[] copyBuffer = new byte[BUF_SIZE];
+            copy(in, out, Long.MAX_VALUE);
+        } catch (Exception e) {
+            LOG.trace(e.toString());
+        }
+    }
 
-                while ((read = in.read(copyBuffer, 0, copyBuffer.length)) != -1) {
-                    out.write(copyBuffer, 0, read);
-                }
-            } finally {
-                // flushing causes a IOE if a file is opened on the webserver
-                // client disconnected before server finished sending response
-                try {
-                    in.close();
-                } catch (Exception e) {
-                    LOG.warn(e, new TextI18n("Closing InputStream causes Exception!"));
-                }
-                try {
-                    out.flush();
-                    out.close();
-                } catch (Exception e) {
-                    LOG.warn(e, new TextI18n("Flushing OutputStream causes Exception!"));
-                }
+    @Override
+    protected void doBody( ITransaction transaction,
+                           HttpServletResponse resp,
+                           String path,
+                           long offset,
+                           long length ) {
+
+        try {
+            OutputStream out = resp.getOutputStream();
+            InputStream in;
+            if (store instanceof IRangedWebdavStore) {
+                // the store starts reading at the offset, so the content before the range is never read
+                in = ((IRangedWebdavStore)store).getResourceContent(transaction, path, offset, length);
+            } else {
+                in = store.getResourceContent(transaction, path);
+                IoUtil.skip(in, offset);
             }
+            copy(in, out, length);
         } catch (Exception e) {
             LOG.trace(e.toString());
         }
     }
 
+    private void copy( InputStream in,
+                       OutputStream out,
+                       long length ) throws IOException {
+        try {
+            long remaining = length;
+            int read = -1;
+            byte[] copyBuffer = new byte[BUF_SIZE];
+
+            while (remaining > 0 && (read = in.read(copyBuffer, 0, (int)Math.min(copyBuffer.length, remaining))) != -1) {
+                out.write(copyBuffer, 0, read);
+                remaining -= read;
+            }
+        } finally {
+            // flushing causes a IOE if a file is opened on the webserver
+            // client disconnected before server finished sending response
+            try {
+                in.close();
+            } catch (Exception e) {
+                LOG.warn(e, new TextI18n("Closing InputStream causes Exception!"));
+            }
+            try {
+                out.flush();
+                out.close();
+            } catch (Exception e) {
+                LOG.warn(e, new TextI18n("Flushing OutputStream causes Exception!"));
+            }
+        }
+    }
+
+    @Override
+    protected long[] getRequestedRange( HttpServletRequest req,
+                                        long resourceLength ) {
+        return RangeHeader.parse(req.getHeader(RangeHeader.NAME), resourceLength);
+    }
+
     @Override
     protected void folderBody( ITransaction transaction,
                                String path,
@@ -20,6 +20,7 @@ import java.io.IOException;
 import javax.servlet.http.HttpServletRequest;
 import javax.servlet.http.HttpServletResponse;
 import org.modeshape.common.logging.Logger;
+import org.modeshape.common.util.RangeHeader;
 import org.modeshape.webdav.IMimeTyper;
 import org.modeshape.webdav.ITransaction;
 import org.modeshape.webdav.IWebdavStore;
@@ -118,6 +119,19 @@ public class DoHead extends AbstractMethod {
 
                             long resourceLength = so.getResourceLength();
 
+                            long[] range = getRequestedRange(req, resourceLength);
+                            if (range != null) {
+                                if (range.length == 0) {
+                                    resp.setHeader(RangeHeader.CONTENT_RANGE, RangeHeader.contentRange(range, resourceLength));
+                                    resp.sendError(HttpServletResponse.SC_REQUESTED_RANGE_NOT_SATISFIABLE);
+                                    return;
+                                }
+                                // only the requested range of the content will be sent
+                                resp.setStatus(HttpServletResponse.SC_PARTIAL_CONTENT);
+                                resp.setHeader(RangeHeader.CONTENT_RANGE, RangeHeader.contentRange(range, resourceLength));
+                                resourceLength = range[1] - range[0] + 1;
+                            }
+
                             if (contentLength == 1) {
                                 if (resourceLength > 0) {
                                     if (resourceLength <= Integer.MAX_VALUE) {
@@ -141,7 +155,11 @@ public class DoHead extends AbstractMethod {
                                 }
                             }
 
-                            doBody(transaction, resp, path);
+                            if (range == null) {
+                                doBody(transaction, resp, path);
+                            } else {
+                                doBody(transaction, resp, path, range[0], resourceLength);
+                            }
                         }
                     } else {
                         folderBody(transaction, path, resp, req);
@@ -182,4 +200,27 @@ public class DoHead extends AbstractMethod {
                            String path ) throws IOException {
         // no body for HEAD
     }
+
+    @SuppressWarnings( "unused" )
+    protected void doBody( ITransaction transaction,
+                           HttpServletResponse resp,
+                           String path,
+                           long offset,
+                           long length ) throws IOException {
+        // no body for HEAD
+    }
+
+    /**
+     * Determines which range of the content of a resource is requested. HEAD requests always describe the entire resource.
+     *
+     * @param req the request
+     * @param resourceLength the length of the content of the resource, or a negative number if it is not known
+     * @return null if the entire content is requested, an empty array if the requested range cannot be satisfied, or the
+     *         positions of the first and last bytes of the requested range
+     */
+    @SuppressWarnings( "unused" )
+    protected long[] getRequestedRange( HttpServletRequest req,
+                                        long resourceLength ) {
+        return null;
+    }
 }
@@ -1,9 +1,12 @@
 package org.modeshape.webdav.methods;
 
+import java.io.ByteArrayInputStream;
 import java.util.Locale;
+import javax.servlet.http.HttpServletResponse;
 import org.jmock.Expectations;
 import org.junit.Test;
 import org.modeshape.webdav.AbstractWebDAVTest;
+import org.modeshape.webdav.IRangedWebdavStore;
 import org.modeshape.webdav.StoredObject;
 import org.modeshape.webdav.WebdavStatus;
 import org.modeshape.webdav.locking.ResourceLocks;
@@ -61,6 +64,9 @@ public class DoGetTest extends AbstractWebDAVTest {
                 one(mockReq).getHeader("If-None-Match");
                 will(returnValue(null));
 
+                one(mockReq).getHeader("Range");
+                will(returnValue(null));
+
                 one(mockRes).setDateHeader("last-modified", indexSo.getLastModified().getTime());
 
                 one(mockRes).addHeader(with(any(String.class)), with(any(String.class)));
@@ -90,6 +96,147 @@ public class DoGetTest extends AbstractWebDAVTest {
         mockery.assertIsSatisfied();
     }
 
+    @Test
+    public void testAccessOfaRangeOfPageResultsInPartialContent() throws Exception {
+        final TestingOutputStream testingOutputStream = new TestingOutputStream();
+        final IRangedWebdavStore mockRangedStore = mockery.mock(IRangedWebdavStore.class);
+
+        mockery.checking(new Expectations() {
+            {
+                one(mockReq).getAttribute(INCLUDE_REQUEST_URI_ATTRIBUTE);
+                will(returnValue(null));
+
+                one(mockReq).getPathInfo();
+                will(returnValue("/index.html"));
+
+                StoredObject indexSo = initFileStoredObject(RESOURCE_CONTENT);
+
+                one(mockRangedStore).getStoredObject(mockTransaction, "/index.html");
+                will(returnValue(indexSo));
+
+                one(mockReq).getHeader("If-None-Match");
+                will(returnValue(null));
+
+                one(mockReq).getHeader("Range");
+                will(returnValue("bytes=1-3"));
+
+                one(mockRes).setDateHeader("last-modified", indexSo.getLastModified().getTime());
+
+                one(mockRes).addHeader(with(any(String.class)), with(any(String.class)));
+
+                one(mockRes).setStatus(HttpServletResponse.SC_PARTIAL_CONTENT);
+
+                one(mockRes).setHeader("Content-Range", "bytes 1-3/" + RESOURCE_LENGTH);
+
+                one(mockMimeTyper).getMimeType(mockTransaction, "/index.html");
+                will(returnValue("text/foo"));
+
+                one(mockRes).setContentType("text/foo");
+
+                one(mockRes).getOutputStream();
+                will(returnValue(testingOutputStream));
+
+                one(mockRangedStore).getResourceContent(mockTransaction, "/index.html", 1L, 3L);
+                will(returnValue(new DelegatingServletInputStream(new ByteArrayInputStream(RESOURCE_CONTENT, 1, 7))));
+            }
+        });
+
+        DoGet doGet = new DoGet(mockRangedStore, null, null, new ResourceLocks(), mockMimeTyper, 0);
+        doGet.execute(mockTransaction, mockReq, mockRes);
+        assertEquals("hel", testingOutputStream.toString());
+
+        mockery.assertIsSatisfied();
+    }
+
+    @Test
+    public void testAccessOfaRangeOfPageFromStoreWithoutRangesResultsInPartialContent() throws Exception {
+        final TestingOutputStream testingOutputStream = new TestingOutputStream();
+
+        mockery.checking(new Expectations() {
+            {
+                one(mockReq).getAttribute(INCLUDE_REQUEST_URI_ATTRIBUTE);
+                will(returnValue(null));
+
+                one(mockReq).getPathInfo();
+                will(returnValue("/index.html"));
+
+                StoredObject indexSo = initFileStoredObject(RESOURCE_CONTENT);
+
+                one(mockStore).getStoredObject(mockTransaction, "/index.html");
+                will(returnValue(indexSo));
+
+                one(mockReq).getHeader("If-None-Match");
+                will(returnValue(null));
+
+                one(mockReq).getHeader("Range");
+                will(returnValue("bytes=1-3"));
+
+                one(mockRes).setDateHeader("last-modified", indexSo.getLastModified().getTime());
+
+                one(mockRes).addHeader(with(any(String.class)), with(any(String.class)));
+
+                one(mockRes).setStatus(HttpServletResponse.SC_PARTIAL_CONTENT);
+
+                one(mockRes).setHeader("Content-Range", "bytes 1-3/" + RESOURCE_LENGTH);
+
+                one(mockMimeTyper).getMimeType(mockTransaction, "/index.html");
+                will(returnValue("text/foo"));
+
+                one(mockRes).setContentType("text/foo");
+
+                one(mockRes).getOutputStream();
+                will(returnValue(testingOutputStream));
+
+                // the store can only read the entire content, so the content before the range is skipped
+                one(mockStore).getResourceContent(mockTransaction, "/index.html");
+                will(returnValue(new DelegatingServletInputStream(new ByteArrayInputStream(RESOURCE_CONTENT))));
+            }
+        });
+
+        DoGet doGet = new DoGet(mockStore, null, null, new ResourceLocks(), mockMimeTyper, 0);
+        doGet.execute(mockTransaction, mockReq, mockRes);
+        assertEquals("hel", testingOutputStream.toString());
+
+        mockery.assertIsSatisfied();
+    }
+
+    @Test
+    public void testAccessOfaRangeBeyondPageResultsIn416() throws Exception {
+        mockery.checking(new Expectations() {
+            {
+                one(mockReq).getAttribute(INCLUDE_REQUEST_URI_ATTRIBUTE);
+                will(returnValue(null));
+
+                one(mockReq).getPathInfo();
+                will(returnValue("/index.html"));
+
+                StoredObject indexSo = initFileStoredObject(RESOURCE_CONTENT);
+
+                one(mockStore).getStoredObject(mockTransaction, "/index.html");
+                will(returnValue(indexSo));
+
+                one(mockReq).getHeader("If-None-Match");
+                will(returnValue(null));
+
+                one(mockReq).getHeader("Range");
+                will(returnValue("bytes=100-"));
+
+                one(mockRes).setDateHeader("last-modified", indexSo.getLastModified().getTime());
+
+                one(mockRes).addHeader(with(any(String.class)), with(any(String.class)));
+
+                one(mockRes).setHeader("Content-Range", "bytes */" + RESOURCE_LENGTH);
+
+                one(mockRes).sendError(HttpServletResponse.SC_REQUESTED_RANGE_NOT_SATISFIABLE);
+            }
+        });
+
+        DoGet doGet = new DoGet(mockStore, null, null, new ResourceLocks(), mockMimeTyper, 0);
+        doGet.execute(mockTransaction, mockReq, mockRes);
+
+        mockery.assertIsSatisfied();
+    }
+
     @Test
     public void testAccessOfaDirectoryResultsInRudimentaryChildList() throws Exception {
         final TestingOutputStream testingOutputStream = new TestingOutputStream();
@@ -199,6 +346,9 @@ public class DoGetTest extends AbstractWebDAVTest {
                 one(mockReq).getHeader("If-None-Match");
                 will(returnValue(null));
 
+                one(mockReq).getHeader("Range");
+                will(returnValue(null));
+
                 one(mockRes).setDateHeader("last-modified", alternativeSo.getLastModified().getTime());
 
                 one(mockRes).addHeader(with(any(String.class)), with(any(String.class)));